@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2022 DV Bern AG, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.dvbern.oss.vacme.keyclaok;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.stream.Collectors;
+
+import javax.ws.rs.NotFoundException;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import lombok.Getter;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.keycloak.admin.client.resource.RealmResource;
+import org.keycloak.representations.idm.GroupRepresentation;
+import org.keycloak.representations.idm.UserRepresentation;
+
+/**
+ * Lokales Verzeichnis der Gruppen, Gruppenmitglieder und Rollenmitglieder eines Realms. Die Listen werden
+ * seitenweise am Stueck geladen (eine Abfrage pro Seite statt pro Benutzer) und fuer die gegebene TTL gehalten.
+ * Die Caches werden von aussen ueber ihre {@link ch.dvbern.oss.vacme.service.cache.VacmeCacheName} invalidiert
+ * (Keys: Gruppenname bzw. Rollenname bzw. Username).
+ * <p>
+ * Die gelieferten Representations sind geteilt und duerfen nicht veraendert werden. Wer einen Benutzer
+ * aktualisieren will, muss ihn direkt im Keycloak lesen.
+ */
+@Slf4j
+public class KeyCloakDirectory {
+
+	private static final String ALL_GROUPS = "ALL";
+
+	private final RealmResource realmResource;
+	private final int pageSize;
+
+	@Getter
+	private final LoadingCache<String, Map<String, GroupRepresentation>> groupCache;
+	@Getter
+	private final LoadingCache<String, List<UserRepresentation>> groupMemberCache;
+	@Getter
+	private final LoadingCache<String, RoleMembers> roleMemberCache;
+	@Getter
+	private final LoadingCache<String, Optional<UserRepresentation>> userCache;
+
+	public KeyCloakDirectory(@NonNull RealmResource realmResource, int pageSize, @NonNull Duration ttl) {
+		this.realmResource = realmResource;
+		this.pageSize = pageSize;
+		this.groupCache = CacheBuilder.newBuilder()
+			.expireAfterWrite(ttl)
+			.recordStats()
+			.build(CacheLoader.from(key -> loadGroups()));
+		this.groupMemberCache = CacheBuilder.newBuilder()
+			.expireAfterWrite(ttl)
+			.maximumSize(5000)
+			.recordStats()
+			.build(CacheLoader.from(this::loadGroupMembers));
+		this.roleMemberCache = CacheBuilder.newBuilder()
+			.expireAfterWrite(ttl)
+			.maximumSize(200)
+			.recordStats()
+			.build(CacheLoader.from(this::loadRoleMembers));
+		this.userCache = CacheBuilder.newBuilder()
+			.expireAfterWrite(ttl)
+			.maximumSize(20000)
+			.recordStats()
+			.build(CacheLoader.from(this::loadUser));
+	}
+
+	@NonNull
+	public Optional<GroupRepresentation> findGroup(@NonNull String groupName) {
+		return Optional.ofNullable(get(groupCache, ALL_GROUPS).get(groupName));
+	}
+
+	/**
+	 * Alle Mitglieder der Gruppe (brief representation, inkl. deaktivierte) in der Reihenfolge von Keycloak.
+	 * Leer, wenn die Gruppe nicht existiert.
+	 */
+	@NonNull
+	public List<UserRepresentation> getGroupMembers(@NonNull String groupName) {
+		return get(groupMemberCache, groupName);
+	}
+
+	@NonNull
+	public List<UserRepresentation> getRoleMembers(@NonNull String roleName) {
+		return get(roleMemberCache, roleName).getUsers();
+	}
+
+	public boolean isUserInRole(@NonNull String userId, @NonNull String roleName) {
+		return get(roleMemberCache, roleName).getUserIds().contains(userId);
+	}
+
+	@NonNull
+	public Optional<UserRepresentation> findUserByUsername(@NonNull String username) {
+		return get(userCache, username);
+	}
+
+	@NonNull
+	private Map<String, GroupRepresentation> loadGroups() {
+		final List<GroupRepresentation> groups = loadAllPages((first, max) -> realmResource.groups().groups(first, max));
+		final Map<String, GroupRepresentation> groupsByName = new LinkedHashMap<>();
+		for (GroupRepresentation group : groups) {
+			// bei gleichem Namen gewinnt wie bisher die erste Gruppe
+			groupsByName.putIfAbsent(group.getName(), group);
+		}
+		LOG.debug("VACME-KEYCLOAK: {} Gruppen geladen", groupsByName.size());
+		return Collections.unmodifiableMap(groupsByName);
+	}
+
+	@NonNull
+	private List<UserRepresentation> loadGroupMembers(@NonNull String groupName) {
+		final Optional<GroupRepresentation> group = findGroup(groupName);
+		if (group.isEmpty()) {
+			return Collections.emptyList();
+		}
+		final String groupId = group.get().getId();
+		final List<UserRepresentation> members =
+			loadAllPages((first, max) -> realmResource.groups().group(groupId).members(first, max, true));
+		LOG.debug("VACME-KEYCLOAK: {} Mitglieder der Gruppe {} geladen", members.size(), groupName);
+		return Collections.unmodifiableList(members);
+	}
+
+	@NonNull
+	private RoleMembers loadRoleMembers(@NonNull String roleName) {
+		try {
+			final List<UserRepresentation> members =
+				loadAllPages((first, max) -> realmResource.roles().get(roleName).getRoleUserMembers(first, max));
+			LOG.debug("VACME-KEYCLOAK: {} Mitglieder der Rolle {} geladen", members.size(), roleName);
+			return new RoleMembers(
+				Collections.unmodifiableList(members),
+				members.stream().map(UserRepresentation::getId).collect(Collectors.toUnmodifiableSet()));
+		} catch (NotFoundException e) {
+			LOG.warn("VACME-KEYCLOAK: Rolle {} existiert nicht im Realm", roleName);
+			return new RoleMembers(Collections.emptyList(), Collections.emptySet());
+		}
+	}
+
+	@NonNull
+	private Optional<UserRepresentation> loadUser(@NonNull String username) {
+		return realmResource.users().search(username, true).stream().findFirst();
+	}
+
+	@NonNull
+	private <T> List<T> loadAllPages(@NonNull BiFunction<Integer, Integer, List<T>> pageLoader) {
+		final List<T> result = new ArrayList<>();
+		int first = 0;
+		while (true) {
+			final List<T> page = pageLoader.apply(first, pageSize);
+			result.addAll(page);
+			if (page.size() < pageSize) {
+				return result;
+			}
+			first += pageSize;
+		}
+	}
+
+	@NonNull
+	private static <K, V> V get(@NonNull LoadingCache<K, V> cache, @NonNull K key) {
+		try {
+			return cache.getUnchecked(key);
+		} catch (UncheckedExecutionException e) {
+			// Fehler aus dem Keycloak-Client unveraendert weitergeben
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw e;
+		}
+	}
+
+	@Value
+	public static class RoleMembers {
+		List<UserRepresentation> users;
+		Set<String> userIds;
+	}
+}
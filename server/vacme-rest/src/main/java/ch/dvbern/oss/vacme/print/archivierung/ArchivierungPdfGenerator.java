@@ -20,7 +20,6 @@ package ch.dvbern.oss.vacme.print.archivierung;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.sql.SQLException;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Comparator;
@@ -403,7 +402,7 @@ public class ArchivierungPdfGenerator {
 	private void mergePDF(@NonNull FileBlob fileBlob) {
 		PdfMerger pdfMerger = new PdfMerger(pdf);
 		try {
-			PdfDocument regFile = new PdfDocument(new PdfReader(fileBlob.getData().getBinaryStream()));
+			PdfDocument regFile = new PdfDocument(new PdfReader(fileBlob.openContent()));
 			// Fuer PDF A darf der interpolate Key nicht gesetzt sein
 			for (int i = 0; i < regFile.getNumberOfPdfObjects(); i++) {
 				PdfObject object = regFile.getPdfObject(i);
@@ -412,7 +411,7 @@ public class ArchivierungPdfGenerator {
 				}
 			}
 			pdfMerger.merge(regFile, 1, regFile.getNumberOfPages());
-		} catch (IOException | SQLException e) {
+		} catch (IOException e) {
 			throw new AppFailureException("Bei der Generierung des Dokuments ist ein Fehler aufgetreten", e);
 		}
 	}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2022 DV Bern AG, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.dvbern.oss.vacme.print.base;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import ch.dvbern.lib.invoicegenerator.dto.component.Logo;
+import ch.dvbern.oss.vacme.shared.errors.AppFailureException;
+import com.lowagie.text.BadElementException;
+import com.lowagie.text.Image;
+import com.lowagie.text.Utilities;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Cache fuer die statischen Teile der Layout-Konfigurationen (Logos). Das Logo wurde bisher fuer jedes PDF vom
+ * Classpath gelesen und dekodiert, nur um die Breite zu berechnen. Die Layout-Konfiguration selber wird von der
+ * Library beim Erstellen veraendert und kann deshalb nicht zwischen PDFs geteilt werden, darum wird pro PDF ein neues
+ * {@link Logo} aus den gecachten Daten erstellt.
+ */
+@Slf4j
+public final class PdfLayoutCache {
+
+	private static final Map<String, PreparedLogo> LOGOS = new ConcurrentHashMap<>();
+
+	private PdfLayoutCache() {
+		// util
+	}
+
+	/**
+	 * @return das Logo in der maximal erlaubten Groesse oder null, falls das Logo nicht gelesen werden konnte
+	 */
+	@Nullable
+	public static Logo getLogo(
+		@NonNull String logoPath,
+		int leftInMm,
+		int topInMm,
+		int maxWidthInMm,
+		int maxHeightInMm
+	) {
+		PreparedLogo preparedLogo = LOGOS.computeIfAbsent(
+			logoPath + '_' + maxWidthInMm + '_' + maxHeightInMm,
+			key -> prepareLogo(logoPath, maxWidthInMm, maxHeightInMm));
+		if (preparedLogo.getContent().length == 0) {
+			return null;
+		}
+		return new Logo(preparedLogo.getContent(), leftInMm, topInMm, preparedLogo.getWidthInMm());
+	}
+
+	@NonNull
+	static PreparedLogo prepareLogo(@NonNull String logoPath, int maxWidthInMm, int maxHeightInMm) {
+		byte[] content = readLogo(logoPath);
+		if (content.length == 0) {
+			return new PreparedLogo(content, 0);
+		}
+		try {
+			Image image = Image.getInstance(content);
+			final float imageWidthInMm = Utilities.pointsToMillimeters(image.getWidth());
+			final float imageHeightInMm = Utilities.pointsToMillimeters(image.getHeight());
+			float widthInMm = Math.min(maxWidthInMm, imageWidthInMm);
+			if (imageHeightInMm > maxHeightInMm) {
+				final float factor = maxHeightInMm / imageHeightInMm;
+				widthInMm = Math.min(widthInMm, imageWidthInMm * factor);
+			}
+			return new PreparedLogo(content, widthInMm);
+		} catch (IOException | BadElementException e) {
+			LOG.error("Failed to read the Logo: {}", e.getMessage(), e);
+			return new PreparedLogo(new byte[0], 0);
+		}
+	}
+
+	@NonNull
+	private static byte[] readLogo(@NonNull String logoPath) {
+		try (InputStream inputStream = PdfLayoutCache.class.getResourceAsStream(logoPath)) {
+			if (inputStream == null) {
+				throw new AppFailureException("Could not find logo on path " + logoPath);
+			}
+			return inputStream.readAllBytes();
+		} catch (IOException e) {
+			throw new AppFailureException("Could not load logo on path " + logoPath, e);
+		}
+	}
+
+	@Getter(AccessLevel.PACKAGE)
+	@AllArgsConstructor(access = AccessLevel.PRIVATE)
+	static final class PreparedLogo {
+		@NonNull
+		private final byte[] content;
+		private final float widthInMm;
+	}
+}
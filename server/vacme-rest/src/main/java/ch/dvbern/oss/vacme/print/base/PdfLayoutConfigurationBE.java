@@ -17,24 +17,16 @@
 
 package ch.dvbern.oss.vacme.print.base;
 
-import java.io.IOException;
 import java.util.List;
 import java.util.Locale;
 
-import javax.annotation.Nonnull;
-
 import ch.dvbern.lib.invoicegenerator.dto.BaseLayoutConfiguration;
 import ch.dvbern.lib.invoicegenerator.dto.OnPage;
 import ch.dvbern.lib.invoicegenerator.dto.component.AddressComponent;
 import ch.dvbern.lib.invoicegenerator.dto.component.Logo;
 import ch.dvbern.lib.invoicegenerator.dto.component.PhraseRenderer;
 import ch.dvbern.oss.vacme.i18n.ServerMessageUtil;
-import ch.dvbern.oss.vacme.shared.errors.AppFailureException;
-import com.lowagie.text.BadElementException;
-import com.lowagie.text.Image;
 import com.lowagie.text.Utilities;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 import static ch.dvbern.lib.invoicegenerator.dto.component.AddressComponent.ADRESSE_HEIGHT;
 import static ch.dvbern.lib.invoicegenerator.dto.component.AddressComponent.ADRESSE_WIDTH;
@@ -54,8 +46,6 @@ public class PdfLayoutConfigurationBE extends BaseLayoutConfiguration {
 
 	private static final String LOGO_PATH = "/logo/logo_kanton_bern.png";
 
-	private static final Logger LOG = LoggerFactory.getLogger(PdfLayoutConfigurationBE.class);
-
 	public PdfLayoutConfigurationBE(final List<String> absenderHeader, boolean kantonsHeader) {
 		super(new AddressComponent(
 			kantonsHeader ? ServerMessageUtil.getMessage("print_absenderHeader", Locale.GERMAN) : "",
@@ -65,7 +55,7 @@ public class PdfLayoutConfigurationBE extends BaseLayoutConfiguration {
 			ADRESSE_HEIGHT,
 			OnPage.FIRST));
 		if (kantonsHeader) {
-			applyLogo(getLogoContent());
+			applyLogo();
 		}
 		setTopMarginInPoints(Utilities.millimetersToPoints(100f));
 		setLeftPageMarginInPoints(Utilities.millimetersToPoints(LEFT_PAGE_MARGIN_MM));
@@ -78,37 +68,15 @@ public class PdfLayoutConfigurationBE extends BaseLayoutConfiguration {
 		}
 	}
 
-	@Nonnull
-	private byte[] getLogoContent() {
-		try {
-			return VacmePdfGenerator.class.getResourceAsStream(LOGO_PATH).readAllBytes();
-		} catch (IOException e) {
-			throw new AppFailureException("Could not load logo on path " + LOGO_PATH, e);
-		}
-	}
-
-	private void applyLogo(final byte[] logo) {
-		if (logo == null || logo.length == 0) {
-			return;
-		}
-
-		try {
-			Image image = Image.getInstance(logo);
-			final float imageWidthInMm = Utilities.pointsToMillimeters(image.getWidth());
-			final float imageHeightInMm = Utilities.pointsToMillimeters(image.getHeight());
-			float widthInMm = Math.min(LOGO_MAX_WIDTH_IN_MM, imageWidthInMm);
-			if (imageHeightInMm > LOGO_MAX_HEIGHT_IN_MM) {
-				final float factor = LOGO_MAX_HEIGHT_IN_MM / imageHeightInMm;
-				widthInMm = Math.min(widthInMm, imageWidthInMm * factor);
-			}
-			Logo logoToApply = new Logo(
-				logo,
-				LOGO_LEFT_IN_MM,
-				LOGO_TOP_IN_MM,
-				widthInMm);
-			setLogo(logoToApply);
-		} catch (IOException | BadElementException e) {
-			LOG.error("Failed to read the Logo: {}", e.getMessage(), e);
+	private void applyLogo() {
+		Logo logo = PdfLayoutCache.getLogo(
+			LOGO_PATH,
+			LOGO_LEFT_IN_MM,
+			LOGO_TOP_IN_MM,
+			LOGO_MAX_WIDTH_IN_MM,
+			LOGO_MAX_HEIGHT_IN_MM);
+		if (logo != null) {
+			setLogo(logo);
 		}
 	}
 }
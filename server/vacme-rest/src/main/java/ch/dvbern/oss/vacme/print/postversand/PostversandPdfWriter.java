@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2022 DV Bern AG, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.dvbern.oss.vacme.print.postversand;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import ch.dvbern.oss.vacme.shared.errors.AppFailureException;
+import com.itextpdf.kernel.geom.PageSize;
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfReader;
+import com.itextpdf.kernel.pdf.PdfWriter;
+import com.itextpdf.kernel.pdf.WriterProperties;
+import lombok.Getter;
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+/**
+ * Fasst einzelne Brief-PDFs zu einem Sammel-PDF fuer den Postversand zusammen. Die Seiten werden direkt nach dem
+ * Kopieren in den OutputStream geschrieben, der Speicherbedarf haengt deshalb nicht von der Anzahl Briefe ab. Im
+ * Smart-Mode werden identische Ressourcen (Logos, Schriften) nur einmal ins Sammel-PDF geschrieben.
+ */
+public class PostversandPdfWriter implements AutoCloseable {
+
+	@NonNull
+	private final PdfDocument target;
+
+	private final boolean duplex;
+
+	@Getter
+	private int letterCount = 0;
+
+	public PostversandPdfWriter(@NonNull OutputStream outputStream, boolean duplex) {
+		this.target = new PdfDocument(new PdfWriter(outputStream, new WriterProperties()
+			.useSmartMode()
+			.setFullCompressionMode(true)));
+		this.duplex = duplex;
+	}
+
+	/**
+	 * Haengt einen Brief an. Der Brief wird zuerst vollstaendig in einen eigenen Puffer kopiert (inkl. leerer
+	 * Rueckseite im Duplex-Modus). Schlaegt das fehl, wird eine IOException geworfen und das Sammel-PDF bleibt
+	 * unveraendert. Schlaegt erst das Anhaengen des kopierten Briefs fehl, ist das Sammel-PDF unvollstaendig und es
+	 * wird eine {@link AppFailureException} geworfen: das Sammel-PDF darf dann nicht mehr verwendet werden.
+	 */
+	public void addLetter(@NonNull byte[] letter) throws IOException {
+		final byte[] copy = copyLetter(letter);
+		try (PdfDocument source = new PdfDocument(new PdfReader(new ByteArrayInputStream(copy)))) {
+			final int firstNewPage = target.getNumberOfPages() + 1;
+			source.copyPagesTo(1, source.getNumberOfPages(), target);
+			for (int i = firstNewPage; i <= target.getNumberOfPages(); i++) {
+				target.getPage(i).flush(true);
+			}
+			letterCount++;
+		} catch (RuntimeException e) {
+			throw new AppFailureException("VACME-POSTVERSAND: Brief konnte nicht angehaengt werden, das Sammel-PDF "
+				+ "ist unvollstaendig", e);
+		}
+	}
+
+	/**
+	 * @return der Brief als eigenstaendiges PDF, im Duplex-Modus mit gerader Seitenzahl
+	 */
+	@NonNull
+	private byte[] copyLetter(@NonNull byte[] letter) throws IOException {
+		final ByteArrayOutputStream buffer = new ByteArrayOutputStream(letter.length);
+		try (
+			PdfDocument source = new PdfDocument(new PdfReader(new ByteArrayInputStream(letter)));
+			PdfDocument copy = new PdfDocument(new PdfWriter(buffer))
+		) {
+			final int numberOfPages = source.getNumberOfPages();
+			source.copyPagesTo(1, numberOfPages, copy);
+			if (duplex && numberOfPages % 2 == 1) {
+				// Leere Rueckseite, damit der naechste Brief auf einem neuen Blatt beginnt
+				copy.addNewPage(new PageSize(source.getPage(numberOfPages).getPageSize()));
+			}
+		} catch (RuntimeException e) {
+			// iText wirft bei defekten PDFs (auch erst beim Kopieren einzelner Seiten) RuntimeExceptions
+			throw new IOException("Brief ist kein gueltiges PDF", e);
+		}
+		return buffer.toByteArray();
+	}
+
+	@Override
+	public void close() {
+		if (target.getNumberOfPages() == 0) {
+			// Ein PDF ohne Seiten kann nicht geschrieben werden
+			target.addNewPage();
+		}
+		target.close();
+	}
+}
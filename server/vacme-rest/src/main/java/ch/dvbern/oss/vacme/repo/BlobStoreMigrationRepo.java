@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2022 DV Bern AG, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.dvbern.oss.vacme.repo;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.transaction.Transactional;
+import javax.transaction.Transactional.TxType;
+
+import ch.dvbern.oss.vacme.service.blobstore.BlobTabelle;
+import ch.dvbern.oss.vacme.shared.errors.AppFailureException;
+import ch.dvbern.oss.vacme.smartdb.Db;
+import lombok.RequiredArgsConstructor;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.hibernate.Session;
+
+/**
+ * Native Zugriffe fuer das Auslagern der LOBs in den BlobStore und die Garbage Collection. Die Inhalte werden direkt aus dem ResultSet gestreamt,
+ * ohne die Entitaeten zu laden.
+ */
+@ApplicationScoped
+@RequiredArgsConstructor(onConstructor_ = @Inject)
+public class BlobStoreMigrationRepo {
+
+	private final Db db;
+
+	/**
+	 * @return die IDs der Zeilen nach nachId (sortiert), deren Inhalt noch in der DB liegt
+	 */
+	@NonNull
+	@Transactional(TxType.REQUIRES_NEW)
+	public List<String> findNichtAusgelagert(@NonNull BlobTabelle tabelle, @NonNull String nachId, int limit) {
+		@SuppressWarnings("unchecked")
+		final List<String> ids = db.getEntityManager()
+			.createNativeQuery("SELECT id FROM " + tabelle.getTableName()
+				+ " WHERE contentHash IS NULL AND id > ?1 ORDER BY id LIMIT ?2")
+			.setParameter(1, nachId)
+			.setParameter(2, limit)
+			.getResultList();
+		return ids;
+	}
+
+	/**
+	 * Uebergibt den Inhalt der Zeile an den BlobStore und leert danach die Spalte data. Wird die Entitaet gleichzeitig
+	 * ueber Hibernate gespeichert, schreibt diese den alten Inhalt zurueck und setzt den Hash wieder auf NULL. Die
+	 * Zeile wird dann beim naechsten Lauf nochmals ausgelagert.
+	 *
+	 * @return der Hash, leer wenn die Zeile nicht mehr existiert oder bereits ausgelagert wurde
+	 */
+	@NonNull
+	@Transactional(TxType.REQUIRES_NEW)
+	public Optional<String> auslagern(
+		@NonNull BlobTabelle tabelle,
+		@NonNull String id,
+		@NonNull Function<InputStream, String> blobStorePut
+	) {
+		final Session session = db.getEntityManager().unwrap(Session.class);
+		final Optional<String> contentHash = session.doReturningWork(connection -> {
+			try (PreparedStatement statement = connection.prepareStatement("SELECT data FROM " + tabelle.getTableName()
+				+ " WHERE id = ? AND contentHash IS NULL FOR UPDATE")) {
+				statement.setString(1, id);
+				try (ResultSet resultSet = statement.executeQuery()) {
+					if (!resultSet.next()) {
+						return Optional.empty();
+					}
+					try (InputStream data = resultSet.getBinaryStream(1)) {
+						return Optional.of(blobStorePut.apply(data));
+					} catch (IOException e) {
+						throw new AppFailureException("VACME-BLOBSTORE: Inhalt von " + tabelle + ' ' + id
+							+ " konnte nicht gelesen werden", e);
+					}
+				}
+			}
+		});
+		contentHash.ifPresent(hash -> db.getEntityManager()
+			.createNativeQuery("UPDATE " + tabelle.getTableName() + " SET contentHash = ?1, data = '' WHERE id = ?2")
+			.setParameter(1, hash)
+			.setParameter(2, id)
+			.executeUpdate());
+		return contentHash;
+	}
+
+	/**
+	 * @return diejenigen der contentHashes, auf die noch mindestens eine Zeile verweist
+	 */
+	@NonNull
+	@Transactional(TxType.REQUIRES_NEW)
+	public Set<String> findReferenzierteContentHashes(@NonNull Collection<String> contentHashes) {
+		if (contentHashes.isEmpty()) {
+			return new HashSet<>();
+		}
+		final String sql = Arrays.stream(BlobTabelle.values())
+			.map(tabelle -> "SELECT contentHash FROM " + tabelle.getTableName() + " WHERE contentHash IN (:hashes)")
+			.collect(Collectors.joining(" UNION "));
+		@SuppressWarnings("unchecked")
+		final List<String> referenziert = db.getEntityManager()
+			.createNativeQuery(sql)
+			.setParameter("hashes", contentHashes)
+			.getResultList();
+		return new HashSet<>(referenziert);
+	}
+}
@@ -18,6 +18,8 @@
 package ch.dvbern.oss.vacme.repo;
 
 import java.math.BigInteger;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 import javax.enterprise.context.RequestScoped;
@@ -32,14 +34,18 @@ import ch.dvbern.oss.vacme.entities.booster.RegistrierungQueueTyp;
 import ch.dvbern.oss.vacme.entities.types.KrankheitIdentifier;
 import ch.dvbern.oss.vacme.entities.util.DBConst;
 import ch.dvbern.oss.vacme.smartdb.Db;
+import com.google.common.collect.Lists;
 import lombok.RequiredArgsConstructor;
 import org.checkerframework.checker.nullness.qual.NonNull;
+import org.hibernate.Session;
 
 @RequestScoped
 @Transactional
 @RequiredArgsConstructor(onConstructor_ = @Inject)
 public class BoosterQueueRepo {
 
+	private static final int INSERT_CHUNK_SIZE = 500;
+
 	private final Db db;
 
 	/**
@@ -92,13 +98,39 @@ public class BoosterQueueRepo {
 		return nativeQuery.executeUpdate();
 	}
 
-	public void createRegistrierungQueueItems(@NonNull List<String> regNumsToCalculate) {
-		for (String regNum : regNumsToCalculate) {
-			RegistrierungQueue registrierungQueue = RegistrierungQueue.forRecalculation(regNum);
-			Long nextQueueSequence = this.getNextQueueId();
-			registrierungQueue.setId(nextQueueSequence);
-			db.persist(registrierungQueue);
+	/**
+	 * Fuegt fuer jede Registrierungsnummer einen RegistrierungQueue Eintrag zur Neuberechnung ein. Die IDs werden direkt
+	 * in der DB aus der Sequence gezogen und es werden mehrere Zeilen pro INSERT geschrieben, damit auch grosse
+	 * Mengen ohne einen Roundtrip pro Zeile eingefuegt werden koennen.
+	 *
+	 * @return Anzahl eingefuegter Eintraege
+	 */
+	public int createRegistrierungQueueItems(
+		@NonNull List<String> regNumsToCalculate,
+		@NonNull KrankheitIdentifier krankheitIdentifier
+	) {
+		int inserted = 0;
+		for (List<String> chunk : Lists.partition(regNumsToCalculate, INSERT_CHUNK_SIZE)) {
+			inserted += insertRegistrierungQueueItems(chunk, krankheitIdentifier);
+		}
+		return inserted;
+	}
+
+	private int insertRegistrierungQueueItems(
+		@NonNull List<String> regNums,
+		@NonNull KrankheitIdentifier krankheitIdentifier
+	) {
+		String valuesRow = String.format("(NEXTVAL(req_queue_sequence), now(), now(), '%s', '%s', 1, 0, NULL, ?, '%s', '%s', '%s')",
+			DBConst.SYSTEM_ADMIN_ID, DBConst.SYSTEM_ADMIN_ID,
+			RegistrierungQueueStatus.NEW.name(), RegistrierungQueueTyp.BOOSTER_RULE_RECALCULATION.name(), krankheitIdentifier.name());
+		String query = "INSERT INTO RegistrierungQueue (id, timestampErstellt, timestampMutiert, userErstellt, "
+			+ "userMutiert, version, errorCount, lastError, registrierungNummer, status, typ, krankheitIdentifier) VALUES "
+			+ String.join(", ", Collections.nCopies(regNums.size(), valuesRow));
+		final Query nativeQuery = db.getEntityManager().createNativeQuery(query);
+		for (int i = 0; i < regNums.size(); i++) {
+			nativeQuery.setParameter(i + 1, regNums.get(i));
 		}
+		return nativeQuery.executeUpdate();
 	}
 
 	public long removeAllSuccessfullEntries(@NonNull KrankheitIdentifier krankheitIdentifier) {
@@ -120,6 +152,58 @@ public class BoosterQueueRepo {
 			.fetch();
 	}
 
+	/**
+	 * Reserviert bis zu batchsize offene Eintraege fuer die Impfschutzberechnung mit einem Lease auf den gegebenen
+	 * Owner und gibt diese zurueck. Eintraege mit einem gueltigen Lease eines anderen Owners (z.B. eines anderen Nodes)
+	 * werden uebersprungen, abgelaufene Leases (z.B. nach einem Absturz) werden neu vergeben.
+	 */
+	@NonNull
+	public List<RegistrierungQueue> claimRegsToRecalculateImpfschutzFromQueue(
+		@NonNull String leaseOwner,
+		long batchsize,
+		long leaseSeconds
+	) {
+		String query = "UPDATE RegistrierungQueue SET leaseOwner = :leaseOwner, "
+			+ "leaseUntil = NOW(6) + INTERVAL :leaseSeconds SECOND "
+			+ "WHERE typ = :typ AND status IN (:statusNew, :statusRetry) "
+			+ "AND (leaseUntil IS NULL OR leaseUntil < NOW(6)) "
+			+ "ORDER BY timestampErstellt ASC LIMIT :batchsize";
+		final int claimed = db.getEntityManager().createNativeQuery(query)
+			.setParameter("leaseOwner", leaseOwner)
+			.setParameter("leaseSeconds", leaseSeconds)
+			.setParameter("typ", RegistrierungQueueTyp.BOOSTER_RULE_RECALCULATION.name())
+			.setParameter("statusNew", RegistrierungQueueStatus.NEW.name())
+			.setParameter("statusRetry", RegistrierungQueueStatus.FAILED_RETRY.name())
+			.setParameter("batchsize", batchsize)
+			.executeUpdate();
+		if (claimed == 0) {
+			return Collections.emptyList();
+		}
+		return db.select(QRegistrierungQueue.registrierungQueue)
+			.from(QRegistrierungQueue.registrierungQueue)
+			.where(QRegistrierungQueue.registrierungQueue.leaseOwner.eq(leaseOwner))
+			.orderBy(QRegistrierungQueue.registrierungQueue.timestampErstellt.asc())
+			.fetch();
+	}
+
+	@NonNull
+	public List<RegistrierungQueue> findByIds(@NonNull Collection<Long> ids) {
+		if (ids.isEmpty()) {
+			return Collections.emptyList();
+		}
+		return db.selectFrom(QRegistrierungQueue.registrierungQueue)
+			.where(QRegistrierungQueue.registrierungQueue.id.in(ids))
+			.fetch();
+	}
+
+	/**
+	 * Schaltet JDBC-Batching fuer die Session der laufenden Transaktion ein. Global ist es ausgeschaltet, damit
+	 * nur die Batch-Jobs, die viele gleichartige Entitaeten schreiben, davon betroffen sind.
+	 */
+	public void enableJdbcBatching(int batchSize) {
+		db.getEntityManager().unwrap(Session.class).setJdbcBatchSize(batchSize);
+	}
+
 	@NonNull
 	public Long getNextQueueId(){
 		return ((BigInteger) this.db.getEntityManager()
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2022 DV Bern AG, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.dvbern.oss.vacme.repo;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.context.control.ActivateRequestContext;
+import javax.inject.Inject;
+import javax.transaction.Transactional;
+
+import ch.dvbern.oss.vacme.service.cache.CacheInvalidationMessage;
+import ch.dvbern.oss.vacme.service.cache.VacmeCacheName;
+import ch.dvbern.oss.vacme.smartdb.Db;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+/**
+ * Zugriff auf die Tabelle CacheInvalidation. Im Gegensatz zu den anderen Repos ist dieses ApplicationScoped und
+ * aktiviert selber einen RequestContext, da es nur von den eigenen Threads des {@link
+ * ch.dvbern.oss.vacme.service.cache.DbCacheInvalidationTransport} (Poller und Publisher) aufgerufen wird.
+ * Alle Zeitstempel werden von der DB gesetzt, damit die Uhren der Nodes keine Rolle spielen.
+ */
+@ApplicationScoped
+@ActivateRequestContext
+@Transactional
+@Slf4j
+@RequiredArgsConstructor(onConstructor_ = @Inject)
+public class CacheInvalidationRepo {
+
+	private final Db db;
+
+	public void create(@NonNull CacheInvalidationMessage message) {
+		db.getEntityManager()
+			.createNativeQuery("INSERT INTO CacheInvalidation (timestampErstellt, node, cacheName, cacheKey) "
+				+ "VALUES (NOW(6), ?1, ?2, ?3)")
+			.setParameter(1, message.getNode())
+			.setParameter(2, message.getCacheName().name())
+			.setParameter(3, message.getCacheKey())
+			.executeUpdate();
+	}
+
+	/**
+	 * @return alle Invalidierungen der letzten Sekunden, nach id sortiert
+	 */
+	@NonNull
+	public Map<Long, CacheInvalidationMessage> findNewerThan(long seconds) {
+		@SuppressWarnings("unchecked")
+		final List<Object[]> rows = db.getEntityManager()
+			.createNativeQuery("SELECT id, node, cacheName, cacheKey FROM CacheInvalidation "
+				+ "WHERE timestampErstellt >= NOW(6) - INTERVAL ?1 SECOND ORDER BY id")
+			.setParameter(1, seconds)
+			.getResultList();
+		final Map<Long, CacheInvalidationMessage> result = new LinkedHashMap<>();
+		for (Object[] row : rows) {
+			final long id = ((Number) row[0]).longValue();
+			final VacmeCacheName cacheName;
+			try {
+				cacheName = VacmeCacheName.valueOf((String) row[2]);
+			} catch (IllegalArgumentException e) {
+				// z.B. waehrend eines Deployments von einem Node mit einer anderen Version
+				LOG.warn("VACME-CACHE: Unbekannter Cache {} in CacheInvalidation {}", row[2], id);
+				continue;
+			}
+			result.put(id, new CacheInvalidationMessage((String) row[1], cacheName, (String) row[3]));
+		}
+		return result;
+	}
+
+	public int deleteOlderThan(long seconds) {
+		return db.getEntityManager()
+			.createNativeQuery("DELETE FROM CacheInvalidation WHERE timestampErstellt < NOW(6) - INTERVAL ?1 SECOND")
+			.setParameter(1, seconds)
+			.executeUpdate();
+	}
+}
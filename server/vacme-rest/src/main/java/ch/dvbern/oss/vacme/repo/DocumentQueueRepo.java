@@ -172,10 +172,21 @@ public class DocumentQueueRepo {
 			.orElseThrow(() -> AppFailureException.entityNotFound(DocumentQueueResult.class, docResultId.toString()));
 	}
 
+	/**
+	 * Setzt das Item mit einem bedingten UPDATE auf IN_PROGRESS. Laufen mehrere Worker (oder Nodes) gleichzeitig,
+	 * gewinnt genau einer.
+	 *
+	 * @return true wenn das Item von diesem Aufrufer uebernommen wurde
+	 */
 	@Transactional(TxType.REQUIRES_NEW)
-	public void markDocumentQueueItemAsInProgressNewTransaction(@NonNull DocumentQueue documentQueueItem) {
-		LOG.debug("VACME-DOC-CREATION: Marking DocumentQueue as IN_PROGRESS {}", documentQueueItem.getId().toString());
-		documentQueueItem.setStatus(DocumentQueueStatus.IN_PROGRESS);
-		this.update(documentQueueItem);
+	public boolean claimDocumentQueueItemNewTransaction(@NonNull Long docId) {
+		LOG.debug("VACME-DOC-CREATION: Marking DocumentQueue as IN_PROGRESS {}", docId);
+		long updated = db.update(documentQueue)
+			.set(documentQueue.status, DocumentQueueStatus.IN_PROGRESS)
+			.set(documentQueue.version, documentQueue.version.add(1))
+			.where(documentQueue.id.eq(docId)
+				.and(documentQueue.status.in(DocumentQueueStatus.NEW, DocumentQueueStatus.FAILED_RETRY)))
+			.execute();
+		return updated == 1;
 	}
 }
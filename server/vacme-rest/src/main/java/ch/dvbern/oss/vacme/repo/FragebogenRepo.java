@@ -17,8 +17,13 @@
 
 package ch.dvbern.oss.vacme.repo;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import javax.enterprise.context.RequestScoped;
 import javax.inject.Inject;
@@ -73,6 +78,22 @@ public class FragebogenRepo {
 		return registrierungOptional;
 	}
 
+	/**
+	 * Laedt die Frageboegen mehrerer Registrierungen mit einer Query, gruppiert nach Registrierungsnummer
+	 */
+	@NonNull
+	public Map<String, Fragebogen> findByRegistrierungsnummern(@NonNull Collection<String> registrierungsnummern) {
+		if (registrierungsnummern.isEmpty()) {
+			return Collections.emptyMap();
+		}
+		return db.selectFrom(fragebogen)
+			.innerJoin(fragebogen.registrierung).fetchJoin()
+			.where(fragebogen.registrierung.registrierungsnummer.in(registrierungsnummern))
+			.fetch()
+			.stream()
+			.collect(Collectors.toMap(f -> f.getRegistrierung().getRegistrierungsnummer(), Function.identity()));
+	}
+
 	@NonNull
 	public List<Fragebogen> findAll() {
 		return db.findAll(fragebogen);
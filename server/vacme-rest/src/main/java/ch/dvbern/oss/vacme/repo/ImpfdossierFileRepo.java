@@ -32,6 +32,7 @@ import ch.dvbern.oss.vacme.entities.dossier.QImpfdossierFile;
 import ch.dvbern.oss.vacme.entities.impfen.Impfdossier;
 import ch.dvbern.oss.vacme.jax.FileInfoJax;
 import ch.dvbern.oss.vacme.jax.QFileInfoJax;
+import ch.dvbern.oss.vacme.service.blobstore.BlobStoreService;
 import ch.dvbern.oss.vacme.smartdb.Db;
 import lombok.extern.slf4j.Slf4j;
 import org.checkerframework.checker.nullness.qual.NonNull;
@@ -42,10 +43,12 @@ import org.checkerframework.checker.nullness.qual.NonNull;
 public class ImpfdossierFileRepo {
 
 	private final Db db;
+	private final BlobStoreService blobStoreService;
 
 	@Inject
-	public ImpfdossierFileRepo(Db db) {
+	public ImpfdossierFileRepo(Db db, BlobStoreService blobStoreService) {
 		this.db = db;
+		this.blobStoreService = blobStoreService;
 	}
 
 	public void createImpfdossierFile(@NonNull ImpfdossierFile impfdossierFile) {
@@ -55,6 +58,7 @@ public class ImpfdossierFileRepo {
 				"File-Generierung fuer verstorbene Reg {}. Auslieferung unterdrueckt",
 				impfdossierFile.getImpfdossier().getRegistrierung().getRegistrierungsnummer());
 		}
+		blobStoreService.externalize(impfdossierFile.getFileBlob());
 		db.persist(impfdossierFile);
 		db.flush();
 	}
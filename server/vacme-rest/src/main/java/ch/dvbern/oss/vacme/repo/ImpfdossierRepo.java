@@ -18,8 +18,11 @@
 package ch.dvbern.oss.vacme.repo;
 
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 
 import javax.enterprise.context.RequestScoped;
@@ -37,11 +40,15 @@ import ch.dvbern.oss.vacme.entities.registration.Prioritaet;
 import ch.dvbern.oss.vacme.entities.registration.QRegistrierung;
 import ch.dvbern.oss.vacme.entities.registration.Registrierung;
 import ch.dvbern.oss.vacme.entities.terminbuchung.Impftermin;
+import ch.dvbern.oss.vacme.entities.terminbuchung.OrtDerImpfung;
+import ch.dvbern.oss.vacme.entities.terminbuchung.QImpfslot;
+import ch.dvbern.oss.vacme.entities.terminbuchung.QImpftermin;
 import ch.dvbern.oss.vacme.entities.types.KrankheitIdentifier;
 import ch.dvbern.oss.vacme.enums.ImpfdossierStatus;
 import ch.dvbern.oss.vacme.shared.errors.AppFailureException;
 import ch.dvbern.oss.vacme.smartdb.Db;
 import ch.dvbern.oss.vacme.wrapper.VacmeDecoratorFactory;
+import com.querydsl.jpa.JPAExpressions;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.Validate;
 import org.checkerframework.checker.nullness.qual.NonNull;
@@ -113,6 +120,60 @@ public class ImpfdossierRepo {
 			.orElseThrow(() -> AppFailureException.entityNotFound(Impfdossier.class, id));
 	}
 
+	/**
+	 * Laedt die Registrierungen zu mehreren Impfdossiers in einer Query
+	 */
+	@NonNull
+	public List<Registrierung> findRegistrierungenOfImpfdossiers(@NonNull Collection<UUID> impfdossierIds) {
+		if (impfdossierIds.isEmpty()) {
+			return Collections.emptyList();
+		}
+		return db.select(registrierung)
+			.from(impfdossier)
+			.innerJoin(impfdossier.registrierung, registrierung)
+			.where(impfdossier.id.in(impfdossierIds))
+			.distinct()
+			.fetch();
+	}
+
+	/**
+	 * Gibt von den uebergebenen Impfdossiers diejenigen zurueck, die einen Termin (1, 2 oder Booster) oder den
+	 * gewuenschten ODI in einem der ODIs haben. Ersetzt die Pruefung pro Dossier.
+	 */
+	@NonNull
+	public Set<UUID> findImpfdossierIdsWithTerminOrGewuenschterOdiIn(
+		@NonNull Collection<UUID> impfdossierIds,
+		@NonNull Set<OrtDerImpfung> odis
+	) {
+		if (impfdossierIds.isEmpty() || odis.isEmpty()) {
+			return Collections.emptySet();
+		}
+		final QImpftermin termin1 = new QImpftermin("termin1");
+		final QImpftermin termin2 = new QImpftermin("termin2");
+		final QImpftermin terminN = new QImpftermin("terminN");
+		final QImpfslot slot1 = new QImpfslot("slot1");
+		final QImpfslot slot2 = new QImpfslot("slot2");
+		final QImpfslot slotN = new QImpfslot("slotN");
+		return new HashSet<>(db.select(impfdossier.id)
+			.from(impfdossier)
+			.leftJoin(impfdossier.buchung.impftermin1, termin1)
+			.leftJoin(termin1.impfslot, slot1)
+			.leftJoin(impfdossier.buchung.impftermin2, termin2)
+			.leftJoin(termin2.impfslot, slot2)
+			.where(impfdossier.id.in(impfdossierIds)
+				.and(slot1.ortDerImpfung.in(odis)
+					.or(slot2.ortDerImpfung.in(odis))
+					.or(impfdossier.buchung.gewuenschterOdi.in(odis))
+					.or(JPAExpressions.selectOne()
+						.from(impfdossiereintrag)
+						.innerJoin(impfdossiereintrag.impftermin, terminN)
+						.innerJoin(terminN.impfslot, slotN)
+						.where(impfdossiereintrag.impfdossier.eq(impfdossier)
+							.and(slotN.ortDerImpfung.in(odis)))
+						.exists())))
+			.fetch());
+	}
+
 	@NonNull
 	public Collection<Impfdossier> findImpfdossiersForReg(
 		@NonNull ID<Registrierung> registrierungID
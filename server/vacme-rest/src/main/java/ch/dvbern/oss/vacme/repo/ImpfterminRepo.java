@@ -24,14 +24,18 @@ import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.stream.Collectors;
 
 import javax.enterprise.context.RequestScoped;
+import javax.enterprise.event.Event;
 import javax.inject.Inject;
 import javax.persistence.LockModeType;
 import javax.persistence.Query;
@@ -53,11 +57,20 @@ import ch.dvbern.oss.vacme.entities.terminbuchung.QImpfslot;
 import ch.dvbern.oss.vacme.entities.terminbuchung.QImpftermin;
 import ch.dvbern.oss.vacme.entities.types.KrankheitIdentifier;
 import ch.dvbern.oss.vacme.service.VacmeSettingsService;
+import ch.dvbern.oss.vacme.service.tagesstatistik.OdiTagesStatistikService;
+import ch.dvbern.oss.vacme.service.terminindex.FreieTermineChangedEvent;
+import ch.dvbern.oss.vacme.service.terminindex.FreieTermineIndex;
+import ch.dvbern.oss.vacme.service.terminindex.FreieTermineIndexKey;
+import ch.dvbern.oss.vacme.service.terminindex.FreieTermineIndexService;
+import ch.dvbern.oss.vacme.service.terminindex.FreieTermineProSlotDTO;
+import ch.dvbern.oss.vacme.service.terminindex.ReservierterTerminDTO;
 import ch.dvbern.oss.vacme.service.wellapi.WellApiService;
+import ch.dvbern.oss.vacme.shared.errors.AppFailureException;
 import ch.dvbern.oss.vacme.shared.errors.AppValidationMessage;
 import ch.dvbern.oss.vacme.smartdb.Db;
 import ch.dvbern.oss.vacme.smartdb.MySQLJPATemplates;
 import ch.dvbern.oss.vacme.util.ImpfterminOffsetWuerfel;
+import com.querydsl.core.Tuple;
 import com.querydsl.core.types.Predicate;
 import com.querydsl.core.types.dsl.Expressions;
 import com.querydsl.core.types.dsl.NumberExpression;
@@ -80,6 +93,9 @@ public class ImpfterminRepo {
 	private final ImpfungRepo impfungRepo;
 	private final WellApiService wellApiService;
 	private final VacmeSettingsService vacmeSettingsService;
+	private final FreieTermineIndexService freieTermineIndexService;
+	private final OdiTagesStatistikService odiTagesStatistikService;
+	private final Event<FreieTermineChangedEvent> freieTermineChangedEvent;
 
 	@Nullable
 	private ImpfterminOffsetWuerfel wuerfel = null;
@@ -99,6 +115,8 @@ public class ImpfterminRepo {
 
 	public void create(@NonNull Impftermin impftermin) {
 		db.persist(impftermin);
+		freieTermineIndexService.onTerminErstellt(impftermin);
+		freieTermineChangedEvent.fire(FreieTermineChangedEvent.of(impftermin));
 	}
 
 	@NonNull
@@ -193,6 +211,14 @@ public class ImpfterminRepo {
 		final LocalDateTime minDateTime = minDate.atStartOfDay();
 		final LocalDateTime maxDateTime = maxDate.plusDays(1).atStartOfDay();
 
+		final FreieTermineIndex freieTermineIndex = getFreieTermineIndex();
+		if (freieTermineIndex != null) {
+			return freieTermineIndex.findNextFreierTermin(
+				new FreieTermineIndexKey(ortDerImpfung.getId(), krankheit, impffolge),
+				minDateTime,
+				maxDateTime);
+		}
+
 		// Achtung, diese Methode gibt meine eigenen reservierten Termine nicht zurueck!
 		// Problem: Wir wissen auf dem Backend die Registrierungsnummer nicht
 		return db
@@ -210,6 +236,87 @@ public class ImpfterminRepo {
 			.fetchFirst();
 	}
 
+	@Nullable
+	private FreieTermineIndex getFreieTermineIndex() {
+		final LocalDateTime minDateTime = LocalDate.now().atStartOfDay();
+		return freieTermineIndexService.getIndex(
+			() -> findAnzahlFreieTermineProSlot(minDateTime),
+			() -> findReservierteTermine(minDateTime));
+	}
+
+	/**
+	 * Liest die Anzahl freier (nicht gebuchter und nicht reservierter) Termine pro Slot ab dem gegebenen Zeitpunkt.
+	 * Dient als Basis fuer den {@link FreieTermineIndex}.
+	 */
+	@NonNull
+	public List<FreieTermineProSlotDTO> findAnzahlFreieTermineProSlot(@NonNull LocalDateTime minDateTime) {
+		final List<Tuple> tuples = db
+			.select(
+				QImpfslot.impfslot.ortDerImpfung.id,
+				QImpfslot.impfslot.krankheitIdentifier,
+				QImpftermin.impftermin.impffolge,
+				QImpfslot.impfslot.zeitfenster.bis,
+				QImpftermin.impftermin.count())
+			.from(QImpfslot.impfslot)
+			.innerJoin(QImpftermin.impftermin).on(QImpftermin.impftermin.impfslot.eq(QImpfslot.impfslot))
+			.where(QImpftermin.impftermin.gebucht.isFalse()
+				.and(QImpfslot.impfslot.zeitfenster.bis.goe(minDateTime))
+				.and(isTerminNichtReserviert()))
+			.groupBy(
+				QImpfslot.impfslot.ortDerImpfung.id,
+				QImpfslot.impfslot.krankheitIdentifier,
+				QImpftermin.impftermin.impffolge,
+				QImpfslot.impfslot.zeitfenster.bis)
+			.fetch();
+		return tuples.stream()
+			.map(tuple -> new FreieTermineProSlotDTO(
+				new FreieTermineIndexKey(
+					Objects.requireNonNull(tuple.get(0, UUID.class)),
+					Objects.requireNonNull(tuple.get(1, KrankheitIdentifier.class)),
+					Objects.requireNonNull(tuple.get(2, Impffolge.class))),
+				Objects.requireNonNull(tuple.get(3, LocalDateTime.class)),
+				Objects.requireNonNull(tuple.get(4, Long.class))))
+			.collect(Collectors.toList());
+	}
+
+	/**
+	 * Liest die noch gueltig reservierten, nicht gebuchten Termine ab dem gegebenen Zeitpunkt. Sie fehlen in
+	 * {@link #findAnzahlFreieTermineProSlot(LocalDateTime)} und werden vom {@link FreieTermineIndex} beim Ablauf der
+	 * Reservation wieder als frei gezaehlt.
+	 */
+	@NonNull
+	public List<ReservierterTerminDTO> findReservierteTermine(@NonNull LocalDateTime minDateTime) {
+		final long reservationDauer = vacmeSettingsService.getTerminReservationDauerInMinutes();
+		final List<Tuple> tuples = db
+			.select(
+				QImpftermin.impftermin.id,
+				QImpftermin.impftermin.registrierungsnummerReserviert,
+				QImpfslot.impfslot.ortDerImpfung.id,
+				QImpfslot.impfslot.krankheitIdentifier,
+				QImpftermin.impftermin.impffolge,
+				QImpfslot.impfslot.zeitfenster.bis,
+				QImpftermin.impftermin.timestampReserviert)
+			.from(QImpfslot.impfslot)
+			.innerJoin(QImpftermin.impftermin).on(QImpftermin.impftermin.impfslot.eq(QImpfslot.impfslot))
+			.where(QImpftermin.impftermin.gebucht.isFalse()
+				.and(QImpfslot.impfslot.zeitfenster.bis.goe(minDateTime))
+				.and(QImpftermin.impftermin.timestampReserviert.isNotNull())
+				.and(QImpftermin.impftermin.registrierungsnummerReserviert.isNotNull())
+				.and(terminReservationAbgelaufen().not()))
+			.fetch();
+		return tuples.stream()
+			.map(tuple -> new ReservierterTerminDTO(
+				Objects.requireNonNull(tuple.get(0, UUID.class)),
+				Objects.requireNonNull(tuple.get(1, String.class)),
+				new FreieTermineIndexKey(
+					Objects.requireNonNull(tuple.get(2, UUID.class)),
+					Objects.requireNonNull(tuple.get(3, KrankheitIdentifier.class)),
+					Objects.requireNonNull(tuple.get(4, Impffolge.class))),
+				Objects.requireNonNull(tuple.get(5, LocalDateTime.class)),
+				Objects.requireNonNull(tuple.get(6, LocalDateTime.class)).plusMinutes(reservationDauer)))
+			.collect(Collectors.toList());
+	}
+
 	@NonNull
 	public List<Impftermin> findImpftermine(@NonNull Impfslot slot, @NonNull Impffolge impffolge) {
 		final List<Impftermin> freieTermine = db
@@ -308,13 +415,72 @@ public class ImpfterminRepo {
 			.fetchFirst();
 	}
 
+	/**
+	 * Belegt einen freien Termin im Slot ohne vorgaengiges SELECT ... FOR UPDATE. Die freien Termine des Slots werden
+	 * ohne Sperre gelesen und in zufaelliger Reihenfolge mit einem bedingten UPDATE (... WHERE id = ? AND gebucht =
+	 * FALSE) belegt. Das UPDATE sperrt nur die eine Zeile bis zum Ende der Transaktion. Parallele Buchungen im selben
+	 * Slot versuchen dadurch meist verschiedene Zeilen; treffen sie doch auf dieselbe, wartet die zweite auf das Ende
+	 * der ersten Transaktion und nimmt danach den naechsten Kandidaten, falls der Termin inzwischen gebucht ist.
+	 * Ist der Slot gemaess {@link FreieTermineIndex} (falls eingeschaltet) bereits ausgebucht, wird gar nicht erst auf
+	 * die DB zugegriffen, sonst ergibt die Suche der Kandidaten keinen Treffer.
+	 */
+	@Nullable
+	public Impftermin claimFreienImpftermin(@NonNull Impfslot slot, @NonNull Impffolge impffolge) {
+		if (isSlotAusgebucht(slot, impffolge)) {
+			return null;
+		}
+		final List<UUID> kandidaten = new ArrayList<>(db
+			.select(QImpftermin.impftermin.id)
+			.from(QImpftermin.impftermin)
+			.where(QImpftermin.impftermin.gebucht.isFalse()
+				.and(QImpftermin.impftermin.impfslot.eq(slot))
+				.and(QImpftermin.impftermin.impffolge.eq(impffolge)))
+			.fetch());
+		// Zufaellige Reihenfolge, damit parallele Buchungen nicht alle auf die erste Zeile warten
+		Collections.shuffle(kandidaten, ThreadLocalRandom.current());
+		final String claimQuery = "UPDATE Impftermin SET version = version + 1 WHERE id = :id AND gebucht = FALSE";
+		for (UUID kandidat : kandidaten) {
+			final int claimed = db.getEntityManager().createNativeQuery(claimQuery)
+				.setParameter("id", kandidat.toString())
+				.executeUpdate();
+			if (claimed == 1) {
+				final Impftermin termin = db.get(Impftermin.toId(kandidat))
+					.orElseThrow(() -> AppFailureException.entityNotFound(Impftermin.class, kandidat));
+				// Das native UPDATE geht am Persistence-Context vorbei
+				db.refresh(termin);
+				return termin;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Frueher Abbruch fuer volle Slots anhand des Zaehlers der freien Termine pro Slot. Ohne Index
+	 * (oder fuer Slots vor heute, die nicht im Index sind) wird der Slot nie als ausgebucht betrachtet.
+	 */
+	private boolean isSlotAusgebucht(@NonNull Impfslot slot, @NonNull Impffolge impffolge) {
+		final LocalDateTime slotBis = slot.getZeitfenster().getBis();
+		if (slotBis.isBefore(LocalDate.now().atStartOfDay())) {
+			return false;
+		}
+		final FreieTermineIndex freieTermineIndex = getFreieTermineIndex();
+		if (freieTermineIndex == null) {
+			return false;
+		}
+		final FreieTermineIndexKey key =
+			new FreieTermineIndexKey(slot.getOrtDerImpfung().getId(), slot.getKrankheitIdentifier(), impffolge);
+		return freieTermineIndex.getAnzahlFreieTermine(key, slotBis, slotBis) == 0;
+	}
+
 	@Nullable
 	public Impftermin findMeinenReserviertenOrFreienImpftermin(
 		@NonNull Registrierung registrierung, @NonNull Impfslot slot, @NonNull Impffolge impffolge
 	) {
 		// wenn Reservation ausgeschaltet dann direkt einen freiden Termin suchen und zurueckgeben
 		if (!vacmeSettingsService.isTerminReservationEnabled()) {
-			if (vacmeSettingsService.isTerminVergabeRandomEnabled()) {
+			if (vacmeSettingsService.isTerminVergabeClaimEnabled()) {
+				return claimFreienImpftermin(slot, impffolge);
+			} else if (vacmeSettingsService.isTerminVergabeRandomEnabled()) {
 				return findFreienImpfterminRandomForSlot(slot, impffolge);
 			} else if (vacmeSettingsService.isTerminVergabeLockEnabled()) {
 				return findFreienImpfterminWithLock(slot, impffolge);
@@ -339,6 +505,10 @@ public class ImpfterminRepo {
 	}
 
 	public void delete(@NonNull ID<Impftermin> terminId) {
+		db.get(terminId).ifPresent(termin -> {
+			freieTermineIndexService.onTerminGeloescht(termin);
+			freieTermineChangedEvent.fire(FreieTermineChangedEvent.of(termin));
+		});
 		db.remove(terminId);
 	}
 
@@ -361,9 +531,15 @@ public class ImpfterminRepo {
 		// Allfaellige bisherige Reservationen loeschen
 		terminReservationAufheben(registrierung, termin.getImpffolge());
 		// und den gewuenschten Termin reservieren
-		termin.setTimestampReserviert(LocalDateTime.now());
+		final LocalDateTime now = LocalDateTime.now();
+		termin.setTimestampReserviert(now);
 		termin.setRegistrierungsnummerReserviert(registrierung.getRegistrierungsnummer());
 		db.flush();
+		freieTermineIndexService.onTerminReserviert(
+			termin,
+			registrierung.getRegistrierungsnummer(),
+			now.plusMinutes(vacmeSettingsService.getTerminReservationDauerInMinutes()));
+		freieTermineChangedEvent.fire(FreieTermineChangedEvent.of(termin));
 	}
 
 	private void terminReservationAufheben(@NonNull Registrierung registrierung, @NonNull Impffolge impffolge) {
@@ -376,6 +552,7 @@ public class ImpfterminRepo {
 			.where(QImpftermin.impftermin.impffolge.eq(impffolge)
 				.and(isFuerMichReservierterTermin(registrierung)))
 			.execute();
+		freieTermineIndexService.onReservationenAufgehoben(registrierung.getRegistrierungsnummer(), impffolge);
 	}
 
 	public void abgelaufeneTerminReservationenAufheben() {
@@ -399,6 +576,14 @@ public class ImpfterminRepo {
 	) {
 		final LocalDateTime minDateTime = start.atStartOfDay();
 		final LocalDateTime maxDateTime = end.plusDays(1).atStartOfDay();
+
+		final FreieTermineIndex freieTermineIndex = getFreieTermineIndex();
+		if (freieTermineIndex != null) {
+			return freieTermineIndex.getAnzahlFreieTermine(
+				new FreieTermineIndexKey(ortDerImpfung.getId(), krankheit, impffolge),
+				minDateTime,
+				maxDateTime);
+		}
 		return db
 			.select(QImpftermin.impftermin)
 			.from(QImpfslot.impfslot)
@@ -516,7 +701,11 @@ public class ImpfterminRepo {
 			(currentTermin) -> this.getAnzahlGebuchteTermine(currentTermin.getImpfslot())
 		);
 		// und auf gebucht setzen
+		final boolean gebuchtVorher = termin.isGebucht();
 		termin.setGebuchtFromImpfterminRepo(true);
+		freieTermineIndexService.onTerminGebucht(termin, gebuchtVorher);
+		odiTagesStatistikService.onTerminGebucht(termin);
+		freieTermineChangedEvent.fire(FreieTermineChangedEvent.of(termin));
 		// wenn dossiereintrag vorhanden ist (case N-Impfung), dann auch dort den Termin setzen
 		if (eintragIfBooster != null) {
 			eintragIfBooster.setImpfterminFromImpfterminRepo(termin);
@@ -577,9 +766,13 @@ public class ImpfterminRepo {
 
 	private void terminFreigeben(@NonNull Impftermin termin, @Nullable Impfdossiereintrag impfdossiereintragIfBooster) {
 		assertTerminHasNoImpfung(termin);
+		final boolean gebuchtVorher = termin.isGebucht();
 		termin.setGebuchtFromImpfterminRepo(false);
 		termin.setRegistrierungsnummerReserviert(null);
 		termin.setTimestampReserviert(null);
+		freieTermineIndexService.onTerminFreigegeben(termin, gebuchtVorher);
+		odiTagesStatistikService.onTerminFreigegeben(termin);
+		freieTermineChangedEvent.fire(FreieTermineChangedEvent.of(termin));
 		// Den Offset zuruecksetzen, falls die Kapazitaet spaeter vermindert wird und kein Offset mehr gebraucht wird
 		termin.setOffsetInMinutes(0);
 		// Well informieren
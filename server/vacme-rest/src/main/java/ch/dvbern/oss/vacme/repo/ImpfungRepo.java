@@ -18,12 +18,16 @@
 package ch.dvbern.oss.vacme.repo;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import javax.enterprise.context.RequestScoped;
 import javax.inject.Inject;
@@ -52,7 +56,9 @@ import ch.dvbern.oss.vacme.entities.types.KrankheitIdentifier;
 import ch.dvbern.oss.vacme.enums.Kundengruppe;
 import ch.dvbern.oss.vacme.jax.QZweitBoosterMailDataRow;
 import ch.dvbern.oss.vacme.jax.ZweitBoosterMailDataRow;
+import ch.dvbern.oss.vacme.service.tagesstatistik.OdiTagesStatistikService;
 import ch.dvbern.oss.vacme.smartdb.Db;
+import ch.dvbern.oss.vacme.smartdb.SmartJPAQuery;
 import ch.dvbern.oss.vacme.util.ImpfinformationDto;
 import ch.dvbern.oss.vacme.util.ImpfinformationDtoRecreator;
 import ch.dvbern.oss.vacme.util.QImpfinformationDto;
@@ -77,23 +83,28 @@ public class ImpfungRepo {
 
 	public static final int SLOW_THRESHOLD_MS =  15  * 1000;
 	private final Db db;
+	private final OdiTagesStatistikService odiTagesStatistikService;
 
 	@Inject
-	public ImpfungRepo(Db db) {
+	public ImpfungRepo(Db db, OdiTagesStatistikService odiTagesStatistikService) {
 		this.db = db;
+		this.odiTagesStatistikService = odiTagesStatistikService;
 	}
 
 	public void create(Impfung impfung) {
 		db.persist(impfung);
 		db.flush();
+		odiTagesStatistikService.onImpfungGeaendert(impfung);
 	}
 
 	public void update(@NonNull Impfung impfung) {
 		db.merge(impfung);
 		db.flush();
+		odiTagesStatistikService.onImpfungGeaendert(impfung);
 	}
 
 	public void delete(@NonNull ID<Impfung> id) {
+		db.get(id).ifPresent(odiTagesStatistikService::onImpfungGeaendert);
 		db.remove(id);
 		db.flush();
 	}
@@ -144,6 +155,54 @@ public class ImpfungRepo {
 	public Optional<ImpfinformationDto> getImpfinformationenOptional(
 		@NonNull String registrierungsNummer,
 		@NonNull KrankheitIdentifier krankheitIdentifier
+	) {
+		Optional<ImpfinformationDto> optional =
+			selectImpfinformationen(krankheitIdentifier, registrierung.registrierungsnummer.eq(registrierungsNummer))
+				.fetchOne();
+
+		return optional.map(impfinformationen -> {
+			List<Impfung> boosterImpfungen = getBoosterImpfungen(registrierungsNummer, krankheitIdentifier);
+			return ImpfinformationDtoRecreator.from(impfinformationen).withBoosterImpfungen(boosterImpfungen).build();
+		});
+	}
+
+	/**
+	 * Batch-Variante von {@link #getImpfinformationenOptional(String, KrankheitIdentifier)}: Laedt die
+	 * Impfinformationen fuer alle Registrierungsnummern mit einer konstanten Anzahl Queries (Registrierung/Dossier/
+	 * Impfung 1 und 2/externes Zertifikat, Boosterimpfungen, Dossiereintraege) statt mit 2 Queries pro Registrierung.
+	 * Registrierungen ohne Dossier fuer die Krankheit fehlen in der Map.
+	 */
+	@NonNull
+	public Map<String, ImpfinformationDto> getImpfinformationenBatch(
+		@NonNull Collection<String> registrierungsNummern,
+		@NonNull KrankheitIdentifier krankheitIdentifier
+	) {
+		if (registrierungsNummern.isEmpty()) {
+			return Collections.emptyMap();
+		}
+		StopWatch stopWatch = StopWatch.createStarted();
+		final List<ImpfinformationDto> impfinformationen =
+			selectImpfinformationen(krankheitIdentifier, registrierung.registrierungsnummer.in(registrierungsNummern))
+				.fetch();
+		final Map<String, List<Impfung>> boosterImpfungen =
+			getBoosterImpfungenBatch(registrierungsNummern, krankheitIdentifier);
+		initImpfdossierEintraege(impfinformationen);
+
+		final Map<String, ImpfinformationDto> result = new HashMap<>();
+		for (ImpfinformationDto infos : impfinformationen) {
+			final String regNum = infos.getRegistrierung().getRegistrierungsnummer();
+			result.put(regNum, ImpfinformationDtoRecreator.from(infos)
+				.withBoosterImpfungen(boosterImpfungen.getOrDefault(regNum, new ArrayList<>()))
+				.build());
+		}
+		logIfSlow(stopWatch, result.size(), "getImpfinformationenBatch");
+		return result;
+	}
+
+	@NonNull
+	private SmartJPAQuery<ImpfinformationDto> selectImpfinformationen(
+		@NonNull KrankheitIdentifier krankheitIdentifier,
+		@NonNull BooleanExpression registrierungPredicate
 	) {
 		QImpftermin aliasTermin1 = new QImpftermin("termin1");
 		QImpftermin aliasTermin2 = new QImpftermin("termin2");
@@ -167,7 +226,7 @@ public class ImpfungRepo {
 				dossier,
 				externesZertifikat);
 		}
-		Optional<ImpfinformationDto> optional = db
+		return db
 			.select(constructor)
 			.from(registrierung)
 			.innerJoin(dossier).on(dossier.registrierung.eq(registrierung))
@@ -176,14 +235,49 @@ public class ImpfungRepo {
 			.leftJoin(aliasImpfung1).on(aliasImpfung1.termin.eq(aliasTermin1))
 			.leftJoin(aliasImpfung2).on(aliasImpfung2.termin.eq(aliasTermin2))
 			.leftJoin(externesZertifikat).on(externesZertifikat.impfdossier.eq(dossier))
-			.where(registrierung.registrierungsnummer.eq(registrierungsNummer)
-				.and(dossier.krankheitIdentifier.eq(krankheitIdentifier)))
-			.fetchOne();
+			.where(registrierungPredicate
+				.and(dossier.krankheitIdentifier.eq(krankheitIdentifier)));
+	}
 
-		return optional.map(impfinformationen -> {
-			List<Impfung> boosterImpfungen = getBoosterImpfungen(registrierungsNummer, krankheitIdentifier);
-			return ImpfinformationDtoRecreator.from(impfinformationen).withBoosterImpfungen(boosterImpfungen).build();
-		});
+	@NonNull
+	private Map<String, List<Impfung>> getBoosterImpfungenBatch(
+		@NonNull Collection<String> registrierungsNummern,
+		@NonNull KrankheitIdentifier krankheitIdentifier
+	) {
+		final List<Tuple> tuples = db.select(registrierung.registrierungsnummer, QImpfung.impfung)
+			.from(QImpfung.impfung)
+			.innerJoin(QImpftermin.impftermin).on(QImpfung.impfung.termin.eq(QImpftermin.impftermin))
+			.innerJoin(QImpfdossiereintrag.impfdossiereintrag).on(QImpfdossiereintrag.impfdossiereintrag.impftermin.eq(QImpftermin.impftermin))
+			.innerJoin(QImpfdossier.impfdossier).on(QImpfdossiereintrag.impfdossiereintrag.impfdossier.eq(QImpfdossier.impfdossier))
+			.innerJoin(registrierung).on(QImpfdossier.impfdossier.registrierung.eq(registrierung))
+			.where(registrierung.registrierungsnummer.in(registrierungsNummern)
+				.and(QImpfdossier.impfdossier.krankheitIdentifier.eq(krankheitIdentifier)))
+			.orderBy(QImpfdossiereintrag.impfdossiereintrag.impffolgeNr.asc())
+			.fetch();
+		final Map<String, List<Impfung>> result = new HashMap<>();
+		for (Tuple tuple : tuples) {
+			result.computeIfAbsent(tuple.get(0, String.class), regNum -> new ArrayList<>())
+				.add(tuple.get(1, Impfung.class));
+		}
+		return result;
+	}
+
+	/**
+	 * Initialisiert die (lazy) Dossiereintraege aller Dossiers mit einer einzigen Query, damit die Rules
+	 * beim Auswerten nicht pro Dossier nachladen muessen.
+	 */
+	private void initImpfdossierEintraege(@NonNull List<ImpfinformationDto> impfinformationen) {
+		if (impfinformationen.isEmpty()) {
+			return;
+		}
+		final List<UUID> dossierIds = impfinformationen.stream()
+			.map(infos -> infos.getImpfdossier().getId())
+			.collect(Collectors.toList());
+		db.selectFrom(QImpfdossier.impfdossier)
+			.distinct()
+			.leftJoin(QImpfdossier.impfdossier.impfdossierEintraege).fetchJoin()
+			.where(QImpfdossier.impfdossier.id.in(dossierIds))
+			.fetch();
 	}
 
 	@NonNull
@@ -272,6 +366,7 @@ public class ImpfungRepo {
 			.innerJoin(QImpfdossier.impfdossier).on(impfdossierJoinfExpression)
 			.innerJoin(QRegistrierung.registrierung).on(QRegistrierung.registrierung.eq(QImpfdossier.impfdossier.registrierung))
 			.where(QImpfung.impfung.id.eq(impfungId.getId()))
+			.named(queryName)
 			.fetchOne();
 
 		logIfSlow(stopwatch, registrierung.isPresent() ? 1 : 0 , queryName);
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2022 DV Bern AG, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.dvbern.oss.vacme.repo;
+
+import java.util.List;
+import java.util.Optional;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.context.control.ActivateRequestContext;
+import javax.inject.Inject;
+import javax.transaction.Transactional;
+import javax.transaction.Transactional.TxType;
+
+import ch.dvbern.oss.vacme.smartdb.Db;
+import lombok.RequiredArgsConstructor;
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+/**
+ * Zugriff auf die Tabelle JobLease. Jede Methode laeuft in einer eigenen Transaktion, damit ein Lease sofort fuer
+ * alle Nodes sichtbar ist, unabhaengig von der Transaktion des Aufrufers. ApplicationScoped mit eigenem
+ * RequestContext, da die Leases auch vom Heartbeat-Thread erneuert werden.
+ * Alle Zeitstempel werden von der DB gesetzt, damit die Uhren der Nodes keine Rolle spielen.
+ */
+@ApplicationScoped
+@ActivateRequestContext
+@Transactional(TxType.REQUIRES_NEW)
+@RequiredArgsConstructor(onConstructor_ = @Inject)
+public class JobLeaseRepo {
+
+	private final Db db;
+
+	/**
+	 * Legt die Zeilen fuer die Shards 0..shardCount-1 an, falls sie noch nicht existieren
+	 */
+	public void ensureShards(@NonNull String jobName, int shardCount) {
+		for (int shard = 0; shard < shardCount; shard++) {
+			db.getEntityManager()
+				.createNativeQuery("INSERT IGNORE INTO JobLease (jobName, shard, fencingToken) VALUES (?1, ?2, 0)")
+				.setParameter(1, jobName)
+				.setParameter(2, shard)
+				.executeUpdate();
+		}
+	}
+
+	/**
+	 * Uebernimmt den Shard, falls er frei oder sein Lease abgelaufen ist. Der Fencing-Token wird dabei erhoeht.
+	 *
+	 * @return der neue Fencing-Token, leer wenn der Shard von einem anderen Owner gehalten wird
+	 */
+	@NonNull
+	public Optional<Long> tryAcquire(@NonNull String jobName, int shard, @NonNull String owner, long leaseSeconds) {
+		int updated = db.getEntityManager()
+			.createNativeQuery("UPDATE JobLease SET owner = ?1, fencingToken = fencingToken + 1, "
+				+ "leaseUntil = NOW(6) + INTERVAL ?2 SECOND "
+				+ "WHERE jobName = ?3 AND shard = ?4 AND (owner IS NULL OR leaseUntil IS NULL OR leaseUntil < NOW(6))")
+			.setParameter(1, owner)
+			.setParameter(2, leaseSeconds)
+			.setParameter(3, jobName)
+			.setParameter(4, shard)
+			.executeUpdate();
+		if (updated == 0) {
+			return Optional.empty();
+		}
+		@SuppressWarnings("unchecked")
+		final List<Number> tokens = db.getEntityManager()
+			.createNativeQuery("SELECT fencingToken FROM JobLease WHERE jobName = ?1 AND shard = ?2 AND owner = ?3")
+			.setParameter(1, jobName)
+			.setParameter(2, shard)
+			.setParameter(3, owner)
+			.getResultList();
+		return tokens.stream().findFirst().map(Number::longValue);
+	}
+
+	/**
+	 * Verlaengert den Lease, sofern er noch diesem Owner mit diesem Fencing-Token gehoert und nicht abgelaufen ist
+	 *
+	 * @return false wenn der Lease verloren ist
+	 */
+	public boolean renew(@NonNull String jobName, int shard, @NonNull String owner, long fencingToken, long leaseSeconds) {
+		return db.getEntityManager()
+			.createNativeQuery("UPDATE JobLease SET leaseUntil = NOW(6) + INTERVAL ?1 SECOND "
+				+ "WHERE jobName = ?2 AND shard = ?3 AND owner = ?4 AND fencingToken = ?5 AND leaseUntil >= NOW(6)")
+			.setParameter(1, leaseSeconds)
+			.setParameter(2, jobName)
+			.setParameter(3, shard)
+			.setParameter(4, owner)
+			.setParameter(5, fencingToken)
+			.executeUpdate() == 1;
+	}
+
+	public void release(@NonNull String jobName, int shard, @NonNull String owner, long fencingToken) {
+		db.getEntityManager()
+			.createNativeQuery("UPDATE JobLease SET owner = NULL, leaseUntil = NULL "
+				+ "WHERE jobName = ?1 AND shard = ?2 AND owner = ?3 AND fencingToken = ?4")
+			.setParameter(1, jobName)
+			.setParameter(2, shard)
+			.setParameter(3, owner)
+			.setParameter(4, fencingToken)
+			.executeUpdate();
+	}
+}
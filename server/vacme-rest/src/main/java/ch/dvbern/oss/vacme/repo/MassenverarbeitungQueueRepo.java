@@ -20,6 +20,7 @@ package ch.dvbern.oss.vacme.repo;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.util.Collections;
 import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
@@ -41,6 +42,7 @@ import ch.dvbern.oss.vacme.entities.util.DBConst;
 import ch.dvbern.oss.vacme.shared.errors.AppFailureException;
 import ch.dvbern.oss.vacme.shared.util.Constants;
 import ch.dvbern.oss.vacme.smartdb.Db;
+import com.google.common.collect.Lists;
 import io.agroal.api.AgroalDataSource;
 import io.quarkus.narayana.jta.runtime.TransactionConfiguration;
 import lombok.RequiredArgsConstructor;
@@ -94,38 +96,39 @@ public class MassenverarbeitungQueueRepo {
 		return itemsToStore;
 	}
 
+	/**
+	 * Schreibt die Eintraege mit mehrzeiligen INSERTs (je batchSize Zeilen pro Statement). Die IDs werden direkt in
+	 * der DB aus der Sequence gezogen, so braucht es nur einen Roundtrip pro Chunk.
+	 */
 	private int createQueueItemsJDBC(@NonNull List<MassenverarbeitungQueue> itemsToInsert) {
 		int batchSize = 500;
 
 		String query = "INSERT INTO %s (id, timestampErstellt, timestampMutiert, userErstellt, userMutiert, version, "
-			+ "errorCount, lastError, impfungId, odiId, registrierungNummer, status, typ, impfdossierId) "
-			+ "VALUES (NEXTVAL(hibernate_sequence), now(), now(), '%s', '%s', 1, 0, NULL, ?, ?, ?, ?, ?, ?);";
-		String sql = String.format(query,
-			MassenverarbeitungQueue.class.getSimpleName(), DBConst.SYSTEM_ADMIN_ID, DBConst.SYSTEM_ADMIN_ID);
+			+ "errorCount, lastError, impfungId, odiId, registrierungNummer, status, typ, impfdossierId) VALUES ";
+		String valuesRow = String.format("(NEXTVAL(hibernate_sequence), now(), now(), '%s', '%s', 1, 0, NULL, ?, ?, ?, ?, ?, ?)",
+			DBConst.SYSTEM_ADMIN_ID, DBConst.SYSTEM_ADMIN_ID);
+		String insertInto = String.format(query, MassenverarbeitungQueue.class.getSimpleName());
 
 		int counter = 0;
-		try (Connection connection = defaultDataSource.getConnection();
-			PreparedStatement statement = connection.prepareStatement(sql)
-		) {
-
-			for (MassenverarbeitungQueue item : itemsToInsert) {
-				statement.clearParameters();
-				statement.setString(1, item.getImpfungId());
-				statement.setString(2, item.getOdiId());
-				statement.setString(3, item.getRegistrierungNummer());
-				statement.setString(4, item.getStatus().name());
-				statement.setString(5, item.getTyp().name());
-				statement.setString(6, item.getImpfdossierId() == null ? null : item.getImpfdossierId().toString());
-				statement.addBatch();
-				if ((counter + 1) % batchSize == 0 || (counter + 1) == itemsToInsert.size()) {
-					statement.executeBatch();
-					statement.clearBatch();
-					LOG.info(
-						"VACME-MASSENVERARBEITUNG: Triggered batch-insert after processing {}/{}",
-						counter,
-						itemsToInsert.size());
+		try (Connection connection = defaultDataSource.getConnection()) {
+			for (List<MassenverarbeitungQueue> chunk : Lists.partition(itemsToInsert, batchSize)) {
+				String sql = insertInto + String.join(", ", Collections.nCopies(chunk.size(), valuesRow));
+				try (PreparedStatement statement = connection.prepareStatement(sql)) {
+					int paramIndex = 1;
+					for (MassenverarbeitungQueue item : chunk) {
+						statement.setString(paramIndex++, item.getImpfungId());
+						statement.setString(paramIndex++, item.getOdiId());
+						statement.setString(paramIndex++, item.getRegistrierungNummer());
+						statement.setString(paramIndex++, item.getStatus().name());
+						statement.setString(paramIndex++, item.getTyp().name());
+						statement.setString(paramIndex++, item.getImpfdossierId() == null ? null : item.getImpfdossierId().toString());
+					}
+					counter += statement.executeUpdate();
 				}
-				counter++;
+				LOG.info(
+					"VACME-MASSENVERARBEITUNG: Triggered batch-insert after processing {}/{}",
+					counter,
+					itemsToInsert.size());
 			}
 		} catch (SQLException e) {
 			String msg = "VACME-MASSENVERARBEITUNG: Fehler beim Inserten der MasesnverarbeitungQueueItems";
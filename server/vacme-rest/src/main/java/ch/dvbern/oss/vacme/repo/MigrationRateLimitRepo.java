@@ -17,19 +17,22 @@
 
 package ch.dvbern.oss.vacme.repo;
 
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
 
 import javax.enterprise.context.RequestScoped;
 import javax.inject.Inject;
 import javax.transaction.Transactional;
 
-import ch.dvbern.oss.vacme.entities.migration.MigrationRateLimit;
-import ch.dvbern.oss.vacme.entities.migration.QMigrationRateLimit;
+import ch.dvbern.oss.vacme.service.migration.MigrationTokenBucket;
 import ch.dvbern.oss.vacme.smartdb.Db;
 import org.checkerframework.checker.nullness.qual.NonNull;
 
 /**
- * Service to Access Rate Limit table
+ * Service to Access Rate Limit table. Pro Aufrufer der Migrations-API wird ein {@link MigrationTokenBucket}
+ * gespeichert, damit das Limit ueber alle Nodes hinweg gilt.
  */
 @RequestScoped
 @Transactional
@@ -41,22 +44,49 @@ public class MigrationRateLimitRepo {
 		this.db = db;
 	}
 
-	public void update(@NonNull MigrationRateLimit migrationRateLimit) {
-		db.merge(migrationRateLimit);
-		db.flush();
+	/**
+	 * Legt fuer einen neuen Aufrufer einen vollen Bucket an. Bestehende Buckets bleiben unveraendert.
+	 */
+	public void createIfMissing(@NonNull String caller, @NonNull MigrationTokenBucket bucket) {
+		db.getEntityManager()
+			.createNativeQuery("INSERT IGNORE INTO MigrationRateLimitBucket (caller, tokens, timestampRefill) "
+				+ "VALUES (?1, ?2, ?3)")
+			.setParameter(1, caller)
+			.setParameter(2, bucket.getTokens())
+			.setParameter(3, bucket.getTimestampRefill())
+			.executeUpdate();
 	}
 
 	/**
-	 *
-	 * @return the one and only entry in the table. Our API does not support multiple callers having their own
-	 * rate limiting
-	 *
+	 * Liest den Bucket und sperrt ihn bis zum Ende der Transaktion, damit parallele Requests desselben Aufrufers
+	 * nacheinander abgerechnet werden.
 	 */
-	public Optional<MigrationRateLimit> get() {
-		return db.selectFrom(QMigrationRateLimit.migrationRateLimit)
-			.orderBy(QMigrationRateLimit.migrationRateLimit.timestampLastRequest.desc())
-			.fetch()
-			.stream()
-			.findFirst();
+	@NonNull
+	public Optional<MigrationTokenBucket> getForUpdate(@NonNull String caller) {
+		@SuppressWarnings("unchecked")
+		final List<Object[]> result = db.getEntityManager()
+			.createNativeQuery("SELECT tokens, timestampRefill FROM MigrationRateLimitBucket WHERE caller = ?1 FOR UPDATE")
+			.setParameter(1, caller)
+			.getResultList();
+		return result.stream()
+			.findFirst()
+			.map(row -> new MigrationTokenBucket(((Number) row[0]).doubleValue(), toLocalDateTime(row[1])));
+	}
+
+	public void update(@NonNull String caller, @NonNull MigrationTokenBucket bucket) {
+		db.getEntityManager()
+			.createNativeQuery("UPDATE MigrationRateLimitBucket SET tokens = ?2, timestampRefill = ?3 WHERE caller = ?1")
+			.setParameter(1, caller)
+			.setParameter(2, bucket.getTokens())
+			.setParameter(3, bucket.getTimestampRefill())
+			.executeUpdate();
+	}
+
+	@NonNull
+	private static LocalDateTime toLocalDateTime(@NonNull Object value) {
+		if (value instanceof Timestamp) {
+			return ((Timestamp) value).toLocalDateTime();
+		}
+		return (LocalDateTime) value;
 	}
 }
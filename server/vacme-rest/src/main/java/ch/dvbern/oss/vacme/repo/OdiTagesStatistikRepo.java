@@ -0,0 +1,249 @@
+/*
+ * Copyright (C) 2022 DV Bern AG, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.dvbern.oss.vacme.repo;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.context.control.ActivateRequestContext;
+import javax.inject.Inject;
+import javax.persistence.Query;
+import javax.transaction.Transactional;
+
+import ch.dvbern.oss.vacme.entities.impfen.Impffolge;
+import ch.dvbern.oss.vacme.entities.types.KrankheitIdentifier;
+import ch.dvbern.oss.vacme.service.tagesstatistik.OdiTagesKapazitaet;
+import ch.dvbern.oss.vacme.service.tagesstatistik.OdiTagesStatistikEintrag;
+import ch.dvbern.oss.vacme.smartdb.Db;
+import lombok.RequiredArgsConstructor;
+import org.apache.commons.lang3.StringUtils;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Zugriff auf die Tabelle OdiTagesStatistik. ApplicationScoped mit eigenem RequestContext, da die Statistik vom
+ * Hintergrund-Thread des {@link ch.dvbern.oss.vacme.service.tagesstatistik.OdiTagesStatistikService} nachgefuehrt
+ * wird. Jede Methode laeuft in einer eigenen kurzen Transaktion.
+ * <p>
+ * Ein ODI-Tag wird nie inkrementell hoch- oder runtergezaehlt, sondern immer als Ganzes aus Impfslot, Impftermin und
+ * Impfung neu berechnet. Damit ist die Neuberechnung idempotent und mehrere Nodes koennen denselben Tag gleichzeitig
+ * berechnen, ohne dass die Zahlen auseinanderlaufen.
+ */
+@ApplicationScoped
+@ActivateRequestContext
+@Transactional
+@RequiredArgsConstructor(onConstructor_ = @Inject)
+public class OdiTagesStatistikRepo {
+
+	private static final String ODI_FILTER = "AND S.ortDerImpfung_id = ?4 ";
+
+	// Gebuchte Termine werden dem Tag des Slots zugeordnet, Impfungen dem Tag der Impfung
+	private static final String RECALCULATE_INSERT = "INSERT INTO OdiTagesStatistik (ortDerImpfung_id, datum, "
+		+ "krankheitIdentifier, impffolge, impfstoff_id, anzahlGebuchteTermine, anzahlImpfungen, timestampBerechnet) "
+		+ "SELECT x.odi, ?1, x.krankheitIdentifier, x.impffolge, x.impfstoff, SUM(x.termine), SUM(x.impfungen), NOW(6) "
+		+ "FROM ("
+		+ "SELECT S.ortDerImpfung_id AS odi, S.krankheitIdentifier, T.impffolge, COALESCE(I.impfstoff_id, '') AS impfstoff, "
+		+ "1 AS termine, 0 AS impfungen "
+		+ "FROM Impfslot S "
+		+ "INNER JOIN Impftermin T ON T.impfslot_id = S.id "
+		+ "LEFT JOIN Impfung I ON I.termin_id = T.id "
+		+ "WHERE S.bis >= ?2 AND S.bis < ?3 AND T.gebucht = TRUE %1$s"
+		+ "UNION ALL "
+		+ "SELECT S.ortDerImpfung_id, S.krankheitIdentifier, T.impffolge, I.impfstoff_id, 0, 1 "
+		+ "FROM Impfung I "
+		+ "INNER JOIN Impftermin T ON I.termin_id = T.id "
+		+ "INNER JOIN Impfslot S ON T.impfslot_id = S.id "
+		+ "WHERE I.timestampImpfung >= ?2 AND I.timestampImpfung < ?3 %1$s"
+		+ ") x "
+		+ "GROUP BY x.odi, x.krankheitIdentifier, x.impffolge, x.impfstoff";
+
+	private final Db db;
+
+	/**
+	 * Berechnet die Statistik eines ODI fuer einen Tag neu
+	 */
+	public void recalculate(@NonNull UUID ortDerImpfungId, @NonNull LocalDate datum) {
+		db.getEntityManager()
+			.createNativeQuery("DELETE FROM OdiTagesStatistik WHERE ortDerImpfung_id = ?1 AND datum = ?2")
+			.setParameter(1, ortDerImpfungId.toString())
+			.setParameter(2, datum)
+			.executeUpdate();
+		final Query insert = db.getEntityManager()
+			.createNativeQuery(String.format(RECALCULATE_INSERT, ODI_FILTER));
+		setDatumParameters(insert, datum)
+			.setParameter(4, ortDerImpfungId.toString())
+			.executeUpdate();
+	}
+
+	/**
+	 * Berechnet die Statistik aller ODI fuer einen Tag neu
+	 */
+	public void recalculate(@NonNull LocalDate datum) {
+		db.getEntityManager()
+			.createNativeQuery("DELETE FROM OdiTagesStatistik WHERE datum = ?1")
+			.setParameter(1, datum)
+			.executeUpdate();
+		final Query insert = db.getEntityManager()
+			.createNativeQuery(String.format(RECALCULATE_INSERT, StringUtils.EMPTY));
+		setDatumParameters(insert, datum)
+			.executeUpdate();
+	}
+
+	@NonNull
+	private Query setDatumParameters(@NonNull Query query, @NonNull LocalDate datum) {
+		return query
+			.setParameter(1, datum)
+			.setParameter(2, datum.atStartOfDay())
+			.setParameter(3, datum.plusDays(1).atStartOfDay());
+	}
+
+	/**
+	 * @return true wenn der erste Aufbau bis zum ersten Impfslot abgeschlossen ist
+	 */
+	public boolean isAufbauAbgeschlossen() {
+		return !db.getEntityManager()
+			.createNativeQuery("SELECT 1 FROM OdiTagesStatistikAufbau WHERE id = 1 AND abgeschlossen = TRUE")
+			.getResultList()
+			.isEmpty();
+	}
+
+	/**
+	 * @return aeltester Tag, ab dem beim ersten Aufbau alle Tage lueckenlos berechnet wurden. Einzelne aeltere Tage
+	 * koennen bereits ueber die Hooks berechnet worden sein und zaehlen nicht.
+	 */
+	@NonNull
+	public Optional<LocalDate> findAufgebautAb() {
+		@SuppressWarnings("unchecked")
+		final List<Object> result = db.getEntityManager()
+			.createNativeQuery("SELECT aufgebautAb FROM OdiTagesStatistikAufbau WHERE id = 1")
+			.getResultList();
+		return result.stream().findFirst().map(OdiTagesStatistikRepo::toLocalDate);
+	}
+
+	public void saveAufbauStand(@NonNull LocalDate aufgebautAb, boolean abgeschlossen) {
+		db.getEntityManager()
+			.createNativeQuery("INSERT INTO OdiTagesStatistikAufbau (id, aufgebautAb, abgeschlossen, "
+				+ "timestampAktualisiert) VALUES (1, ?1, ?2, NOW(6)) "
+				+ "ON DUPLICATE KEY UPDATE aufgebautAb = VALUES(aufgebautAb), abgeschlossen = VALUES(abgeschlossen), "
+				+ "timestampAktualisiert = VALUES(timestampAktualisiert)")
+			.setParameter(1, aufgebautAb)
+			.setParameter(2, abgeschlossen)
+			.executeUpdate();
+	}
+
+	/**
+	 * @return Tag des ersten Impfslots, ab dem die Statistik beim ersten Aufbau berechnet werden muss
+	 */
+	@NonNull
+	public Optional<LocalDate> findErstesSlotDatum() {
+		final Object result = db.getEntityManager()
+			.createNativeQuery("SELECT MIN(bis) FROM Impfslot")
+			.getSingleResult();
+		if (result == null) {
+			return Optional.empty();
+		}
+		if (result instanceof Timestamp) {
+			return Optional.of(((Timestamp) result).toLocalDateTime().toLocalDate());
+		}
+		return Optional.of(((LocalDateTime) result).toLocalDate());
+	}
+
+	/**
+	 * @param krankheitIdentifier null fuer alle Krankheiten
+	 */
+	@NonNull
+	public List<OdiTagesStatistikEintrag> find(
+		@NonNull UUID ortDerImpfungId,
+		@NonNull LocalDate von,
+		@NonNull LocalDate bis,
+		@Nullable KrankheitIdentifier krankheitIdentifier
+	) {
+		final Query query = db.getEntityManager()
+			.createNativeQuery("SELECT datum, krankheitIdentifier, impffolge, impfstoff_id, anzahlGebuchteTermine, "
+				+ "anzahlImpfungen FROM OdiTagesStatistik "
+				+ "WHERE ortDerImpfung_id = ?1 AND datum >= ?2 AND datum <= ?3"
+				+ (krankheitIdentifier != null ? " AND krankheitIdentifier = ?4" : StringUtils.EMPTY))
+			.setParameter(1, ortDerImpfungId.toString())
+			.setParameter(2, von)
+			.setParameter(3, bis);
+		if (krankheitIdentifier != null) {
+			query.setParameter(4, krankheitIdentifier.name());
+		}
+		@SuppressWarnings("unchecked")
+		final List<Object[]> rows = query.getResultList();
+		final List<OdiTagesStatistikEintrag> result = new ArrayList<>(rows.size());
+		for (Object[] row : rows) {
+			final String impfstoffId = (String) row[3];
+			result.add(new OdiTagesStatistikEintrag(
+				toLocalDate(row[0]),
+				KrankheitIdentifier.valueOf((String) row[1]),
+				Impffolge.valueOf((String) row[2]),
+				StringUtils.isEmpty(impfstoffId) ? null : UUID.fromString(impfstoffId),
+				((Number) row[4]).longValue(),
+				((Number) row[5]).longValue()));
+		}
+		return result;
+	}
+
+	/**
+	 * Summiert die Kapazitaeten der Slots pro Tag. Wie in der bisherigen Statistik werden nur Slots beruecksichtigt,
+	 * zu denen es Termine gibt.
+	 */
+	@NonNull
+	public List<OdiTagesKapazitaet> findKapazitaeten(
+		@NonNull UUID ortDerImpfungId,
+		@NonNull LocalDate von,
+		@NonNull LocalDate bis
+	) {
+		@SuppressWarnings("unchecked")
+		final List<Object[]> rows = db.getEntityManager()
+			.createNativeQuery("SELECT DATE(S.bis), SUM(S.kapazitaetErsteImpfung), SUM(S.kapazitaetZweiteImpfung), "
+				+ "SUM(S.kapazitaetBoosterImpfung) FROM Impfslot S "
+				+ "WHERE S.ortDerImpfung_id = ?1 AND S.bis >= ?2 AND S.bis < ?3 "
+				+ "AND EXISTS (SELECT 1 FROM Impftermin T WHERE T.impfslot_id = S.id) "
+				+ "GROUP BY DATE(S.bis)")
+			.setParameter(1, ortDerImpfungId.toString())
+			.setParameter(2, von.atStartOfDay())
+			.setParameter(3, bis.plusDays(1).atStartOfDay())
+			.getResultList();
+		final List<OdiTagesKapazitaet> result = new ArrayList<>(rows.size());
+		for (Object[] row : rows) {
+			result.add(new OdiTagesKapazitaet(
+				toLocalDate(row[0]),
+				((Number) row[1]).longValue(),
+				((Number) row[2]).longValue(),
+				((Number) row[3]).longValue()));
+		}
+		return result;
+	}
+
+	@NonNull
+	private static LocalDate toLocalDate(@NonNull Object value) {
+		if (value instanceof Date) {
+			return ((Date) value).toLocalDate();
+		}
+		return (LocalDate) value;
+	}
+}
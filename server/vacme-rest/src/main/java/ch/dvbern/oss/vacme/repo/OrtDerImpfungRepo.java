@@ -25,6 +25,7 @@ import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 import javax.enterprise.context.RequestScoped;
 import javax.inject.Inject;
@@ -49,12 +50,17 @@ import ch.dvbern.oss.vacme.jax.OdiTerminbuchungenDataRow;
 import ch.dvbern.oss.vacme.jax.QOdiImpfungenDataRow;
 import ch.dvbern.oss.vacme.jax.QOdiTerminbuchungenDataRow;
 import ch.dvbern.oss.vacme.smartdb.Db;
+import ch.dvbern.oss.vacme.smartdb.SmartJPAQuery;
 import ch.dvbern.oss.vacme.util.ImpfinformationDto;
 import com.querydsl.core.BooleanBuilder;
+import com.querydsl.core.Tuple;
+import com.querydsl.core.types.Expression;
 import com.querydsl.core.types.Predicate;
 import com.querydsl.core.types.dsl.Expressions;
 import com.querydsl.core.types.dsl.NumberTemplate;
 import io.opentelemetry.extension.annotations.WithSpan;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.time.StopWatch;
 import org.checkerframework.checker.nullness.qual.NonNull;
@@ -68,6 +74,7 @@ import static ch.dvbern.oss.vacme.entities.registration.QRegistrierung.registrie
 public class OrtDerImpfungRepo {
 
 	public static final int SLOW_THRESHOLD_MS = 15 * 1000;
+	private static final String HINT_READ_ONLY = "org.hibernate.readOnly";
 
 	private final Db db;
 	private final ImpfungRepo impfungRepo;
@@ -291,49 +298,101 @@ public class OrtDerImpfungRepo {
 		return allImpfungen;
 	}
 
-	@NonNull
-	public List<OdiImpfungenDataRow> getOdiImpfungenReport(@NonNull List<UUID> berechtigteOdiList) {
-		List<OdiImpfungenDataRow> allImpfungen = new ArrayList<>();
+	/**
+	 * Anzahl Zeilen, die {@link #streamOdiImpfungenReport} fuer dieselben Parameter liefert. Wird in derselben
+	 * Transaktion aufgerufen, damit Zaehlung und Zeilen auf demselben Datenstand beruhen.
+	 */
+	public long countOdiImpfungenReport(
+		@NonNull List<UUID> berechtigteOdiList,
+		@NonNull LocalDateTime stichzeit
+	) {
+		long count = 0;
+		for (OdiImpfungenReportTeil teil : OdiImpfungenReportTeil.values()) {
+			count += odiImpfungenReportQuery(teil, berechtigteOdiList, stichzeit)
+				.select(QImpftermin.impftermin.id.countDistinct())
+				.fetchOne()
+				.orElse(0L);
+		}
+		return count;
+	}
 
-		StopWatch stopwatch1 = StopWatch.createStarted();
-		final NumberTemplate<Integer> eins = Expressions.numberTemplate(Integer.class, "1");
-		final List<OdiImpfungenDataRow> impfungen1 = db.select(new QOdiImpfungenDataRow(
+	/**
+	 * Liefert die Zeilen des ODI-Impfungen-Reports seitenweise (sortiert nach Termin) an den Consumer. Nach jeder
+	 * Seite wird der Persistence Context geleert, damit der Speicherbedarf unabhaengig von der Anzahl Zeilen bleibt.
+	 * Der Aufrufer darf deshalb keine ungespeicherten Aenderungen in der Transaktion haben.
+	 */
+	public void streamOdiImpfungenReport(
+		@NonNull List<UUID> berechtigteOdiList,
+		@NonNull LocalDateTime stichzeit,
+		int pageSize,
+		@NonNull Consumer<OdiImpfungenDataRow> rowConsumer
+	) {
+		for (OdiImpfungenReportTeil teil : OdiImpfungenReportTeil.values()) {
+			StopWatch stopwatch = StopWatch.createStarted();
+			final QOdiImpfungenDataRow projection = new QOdiImpfungenDataRow(
 				QImpfslot.impfslot,
 				QOrtDerImpfung.ortDerImpfung,
 				QImpfung.impfung,
 				registrierung,
-				eins))
-			.from(QImpftermin.impftermin)
-			.leftJoin(QImpfung.impfung)
-			.on(QImpftermin.impftermin.eq(QImpfung.impfung.termin))
-			.innerJoin(QImpfdossier.impfdossier)
-			.on(QImpftermin.impftermin.eq(QImpfdossier.impfdossier.buchung.impftermin1))
-			.innerJoin(registrierung)
-			.on(QImpfdossier.impfdossier.registrierung.eq(registrierung))
-			.innerJoin(QImpfslot.impfslot)
-			.on(QImpftermin.impftermin.impfslot.eq(QImpfslot.impfslot))
-			.innerJoin(QOrtDerImpfung.ortDerImpfung)
-			.on(QImpfslot.impfslot.ortDerImpfung.eq(QOrtDerImpfung.ortDerImpfung))
-			.where(QOrtDerImpfung.ortDerImpfung.id.in(berechtigteOdiList)
-				.and(QOrtDerImpfung.ortDerImpfung.personalisierterImpfReport.isTrue())
-				.and(QImpfslot.impfslot.zeitfenster.bis.loe(LocalDateTime.now())))
-			.fetch();
-		logIfSlow(stopwatch1, impfungen1.size(), "getOdiImpfungenReport - impfungen1");
-		allImpfungen.addAll(impfungen1);
+				teil.getImpffolgeNr());
+			int resultCnt = 0;
+			@Nullable UUID lastTerminId = null;
+			List<Tuple> page;
+			do {
+				SmartJPAQuery<Tuple> query = odiImpfungenReportQuery(teil, berechtigteOdiList, stichzeit)
+					.select(projection, QImpftermin.impftermin.id);
+				if (teil.isDistinct()) {
+					query = query.distinct();
+				}
+				if (lastTerminId != null) {
+					query = query.where(QImpftermin.impftermin.id.gt(lastTerminId));
+				}
+				page = query
+					.orderBy(QImpftermin.impftermin.id.asc())
+					.limit(pageSize)
+					.setHint(HINT_READ_ONLY, true)
+					.fetch();
+
+				for (Tuple tuple : page) {
+					rowConsumer.accept(Objects.requireNonNull(tuple.get(projection)));
+					lastTerminId = tuple.get(QImpftermin.impftermin.id);
+				}
+				resultCnt += page.size();
+				db.getEntityManager().clear();
+			} while (page.size() == pageSize);
+			logIfSlow(stopwatch, resultCnt, "streamOdiImpfungenReport - " + teil);
+		}
+	}
 
-		StopWatch stopwatch2 = StopWatch.createStarted();
-		final NumberTemplate<Integer> zwei = Expressions.numberTemplate(Integer.class, "2");
-		final List<OdiImpfungenDataRow> impfungen2 = db.select(new QOdiImpfungenDataRow(
-				QImpfslot.impfslot,
-				QOrtDerImpfung.ortDerImpfung,
-				QImpfung.impfung,
-				registrierung,
-				zwei))
-			.from(QImpftermin.impftermin)
+	@NonNull
+	private SmartJPAQuery<?> odiImpfungenReportQuery(
+		@NonNull OdiImpfungenReportTeil teil,
+		@NonNull List<UUID> berechtigteOdiList,
+		@NonNull LocalDateTime stichzeit
+	) {
+		SmartJPAQuery<?> query = db.from(QImpftermin.impftermin)
 			.leftJoin(QImpfung.impfung)
-			.on(QImpftermin.impftermin.eq(QImpfung.impfung.termin))
-			.innerJoin(QImpfdossier.impfdossier)
-			.on(QImpftermin.impftermin.eq(QImpfdossier.impfdossier.buchung.impftermin2))
+			.on(QImpftermin.impftermin.eq(QImpfung.impfung.termin));
+		switch (teil) {
+		case IMPFUNG_1:
+			query = query
+				.innerJoin(QImpfdossier.impfdossier)
+				.on(QImpftermin.impftermin.eq(QImpfdossier.impfdossier.buchung.impftermin1));
+			break;
+		case IMPFUNG_2:
+			query = query
+				.innerJoin(QImpfdossier.impfdossier)
+				.on(QImpftermin.impftermin.eq(QImpfdossier.impfdossier.buchung.impftermin2));
+			break;
+		case IMPFUNG_N:
+			query = query
+				.innerJoin(QImpfdossiereintrag.impfdossiereintrag)
+				.on(QImpfdossiereintrag.impfdossiereintrag.impftermin.eq(QImpftermin.impftermin))
+				.innerJoin(QImpfdossier.impfdossier)
+				.on(QImpfdossier.impfdossier.eq(QImpfdossiereintrag.impfdossiereintrag.impfdossier));
+			break;
+		}
+		return query
 			.innerJoin(registrierung)
 			.on(QImpfdossier.impfdossier.registrierung.eq(registrierung))
 			.innerJoin(QImpfslot.impfslot)
@@ -342,40 +401,22 @@ public class OrtDerImpfungRepo {
 			.on(QImpfslot.impfslot.ortDerImpfung.eq(QOrtDerImpfung.ortDerImpfung))
 			.where(QOrtDerImpfung.ortDerImpfung.id.in(berechtigteOdiList)
 				.and(QOrtDerImpfung.ortDerImpfung.personalisierterImpfReport.isTrue())
-				.and(QImpfslot.impfslot.zeitfenster.bis.loe(LocalDateTime.now())))
-			.fetch();
-		logIfSlow(stopwatch2, impfungen2.size(), "getOdiImpfungenReport - impfungen2");
-		allImpfungen.addAll(impfungen2);
-
-		StopWatch stopwatch3 = StopWatch.createStarted();
-		final List<OdiImpfungenDataRow> impfungenN = db.select(new QOdiImpfungenDataRow(
-				QImpfslot.impfslot,
-				QOrtDerImpfung.ortDerImpfung,
-				QImpfung.impfung,
-				registrierung,
-				QImpfdossiereintrag.impfdossiereintrag.impffolgeNr))
-			.from(QImpftermin.impftermin)
-			.leftJoin(QImpfung.impfung)
-			.on(QImpftermin.impftermin.eq(QImpfung.impfung.termin))
-			.innerJoin(QImpfdossiereintrag.impfdossiereintrag)
-			.on(QImpfdossiereintrag.impfdossiereintrag.impftermin.eq(QImpftermin.impftermin))
-			.innerJoin(QImpfdossier.impfdossier)
-			.on(QImpfdossier.impfdossier.eq(QImpfdossiereintrag.impfdossiereintrag.impfdossier))
-			.innerJoin(QRegistrierung.registrierung)
-			.on(registrierung.eq(QImpfdossier.impfdossier.registrierung))
-			.innerJoin(QImpfslot.impfslot)
-			.on(QImpftermin.impftermin.impfslot.eq(QImpfslot.impfslot))
-			.innerJoin(QOrtDerImpfung.ortDerImpfung)
-			.on(QImpfslot.impfslot.ortDerImpfung.eq(QOrtDerImpfung.ortDerImpfung))
-			.distinct()
-			.where(QOrtDerImpfung.ortDerImpfung.id.in(berechtigteOdiList)
-				.and(QOrtDerImpfung.ortDerImpfung.personalisierterImpfReport.isTrue())
-				.and(QImpfslot.impfslot.zeitfenster.bis.loe(LocalDateTime.now())))
-			.fetch();
-		logIfSlow(stopwatch3, impfungenN.size(), "getOdiImpfungenReport - impfungenN");
-		allImpfungen.addAll(impfungenN);
+				.and(QImpfslot.impfslot.zeitfenster.bis.loe(stichzeit)));
+	}
 
-		return allImpfungen;
+	/**
+	 * Der ODI-Impfungen-Report besteht aus den Terminen 1 und 2 der Grundimmunisierung und den Terminen der weiteren
+	 * Impfungen (Impfdossiereintraege)
+	 */
+	@Getter
+	@AllArgsConstructor
+	private enum OdiImpfungenReportTeil {
+		IMPFUNG_1(Expressions.numberTemplate(Integer.class, "1"), false),
+		IMPFUNG_2(Expressions.numberTemplate(Integer.class, "2"), false),
+		IMPFUNG_N(QImpfdossiereintrag.impfdossiereintrag.impffolgeNr, true);
+
+		private final Expression<Integer> impffolgeNr;
+		private final boolean distinct;
 	}
 
 	public void delete(ID<OrtDerImpfung> odiId) {
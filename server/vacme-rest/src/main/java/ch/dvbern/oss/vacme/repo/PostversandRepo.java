@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2022 DV Bern AG, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.dvbern.oss.vacme.repo;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.context.control.ActivateRequestContext;
+import javax.inject.Inject;
+import javax.transaction.Transactional;
+
+import ch.dvbern.oss.vacme.entities.dossier.ImpfdossierFile;
+import ch.dvbern.oss.vacme.entities.dossier.ImpfdossierFileTyp;
+import ch.dvbern.oss.vacme.entities.dossier.QImpfdossierFile;
+import ch.dvbern.oss.vacme.entities.embeddables.FileBlob;
+import ch.dvbern.oss.vacme.entities.registration.QRegistrierungFile;
+import ch.dvbern.oss.vacme.entities.registration.RegistrierungFile;
+import ch.dvbern.oss.vacme.entities.registration.RegistrierungFileTyp;
+import ch.dvbern.oss.vacme.service.postversand.PostversandDokumentTyp;
+import ch.dvbern.oss.vacme.shared.errors.AppFailureException;
+import ch.dvbern.oss.vacme.smartdb.Db;
+import lombok.RequiredArgsConstructor;
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+/**
+ * Zugriff auf die noch nicht abgeholten Briefe fuer den Postversand. Jeder Aufruf laeuft in einer eigenen kurzen
+ * Transaktion, damit beim Zusammenstellen eines Sammel-PDFs nie mehr als ein Brief im Speicher ist.
+ */
+@ApplicationScoped
+@ActivateRequestContext
+@Transactional
+@RequiredArgsConstructor(onConstructor_ = @Inject)
+public class PostversandRepo {
+
+	private static final QRegistrierungFile REGISTRIERUNG_FILE = QRegistrierungFile.registrierungFile;
+	private static final QImpfdossierFile IMPFDOSSIER_FILE = QImpfdossierFile.impfdossierFile;
+
+	private final Db db;
+
+	/**
+	 * @param maxFehlversuche Briefe, die schon so oft nicht angehaengt werden konnten, werden nicht mehr geliefert
+	 */
+	@NonNull
+	public List<UUID> findPendingFileIds(@NonNull PostversandDokumentTyp typ, int maxFehlversuche, long limit) {
+		final RegistrierungFileTyp registrierungFileTyp = typ.getRegistrierungFileTyp();
+		if (registrierungFileTyp != null) {
+			return db.select(REGISTRIERUNG_FILE.id)
+				.from(REGISTRIERUNG_FILE)
+				.where(REGISTRIERUNG_FILE.fileTyp.eq(registrierungFileTyp)
+					.and(REGISTRIERUNG_FILE.abgeholt.isFalse())
+					.and(REGISTRIERUNG_FILE.postversandFehlversuche.lt(maxFehlversuche)))
+				.orderBy(REGISTRIERUNG_FILE.timestampErstellt.asc())
+				.limit(limit)
+				.fetch();
+		}
+		final ImpfdossierFileTyp impfdossierFileTyp = getImpfdossierFileTyp(typ);
+		return db.select(IMPFDOSSIER_FILE.id)
+			.from(IMPFDOSSIER_FILE)
+			.where(IMPFDOSSIER_FILE.fileTyp.eq(impfdossierFileTyp)
+				.and(IMPFDOSSIER_FILE.abgeholt.isFalse())
+				.and(IMPFDOSSIER_FILE.postversandFehlversuche.lt(maxFehlversuche)))
+			.orderBy(IMPFDOSSIER_FILE.timestampErstellt.asc())
+			.limit(limit)
+			.fetch();
+	}
+
+	@NonNull
+	public byte[] readFileContent(@NonNull PostversandDokumentTyp typ, @NonNull UUID id) {
+		if (typ.getRegistrierungFileTyp() != null) {
+			return db.select(REGISTRIERUNG_FILE.fileBlob)
+				.from(REGISTRIERUNG_FILE)
+				.where(REGISTRIERUNG_FILE.id.eq(id))
+				.fetchOne()
+				.map(FileBlob::readContent)
+				.orElseThrow(() -> AppFailureException.entityNotFound(RegistrierungFile.class, id));
+		}
+		return db.select(IMPFDOSSIER_FILE.fileBlob)
+			.from(IMPFDOSSIER_FILE)
+			.where(IMPFDOSSIER_FILE.id.eq(id))
+			.fetchOne()
+			.map(FileBlob::readContent)
+			.orElseThrow(() -> AppFailureException.entityNotFound(ImpfdossierFile.class, id));
+	}
+
+	public long markAbgeholt(@NonNull PostversandDokumentTyp typ, @NonNull Collection<UUID> ids) {
+		if (typ.getRegistrierungFileTyp() != null) {
+			return db.update(REGISTRIERUNG_FILE)
+				.set(REGISTRIERUNG_FILE.abgeholt, true)
+				.where(REGISTRIERUNG_FILE.id.in(ids))
+				.execute();
+		}
+		return db.update(IMPFDOSSIER_FILE)
+			.set(IMPFDOSSIER_FILE.abgeholt, true)
+			.where(IMPFDOSSIER_FILE.id.in(ids))
+			.execute();
+	}
+
+	/**
+	 * Zaehlt einen fehlgeschlagenen Versuch, den Brief ins Sammel-PDF anzuhaengen
+	 *
+	 * @return die Anzahl Fehlversuche inkl. diesem
+	 */
+	public int markFehlversuch(@NonNull PostversandDokumentTyp typ, @NonNull UUID id) {
+		if (typ.getRegistrierungFileTyp() != null) {
+			db.update(REGISTRIERUNG_FILE)
+				.set(REGISTRIERUNG_FILE.postversandFehlversuche, REGISTRIERUNG_FILE.postversandFehlversuche.add(1))
+				.where(REGISTRIERUNG_FILE.id.eq(id))
+				.execute();
+			return db.select(REGISTRIERUNG_FILE.postversandFehlversuche)
+				.from(REGISTRIERUNG_FILE)
+				.where(REGISTRIERUNG_FILE.id.eq(id))
+				.fetchOne()
+				.orElseThrow(() -> AppFailureException.entityNotFound(RegistrierungFile.class, id));
+		}
+		db.update(IMPFDOSSIER_FILE)
+			.set(IMPFDOSSIER_FILE.postversandFehlversuche, IMPFDOSSIER_FILE.postversandFehlversuche.add(1))
+			.where(IMPFDOSSIER_FILE.id.eq(id))
+			.execute();
+		return db.select(IMPFDOSSIER_FILE.postversandFehlversuche)
+			.from(IMPFDOSSIER_FILE)
+			.where(IMPFDOSSIER_FILE.id.eq(id))
+			.fetchOne()
+			.orElseThrow(() -> AppFailureException.entityNotFound(ImpfdossierFile.class, id));
+	}
+
+	@NonNull
+	private ImpfdossierFileTyp getImpfdossierFileTyp(@NonNull PostversandDokumentTyp typ) {
+		final ImpfdossierFileTyp impfdossierFileTyp = typ.getImpfdossierFileTyp();
+		if (impfdossierFileTyp == null) {
+			throw new IllegalStateException("Kein Filetyp fuer " + typ);
+		}
+		return impfdossierFileTyp;
+	}
+}
@@ -26,6 +26,7 @@ import ch.dvbern.oss.vacme.entities.registration.QRegistrierungFile;
 import ch.dvbern.oss.vacme.entities.registration.Registrierung;
 import ch.dvbern.oss.vacme.entities.registration.RegistrierungFile;
 import ch.dvbern.oss.vacme.entities.registration.RegistrierungFileTyp;
+import ch.dvbern.oss.vacme.service.blobstore.BlobStoreService;
 import ch.dvbern.oss.vacme.smartdb.Db;
 import lombok.extern.slf4j.Slf4j;
 import org.checkerframework.checker.nullness.qual.NonNull;
@@ -37,10 +38,12 @@ import org.checkerframework.checker.nullness.qual.Nullable;
 public class RegistrierungFileRepo {
 
 	private final Db db;
+	private final BlobStoreService blobStoreService;
 
 	@Inject
-	public RegistrierungFileRepo(Db db) {
+	public RegistrierungFileRepo(Db db, BlobStoreService blobStoreService) {
 		this.db = db;
+		this.blobStoreService = blobStoreService;
 	}
 
 	public void createRegistrierungFile(@NonNull RegistrierungFile registrierungFile) {
@@ -50,6 +53,7 @@ public class RegistrierungFileRepo {
 				"File-Generierung fuer verstorbene Reg {}. Auslieferung unterdrueckt",
 				registrierungFile.getRegistrierung().getRegistrierungsnummer());
 		}
+		blobStoreService.externalize(registrierungFile.getFileBlob());
 		db.persist(registrierungFile);
 		db.flush();
 	}
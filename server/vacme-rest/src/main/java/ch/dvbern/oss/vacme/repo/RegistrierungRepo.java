@@ -21,10 +21,13 @@ import java.math.BigInteger;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.temporal.TemporalAdjusters;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.stream.Collectors;
 
 import javax.enterprise.context.RequestScoped;
 import javax.inject.Inject;
@@ -47,12 +50,14 @@ import ch.dvbern.oss.vacme.entities.terminbuchung.OrtDerImpfungTyp;
 import ch.dvbern.oss.vacme.entities.terminbuchung.QImpfslot;
 import ch.dvbern.oss.vacme.entities.terminbuchung.QImpftermin;
 import ch.dvbern.oss.vacme.entities.types.KrankheitIdentifier;
+import ch.dvbern.oss.vacme.enums.ImpfdossierStatus;
 import ch.dvbern.oss.vacme.enums.Mandant;
 import ch.dvbern.oss.vacme.jax.PersonalienSucheJax;
 import ch.dvbern.oss.vacme.jax.QPersonalienSucheJax;
 import ch.dvbern.oss.vacme.service.HashIdService;
 import ch.dvbern.oss.vacme.smartdb.Db;
 import ch.dvbern.oss.vacme.smartdb.SmartJPAQuery;
+import com.querydsl.core.types.Predicate;
 import lombok.extern.slf4j.Slf4j;
 import org.checkerframework.checker.nullness.qual.NonNull;
 import org.jetbrains.annotations.NotNull;
@@ -86,6 +91,25 @@ import static ch.dvbern.oss.vacme.enums.ImpfdossierStatus.ODI_GEWAEHLT_BOOSTER;
 @Slf4j
 public class RegistrierungRepo {
 
+	private static final List<ImpfdossierStatus> STATUS_PERSONALIENSUCHE = List.of(
+		ODI_GEWAEHLT, GEBUCHT,
+		ABGESCHLOSSEN, ABGESCHLOSSEN_OHNE_ZWEITE_IMPFUNG, AUTOMATISCH_ABGESCHLOSSEN,
+		IMPFUNG_2_DURCHGEFUEHRT, IMPFUNG_2_KONTROLLIERT,
+		IMPFUNG_1_DURCHGEFUEHRT, IMMUNISIERT,
+		FREIGEGEBEN_BOOSTER,
+		ODI_GEWAEHLT_BOOSTER,
+		GEBUCHT_BOOSTER,
+		KONTROLLIERT_BOOSTER);
+
+	private static final List<ImpfdossierStatus> STATUS_PERSONALIENSUCHE_GEIMPFT = List.of(
+		ABGESCHLOSSEN, ABGESCHLOSSEN_OHNE_ZWEITE_IMPFUNG, AUTOMATISCH_ABGESCHLOSSEN,
+		IMPFUNG_2_DURCHGEFUEHRT, IMPFUNG_2_KONTROLLIERT,
+		IMPFUNG_1_DURCHGEFUEHRT, IMMUNISIERT,
+		FREIGEGEBEN_BOOSTER,
+		ODI_GEWAEHLT_BOOSTER,
+		GEBUCHT_BOOSTER,
+		KONTROLLIERT_BOOSTER);
+
 	private final Db db;
 	private final EntityManager em;
 	private final HashIdService hashIdService;
@@ -192,6 +216,25 @@ public class RegistrierungRepo {
 		return hashIdService.getHashFromNumber(nextValue.longValue());
 	}
 
+	/**
+	 * Reserviert einen ganzen Block von Registrierungsnummern mit einer einzigen Abfrage. Die Sequence-Engine von
+	 * MariaDB liefert mit seq_1_to_n genau n Zeilen, fuer jede Zeile wird ein neuer Wert der Sequence bezogen.
+	 */
+	@NonNull
+	@Transactional(Transactional.TxType.SUPPORTS)
+	public List<String> getNextRegistrierungnummern(int anzahl) {
+		if (anzahl <= 0) {
+			return Collections.emptyList();
+		}
+		@SuppressWarnings("unchecked")
+		final List<Number> nextValues = em
+			.createNativeQuery("SELECT NEXT VALUE FOR register_sequence FROM seq_1_to_" + anzahl)
+			.getResultList();
+		return nextValues.stream()
+			.map(nextValue -> hashIdService.getHashFromNumber(nextValue.longValue()))
+			.collect(Collectors.toList());
+	}
+
 	public Registrierung update(@NonNull Registrierung registrierung) {
 		Registrierung merge = db.merge(registrierung);
 		db.flush();
@@ -213,29 +256,41 @@ public class RegistrierungRepo {
 
 	@NonNull
 	public List<PersonalienSucheJax> findRegistrierungByGeburtsdatum(@NonNull LocalDate geburtsdatum) {
-		return db
-			.select(new QPersonalienSucheJax(
-				impfdossier.id,
-				registrierung.name,
-				registrierung.vorname))
-			.from(registrierung)
-			.distinct()
-			.innerJoin(impfdossier).on(registrierung.eq(impfdossier.registrierung))
-			.where(registrierung.geburtsdatum.eq(geburtsdatum)
-				.and(impfdossier.dossierStatus.in(
-					ODI_GEWAEHLT, GEBUCHT,
-					ABGESCHLOSSEN, ABGESCHLOSSEN_OHNE_ZWEITE_IMPFUNG, AUTOMATISCH_ABGESCHLOSSEN,
-					IMPFUNG_2_DURCHGEFUEHRT, IMPFUNG_2_KONTROLLIERT,
-					IMPFUNG_1_DURCHGEFUEHRT, IMMUNISIERT,
-					FREIGEGEBEN_BOOSTER,
-					ODI_GEWAEHLT_BOOSTER,
-					GEBUCHT_BOOSTER,
-					KONTROLLIERT_BOOSTER)))
-			.fetch();
+		return findPersonalienSucheJax(registrierung.geburtsdatum.eq(geburtsdatum), STATUS_PERSONALIENSUCHE);
 	}
 
 	@NonNull
 	public List<PersonalienSucheJax> findRegistrierungByGeburtsdatumGeimpft(@NonNull LocalDate geburtsdatum) {
+		return findPersonalienSucheJax(registrierung.geburtsdatum.eq(geburtsdatum), STATUS_PERSONALIENSUCHE_GEIMPFT);
+	}
+
+	/**
+	 * Wie {@link #findRegistrierungByGeburtsdatum(LocalDate)}, aber fuer die Kandidaten aus dem Suchindex
+	 */
+	@NonNull
+	public List<PersonalienSucheJax> findRegistrierungByIds(@NonNull Collection<UUID> registrierungIds) {
+		if (registrierungIds.isEmpty()) {
+			return Collections.emptyList();
+		}
+		return findPersonalienSucheJax(registrierung.id.in(registrierungIds), STATUS_PERSONALIENSUCHE);
+	}
+
+	/**
+	 * Wie {@link #findRegistrierungByGeburtsdatumGeimpft(LocalDate)}, aber fuer die Kandidaten aus dem Suchindex
+	 */
+	@NonNull
+	public List<PersonalienSucheJax> findRegistrierungByIdsGeimpft(@NonNull Collection<UUID> registrierungIds) {
+		if (registrierungIds.isEmpty()) {
+			return Collections.emptyList();
+		}
+		return findPersonalienSucheJax(registrierung.id.in(registrierungIds), STATUS_PERSONALIENSUCHE_GEIMPFT);
+	}
+
+	@NonNull
+	private List<PersonalienSucheJax> findPersonalienSucheJax(
+		@NonNull Predicate predicate,
+		@NonNull List<ImpfdossierStatus> dossierStatus
+	) {
 		return db.select(new QPersonalienSucheJax(
 				impfdossier.id,
 				registrierung.name,
@@ -243,16 +298,7 @@ public class RegistrierungRepo {
 			.from(registrierung)
 			.distinct()
 			.innerJoin(impfdossier).on(registrierung.eq(impfdossier.registrierung))
-			.where(registrierung.geburtsdatum.eq(geburtsdatum)
-				.and(impfdossier.dossierStatus.in(
-					ABGESCHLOSSEN, ABGESCHLOSSEN_OHNE_ZWEITE_IMPFUNG, AUTOMATISCH_ABGESCHLOSSEN,
-					IMPFUNG_2_DURCHGEFUEHRT, IMPFUNG_2_KONTROLLIERT,
-					IMPFUNG_1_DURCHGEFUEHRT, IMMUNISIERT,
-					FREIGEGEBEN_BOOSTER,
-					ODI_GEWAEHLT_BOOSTER,
-					GEBUCHT_BOOSTER,
-					KONTROLLIERT_BOOSTER)))
-
+			.where(predicate, impfdossier.dossierStatus.in(dossierStatus))
 			.fetch();
 	}
 
@@ -380,6 +426,16 @@ public class RegistrierungRepo {
 			.fetchOne();
 	}
 
+	@NonNull
+	public List<Registrierung> getByExternalIds(@NonNull Collection<String> externalIds) {
+		if (externalIds.isEmpty()) {
+			return Collections.emptyList();
+		}
+		return db.selectFrom(registrierung)
+			.where(registrierung.externalId.in(externalIds))
+			.fetch();
+	}
+
 	public void delete(ID<Registrierung> registrierungId) {
 		db.remove(registrierungId);
 		db.flush();
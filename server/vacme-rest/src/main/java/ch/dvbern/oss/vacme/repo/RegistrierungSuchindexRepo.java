@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2022 DV Bern AG, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.dvbern.oss.vacme.repo;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.context.control.ActivateRequestContext;
+import javax.inject.Inject;
+import javax.persistence.Query;
+import javax.transaction.Transactional;
+
+import ch.dvbern.oss.vacme.service.personaliensuche.PersonalienSuchschluessel;
+import ch.dvbern.oss.vacme.service.personaliensuche.RegistrierungSuchdaten;
+import ch.dvbern.oss.vacme.smartdb.Db;
+import lombok.RequiredArgsConstructor;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Zugriff auf die Tabellen RegistrierungSuchindex und RegistrierungSuchindexStand. ApplicationScoped mit eigenem
+ * RequestContext, da der Index von einem Batchjob nachgefuehrt wird. Der Index enthaelt pro Registrierung und
+ * Geburtsdatum alle {@link PersonalienSuchschluessel} von Name und Vorname.
+ */
+@ApplicationScoped
+@ActivateRequestContext
+@Transactional
+@RequiredArgsConstructor(onConstructor_ = @Inject)
+public class RegistrierungSuchindexRepo {
+
+	private static final String FELD_NAME = "NAME";
+	private static final String FELD_VORNAME = "VORNAME";
+	private static final int STAND_ID = 1;
+	// 4 Parameter pro Zeile, MariaDB erlaubt maximal 65535 Parameter pro Statement
+	private static final int MAX_ROWS_PER_INSERT = 1000;
+
+	private final Db db;
+
+	@NonNull
+	public Optional<LocalDateTime> findStand() {
+		@SuppressWarnings("unchecked")
+		final List<Object> result = db.getEntityManager()
+			.createNativeQuery("SELECT timestampMutiert FROM RegistrierungSuchindexStand WHERE id = ?1")
+			.setParameter(1, STAND_ID)
+			.getResultList();
+		return result.stream().findFirst().map(RegistrierungSuchindexRepo::toLocalDateTime);
+	}
+
+	public void saveStand(@NonNull LocalDateTime timestampMutiert) {
+		db.getEntityManager()
+			.createNativeQuery("INSERT INTO RegistrierungSuchindexStand (id, timestampMutiert) VALUES (?1, ?2) "
+				+ "ON DUPLICATE KEY UPDATE timestampMutiert = ?2")
+			.setParameter(1, STAND_ID)
+			.setParameter(2, timestampMutiert)
+			.executeUpdate();
+	}
+
+	/**
+	 * Liest die Registrierungen, die seit dem Zeitpunkt veraendert wurden, sortiert nach (timestampMutiert, id).
+	 * Mit after kann nach dem letzten Eintrag des vorherigen Batches weitergelesen werden.
+	 */
+	@NonNull
+	public List<RegistrierungSuchdaten> findGeaendertSeit(
+		@NonNull LocalDateTime seit,
+		@Nullable RegistrierungSuchdaten after,
+		int maxResults
+	) {
+		final Query query;
+		if (after == null) {
+			query = db.getEntityManager()
+				.createNativeQuery("SELECT id, name, vorname, geburtsdatum, timestampMutiert FROM Registrierung "
+					+ "WHERE timestampMutiert >= ?1 ORDER BY timestampMutiert, id LIMIT ?2")
+				.setParameter(1, seit)
+				.setParameter(2, maxResults);
+		} else {
+			query = db.getEntityManager()
+				.createNativeQuery("SELECT id, name, vorname, geburtsdatum, timestampMutiert FROM Registrierung "
+					+ "WHERE (timestampMutiert > ?1 OR (timestampMutiert = ?1 AND id > ?3)) "
+					+ "ORDER BY timestampMutiert, id LIMIT ?2")
+				.setParameter(1, after.getTimestampMutiert())
+				.setParameter(2, maxResults)
+				.setParameter(3, after.getRegistrierungId().toString());
+		}
+		@SuppressWarnings("unchecked")
+		final List<Object[]> rows = query.getResultList();
+		final List<RegistrierungSuchdaten> result = new ArrayList<>(rows.size());
+		for (Object[] row : rows) {
+			result.add(new RegistrierungSuchdaten(
+				UUID.fromString((String) row[0]),
+				(String) row[1],
+				(String) row[2],
+				toLocalDate(row[3]),
+				toLocalDateTime(row[4])));
+		}
+		return result;
+	}
+
+	/**
+	 * Ersetzt die Index-Eintraege der uebergebenen Registrierungen
+	 */
+	public void reindex(@NonNull Collection<RegistrierungSuchdaten> registrierungen) {
+		if (registrierungen.isEmpty()) {
+			return;
+		}
+		final List<String> ids = registrierungen.stream()
+			.map(daten -> daten.getRegistrierungId().toString())
+			.collect(Collectors.toList());
+		db.getEntityManager()
+			.createNativeQuery("DELETE FROM RegistrierungSuchindex WHERE registrierung_id IN (?1)")
+			.setParameter(1, ids)
+			.executeUpdate();
+
+		final List<Object[]> rows = new ArrayList<>();
+		for (RegistrierungSuchdaten daten : registrierungen) {
+			for (String schluessel : PersonalienSuchschluessel.createSchluessel(daten.getName())) {
+				rows.add(new Object[] { daten.getGeburtsdatum(), FELD_NAME, schluessel, daten.getRegistrierungId().toString() });
+			}
+			for (String schluessel : PersonalienSuchschluessel.createSchluessel(daten.getVorname())) {
+				rows.add(new Object[] { daten.getGeburtsdatum(), FELD_VORNAME, schluessel, daten.getRegistrierungId().toString() });
+			}
+		}
+		for (int from = 0; from < rows.size(); from += MAX_ROWS_PER_INSERT) {
+			insert(rows.subList(from, Math.min(from + MAX_ROWS_PER_INSERT, rows.size())));
+		}
+	}
+
+	private void insert(@NonNull List<Object[]> rows) {
+		// IGNORE: eine inzwischen geloeschte Registrierung (Foreign Key) soll nicht den ganzen Batch verhindern
+		final StringBuilder sql = new StringBuilder(
+			"INSERT IGNORE INTO RegistrierungSuchindex (geburtsdatum, feld, schluessel, registrierung_id) VALUES ");
+		for (int i = 0; i < rows.size(); i++) {
+			final int base = i * 4;
+			sql.append(i == 0 ? "" : ", ")
+				.append("(?").append(base + 1)
+				.append(", ?").append(base + 2)
+				.append(", ?").append(base + 3)
+				.append(", ?").append(base + 4).append(')');
+		}
+		final Query query = db.getEntityManager().createNativeQuery(sql.toString());
+		for (int i = 0; i < rows.size(); i++) {
+			final Object[] row = rows.get(i);
+			for (int j = 0; j < row.length; j++) {
+				query.setParameter(i * 4 + j + 1, row[j]);
+			}
+		}
+		query.executeUpdate();
+	}
+
+	/**
+	 * Sucht die Registrierungen, deren Name und Vorname zu den normalisierten Suchbegriffen passen. Zusaetzlich
+	 * werden alle Registrierungen mit diesem Geburtsdatum geliefert, die seit geaendertSeit veraendert wurden und
+	 * deshalb im Index noch fehlen oder veraltet sein koennen. Der Aufrufer muss die Treffer deshalb nochmals
+	 * gegen die aktuellen Namen pruefen.
+	 */
+	@NonNull
+	public List<UUID> findKandidaten(
+		@NonNull LocalDate geburtsdatum,
+		@NonNull String normalizedName,
+		@NonNull String normalizedVorname,
+		@NonNull LocalDateTime geaendertSeit
+	) {
+		@SuppressWarnings("unchecked")
+		final List<Object> rows = db.getEntityManager()
+			.createNativeQuery("SELECT N.registrierung_id FROM RegistrierungSuchindex N "
+				+ "INNER JOIN RegistrierungSuchindex V ON V.registrierung_id = N.registrierung_id "
+				+ "AND V.geburtsdatum = ?1 AND V.feld = ?4 AND V.schluessel = ?5 "
+				+ "WHERE N.geburtsdatum = ?1 AND N.feld = ?2 AND N.schluessel = ?3 "
+				+ "UNION "
+				+ "SELECT R.id FROM Registrierung R WHERE R.timestampMutiert >= ?6 AND R.geburtsdatum = ?1")
+			.setParameter(1, geburtsdatum)
+			.setParameter(2, FELD_NAME)
+			.setParameter(3, normalizedName)
+			.setParameter(4, FELD_VORNAME)
+			.setParameter(5, normalizedVorname)
+			.setParameter(6, geaendertSeit)
+			.getResultList();
+		return rows.stream()
+			.map(id -> UUID.fromString((String) id))
+			.collect(Collectors.toList());
+	}
+
+	@NonNull
+	private static LocalDate toLocalDate(@NonNull Object value) {
+		if (value instanceof Date) {
+			return ((Date) value).toLocalDate();
+		}
+		return (LocalDate) value;
+	}
+
+	@NonNull
+	private static LocalDateTime toLocalDateTime(@NonNull Object value) {
+		if (value instanceof Timestamp) {
+			return ((Timestamp) value).toLocalDateTime();
+		}
+		return (LocalDateTime) value;
+	}
+}
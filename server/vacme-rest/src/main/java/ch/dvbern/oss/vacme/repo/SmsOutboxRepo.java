@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2022 DV Bern AG, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.dvbern.oss.vacme.repo;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.context.control.ActivateRequestContext;
+import javax.inject.Inject;
+import javax.transaction.Transactional;
+
+import ch.dvbern.oss.vacme.service.sms.SmsOutboxItem;
+import ch.dvbern.oss.vacme.smartdb.Db;
+import lombok.RequiredArgsConstructor;
+import org.apache.commons.lang3.StringUtils;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Zugriff auf die Tabelle SmsOutbox. ApplicationScoped mit eigenem RequestContext, da die Outbox vom
+ * Dispatcher-Thread des {@link ch.dvbern.oss.vacme.service.sms.SmsOutboxDispatcher} abgearbeitet wird.
+ * Ein Eintrag wird ueber leaseOwner/leaseUntil reserviert, damit mehrere Nodes die Outbox gleichzeitig abarbeiten
+ * koennen. Stirbt ein Node, werden seine Eintraege nach Ablauf des Leases von einem anderen Node uebernommen.
+ * Alle Zeitstempel werden von der DB gesetzt, damit die Uhren der Nodes keine Rolle spielen.
+ */
+@ApplicationScoped
+@ActivateRequestContext
+@Transactional
+@RequiredArgsConstructor(onConstructor_ = @Inject)
+public class SmsOutboxRepo {
+
+	private static final String STATUS_NEW = "NEW";
+	private static final String STATUS_SENT = "SENT";
+	private static final String STATUS_FAILED = "FAILED";
+	private static final int MAX_ERROR_LENGTH = 2000;
+
+	private final Db db;
+
+	/**
+	 * Legt das SMS in der Transaktion des Aufrufers in die Outbox. {@link ch.dvbern.oss.vacme.service.SmsService}
+	 * ruft dies aus sendSMS bzw. sendSMSToRegistrierung auf, die in einer eigenen Transaktion (REQUIRES_NEW) laufen:
+	 * Das SMS wird also sofort committet und auch dann verschickt, wenn die fachliche Transaktion spaeter
+	 * zurueckgerollt wird, genau wie beim direkten Versand ohne Outbox.
+	 */
+	public void create(@NonNull String empfaenger, @NonNull String message) {
+		db.getEntityManager()
+			.createNativeQuery("INSERT INTO SmsOutbox (timestampErstellt, empfaenger, message, status, attempts, nextAttempt) "
+				+ "VALUES (NOW(6), ?1, ?2, ?3, 0, NOW(6))")
+			.setParameter(1, empfaenger)
+			.setParameter(2, message)
+			.setParameter(3, STATUS_NEW)
+			.executeUpdate();
+	}
+
+	/**
+	 * Reserviert bis zu maxItems faellige SMS fuer diesen Owner und gibt sie zurueck
+	 */
+	@NonNull
+	public List<SmsOutboxItem> claimDueItems(@NonNull String leaseOwner, long leaseSeconds, int maxItems) {
+		db.getEntityManager()
+			.createNativeQuery("UPDATE SmsOutbox SET leaseOwner = ?1, leaseUntil = NOW(6) + INTERVAL ?2 SECOND "
+				+ "WHERE status = ?3 AND nextAttempt <= NOW(6) AND (leaseUntil IS NULL OR leaseUntil < NOW(6)) "
+				+ "ORDER BY id LIMIT ?4")
+			.setParameter(1, leaseOwner)
+			.setParameter(2, leaseSeconds)
+			.setParameter(3, STATUS_NEW)
+			.setParameter(4, maxItems)
+			.executeUpdate();
+		@SuppressWarnings("unchecked")
+		final List<Object[]> rows = db.getEntityManager()
+			.createNativeQuery("SELECT id, empfaenger, message, attempts FROM SmsOutbox "
+				+ "WHERE leaseOwner = ?1 AND status = ?2 ORDER BY id")
+			.setParameter(1, leaseOwner)
+			.setParameter(2, STATUS_NEW)
+			.getResultList();
+		final List<SmsOutboxItem> result = new ArrayList<>(rows.size());
+		for (Object[] row : rows) {
+			result.add(new SmsOutboxItem(
+				((Number) row[0]).longValue(),
+				(String) row[1],
+				(String) row[2],
+				((Number) row[3]).intValue()));
+		}
+		return result;
+	}
+
+	public void markSent(long id, @NonNull String leaseOwner) {
+		db.getEntityManager()
+			.createNativeQuery("UPDATE SmsOutbox SET status = ?1, attempts = attempts + 1, timestampGesendet = NOW(6), "
+				+ "leaseOwner = NULL, leaseUntil = NULL WHERE id = ?2 AND leaseOwner = ?3")
+			.setParameter(1, STATUS_SENT)
+			.setParameter(2, id)
+			.setParameter(3, leaseOwner)
+			.executeUpdate();
+	}
+
+	/**
+	 * Gibt das SMS frei fuer einen weiteren Versuch in delaySeconds Sekunden
+	 */
+	public void markForRetry(long id, @NonNull String leaseOwner, long delaySeconds, @Nullable String error) {
+		db.getEntityManager()
+			.createNativeQuery("UPDATE SmsOutbox SET attempts = attempts + 1, nextAttempt = NOW(6) + INTERVAL ?1 SECOND, "
+				+ "lastError = ?2, leaseOwner = NULL, leaseUntil = NULL WHERE id = ?3 AND leaseOwner = ?4")
+			.setParameter(1, delaySeconds)
+			.setParameter(2, StringUtils.abbreviate(error, MAX_ERROR_LENGTH))
+			.setParameter(3, id)
+			.setParameter(4, leaseOwner)
+			.executeUpdate();
+	}
+
+	public void markFailed(long id, @NonNull String leaseOwner, @Nullable String error) {
+		db.getEntityManager()
+			.createNativeQuery("UPDATE SmsOutbox SET status = ?1, attempts = attempts + 1, lastError = ?2, "
+				+ "leaseOwner = NULL, leaseUntil = NULL WHERE id = ?3 AND leaseOwner = ?4")
+			.setParameter(1, STATUS_FAILED)
+			.setParameter(2, StringUtils.abbreviate(error, MAX_ERROR_LENGTH))
+			.setParameter(3, id)
+			.setParameter(4, leaseOwner)
+			.executeUpdate();
+	}
+
+	/**
+	 * Loescht verschickte und definitiv fehlgeschlagene SMS, die Nachrichten enthalten Personendaten
+	 */
+	public int deleteDoneOlderThan(long hours) {
+		return db.getEntityManager()
+			.createNativeQuery("DELETE FROM SmsOutbox WHERE status IN (?1, ?2) "
+				+ "AND timestampErstellt < NOW(6) - INTERVAL ?3 HOUR")
+			.setParameter(1, STATUS_SENT)
+			.setParameter(2, STATUS_FAILED)
+			.setParameter(3, hours)
+			.executeUpdate();
+	}
+}
@@ -18,9 +18,12 @@
 
 package ch.dvbern.oss.vacme.repo.vmdl;
 
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 
 import javax.enterprise.context.RequestScoped;
@@ -48,6 +51,7 @@ import com.querydsl.core.types.dsl.Expressions;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.time.StopWatch;
 import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
 
 import static ch.dvbern.oss.vacme.entities.registration.QRegistrierung.registrierung;
 
@@ -66,22 +70,36 @@ public class VMDLRepo {
 
 	@NonNull
 	public List<VMDLUploadCovidJax> getVMDLPendenteImpfungen3QueriesCovid(int uploadChunkLimit, @NonNull String reportingUnitID) {
+		return getVMDLPendenteImpfungen3QueriesCovid(uploadChunkLimit, reportingUnitID, Collections.emptySet());
+	}
+
+	/**
+	 * @param excludedImpfungIds Impfungen, die gerade hochgeladen werden und deshalb nicht nochmals gelesen werden
+	 * sollen, obwohl ihr timestampVMDL noch nicht gesetzt ist
+	 */
+	@NonNull
+	public List<VMDLUploadCovidJax> getVMDLPendenteImpfungen3QueriesCovid(
+		int uploadChunkLimit,
+		@NonNull String reportingUnitID,
+		@NonNull Collection<UUID> excludedImpfungIds
+	) {
 		final Expression<String> reportingUnitIDExpression = Expressions.constant(reportingUnitID);
+		final BooleanExpression notExcluded = notExcluded(excludedImpfungIds);
 		BooleanExpression joinExpressionT1 = QImpftermin.impftermin.eq(QImpfdossier.impfdossier.buchung.impftermin1);
-		List<VMDLUploadCovidJax> impfungen1 = runVMDLQueryRegistrierungstermineCovid(uploadChunkLimit, reportingUnitIDExpression, joinExpressionT1, "vmdl_t1_impfungen");
+		List<VMDLUploadCovidJax> impfungen1 = runVMDLQueryRegistrierungstermineCovid(uploadChunkLimit, reportingUnitIDExpression, joinExpressionT1, notExcluded, "vmdl_t1_impfungen");
 		List<VMDLUploadCovidJax> result = new ArrayList<>(impfungen1);
 
 		int remainingChunkLimit = uploadChunkLimit - impfungen1.size();
 
 		if (remainingChunkLimit > 0) {
 			BooleanExpression joinExpressionT2 = QImpftermin.impftermin.eq(QImpfdossier.impfdossier.buchung.impftermin2);
-			List<VMDLUploadCovidJax> impfungen2 = runVMDLQueryRegistrierungstermineCovid(remainingChunkLimit, reportingUnitIDExpression, joinExpressionT2, "vmdl_t2_impfungen");
+			List<VMDLUploadCovidJax> impfungen2 = runVMDLQueryRegistrierungstermineCovid(remainingChunkLimit, reportingUnitIDExpression, joinExpressionT2, notExcluded, "vmdl_t2_impfungen");
 			result.addAll(impfungen2);
 			remainingChunkLimit = remainingChunkLimit - impfungen2.size();
 		}
 
 		if (remainingChunkLimit > 0) {
-			List<VMDLUploadCovidJax> impfungenN = runDossierImpfungenVMDLQueryForCovid(reportingUnitIDExpression, remainingChunkLimit);
+			List<VMDLUploadCovidJax> impfungenN = runDossierImpfungenVMDLQueryForCovid(reportingUnitIDExpression, remainingChunkLimit, notExcluded);
 			result.addAll(impfungenN);
 		}
 		return result;
@@ -89,17 +107,31 @@ public class VMDLRepo {
 
 	@NonNull
 	public List<VMDLUploadCovidJax> getVMDLPendenteImpfungen2QueriesCovid(int uploadChunkLimit, @NonNull String reportingUnitID) {
+		return getVMDLPendenteImpfungen2QueriesCovid(uploadChunkLimit, reportingUnitID, Collections.emptySet());
+	}
+
+	/**
+	 * @param excludedImpfungIds Impfungen, die gerade hochgeladen werden und deshalb nicht nochmals gelesen werden
+	 * sollen, obwohl ihr timestampVMDL noch nicht gesetzt ist
+	 */
+	@NonNull
+	public List<VMDLUploadCovidJax> getVMDLPendenteImpfungen2QueriesCovid(
+		int uploadChunkLimit,
+		@NonNull String reportingUnitID,
+		@NonNull Collection<UUID> excludedImpfungIds
+	) {
 		final Expression<String> reportingUnitIDExpression = Expressions.constant(reportingUnitID);
+		final BooleanExpression notExcluded = notExcluded(excludedImpfungIds);
 		BooleanExpression joinExpressionT1T2 = QImpftermin.impftermin.eq(QImpfdossier.impfdossier.buchung.impftermin1)
 			.or(QImpftermin.impftermin.eq(QImpfdossier.impfdossier.buchung.impftermin2));
 
-		List<VMDLUploadCovidJax> impfungen1Or2 = runVMDLQueryRegistrierungstermineCovid(uploadChunkLimit, reportingUnitIDExpression, joinExpressionT1T2, "vmdl_t1_t2_impfungen");
+		List<VMDLUploadCovidJax> impfungen1Or2 = runVMDLQueryRegistrierungstermineCovid(uploadChunkLimit, reportingUnitIDExpression, joinExpressionT1T2, notExcluded, "vmdl_t1_t2_impfungen");
 
 		List<VMDLUploadCovidJax> result = new ArrayList<>(impfungen1Or2);
 		long remainingChunkLimit = uploadChunkLimit - result.size();
 
 		if (remainingChunkLimit > 0) {
-			List<VMDLUploadCovidJax> impfungenN = runDossierImpfungenVMDLQueryForCovid(reportingUnitIDExpression, remainingChunkLimit);
+			List<VMDLUploadCovidJax> impfungenN = runDossierImpfungenVMDLQueryForCovid(reportingUnitIDExpression, remainingChunkLimit, notExcluded);
 			result.addAll(impfungenN);
 		}
 		return result;
@@ -107,9 +139,23 @@ public class VMDLRepo {
 
 	@NonNull
 	public List<VMDLUploadAffenpockenJax> getVMDLPendenteAffenpockenImpfungen(int uploadChunkLimit, @NonNull String reportingUnitID) {
+		return getVMDLPendenteAffenpockenImpfungen(uploadChunkLimit, reportingUnitID, Collections.emptySet());
+	}
+
+	/**
+	 * @param excludedImpfungIds Impfungen, die gerade hochgeladen werden und deshalb nicht nochmals gelesen werden
+	 * sollen, obwohl ihr timestampVMDL noch nicht gesetzt ist
+	 */
+	@NonNull
+	public List<VMDLUploadAffenpockenJax> getVMDLPendenteAffenpockenImpfungen(
+		int uploadChunkLimit,
+		@NonNull String reportingUnitID,
+		@NonNull Collection<UUID> excludedImpfungIds
+	) {
 		if (uploadChunkLimit > 0) {
 			final Expression<String> reportingUnitIDExpression = Expressions.constant(reportingUnitID);
-			List<VMDLUploadAffenpockenJax> impfungenN = runDossierImpfungenVMDLQueryForAffenpocken(reportingUnitIDExpression, uploadChunkLimit);
+			List<VMDLUploadAffenpockenJax> impfungenN = runDossierImpfungenVMDLQueryForAffenpocken(
+				reportingUnitIDExpression, uploadChunkLimit, notExcluded(excludedImpfungIds));
 			return impfungenN;
 		}
 		return Collections.emptyList();
@@ -120,6 +166,7 @@ public class VMDLRepo {
 		int limit,
 		@NonNull Expression<String> reportingUnitIDExpression,
 		@NonNull Predicate impfdossierJoinfExpression,
+		@Nullable BooleanExpression notExcluded,
 		@NonNull String queryName
 	) {
 		StopWatch stopwatch = StopWatch.createStarted();
@@ -140,8 +187,10 @@ public class VMDLRepo {
 				.where(QImpfung.impfung.timestampVMDL.isNull()
 					.and(QImpfung.impfung.extern.isFalse())
 					.and(QImpfslot.impfslot.krankheitIdentifier.in(KrankheitIdentifier.getVMDLSupportedKrankheiten()))
+					.and(notExcluded)
 				)
 				.limit(limit)
+				.named(queryName)
 				.fetch();
 
 		logIfSlow(stopwatch, impfungen.size(), queryName);
@@ -151,7 +200,8 @@ public class VMDLRepo {
 	@NonNull
 	private List<VMDLUploadCovidJax> runDossierImpfungenVMDLQueryForCovid(
 		@NonNull Expression<String> reportingUnitIDExpression,
-		long remainingChunkLimit
+		long remainingChunkLimit,
+		@Nullable BooleanExpression notExcluded
 	) {
 		StopWatch stopwatchQ2 = StopWatch.createStarted();
 		List<VMDLUploadCovidJax> impfungenN = db.select(new QVMDLUploadCovidJax(
@@ -170,6 +220,7 @@ public class VMDLRepo {
 			.where(QImpfung.impfung.timestampVMDL.isNull()
 				.and(QImpfung.impfung.extern.isFalse())
 				.and(QImpfdossier.impfdossier.krankheitIdentifier.eq(KrankheitIdentifier.COVID))
+				.and(notExcluded)
 			)
 			.fetch();
 		logIfSlow(stopwatchQ2, impfungenN.size(), "vmdl_dossiereintragimpfungen_covid");
@@ -179,7 +230,8 @@ public class VMDLRepo {
 	@NonNull
 	private List<VMDLUploadAffenpockenJax> runDossierImpfungenVMDLQueryForAffenpocken(
 		@NonNull Expression<String> reportingUnitIDExpression,
-		long remainingChunkLimit
+		long remainingChunkLimit,
+		@Nullable BooleanExpression notExcluded
 	) {
 		StopWatch stopwatchQ2 = StopWatch.createStarted();
 		List<VMDLUploadAffenpockenJax> impfungenN = db.select(new QVMDLUploadAffenpockenJax(
@@ -198,12 +250,52 @@ public class VMDLRepo {
 			.where(QImpfung.impfung.timestampVMDL.isNull()
 				.and(QImpfung.impfung.extern.isFalse())
 				.and(QImpfdossier.impfdossier.krankheitIdentifier.eq(KrankheitIdentifier.AFFENPOCKEN))
+				.and(notExcluded)
 			)
 			.fetch();
 		logIfSlow(stopwatchQ2, impfungenN.size(), "vmdl_dossiereintragimpfungen_affenpocken");
 		return impfungenN;
 	}
 
+	@Nullable
+	private BooleanExpression notExcluded(@NonNull Collection<UUID> excludedImpfungIds) {
+		if (excludedImpfungIds.isEmpty()) {
+			return null;
+		}
+		return QImpfung.impfung.id.notIn(excludedImpfungIds);
+	}
+
+	/**
+	 * Setzt den timestampVMDL fuer alle Impfungen eines hochgeladenen Chunks mit einem einzigen Update und merkt
+	 * sich die Impfungen fuer {@link #wasSentToVMDL(Impfung)}, da das Bulk-Update nicht auditiert wird.
+	 *
+	 * @return Anzahl aktualisierte Impfungen
+	 */
+	public long markAsSentToVMDL(@NonNull Collection<UUID> impfungIds, @NonNull LocalDateTime timestampVMDL) {
+		if (impfungIds.isEmpty()) {
+			return 0;
+		}
+		final long updated = db.update(QImpfung.impfung)
+			.set(QImpfung.impfung.timestampVMDL, timestampVMDL)
+			.where(QImpfung.impfung.id.in(impfungIds))
+			.execute();
+		final StringBuilder sql = new StringBuilder("INSERT IGNORE INTO ImpfungVMDLUpload (impfung_id, timestampErsterUpload) VALUES ");
+		int i = 0;
+		for (UUID ignored : impfungIds) {
+			sql.append(i == 0 ? "" : ", ").append("(?").append(i + 2).append(", ?1)");
+			i++;
+		}
+		final Query query = db.getEntityManager().createNativeQuery(sql.toString());
+		query.setParameter(1, timestampVMDL);
+		i = 0;
+		for (UUID impfungId : impfungIds) {
+			query.setParameter(i + 2, impfungId.toString());
+			i++;
+		}
+		query.executeUpdate();
+		return updated;
+	}
+
 	private void logIfSlow(@NonNull StopWatch stopwatch, int resultCnt, @NonNull String queryname) {
 		stopwatch.stop();
 		if (stopwatch.getTime(TimeUnit.MILLISECONDS) > SLOW_THRESHOLD_MS) {
@@ -223,7 +315,14 @@ public class VMDLRepo {
 		if (impfung.getTimestampVMDL() != null) {
 			return true;
 		}
-		// Otherwise search in the audit table
+		// Otherwise search the uploads since timestampVMDL is set by a (not audited) bulk update
+		Query uploadQuery = db.getEntityManager()
+			.createNativeQuery("SELECT impfung_id FROM ImpfungVMDLUpload WHERE impfung_id = ?1");
+		uploadQuery.setParameter(1, impfung.getId().toString());
+		if (!uploadQuery.getResultList().isEmpty()) {
+			return true;
+		}
+		// Finally search in the audit table (uploads before the bulk update was introduced)
 		String query = "SELECT REV FROM Impfung_AUD WHERE id = ?1 and timestampVMDL is not null;";
 		Query nativeQuery = db.getEntityManager().createNativeQuery(query);
 		nativeQuery.setParameter(1, impfung.getId().toString());
@@ -19,6 +19,7 @@ package ch.dvbern.oss.vacme.reports;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.List;
 
 import javax.annotation.Nonnull;
@@ -51,6 +52,18 @@ public abstract class AbstractReportServiceBean {
 		return bytes;
 	}
 
+	/**
+	 * Schreibt das Workbook direkt in den Stream, ohne es vorher als byte[] im Speicher aufzubauen
+	 */
+	protected void writeWorkbook(@Nonnull Workbook workbook, @Nonnull OutputStream out) {
+		try {
+			workbook.write(out);
+			out.flush();
+		} catch (IOException | RuntimeException e) {
+			throw new IllegalStateException("Error writing workbook", e);
+		}
+	}
+
 	protected void mergeData(
 		@Nonnull Sheet sheet,
 		@Nonnull ExcelMergerDTO excelMergerDTO,
@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2022 DV Bern AG, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.dvbern.oss.vacme.reports;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import javax.persistence.Query;
+
+import ch.dvbern.oss.vacme.shared.errors.AppValidationMessage;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.lang3.time.StopWatch;
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+/**
+ * Schreibt die Resultate von nativen Report-Queries als CSV in einen Stream.
+ * <p>
+ * Die Queries werden mit einer Fetch-Size ausgefuehrt, damit der MariaDB-Treiber die Zeilen ueber einen
+ * serverseitigen Cursor liefert, statt das ganze Resultat in den Speicher zu laden. Geflusht wird alle
+ * {@code flushEveryRows} Zeilen oder wenn der Schreibpuffer voll ist, nicht nach jeder Zeile.
+ */
+@Slf4j
+public final class CsvReportExporter implements Closeable {
+
+	private static final String HINT_FETCH_SIZE = "org.hibernate.fetchSize";
+	private static final String HINT_READ_ONLY = "org.hibernate.readOnly";
+	private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+	private final String reportName;
+	private final CSVPrinter printer;
+	private final int fetchSize;
+	private final int flushEveryRows;
+	private final StopWatch stopWatch = StopWatch.createStarted();
+	private long rowCount = 0;
+
+	private CsvReportExporter(
+		@NonNull String reportName,
+		@NonNull CSVPrinter printer,
+		int fetchSize,
+		int flushEveryRows
+	) {
+		this.reportName = reportName;
+		this.printer = printer;
+		this.fetchSize = Math.max(1, fetchSize);
+		this.flushEveryRows = Math.max(1, flushEveryRows);
+	}
+
+	@NonNull
+	public static CsvReportExporter start(
+		@NonNull String reportName,
+		@NonNull OutputStream output,
+		@NonNull String[] header,
+		int fetchSize,
+		int flushEveryRows
+	) throws IOException {
+		LOG.info("VACME-REPORTING: Starting export of {} CSV", reportName);
+		BufferedWriter writer =
+			new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8), WRITE_BUFFER_SIZE);
+		CSVPrinter printer = CSVFormat.DEFAULT.withHeader(header).print(writer);
+		return new CsvReportExporter(reportName, printer, fetchSize, flushEveryRows);
+	}
+
+	/**
+	 * Fuehrt die native Query aus und schreibt jede Resultatzeile als CSV-Record
+	 */
+	public <T> void exportQuery(
+		@NonNull Query nativeQuery,
+		@NonNull Function<T, Object[]> toRecord
+	) throws IOException {
+		nativeQuery.setHint(HINT_FETCH_SIZE, fetchSize);
+		nativeQuery.setHint(HINT_READ_ONLY, true);
+		@SuppressWarnings("unchecked")
+		Stream<T> rows = nativeQuery.getResultStream();
+		try (rows) {
+			Iterator<T> iterator = rows.iterator();
+			while (iterator.hasNext()) {
+				printRecord(toRecord.apply(iterator.next()));
+			}
+		}
+	}
+
+	private void printRecord(@NonNull Object[] record) throws IOException {
+		printer.printRecord(record);
+		rowCount++;
+		if (rowCount % flushEveryRows == 0) {
+			printer.flush();
+		}
+	}
+
+	public long getRowCount() {
+		return rowCount;
+	}
+
+	@Override
+	public void close() throws IOException {
+		printer.flush();
+		printer.close();
+		stopWatch.stop();
+		long millis = Math.max(1, stopWatch.getTime(TimeUnit.MILLISECONDS));
+		LOG.info("VACME-REPORTING: ... Export of {} CSV beendet: {} Zeilen in {}ms ({} Zeilen/s)",
+			reportName, rowCount, millis, rowCount * 1000 / millis);
+	}
+
+	/**
+	 * @return query aus Filesystem lesen
+	 */
+	@NonNull
+	public static String loadQuery(@NonNull Class<?> resourceBase, @NonNull String queryFilename) {
+		InputStream inputStream = resourceBase.getResourceAsStream(queryFilename);
+		Objects.requireNonNull(inputStream);
+
+		try (BufferedReader br = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8))) {
+			var sb = new StringBuilder();
+			String line;
+			while ((line = br.readLine()) != null) {
+				sb.append(line);
+				sb.append(System.lineSeparator());
+			}
+			return sb.toString();
+		} catch (IOException e) {
+			throw AppValidationMessage.ILLEGAL_STATE.create("Could not load sql query for statistics from file "
+				+ queryFilename);
+		}
+	}
+}
@@ -17,16 +17,7 @@
 
 package ch.dvbern.oss.vacme.reports.reportingImpfungen;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
-import java.io.Writer;
-import java.nio.charset.StandardCharsets;
-import java.util.Objects;
-import java.util.stream.Stream;
 
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
@@ -37,12 +28,12 @@ import javax.ws.rs.core.StreamingOutput;
 
 import ch.dvbern.oss.vacme.entities.statistik.StatistikReportingImpfungenDTO;
 import ch.dvbern.oss.vacme.reports.AbstractReportServiceBean;
+import ch.dvbern.oss.vacme.reports.CsvReportExporter;
+import ch.dvbern.oss.vacme.service.VacmeSettingsService;
 import ch.dvbern.oss.vacme.shared.errors.AppValidationMessage;
 import ch.dvbern.oss.vacme.shared.util.Constants;
 import ch.dvbern.oss.vacme.smartdb.Db;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVPrinter;
 import org.checkerframework.checker.nullness.qual.NonNull;
 
 @Transactional(TxType.SUPPORTS)
@@ -55,30 +46,12 @@ public class ReportingImpfungenReportServiceBean extends AbstractReportServiceBe
 	private final String impfungenNQuery = "reportingImpfungenNQuery.sql";
 
 	private final Db db;
+	private final VacmeSettingsService vacmeSettingsService;
 
 	@Inject
-	public ReportingImpfungenReportServiceBean(@NonNull Db db) {
+	public ReportingImpfungenReportServiceBean(@NonNull Db db, @NonNull VacmeSettingsService vacmeSettingsService) {
 		this.db = db;
-	}
-
-	/**
-	 * @return query aus Filesystem lesen
-	 */
-	private String loadStatisticsQuery(String queryFilename) {
-		InputStream inputStream = ReportingImpfungenReportServiceBean.class.getResourceAsStream(queryFilename);
-		Objects.requireNonNull(inputStream);
-
-		try (BufferedReader br = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8))) {
-			var sb = new StringBuilder();
-			String line;
-			while ((line = br.readLine()) != null) {
-				sb.append(line);
-				sb.append(System.lineSeparator());
-			}
-			return sb.toString();
-		} catch (IOException e) {
-			throw AppValidationMessage.ILLEGAL_STATE.create("Could not load sql query for statistics from file " + queryFilename);
-		}
+		this.vacmeSettingsService = vacmeSettingsService;
 	}
 
 	/**
@@ -87,41 +60,17 @@ public class ReportingImpfungenReportServiceBean extends AbstractReportServiceBe
 	@Transactional(TxType.SUPPORTS)
 	public StreamingOutput generateStatisticsExport() {
 		return output -> {
-			LOG.info("Starting export of Statistics Impfungen CSV");
-			try (
-				Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
-				CSVPrinter printer = CSVFormat.DEFAULT.withHeader(StatistikReportingImpfungenDTO.CSV_HEADER).print(writer);
+			try (CsvReportExporter exporter = CsvReportExporter.start(
+				"Statistics Impfungen",
+				output,
+				StatistikReportingImpfungenDTO.CSV_HEADER,
+				vacmeSettingsService.getReportsCsvFetchSize(),
+				vacmeSettingsService.getReportsCsvFlushRows())
 			) {
-				// to improve: it might be more memory efficent to read the query results orderd and paged instead of all at once
-				// however then we would also need to write out sequentially probably)
-				runStatisticsQueryAsStream(impfungen1Query).forEach(statistikDTO -> {
-					try {
-						printer.printRecord((Object[]) statistikDTO.getFieldList());
-						printer.flush();
-					} catch (IOException e) {
-						LOG.error("Could not create Statistics Report Impfungen ", e);
-						throw AppValidationMessage.ILLEGAL_STATE.create("Could not generate report", e);
-					}
-				});
-				runStatisticsQueryAsStream(impfungen2Query).forEach(statistikDTO -> {
-					try {
-						printer.printRecord((Object[]) statistikDTO.getFieldList());
-						printer.flush();
-					} catch (IOException e) {
-						LOG.error("Could not create Statistics Report Impfungen ", e);
-						throw AppValidationMessage.ILLEGAL_STATE.create("Could not generate report", e);
-					}
-				});
-				runStatisticsQueryAsStream(impfungenNQuery).forEach(statistikDTO -> {
-					try {
-						printer.printRecord((Object[]) statistikDTO.getFieldList());
-						printer.flush();
-					} catch (IOException e) {
-						LOG.error("Could not create Statistics Report Impfungen ", e);
-						throw AppValidationMessage.ILLEGAL_STATE.create("Could not generate Impfungen report", e);
-					}
-				});
-				LOG.info("... Reporting Impfungen CSV beendet");
+				// Die drei Queries werden nacheinander ueber einen Cursor gelesen und direkt geschrieben
+				exportStatisticsQuery(exporter, impfungen1Query);
+				exportStatisticsQuery(exporter, impfungen2Query);
+				exportStatisticsQuery(exporter, impfungenNQuery);
 			} catch (IOException e) {
 				LOG.error("Could not create Statistics Report ", e);
 				throw AppValidationMessage.ILLEGAL_STATE.create("Could not generate Impfungen report", e);
@@ -129,8 +78,13 @@ public class ReportingImpfungenReportServiceBean extends AbstractReportServiceBe
 		};
 	}
 
-	private Stream<StatistikReportingImpfungenDTO> runStatisticsQueryAsStream(String queryFilename) {
-		Query nativeQuery = this.db.getEntityManager().createNativeQuery(loadStatisticsQuery(queryFilename), Constants.REPORTING_IMPFUNGEN_DTO_MAPPING);
-		return  nativeQuery.getResultStream();
+	private void exportStatisticsQuery(
+		@NonNull CsvReportExporter exporter,
+		@NonNull String queryFilename
+	) throws IOException {
+		Query nativeQuery = this.db.getEntityManager().createNativeQuery(
+			CsvReportExporter.loadQuery(ReportingImpfungenReportServiceBean.class, queryFilename),
+			Constants.REPORTING_IMPFUNGEN_DTO_MAPPING);
+		exporter.<StatistikReportingImpfungenDTO>exportQuery(nativeQuery, StatistikReportingImpfungenDTO::getFieldList);
 	}
 }
@@ -17,19 +17,10 @@
 
 package ch.dvbern.oss.vacme.reports.reportingKantonKantonsarzt;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
-import java.io.Writer;
-import java.nio.charset.StandardCharsets;
 import java.util.Collections;
 import java.util.HashSet;
-import java.util.Objects;
 import java.util.Set;
-import java.util.stream.Stream;
 
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
@@ -41,6 +32,7 @@ import javax.ws.rs.core.StreamingOutput;
 import ch.dvbern.oss.vacme.entities.impfen.Impfstoff;
 import ch.dvbern.oss.vacme.entities.statistik.StatistikReportingKantonsarztDTO;
 import ch.dvbern.oss.vacme.reports.AbstractReportServiceBean;
+import ch.dvbern.oss.vacme.reports.CsvReportExporter;
 import ch.dvbern.oss.vacme.service.ImpfstoffService;
 import ch.dvbern.oss.vacme.service.VacmeSettingsService;
 import ch.dvbern.oss.vacme.shared.errors.AppValidationMessage;
@@ -48,8 +40,6 @@ import ch.dvbern.oss.vacme.shared.util.Constants;
 import ch.dvbern.oss.vacme.smartdb.Db;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVPrinter;
 
 @Transactional(TxType.SUPPORTS)
 @ApplicationScoped
@@ -61,72 +51,36 @@ public class ReportingKantonsarztReportServiceBean extends AbstractReportService
 	private final VacmeSettingsService vacmeSettingsService;
 	private final ImpfstoffService impfstoffService;
 
-	/**
-	 * @return query aus Filesystem lesen
-	 */
-	private String loadStatisticsQuery() {
-		String statistikQueryFilename = "reportingKantonsarztQuery.sql";
-		InputStream inputStream =
-			ReportingKantonsarztReportServiceBean.class.getResourceAsStream(statistikQueryFilename);
-		Objects.requireNonNull(inputStream);
-
-		try (BufferedReader br = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8))) {
-			var sb = new StringBuilder();
-			String line;
-			while ((line = br.readLine()) != null) {
-				sb.append(line);
-				sb.append(System.lineSeparator());
-			}
-
-			return sb.toString();
-		} catch (IOException ignore) {
-			throw AppValidationMessage.ILLEGAL_STATE.create("Could not load sql query for statistics from file "
-				+ statistikQueryFilename);
-		}
-	}
-
 	/**
 	 * @return Statistik als CSV Download
 	 */
 	@Transactional(TxType.SUPPORTS)
 	public StreamingOutput generateStatisticsExport() {
 		return output -> {
-			LOG.info("Starting export of Statistics Kantonsarzt CSV");
 			final boolean mapImpfstoffNamesFromDB =
 				vacmeSettingsService.isKantonsreportMapImpfstoffNamesFromDB();
 			Set<Impfstoff> impfstoffe =
 				mapImpfstoffNamesFromDB ? new HashSet<>(impfstoffService.findAll()) : Collections.emptySet();
-			try (
-				Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
-				CSVPrinter printer = CSVFormat.DEFAULT.withHeader(StatistikReportingKantonsarztDTO.CSV_HEADER)
-					.print(writer);
+			try (CsvReportExporter exporter = CsvReportExporter.start(
+				"Statistics Kantonsarzt",
+				output,
+				StatistikReportingKantonsarztDTO.CSV_HEADER,
+				vacmeSettingsService.getReportsCsvFetchSize(),
+				vacmeSettingsService.getReportsCsvFlushRows())
 			) {
-				// to improve: it might be more memory efficent to read the query results orderd and paged instead of all at once
-				// however then we would also need to write out sequentially probably)
-				runStatisticsQueryAsStream().forEach(statistikDTO -> {
-					try {
-						if (mapImpfstoffNamesFromDB) {
-							printer.printRecord((Object[]) statistikDTO.getFieldList(impfstoffe));
-						} else {
-							printer.printRecord((Object[]) statistikDTO.getFieldList());
-						}
-						printer.flush();
-					} catch (Exception e) {
-						LOG.error("Could not create Statistics Report ", e);
-						throw AppValidationMessage.ILLEGAL_STATE.create("Could not generate report", e);
-					}
-				});
-				LOG.info("... Reporting Kantonsarzt CSV beendet");
+				Query nativeQuery = this.db.getEntityManager().createNativeQuery(
+					CsvReportExporter.loadQuery(
+						ReportingKantonsarztReportServiceBean.class,
+						"reportingKantonsarztQuery.sql"),
+					Constants.REPORTING_KANTONSARZT_DTO_MAPPING);
+				exporter.<StatistikReportingKantonsarztDTO>exportQuery(nativeQuery, statistikDTO ->
+					mapImpfstoffNamesFromDB
+						? statistikDTO.getFieldList(impfstoffe)
+						: statistikDTO.getFieldList());
 			} catch (IOException e) {
 				LOG.error("Could not create Statistics Report ", e);
 				throw AppValidationMessage.ILLEGAL_STATE.create("Could not generate report", e);
 			}
 		};
 	}
-
-	private Stream<StatistikReportingKantonsarztDTO> runStatisticsQueryAsStream() {
-		Query nativeQuery = this.db.getEntityManager()
-			.createNativeQuery(loadStatisticsQuery(), Constants.REPORTING_KANTONSARZT_DTO_MAPPING);
-		return nativeQuery.getResultStream();
-	}
 }
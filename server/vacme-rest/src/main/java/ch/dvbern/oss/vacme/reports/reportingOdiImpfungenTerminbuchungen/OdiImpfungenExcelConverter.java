@@ -152,17 +152,15 @@ public class OdiImpfungenExcelConverter implements ExcelConverter {
 		});
 	}
 
-	public void mergeImpfungenRows(
+	public void mergeImpfungenRow(
 		@NonNull RowFiller rowFiller,
-		@Nonnull List<? extends OdiImpfungenDataRow> odiImpfungen
+		@NonNull OdiImpfungenDataRow dataRow
 	) {
-		odiImpfungen.forEach(dataRow -> {
-			ExcelMergerDTO excelRowGroup = new ExcelMergerDTO();
+		ExcelMergerDTO excelRowGroup = new ExcelMergerDTO();
 
-			mergeImpfungRow(dataRow, excelRowGroup);
+		mergeImpfungRow(dataRow, excelRowGroup);
 
-			rowFiller.fillRow(excelRowGroup);
-		});
+		rowFiller.fillRow(excelRowGroup);
 	}
 
 	private void mergeImpfungRow(OdiImpfungenDataRow dataRow, ExcelMergerDTO excelRowGroup) {
@@ -17,7 +17,10 @@
 
 package ch.dvbern.oss.vacme.reports.reportingOdiImpfungenTerminbuchungen;
 
+import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Locale;
 import java.util.Set;
@@ -39,13 +42,14 @@ import ch.dvbern.oss.vacme.entities.base.AbstractUUIDEntity;
 import ch.dvbern.oss.vacme.entities.base.ID;
 import ch.dvbern.oss.vacme.entities.benutzer.Benutzer;
 import ch.dvbern.oss.vacme.entities.terminbuchung.OrtDerImpfung;
-import ch.dvbern.oss.vacme.jax.OdiImpfungenDataRow;
 import ch.dvbern.oss.vacme.repo.OrtDerImpfungRepo;
 import ch.dvbern.oss.vacme.reports.AbstractReportServiceBean;
 import ch.dvbern.oss.vacme.reports.ReportVorlage;
 import ch.dvbern.oss.vacme.service.BenutzerService;
+import ch.dvbern.oss.vacme.service.VacmeSettingsService;
 import ch.dvbern.oss.vacme.shared.errors.AppFailureException;
 import ch.dvbern.oss.vacme.shared.errors.AppValidationMessage;
+import io.quarkus.narayana.jta.runtime.TransactionConfiguration;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.Validate;
@@ -62,16 +66,36 @@ import static java.util.Objects.requireNonNull;
 @RequiredArgsConstructor(onConstructor_ = @Inject)
 public class ReportingOdiImpfungenReportServiceBean extends AbstractReportServiceBean {
 
+	private static final int STREAMING_REPORT_TIMEOUT_SECONDS = 60 * 60;
+
 	private final UserPrincipal userPrincipal;
 	private final OrtDerImpfungRepo ortDerImpfungRepo;
 	private final OdiImpfungenExcelConverter excelConverter;
 
 	private final BenutzerService benutzerService;
+	private final VacmeSettingsService vacmeSettingsService;
 
 	@Nonnull
-	@Transactional(TxType.SUPPORTS)
+	@Transactional(TxType.REQUIRED)
+	@TransactionConfiguration(timeout = STREAMING_REPORT_TIMEOUT_SECONDS)
 	public byte[] generateExcelReportOdiImpfungen(@Nonnull Locale locale, @NonNull ID<Benutzer> requestingBenutzerId) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		writeExcelReportOdiImpfungen(locale, requestingBenutzerId, out);
+		return out.toByteArray();
+	}
 
+	/**
+	 * Schreibt den Report direkt in den Stream. Die Zeilen werden seitenweise gelesen und ueber das SXSSF-Workbook
+	 * des RowFillers geschrieben, so dass weder die Daten noch das fertige Excel vollstaendig im Speicher liegen.
+	 * Zaehlung und Zeilen werden in derselben Transaktion gelesen, damit die Groesse des Sheets stimmt.
+	 */
+	@Transactional(TxType.REQUIRED)
+	@TransactionConfiguration(timeout = STREAMING_REPORT_TIMEOUT_SECONDS)
+	public void writeExcelReportOdiImpfungen(
+		@Nonnull Locale locale,
+		@NonNull ID<Benutzer> requestingBenutzerId,
+		@NonNull OutputStream out
+	) {
 		try {
 			Validate.notNull(requestingBenutzerId, "requestingBenutzer must be set for async report generation");
 			Set<OrtDerImpfung> allowedOdis = benutzerService.getOdisOfBenutzer(requestingBenutzerId);
@@ -83,6 +107,12 @@ public class ReportingOdiImpfungenReportServiceBean extends AbstractReportServic
 				.map(AbstractUUIDEntity::getId)
 				.collect(Collectors.toList());
 
+			final LocalDateTime stichzeit = LocalDateTime.now();
+			final long rowCount = ortDerImpfungRepo.countOdiImpfungenReport(allowedUUIDs, stichzeit);
+			if (rowCount == 0) {
+				throw AppValidationMessage.REPORT_EMPTY.create();
+			}
+
 			final ReportVorlage reportResource = ReportVorlage.VORLAGE_REPORT_ODI_IMPFUNGEN;
 
 			InputStream is = ReportingOdiImpfungenReportServiceBean.class.getResourceAsStream(reportResource.getTemplatePath());
@@ -91,29 +121,28 @@ public class ReportingOdiImpfungenReportServiceBean extends AbstractReportServic
 			Workbook workbook = ExcelMerger.createWorkbookFromTemplate(is);
 			Sheet sheet = workbook.getSheet(reportResource.getDataSheetName());
 
-			List<OdiImpfungenDataRow> reportData = ortDerImpfungRepo.getOdiImpfungenReport(allowedUUIDs);
-			if (reportData.isEmpty()) {
-				throw AppValidationMessage.REPORT_EMPTY.create();
-			}
-
 			final XSSFSheet xsslSheet =
 				(XSSFSheet) excelConverter.mergeHeaderFieldsStichtag(sheet, locale);
 
 			RowFiller rowFiller = RowFiller.initRowFiller(
 				xsslSheet,
 				MergeFieldProvider.toMergeFields(reportResource.getMergeFields()),
-				reportData.size());
-
-			excelConverter.mergeImpfungenRows(rowFiller, reportData);
+				Math.toIntExact(rowCount));
 
-			excelConverter.applyAutoSize(sheet);
+			try {
+				ortDerImpfungRepo.streamOdiImpfungenReport(
+					allowedUUIDs,
+					stichzeit,
+					vacmeSettingsService.getReportsPageSize(),
+					dataRow -> excelConverter.mergeImpfungenRow(rowFiller, dataRow));
 
-			final byte[] content = createWorkbook(rowFiller.getSheet().getWorkbook());
+				excelConverter.applyAutoSize(sheet);
 
-			// dispose of temporary files backing this workbook on disk
-			rowFiller.getSheet().getWorkbook().dispose();
-
-			return content;
+				writeWorkbook(rowFiller.getSheet().getWorkbook(), out);
+			} finally {
+				// dispose of temporary files backing this workbook on disk
+				rowFiller.getSheet().getWorkbook().dispose();
+			}
 
 		} catch (ExcelMergeException exception) {
 			LOG.error("VACME-REPORTING: Could not generate Excel 'OdiImpfungenReport'", exception);
@@ -17,13 +17,8 @@
 
 package ch.dvbern.oss.vacme.reports.reportingOdis;
 
-import java.io.BufferedWriter;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
-import java.io.Writer;
-import java.nio.charset.StandardCharsets;
-import java.util.stream.Stream;
 
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
@@ -33,12 +28,12 @@ import javax.transaction.Transactional.TxType;
 
 import ch.dvbern.oss.vacme.entities.statistik.StatistikReportingOdisDTO;
 import ch.dvbern.oss.vacme.reports.AbstractReportServiceBean;
+import ch.dvbern.oss.vacme.reports.CsvReportExporter;
+import ch.dvbern.oss.vacme.service.VacmeSettingsService;
 import ch.dvbern.oss.vacme.shared.errors.AppValidationMessage;
 import ch.dvbern.oss.vacme.shared.util.Constants;
 import ch.dvbern.oss.vacme.smartdb.Db;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVPrinter;
 import org.checkerframework.checker.nullness.qual.NonNull;
 
 @Transactional(TxType.SUPPORTS)
@@ -47,6 +42,7 @@ import org.checkerframework.checker.nullness.qual.NonNull;
 public class ReportingOdisReportServiceBean extends AbstractReportServiceBean {
 
 	private final Db db;
+	private final VacmeSettingsService vacmeSettingsService;
 
 	// Careful, there are potential duplicates in this list if multiple odis have multiple Krankheiten with
 	// kantonaleBerechtigung = KANTONALE_IMPFKAMPAGNE_MIT_BEARBEITUNG
@@ -70,8 +66,12 @@ public class ReportingOdisReportServiceBean extends AbstractReportServiceBean {
 		+ "where K.kantonaleBerechtigung = 'KANTONALE_IMPFKAMPAGNE_MIT_BEARBEITUNG';";
 
 	@Inject
-	public ReportingOdisReportServiceBean(@NonNull Db db) {
+	public ReportingOdisReportServiceBean(
+		@NonNull Db db,
+		@NonNull VacmeSettingsService vacmeSettingsService
+	) {
 		this.db = db;
+		this.vacmeSettingsService = vacmeSettingsService;
 	}
 
 	/**
@@ -80,30 +80,20 @@ public class ReportingOdisReportServiceBean extends AbstractReportServiceBean {
 	@Transactional(TxType.SUPPORTS)
 	public byte[] generateStatisticsExport() {
 		ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-		try (
-			Writer writer = new BufferedWriter(new OutputStreamWriter(byteArrayOutputStream, StandardCharsets.UTF_8));
-			CSVPrinter printer = CSVFormat.DEFAULT.withHeader(StatistikReportingOdisDTO.CSV_HEADER).print(writer)) {
-			// to improve: it might be more memory efficent to read the query results orderd and paged instead of all at once
-			// however then we would also need to write out sequentially probably)
-			runStatisticsQueryAsStream().forEach(statistikDTO -> {
-				try {
-					printer.printRecord((Object[]) statistikDTO.getFieldList());
-				} catch (IOException e) {
-					LOG.error("Could not create Statistics Report ", e);
-					throw AppValidationMessage.ILLEGAL_STATE.create("Could not generate report");
-				}
-			});
-			printer.flush();
-
+		try (CsvReportExporter exporter = CsvReportExporter.start(
+			"ODI",
+			byteArrayOutputStream,
+			StatistikReportingOdisDTO.CSV_HEADER,
+			vacmeSettingsService.getReportsCsvFetchSize(),
+			vacmeSettingsService.getReportsCsvFlushRows())
+		) {
+			Query nativeQuery =
+				this.db.getEntityManager().createNativeQuery(QUERY, Constants.STATISTIK_ODIS_DTO_MAPPING);
+			exporter.<StatistikReportingOdisDTO>exportQuery(nativeQuery, StatistikReportingOdisDTO::getFieldList);
 		} catch (IOException e) {
 			LOG.error("Could not create Statistics Report ", e);
 			throw AppValidationMessage.ILLEGAL_STATE.create("Could not generate report");
 		}
 		return byteArrayOutputStream.toByteArray();
 	}
-
-	private Stream<StatistikReportingOdisDTO> runStatisticsQueryAsStream() {
-		Query nativeQuery = this.db.getEntityManager().createNativeQuery(QUERY, Constants.STATISTIK_ODIS_DTO_MAPPING);
-		return  nativeQuery.getResultStream();
-	}
 }
@@ -17,12 +17,7 @@
 
 package ch.dvbern.oss.vacme.reports.reportingTerminslots;
 
-import java.io.BufferedWriter;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
-import java.io.Writer;
-import java.nio.charset.StandardCharsets;
-import java.util.stream.Stream;
 
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
@@ -33,12 +28,12 @@ import javax.ws.rs.core.StreamingOutput;
 
 import ch.dvbern.oss.vacme.entities.statistik.StatistikReportingTerminslotsDTO;
 import ch.dvbern.oss.vacme.reports.AbstractReportServiceBean;
+import ch.dvbern.oss.vacme.reports.CsvReportExporter;
+import ch.dvbern.oss.vacme.service.VacmeSettingsService;
 import ch.dvbern.oss.vacme.shared.errors.AppValidationMessage;
 import ch.dvbern.oss.vacme.shared.util.Constants;
 import ch.dvbern.oss.vacme.smartdb.Db;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVPrinter;
 import org.checkerframework.checker.nullness.qual.NonNull;
 
 
@@ -49,6 +44,7 @@ import org.checkerframework.checker.nullness.qual.NonNull;
 public class ReportingTerminslotsReportServiceBean extends AbstractReportServiceBean {
 
 	private final Db db;
+	private final VacmeSettingsService vacmeSettingsService;
 
 	// Careful, there are potential duplicates in this list if multiple odis have multiple Krankheiten with
 	// kantonaleBerechtigung = KANTONALE_IMPFKAMPAGNE_MIT_BEARBEITUNG
@@ -67,8 +63,12 @@ public class ReportingTerminslotsReportServiceBean extends AbstractReportService
 		+ "where K.kantonaleBerechtigung = 'KANTONALE_IMPFKAMPAGNE_MIT_BEARBEITUNG';";
 
 	@Inject
-	public ReportingTerminslotsReportServiceBean(@NonNull Db db) {
+	public ReportingTerminslotsReportServiceBean(
+		@NonNull Db db,
+		@NonNull VacmeSettingsService vacmeSettingsService
+	) {
 		this.db = db;
+		this.vacmeSettingsService = vacmeSettingsService;
 	}
 
 	/**
@@ -77,32 +77,22 @@ public class ReportingTerminslotsReportServiceBean extends AbstractReportService
 	@Transactional(TxType.SUPPORTS)
 	public StreamingOutput generateStatisticsExport() {
 		return output -> {
-			LOG.info("Starting export of Impfslot statistics CSV");
-			try (
-				Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
-				CSVPrinter printer = CSVFormat.DEFAULT.withHeader(StatistikReportingTerminslotsDTO.CSV_HEADER).print(writer);
+			try (CsvReportExporter exporter = CsvReportExporter.start(
+				"Impfslot statistics",
+				output,
+				StatistikReportingTerminslotsDTO.CSV_HEADER,
+				vacmeSettingsService.getReportsCsvFetchSize(),
+				vacmeSettingsService.getReportsCsvFlushRows())
 			) {
-				// to improve: it might be more memory efficent to read the query results orderd and paged instead of all at once
-				// however then we would also need to write out sequentially probably)
-				runStatisticsQueryAsStream().forEach(statistikDTO -> {
-					try {
-						printer.printRecord((Object[]) statistikDTO.getFieldList());
-						printer.flush();
-					} catch (IOException e) {
-						LOG.error("Could not create Statistics Report ", e);
-						throw AppValidationMessage.ILLEGAL_STATE.create("Could not generate report");
-					}
-				});
-				LOG.info("... Reporting TerminslotCSV beendet");
+				Query nativeQuery = this.db.getEntityManager()
+					.createNativeQuery(QUERY, Constants.STATISTIK_TERMINSLOTS_DTO_MAPPING);
+				exporter.<StatistikReportingTerminslotsDTO>exportQuery(
+					nativeQuery,
+					StatistikReportingTerminslotsDTO::getFieldList);
 			} catch (IOException e) {
 				LOG.error("Could not create Statistics Report ", e);
 				throw AppValidationMessage.ILLEGAL_STATE.create("Could not generate report");
 			}
 		};
 	}
-
-	private Stream<StatistikReportingTerminslotsDTO> runStatisticsQueryAsStream() {
-		Query nativeQuery = this.db.getEntityManager().createNativeQuery(QUERY, Constants.STATISTIK_TERMINSLOTS_DTO_MAPPING);
-		return  nativeQuery.getResultStream();
-	}
 }
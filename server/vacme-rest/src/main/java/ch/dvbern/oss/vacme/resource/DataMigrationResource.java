@@ -17,10 +17,10 @@
 
 package ch.dvbern.oss.vacme.resource;
 
-import java.time.Duration;
-import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
@@ -44,10 +44,12 @@ import javax.ws.rs.core.Response;
 import ch.dvbern.oss.vacme.entities.UserPrincipal;
 import ch.dvbern.oss.vacme.entities.benutzer.Benutzer;
 import ch.dvbern.oss.vacme.entities.types.KrankheitIdentifier;
+import ch.dvbern.oss.vacme.jax.migration.DataMigrationBulkRequestJax;
 import ch.dvbern.oss.vacme.jax.migration.DataMigrationPatchGLNJax;
 import ch.dvbern.oss.vacme.jax.migration.DataMigrationPatchJax;
 import ch.dvbern.oss.vacme.jax.migration.DataMigrationRequestJax;
 import ch.dvbern.oss.vacme.jax.migration.DataMigrationResponseJax;
+import ch.dvbern.oss.vacme.jax.migration.RegistrierungMigrationJax;
 import ch.dvbern.oss.vacme.jax.migration.RegistrierungResultatJax;
 import ch.dvbern.oss.vacme.jax.migration.StatusMigrationJax;
 import ch.dvbern.oss.vacme.service.DataMigrationService;
@@ -56,12 +58,15 @@ import ch.dvbern.oss.vacme.shared.errors.AppException;
 import ch.dvbern.oss.vacme.shared.errors.AppValidationException;
 import ch.dvbern.oss.vacme.shared.errors.mappers.AppValidationExceptionMapper;
 import ch.dvbern.oss.vacme.shared.util.OpenApiConst;
+import com.google.common.collect.Lists;
 import io.quarkus.runtime.util.ExceptionUtil;
 import io.quarkus.security.identity.CurrentIdentityAssociation;
 import io.quarkus.security.identity.SecurityIdentity;
 import io.quarkus.security.runtime.QuarkusSecurityIdentity;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.checkerframework.checker.nullness.qual.NonNull;
 import org.eclipse.microprofile.openapi.annotations.Operation;
 import org.eclipse.microprofile.openapi.annotations.tags.Tag;
 import org.eclipse.microprofile.openapi.annotations.tags.Tags;
@@ -126,51 +131,125 @@ public class DataMigrationResource {
 			"VACME-MIGRATION: Service 'migrateData' was called by {} with roles {} ",
 			securityIdentity.getPrincipal().getName(),
 			securityIdentity.getRoles().stream().collect(Collectors.joining()));
+		final String caller = getCaller();
 		runAsSystemAdmin();
 
-		if (exceededRateLimit()) {
-			LOG.error(
-				"VACME-MIGRATION rate limit - More than one request received in interval of {} seconds",
-				vacmeSettingsService.getMigrationInterval());
-			return Response.status(Response.Status.TOO_MANY_REQUESTS)
-				.header("X-RateLimit-Limit", calculateHourlyRate())
-				.build();
+		final Optional<Response> rateLimitResponse = checkRateLimit(caller, dataMigrationRequestJax.getRegistrierungen().size());
+		if (rateLimitResponse.isPresent()) {
+			return rateLimitResponse.get();
 		}
-		dataMigrationService.updateRequestTimestamp();
 
 		DataMigrationResponseJax dataMigrationResponseJax = new DataMigrationResponseJax();
 		List<RegistrierungResultatJax> resultatJaxList = new ArrayList<>();
-		dataMigrationRequestJax.getRegistrierungen().forEach(request -> {
-			RegistrierungResultatJax resultat = new RegistrierungResultatJax();
-			resultat.setExternalId(request.getExternalId());
+		dataMigrationRequestJax.getRegistrierungen().forEach(request -> resultatJaxList.add(migrateEinzeln(request)));
+		dataMigrationResponseJax.setRegistrierungStatusList(resultatJaxList);
+		return Response.ok(dataMigrationResponseJax).build();
+	}
+
+	/**
+	 * Migriert grosse Mengen von Registrierungen: Die Angaben werden vorab geprueft, danach werden jeweils
+	 * migration.bulk.chunk.size Registrierungen in einer gemeinsamen Transaktion migriert. Schlaegt ein Chunk fehl,
+	 * werden seine Registrierungen einzeln migriert, damit nur die fehlerhaften mit ERROR zurueckkommen.
+	 */
+	@POST
+	@Consumes(MediaType.APPLICATION_JSON)
+	@Produces(MediaType.APPLICATION_JSON)
+	@RolesAllowed(MIG_MIGRATION_ADM)
+	@Path(VACME_WEB + DATA_MIGRATION_PATH + "/bulk")
+	@Operation(hidden = true, description = "Hidden because it is only used for the onboarding of legacy data")
+	public Response migrateDataBulk(@Nonnull @Valid DataMigrationBulkRequestJax dataMigrationBulkRequestJax) {
+		if (!vacmeSettingsService.isMigrationBulkEnabled()) {
+			return Response.status(Response.Status.NOT_FOUND).build();
+		}
+		final List<RegistrierungMigrationJax> requests = dataMigrationBulkRequestJax.getRegistrierungen();
+		LOG.info(
+			"VACME-MIGRATION: Service 'migrateDataBulk' was called by {} with {} Registrierungen",
+			securityIdentity.getPrincipal().getName(),
+			requests.size());
+		final String caller = getCaller();
+		runAsSystemAdmin();
+
+		final Optional<Response> rateLimitResponse = checkRateLimit(caller, requests.size());
+		if (rateLimitResponse.isPresent()) {
+			return rateLimitResponse.get();
+		}
+
+		final RegistrierungResultatJax[] resultate = new RegistrierungResultatJax[requests.size()];
+		final List<Integer> valideIndizes = new ArrayList<>();
+		for (int i = 0; i < requests.size(); i++) {
 			try {
-				String registationNum = dataMigrationService.migrateData(request);
-				resultat.setRegistrierungsnummer(registationNum);
-				resultat.setStatus(StatusMigrationJax.SUCCESS);
-				resultat.setStatusMeldung("Success");
-				LOG.info("VACME-MIGRATION success - External_ID: {} ", request.getExternalId());
-			} catch (AppException e) {
-				LOG.error(String.format("VACME-MIGRATION validation - External_ID: %s", request.getExternalId()), e);
-				resultat.setStatus(StatusMigrationJax.ERROR);
-				resultat.setStatusMeldung("Validation: " + e.getMessage());
-				if (e instanceof AppValidationException) {
-					resultat.setStatusMeldung("Validation: " + exceptionMapper.toMessage((AppValidationException) e));
-				} else {
-					resultat.setStatusMeldung("Validation: " + e.getMessage());
+				dataMigrationService.validateRequest(requests.get(i));
+				valideIndizes.add(i);
+			} catch (Exception e) {
+				resultate[i] = toErrorResultat(requests.get(i), e);
+			}
+		}
+
+		for (List<Integer> chunk : Lists.partition(valideIndizes, vacmeSettingsService.getMigrationBulkChunkSize())) {
+			final List<RegistrierungMigrationJax> chunkRequests = chunk.stream()
+				.map(requests::get)
+				.collect(Collectors.toList());
+			try {
+				final Map<String, String> registrierungsnummern = dataMigrationService.migrateDataChunk(chunkRequests);
+				for (Integer index : chunk) {
+					final RegistrierungMigrationJax request = requests.get(index);
+					resultate[index] = toSuccessResultat(request, registrierungsnummern.get(request.getExternalId()));
 				}
+				LOG.info("VACME-MIGRATION (bulk) success - {} Registrierungen", chunk.size());
 			} catch (Exception e) {
-				LOG.error(String.format("VACME-MIGRATION failure - External_ID: %s", request.getExternalId()), e);
-				resultat.setStatus(StatusMigrationJax.ERROR);
-				resultat.setStatusMeldung("Failure: " + (ExceptionUtil.getRootCause(e) != null ?
-					ExceptionUtil.getRootCause(e).getMessage() :
-					e.getMessage()));
+				LOG.warn("VACME-MIGRATION (bulk) - Chunk mit {} Registrierungen fehlgeschlagen, migriere einzeln: {}",
+					chunk.size(), e.getMessage());
+				chunk.forEach(index -> resultate[index] = migrateEinzeln(requests.get(index)));
 			}
-			resultatJaxList.add(resultat);
-		});
-		dataMigrationResponseJax.setRegistrierungStatusList(resultatJaxList);
+		}
+
+		DataMigrationResponseJax dataMigrationResponseJax = new DataMigrationResponseJax();
+		dataMigrationResponseJax.setRegistrierungStatusList(Arrays.asList(resultate));
 		return Response.ok(dataMigrationResponseJax).build();
 	}
 
+	@NonNull
+	private RegistrierungResultatJax migrateEinzeln(@NonNull RegistrierungMigrationJax request) {
+		try {
+			String registationNum = dataMigrationService.migrateData(request);
+			LOG.info("VACME-MIGRATION success - External_ID: {} ", request.getExternalId());
+			return toSuccessResultat(request, registationNum);
+		} catch (Exception e) {
+			return toErrorResultat(request, e);
+		}
+	}
+
+	@NonNull
+	private RegistrierungResultatJax toSuccessResultat(@NonNull RegistrierungMigrationJax request, String registationNum) {
+		RegistrierungResultatJax resultat = new RegistrierungResultatJax();
+		resultat.setExternalId(request.getExternalId());
+		resultat.setRegistrierungsnummer(registationNum);
+		resultat.setStatus(StatusMigrationJax.SUCCESS);
+		resultat.setStatusMeldung("Success");
+		return resultat;
+	}
+
+	@NonNull
+	private RegistrierungResultatJax toErrorResultat(@NonNull RegistrierungMigrationJax request, @NonNull Exception e) {
+		RegistrierungResultatJax resultat = new RegistrierungResultatJax();
+		resultat.setExternalId(request.getExternalId());
+		resultat.setStatus(StatusMigrationJax.ERROR);
+		if (e instanceof AppException) {
+			LOG.error(String.format("VACME-MIGRATION validation - External_ID: %s", request.getExternalId()), e);
+			if (e instanceof AppValidationException) {
+				resultat.setStatusMeldung("Validation: " + exceptionMapper.toMessage((AppValidationException) e));
+			} else {
+				resultat.setStatusMeldung("Validation: " + e.getMessage());
+			}
+		} else {
+			LOG.error(String.format("VACME-MIGRATION failure - External_ID: %s", request.getExternalId()), e);
+			resultat.setStatusMeldung("Failure: " + (ExceptionUtil.getRootCause(e) != null ?
+				ExceptionUtil.getRootCause(e).getMessage() :
+				e.getMessage()));
+		}
+		return resultat;
+	}
+
 	@PATCH
 	@Consumes(MediaType.APPLICATION_JSON)
 	@Produces(MediaType.APPLICATION_JSON)
@@ -185,17 +264,13 @@ public class DataMigrationResource {
 			"VACME-MIGRATION: Service 'patchPLZ' was called by {} with roles {} ",
 			securityIdentity.getPrincipal().getName(),
 			securityIdentity.getRoles().stream().collect(Collectors.joining()));
+		final String caller = getCaller();
 		runAsSystemAdmin();
 
-		if (exceededRateLimit()) {
-			LOG.error(
-				"VACME-MIGRATION rate limit - More than one request received in interval of {} seconds",
-				vacmeSettingsService.getMigrationInterval());
-			return Response.status(Response.Status.TOO_MANY_REQUESTS)
-				.header("X-RateLimit-Limit", calculateHourlyRate())
-				.build();
+		final Optional<Response> rateLimitResponse = checkRateLimit(caller, dataMigrationPatchJax.getRegistrierungen().size());
+		if (rateLimitResponse.isPresent()) {
+			return rateLimitResponse.get();
 		}
-		dataMigrationService.updateRequestTimestamp();
 
 		DataMigrationResponseJax dataMigrationResponseJax = new DataMigrationResponseJax();
 		List<RegistrierungResultatJax> resultatJaxList = new ArrayList<>();
@@ -242,17 +317,13 @@ public class DataMigrationResource {
 			"VACME-MIGRATION: Service 'patchGLN' was called by {} with roles {} ",
 			securityIdentity.getPrincipal().getName(),
 			securityIdentity.getRoles().stream().collect(Collectors.joining()));
+		final String caller = getCaller();
 		runAsSystemAdmin();
 
-		if (exceededRateLimit()) {
-			LOG.error(
-				"VACME-MIGRATION rate limit - More than one request received in interval of {} seconds",
-				vacmeSettingsService.getMigrationInterval());
-			return Response.status(Response.Status.TOO_MANY_REQUESTS)
-				.header("X-RateLimit-Limit", calculateHourlyRate())
-				.build();
+		final Optional<Response> rateLimitResponse = checkRateLimit(caller, dataMigrationPatchGlnJax.getRegistrierungen().size());
+		if (rateLimitResponse.isPresent()) {
+			return rateLimitResponse.get();
 		}
-		dataMigrationService.updateRequestTimestamp();
 
 		DataMigrationResponseJax dataMigrationResponseJax = new DataMigrationResponseJax();
 		List<RegistrierungResultatJax> resultatJaxList = new ArrayList<>();
@@ -293,17 +364,41 @@ public class DataMigrationResource {
 		association.setIdentity(internalAdmin);
 	}
 
+	/**
+	 * Der Aufrufer muss vor runAsSystemAdmin() gelesen werden
+	 */
+	@NonNull
+	private String getCaller() {
+		final String name = securityIdentity.getPrincipal().getName();
+		return StringUtils.isNotBlank(name) ? name : "anonymous";
+	}
+
+	/**
+	 * @return Anzahl Registrierungen pro Stunde, die ein Aufrufer migrieren darf
+	 */
 	private int calculateHourlyRate() {
-		return 3600 / vacmeSettingsService.getMigrationInterval();
+		return 3600 * vacmeSettingsService.getMigrationRateLimitCapacity()
+			/ Math.max(1, vacmeSettingsService.getMigrationInterval());
 	}
 
-	private boolean exceededRateLimit() {
+	@NonNull
+	private Optional<Response> checkRateLimit(@NonNull String caller, int anzahlRegistrierungen) {
 		if (!vacmeSettingsService.isMigrationEnabled()) {
-			return false;
+			return Optional.empty();
+		}
+		final long wartezeitSekunden = dataMigrationService.tryConsumeRateLimit(caller, anzahlRegistrierungen);
+		if (wartezeitSekunden == 0) {
+			return Optional.empty();
 		}
-		Optional<LocalDateTime> lastRequestTimestamp = dataMigrationService.getLastRequestTimestamp();
-		return lastRequestTimestamp.filter(localDateTime -> Duration.between(localDateTime, LocalDateTime.now())
-			.getSeconds() < vacmeSettingsService.getMigrationInterval()).isPresent();
+		LOG.error(
+			"VACME-MIGRATION rate limit - {} exceeded {} Registrierungen in an interval of {} seconds",
+			caller,
+			vacmeSettingsService.getMigrationRateLimitCapacity(),
+			vacmeSettingsService.getMigrationInterval());
+		return Optional.of(Response.status(Response.Status.TOO_MANY_REQUESTS)
+			.header("X-RateLimit-Limit", calculateHourlyRate())
+			.header("Retry-After", wartezeitSekunden)
+			.build());
 	}
 
 }
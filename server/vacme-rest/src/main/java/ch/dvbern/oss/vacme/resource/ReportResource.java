@@ -35,6 +35,7 @@ import javax.transaction.Transactional.TxType;
 import javax.validation.constraints.NotNull;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
@@ -61,13 +62,12 @@ import ch.dvbern.oss.vacme.entities.documentqueue.entities.ReportingOdiBuchungen
 import ch.dvbern.oss.vacme.entities.documentqueue.entities.ReportingOdisCSVDocQueue;
 import ch.dvbern.oss.vacme.entities.documentqueue.entities.ReportingOdisImpfungenCSVDocQueue;
 import ch.dvbern.oss.vacme.entities.documentqueue.entities.TerminslotsCSVDocQueue;
-import ch.dvbern.oss.vacme.entities.embeddables.FileBytes;
 import ch.dvbern.oss.vacme.entities.registration.Sprache;
 import ch.dvbern.oss.vacme.entities.types.BenutzerRolleName;
-import ch.dvbern.oss.vacme.entities.util.BlobUtil;
 import ch.dvbern.oss.vacme.jax.stats.DocumentQueueJax;
 import ch.dvbern.oss.vacme.rest.auth.Authorizer;
 import ch.dvbern.oss.vacme.service.documentqueue.DocumentQueueService;
+import ch.dvbern.oss.vacme.shared.blobstore.BlobStore;
 import ch.dvbern.oss.vacme.shared.errors.AppFailureException;
 import ch.dvbern.oss.vacme.shared.util.OpenApiConst;
 import ch.dvbern.oss.vacme.util.RestUtil;
@@ -77,6 +77,7 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.Validate;
 import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
 import org.eclipse.microprofile.openapi.annotations.Operation;
 import org.eclipse.microprofile.openapi.annotations.enums.SchemaType;
 import org.eclipse.microprofile.openapi.annotations.media.Schema;
@@ -102,6 +103,7 @@ public class ReportResource {
 
 	private final UserPrincipal userPrincipal;
 	private final Authorizer authorizer;
+	private final BlobStore blobStore;
 
 	@POST
 	@Consumes(MediaType.WILDCARD)
@@ -387,21 +389,20 @@ public class ReportResource {
 	@RolesAllowed({ OI_IMPFVERANTWORTUNG, KT_MEDIZINISCHER_REPORTER, OI_LOGISTIK_REPORTER })
 	@Schema(type = SchemaType.STRING, format = "binary")
 	public Response downloadDocumentQueueItem(
-		@NonNull @NotNull @PathParam("id") UUID docResultId
+		@NonNull @NotNull @PathParam("id") UUID docResultId,
+		@Nullable @HeaderParam(RestUtil.HEADER_RANGE) String range
 	) {
 		Optional<DocumentQueue> documentQueueByResultId = documentQueueService.getDocumentQueueByResultId(docResultId);
 		authorizer.checkReadAuthorization(documentQueueByResultId
 			.orElseThrow(() -> AppFailureException.entityNotFound(DocumentQueueResult.class, docResultId.toString())));
 
 		DocumentQueueResult documentQueueResultItem = documentQueueService.getDocumentQueueResultItem(docResultId);
-		final FileBytes downloadFile = FileBytes.of(
-			documentQueueResultItem.getFileBlob().getFileName(),
-			documentQueueResultItem.getFileBlob().getMimeType(),
-			BlobUtil.getBlobBytes(documentQueueResultItem.getFileBlob().getData()),
-			LocalDateTime.now()
-		);
-
-		return RestUtil.buildFileResponse(Disposition.ATTACHMENT, downloadFile);
+		return RestUtil.buildBlobResponse(
+			Disposition.ATTACHMENT,
+			documentQueueResultItem.getFileBlob(),
+			blobStore,
+			range,
+			LocalDateTime.now());
 	}
 
 	@GET
@@ -31,6 +31,7 @@ import javax.transaction.Transactional;
 import javax.validation.constraints.NotNull;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
@@ -40,7 +41,6 @@ import javax.ws.rs.core.Response;
 
 import ch.dvbern.oss.vacme.entities.dossier.ImpfdossierFile;
 import ch.dvbern.oss.vacme.entities.dossier.ImpfdossierFileTyp;
-import ch.dvbern.oss.vacme.entities.embeddables.FileBytes;
 import ch.dvbern.oss.vacme.entities.impfen.Impfdossier;
 import ch.dvbern.oss.vacme.entities.registration.Registrierung;
 import ch.dvbern.oss.vacme.entities.types.KrankheitIdentifier;
@@ -50,6 +50,7 @@ import ch.dvbern.oss.vacme.service.ImpfdossierFileService;
 import ch.dvbern.oss.vacme.service.ImpfdossierService;
 import ch.dvbern.oss.vacme.service.RegistrierungService;
 import ch.dvbern.oss.vacme.service.VacmeSettingsService;
+import ch.dvbern.oss.vacme.shared.blobstore.BlobStore;
 import ch.dvbern.oss.vacme.shared.errors.AppValidationException;
 import ch.dvbern.oss.vacme.shared.errors.AppValidationMessage;
 import ch.dvbern.oss.vacme.shared.util.MimeType;
@@ -60,6 +61,7 @@ import com.github.HonoluluHenk.httpcontentdisposition.Disposition;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
 import org.eclipse.microprofile.openapi.annotations.enums.SchemaType;
 import org.eclipse.microprofile.openapi.annotations.media.Content;
 import org.eclipse.microprofile.openapi.annotations.media.Schema;
@@ -89,6 +91,7 @@ public class BlobResource {
 	private final Authorizer authorizer;
 	private final ImpfdossierFileService impfdossierFileService;
 	private final VacmeSettingsService vacmeSettingsService;
+	private final BlobStore blobStore;
 
 	@SuppressWarnings("ThrowInsideCatchBlockWhichIgnoresCaughtException")
 	@POST
@@ -140,14 +143,15 @@ public class BlobResource {
 	@RolesAllowed({ OI_MEDIZINISCHER_REPORTER, OI_DOKUMENTATION })
 	public Response downloadFile(
 		@NonNull @NotNull @PathParam("registrierungsnummer") String registrierungsnummer,
-		@NonNull @NotNull @PathParam("fileId") UUID fileId
+		@NonNull @NotNull @PathParam("fileId") UUID fileId,
+		@Nullable @HeaderParam(RestUtil.HEADER_RANGE) String range
 	) {
 		Registrierung registrierung = registrierungService.findRegistrierung(registrierungsnummer);
 
 		authorizer.checkReadAuthorization(registrierung);
 
 		ImpfdossierFile file = impfdossierFileService.getDokument(registrierung, fileId);
-		return createDownloadResponse(file);
+		return RestUtil.buildBlobResponse(Disposition.INLINE, file.getFileBlob(), blobStore, range, LocalDateTime.now());
 	}
 
 	private boolean checkFiletypeAllowed(ImpfdossierFile fileInfo) {
@@ -158,16 +162,4 @@ public class BlobResource {
 	private Collection<String> readMimeTypeWhitelist() {
 		return vacmeSettingsService.getWhitelistedMimeTypesForUpload();
 	}
-
-	@NonNull
-	private Response createDownloadResponse(ImpfdossierFile file) {
-
-		final FileBytes downloadFile = FileBytes.of(
-			file.getFileBlob().getFileName(),
-			file.getFileBlob().getMimeType(),
-			file.getContent(),
-			LocalDateTime.now()
-		);
-		return RestUtil.buildFileResponse(Disposition.INLINE, downloadFile);
-	}
 }
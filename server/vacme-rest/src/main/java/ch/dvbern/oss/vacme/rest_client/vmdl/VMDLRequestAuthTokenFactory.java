@@ -43,8 +43,9 @@ public abstract class VMDLRequestAuthTokenFactory implements ClientHeadersFactor
 	VacmeSettingsService vacmeSettingsService;
 
 
+	// synchronized, da die VMDL-Chunks parallel hochgeladen werden koennen und das Token nur einmal geholt werden soll
 	@Override
-	public MultivaluedMap<String, String> update(MultivaluedMap<String, String> incomingHeaders, MultivaluedMap<String, String> clientOutgoingHeaders) {
+	public synchronized MultivaluedMap<String, String> update(MultivaluedMap<String, String> incomingHeaders, MultivaluedMap<String, String> clientOutgoingHeaders) {
 		String grantType = "password";
 		String scope = String.format("api://%s/user_impersonation", getClientID());
 		if (expiration == null || !expiration.isAfter(LocalDateTime.now())) {
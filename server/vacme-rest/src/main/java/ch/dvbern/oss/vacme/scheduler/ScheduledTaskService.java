@@ -129,6 +129,31 @@ public class ScheduledTaskService {
 		systemAdminRunnerService.runOnboardingLetterGenerationTask();
 	}
 
+	@Scheduled(cron = "{vacme.cron.postversand.export}")
+	void schedulePostversandExport() {
+		systemAdminRunnerService.runPostversandExportTask();
+	}
+
+	@Scheduled(cron = "{vacme.cron.stat.tagesstatistik.reconcile}")
+	void scheduleTagesstatistikReconcile() {
+		systemAdminRunnerService.runTagesstatistikReconcileTask();
+	}
+
+	@Scheduled(cron = "{vacme.cron.personaliensuche.index}")
+	void schedulePersonaliensucheIndexUpdate() {
+		systemAdminRunnerService.runPersonaliensucheIndexUpdateTask();
+	}
+
+	@Scheduled(cron = "{vacme.cron.blobstore.migration}")
+	void scheduleBlobStoreMigration() {
+		systemAdminRunnerService.runBlobStoreMigrationTask();
+	}
+
+	@Scheduled(cron = "{vacme.cron.blobstore.gc}")
+	void scheduleBlobStoreGarbageCollection() {
+		systemAdminRunnerService.runBlobStoreGarbageCollectionTask();
+	}
+
 	@Scheduled(cron = "{vacme.cron.clear.covidcert.tokens}")
 	void scheduleCovidCertClearTokensTask() {
 		systemAdminRunnerService.runCovidCertClearTokensTask();
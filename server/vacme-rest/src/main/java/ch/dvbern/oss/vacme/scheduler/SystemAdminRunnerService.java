@@ -17,7 +17,13 @@
 
 package ch.dvbern.oss.vacme.scheduler;
 
-import java.io.ByteArrayOutputStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.temporal.TemporalAdjusters;
@@ -35,7 +41,6 @@ import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
 import javax.transaction.Transactional;
 import javax.transaction.Transactional.TxType;
-import javax.ws.rs.core.StreamingOutput;
 
 import ch.dvbern.oss.vacme.entities.base.ApplicationProperty;
 import ch.dvbern.oss.vacme.entities.base.ApplicationPropertyKey;
@@ -98,7 +103,10 @@ import ch.dvbern.oss.vacme.service.SystemAdministrationService;
 import ch.dvbern.oss.vacme.service.VacmeSettingsService;
 import ch.dvbern.oss.vacme.service.ZertifikatRunnerService;
 import ch.dvbern.oss.vacme.service.benutzer.BenutzerMassenmutationRunnerService;
+import ch.dvbern.oss.vacme.service.blobstore.BlobStoreService;
 import ch.dvbern.oss.vacme.service.booster.BoosterRunnerService;
+import ch.dvbern.oss.vacme.service.cache.CacheInvalidationService;
+import ch.dvbern.oss.vacme.service.cache.VacmeCacheName;
 import ch.dvbern.oss.vacme.service.covidcertificate.CovidCertBatchType;
 import ch.dvbern.oss.vacme.service.d3api.ArchivierungService;
 import ch.dvbern.oss.vacme.service.documentqueue.DocumentQueueRunnerService;
@@ -106,6 +114,9 @@ import ch.dvbern.oss.vacme.service.impfinformationen.ImpfinformationenService;
 import ch.dvbern.oss.vacme.service.massenmutation.MassenverarbeitungRunnerService;
 import ch.dvbern.oss.vacme.service.onboarding.OnboardingBatchType;
 import ch.dvbern.oss.vacme.service.onboarding.OnboardingRunnerService;
+import ch.dvbern.oss.vacme.service.personaliensuche.RegistrierungSuchindexService;
+import ch.dvbern.oss.vacme.service.postversand.PostversandRunnerService;
+import ch.dvbern.oss.vacme.service.tagesstatistik.OdiTagesStatistikService;
 import ch.dvbern.oss.vacme.service.vmdl.VMDLServiceAbstract;
 import ch.dvbern.oss.vacme.service.vmdl.VMDLServiceFactory;
 import ch.dvbern.oss.vacme.shared.errors.AppFailureException;
@@ -123,6 +134,7 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.apache.commons.lang3.time.StopWatch;
 import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
 
 import static ch.dvbern.oss.vacme.entities.base.ApplicationPropertyKey.VACME_ASYNC_DOCUMENT_CREATION_DISABLED;
 import static ch.dvbern.oss.vacme.entities.base.ApplicationPropertyKey.VACME_BOOSTER_FREIGABE_JOB_DISABLED;
@@ -169,6 +181,10 @@ public class SystemAdminRunnerService {
 	private final ApplicationPropertyRepo applicationPropertyRepo;
 	private final ZertifikatRunnerService zertifikatRunnerService;
 	private final OnboardingRunnerService onboardingRunnerService;
+	private final PostversandRunnerService postversandRunnerService;
+	private final OdiTagesStatistikService odiTagesStatistikService;
+	private final RegistrierungSuchindexService registrierungSuchindexService;
+	private final BlobStoreService blobStoreService;
 	private final BoosterRunnerService boosterRunnerService;
 	private final BoosterQueueRepo boosterQueueRepo;
 	private final RegistrierungService registrierungService;
@@ -194,6 +210,7 @@ public class SystemAdminRunnerService {
 	private final VacmeSettingsService vacmeSettingsService;
 	private final KrankheitRepo krankheitRepo;
 	private final KrankheitService krankheitService;
+	private final CacheInvalidationService cacheInvalidationService;
 
 	@Transactional
 	void runStatTask() {
@@ -427,6 +444,33 @@ public class SystemAdminRunnerService {
 		}
 	}
 
+	@Transactional(TxType.NOT_SUPPORTED)
+	public void runPostversandExportTask() {
+		if (vacmeSettingsService.isPostversandExportEnabled()) {
+			postversandRunnerService.exportPendingLetters();
+		}
+	}
+
+	@Transactional(TxType.NOT_SUPPORTED)
+	public void runTagesstatistikReconcileTask() {
+		odiTagesStatistikService.reconcile();
+	}
+
+	@Transactional(TxType.NOT_SUPPORTED)
+	public void runPersonaliensucheIndexUpdateTask() {
+		registrierungSuchindexService.update();
+	}
+
+	@Transactional(TxType.NOT_SUPPORTED)
+	public void runBlobStoreMigrationTask() {
+		blobStoreService.migrate();
+	}
+
+	@Transactional(TxType.NOT_SUPPORTED)
+	public void runBlobStoreGarbageCollectionTask() {
+		blobStoreService.collectGarbage();
+	}
+
 	@Transactional
 	public void runCovidCertClearTokensTask() {
 		zertifikatRunnerService.clearCovidCertTokens();
@@ -516,6 +560,7 @@ public class SystemAdminRunnerService {
 				if (krankheitEntity.isNoFreieTermine() != noFreieTermine) {
 					krankheitEntity.setNoFreieTermine(noFreieTermine);
 					krankheitRepo.update(krankheitEntity);
+					cacheInvalidationService.invalidate(VacmeCacheName.KRANKHEIT_NO_FREIE_TERMINE, krankheit);
 				}
 			}
 		}
@@ -548,27 +593,31 @@ public class SystemAdminRunnerService {
 	@Transactional(TxType.NOT_SUPPORTED)
 	public boolean processDocumentQueueItem(Long queueItemId) {
 		runAsInternalSystemAdmin();
-		DocumentQueue documentQueueItem = documentQueueService.getDocumentQueueItem(queueItemId);
-		if (documentQueueItem.getStatus() != DocumentQueueStatus.NEW && documentQueueItem.getStatus()
-			!= DocumentQueueStatus.FAILED_RETRY) {
+		if (!documentQueueService.claimDocumentQueueItem(queueItemId)) {
 			LOG.info(
-				"VACME-DOC-QUEUE: Queue Item mit id {} ist nicht im Status NEW oder FAILED_RETRY sondern im Status {}."
+				"VACME-DOC-QUEUE: Queue Item mit id {} ist nicht im Status NEW oder FAILED_RETRY."
 					+ " Vielleicht ist es schon in Bearbeitung",
-				queueItemId,
-				documentQueueItem.getStatus());
+				queueItemId);
 			return false;
 		}
+		DocumentQueue documentQueueItem = documentQueueService.getDocumentQueueItem(queueItemId);
 		DocumentQueueResult result = null;
+		Path resultFile = null;
+		InputStream resultContent = null;
 		try {
-			documentQueueService.markDocumentQueueItemAsInProgress(documentQueueItem);
-			documentQueueItem = documentQueueService.getDocumentQueueItem(queueItemId);
 			LOG.info("VACME-DOC-QUEUE: Starting Async generation of DocumentQueueItem {}, typ ({}) for user '{}'",
 				documentQueueItem.getId(), documentQueueItem.getTyp(),
 				documentQueueItem.getBenutzer().getBenutzername());
 
-			byte[] content = triggerGenerationFunctionForDocQueueItem(documentQueueItem);
+			// Das Dokument wird in eine temporaere Datei geschrieben und von dort beim Speichern direkt in die DB
+			// gestreamt, damit grosse Reports nicht als byte[] im Speicher gehalten werden muessen
+			resultFile = Files.createTempFile("vacme-docqueue-" + queueItemId + '-', ".tmp");
+			try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(resultFile))) {
+				triggerGenerationFunctionForDocQueueItem(documentQueueItem, out);
+			}
 
-			storeDocumentQueueItemResultFile(documentQueueItem, content);
+			resultContent = new BufferedInputStream(Files.newInputStream(resultFile));
+			storeDocumentQueueItemResultFile(documentQueueItem, resultContent, Files.size(resultFile));
 			result = documentQueueItem.getDocumentQueueResult();
 
 			LOG.info("VACME-DOC-QUEUE: Finished Async generation of DocumentQueueItem {} in {}ms", documentQueueItem,
@@ -587,99 +636,119 @@ public class SystemAdminRunnerService {
 			return false;
 		} finally {
 			documentQueueService.saveResult(documentQueueItem, result);
+			deleteDocumentQueueResultFile(resultFile, resultContent);
+		}
+	}
 
+	private void deleteDocumentQueueResultFile(@Nullable Path resultFile, @Nullable InputStream resultContent) {
+		try {
+			if (resultContent != null) {
+				resultContent.close();
+			}
+			if (resultFile != null) {
+				Files.deleteIfExists(resultFile);
+			}
+		} catch (IOException e) {
+			LOG.warn("VACME-DOC-QUEUE: Temporaere Datei {} konnte nicht geloescht werden", resultFile, e);
 		}
 	}
 
 	@Transactional(TxType.NOT_SUPPORTED)
-	private byte[] triggerGenerationFunctionForDocQueueItem(DocumentQueue documentQueueItem) {
+	private void triggerGenerationFunctionForDocQueueItem(
+		@NonNull DocumentQueue documentQueueItem,
+		@NonNull OutputStream out
+	) throws IOException {
 		switch (documentQueueItem.getTyp()) {
 
 		case ABRECHNUNG:
 			AbrechnungDocQueue abrechnungDocQueue = (AbrechnungDocQueue) documentQueueItem;
 			VonBisSpracheParamJax vonBisParam = abrechnungDocQueue.getVonBisSpracheParam(objectMapper);
 			Locale locale = vonBisParam.getSprache().getLocale();
-			byte[] bytes = abrechnungServiceBean.generateExcelReportAbrechnung(locale, vonBisParam.getVon(),
-				vonBisParam.getBis());
-			return bytes;
+			out.write(abrechnungServiceBean.generateExcelReportAbrechnung(locale, vonBisParam.getVon(),
+				vonBisParam.getBis()));
+			return;
 		case ABRECHNUNG_ERWACHSEN:
 			AbrechnungErwachsenDocQueue abrechnungErwachsenDocQueue = (AbrechnungErwachsenDocQueue) documentQueueItem;
 			VonBisSpracheParamJax vonBisErwachsenParam =
 				abrechnungErwachsenDocQueue.getVonBisSpracheParam(objectMapper);
 			Locale localeErwachsen = vonBisErwachsenParam.getSprache().getLocale();
-			return abrechnungServiceBean.generateExcelReportAbrechnungErwachsen(
+			out.write(abrechnungServiceBean.generateExcelReportAbrechnungErwachsen(
 				localeErwachsen,
 				vonBisErwachsenParam.getVon(),
-				vonBisErwachsenParam.getBis());
+				vonBisErwachsenParam.getBis()));
+			return;
 		case ABRECHNUNG_KIND:
 			AbrechnungKindDocQueue abrechnungKindDocQueue = (AbrechnungKindDocQueue) documentQueueItem;
 			VonBisSpracheParamJax vonBisKindParam = abrechnungKindDocQueue.getVonBisSpracheParam(objectMapper);
 			Locale localeKind = vonBisKindParam.getSprache().getLocale();
-			return abrechnungServiceBean.generateExcelReportAbrechnungKind(localeKind, vonBisKindParam.getVon(),
-				vonBisKindParam.getBis());
+			out.write(abrechnungServiceBean.generateExcelReportAbrechnungKind(localeKind, vonBisKindParam.getVon(),
+				vonBisKindParam.getBis()));
+			return;
 
 		case ABRECHNUNG_ZH:
 			AbrechnungZHDocQueue abrZhDocQuee = (AbrechnungZHDocQueue) documentQueueItem;
 			VonBisSpracheParamJax vonBisParamAbrZhParam = abrZhDocQuee.getVonBisSpracheParam(objectMapper);
 
-			return abrechnungZHServiceBean.generateExcelReportAbrechnung(
+			out.write(abrechnungZHServiceBean.generateExcelReportAbrechnung(
 				vonBisParamAbrZhParam.getSprache().getLocale(),
 				vonBisParamAbrZhParam.getVon(),
-				vonBisParamAbrZhParam.getBis());
+				vonBisParamAbrZhParam.getBis()));
+			return;
 		case ABRECHNUNG_ZH_KIND:
 			AbrechnungZHKindDocQueue abrZhKindDocQuee = (AbrechnungZHKindDocQueue) documentQueueItem;
 			VonBisSpracheParamJax vonBisParamAbrZhKindParam = abrZhKindDocQuee.getVonBisSpracheParam(objectMapper);
 
-			return abrechnungZHServiceBean.generateExcelReportAbrechnungKind(
+			out.write(abrechnungZHServiceBean.generateExcelReportAbrechnungKind(
 				vonBisParamAbrZhKindParam.getSprache().getLocale(),
 				vonBisParamAbrZhKindParam.getVon(),
-				vonBisParamAbrZhKindParam.getBis());
+				vonBisParamAbrZhKindParam.getBis()));
+			return;
 		case IMPFUNGEN_REPORT_CSV:
-			StreamingOutput streamingOutput = reportingImpfungenReportServiceBean.generateStatisticsExport();
-			return streamingOutputToByteArray(streamingOutput);
-
+			reportingImpfungenReportServiceBean.generateStatisticsExport().write(out);
+			return;
 		case IMPFSLOTS_REPORT_CSV:
-			return streamingOutputToByteArray(reportingTerminslotsReportServiceBean.generateStatisticsExport());
+			reportingTerminslotsReportServiceBean.generateStatisticsExport().write(out);
+			return;
 		case REGISTRIERUNGEN_KANTON_CSV:
-			return streamingOutputToByteArray(reportingKantonReportServiceBean.generateStatisticsExport());
+			reportingKantonReportServiceBean.generateStatisticsExport().write(out);
+			return;
 		case REGISTRIERUNGEN_KANTONSARZT_CSV:
-			return streamingOutputToByteArray(reportingKantonsarztReportServiceBean.generateStatisticsExport());
+			reportingKantonsarztReportServiceBean.generateStatisticsExport().write(out);
+			return;
 		case ODI_REPORT_CSV:
-			return reportingOdisReportServiceBean.generateStatisticsExport();
+			out.write(reportingOdisReportServiceBean.generateStatisticsExport());
+			return;
 		case ODI_IMPFUNGEN:
 			SpracheabhDocQueue docQueueWithSprache = (SpracheabhDocQueue) documentQueueItem;
 			SpracheParamJax spracheParam = docQueueWithSprache.getSpracheParam(objectMapper);
-			return reportingOdiImpfungenReportServiceBean.generateExcelReportOdiImpfungen(
-				spracheParam.getSprache().getLocale(), docQueueWithSprache.getBenutzer().toId());
+			reportingOdiImpfungenReportServiceBean.writeExcelReportOdiImpfungen(
+				spracheParam.getSprache().getLocale(), docQueueWithSprache.getBenutzer().toId(), out);
+			return;
 		case ODI_TERMINBUCHUNGEN:
 			SpracheabhDocQueue docQueueTerminbuchung = (SpracheabhDocQueue) documentQueueItem;
 			SpracheParamJax sprachparamTerminbuchung = docQueueTerminbuchung.getSpracheParam(objectMapper);
-			return reportingOdiTerminbuchungenReportServiceBean.generateExcelReportOdiTerminbuchungen(
+			out.write(reportingOdiTerminbuchungenReportServiceBean.generateExcelReportOdiTerminbuchungen(
 				sprachparamTerminbuchung.getSprache().getLocale(),
 				docQueueTerminbuchung.getBenutzer().toId()
-			);
+			));
+			return;
 		default:
 			throw new AppFailureException("Unhandeled Document Type " + documentQueueItem.getTyp());
 		}
 
 	}
 
-	private byte[] streamingOutputToByteArray(StreamingOutput streamingOutput) {
-
-		try (ByteArrayOutputStream out = new ByteArrayOutputStream()) {
-			streamingOutput.write(out);
-			return out.toByteArray();
-		} catch (Exception e) {
-			throw new AppFailureException("problem writing to stream ", e);
-		}
-	}
-
-	private void storeDocumentQueueItemResultFile(DocumentQueue documentQueueItem, byte[] content) {
+	private void storeDocumentQueueItemResultFile(
+		@NonNull DocumentQueue documentQueueItem,
+		@NonNull InputStream content,
+		long contentLength
+	) {
 		DocumentQueueResult documentQueueResult = new DocumentQueueResult();
 		String filename = documentQueueItem.calculateFilename(objectMapper);
 
 		CleanFileName cleanFileName = new CleanFileName(filename);
-		FileBlob file = FileBlob.of(cleanFileName, MimeType.APPLICATION_OCTET_STREAM, content);
+		FileBlob file = FileBlob.of(cleanFileName, MimeType.APPLICATION_OCTET_STREAM, content, contentLength);
+		blobStoreService.externalize(file);
 		documentQueueResult.setFileBlob(file);
 		documentQueueItem.setDocumentQueueResult(documentQueueResult);
 		documentQueueItem.markSuccessful();
@@ -698,7 +767,7 @@ public class SystemAdminRunnerService {
 			// Regs die nach Immunisiert geschoben wuren koennen evtl noch grad weiter.
 			// Daher fuer diese Berechnung uber die Rule Engine triggern
 			if (!movedToImmunisiertRegnums.isEmpty()) {
-				this.boosterQueueRepo.createRegistrierungQueueItems(movedToImmunisiertRegnums);
+				this.boosterQueueRepo.createRegistrierungQueueItems(movedToImmunisiertRegnums, KrankheitIdentifier.COVID);
 				LOG.info(
 					"VACME-BOOSTER-IMMUNISIERT: Einfuegen von {} QueueItems zur Impfschutzneuberechnung beendet",
 					movedToImmunisiertRegnums.size());
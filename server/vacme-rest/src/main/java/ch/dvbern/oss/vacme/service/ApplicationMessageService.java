@@ -28,18 +28,23 @@ import javax.inject.Inject;
 import ch.dvbern.oss.vacme.entities.base.ApplicationMessage;
 import ch.dvbern.oss.vacme.entities.util.Pager;
 import ch.dvbern.oss.vacme.repo.ApplicationMessageRepo;
+import ch.dvbern.oss.vacme.service.cache.CacheInvalidationService;
+import ch.dvbern.oss.vacme.service.cache.VacmeCacheName;
 import org.checkerframework.checker.nullness.qual.NonNull;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
 @ApplicationScoped
 public class ApplicationMessageService {
 	private final ApplicationMessageRepo applicationMessageRepo;
+	private final CacheInvalidationService cacheInvalidationService;
 
 	@Inject
 	public ApplicationMessageService(
-		@NonNull ApplicationMessageRepo applicationMessageRepo
+		@NonNull ApplicationMessageRepo applicationMessageRepo,
+		@NonNull CacheInvalidationService cacheInvalidationService
 	) {
 		this.applicationMessageRepo = applicationMessageRepo;
+		this.cacheInvalidationService = cacheInvalidationService;
 	}
 
 	@NonNull
@@ -63,6 +68,8 @@ public class ApplicationMessageService {
 
 	public void create(@NonNull ApplicationMessage applicationMessage) {
 		this.applicationMessageRepo.create(applicationMessage);
+		// Die Infotexte sind Teil der gecachten Settings
+		cacheInvalidationService.invalidateAll(VacmeCacheName.SETTINGS);
 	}
 
 	public void update(@NonNull String messageId, @NonNull ApplicationMessage applicationMessage) {
@@ -72,5 +79,6 @@ public class ApplicationMessageService {
 		formerMessage.setZeitfenster(applicationMessage.getZeitfenster());
 		formerMessage.setStatus(applicationMessage.getStatus());
 		formerMessage.setHtmlContent(applicationMessage.getHtmlContent());
+		cacheInvalidationService.invalidateAll(VacmeCacheName.SETTINGS);
 	}
 }
@@ -24,6 +24,8 @@ import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
 
 import ch.dvbern.oss.vacme.entities.base.ApplicationPropertyKey;
+import ch.dvbern.oss.vacme.service.cache.CacheRegistry;
+import ch.dvbern.oss.vacme.service.cache.VacmeCacheName;
 import ch.dvbern.oss.vacme.util.CacheUtil;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
@@ -44,6 +46,7 @@ import static ch.dvbern.oss.vacme.entities.base.ApplicationPropertyKey.COVID_ZER
 public class ApplicationPropertyCacheService {
 
 	private final VacmeSettingsService vacmeSettingsService;
+	private final CacheRegistry cacheRegistry;
 	private LoadingCache<ApplicationPropertyKey, Boolean> zertifikatEnabledCache;
 
 	@PostConstruct
@@ -72,7 +75,9 @@ public class ApplicationPropertyCacheService {
 				"vacme.cache.zertifikat.enabled.ttl.sconds",
 				vacmeSettingsService.getZertifikatEnabledCacheTimeToLive()), TimeUnit.SECONDS)
 			.maximumSize(10)
+			.recordStats()
 			.build(loader);
+		cacheRegistry.register(VacmeCacheName.APPLICATION_PROPERTY, zertifikatEnabledCache);
 	}
 
 	public boolean isZertifikatEnabled() {
@@ -28,6 +28,8 @@ import ch.dvbern.oss.vacme.entities.base.ApplicationProperty;
 import ch.dvbern.oss.vacme.entities.base.ApplicationPropertyKey;
 import ch.dvbern.oss.vacme.entities.registration.Prioritaet;
 import ch.dvbern.oss.vacme.repo.ApplicationPropertyRepo;
+import ch.dvbern.oss.vacme.service.cache.CacheInvalidationService;
+import ch.dvbern.oss.vacme.service.cache.VacmeCacheName;
 import ch.dvbern.oss.vacme.shared.errors.AppFailureException;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -40,6 +42,7 @@ public class ApplicationPropertyService {
 
 	private final ApplicationPropertyRepo applicationPropertyRepo;
 	private final ImpfdossierService impfdossierService;
+	private final CacheInvalidationService cacheInvalidationService;
 
 
 	@NonNull
@@ -68,6 +71,9 @@ public class ApplicationPropertyService {
 			ApplicationProperty property = new ApplicationProperty(key, value);
 			applicationPropertyRepo.create(property);
 		}
+		// Die gecachten Werte auf allen Nodes verwerfen, die Settings enthalten ebenfalls ApplicationProperties
+		cacheInvalidationService.invalidate(VacmeCacheName.APPLICATION_PROPERTY, key);
+		cacheInvalidationService.invalidateAll(VacmeCacheName.SETTINGS);
 	}
 
 	public void impfgruppeFreigeben(@NonNull List<String> values) {
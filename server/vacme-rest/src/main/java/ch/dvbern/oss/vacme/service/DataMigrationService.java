@@ -20,10 +20,13 @@ package ch.dvbern.oss.vacme.service;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -43,7 +46,6 @@ import ch.dvbern.oss.vacme.entities.impfen.Impfstoff;
 import ch.dvbern.oss.vacme.entities.impfen.Impfung;
 import ch.dvbern.oss.vacme.entities.impfen.ImpfungkontrolleTermin;
 import ch.dvbern.oss.vacme.entities.migration.Migration;
-import ch.dvbern.oss.vacme.entities.migration.MigrationRateLimit;
 import ch.dvbern.oss.vacme.entities.registration.Fragebogen;
 import ch.dvbern.oss.vacme.entities.registration.Personenkontrolle;
 import ch.dvbern.oss.vacme.entities.registration.Prioritaet;
@@ -71,6 +73,8 @@ import ch.dvbern.oss.vacme.repo.MigrationRateLimitRepo;
 import ch.dvbern.oss.vacme.repo.MigrationRepo;
 import ch.dvbern.oss.vacme.repo.RegistrierungRepo;
 import ch.dvbern.oss.vacme.service.impfinformationen.ImpfinformationenService;
+import ch.dvbern.oss.vacme.service.migration.DataMigrationKontext;
+import ch.dvbern.oss.vacme.service.migration.MigrationTokenBucket;
 import ch.dvbern.oss.vacme.shared.errors.AppException;
 import ch.dvbern.oss.vacme.shared.errors.AppFailureException;
 import ch.dvbern.oss.vacme.shared.util.Constants;
@@ -132,6 +136,7 @@ public class DataMigrationService {
 	private final ImpfterminRepo impfterminRepo;
 	private final MigrationRepo migrationRepo;
 	private final ImpfdossierService impfdossierService;
+	private final VacmeSettingsService vacmeSettingsService;
 
 	private void validateUniqueImpffolge(Stream<?> stream) {
 		if (!stream.allMatch(new HashSet<>()::add)) {
@@ -139,12 +144,55 @@ public class DataMigrationService {
 		}
 	}
 
-	@Transactional(Transactional.TxType.REQUIRES_NEW)
-	public String migrateData(RegistrierungMigrationJax request) {
+	/**
+	 * Prueft die Angaben eines Requests, die ohne Datenbank geprueft werden koennen. Im Bulk-Modus fallen
+	 * fehlerhafte Registrierungen so schon vor dem Chunk heraus und muessen nicht einzeln wiederholt werden.
+	 */
+	public void validateRequest(@NonNull RegistrierungMigrationJax request) {
 		// validate Impffolge is unique in list
 		validateUniqueImpffolge(request.getImpfungen().stream().map(ImpfungMigrationJax::getImpffolge));
+		request.getImpfungen().forEach(ValidationUtil::validateFlags);
+	}
+
+	@Transactional(Transactional.TxType.REQUIRES_NEW)
+	public String migrateData(RegistrierungMigrationJax request) {
+		return migrateRegistrierung(request, createKontext(List.of(request)));
+	}
+
+	/**
+	 * Migriert alle Registrierungen in einer einzigen Transaktion mit gemeinsamen Nachschlagewerten. Schlaegt eine
+	 * Registrierung fehl, wird der ganze Chunk zurueckgerollt und der Aufrufer muss die Registrierungen einzeln mit
+	 * {@link #migrateData(RegistrierungMigrationJax)} migrieren.
+	 *
+	 * @return die Registrierungsnummer pro externalId
+	 */
+	@NonNull
+	@Transactional(Transactional.TxType.REQUIRES_NEW)
+	public Map<String, String> migrateDataChunk(@NonNull List<RegistrierungMigrationJax> requests) {
+		final DataMigrationKontext kontext = createKontext(requests);
+		final Map<String, String> registrierungsnummern = new HashMap<>();
+		for (RegistrierungMigrationJax request : requests) {
+			registrierungsnummern.put(request.getExternalId(), migrateRegistrierung(request, kontext));
+		}
+		return registrierungsnummern;
+	}
 
-		Impfdossier impfdossier = getOrCreateRegistrierung(request);
+	@NonNull
+	private DataMigrationKontext createKontext(@NonNull List<RegistrierungMigrationJax> requests) {
+		final Set<String> externalIds = requests.stream()
+			.map(RegistrierungMigrationJax::getExternalId)
+			.collect(Collectors.toSet());
+		final List<Registrierung> bestehende = registrierungRepo.getByExternalIds(externalIds);
+		// Die Registrierungsnummern der neuen Registrierungen werden mit einer einzigen Abfrage reserviert
+		final int anzahlNeue = externalIds.size() - bestehende.size();
+		return new DataMigrationKontext(bestehende, registrierungRepo.getNextRegistrierungnummern(anzahlNeue));
+	}
+
+	@NonNull
+	private String migrateRegistrierung(@NonNull RegistrierungMigrationJax request, @NonNull DataMigrationKontext kontext) {
+		validateRequest(request);
+
+		Impfdossier impfdossier = getOrCreateRegistrierung(request, kontext);
 		Registrierung registrierung = impfdossier.getRegistrierung();
 		Fragebogen fragebogen = deleteAndCreateFragebogen(request, registrierung);
 		Personenkontrolle personenkontrolle = impfdossier.getOrCreatePersonenkontrolle();
@@ -156,24 +204,23 @@ public class DataMigrationService {
 			.sorted((o1, o2) -> IMPFFOLGE_COMPARATOR.compare(o1.getImpffolge(), o2.getImpffolge()))
 			.collect(Collectors.toList());
 		sortedList.forEach(impfRequest -> {
-			ValidationUtil.validateFlags(impfRequest);
 			if (Impffolge.ERSTE_IMPFUNG == impfRequest.getImpffolge()) {
 				Impftermin oldTermin1 = buchung.getImpftermin1();
-				Impftermin termin1 = getOrCreateImpfterminForMigration(impfdossier, impfRequest);
+				Impftermin termin1 = getOrCreateImpfterminForMigration(impfdossier, impfRequest, kontext);
 				if (buchung.getImpftermin2() == null) {
 					impfdossier.setDossierStatus(ImpfdossierStatus.IMPFUNG_1_DURCHGEFUEHRT);
 				}
 				ValidationUtil.validateImpfungMinDate(termin1);
-				updateOrCreateImpfung(impfRequest, oldTermin1, termin1);
+				updateOrCreateImpfung(impfRequest, oldTermin1, termin1, kontext);
 
 				ImpfungkontrolleTermin impfungkontrolleTermin1 = updateOrCreateImpfungkontrolleTermin(impfRequest, personenkontrolle.getKontrolleTermin1());
 				personenkontrolle.setKontrolleTermin1(impfungkontrolleTermin1);
 			} else {
 				Impftermin oldTermin2 = buchung.getImpftermin2();
-				Impftermin termin2 = getOrCreateImpfterminForMigration(impfdossier, impfRequest);
+				Impftermin termin2 = getOrCreateImpfterminForMigration(impfdossier, impfRequest, kontext);
 
 				ValidationUtil.validateImpfungMinDate(termin2);
-				updateOrCreateImpfung(impfRequest, oldTermin2, termin2);
+				updateOrCreateImpfung(impfRequest, oldTermin2, termin2, kontext);
 				Impfung impfung2 = impfungRepo.getByImpftermin(termin2).get();
 				if (buchung.getImpftermin1() != null) {
 					final ImpfinformationDto infos =
@@ -226,8 +273,8 @@ public class DataMigrationService {
 	}
 
 	@NotNull
-	private Impfdossier getOrCreateRegistrierung(@NotNull RegistrierungMigrationJax request) {
-		Registrierung registrierung = registrierungRepo.getByExternalId(request.getExternalId()).orElseGet(Registrierung::new);
+	private Impfdossier getOrCreateRegistrierung(@NotNull RegistrierungMigrationJax request, @NotNull DataMigrationKontext kontext) {
+		Registrierung registrierung = kontext.findRegistrierung(request.getExternalId()).orElseGet(Registrierung::new);
 		registrierung.setExternalId(request.getExternalId());
 		registrierung.setAnonymisiert(request.isAnonymisiert());
 		registrierung.setGeschlecht(request.getGeschlecht());
@@ -245,9 +292,11 @@ public class DataMigrationService {
 		registrierung.setPrioritaet(Prioritaet.W);
 		registrierung.setRegistrationTimestamp(DEFAULT_MIGRATION_REGISTRATION_DATE);
 		if (registrierung.getRegistrierungsnummer() == null) {
-			registrierung.setRegistrierungsnummer(stammdatenService.createUniqueRegistrierungsnummer());
+			registrierung.setRegistrierungsnummer(
+				kontext.nextRegistrierungsnummer(stammdatenService::createUniqueRegistrierungsnummer));
 		}
 		Registrierung reg =  registrierungRepo.update(registrierung);
+		kontext.putRegistrierung(reg);
 
 		return impfdossierService.getOrCreateImpfdossier(reg, KrankheitIdentifier.COVID);
 	}
@@ -279,8 +328,14 @@ public class DataMigrationService {
 	}
 
 	@NotNull
-	private Impftermin getOrCreateImpfterminForMigration(@NotNull Impfdossier impfdossier, @NotNull ImpfungMigrationJax impfRequest) {
-		final OrtDerImpfung odi = ortDerImpfungService.getByOdiIdentifier(mapDummyODITyp(impfRequest.getOrtDerImpfungTyp()));
+	private Impftermin getOrCreateImpfterminForMigration(
+		@NotNull Impfdossier impfdossier,
+		@NotNull ImpfungMigrationJax impfRequest,
+		@NotNull DataMigrationKontext kontext
+	) {
+		final OrtDerImpfung odi = kontext.getOdi(
+			mapDummyODITyp(impfRequest.getOrtDerImpfungTyp()),
+			ortDerImpfungService::getByOdiIdentifier);
 		Impftermin oldTermin = Impffolge.ERSTE_IMPFUNG == impfRequest.getImpffolge()
 			? impfdossier.getBuchung().getImpftermin1()
 			: impfdossier.getBuchung().getImpftermin2();
@@ -300,7 +355,12 @@ public class DataMigrationService {
 			: impfdossier.getBuchung().getImpftermin2());
 	}
 
-	private void updateOrCreateImpfung(@NotNull ImpfungMigrationJax impfRequest, @Nullable Impftermin oldTermin, @NotNull Impftermin termin) {
+	private void updateOrCreateImpfung(
+		@NotNull ImpfungMigrationJax impfRequest,
+		@Nullable Impftermin oldTermin,
+		@NotNull Impftermin termin,
+		@NotNull DataMigrationKontext kontext
+	) {
 		Impfung impfung;
 		if (oldTermin != null) {
 			impfung = impfungRepo.getByImpftermin(oldTermin).orElseGet(Impfung::new);
@@ -308,9 +368,9 @@ public class DataMigrationService {
 			impfung = new Impfung();
 		}
 		impfung.setTimestampImpfung(impfRequest.getImpfdatum().atTime(LocalTime.NOON));
-		impfung.setImpfstoff(mapImpfstoff(impfRequest.getImpfstoff()));
-		impfung.setBenutzerDurchfuehrend(mapBenutzer(impfRequest.getDurchfuehrendPersonGLN(), BenutzerRolle.OI_DOKUMENTATION));
-		impfung.setBenutzerVerantwortlicher(mapBenutzer(impfRequest.getVerantwortlicherPersonGLN(), BenutzerRolle.OI_IMPFVERANTWORTUNG));
+		impfung.setImpfstoff(kontext.getImpfstoff(impfRequest.getImpfstoff(), this::mapImpfstoff));
+		impfung.setBenutzerDurchfuehrend(mapBenutzer(impfRequest.getDurchfuehrendPersonGLN(), BenutzerRolle.OI_DOKUMENTATION, kontext));
+		impfung.setBenutzerVerantwortlicher(mapBenutzer(impfRequest.getVerantwortlicherPersonGLN(), BenutzerRolle.OI_IMPFVERANTWORTUNG, kontext));
 		impfung.setEinwilligung(impfRequest.isEinwilligungImpfung());
 		impfung.setFieber(impfRequest.isFieber());
 		impfung.setKeineBesonderenUmstaende(null); // dieses flag kann nicht ueber die API gesetzt werden
@@ -380,6 +440,11 @@ public class DataMigrationService {
 		}
 	}
 
+	@NotNull
+	private Benutzer mapBenutzer(@Nullable String glnNummer, @NotNull BenutzerRolle rolle, @NotNull DataMigrationKontext kontext) {
+		return kontext.getBenutzer(glnNummer, rolle, () -> mapBenutzer(glnNummer, rolle));
+	}
+
 	@NotNull
 	private Benutzer mapBenutzer(@Nullable String glnNummer, @NotNull BenutzerRolle rolle) {
 		if (StringUtils.isNotBlank(glnNummer)) {
@@ -433,19 +498,24 @@ public class DataMigrationService {
 		}
 	}
 
-	public Optional<LocalDateTime> getLastRequestTimestamp() {
-		return migrationRateLimitRepo.get().map(MigrationRateLimit::getTimestampLastRequest);
-	}
-
-	public void updateRequestTimestamp() {
-		Optional<MigrationRateLimit> migrationRateLimitDB = migrationRateLimitRepo.get();
-		if (migrationRateLimitDB.isPresent()) {
-			MigrationRateLimit migrationRateLimit = migrationRateLimitDB.get();
-			migrationRateLimit.setTimestampLastRequest(LocalDateTime.now());
-			migrationRateLimitRepo.update(migrationRateLimit);
-		} else {
-			migrationRateLimitRepo.update(new MigrationRateLimit());
-		}
+	/**
+	 * Bezieht aus dem Token-Bucket des Aufrufers ein Token pro Registrierung. Der Bucket fasst
+	 * migration.rate.limit.capacity Tokens und ist nach migration.rate.limit.interval.seconds wieder voll. Groessere
+	 * Requests brauchen einen vollen Bucket und ueberziehen ihn, die folgenden Requests warten entsprechend laenger.
+	 *
+	 * @return 0 wenn der Request ausgefuehrt werden darf, sonst die Anzahl Sekunden bis zum naechsten Versuch
+	 */
+	@Transactional(Transactional.TxType.REQUIRES_NEW)
+	public long tryConsumeRateLimit(@NonNull String caller, int anzahlRegistrierungen) {
+		final int capacity = vacmeSettingsService.getMigrationRateLimitCapacity();
+		final double refillPerSecond = (double) capacity / Math.max(1, vacmeSettingsService.getMigrationInterval());
+		final LocalDateTime now = LocalDateTime.now();
+		migrationRateLimitRepo.createIfMissing(caller, MigrationTokenBucket.full(capacity, now));
+		final MigrationTokenBucket bucket = migrationRateLimitRepo.getForUpdate(caller)
+			.orElseThrow(() -> new IllegalStateException("No rate limit bucket for caller " + caller));
+		final long wartezeitSekunden = bucket.tryConsume(Math.max(1, anzahlRegistrierungen), capacity, refillPerSecond, now);
+		migrationRateLimitRepo.update(caller, bucket);
+		return wartezeitSekunden;
 	}
 
 	@Transactional(Transactional.TxType.REQUIRES_NEW)
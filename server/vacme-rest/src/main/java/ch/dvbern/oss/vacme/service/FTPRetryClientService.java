@@ -17,7 +17,12 @@
 
 package ch.dvbern.oss.vacme.service;
 
+import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 import javax.enterprise.context.RequestScoped;
 import javax.transaction.Transactional;
@@ -92,6 +97,34 @@ public class FTPRetryClientService {
 		}
 	}
 
+	/**
+	 * Laedt eine (grosse) Datei direkt vom Filesystem auf den FTP-Server, ohne sie in den Speicher zu laden. Im
+	 * Gegensatz zu {@link #tryToPutFilesToFtp} wird bei Fehlern nichts in der DB gespeichert, der Aufrufer muss
+	 * den Upload spaeter wiederholen.
+	 *
+	 * @return true wenn der Upload (allenfalls nach einem Retry) erfolgreich war
+	 */
+	public boolean tryToPutFileToFtp(@NonNull Path file, @NonNull String filename) {
+		int maxRetries = 1;
+		int tries = 0;
+		while (tries <= maxRetries) {
+			try (InputStream inputStream = new BufferedInputStream(Files.newInputStream(file))) {
+				if (ftpClientService.putFileToPath(inputStream, filename)) {
+					if (tries > 0) {
+						LOG.info("FTP Upload success after retry");
+					}
+					return true;
+				}
+			} catch (IOException e) {
+				LOG.warn("Could not read file {} for FTP upload", file, e);
+			}
+			sleepForAShortTime();
+			LOG.warn("Could not upload {} to FTP. Will retry 1 more time", filename);
+			tries++;
+		}
+		return false;
+	}
+
 
 	private void sleepForAShortTime()  {
 		try {
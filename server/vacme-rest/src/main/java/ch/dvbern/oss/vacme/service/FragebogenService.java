@@ -17,6 +17,9 @@
 
 package ch.dvbern.oss.vacme.service;
 
+import java.util.Collection;
+import java.util.Map;
+
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
 
@@ -54,6 +57,13 @@ public class FragebogenService {
 			() -> AppValidationMessage.UNKNOWN_REGISTRIERUNGSNUMMER.create(registrierungsnummer));
 	}
 
+	@NonNull
+	public Map<String, Fragebogen> findFrageboegenByRegistrierungsnummern(
+		@NonNull Collection<String> registrierungsnummern
+	) {
+		return fragebogenRepo.findByRegistrierungsnummern(registrierungsnummern);
+	}
+
 	public void setAndUpdateImmunsupprimiert(String registrierungsnummer, @Nullable Boolean immunsupprimiert) {
 		Fragebogen fragebogen = findFragebogenByRegistrierungsnummer(registrierungsnummer);
 		fragebogen.setImmunsupprimiert(immunsupprimiert);
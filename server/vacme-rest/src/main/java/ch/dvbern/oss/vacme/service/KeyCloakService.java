@@ -17,6 +17,7 @@
 
 package ch.dvbern.oss.vacme.service;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -46,7 +47,11 @@ import ch.dvbern.oss.vacme.entities.types.FachRolle;
 import ch.dvbern.oss.vacme.entities.types.daterange.DateUtil;
 import ch.dvbern.oss.vacme.jax.registration.OdiUserDisplayNameJax;
 import ch.dvbern.oss.vacme.jax.registration.OdiUserJax;
+import ch.dvbern.oss.vacme.keyclaok.KeyCloakDirectory;
 import ch.dvbern.oss.vacme.keyclaok.KeycloakAdapter;
+import ch.dvbern.oss.vacme.service.cache.CacheInvalidationService;
+import ch.dvbern.oss.vacme.service.cache.CacheRegistry;
+import ch.dvbern.oss.vacme.service.cache.VacmeCacheName;
 import ch.dvbern.oss.vacme.shared.errors.AppValidationMessage;
 import ch.dvbern.oss.vacme.shared.util.Constants;
 import lombok.extern.slf4j.Slf4j;
@@ -76,6 +81,8 @@ public class KeyCloakService {
 	KeycloakAdapter keycloakAdapter;
 	final UserPrincipal userPrincipal;
 	final SmsService smsService;
+	final CacheInvalidationService cacheInvalidationService;
+	final KeyCloakDirectory directory;
 
 	private static final String USERERSTELLT = "userErstellt";
 	private static final String MOBILENUMMER = Constants.MOBILE_NUMMER_CLAIM;
@@ -86,12 +93,24 @@ public class KeyCloakService {
 	public KeyCloakService(
 		KeycloakAdapter keycloakAdapter,
 		UserPrincipal userPrincipal,
-		SmsService smsService
+		SmsService smsService,
+		VacmeSettingsService vacmeSettingsService,
+		CacheRegistry cacheRegistry,
+		CacheInvalidationService cacheInvalidationService
 	) {
 		this.keycloakAdapter = keycloakAdapter;
 		this.realmResource = keycloakAdapter.getClient();
 		this.userPrincipal = userPrincipal;
 		this.smsService = smsService;
+		this.cacheInvalidationService = cacheInvalidationService;
+		this.directory = new KeyCloakDirectory(
+			realmResource,
+			vacmeSettingsService.getKeycloakDirectoryPageSize(),
+			Duration.ofSeconds(vacmeSettingsService.getKeycloakDirectoryCacheTtlSeconds()));
+		cacheRegistry.register(VacmeCacheName.KEYCLOAK_GROUPS, directory.getGroupCache());
+		cacheRegistry.register(VacmeCacheName.KEYCLOAK_GROUP_MEMBERS, directory.getGroupMemberCache());
+		cacheRegistry.register(VacmeCacheName.KEYCLOAK_ROLE_MEMBERS, directory.getRoleMemberCache());
+		cacheRegistry.register(VacmeCacheName.KEYCLOAK_USERS, directory.getUserCache());
 	}
 
 	public boolean createGroup(@NonNull @NotNull String groupName) {
@@ -103,6 +122,7 @@ public class KeyCloakService {
 			LOG.error("Gruppe {} konnte nicht erstellt werden. Status {}", groupName, add.getStatus());
 			return false;
 		}
+		cacheInvalidationService.invalidateAll(VacmeCacheName.KEYCLOAK_GROUPS);
 		return true;
 	}
 
@@ -226,7 +246,9 @@ public class KeyCloakService {
 		mapFieldsToKeycloakUser(userJax, updateUser);
 
 		userResourceToUpdate.update(updateUser);
-		keyCloakUserJax = mapKeycloakUserToJax(updateUser, usersRessource);
+		// Name, Email etc. stehen auch in den Mitgliederlisten der Gruppen und Rollen
+		invalidateDirectoryEntriesOfUser(userResourceToUpdate, updateUser.getUsername());
+		keyCloakUserJax = mapKeycloakUserToJax(updateUser);
 
 		// Join Role
 		if (userJax.getFachRolle() != null) {
@@ -252,6 +274,7 @@ public class KeyCloakService {
 
 				userResourceToUpdate.roles().realmLevel()
 					.add(Arrays.asList(roleRepresentation));
+				invalidateRoleMembers(userJax.getFachRolle().getKeyCloakRoleName());
 			}
 		}
 
@@ -294,6 +317,8 @@ public class KeyCloakService {
 
 		String userId = CreatedResponseUtil.getCreatedId(response);
 		userJax.setId(userId);
+		// ein vorher nicht gefundener Username koennte als leeres Resultat gecacht sein
+		cacheInvalidationService.invalidate(VacmeCacheName.KEYCLOAK_USERS, user.getUsername());
 
 		keyCloakUserJax = setDefaultPassword(userJax, true);
 
@@ -308,6 +333,7 @@ public class KeyCloakService {
 
 			userResourceToUpdate.roles().realmLevel()
 				.add(Arrays.asList(roleRepresentation));
+			invalidateRoleMembers(roleRepresentation.getName());
 		}
 
 		return keyCloakUserJax;
@@ -369,6 +395,7 @@ public class KeyCloakService {
 			);
 
 		userResource.joinGroup(groupRepresentation.getId());
+		invalidateGroupMembers(groupName);
 
 		LOG.info("User with userId {} added to group {}", id, groupName);
 	}
@@ -385,6 +412,7 @@ public class KeyCloakService {
 			);
 
 		userResource.leaveGroup(groupRepresentation.getId());
+		invalidateGroupMembers(groupName);
 
 		LOG.info("User with userId {} removed from group {}", id, groupName);
 	}
@@ -397,6 +425,7 @@ public class KeyCloakService {
 		final boolean inverse = !userRepresentation.isEnabled();
 		userRepresentation.setEnabled(inverse);
 		userResource.update(userRepresentation);
+		invalidateDirectoryEntriesOfUser(userResource, userRepresentation.getUsername());
 
 		LOG.info("Set enabled to {} for user with userId {} ", inverse, userRepresentation.getId());
 		return userRepresentation;
@@ -405,6 +434,8 @@ public class KeyCloakService {
 	public void removeUser(@NonNull @NotNull String id) {
 		UsersResource usersRessource = realmResource.users();
 		UserResource userResource = usersRessource.get(id);
+		// Gruppen und Rollen muessen vor dem Loeschen gelesen werden
+		invalidateDirectoryEntriesOfUser(userResource, userResource.toRepresentation().getUsername());
 		userResource.remove();
 		LOG.info("Removed user with userId {}", id);
 	}
@@ -420,6 +451,7 @@ public class KeyCloakService {
 		// Assign realm role tester to user
 		userResource.roles().realmLevel() //
 			.add(Arrays.asList(roleRepresentation));
+		invalidateRoleMembers(roleName);
 
 		LOG.info("User with userId {} added to role {}", id, roleName);
 	}
@@ -435,23 +467,24 @@ public class KeyCloakService {
 		// Assign realm role tester to user
 		userResource.roles().realmLevel() //
 			.remove(Arrays.asList(roleRepresentation));
+		invalidateRoleMembers(roleName);
 
 		LOG.info("User with userId {} removed from role {}", id, roleName);
 	}
 
 	public List<OdiUserJax> getUsersInGroup(@NonNull @NotNull String groupeName, boolean includeDisabled, int first, int max) {
 
-		UsersResource usersRessource = realmResource.users();
-
-		final GroupRepresentation groupRepresentation =
-			realmResource.groups().groups().stream()
-				.filter(currGrp -> currGrp.getName().equals(groupeName)).findFirst()
-				.orElseThrow(() -> AppValidationMessage.KC_GROUP_DOES_NOT_EXIST.create(groupeName));
+		if (directory.findGroup(groupeName).isEmpty()) {
+			throw AppValidationMessage.KC_GROUP_DOES_NOT_EXIST.create(groupeName);
+		}
 
+		// Wie bisher bei members(first, max) wird zuerst die Seite geschnitten und erst danach gefiltert
 		final List<OdiUserJax> userInGroup =
-			realmResource.groups().group(groupRepresentation.getId()).members(first, max, true).stream()
+			directory.getGroupMembers(groupeName).stream()
+				.skip(first)
+				.limit(max)
 				.filter(user -> includeDisabled || user.isEnabled())
-				.map(p -> mapKeycloakUserToJax(p, usersRessource))
+				.map(this::mapKeycloakUserToJax)
 				.collect(Collectors.toList());
 
 		LOG.debug("Found Users {} from group {}",
@@ -461,22 +494,18 @@ public class KeyCloakService {
 	}
 
 	@NotNull
-	private OdiUserJax mapKeycloakUserToJax(UserRepresentation p, UsersResource usersRessource) {
+	private OdiUserJax mapKeycloakUserToJax(UserRepresentation p) {
 
 		FachRolle fachRolleOfOdiBenutzer = null;
 
-		final UserResource userResourceToUpdate = usersRessource.get(p.getId());
-		final List<RoleRepresentation> realmMappings = userResourceToUpdate.roles().getAll().getRealmMappings();
-		if (realmMappings != null) {
-			final List<FachRolle> fachRolles = realmMappings.stream()
-				.filter(roleRepresentation -> Arrays.stream(FachRolle.values()).anyMatch(fachRolle -> fachRolle.getKeyCloakRoleName().equals(roleRepresentation.getName())))
-				.map(roleRepresentation -> FachRolle.fromKeyCloakRoleName(roleRepresentation.getName()))
-				.collect(Collectors.toList());
-			if (fachRolles.size() == 1) {
-				fachRolleOfOdiBenutzer = (fachRolles.get(0));
-			} else {
-				LOG.error("Ungueltige Anzahl fachliche Rollen {}, for user: {}", fachRolles.size(), p.getUsername());
-			}
+		// Die Rollen werden nicht pro Benutzer abgefragt sondern in den Mitgliederlisten der Fachrollen nachgeschaut
+		final List<FachRolle> fachRolles = Arrays.stream(FachRolle.values())
+			.filter(fachRolle -> directory.isUserInRole(p.getId(), fachRolle.getKeyCloakRoleName()))
+			.collect(Collectors.toList());
+		if (fachRolles.size() == 1) {
+			fachRolleOfOdiBenutzer = (fachRolles.get(0));
+		} else {
+			LOG.error("Ungueltige Anzahl fachliche Rollen {}, for user: {}", fachRolles.size(), p.getUsername());
 		}
 
 		final OdiUserJax odiUserJax = new OdiUserJax(p.getId(), p.getUsername(), p.isEnabled(), p.getFirstName(), p.getLastName(), p.getEmail(),
@@ -486,9 +515,8 @@ public class KeyCloakService {
 	}
 
 	public Optional<String> getGlnNummerOfUser(@NonNull String userName) {
-		UsersResource usersRessource = realmResource.users();
-		UserRepresentation userRep = usersRessource.search(userName, true).stream()
-			.findFirst().orElseThrow(() -> AppValidationMessage.KC_USER_DOES_NOT_EXIST.create(userName));
+		UserRepresentation userRep = directory.findUserByUsername(userName)
+			.orElseThrow(() -> AppValidationMessage.KC_USER_DOES_NOT_EXIST.create(userName));
 		String attribute = getAttribute(userRep, GLNNUMMER);
 		return Optional.ofNullable(attribute);
 	}
@@ -526,8 +554,6 @@ public class KeyCloakService {
 	 */
 	public OdiUserJax getUserByGroupAndUsername(@NonNull String username, @NonNull String groupName) {
 
-		UsersResource usersRessource = realmResource.users();
-
 		UserRepresentation userRep = findUserByUsername(username)
 			.orElseThrow(() -> AppValidationMessage.KC_USER_DOES_NOT_EXIST.create(username));
 
@@ -539,7 +565,7 @@ public class KeyCloakService {
 			throw AppValidationMessage.KC_USER_DOES_NOT_EXIST.create(username);
 		}
 		OdiUserJax keyCloakUserJax;
-		keyCloakUserJax = mapKeycloakUserToJax(userRep, usersRessource);
+		keyCloakUserJax = mapKeycloakUserToJax(userRep);
 
 		return keyCloakUserJax;
 	}
@@ -554,15 +580,11 @@ public class KeyCloakService {
 
 	@NonNull
 	public Optional<GroupRepresentation> findGroup(@NonNull @NotNull String groupName) {
-		return realmResource.groups().groups(0, Constants.MAX_KEYCLOAK_RESULTS).stream()
-			.filter(currGroup -> currGroup.getName().equals(groupName)).findFirst();
+		return directory.findGroup(groupName);
 	}
 
 	public List<OdiUserDisplayNameJax> getUserInRole(FachRolle fachRolle) {
-
-		final RolesResource roles = realmResource.roles();
-
-		return roles.get(fachRolle.getKeyCloakRoleName()).getRoleUserMembers(0, Constants.MAX_KEYCLOAK_RESULTS).stream()
+		return directory.getRoleMembers(fachRolle.getKeyCloakRoleName()).stream()
 			.filter(UserRepresentation::isEnabled)
 			.map(p -> new OdiUserDisplayNameJax(p.getId(), p.getUsername(), p.getFirstName(), p.getLastName(), p.getEmail()))
 			.sorted(Comparator.comparing(OdiUserDisplayNameJax::getFirstName, String.CASE_INSENSITIVE_ORDER).thenComparing(OdiUserDisplayNameJax::getLastName, String.CASE_INSENSITIVE_ORDER))
@@ -571,16 +593,17 @@ public class KeyCloakService {
 
 	public List<OdiUserDisplayNameJax> getUsersInRoleAndGroup(@NonNull FachRolle fachRolle, @NonNull String groupeName) {
 
-		final RolesResource roles = realmResource.roles();
-
-		final List<OdiUserJax> userFromGroup = getUsersInGroup(groupeName, false, 0, Constants.MAX_KEYCLOAK_RESULTS);
+		if (directory.findGroup(groupeName).isEmpty()) {
+			throw AppValidationMessage.KC_GROUP_DOES_NOT_EXIST.create(groupeName);
+		}
+		final Set<String> userIdsFromGroup = directory.getGroupMembers(groupeName).stream()
+			.filter(UserRepresentation::isEnabled)
+			.map(UserRepresentation::getId)
+			.collect(Collectors.toSet());
 
 		// User in Role must be in KeyCloak Group
-		return roles.get(fachRolle.getKeyCloakRoleName()).getRoleUserMembers(0, Constants.MAX_KEYCLOAK_RESULTS).stream()
-			.filter(userRepresentation -> userRepresentation.isEnabled() && userFromGroup.stream().anyMatch(odiUserJax -> {
-				assert odiUserJax.getId() != null;
-				return odiUserJax.getId().equals(userRepresentation.getId());
-			}))
+		return directory.getRoleMembers(fachRolle.getKeyCloakRoleName()).stream()
+			.filter(userRepresentation -> userRepresentation.isEnabled() && userIdsFromGroup.contains(userRepresentation.getId()))
 			.map(p -> new OdiUserDisplayNameJax(p.getId(), p.getUsername(), p.getFirstName(), p.getLastName(), p.getEmail()))
 			.sorted(Comparator.comparing(OdiUserDisplayNameJax::getFirstName, String.CASE_INSENSITIVE_ORDER).thenComparing(OdiUserDisplayNameJax::getLastName, String.CASE_INSENSITIVE_ORDER))
 			.collect(Collectors.toList());
@@ -603,6 +626,7 @@ public class KeyCloakService {
 		listOfTimestamps.add(DateUtil.FILENAME_DATETIME_PATTERN.apply(Locale.GERMAN).format(LocalDateTime.now()));
 		userRep.getAttributes().put(DISABLED_DUE_TO_INACTIVITY_TS, listOfTimestamps);
 		usersRessource.get(userId).update(userRep);
+		invalidateDirectoryEntriesOfUser(usersRessource.get(userId), userRep.getUsername());
 	}
 
 	public void removeVacmeRolesFromUser(@NonNull String userId) {
@@ -611,5 +635,23 @@ public class KeyCloakService {
 			.filter(this::isVacmeRole)
 			.collect(Collectors.toList());
 		userResource.roles().realmLevel().remove(roleRepresentations);
+		roleRepresentations.forEach(role -> invalidateRoleMembers(role.getName()));
+	}
+
+	private void invalidateGroupMembers(@NonNull String groupName) {
+		cacheInvalidationService.invalidate(VacmeCacheName.KEYCLOAK_GROUP_MEMBERS, groupName);
+	}
+
+	private void invalidateRoleMembers(@NonNull String roleName) {
+		cacheInvalidationService.invalidate(VacmeCacheName.KEYCLOAK_ROLE_MEMBERS, roleName);
+	}
+
+	/**
+	 * Invalidiert den Benutzer selber sowie alle Gruppen- und Rollenlisten, in welchen er vorkommt.
+	 */
+	private void invalidateDirectoryEntriesOfUser(@NonNull UserResource userResource, @NonNull String username) {
+		cacheInvalidationService.invalidate(VacmeCacheName.KEYCLOAK_USERS, username);
+		userResource.groups().forEach(group -> invalidateGroupMembers(group.getName()));
+		userResource.roles().realmLevel().listAll().forEach(role -> invalidateRoleMembers(role.getName()));
 	}
 }
@@ -63,6 +63,7 @@ import ch.dvbern.oss.vacme.service.booster.BoosterService;
 import ch.dvbern.oss.vacme.service.boosterprioritaet.BoosterPrioUtil;
 import ch.dvbern.oss.vacme.service.d3api.D3ApiService;
 import ch.dvbern.oss.vacme.service.impfinformationen.ImpfinformationenService;
+import ch.dvbern.oss.vacme.service.tagesstatistik.OdiTagesStatistikService;
 import ch.dvbern.oss.vacme.service.vmdl.VMDLServiceAbstract;
 import ch.dvbern.oss.vacme.service.vmdl.VMDLServiceFactory;
 import ch.dvbern.oss.vacme.shared.errors.AppFailureException;
@@ -102,6 +103,7 @@ public class KorrekturService {
 	private final ImpfdossierService impfdossierService;
 	private final ImpfinformationenService impfinformationenService;
 	private final D3ApiService d3ApiService;
+	private final OdiTagesStatistikService odiTagesStatistikService;
 
 	public void impfungKorrigieren(
 		@NonNull ImpfungKorrekturJax korrekturJax,
@@ -649,6 +651,9 @@ public class KorrekturService {
 			ortDerImpfung,
 			korrekturJax.getTerminTime());
 
+		// Die bisherigen Tage des Termins und der Impfung muessen in der Tagesstatistik neu berechnet werden
+		odiTagesStatistikService.onImpfungGeaendert(impfung);
+
 		// Wir rufen hier die Methode direkt auf, um die Validierung zu umgehen dass kein Termin freigegeben wird der
 		// eine Impfung  hat!
 		impftermin.setGebuchtFromImpfterminRepo(false);
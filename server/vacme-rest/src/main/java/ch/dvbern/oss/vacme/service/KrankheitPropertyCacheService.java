@@ -24,6 +24,8 @@ import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
 
 import ch.dvbern.oss.vacme.entities.types.KrankheitIdentifier;
+import ch.dvbern.oss.vacme.service.cache.CacheRegistry;
+import ch.dvbern.oss.vacme.service.cache.VacmeCacheName;
 import ch.dvbern.oss.vacme.util.CacheUtil;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
@@ -44,6 +46,7 @@ public class KrankheitPropertyCacheService {
 
 	private final KrankheitService krankheitService;
 	private final VacmeSettingsService vacmeSettingsService;
+	private final CacheRegistry cacheRegistry;
 
 	private LoadingCache<KrankheitIdentifier, Boolean> noTerminCache;
 
@@ -66,7 +69,9 @@ public class KrankheitPropertyCacheService {
 				"vacme.cache.no.freietermine.ttl.sconds",
 				vacmeSettingsService.getNoFreieTermineCacheTimeToLive()), TimeUnit.SECONDS)
 			.maximumSize(10)
+			.recordStats()
 			.build(loader);
+		cacheRegistry.register(VacmeCacheName.KRANKHEIT_NO_FREIE_TERMINE, noTerminCache);
 	}
 
 	public boolean noFreieTermin(@NonNull KrankheitIdentifier krankheit) {
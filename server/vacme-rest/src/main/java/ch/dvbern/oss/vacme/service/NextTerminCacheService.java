@@ -19,19 +19,27 @@ package ch.dvbern.oss.vacme.service;
 
 import java.time.LocalDateTime;
 import java.util.Optional;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 
 import javax.annotation.PostConstruct;
 import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
+import javax.enterprise.event.TransactionPhase;
 import javax.inject.Inject;
 
 import ch.dvbern.oss.vacme.entities.base.ID;
 import ch.dvbern.oss.vacme.entities.impfen.Impffolge;
 import ch.dvbern.oss.vacme.entities.terminbuchung.OrtDerImpfung;
 import ch.dvbern.oss.vacme.entities.types.KrankheitIdentifier;
+import ch.dvbern.oss.vacme.service.cache.CacheRegistry;
+import ch.dvbern.oss.vacme.service.cache.VacmeCacheName;
+import ch.dvbern.oss.vacme.service.terminindex.FreieTermineChangedEvent;
+import ch.dvbern.oss.vacme.service.terminindex.FreieTermineIndexKey;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
+import io.smallrye.mutiny.infrastructure.Infrastructure;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.checkerframework.checker.nullness.qual.NonNull;
@@ -41,6 +49,14 @@ import org.eclipse.microprofile.config.ConfigProvider;
 import org.graalvm.collections.Pair;
 import org.jetbrains.annotations.NotNull;
 
+/**
+ * Cache fuer den naechsten freien Termin pro ODI (und Krankheit), wie er im Portal angezeigt wird.
+ * <p>
+ * Die Eintraege werden nach vacme.cache.nextfrei.ttl.sconds beim naechsten Zugriff asynchron neu geladen
+ * (refreshAfterWrite), bis dahin wird der bisherige Wert zurueckgegeben. Zusaetzlich wird ein Eintrag sofort
+ * (ebenfalls asynchron) neu geladen, sobald auf diesem Node ein Termin des ODI erstellt, geloescht, gebucht,
+ * freigegeben oder reserviert wurde. Ein Leser muss also nur beim allerersten Zugriff auf die DB warten.
+ */
 @ApplicationScoped
 @Slf4j
 @RequiredArgsConstructor(onConstructor_ = @Inject)
@@ -48,8 +64,14 @@ public class NextTerminCacheService {
 
 	public static final String DEFAULT_CACHE_TIME = "60";
 
+	/**
+	 * Ein Eintrag, der so lange nicht mehr gelesen (und darum auch nicht mehr refreshed) wurde, wird verworfen
+	 */
+	private static final long MAX_AGE_IN_TTL = 10;
+
 	private final OrtDerImpfungService ortDerImpfungService;
 	private final VacmeSettingsService vacmeSettingsService;
+	private final CacheRegistry cacheRegistry;
 
 	private LoadingCache<ID<OrtDerImpfung>, Optional<LocalDateTime>> nextFreeErstimpfungSlotByOdiCache;
 	private LoadingCache<ID<OrtDerImpfung>, Optional<LocalDateTime>> nextFreeZweitimpfungSlotByOdiCache;
@@ -65,8 +87,8 @@ public class NextTerminCacheService {
 		loaderForNextSlotWithFreeT1 = new CacheLoader<>() {
 			@Override
 			public Optional<LocalDateTime> load(@NonNull ID<OrtDerImpfung> ortDerImpfungId) {
-				LocalDateTime nextFreierImpftermin = ortDerImpfungService.getNextFreierImpftermin(ortDerImpfungId,
-					Impffolge.ERSTE_IMPFUNG, null, false, KrankheitIdentifier.COVID);
+				LocalDateTime nextFreierImpftermin = ortDerImpfungService.getNextFreierImpfterminFuerPortal(
+					ortDerImpfungId, Impffolge.ERSTE_IMPFUNG, KrankheitIdentifier.COVID);
 				return Optional.ofNullable(nextFreierImpftermin);
 			}
 		};
@@ -75,38 +97,54 @@ public class NextTerminCacheService {
 		loaderForNextSlotWithFreeT2 = new CacheLoader<>() {
 			@Override
 			public Optional<LocalDateTime> load(ID<OrtDerImpfung> ortDerImpfungId) {
-				LocalDateTime nextFreierImpftermin2 = ortDerImpfungService.getNextFreierImpftermin(ortDerImpfungId,
-					Impffolge.ZWEITE_IMPFUNG, null, false, KrankheitIdentifier.COVID);
+				LocalDateTime nextFreierImpftermin2 = ortDerImpfungService.getNextFreierImpfterminFuerPortal(
+					ortDerImpfungId, Impffolge.ZWEITE_IMPFUNG, KrankheitIdentifier.COVID);
 				return Optional.ofNullable(nextFreierImpftermin2);
 			}
 		};
 
-		CacheLoader<? super Pair<ID<OrtDerImpfung>, KrankheitIdentifier>, Optional<LocalDateTime>>
+		CacheLoader<Pair<ID<OrtDerImpfung>, KrankheitIdentifier>, Optional<LocalDateTime>>
 			loaderForNextSlotWithFreeTerminN;
 		loaderForNextSlotWithFreeTerminN = new CacheLoader<>() {
 			@Override
 			public @NotNull Optional<LocalDateTime> load(@NonNull Pair<ID<OrtDerImpfung>, KrankheitIdentifier> key) {
-				LocalDateTime nextFreierImpfterminN = ortDerImpfungService.getNextFreierImpftermin(key.getLeft(),
-					Impffolge.BOOSTER_IMPFUNG, null, false, key.getRight());
+				LocalDateTime nextFreierImpfterminN = ortDerImpfungService.getNextFreierImpfterminFuerPortal(
+					key.getLeft(), Impffolge.BOOSTER_IMPFUNG, key.getRight());
 				return Optional.ofNullable(nextFreierImpfterminN);
 			}
 		};
 
 		// cache Settings
-		nextFreeErstimpfungSlotByOdiCache = CacheBuilder.newBuilder()
-			.expireAfterWrite(getConfiguredTTL(), TimeUnit.SECONDS)
-			.maximumSize(1000)
-			.build(loaderForNextSlotWithFreeT1);
-
-		nextFreeZweitimpfungSlotByOdiCache = CacheBuilder.newBuilder()
-			.expireAfterWrite(getConfiguredTTL(), TimeUnit.SECONDS)
-			.maximumSize(1000)
-			.build(loaderForNextSlotWithFreeT2);
+		final long ttl = getConfiguredTTL();
+		nextFreeErstimpfungSlotByOdiCache = buildCache(ttl, loaderForNextSlotWithFreeT1);
+		nextFreeZweitimpfungSlotByOdiCache = buildCache(ttl, loaderForNextSlotWithFreeT2);
+		nextFreeNImpfungSlotByOdiAndKrankheitCache = buildCache(ttl, loaderForNextSlotWithFreeTerminN);
+
+		cacheRegistry.register(VacmeCacheName.NEXT_FREIER_TERMIN_ERSTIMPFUNG, nextFreeErstimpfungSlotByOdiCache);
+		cacheRegistry.register(VacmeCacheName.NEXT_FREIER_TERMIN_ZWEITIMPFUNG, nextFreeZweitimpfungSlotByOdiCache);
+		cacheRegistry.register(VacmeCacheName.NEXT_FREIER_TERMIN_N, nextFreeNImpfungSlotByOdiAndKrankheitCache);
+	}
 
-		nextFreeNImpfungSlotByOdiAndKrankheitCache = CacheBuilder.newBuilder()
-			.expireAfterWrite(getConfiguredTTL(), TimeUnit.SECONDS)
+	@NonNull
+	private <K> LoadingCache<K, Optional<LocalDateTime>> buildCache(
+		long ttl,
+		@NonNull CacheLoader<K, Optional<LocalDateTime>> loader
+	) {
+		if (ttl <= 0) {
+			// Cache ausgeschaltet: jeder Zugriff laedt direkt aus der DB
+			return CacheBuilder.newBuilder()
+				.expireAfterWrite(0, TimeUnit.SECONDS)
+				.recordStats()
+				.build(loader);
+		}
+		// Neu laden passiert im Worker-Pool, der Leser erhaelt in der Zwischenzeit den bisherigen Wert
+		final Executor reloadExecutor = Infrastructure.getDefaultWorkerPool();
+		return CacheBuilder.newBuilder()
+			.refreshAfterWrite(ttl, TimeUnit.SECONDS)
+			.expireAfterWrite(ttl * MAX_AGE_IN_TTL, TimeUnit.SECONDS)
 			.maximumSize(1000)
-			.build(loaderForNextSlotWithFreeTerminN);
+			.recordStats()
+			.build(CacheLoader.asyncReloading(loader, reloadExecutor));
 	}
 
 	private long getConfiguredTTL() {
@@ -127,6 +165,37 @@ public class NextTerminCacheService {
 		}
 	}
 
+	/**
+	 * Die freien Termine eines ODI haben geaendert: Der betroffene Eintrag wird asynchron neu geladen, sofern er
+	 * ueberhaupt im Cache ist. Eintraege von ODIs ohne Aenderung bleiben unberuehrt.
+	 */
+	void onFreieTermineChanged(@Observes(during = TransactionPhase.AFTER_SUCCESS) FreieTermineChangedEvent event) {
+		final FreieTermineIndexKey key = event.getKey();
+		final ID<OrtDerImpfung> ortDerImpfungId = OrtDerImpfung.toId(key.getOdiId());
+		switch (key.getImpffolge()) {
+		case ERSTE_IMPFUNG:
+			if (key.getKrankheit() == KrankheitIdentifier.COVID) {
+				refreshIfPresent(nextFreeErstimpfungSlotByOdiCache, ortDerImpfungId);
+			}
+			break;
+		case ZWEITE_IMPFUNG:
+			if (key.getKrankheit() == KrankheitIdentifier.COVID) {
+				refreshIfPresent(nextFreeZweitimpfungSlotByOdiCache, ortDerImpfungId);
+			}
+			break;
+		case BOOSTER_IMPFUNG:
+			refreshIfPresent(nextFreeNImpfungSlotByOdiAndKrankheitCache, Pair.create(ortDerImpfungId, key.getKrankheit()));
+			break;
+		}
+	}
+
+	private <K> void refreshIfPresent(@NonNull LoadingCache<K, Optional<LocalDateTime>> cache, @NonNull K key) {
+		if (cache.asMap().containsKey(key)) {
+			// laeuft bereits ein Refresh fuer diesen Key, wird kein weiterer gestartet
+			cache.refresh(key);
+		}
+	}
+
 	@Nullable
 	public LocalDateTime getNextFreierImpfterminThroughCache(
 		@NonNull ID<OrtDerImpfung> ortDerImpfungId,
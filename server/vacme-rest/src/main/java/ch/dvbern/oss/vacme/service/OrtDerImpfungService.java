@@ -32,6 +32,7 @@ import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.context.control.ActivateRequestContext;
 import javax.inject.Inject;
 
 import ch.dvbern.oss.vacme.entities.UserPrincipal;
@@ -133,6 +134,42 @@ public class OrtDerImpfungService {
 		@Nullable LocalDateTime otherTerminDate,
 		boolean limitMaxFutureDate,
 		@NonNull KrankheitIdentifier krankheit
+	) {
+		// Wir wollen fruehestens ab morgen (auch wenn aufgrund des anderen Termins ein frueheres Min-Datum verlangt wuerde)
+		// Aus der Fachapplikation soll die Buchung jedoch bereits ab heute möglich sein
+		final boolean includeSameDayTermine = !this.userPrincipal.isPortalUser();
+		return getNextFreierImpftermin(
+			ortDerImpfungId,
+			impffolge,
+			otherTerminDate,
+			limitMaxFutureDate,
+			krankheit,
+			includeSameDayTermine);
+	}
+
+	/**
+	 * Sucht den naechsten freien Termin so, wie er im Portal angezeigt wird (ohne anderen Termin, ohne Termine von
+	 * heute). Da der eingeloggte Benutzer hier keine Rolle spielt, kann die Methode auch ausserhalb eines Requests
+	 * aufgerufen werden, z.B. beim asynchronen Nachladen des {@link NextTerminCacheService}.
+	 */
+	@Nullable
+	@ActivateRequestContext
+	public LocalDateTime getNextFreierImpfterminFuerPortal(
+		@NonNull ID<OrtDerImpfung> ortDerImpfungId,
+		@NonNull Impffolge impffolge,
+		@NonNull KrankheitIdentifier krankheit
+	) {
+		return getNextFreierImpftermin(ortDerImpfungId, impffolge, null, false, krankheit, false);
+	}
+
+	@Nullable
+	private LocalDateTime getNextFreierImpftermin(
+		@NonNull ID<OrtDerImpfung> ortDerImpfungId,
+		@NonNull Impffolge impffolge,
+		@Nullable LocalDateTime otherTerminDate,
+		boolean limitMaxFutureDate,
+		@NonNull KrankheitIdentifier krankheit,
+		boolean includeSameDayTermine
 	) {
 		OrtDerImpfung ortDerImpfung = ortDerImpfungRepo
 			.getById(ortDerImpfungId)
@@ -148,9 +185,6 @@ public class OrtDerImpfungService {
 				}
 			}
 
-			// Wir wollen fruehestens ab morgen (auch wenn aufgrund des anderen Termins ein frueheres Min-Datum verlangt wuerde)
-			// Aus der Fachapplikation soll die Buchung jedoch bereits ab heute möglich sein
-			final boolean includeSameDayTermine = !this.userPrincipal.isPortalUser();
 			LocalDate stichtagMinDate = LocalDate.now();
 			if (minDate == null || minDate.isBefore(stichtagMinDate)) {
 				minDate = stichtagMinDate;
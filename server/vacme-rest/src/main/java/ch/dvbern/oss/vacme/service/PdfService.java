@@ -19,8 +19,18 @@ package ch.dvbern.oss.vacme.service;
 
 import java.io.ByteArrayOutputStream;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 import javax.annotation.Nonnull;
+import javax.annotation.PreDestroy;
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
 
@@ -52,9 +62,19 @@ import org.checkerframework.checker.nullness.qual.Nullable;
 @RequiredArgsConstructor(onConstructor_ = @Inject)
 public class PdfService {
 
+	// Ein Brief ist typischerweise zwischen 50 und 150 KB gross
+	private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
 	private final KrankheitService krankheitService;
 	private final VacmeSettingsService vacmeSettingsService;
 
+	// Begrenzt die gleichzeitig gerenderten PDFs (Requests und Batches zusammen), damit an Spitzentagen nicht alle
+	// CPUs mit dem Rendern von Bestaetigungen beschaeftigt sind
+	@Nullable
+	private Semaphore renderPermits;
+	@Nullable
+	private ExecutorService batchExecutor;
+
 	@Nonnull
 	public byte[] createRegistrationsbestaetigung(@Nonnull Registrierung registrierung) {
 		RegistrationsbestaetigungPdfGenerator pdfGenerator =
@@ -130,17 +150,99 @@ public class PdfService {
 		return generateDokument(pdfGenerator);
 	}
 
+	/**
+	 * Erstellt die Onboarding-Briefe parallel. Die Reihenfolge der Resultate entspricht derjenigen der Onboardings.
+	 */
+	@Nonnull
+	public List<byte[]> createOnboardingLetters(@Nonnull List<Onboarding> onboardings) {
+		// Die Generatoren werden im aufrufenden Thread erstellt, da dieser die Transaktion haelt
+		List<VacmePdfGenerator> pdfGenerators = onboardings.stream()
+			.map(onboarding -> new OnboardingPdfGenerator(onboarding.getRegistrierung(), onboarding.getCode()))
+			.collect(Collectors.toList());
+		return generateDokumente(pdfGenerators);
+	}
+
+	/**
+	 * Rendert mehrere Dokumente parallel auf einem begrenzten Thread-Pool. Die Generatoren duerfen beim Rendern nur
+	 * noch auf bereits geladene Daten zugreifen, da das Rendern nicht im Thread der Transaktion stattfindet.
+	 */
+	@Nonnull
+	List<byte[]> generateDokumente(@Nonnull List<VacmePdfGenerator> pdfGenerators) throws AppFailureException {
+		if (pdfGenerators.size() <= 1) {
+			return pdfGenerators.stream().map(this::generateDokument).collect(Collectors.toList());
+		}
+		ExecutorService executor = getBatchExecutor();
+		List<Future<byte[]>> futures = new ArrayList<>(pdfGenerators.size());
+		for (VacmePdfGenerator pdfGenerator : pdfGenerators) {
+			futures.add(executor.submit(() -> generateDokument(pdfGenerator)));
+		}
+		List<byte[]> result = new ArrayList<>(futures.size());
+		try {
+			for (Future<byte[]> future : futures) {
+				result.add(future.get());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new AppFailureException("Die Generierung der Dokumente wurde unterbrochen", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof AppFailureException) {
+				throw (AppFailureException) e.getCause();
+			}
+			throw new AppFailureException("Bei der Generierung der Dokumente ist ein Fehler aufgetreten", e.getCause());
+		} finally {
+			futures.forEach(future -> future.cancel(true));
+		}
+		return result;
+	}
+
 	@Nonnull
 	private byte[] generateDokument(
 		@Nonnull VacmePdfGenerator pdfGenerator) throws AppFailureException {
 
-		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		Semaphore permits = getRenderPermits();
 		try {
+			permits.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new AppFailureException("Die Generierung des Dokuments wurde unterbrochen", e);
+		}
+		try {
+			ByteArrayOutputStream baos = new ByteArrayOutputStream(INITIAL_BUFFER_SIZE);
 			pdfGenerator.generate(baos);
-			byte[] content = baos.toByteArray();
-			return content;
+			return baos.toByteArray();
 		} catch (InvoiceGeneratorException e) {
 			throw new AppFailureException("Bei der Generierung des Dokuments ist ein Fehler aufgetreten", e);
+		} finally {
+			permits.release();
+		}
+	}
+
+	@NonNull
+	private synchronized Semaphore getRenderPermits() {
+		if (renderPermits == null) {
+			renderPermits = new Semaphore(vacmeSettingsService.getPdfRenderParallelism(), true);
+		}
+		return renderPermits;
+	}
+
+	@NonNull
+	private synchronized ExecutorService getBatchExecutor() {
+		if (batchExecutor == null) {
+			AtomicInteger threadCounter = new AtomicInteger();
+			batchExecutor = Executors.newFixedThreadPool(vacmeSettingsService.getPdfRenderParallelism(), runnable -> {
+				Thread thread = new Thread(runnable, "vacme-pdf-render-" + threadCounter.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		return batchExecutor;
+	}
+
+	@PreDestroy
+	synchronized void shutdown() {
+		if (batchExecutor != null) {
+			batchExecutor.shutdownNow();
+			batchExecutor = null;
 		}
 	}
 
@@ -17,12 +17,13 @@
 
 package ch.dvbern.oss.vacme.service;
 
-import java.text.Normalizer;
 import java.time.LocalDate;
 import java.time.ZoneId;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
 import java.util.stream.Collectors;
@@ -32,21 +33,22 @@ import javax.inject.Inject;
 
 import ch.dvbern.oss.vacme.entities.UserPrincipal;
 import ch.dvbern.oss.vacme.entities.benutzer.Benutzer;
-import ch.dvbern.oss.vacme.entities.impfen.Impfdossier;
 import ch.dvbern.oss.vacme.entities.registration.Registrierung;
-import ch.dvbern.oss.vacme.entities.terminbuchung.OrtDerImpfung;
 import ch.dvbern.oss.vacme.entities.types.BenutzerRolle;
 import ch.dvbern.oss.vacme.entities.zertifikat.Zertifikat;
 import ch.dvbern.oss.vacme.jax.PersonalienSucheJax;
 import ch.dvbern.oss.vacme.repo.ImpfdossierRepo;
-import ch.dvbern.oss.vacme.repo.ImpfterminRepo;
 import ch.dvbern.oss.vacme.repo.RegistrierungRepo;
+import ch.dvbern.oss.vacme.service.personaliensuche.PersonalienSuchschluessel;
+import ch.dvbern.oss.vacme.service.personaliensuche.RegistrierungSuchindexService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.checkerframework.checker.nullness.qual.NonNull;
 
 /**
- * Dieser Service ermoeglicht es Personen nach Name, Vorname, Geburtsdatum zu suchen
+ * Dieser Service ermoeglicht es Personen nach Name, Vorname, Geburtsdatum zu suchen. Wenn der
+ * RegistrierungSuchindex aktuell ist, werden nur die Kandidaten aus dem Index geladen, sonst alle Registrierungen
+ * mit dem Geburtsdatum. Die Namen werden in beiden Faellen hier geprueft.
  */
 @ApplicationScoped
 @Slf4j
@@ -57,19 +59,16 @@ public class PersonalienSucheService {
 	private final ImpfdossierRepo impfdossierRepo;
 	private final ZertifikatService zertifikatService;
 	private final UserPrincipal userPrincipal;
-	private final ImpfterminRepo impfterminRepo;
+	private final RegistrierungSuchindexService registrierungSuchindexService;
 
 	/**
 	 * Diese Suche ist sehr grosszuegig. Wichtig ist hier, dass das Callcenter keine Reg-Codes erhaelt, sondern nur die Reg-UUID (fuer Adressaenderungen)
 	 */
 	@NonNull
 	public Set<Registrierung> suchen(@NonNull String vorname, @NonNull String name, @NonNull Date geburtsdatum) {
-		LocalDate geburtsdatumLocalDate = LocalDate.ofInstant(geburtsdatum.toInstant(), ZoneId.systemDefault());
-		List<PersonalienSucheJax> sucheJaxes = registrierungRepo.findRegistrierungByGeburtsdatumGeimpft(geburtsdatumLocalDate);
+		List<PersonalienSucheJax> sucheJaxes = findGeimpfteKandidaten(vorname, name, geburtsdatum);
 		List<UUID> matchingDossierIds = filterMatchingJaxes(vorname, name, sucheJaxes);
-		return matchingDossierIds.stream()
-			.map(id -> impfdossierRepo.getImpfdossier(Impfdossier.toId(id)).getRegistrierung())
-			.collect(Collectors.toSet());
+		return new HashSet<>(impfdossierRepo.findRegistrierungenOfImpfdossiers(matchingDossierIds));
 	}
 
 	/**
@@ -77,37 +76,22 @@ public class PersonalienSucheService {
 	 */
 	@NonNull
 	public Set<Registrierung> suchenFuerODI(@NonNull String vorname, @NonNull String name, @NonNull Date geburtsdatum, @NonNull Benutzer benutzer) {
-		LocalDate geburtsdatumLocalDate = LocalDate.ofInstant(geburtsdatum.toInstant(), ZoneId.systemDefault());
-		List<PersonalienSucheJax> sucheJaxes = registrierungRepo.findRegistrierungByGeburtsdatum(geburtsdatumLocalDate);
+		LocalDate geburtsdatumLocalDate = toLocalDate(geburtsdatum);
+		List<PersonalienSucheJax> sucheJaxes = registrierungSuchindexService
+			.findKandidaten(vorname, name, geburtsdatumLocalDate)
+			.map(registrierungRepo::findRegistrierungByIds)
+			.orElseGet(() -> registrierungRepo.findRegistrierungByGeburtsdatum(geburtsdatumLocalDate));
 		List<UUID> matchingIds = filterMatchingJaxes(vorname, name, sucheJaxes);
-		return matchingIds.stream()
-			.map(id -> impfdossierRepo.getImpfdossier(Impfdossier.toId(id)))
-			.filter(impfdossier -> registrierungHasTerminInODI(impfdossier, benutzer.getOrtDerImpfung()))
-			.map(Impfdossier::getRegistrierung)
-			.collect(Collectors.toSet());
-	}
-
-	private boolean registrierungHasTerminInODI(@NonNull Impfdossier impfdossier, @NonNull Set<OrtDerImpfung> odis) {
-		if (!userPrincipal.isCallerInAnyOfRole(BenutzerRolle.getOrtDerImpfungRoles())) {
-			// Nicht ODI-Rollen duerfen immer alle Regs sehen
-			return true;
-		}
-		// Termin 1?
-		if (impfdossier.getBuchung().getImpftermin1() != null &&
-			odis.contains(impfdossier.getBuchung().getImpftermin1().getImpfslot().getOrtDerImpfung())) {
-			return true;
-		}
-		// Termin 2?
-		if (impfdossier.getBuchung().getImpftermin2() != null &&
-			odis.contains(impfdossier.getBuchung().getImpftermin2().getImpfslot().getOrtDerImpfung())) {
-			return true;
+		if (userPrincipal.isCallerInAnyOfRole(BenutzerRolle.getOrtDerImpfungRoles())) {
+			// ODI-Rollen sehen nur Regs mit Termin (1, 2 oder Booster) oder gewuenschtem ODI in ihren ODIs
+			Set<UUID> sichtbareIds = impfdossierRepo.findImpfdossierIdsWithTerminOrGewuenschterOdiIn(
+				matchingIds, benutzer.getOrtDerImpfung());
+			matchingIds = matchingIds.stream()
+				.filter(sichtbareIds::contains)
+				.collect(Collectors.toList());
 		}
-		// Gewuenschter ODI?
-		if (odis.contains(impfdossier.getBuchung().getGewuenschterOdi())) {
-			return true;
-		}
-		// Boostertermin?
-		return impfterminRepo.hasAnyBoosterTerminInOdis(impfdossier, odis);
+		// Nicht ODI-Rollen duerfen immer alle Regs sehen
+		return new HashSet<>(impfdossierRepo.findRegistrierungenOfImpfdossiers(matchingIds));
 	}
 
 	/**
@@ -115,13 +99,27 @@ public class PersonalienSucheService {
 	 */
 	@NonNull
 	public List<Registrierung> suchen(@NonNull String vorname, @NonNull String name, @NonNull Date geburtsdatum, @NonNull String uvci) {
-		LocalDate geburtsdatumLocalDate = LocalDate.ofInstant(geburtsdatum.toInstant(), ZoneId.systemDefault());
-		List<PersonalienSucheJax> sucheJaxes = registrierungRepo.findRegistrierungByGeburtsdatumGeimpft(geburtsdatumLocalDate);
+		List<PersonalienSucheJax> sucheJaxes = findGeimpfteKandidaten(vorname, name, geburtsdatum);
 		List<Registrierung> matchingRegistrierungen = filterMatchingJaxes(vorname, name, uvci, sucheJaxes);
 		return matchingRegistrierungen;
 
 	}
 
+	@NonNull
+	private List<PersonalienSucheJax> findGeimpfteKandidaten(@NonNull String vorname, @NonNull String name, @NonNull Date geburtsdatum) {
+		LocalDate geburtsdatumLocalDate = toLocalDate(geburtsdatum);
+		Optional<List<UUID>> kandidaten = registrierungSuchindexService.findKandidaten(vorname, name, geburtsdatumLocalDate);
+		if (kandidaten.isPresent()) {
+			return registrierungRepo.findRegistrierungByIdsGeimpft(kandidaten.get());
+		}
+		return registrierungRepo.findRegistrierungByGeburtsdatumGeimpft(geburtsdatumLocalDate);
+	}
+
+	@NonNull
+	private static LocalDate toLocalDate(@NonNull Date geburtsdatum) {
+		return LocalDate.ofInstant(geburtsdatum.toInstant(), ZoneId.systemDefault());
+	}
+
 	/**
 	 * goes through the passed list and filters it for matching vorname and name
 	 *
@@ -132,27 +130,18 @@ public class PersonalienSucheService {
 	 */
 	@NonNull
 	List<UUID> filterMatchingJaxes(@NonNull String vorname, @NonNull String name, @NonNull List<PersonalienSucheJax> dataToSearchIn) {
-		String normalizedVorname = normalizeSplitString(vorname);
-		String normalizedName = normalizeSplitString(name);
+		String normalizedVorname = PersonalienSuchschluessel.normalizeSearch(vorname);
+		String normalizedName = PersonalienSuchschluessel.normalizeSearch(name);
 		return dataToSearchIn.stream()
-			.filter(dataJax -> matchesNormalized(normalizedVorname, dataJax.getVorname()) &&
-				matchesNormalized(normalizedName, dataJax.getName()))
+			.filter(dataJax -> PersonalienSuchschluessel.matches(normalizedVorname, dataJax.getVorname()) &&
+				PersonalienSuchschluessel.matches(normalizedName, dataJax.getName()))
 			.map(PersonalienSucheJax::getImpfdossierId)
 			.collect(Collectors.toList());
 	}
 
 	List<Registrierung> filterMatchingJaxes(@NonNull String vorname, @NonNull String name, @NonNull String uvci, @NonNull List<PersonalienSucheJax> dataToSearchIn) {
-		String normalizedVorname = normalizeSplitString(vorname);
-		String normalizedName = normalizeSplitString(name);
-		return dataToSearchIn.stream()
-			.filter(dataJax -> matchesNormalized(normalizedVorname, dataJax.getVorname()) &&
-				matchesNormalized(normalizedName, dataJax.getName()))
-			.map(PersonalienSucheJax::getImpfdossierId)
-			.map(impfdossierId -> {
-				Impfdossier impfdossier = impfdossierRepo.getImpfdossier(Impfdossier.toId(impfdossierId));
-				return impfdossier.getRegistrierung();
-
-			}).collect(Collectors.toSet())
+		List<UUID> matchingDossierIds = filterMatchingJaxes(vorname, name, dataToSearchIn);
+		return impfdossierRepo.findRegistrierungenOfImpfdossiers(matchingDossierIds)
 			.stream()
 			.filter(reg -> hasUvci(reg, uvci))
 			.collect(Collectors.toList());
@@ -164,48 +153,4 @@ public class PersonalienSucheService {
 		return zertifikatList.stream()
 			.anyMatch(zertifikat -> zertifikat.getUvci().toLowerCase(Locale.GERMAN).endsWith(uvci.toLowerCase(Locale.GERMAN)));
 	}
-
-	/**
-	 * normalizes  the input
-	 *
-	 * @param normalizedSearch the normalized search-string
-	 * @param comparedString data to find match in
-	 */
-	private boolean matchesNormalized(String normalizedSearch, String comparedString) {
-		String normalizedData = normalizeString(comparedString);
-		String[] splitData = normalizedData.split("[ \\-]");
-		String concatenated = "";
-
-		for (String singleDataString : splitData) {
-			concatenated = concatenated.concat(singleDataString);
-			if (singleDataString.equals(normalizedSearch) || concatenated.equals(normalizedSearch)) {
-				return true;
-			}
-		}
-		return false;
-	}
-
-	/**
-	 * Normalizes and split the string returning a list of to which we can compare other
-	 * normalized strings for matches
-	 *
-	 * @param toNormalizeSplit the string to be worked
-	 * @return a list of normalized string to compare with .equals
-	 */
-	private String normalizeSplitString(String toNormalizeSplit) {
-		String normalizedString = normalizeString(toNormalizeSplit); // remove special chars
-		return normalizedString.replaceAll("[ \\-]", "");
-	}
-
-	/**
-	 * remove special characters
-	 *
-	 * @param toNormalize string to normalize
-	 * @return normalized string
-	 */
-	private String normalizeString(String toNormalize) {
-		return Normalizer.normalize(toNormalize, Normalizer.Form.NFD)
-			.replaceAll("[^\\p{ASCII}]", "") // remove non ascii symbols
-			.toLowerCase();
-	}
 }
@@ -33,6 +33,8 @@ import ch.dvbern.oss.vacme.entities.base.ApplicationMessage;
 import ch.dvbern.oss.vacme.entities.registration.Sprache;
 import ch.dvbern.oss.vacme.jax.base.SettingsJax;
 import ch.dvbern.oss.vacme.jax.base.TranslatedTextJax;
+import ch.dvbern.oss.vacme.service.cache.CacheRegistry;
+import ch.dvbern.oss.vacme.service.cache.VacmeCacheName;
 import ch.dvbern.oss.vacme.shared.errors.AppFailureException;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
@@ -54,6 +56,7 @@ public class SettingsService {
 	private final ApplicationPropertyService applicationPropertyService;
 	private final ApplicationMessageService applicationMessageService;
 	private final VacmeSettingsService vacmeSettingsService;
+	private final CacheRegistry cacheRegistry;
 
 	private static final String CACHE_KEY = "settings";
 	private LoadingCache<String, Optional<SettingsJax>> settingsCache;
@@ -73,7 +76,9 @@ public class SettingsService {
 		settingsCache = CacheBuilder.newBuilder()
 			.expireAfterWrite(Duration.of(8, ChronoUnit.MINUTES))
 			.maximumSize(1)
+			.recordStats()
 			.build(loaderForSettings);
+		cacheRegistry.register(VacmeCacheName.SETTINGS, settingsCache);
 	}
 
 	@NonNull
@@ -17,7 +17,6 @@
 
 package ch.dvbern.oss.vacme.service;
 
-import java.net.URI;
 import java.time.LocalDate;
 import java.util.Locale;
 import java.util.Objects;
@@ -40,9 +39,11 @@ import ch.dvbern.oss.vacme.enums.ImpfdossierStatus;
 import ch.dvbern.oss.vacme.enums.Mandant;
 import ch.dvbern.oss.vacme.i18n.MandantUtil;
 import ch.dvbern.oss.vacme.i18n.ServerMessageUtil;
+import ch.dvbern.oss.vacme.repo.SmsOutboxRepo;
 import ch.dvbern.oss.vacme.service.boosterprioritaet.BoosterPrioUtil;
 import ch.dvbern.oss.vacme.service.covidcertificate.CovidCertBatchType;
 import ch.dvbern.oss.vacme.service.sms.AbstractSmsProvider;
+import ch.dvbern.oss.vacme.service.sms.SmsHttpClient;
 import ch.dvbern.oss.vacme.shared.util.Constants;
 import ch.dvbern.oss.vacme.util.Gsm0338;
 import ch.dvbern.oss.vacme.util.ImpfinformationDto;
@@ -52,11 +53,7 @@ import io.smallrye.mutiny.infrastructure.Infrastructure;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.http.client.config.RequestConfig;
-import org.apache.http.client.methods.CloseableHttpResponse;
-import org.apache.http.client.methods.HttpGet;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.client.HttpResponseException;
 import org.checkerframework.checker.nullness.qual.NonNull;
 import org.checkerframework.checker.nullness.qual.Nullable;
 import org.jetbrains.annotations.NotNull;
@@ -70,6 +67,12 @@ public class SmsService {
 	@Inject
 	VacmeSettingsService vacmeSettingsService;
 
+	@Inject
+	SmsOutboxRepo smsOutboxRepo;
+
+	@Inject
+	SmsHttpClient smsHttpClient;
+
 
 	public void sendOnlineRegistrierungsSMS(@NonNull Registrierung registrierung, @NonNull String empfaenger, @NonNull Benutzer benutzer) {
 		final SmsSettingsDTO smsSettingsDTO = vacmeSettingsService.getSmsSettingsDTO();
@@ -379,7 +382,9 @@ public class SmsService {
 
 	@Transactional(TxType.REQUIRES_NEW)
 	public void sendSMS(@NonNull String empfaenger, @NonNull String message, @NonNull Locale locale, @NonNull SmsSettingsDTO smsSettingsDTO) {
-		if (smsSettingsDTO.isSmsAsync()) {
+		if (vacmeSettingsService.isSmsOutboxEnabled()) {
+			enqueueSms(empfaenger, message, locale, smsSettingsDTO);
+		} else if (smsSettingsDTO.isSmsAsync()) {
 			sendSMSAsync(empfaenger, message, locale, smsSettingsDTO);
 		} else {
 			sendSmsImplWithOneRetry(empfaenger, message, locale, smsSettingsDTO);
@@ -388,13 +393,40 @@ public class SmsService {
 
 	@Transactional(TxType.REQUIRES_NEW)
 	public void sendSMSToRegistrierung(@NonNull String empfaenger, @NonNull String message, @NonNull Registrierung reg, @NonNull SmsSettingsDTO smsSettingsDTO) {
-		if (smsSettingsDTO.isSmsAsync()) {
+		if (vacmeSettingsService.isSmsOutboxEnabled()) {
+			enqueueSmsForReg(empfaenger, message, reg, smsSettingsDTO);
+		} else if (smsSettingsDTO.isSmsAsync()) {
 			sendSMSAsyncForReg(empfaenger, message, reg, smsSettingsDTO);
 		} else {
 			sendSmsImplWithOneRetryForReg(empfaenger, message, reg, smsSettingsDTO);
 		}
 	}
 
+	private void enqueueSmsForReg(@NonNull String empfaenger, @NonNull String message, @NonNull Registrierung reg, @NonNull SmsSettingsDTO smsSettingsDTO) {
+		if (isVerstorbenAndLog(reg)) {
+			return;
+		}
+		enqueueSms(empfaenger, message, reg.getLocale(), smsSettingsDTO);
+	}
+
+	/**
+	 * Legt das fertig aufbereitete SMS in die SmsOutbox, verschickt wird es vom
+	 * {@link ch.dvbern.oss.vacme.service.sms.SmsOutboxDispatcher}. Laeuft in der eigenen Transaktion von sendSMS bzw.
+	 * sendSMSToRegistrierung und ist damit unabhaengig vom Commit oder Rollback der fachlichen Transaktion.
+	 */
+	private void enqueueSms(@NonNull String empfaenger, @NonNull String message, @NonNull Locale locale, @NonNull SmsSettingsDTO smsSettingsDTO) {
+		var trimmedMobileNumber = PhoneNumberUtil.processMobileNumber(empfaenger);
+		if (!isValidEmpfaengerOtherwiseLog(trimmedMobileNumber, empfaenger, smsSettingsDTO)) {
+			return;
+		}
+		message = prepareMessage(message, locale);
+		if (smsSettingsDTO.isSmsSendingDisabled()) {
+			pretendToSendSMS(empfaenger, message);
+			return;
+		}
+		smsOutboxRepo.create(trimmedMobileNumber, message);
+	}
+
 	private void sendSMSAsyncForReg(@NonNull String empfaenger, @NonNull String message, @NonNull Registrierung reg, @NonNull SmsSettingsDTO smsSettingsDTO) {
 		if (isVerstorbenAndLog(reg)) {
 			return;
@@ -455,20 +487,11 @@ public class SmsService {
 		// Leerzeichen aus Mobilenummern entfernen, evtl. Prefix setzen
 		var trimmedMobileNumber = PhoneNumberUtil.processMobileNumber(empfaenger);
 
-		if (!PhoneNumberUtil.isMobileNumber(trimmedMobileNumber) && smsSettingsDTO.isSmsMobileOnly()) {
-			LOG.warn("VACME-SMS: Meldung verhindert, Empfaenger ist keine Mobile-Nummer: {}", empfaenger);
+		if (!isValidEmpfaengerOtherwiseLog(trimmedMobileNumber, empfaenger, smsSettingsDTO)) {
 			return;
 		}
 
-		// Falls das SMS aus einer Testumgebung verschickt wurde, ergaenzen wir die Message mit einem
-		// entsprechenden Hinweis
-		if (!vacmeSettingsService.isStufeProd()) {
-			String hinweisTestumgebungStart = ServerMessageUtil.getMessage("sms_hinweis_testumgebung_start", locale);
-			String hinweisTestumgebungEnd = ServerMessageUtil.getMessage("sms_hinweis_testumgebung_end", locale);
-			message = hinweisTestumgebungStart + '\n' + message + '\n' + hinweisTestumgebungEnd;
-		}
-
-		message = removeUnsupportedCharacters(message);
+		message = prepareMessage(message, locale);
 
 		if (smsSettingsDTO.isSmsSendingDisabled()) {
 			pretendToSendSMS(empfaenger, message);
@@ -479,27 +502,11 @@ public class SmsService {
 
 		long requestStart = System.currentTimeMillis();
 		try {
-			final URI uri = smsProvider.getUriWithParams(
-				trimmedMobileNumber,
-				message);
-			var get = new HttpGet(uri);
-
-			//specify timeouts
-
-			RequestConfig config = RequestConfig.custom()
-				.setConnectTimeout(smsSettingsDTO.getSmsConnectionTimeout() * 1000)
-				.setConnectionRequestTimeout(smsSettingsDTO.getSmsConnectionTimeout() * 1000)
-				.setSocketTimeout(smsSettingsDTO.getSmsConnectionTimeout() * 1000).build();
-
-			try (
-				CloseableHttpClient client = HttpClientBuilder.create().setDefaultRequestConfig(config).build();
-				CloseableHttpResponse response = client.execute(get)
-			) {
-				LOG.debug(get.getURI().toASCIIString());
-				if (response.getStatusLine().getStatusCode() != 200) {
-					LOG.info("Status Code: {}", response.getStatusLine().getStatusCode());
-					LOG.info("Reason Phrase: {}", response.getStatusLine().getReasonPhrase());
-				}
+			try {
+				smsHttpClient.send(smsProvider, trimmedMobileNumber, message, smsSettingsDTO.getSmsConnectionTimeout());
+			} catch (HttpResponseException e) {
+				LOG.info("Status Code: {}", e.getStatusCode());
+				LOG.info("Reason Phrase: {}", e.getReasonPhrase());
 			}
 			if (smsSettingsDTO.isSmsDetailDebugEnabled()) {
 				LOG.info("Sending SMS to {}", StringUtils.substring(empfaenger, 0, 7));
@@ -514,6 +521,30 @@ public class SmsService {
 		}
 	}
 
+	private boolean isValidEmpfaengerOtherwiseLog(
+		@NonNull String trimmedMobileNumber,
+		@NonNull String empfaenger,
+		@NonNull SmsSettingsDTO smsSettingsDTO
+	) {
+		if (!PhoneNumberUtil.isMobileNumber(trimmedMobileNumber) && smsSettingsDTO.isSmsMobileOnly()) {
+			LOG.warn("VACME-SMS: Meldung verhindert, Empfaenger ist keine Mobile-Nummer: {}", empfaenger);
+			return false;
+		}
+		return true;
+	}
+
+	@NonNull
+	private String prepareMessage(@NonNull String message, @NonNull Locale locale) {
+		// Falls das SMS aus einer Testumgebung verschickt wurde, ergaenzen wir die Message mit einem
+		// entsprechenden Hinweis
+		if (!vacmeSettingsService.isStufeProd()) {
+			String hinweisTestumgebungStart = ServerMessageUtil.getMessage("sms_hinweis_testumgebung_start", locale);
+			String hinweisTestumgebungEnd = ServerMessageUtil.getMessage("sms_hinweis_testumgebung_end", locale);
+			message = hinweisTestumgebungStart + '\n' + message + '\n' + hinweisTestumgebungEnd;
+		}
+		return removeUnsupportedCharacters(message);
+	}
+
 	@NonNull
 	String removeUnsupportedCharacters(@NonNull String message) {
 		// In mobile telephony GSM 03.38 or 3GPP 23.038 is a character encoding used in GSM networks for SMS (Short Message Service)
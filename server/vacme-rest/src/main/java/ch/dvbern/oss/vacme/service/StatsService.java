@@ -20,7 +20,9 @@ package ch.dvbern.oss.vacme.service;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -62,11 +64,16 @@ import ch.dvbern.oss.vacme.jax.stats.ImpfzentrumTagesReportDetailEntryJax;
 import ch.dvbern.oss.vacme.jax.stats.ImpfzentrumTagesReportDetailJax;
 import ch.dvbern.oss.vacme.jax.stats.ImpfzentrumTagesReportJax;
 import ch.dvbern.oss.vacme.jax.StatsTerminAndImpfungJax;
+import ch.dvbern.oss.vacme.repo.OdiTagesStatistikRepo;
 import ch.dvbern.oss.vacme.repo.RegistrierungRepo;
 import ch.dvbern.oss.vacme.repo.StatistikKennzahlEintragRepo;
 import ch.dvbern.oss.vacme.repo.StatsRepo;
+import ch.dvbern.oss.vacme.service.tagesstatistik.OdiTagesKapazitaet;
+import ch.dvbern.oss.vacme.service.tagesstatistik.OdiTagesStatistikEintrag;
+import ch.dvbern.oss.vacme.service.tagesstatistik.OdiTagesStatistikService;
 import ch.dvbern.oss.vacme.shared.errors.AppValidationMessage;
 import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
 
 @ApplicationScoped
 @Transactional
@@ -76,18 +83,24 @@ public class StatsService {
 	private final StatistikKennzahlEintragRepo statistikKennzahlEintragRepo;
 	private final RegistrierungRepo registrierungRepo;
 	private final ImpfslotService impfslotService;
+	private final OdiTagesStatistikService odiTagesStatistikService;
+	private final OdiTagesStatistikRepo odiTagesStatistikRepo;
 
 	@Inject
 	public StatsService(
 		@NonNull StatsRepo statsRepo,
 		@NonNull StatistikKennzahlEintragRepo statistikKennzahlEintragRepo,
 		@NonNull RegistrierungRepo registrierungRepo,
-		@NonNull ImpfslotService impfslotService
+		@NonNull ImpfslotService impfslotService,
+		@NonNull OdiTagesStatistikService odiTagesStatistikService,
+		@NonNull OdiTagesStatistikRepo odiTagesStatistikRepo
 	) {
 		this.statsRepo = statsRepo;
 		this.statistikKennzahlEintragRepo = statistikKennzahlEintragRepo;
 		this.registrierungRepo = registrierungRepo;
 		this.impfslotService = impfslotService;
+		this.odiTagesStatistikService = odiTagesStatistikService;
+		this.odiTagesStatistikRepo = odiTagesStatistikRepo;
 	}
 
 	public long getAnzahlRegistrierungen() {
@@ -121,14 +134,63 @@ public class StatsService {
 		@NonNull LocalDate vonDate,
 		@NonNull LocalDate bisDate
 	) {
-		final List<StatsTerminAndImpfungJax> entries = statsRepo.getImpfTermineAndImpfungenForOdi(ortDerImpfung, vonDate, bisDate);
-
 		final ImpfzentrumStatJax impfzentrumStatJax = new ImpfzentrumStatJax();
 		impfzentrumStatJax.setImpfzentrumCode(ortDerImpfung.getIdentifier());
-		impfzentrumStatJax.setList(convertToDayStat(entries));
+		if (odiTagesStatistikService.isReady()) {
+			impfzentrumStatJax.setList(convertToDayStat(
+				odiTagesStatistikRepo.findKapazitaeten(ortDerImpfung.getId(), vonDate, bisDate),
+				odiTagesStatistikRepo.find(ortDerImpfung.getId(), vonDate, bisDate, null)));
+		} else {
+			final List<StatsTerminAndImpfungJax> entries =
+				statsRepo.getImpfTermineAndImpfungenForOdi(ortDerImpfung, vonDate, bisDate);
+			impfzentrumStatJax.setList(convertToDayStat(entries));
+		}
 		return impfzentrumStatJax;
 	}
 
+	/**
+	 * Wie {@link #convertToDayStat(List)}, aber aus den vorberechneten Zahlen der Tabelle OdiTagesStatistik
+	 */
+	@NonNull
+	private List<ImpfzentrumDayStatJax> convertToDayStat(
+		@NonNull List<OdiTagesKapazitaet> kapazitaeten,
+		@NonNull List<OdiTagesStatistikEintrag> eintraege
+	) {
+		Map<LocalDate, ImpfzentrumDayStatJax> map = new HashMap<>();
+		for (OdiTagesKapazitaet kapazitaet : kapazitaeten) {
+			ImpfzentrumDayStatJax dayStats = map.computeIfAbsent(kapazitaet.getDatum(), ImpfzentrumDayStatJax::new);
+			dayStats.increaseKapazitaetTermin1(Math.toIntExact(kapazitaet.getKapazitaetErsteImpfung()));
+			dayStats.increaseKapazitaetTermin2(Math.toIntExact(kapazitaet.getKapazitaetZweiteImpfung()));
+			dayStats.increaseKapazitaetTerminN(Math.toIntExact(kapazitaet.getKapazitaetBoosterImpfung()));
+		}
+		for (OdiTagesStatistikEintrag eintrag : eintraege) {
+			if (eintrag.getAnzahlGebuchteTermine() == 0) {
+				// nur Impfungen an diesem Tag, diese zaehlen hier nicht
+				continue;
+			}
+			ImpfzentrumDayStatJax dayStats = map.computeIfAbsent(eintrag.getDatum(), ImpfzentrumDayStatJax::new);
+			final int termine = Math.toIntExact(eintrag.getAnzahlGebuchteTermine());
+			final int impfungen = eintrag.hasImpfung() ? termine : 0;
+			switch (eintrag.getImpffolge()) {
+			case ERSTE_IMPFUNG:
+				dayStats.setNumberTermin1(dayStats.getNumberTermin1() + termine);
+				dayStats.setNumberImpfung1(dayStats.getNumberImpfung1() + impfungen);
+				break;
+			case ZWEITE_IMPFUNG:
+				dayStats.setNumberTermin2(dayStats.getNumberTermin2() + termine);
+				dayStats.setNumberImpfung2(dayStats.getNumberImpfung2() + impfungen);
+				break;
+			case BOOSTER_IMPFUNG:
+				dayStats.setNumberTerminN(dayStats.getNumberTerminN() + termine);
+				dayStats.setNumberImpfungN(dayStats.getNumberImpfungN() + impfungen);
+				break;
+			}
+		}
+		List<ImpfzentrumDayStatJax> list = new ArrayList<>(map.values());
+		list.sort(Comparator.comparing(ImpfzentrumDayStatJax::getDatum));
+		return list;
+	}
+
 	@NonNull
 	private List<ImpfzentrumDayStatJax> convertToDayStat(
 		@NonNull List<StatsTerminAndImpfungJax> impfterminList
@@ -209,6 +271,11 @@ public class StatsService {
 		//todo Affenpocken: wir lesen hier zwar nur die Impfstoffe fuer deren Krankheit die Tagesstatistik unterstuetzt
 		// im eigentlichen Query lesen wir aber immer covid
 		List<Impfstoff> impfstoffList = statsRepo.getAllZugelasseneImpfstoffeThatSupportTagesstatistik();
+		// Durchgefuehrte Impfungen wenn moeglich aus der Tagesstatistik statt mit je einem Count pro Impfstoff
+		@Nullable
+		final Map<UUID, Map<Impffolge, Long>> durchgefuehrtProImpfstoff = odiTagesStatistikService.isReady()
+			? getDurchgefuehrtProImpfstoff(ortDerImpfung, datum)
+			: null;
 		for (Impfstoff impfstoff : impfstoffList) {
 
 			if (impfstoff.getKrankheiten()
@@ -223,9 +290,17 @@ public class StatsService {
 			jaxImpfstoff.setImpfstoffName(impfstoff.getName());
 			jaxImpfstoff.setImpfstoffDisplayName(impfstoff.getDisplayName());
 
-			jaxImpfstoff.setDurchgefuehrtImpfung1(statsRepo.getDurchgefuerteImpfung1(impfstoff, ortDerImpfung, datum));
-			jaxImpfstoff.setDurchgefuehrtImpfung2(statsRepo.getDurchgefuerteImpfung2(impfstoff, ortDerImpfung, datum));
-			jaxImpfstoff.setDurchgefuehrtImpfungN(statsRepo.getDurchgefuerteImpfungN(impfstoff, ortDerImpfung, datum));
+			if (durchgefuehrtProImpfstoff != null) {
+				final Map<Impffolge, Long> durchgefuehrt =
+					durchgefuehrtProImpfstoff.getOrDefault(impfstoff.getId(), Collections.emptyMap());
+				jaxImpfstoff.setDurchgefuehrtImpfung1(durchgefuehrt.getOrDefault(Impffolge.ERSTE_IMPFUNG, 0L));
+				jaxImpfstoff.setDurchgefuehrtImpfung2(durchgefuehrt.getOrDefault(Impffolge.ZWEITE_IMPFUNG, 0L));
+				jaxImpfstoff.setDurchgefuehrtImpfungN(durchgefuehrt.getOrDefault(Impffolge.BOOSTER_IMPFUNG, 0L));
+			} else {
+				jaxImpfstoff.setDurchgefuehrtImpfung1(statsRepo.getDurchgefuerteImpfung1(impfstoff, ortDerImpfung, datum));
+				jaxImpfstoff.setDurchgefuehrtImpfung2(statsRepo.getDurchgefuerteImpfung2(impfstoff, ortDerImpfung, datum));
+				jaxImpfstoff.setDurchgefuehrtImpfungN(statsRepo.getDurchgefuerteImpfungN(impfstoff, ortDerImpfung, datum));
+			}
 
 			jaxImpfstoff.setPendentTermin1(0); // bei offenen Erstterminen kennt man den Impfstoff nicht
 			jaxImpfstoff.setPendentTermin2(statsRepo.getPendentImpfung2ImpfstoffEmpfohlen(
@@ -255,6 +330,23 @@ public class StatsService {
 		return impfzentrumTagesReportJax;
 	}
 
+	@NonNull
+	private Map<UUID, Map<Impffolge, Long>> getDurchgefuehrtProImpfstoff(
+		@NonNull OrtDerImpfung ortDerImpfung,
+		@NonNull LocalDate datum
+	) {
+		final Map<UUID, Map<Impffolge, Long>> result = new HashMap<>();
+		for (OdiTagesStatistikEintrag eintrag : odiTagesStatistikRepo.find(
+			ortDerImpfung.getId(), datum, datum, KrankheitIdentifier.COVID)) {
+			if (eintrag.getImpfstoffId() == null || eintrag.getAnzahlImpfungen() == 0) {
+				continue;
+			}
+			result.computeIfAbsent(eintrag.getImpfstoffId(), id -> new EnumMap<>(Impffolge.class))
+				.merge(eintrag.getImpffolge(), eintrag.getAnzahlImpfungen(), Long::sum);
+		}
+		return result;
+	}
+
 	@NonNull
 	public ImpfzentrumTagesReportDetailJax getOdiTagesReportDetailFast(@NonNull OrtDerImpfung ortDerImpfung, @NonNull LocalDate datum) {
 
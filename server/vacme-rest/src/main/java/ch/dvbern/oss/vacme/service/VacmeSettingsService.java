@@ -30,16 +30,19 @@ import ch.dvbern.oss.vacme.dto.ImpfslotCreationSettingsDTO;
 import ch.dvbern.oss.vacme.dto.SmsSettingsDTO;
 import ch.dvbern.oss.vacme.entities.base.ApplicationProperty;
 import ch.dvbern.oss.vacme.entities.base.ApplicationPropertyKey;
+import ch.dvbern.oss.vacme.entities.documentqueue.DocumentQueueType;
 import ch.dvbern.oss.vacme.entities.registration.RegistrierungsEingang;
 import ch.dvbern.oss.vacme.service.boosterprioritaet.AffenpockenImpfschutzcalculationConfigDTO;
 import ch.dvbern.oss.vacme.service.boosterprioritaet.CovidImpfschutzcalculationConfigDTO;
 import ch.dvbern.oss.vacme.service.boosterprioritaet.FSMEImpfschutzcalculationConfigDTO;
+import ch.dvbern.oss.vacme.service.cache.CacheInvalidationTransportTyp;
 import ch.dvbern.oss.vacme.service.settings.FTPClientConfigDTO;
 import ch.dvbern.oss.vacme.service.sms.AbstractSmsProvider;
 import ch.dvbern.oss.vacme.service.sms.ECallSmsProvider;
 import ch.dvbern.oss.vacme.service.sms.SwissphoneSmsProvider;
 import ch.dvbern.oss.vacme.shared.util.Constants;
 import ch.dvbern.oss.vacme.util.CacheUtil;
+import com.google.common.base.Splitter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
@@ -107,6 +110,24 @@ public class VacmeSettingsService {
 	@ConfigProperty(name = "vacme.booster.rule.engine.job.partitions", defaultValue = "3")
 	long numberOfPartitions;
 
+	@ConfigProperty(name = "vacme.booster.rule.engine.job.chunksize", defaultValue = "200")
+	long ruleEngineJobChunkSize;
+
+	@ConfigProperty(name = "vacme.booster.rule.engine.bulkload.size", defaultValue = "50")
+	int ruleEngineBulkLoadSize;
+
+	@ConfigProperty(name = "vacme.booster.rule.engine.lease.enabled", defaultValue = "false")
+	boolean ruleEngineLeaseEnabled;
+
+	@ConfigProperty(name = "vacme.booster.rule.engine.lease.seconds", defaultValue = "900")
+	long ruleEngineLeaseSeconds;
+
+	@ConfigProperty(name = "vacme.booster.rule.engine.skip.unchanged.enabled", defaultValue = "false")
+	boolean ruleEngineSkipUnchangedEnabled;
+
+	@ConfigProperty(name = "quarkus.application.version", defaultValue = "unknown")
+	String applicationVersion;
+
 	@ConfigProperty(name = "vacme.freigabe.sms.sleeptime.ms", defaultValue = "50")
 	long freigabeJobSMSSleepTime;
 
@@ -119,6 +140,108 @@ public class VacmeSettingsService {
 	@ConfigProperty(name = "vacme.covidapi.ps.sleeptime.ms")
 	long covidapiSleeptime;
 
+	/**
+	 * Anzahl gleichzeitiger Aufrufe der Covid-Zertifikat-API pro Batchjob. Bei 1 wird sequentiell gearbeitet.
+	 */
+	@ConfigProperty(name = "vacme.covidapi.ps.parallelism", defaultValue = "1")
+	int covidapiParallelism;
+
+	/**
+	 * Anzahl Zertifikate, deren Registrierungen, Impfdossiers und Impfungen gemeinsam vorgeladen werden.
+	 */
+	@ConfigProperty(name = "vacme.covidapi.ps.prefetch.size", defaultValue = "50")
+	int covidapiPrefetchSize;
+
+	/**
+	 * Maximale Anzahl PDFs, die gleichzeitig gerendert werden. Bei 0 wird die Anzahl CPUs verwendet.
+	 */
+	@ConfigProperty(name = "vacme.pdf.render.parallelism", defaultValue = "0")
+	int pdfRenderParallelism;
+
+	/**
+	 * Anzahl Onboarding-Briefe, die im Batchjob zusammen in einer Transaktion erstellt werden. Bei 1 wird jeder Brief
+	 * einzeln erstellt.
+	 */
+	@ConfigProperty(name = "vacme.onboarding.pdf.chunk.size", defaultValue = "1")
+	int onboardingPdfChunkSize;
+
+	/**
+	 * Wenn aktiv, werden die noch nicht abgeholten Briefe regelmaessig zu Sammel-PDFs zusammengefasst und auf den
+	 * FTP-Server geladen. Ersetzt den manuellen Export mit den postversandqueries.
+	 */
+	@ConfigProperty(name = "vacme.postversand.export.enabled", defaultValue = "false")
+	boolean postversandExportEnabled;
+
+	@ConfigProperty(name = "vacme.postversand.letters.per.file", defaultValue = "500")
+	int postversandLettersPerFile;
+
+	@ConfigProperty(name = "vacme.postversand.max.letters.per.run", defaultValue = "5000")
+	int postversandMaxLettersPerRun;
+
+	/**
+	 * Briefe, die so oft nicht ins Sammel-PDF angehaengt werden konnten, werden nicht mehr exportiert
+	 */
+	@ConfigProperty(name = "vacme.postversand.max.fehlversuche", defaultValue = "3")
+	int postversandMaxFehlversuche;
+
+	/**
+	 * Fuegt nach Briefen mit ungerader Seitenzahl eine leere Seite ein, damit beim beidseitigen Druck jeder Brief auf
+	 * einem neuen Blatt beginnt
+	 */
+	@ConfigProperty(name = "vacme.postversand.duplex", defaultValue = "false")
+	boolean postversandDuplex;
+
+	@ConfigProperty(name = "vacme.postversand.ftp.directory")
+	Optional<String> postversandFtpDirectory;
+
+	/**
+	 * Anzahl Zeilen, die beim Generieren von grossen Excel-Reports pro Query geladen werden
+	 */
+	@ConfigProperty(name = "vacme.reports.page.size", defaultValue = "1000")
+	int reportsPageSize;
+
+	/**
+	 * Fetch-Size fuer die CSV-Reports. Der Treiber liest die Zeilen in Bloecken dieser Groesse ueber einen
+	 * serverseitigen Cursor.
+	 */
+	@ConfigProperty(name = "vacme.reports.csv.fetch.size", defaultValue = "1000")
+	int reportsCsvFetchSize;
+
+	@ConfigProperty(name = "vacme.reports.csv.flush.rows", defaultValue = "1000")
+	int reportsCsvFlushRows;
+
+	/**
+	 * Wenn aktiv, werden die ODI-Statistiken aus der Tabelle OdiTagesStatistik gelesen, welche vom
+	 * OdiTagesStatistikService nachgefuehrt wird
+	 */
+	@ConfigProperty(name = "vacme.stats.tagesstatistik.enabled", defaultValue = "false")
+	boolean tagesstatistikEnabled;
+
+	@ConfigProperty(name = "vacme.stats.tagesstatistik.flush.interval.ms", defaultValue = "5000")
+	long tagesstatistikFlushIntervalMs;
+
+	@ConfigProperty(name = "vacme.stats.tagesstatistik.reconcile.days.back", defaultValue = "3")
+	int tagesstatistikReconcileDaysBack;
+
+	@ConfigProperty(name = "vacme.stats.tagesstatistik.reconcile.days.forward", defaultValue = "30")
+	int tagesstatistikReconcileDaysForward;
+
+	/**
+	 * Wenn aktiv, sucht die Personaliensuche die Kandidaten im RegistrierungSuchindex anstatt alle Registrierungen
+	 * mit dem Geburtsdatum zu laden
+	 */
+	@ConfigProperty(name = "vacme.personaliensuche.index.enabled", defaultValue = "false")
+	boolean personaliensucheIndexEnabled;
+
+	@ConfigProperty(name = "vacme.personaliensuche.index.batch.size", defaultValue = "1000")
+	int personaliensucheIndexBatchSize;
+
+	@ConfigProperty(name = "vacme.personaliensuche.index.overlap.seconds", defaultValue = "600")
+	long personaliensucheIndexOverlapSeconds;
+
+	@ConfigProperty(name = "vacme.personaliensuche.index.max.lag.seconds", defaultValue = "3600")
+	long personaliensucheIndexMaxLagSeconds;
+
 	@ConfigProperty(name = "boosterrule.enable.pfizer.only.for.u30", defaultValue = "false")
 	boolean calcCovidEnablePfizerOnlyForU30;
 
@@ -191,6 +314,40 @@ public class VacmeSettingsService {
 	@ConfigProperty(name = "vacme.cron.archivierung.disabled")
 	boolean archivierungD3Disabled;
 
+	/**
+	 * Anzahl Archiv-PDFs, die gleichzeitig gerendert werden, bzw. Anzahl gleichzeitiger Uploads nach D3. Die
+	 * gerenderten PDFs warten in einer Queue mit vacme.archivierung.upload.queue.size Plaetzen auf den Upload.
+	 */
+	@ConfigProperty(name = "vacme.archivierung.render.parallelism", defaultValue = "4")
+	int archivierungRenderParallelism;
+
+	@ConfigProperty(name = "vacme.archivierung.upload.parallelism", defaultValue = "2")
+	int archivierungUploadParallelism;
+
+	@ConfigProperty(name = "vacme.archivierung.upload.queue.size", defaultValue = "20")
+	int archivierungUploadQueueSize;
+
+	/**
+	 * Wenn aktiv, werden neue Dateien im BlobStore statt als LOB in der DB abgelegt und bestehende LOBs werden vom
+	 * Migrations-Job (vacme.cron.blobstore.migration) in Batches von vacme.blobstore.migration.batch.size
+	 * ausgelagert. Gelesen wird aus dem BlobStore unabhaengig von diesem Flag.
+	 */
+	@ConfigProperty(name = "vacme.blobstore.enabled", defaultValue = "false")
+	boolean blobStoreEnabled;
+
+	@ConfigProperty(name = "vacme.blobstore.filesystem.root", defaultValue = "/var/lib/vacme/blobs")
+	String blobStoreFilesystemRoot;
+
+	@ConfigProperty(name = "vacme.blobstore.migration.batch.size", defaultValue = "200")
+	int blobStoreMigrationBatchSize;
+
+	/**
+	 * Die Garbage Collection (vacme.cron.blobstore.gc) entfernt nur Inhalte, die aelter sind. Muss laenger sein als
+	 * die laengste Transaktion, die eine Datei speichert.
+	 */
+	@ConfigProperty(name = "vacme.blobstore.gc.grace.minutes", defaultValue = "60")
+	int blobStoreGcGraceMinutes;
+
 	@ConfigProperty(name = "vacme.cron.global.freie.termine.disabled", defaultValue = "false")
 	boolean cronUpdateNoFreieTermineProKrankheitDisabled;
 
@@ -239,6 +396,15 @@ public class VacmeSettingsService {
 	@ConfigProperty(name = "vacme.terminvergabe.lock.enabled", defaultValue = "false")
 	boolean terminVergabeLockEnabled;
 
+	@ConfigProperty(name = "vacme.terminvergabe.claim.enabled", defaultValue = "false")
+	boolean terminVergabeClaimEnabled;
+
+	@ConfigProperty(name = "vacme.terminindex.enabled", defaultValue = "false")
+	boolean terminIndexEnabled;
+
+	@ConfigProperty(name = "vacme.terminindex.rebuild.interval.seconds", defaultValue = "300")
+	long terminIndexRebuildIntervalSeconds;
+
 	@ConfigProperty(name = "vacme.sms.disabled", defaultValue = "false")
 	boolean smsSendingDisabled;
 
@@ -299,6 +465,33 @@ public class VacmeSettingsService {
 	@ConfigProperty(name = "vacme.sms.detail.debug.enabled", defaultValue = "true")
 	boolean smsDetailDebugEnabled;
 
+	/**
+	 * Wenn aktiv, werden asynchrone SMS in die Tabelle SmsOutbox geschrieben und vom SmsOutboxDispatcher verschickt
+	 */
+	@ConfigProperty(name = "vacme.sms.outbox.enabled", defaultValue = "false")
+	boolean smsOutboxEnabled;
+
+	@ConfigProperty(name = "vacme.sms.outbox.poll.interval.ms", defaultValue = "1000")
+	long smsOutboxPollIntervalMs;
+
+	@ConfigProperty(name = "vacme.sms.outbox.batch.size", defaultValue = "100")
+	int smsOutboxBatchSize;
+
+	@ConfigProperty(name = "vacme.sms.outbox.lease.seconds", defaultValue = "300")
+	long smsOutboxLeaseSeconds;
+
+	@ConfigProperty(name = "vacme.sms.outbox.rate.per.second", defaultValue = "20")
+	double smsOutboxRatePerSecond;
+
+	@ConfigProperty(name = "vacme.sms.outbox.max.attempts", defaultValue = "8")
+	int smsOutboxMaxAttempts;
+
+	@ConfigProperty(name = "vacme.sms.outbox.retry.base.seconds", defaultValue = "30")
+	long smsOutboxRetryBaseSeconds;
+
+	@ConfigProperty(name = "vacme.sms.outbox.retention.hours", defaultValue = "72")
+	long smsOutboxRetentionHours;
+
 	@ConfigProperty(name = "vmdl.tenant_id")
 	String vmdlTenantID;
 
@@ -314,6 +507,22 @@ public class VacmeSettingsService {
 	@ConfigProperty(name = "vmdl.upload.chunk.limit", defaultValue = "100")
 	int vmdlUploadChunkLimit;
 
+	/**
+	 * Wenn aktiv, laedt ein VMDL-Lauf so lange Chunks hoch, bis keine pendenten Impfungen mehr vorhanden sind
+	 * (hoechstens vmdl.upload.catchup.max.seconds lang), anstatt nur einen Chunk pro Cron-Lauf
+	 */
+	@ConfigProperty(name = "vmdl.upload.catchup.enabled", defaultValue = "false")
+	boolean vmdlUploadCatchupEnabled;
+
+	@ConfigProperty(name = "vmdl.upload.catchup.max.seconds", defaultValue = "1800")
+	long vmdlUploadCatchupMaxSeconds;
+
+	@ConfigProperty(name = "vmdl.upload.inflight.covid", defaultValue = "1")
+	int vmdlUploadInflightCovid;
+
+	@ConfigProperty(name = "vmdl.upload.inflight.affenpocken", defaultValue = "1")
+	int vmdlUploadInflightAffenpocken;
+
 	@ConfigProperty(name = "vmdl.reporting_unit_id")
 	String vmdlReportingUnitID;
 
@@ -335,6 +544,15 @@ public class VacmeSettingsService {
 	@ConfigProperty(name = "vacme.keycloak.password", defaultValue = "")
 	String keycloakPassword;
 
+	/**
+	 * Gueltigkeit der lokal gecachten Gruppen, Gruppenmitglieder und Rollenmitglieder des Web-Realms.
+	 * Eigene Aenderungen werden sofort invalidiert, die TTL betrifft nur Aenderungen direkt im Keycloak.
+	 */
+	@ConfigProperty(name = "vacme.keycloak.directory.cache.ttl.seconds", defaultValue = "60")
+	long keycloakDirectoryCacheTtlSeconds;
+	@ConfigProperty(name = "vacme.keycloak.directory.page.size", defaultValue = "500")
+	int keycloakDirectoryPageSize;
+
 	// Web-Realm
 	@ConfigProperty(name = "vacme.keycloak.realm", defaultValue = "vacme-web")
 	String keycloakWebRealm;
@@ -357,6 +575,34 @@ public class VacmeSettingsService {
 	@ConfigProperty(name = "vacme.loggingintercepot.slowthreshold.ms", defaultValue = DB_QUERY_SLOW_THRESHOLD)
 	long loggingSlowThresholdMs;
 
+	/**
+	 * Messung aller Abfragen ueber smartdb (Laufzeit und Zeilen pro Aufrufstelle, N+1-Erkennung, Slow-Query-Log)
+	 */
+	@ConfigProperty(name = "vacme.db.instrumentation.enabled", defaultValue = "true")
+	boolean dbInstrumentationEnabled;
+
+	@ConfigProperty(name = "vacme.db.slowquery.threshold.ms", defaultValue = "1000")
+	long dbSlowQueryThresholdMs;
+
+	/**
+	 * Anteil (0..1) der langsamen Abfragen, die mit JPQL geloggt werden. Gezaehlt werden alle.
+	 */
+	@ConfigProperty(name = "vacme.db.slowquery.log.samplerate", defaultValue = "0.1")
+	double dbSlowQueryLogSampleRate;
+
+	/**
+	 * Wenn aktiv, enthalten das Slow-Query- und das N+1-Log auch die Werte der Parameter. Diese enthalten
+	 * Personendaten, daher nur voruebergehend fuer die Analyse einschalten.
+	 */
+	@ConfigProperty(name = "vacme.db.slowquery.log.parameters", defaultValue = "false")
+	boolean dbSlowQueryLogParameters;
+
+	/**
+	 * Ab so vielen Ausfuehrungen derselben Abfrage in einer Transaktion wird ein N+1-Muster gemeldet
+	 */
+	@ConfigProperty(name = "vacme.db.nplusone.threshold", defaultValue = "20")
+	int dbNPlusOneThreshold;
+
 	@ConfigProperty(name = "covid-cert-api/mp-rest/keyStore")
 	String covidCertApiPrivateKeyPath;
 
@@ -432,6 +678,27 @@ public class VacmeSettingsService {
 	@ConfigProperty(name = "vacme.cron.doccreation.cleanup.maxage.seconds", defaultValue = "14400")
 	long maxDocumentqueueResultAgeSeconds; //60 * 60 * 4 = 4 hours
 
+	@ConfigProperty(name = "vacme.doccreation.worker.poolsize", defaultValue = "3")
+	int docCreationWorkerPoolSize;
+
+	@ConfigProperty(name = "vacme.doccreation.worker.concurrency.default", defaultValue = "1")
+	int docCreationDefaultConcurrencyPerType;
+
+	/**
+	 * Abweichende Parallelitaet pro DocumentQueueType, z.B. "ODI_IMPFUNGEN=2,ABRECHNUNG=1"
+	 */
+	@ConfigProperty(name = "vacme.doccreation.worker.concurrency.per.type")
+	Optional<String> docCreationConcurrencyPerType;
+
+	@ConfigProperty(name = "vacme.joblease.seconds", defaultValue = "30")
+	long jobLeaseSeconds;
+
+	@ConfigProperty(name = "vacme.joblease.zertifikat.enabled", defaultValue = "false")
+	boolean jobLeaseZertifikatEnabled;
+
+	@ConfigProperty(name = "vacme.joblease.zertifikat.shards", defaultValue = "1")
+	int jobLeaseZertifikatShards;
+
 	@ConfigProperty(name = "well.url")
 	String wellUrl;
 	@ConfigProperty(name = "well.api.client_id")
@@ -463,6 +730,19 @@ public class VacmeSettingsService {
 	@ConfigProperty(name = "migration.test_data.enabled", defaultValue = "false")
 	boolean migrationTestDataEnabled;
 
+	/**
+	 * Anzahl Registrierungen, die ein Aufrufer der Migrations-API pro migration.rate.limit.interval.seconds
+	 * migrieren darf (Token-Bucket pro Aufrufer)
+	 */
+	@ConfigProperty(name = "migration.rate.limit.capacity", defaultValue = "200")
+	int migrationRateLimitCapacity;
+
+	@ConfigProperty(name = "migration.bulk.enabled", defaultValue = "false")
+	boolean migrationBulkEnabled;
+
+	@ConfigProperty(name = "migration.bulk.chunk.size", defaultValue = "100")
+	int migrationBulkChunkSize;
+
 	@ConfigProperty(name = "vacme.force.cookie.secure.flag", defaultValue = "false")
 	boolean cookieSecure;
 
@@ -476,6 +756,12 @@ public class VacmeSettingsService {
 	@ConfigProperty(name = "vacme.cache.nextfrei.ttl.sconds", defaultValue = CacheUtil.DEFAULT_CACHE_TIME)
 	String nextfreierTerminCacheTimeToLive;
 
+	@ConfigProperty(name = "vacme.cache.invalidation.transport", defaultValue = "LOCAL")
+	CacheInvalidationTransportTyp cacheInvalidationTransport;
+
+	@ConfigProperty(name = "vacme.cache.invalidation.poll.interval.seconds", defaultValue = "5")
+	long cacheInvalidationPollIntervalSeconds;
+
 	@ConfigProperty(name = "vacme.ftp.disabled", defaultValue = "false")
 	boolean ftpDisabled;
 
@@ -608,6 +894,31 @@ public class VacmeSettingsService {
 			VACME_BOOSTER_RULE_ENGINE_JOB_PARTITIONS);
 	}
 
+	public long getRuleEngineJobChunkSize() {
+		return ruleEngineJobChunkSize;
+	}
+
+	public int getRuleEngineBulkLoadSize() {
+		return ruleEngineBulkLoadSize;
+	}
+
+	public boolean isRuleEngineLeaseEnabled() {
+		return ruleEngineLeaseEnabled;
+	}
+
+	public long getRuleEngineLeaseSeconds() {
+		return ruleEngineLeaseSeconds;
+	}
+
+	public boolean isRuleEngineSkipUnchangedEnabled() {
+		return ruleEngineSkipUnchangedEnabled;
+	}
+
+	@NonNull
+	public String getApplicationVersion() {
+		return applicationVersion;
+	}
+
 	public long getNumberOfPartitionsForMassenverarbeitung() {
 		return getLong(
 			numberOfPartitions,
@@ -632,6 +943,94 @@ public class VacmeSettingsService {
 		return covidapiSleeptime;
 	}
 
+	public int getCovidApiParallelism() {
+		return covidapiParallelism;
+	}
+
+	public int getCovidApiPrefetchSize() {
+		return covidapiPrefetchSize;
+	}
+
+	public int getPdfRenderParallelism() {
+		if (pdfRenderParallelism <= 0) {
+			return Runtime.getRuntime().availableProcessors();
+		}
+		return pdfRenderParallelism;
+	}
+
+	public int getOnboardingPdfChunkSize() {
+		return Math.max(1, onboardingPdfChunkSize);
+	}
+
+	public boolean isPostversandExportEnabled() {
+		return postversandExportEnabled;
+	}
+
+	public int getPostversandLettersPerFile() {
+		return Math.max(1, postversandLettersPerFile);
+	}
+
+	public int getPostversandMaxLettersPerRun() {
+		return postversandMaxLettersPerRun;
+	}
+
+	public int getPostversandMaxFehlversuche() {
+		return Math.max(1, postversandMaxFehlversuche);
+	}
+
+	public boolean isPostversandDuplex() {
+		return postversandDuplex;
+	}
+
+	@NonNull
+	public Optional<String> getPostversandFtpDirectory() {
+		return postversandFtpDirectory;
+	}
+
+	public int getReportsPageSize() {
+		return Math.max(1, reportsPageSize);
+	}
+
+	public int getReportsCsvFetchSize() {
+		return Math.max(1, reportsCsvFetchSize);
+	}
+
+	public int getReportsCsvFlushRows() {
+		return Math.max(1, reportsCsvFlushRows);
+	}
+
+	public boolean isTagesstatistikEnabled() {
+		return tagesstatistikEnabled;
+	}
+
+	public long getTagesstatistikFlushIntervalMs() {
+		return Math.max(100, tagesstatistikFlushIntervalMs);
+	}
+
+	public int getTagesstatistikReconcileDaysBack() {
+		return Math.max(0, tagesstatistikReconcileDaysBack);
+	}
+
+	public int getTagesstatistikReconcileDaysForward() {
+		return Math.max(0, tagesstatistikReconcileDaysForward);
+	}
+
+	public boolean isPersonaliensucheIndexEnabled() {
+		return personaliensucheIndexEnabled;
+	}
+
+	public int getPersonaliensucheIndexBatchSize() {
+		return Math.max(1, personaliensucheIndexBatchSize);
+	}
+
+	public long getPersonaliensucheIndexOverlapSeconds() {
+		return Math.max(0, personaliensucheIndexOverlapSeconds);
+	}
+
+	public long getPersonaliensucheIndexMaxLagSeconds() {
+		return Math.max(60, personaliensucheIndexMaxLagSeconds);
+	}
+
 	public boolean isZertifikatEnabled() {
 		return getBoolean(false, COVID_ZERTIFIKAT_ENABLED);
 	}
@@ -730,6 +1129,34 @@ public class VacmeSettingsService {
 		return archivierungD3Disabled;
 	}
 
+	public int getArchivierungRenderParallelism() {
+		return Math.max(1, archivierungRenderParallelism);
+	}
+
+	public int getArchivierungUploadParallelism() {
+		return Math.max(1, archivierungUploadParallelism);
+	}
+
+	public int getArchivierungUploadQueueSize() {
+		return Math.max(1, archivierungUploadQueueSize);
+	}
+
+	public boolean isBlobStoreEnabled() {
+		return blobStoreEnabled;
+	}
+
+	public String getBlobStoreFilesystemRoot() {
+		return blobStoreFilesystemRoot;
+	}
+
+	public int getBlobStoreMigrationBatchSize() {
+		return Math.max(1, blobStoreMigrationBatchSize);
+	}
+
+	public int getBlobStoreGcGraceMinutes() {
+		return Math.max(1, blobStoreGcGraceMinutes);
+	}
+
 	public boolean isCronUpdateNoFreieTermineProKranhkeitDisabled() {
 		return getBoolean(cronUpdateNoFreieTermineProKrankheitDisabled, VACME_CRON_GLOBAL_FREI_TERMINE_DISABLED);
 	}
@@ -796,6 +1223,18 @@ public class VacmeSettingsService {
 		return terminVergabeLockEnabled;
 	}
 
+	public boolean isTerminVergabeClaimEnabled() {
+		return terminVergabeClaimEnabled;
+	}
+
+	public boolean isTerminIndexEnabled() {
+		return terminIndexEnabled;
+	}
+
+	public long getTerminIndexRebuildIntervalSeconds() {
+		return terminIndexRebuildIntervalSeconds;
+	}
+
 	@NonNull
 	public String getApplicationLink() {
 		return applicationLink;
@@ -813,6 +1252,38 @@ public class VacmeSettingsService {
 			smsCallbackSwissphone, smsCallbackExtSwissphone);
 	}
 
+	public boolean isSmsOutboxEnabled() {
+		return smsOutboxEnabled;
+	}
+
+	public long getSmsOutboxPollIntervalMs() {
+		return smsOutboxPollIntervalMs;
+	}
+
+	public int getSmsOutboxBatchSize() {
+		return smsOutboxBatchSize;
+	}
+
+	public long getSmsOutboxLeaseSeconds() {
+		return smsOutboxLeaseSeconds;
+	}
+
+	public double getSmsOutboxRatePerSecond() {
+		return smsOutboxRatePerSecond;
+	}
+
+	public int getSmsOutboxMaxAttempts() {
+		return smsOutboxMaxAttempts;
+	}
+
+	public long getSmsOutboxRetryBaseSeconds() {
+		return smsOutboxRetryBaseSeconds;
+	}
+
+	public long getSmsOutboxRetentionHours() {
+		return smsOutboxRetentionHours;
+	}
+
 	@NonNull
 	public SmsSettingsDTO getSmsSettingsDTO() {
 		return new SmsSettingsDTO(
@@ -850,6 +1321,22 @@ public class VacmeSettingsService {
 		return vmdlUploadChunkLimit;
 	}
 
+	public boolean isVmdlUploadCatchupEnabled() {
+		return vmdlUploadCatchupEnabled;
+	}
+
+	public long getVmdlUploadCatchupMaxSeconds() {
+		return Math.max(0, vmdlUploadCatchupMaxSeconds);
+	}
+
+	public int getVmdlUploadInflightCovid() {
+		return Math.max(1, vmdlUploadInflightCovid);
+	}
+
+	public int getVmdlUploadInflightAffenpocken() {
+		return Math.max(1, vmdlUploadInflightAffenpocken);
+	}
+
 	@NonNull
 	public String getVmdlReportingUnitID() {
 		return vmdlReportingUnitID;
@@ -885,6 +1372,14 @@ public class VacmeSettingsService {
 		return keycloakPassword;
 	}
 
+	public long getKeycloakDirectoryCacheTtlSeconds() {
+		return Math.max(0, keycloakDirectoryCacheTtlSeconds);
+	}
+
+	public int getKeycloakDirectoryPageSize() {
+		return Math.max(1, keycloakDirectoryPageSize);
+	}
+
 	public String getKeycloakWebRealm() {
 		return keycloakWebRealm;
 	}
@@ -917,6 +1412,26 @@ public class VacmeSettingsService {
 		return loggingSlowThresholdMs;
 	}
 
+	public boolean isDbInstrumentationEnabled() {
+		return dbInstrumentationEnabled;
+	}
+
+	public long getDbSlowQueryThresholdMs() {
+		return dbSlowQueryThresholdMs;
+	}
+
+	public double getDbSlowQueryLogSampleRate() {
+		return Math.min(1, Math.max(0, dbSlowQueryLogSampleRate));
+	}
+
+	public boolean isDbSlowQueryLogParameters() {
+		return dbSlowQueryLogParameters;
+	}
+
+	public int getDbNPlusOneThreshold() {
+		return Math.max(2, dbNPlusOneThreshold);
+	}
+
 	public String getCovidCertApiPrivateKeyPath() {
 		return covidCertApiPrivateKeyPath;
 	}
@@ -1009,10 +1524,34 @@ public class VacmeSettingsService {
 		return docCreationMaxNumOfJobsPerType;
 	}
 
+	public int getDocCreationWorkerPoolSize() {
+		return docCreationWorkerPoolSize;
+	}
+
+	public int getDocCreationConcurrency(@NonNull DocumentQueueType typ) {
+		return docCreationConcurrencyPerType
+			.map(config -> Splitter.on(',').trimResults().omitEmptyStrings().withKeyValueSeparator('=').split(config))
+			.map(configPerType -> configPerType.get(typ.name()))
+			.map(Integer::parseInt)
+			.orElse(docCreationDefaultConcurrencyPerType);
+	}
+
 	public long getMaxDocumentqueueResultAgeSeconds() {
 		return maxDocumentqueueResultAgeSeconds;
 	}
 
+	public long getJobLeaseSeconds() {
+		return jobLeaseSeconds;
+	}
+
+	public boolean isJobLeaseZertifikatEnabled() {
+		return jobLeaseZertifikatEnabled;
+	}
+
+	public int getJobLeaseZertifikatShards() {
+		return jobLeaseZertifikatShards;
+	}
+
 	public String getWellUrl() {
 		return wellUrl;
 	}
@@ -1057,6 +1596,18 @@ public class VacmeSettingsService {
 		return migrationTestDataEnabled;
 	}
 
+	public int getMigrationRateLimitCapacity() {
+		return Math.max(1, migrationRateLimitCapacity);
+	}
+
+	public boolean isMigrationBulkEnabled() {
+		return migrationBulkEnabled;
+	}
+
+	public int getMigrationBulkChunkSize() {
+		return Math.max(1, migrationBulkChunkSize);
+	}
+
 	public boolean isCookieSecure() {
 		return cookieSecure;
 	}
@@ -1073,6 +1624,15 @@ public class VacmeSettingsService {
 		return nextfreierTerminCacheTimeToLive;
 	}
 
+	@NonNull
+	public CacheInvalidationTransportTyp getCacheInvalidationTransport() {
+		return cacheInvalidationTransport;
+	}
+
+	public long getCacheInvalidationPollIntervalSeconds() {
+		return cacheInvalidationPollIntervalSeconds;
+	}
+
 	public FTPClientConfigDTO getFtpClientConfigDTO() {
 		return new FTPClientConfigDTO(
 			ftpDisabled,
@@ -19,11 +19,15 @@ package ch.dvbern.oss.vacme.service;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
 
 import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.context.BeforeDestroyed;
@@ -42,15 +46,24 @@ import ch.dvbern.oss.vacme.entities.zertifikat.Zertifikat;
 import ch.dvbern.oss.vacme.entities.zertifikat.ZertifikatQueue;
 import ch.dvbern.oss.vacme.service.covidcertificate.CovidCertBatchType;
 import ch.dvbern.oss.vacme.service.impfinformationen.ImpfinformationenService;
+import ch.dvbern.oss.vacme.service.joblease.JobLease;
+import ch.dvbern.oss.vacme.service.joblease.JobLeaseService;
 import ch.dvbern.oss.vacme.shared.errors.AppValidationException;
 import ch.dvbern.oss.vacme.shared.errors.AppValidationMessage;
 import ch.dvbern.oss.vacme.shared.errors.NoTokenFailureException;
 import ch.dvbern.oss.vacme.shared.errors.PlzMappingException;
+import ch.dvbern.oss.vacme.util.ImpfinformationDto;
+import ch.dvbern.oss.vacme.util.ImpfinformationenUtil;
 import ch.dvbern.oss.vacme.util.ValidationUtil;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.Lists;
+import io.smallrye.mutiny.Multi;
+import io.smallrye.mutiny.Uni;
+import io.smallrye.mutiny.infrastructure.Infrastructure;
 import lombok.RequiredArgsConstructor;
+import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.time.StopWatch;
 import org.checkerframework.checker.nullness.qual.NonNull;
@@ -62,12 +75,15 @@ import org.checkerframework.checker.nullness.qual.Nullable;
 @Transactional(TxType.NOT_SUPPORTED)
 public class ZertifikatRunnerService {
 
+	private static final int NOTIFICATION_CONCURRENCY = 2;
+
 	private final ZertifikatService zertifikatService;
 	private final ConfirmationService confirmationService;
 	private final RegistrierungService registrierungService;
 	private final VacmeSettingsService vacmeSettingsService;
 	private final ApplicationPropertyService applicationPropertyService;
 	private final ImpfinformationenService impfinformationenService;
+	private final JobLeaseService jobLeaseService;
 	private final ObjectMapper mapper;
 
 	@Transactional(TxType.NOT_SUPPORTED)
@@ -243,26 +259,65 @@ public class ZertifikatRunnerService {
 	 * @param batchType specify which Registrations we are processing
 	 */
 	public void generateBatchOfCovidCertificates(@NonNull CovidCertBatchType batchType) {
+		if (vacmeSettingsService.isJobLeaseZertifikatEnabled()) {
+			jobLeaseService.runWithLease(
+				getJobLeaseName(batchType),
+				vacmeSettingsService.getJobLeaseZertifikatShards(),
+				lease -> generateBatchOfCovidCertificates(batchType, lease));
+			return;
+		}
 		if (isAlreadyInProgress(batchType)) {
 			LOG.info("VACME-ZERTIFIKAT: ({}) Batchjob already in progress, aborting.", batchType);
 			return;
 		}
 		aquireBatchJobLock(batchType);
+		try {
+			generateBatchOfCovidCertificates(batchType, null);
+		} finally {
+			releaseBatchJobLock(batchType);
+		}
+	}
+
+	/**
+	 * @param lease wenn gesetzt, werden nur die Registrierungen im Shard des Leases bearbeitet, und der Batch wird
+	 * abgebrochen sobald der Lease verloren geht
+	 */
+	private void generateBatchOfCovidCertificates(@NonNull CovidCertBatchType batchType, @Nullable JobLease lease) {
 		StopWatch stopWatch = StopWatch.createStarted();
 		int successCounter = 0;
 		int totalCounter = 0;
 		List<ZertifikatCreationDTO> zertifikatGenerationDTOs = new ArrayList<>();
 		try {
-			zertifikatGenerationDTOs = zertifikatService.findImpfungenForZertifikatsGeneration(
-				batchType,
-				vacmeSettingsService.getCovidApiBatchSize());
+			final long batchSize = vacmeSettingsService.getCovidApiBatchSize();
+			if (lease == null) {
+				zertifikatGenerationDTOs = zertifikatService.findImpfungenForZertifikatsGeneration(batchType, batchSize);
+			} else {
+				// Es werden mehr Kandidaten gelesen und danach auf den eigenen Shard gefiltert, damit jeder Shard
+				// ungefaehr eine volle Batchgroesse bearbeiten kann
+				zertifikatGenerationDTOs = zertifikatService.findImpfungenForZertifikatsGeneration(
+						batchType, batchSize * lease.getShardCount())
+					.stream()
+					.filter(dto -> lease.isResponsibleFor(dto.getRegistrierungsnummer()))
+					.limit(batchSize)
+					.collect(Collectors.toList());
+			}
 
 			LOG.info("VACME-ZERTIFIKAT: ({}) Starting to generate a batch of up to {} CovidCertificates. Found {}",
-				batchType, vacmeSettingsService.getCovidApiBatchSize(), zertifikatGenerationDTOs.size());
+				batchType, batchSize, zertifikatGenerationDTOs.size());
+
+			if (vacmeSettingsService.getCovidApiParallelism() > 1) {
+				final List<Boolean> results = generatePipelined(batchType, zertifikatGenerationDTOs, lease);
+				successCounter = (int) results.stream().filter(Boolean::booleanValue).count();
+				totalCounter = results.size();
+				return;
+			}
 
 			for (ZertifikatCreationDTO dto : zertifikatGenerationDTOs) {
 
 				try {
+					if (isLeaseLost(batchType, lease)) {
+						return;
+					}
 					if (!zertifikatService.hasValidToken()) {
 						LOG.info("VACME-ZERTIFIKAT: ({}) Es gibt kein gueltiges Token fuer die Zertifikat Erstellung. "
 							+ "Breche ab.", batchType);
@@ -309,7 +364,6 @@ public class ZertifikatRunnerService {
 				calculateCertSpeed(
 					totalCounter,
 					stopWatch.getTime()));
-			releaseBatchJobLock(batchType);
 		}
 	}
 
@@ -319,11 +373,27 @@ public class ZertifikatRunnerService {
 	 * @param batchType denotes if we are processing online regs or regs that need to be notified via postal service
 	 */
 	public void revokeBatchOfCovidCertificates(@NonNull CovidCertBatchType batchType) {
+		if (vacmeSettingsService.isJobLeaseZertifikatEnabled()) {
+			// Die Stornierung wird nicht geshardet, die Queue liefert nur die IDs der QueueItems
+			jobLeaseService.runWithLease(
+				getJobLeaseName(batchType) + "_REVOCATION",
+				1,
+				lease -> revokeBatchOfCovidCertificates(batchType, lease));
+			return;
+		}
 		if (isAlreadyInProgress(batchType)) {
 			LOG.info("VACME-ZERTIFIKAT: ({}) Batchjob already in progress, aborting.", batchType);
 			return;
 		}
 		aquireBatchJobLock(batchType);
+		try {
+			revokeBatchOfCovidCertificates(batchType, null);
+		} finally {
+			releaseBatchJobLock(batchType);
+		}
+	}
+
+	private void revokeBatchOfCovidCertificates(@NonNull CovidCertBatchType batchType, @Nullable JobLease lease) {
 		StopWatch stopWatch = StopWatch.createStarted();
 		int successCounter = 0;
 		int totalCounter = 0;
@@ -336,8 +406,17 @@ public class ZertifikatRunnerService {
 			batchType, vacmeSettingsService.getCovidApiBatchSize(), queueItemIds.size());
 
 		try {
+			if (vacmeSettingsService.getCovidApiParallelism() > 1) {
+				final List<Boolean> results = revokePipelined(batchType, queueItemIds, lease);
+				successCounter = (int) results.stream().filter(Boolean::booleanValue).count();
+				totalCounter = results.size();
+				return;
+			}
 			for (UUID queueId : queueItemIds) {
 				try {
+					if (isLeaseLost(batchType, lease)) {
+						return;
+					}
 					if (!zertifikatService.hasValidToken()) {
 						LOG.info("VACME-ZERTIFIKAT: ({}) Es gibt kein gueltiges Token fuer die Zertifikat Erstellung. "
 							+ "Breche ab.", batchType);
@@ -363,10 +442,219 @@ public class ZertifikatRunnerService {
 				queueItemIds.size(),
 				stopWatch.getTime(TimeUnit.SECONDS),
 				calculateCertSpeed(totalCounter, stopWatch.getTime()));
-			releaseBatchJobLock(batchType);
 		}
 	}
 
+	/**
+	 * Erstellt die Zertifikate in drei Stufen: Prefetch (pro Chunk von vacme.covidapi.ps.prefetch.size Eintraegen
+	 * eine Pruefung des Tokens und das Laden von Registrierung, Impfdossier und Impfungen mit einer konstanten Anzahl
+	 * Queries), Erstellung ueber die API mit hoechstens vacme.covidapi.ps.parallelism gleichzeitigen Aufrufen, und
+	 * Benachrichtigung als eigene Stufe, damit die API-Aufrufe nicht auf den Versand warten muessen.
+	 *
+	 * @return pro erstelltem bzw. versuchtem Zertifikat, ob es erfolgreich war
+	 */
+	@NonNull
+	private List<Boolean> generatePipelined(
+		@NonNull CovidCertBatchType batchType,
+		@NonNull List<ZertifikatCreationDTO> zertifikatGenerationDTOs,
+		@Nullable JobLease lease
+	) {
+		final int parallelism = vacmeSettingsService.getCovidApiParallelism();
+		final int prefetchSize = Math.max(1, vacmeSettingsService.getCovidApiPrefetchSize());
+		final AtomicBoolean aborted = new AtomicBoolean(false);
+		return Multi.createFrom().iterable(Lists.partition(zertifikatGenerationDTOs, prefetchSize))
+			.onItem().transformToIterable(chunk -> prefetchPendingImpfungen(batchType, chunk, lease, aborted))
+			.onItem().transformToUni(pending -> Uni.createFrom().item(pending)
+				.emitOn(Infrastructure.getDefaultWorkerPool())
+				.onItem().transform(item -> createZertifikatInPipeline(item, batchType, aborted)))
+			.merge(parallelism)
+			.onItem().transformToUni(created -> Uni.createFrom().item(created)
+				.emitOn(Infrastructure.getDefaultWorkerPool())
+				.onItem().transform(item -> notifyInPipeline(item.orElse(null), batchType)))
+			.merge(NOTIFICATION_CONCURRENCY)
+			.collect().asList()
+			.await().indefinitely();
+	}
+
+	@NonNull
+	private List<PendingZertifikat> prefetchPendingImpfungen(
+		@NonNull CovidCertBatchType batchType,
+		@NonNull List<ZertifikatCreationDTO> chunk,
+		@Nullable JobLease lease,
+		@NonNull AtomicBoolean aborted
+	) {
+		if (aborted.get() || isLeaseLost(batchType, lease)) {
+			return Collections.emptyList();
+		}
+		if (!zertifikatService.hasValidToken()) {
+			LOG.info("VACME-ZERTIFIKAT: ({}) Es gibt kein gueltiges Token fuer die Zertifikat Erstellung. "
+				+ "Breche ab.", batchType);
+			aborted.set(true);
+			return Collections.emptyList();
+		}
+		final Map<String, ImpfinformationDto> infosByRegNum =
+			zertifikatService.getImpfinformationenForZertifikatsGeneration(
+				chunk.stream().map(ZertifikatCreationDTO::getRegistrierungsnummer).collect(Collectors.toSet()));
+		final List<PendingZertifikat> pending = new ArrayList<>(chunk.size());
+		for (ZertifikatCreationDTO dto : chunk) {
+			final ImpfinformationDto infos = infosByRegNum.get(dto.getRegistrierungsnummer());
+			final Impfung impfung = infos == null ? null : findImpfung(infos, dto.getImpfungId());
+			if (impfung == null) {
+				// Die uebergebene ImpfungID gehoert nicht zur uebergebenen Registrierungsnummer!!!
+				LOG.error(
+					"VACME-ZERTIFIKAT: ({}) ImpfungId {} passt nicht zu Registrierungsnummer {}",
+					batchType,
+					dto.getImpfungId(),
+					dto.getRegistrierungsnummer());
+			} else if (impfung.isGenerateZertifikat()) {
+				pending.add(new PendingZertifikat(dto.getRegistrierungsnummer(), infos, impfung));
+			} else {
+				LOG.warn(
+					"VACME-ZERTIFIKAT: ({}) Registration {} did not have generateZertifikat = true on Impfung "
+						+ "{}. Maybe it was already processed?",
+					batchType,
+					dto.getRegistrierungsnummer(),
+					dto.getImpfungId());
+			}
+		}
+		return pending;
+	}
+
+	@Nullable
+	private Impfung findImpfung(@NonNull ImpfinformationDto infos, @NonNull UUID impfungId) {
+		return ImpfinformationenUtil.getImpfungenOrderedByImpffolgeNr(infos).stream()
+			.filter(impfung -> impfungId.equals(impfung.getId()))
+			.findFirst()
+			.orElse(null);
+	}
+
+	@NonNull
+	private Optional<CreatedZertifikat> createZertifikatInPipeline(
+		@NonNull PendingZertifikat pending,
+		@NonNull CovidCertBatchType batchType,
+		@NonNull AtomicBoolean aborted
+	) {
+		if (aborted.get()) {
+			return Optional.empty();
+		}
+		final String regNum = pending.getRegistrierungsnummer();
+		try {
+			LOG.info("VACME-ZERTIFIKAT: ({}) Erstelle Zertifikat fuer {}, impfung {}", batchType, regNum,
+				pending.getImpfung().getId());
+			Zertifikat zertifikat = zertifikatService.validateAndTriggerCertificateCreation(
+				pending.getInfos(), pending.getImpfung(), batchType);
+			LOG.info("VACME-ZERTIFIKAT: Created Zertifikat {} for {}", zertifikat.getUvci(), regNum);
+			return Optional.of(new CreatedZertifikat(regNum, zertifikat));
+		} catch (AppValidationException ex) {
+			return Optional.empty();
+		} catch (NoTokenFailureException ex) {
+			LOG.error("VACME-ZERTIFIKAT: Found no valid token for certificate generation. Aborting job");
+			aborted.set(true);
+			return Optional.empty();
+		} catch (Exception exception) {
+			LOG.error("VACME-ZERTIFIKAT: Error during Zertifikat creation for {} ", regNum, exception);
+			return Optional.empty();
+		} finally {
+			sleepForAWhile();
+		}
+	}
+
+	private boolean notifyInPipeline(
+		@Nullable CreatedZertifikat created,
+		@NonNull CovidCertBatchType batchType
+	) {
+		if (created == null) {
+			return false;
+		}
+		final String regNum = created.getRegistrierungsnummer();
+		try {
+			// send  sms in own transaction
+			Registrierung registrierung = this.registrierungService.findRegistrierung(regNum);
+			confirmationService.sendZertifikatsbenachrichtigung(registrierung, created.getZertifikat(), batchType);
+			return true;
+		} catch (Exception exception) {
+			LOG.error("VACME-ZERTIFIKAT: Error during Zertifikat notification for {} ", regNum, exception);
+			return false;
+		}
+	}
+
+	/**
+	 * Im Prefetch geladene Impfinformationen. Die Entitaeten sind detached, siehe
+	 * {@link ZertifikatService#validateAndTriggerCertificateCreation(ImpfinformationDto, Impfung, CovidCertBatchType)}
+	 */
+	@Value
+	private static class PendingZertifikat {
+		@NonNull String registrierungsnummer;
+		@NonNull ImpfinformationDto infos;
+		@NonNull Impfung impfung;
+	}
+
+	@Value
+	private static class CreatedZertifikat {
+		@NonNull String registrierungsnummer;
+		@NonNull Zertifikat zertifikat;
+	}
+
+	/**
+	 * Storniert die Zertifikate mit hoechstens vacme.covidapi.ps.parallelism gleichzeitigen Aufrufen der API. Jedes
+	 * QueueItem wird wie beim sequentiellen Lauf in eigenen Transaktionen storniert und markiert.
+	 *
+	 * @return pro QueueItem, ob es erfolgreich war
+	 */
+	@NonNull
+	private List<Boolean> revokePipelined(
+		@NonNull CovidCertBatchType batchType,
+		@NonNull List<UUID> queueItemIds,
+		@Nullable JobLease lease
+	) {
+		if (!zertifikatService.hasValidToken()) {
+			LOG.info("VACME-ZERTIFIKAT: ({}) Es gibt kein gueltiges Token fuer die Zertifikat Erstellung. "
+				+ "Breche ab.", batchType);
+			return Collections.emptyList();
+		}
+		final AtomicBoolean aborted = new AtomicBoolean(false);
+		return Multi.createFrom().iterable(queueItemIds)
+			.select().where(queueId -> !aborted.get() && !isLeaseLost(batchType, lease))
+			.onItem().transformToUni(queueId -> Uni.createFrom().item(queueId)
+				.emitOn(Infrastructure.getDefaultWorkerPool())
+				.onItem().transform(item -> revokeInPipeline(item, batchType, aborted)))
+			.merge(vacmeSettingsService.getCovidApiParallelism())
+			.collect().asList()
+			.await().indefinitely();
+	}
+
+	private boolean revokeInPipeline(
+		@NonNull UUID queueId,
+		@NonNull CovidCertBatchType batchType,
+		@NonNull AtomicBoolean aborted
+	) {
+		if (aborted.get()) {
+			return false;
+		}
+		try {
+			LOG.info("VACME-ZERTIFIKAT: ({}) Storniere Zertifikat fuer QueueItem {}", batchType, queueId);
+			return revokeZertifikatFromQueue(new ID<>(queueId, ZertifikatQueue.class), batchType);
+		} catch (NoTokenFailureException ex) {
+			aborted.set(true);
+			return false;
+		} finally {
+			sleepForAWhile();
+		}
+	}
+
+	@NonNull
+	private static String getJobLeaseName(@NonNull CovidCertBatchType batchType) {
+		return "ZERTIFIKAT_" + batchType.name();
+	}
+
+	private boolean isLeaseLost(@NonNull CovidCertBatchType batchType, @Nullable JobLease lease) {
+		if (lease != null && !lease.isValid()) {
+			LOG.warn("VACME-ZERTIFIKAT: ({}) Lease {} verloren, breche ab.", batchType, lease);
+			return true;
+		}
+		return false;
+	}
+
 	private void aquireBatchJobLock(@NonNull CovidCertBatchType batchType) {
 		ApplicationPropertyKey lockKey = CovidCertBatchType.mapBatchTypeToLockKey(batchType);
 		this.applicationPropertyService.aquireBatchJobLock(lockKey);
@@ -19,9 +19,11 @@ package ch.dvbern.oss.vacme.service;
 
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.stream.Collectors;
@@ -52,6 +54,7 @@ import ch.dvbern.oss.vacme.jax.registration.ZertifizierungsTokenJax;
 import ch.dvbern.oss.vacme.repo.ApplicationPropertyRepo;
 import ch.dvbern.oss.vacme.repo.RegistrierungRepo;
 import ch.dvbern.oss.vacme.repo.ZertifikatRepo;
+import ch.dvbern.oss.vacme.service.blobstore.BlobStoreService;
 import ch.dvbern.oss.vacme.service.covidcertificate.CovidCertApiService;
 import ch.dvbern.oss.vacme.service.covidcertificate.CovidCertBatchType;
 import ch.dvbern.oss.vacme.service.impfinformationen.ImpfinformationenService;
@@ -83,9 +86,12 @@ public class ZertifikatService {
 	private final ImpfstoffService impfstoffService;
 	private final VacmeSettingsService vacmeSettingsService;
 	private final ImpfdossierService impfdossierService;
+	private final BlobStoreService blobStoreService;
 
 	@NonNull
 	private Zertifikat createZertifikat(@NonNull Zertifikat zertifikat) {
+		blobStoreService.externalize(zertifikat.getZertifikatPdf().getFileBlob());
+		blobStoreService.externalize(zertifikat.getZertifikatQrCode().getFileBlob());
 		zertifikatRepo.create(zertifikat);
 		return zertifikat;
 	}
@@ -198,13 +204,61 @@ public class ZertifikatService {
 			throw AppValidationMessage.ILLEGAL_STATE.create(errorMessage);
 		}
 
+		return triggerCertificateCreation(infos, impfung, impfung, batchType);
+	}
+
+	/**
+	 * Laedt die Impfinformationen (Registrierung, Impfdossier und Impfungen) aller uebergebenen Registrierungen mit
+	 * einer konstanten Anzahl Queries, damit der Batchjob sie nicht pro Zertifikat einzeln lesen muss.
+	 */
+	@Transactional(TxType.REQUIRES_NEW)
+	@NonNull
+	public Map<String, ImpfinformationDto> getImpfinformationenForZertifikatsGeneration(
+		@NonNull Collection<String> registrierungsnummern
+	) {
+		return impfinformationenService.getImpfinformationenBatch(registrierungsnummern, KrankheitIdentifier.COVID);
+	}
+
+	/**
+	 * Variante fuer bereits geladene Impfinformationen (siehe
+	 * {@link #getImpfinformationenForZertifikatsGeneration(Collection)}). Die uebergebene Impfung muss aus diesen
+	 * Impfinformationen stammen. In der eigenen Transaktion wird nur noch die Impfung gelesen, um das Flag
+	 * generateZertifikat zu pruefen und zurueckzusetzen.
+	 */
+	@Transactional(TxType.REQUIRES_NEW)
+	@NonNull
+	public Zertifikat validateAndTriggerCertificateCreation(
+		@NonNull ImpfinformationDto infos,
+		@NonNull Impfung impfung,
+		@NonNull CovidCertBatchType batchType
+	) {
+		final Impfung managedImpfung = impfinformationenService.getImpfungById(impfung.toId());
+		if (!managedImpfung.isGenerateZertifikat()) {
+			// Seit dem Laden der Impfinformationen bereits verarbeitet
+			final String errorMessage = String.format(
+				"VACME-ZERTIFIKAT: Impfung %s von Registrierungsnummer %s hat generateZertifikat nicht mehr gesetzt",
+				impfung.getId(),
+				infos.getRegistrierung().getRegistrierungsnummer());
+			LOG.warn(errorMessage);
+			throw AppValidationMessage.ILLEGAL_STATE.create(errorMessage);
+		}
+		return triggerCertificateCreation(infos, impfung, managedImpfung, batchType);
+	}
+
+	@NonNull
+	private Zertifikat triggerCertificateCreation(
+		@NonNull ImpfinformationDto infos,
+		@NonNull Impfung impfung,
+		@NonNull Impfung managedImpfung,
+		@NonNull CovidCertBatchType batchType
+	) {
 		// validate
 		DeservesZertifikatValidator.deservesZertifikatOrThrowException(infos, impfung);
 		// create Zertifikat
 		final Zertifikat zertifikat = covidCertApiService.createVaccinationCert(infos, impfung, batchType);
 		// Zertifikat in Vacme speichern
 		createZertifikat(zertifikat);
-		impfung.setGenerateZertifikat(false);
+		managedImpfung.setGenerateZertifikat(false);
 		return zertifikat;
 	}
 
@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2022 DV Bern AG, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.dvbern.oss.vacme.service.blobstore;
+
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+import ch.dvbern.oss.vacme.entities.embeddables.FileBlob;
+import ch.dvbern.oss.vacme.repo.BlobStoreMigrationRepo;
+import ch.dvbern.oss.vacme.service.VacmeSettingsService;
+import ch.dvbern.oss.vacme.service.joblease.JobLeaseService;
+import ch.dvbern.oss.vacme.shared.blobstore.BlobStore;
+import ch.dvbern.oss.vacme.shared.errors.AppFailureException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.time.StopWatch;
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+/**
+ * Lagert die Inhalte von {@link FileBlob} aus der DB in den {@link BlobStore} aus: neue Dateien beim Speichern,
+ * bestehende ueber den Migrations-Job. Beides nur, wenn vacme.blobstore.enabled gesetzt ist.
+ * <p>
+ * Inhalte werden dedupliziert und beim Loeschen einer Zeile nicht entfernt. Das uebernimmt die Garbage Collection:
+ * sie entfernt alle Inhalte, auf die keine Zeile mehr verweist. Damit werden auch Inhalte aufgeraeumt, deren
+ * Transaktion nach dem Ablegen zurueckgerollt wurde. Inhalte, die juenger als vacme.blobstore.gc.grace.minutes sind,
+ * bleiben liegen, da ihr Verweis noch nicht committet sein kann.
+ */
+@ApplicationScoped
+@Slf4j
+@RequiredArgsConstructor(onConstructor_ = @Inject)
+public class BlobStoreService {
+
+	private static final String JOB_NAME = "blobStoreMigration";
+	private static final String GC_JOB_NAME = "blobStoreGarbageCollection";
+
+	private final BlobStore blobStore;
+	private final BlobStoreMigrationRepo blobStoreMigrationRepo;
+	private final VacmeSettingsService vacmeSettingsService;
+	private final JobLeaseService jobLeaseService;
+
+	/**
+	 * Legt den Inhalt im BlobStore ab und leert die Spalte in der DB. Muss vor dem Speichern der Entitaet
+	 * aufgerufen werden.
+	 */
+	public void externalize(@NonNull FileBlob fileBlob) {
+		if (!vacmeSettingsService.isBlobStoreEnabled() || fileBlob.isExternalized()) {
+			return;
+		}
+		try {
+			// Der Stream gehoert dem Blob (bei Streaming-Blobs dem Aufrufer) und wird hier nicht geschlossen
+			fileBlob.externalize(blobStore.put(fileBlob.getData().getBinaryStream()));
+		} catch (SQLException e) {
+			throw new AppFailureException("VACME-BLOBSTORE: Inhalt konnte nicht gelesen werden", e);
+		}
+	}
+
+	/**
+	 * Lagert alle noch in der DB liegenden Inhalte aus. Jede Zeile wird in einer eigenen Transaktion verschoben,
+	 * ein abgebrochener Lauf macht beim naechsten Mal dort weiter. Laeuft nur auf einem Node gleichzeitig.
+	 */
+	public void migrate() {
+		if (!vacmeSettingsService.isBlobStoreEnabled()) {
+			return;
+		}
+		jobLeaseService.runWithLease(JOB_NAME, 1, lease -> {
+			final int batchSize = vacmeSettingsService.getBlobStoreMigrationBatchSize();
+			final StopWatch stopWatch = StopWatch.createStarted();
+			int anzahl = 0;
+			int fehler = 0;
+			for (BlobTabelle tabelle : BlobTabelle.values()) {
+				// Fehlerhafte Zeilen werden uebersprungen, daher wird ueber die ID weitergeblaettert
+				String letzteId = "";
+				while (true) {
+					if (!lease.isValid()) {
+						LOG.warn("VACME-BLOBSTORE: Lease {} verloren, Migration wird abgebrochen", lease);
+						return;
+					}
+					final List<String> ids = blobStoreMigrationRepo.findNichtAusgelagert(tabelle, letzteId, batchSize);
+					for (String id : ids) {
+						try {
+							if (blobStoreMigrationRepo.auslagern(tabelle, id, blobStore::put).isPresent()) {
+								anzahl++;
+							}
+						} catch (Exception e) {
+							fehler++;
+							LOG.error("VACME-BLOBSTORE: Inhalt von {} {} konnte nicht ausgelagert werden", tabelle, id, e);
+						}
+					}
+					if (ids.size() < batchSize) {
+						break;
+					}
+					letzteId = ids.get(ids.size() - 1);
+				}
+			}
+			stopWatch.stop();
+			if (anzahl > 0 || fehler > 0) {
+				LOG.info("VACME-BLOBSTORE: {} Inhalte in {}ms in den BlobStore ausgelagert, {} Fehler",
+					anzahl, stopWatch.getTime(TimeUnit.MILLISECONDS), fehler);
+			}
+		});
+	}
+
+	/**
+	 * Entfernt alle Inhalte aus dem BlobStore, auf die keine Zeile mehr verweist. Laeuft auch bei deaktiviertem
+	 * BlobStore, damit nach dem Deaktivieren keine Personendaten liegen bleiben. Laeuft nur auf einem Node gleichzeitig.
+	 */
+	public void collectGarbage() {
+		jobLeaseService.runWithLease(GC_JOB_NAME, 1, lease -> {
+			final int batchSize = vacmeSettingsService.getBlobStoreMigrationBatchSize();
+			final Instant abgelegtVor = Instant.now()
+				.minus(vacmeSettingsService.getBlobStoreGcGraceMinutes(), ChronoUnit.MINUTES);
+			final StopWatch stopWatch = StopWatch.createStarted();
+			int entfernt = 0;
+			try (Stream<String> contentHashes = blobStore.streamContentHashes(abgelegtVor)) {
+				final Iterator<String> iterator = contentHashes.iterator();
+				while (iterator.hasNext()) {
+					final List<String> batch = new ArrayList<>(batchSize);
+					while (iterator.hasNext() && batch.size() < batchSize) {
+						batch.add(iterator.next());
+					}
+					if (!lease.isValid()) {
+						LOG.warn("VACME-BLOBSTORE: Lease {} verloren, Garbage Collection wird abgebrochen", lease);
+						return;
+					}
+					final Set<String> referenziert = blobStoreMigrationRepo.findReferenzierteContentHashes(batch);
+					for (String contentHash : batch) {
+						if (!referenziert.contains(contentHash) && blobStore.deleteIfAbgelegtVor(contentHash, abgelegtVor)) {
+							entfernt++;
+						}
+					}
+				}
+			} finally {
+				stopWatch.stop();
+				if (entfernt > 0) {
+					LOG.info("VACME-BLOBSTORE: {} nicht mehr referenzierte Inhalte in {}ms entfernt",
+						entfernt, stopWatch.getTime(TimeUnit.MILLISECONDS));
+				}
+			}
+		});
+	}
+}
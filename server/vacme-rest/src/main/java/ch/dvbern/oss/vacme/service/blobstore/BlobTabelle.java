@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2022 DV Bern AG, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.dvbern.oss.vacme.service.blobstore;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+/**
+ * Tabellen, die eine {@link ch.dvbern.oss.vacme.entities.embeddables.FileBlob} enthalten und deren Inhalte in den
+ * BlobStore ausgelagert werden koennen
+ */
+@Getter
+@RequiredArgsConstructor
+public enum BlobTabelle {
+
+	IMPFDOSSIER_FILE("ImpfdossierFile"),
+	REGISTRIERUNG_FILE("RegistrierungFile"),
+	ZERTIFIKAT_FILE("ZertifikatFile"),
+	DOCUMENT_QUEUE_RESULT("DocumentQueueResult");
+
+	@NonNull
+	private final String tableName;
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2022 DV Bern AG, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.dvbern.oss.vacme.service.blobstore;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+import ch.dvbern.oss.vacme.service.VacmeSettingsService;
+import ch.dvbern.oss.vacme.shared.blobstore.BlobStore;
+import ch.dvbern.oss.vacme.shared.errors.AppFailureException;
+import com.google.common.hash.Hashing;
+import com.google.common.hash.HashingOutputStream;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Legt die Inhalte unter vacme.blobstore.filesystem.root ab, verteilt auf zwei Verzeichnisebenen nach den ersten
+ * Zeichen des Hashes (ab/cd/abcd...). Das Verzeichnis muss bei mehreren Nodes auf einem gemeinsamen Volume liegen.
+ * Neue Dateien werden zuerst in tmp geschrieben und dann atomar an ihren Platz verschoben, so dass nie eine halb
+ * geschriebene Datei unter einem Hash gelesen werden kann.
+ */
+@ApplicationScoped
+@Slf4j
+@RequiredArgsConstructor(onConstructor_ = @Inject)
+public class FileSystemBlobStore implements BlobStore {
+
+	private static final Pattern CONTENT_HASH = Pattern.compile("[0-9a-f]{64}");
+	private static final String TMP_DIR = "tmp";
+
+	private final VacmeSettingsService vacmeSettingsService;
+
+	@NonNull
+	@Override
+	@SuppressWarnings("UnstableApiUsage")
+	public String put(@NonNull InputStream content) {
+		Path tmpFile = null;
+		try {
+			Path tmpDir = Files.createDirectories(getRoot().resolve(TMP_DIR));
+			tmpFile = Files.createTempFile(tmpDir, "blob-", ".tmp");
+			String contentHash;
+			try (HashingOutputStream out = new HashingOutputStream(Hashing.sha256(), Files.newOutputStream(tmpFile))) {
+				content.transferTo(out);
+				out.flush();
+				contentHash = out.hash().toString();
+			}
+			Path target = resolve(contentHash);
+			if (Files.exists(target)) {
+				// Identischer Inhalt ist schon abgelegt. Als neu markieren, damit ihn die Garbage Collection nicht
+				// entfernt, bevor der neue Verweis committet ist.
+				Files.setLastModifiedTime(target, FileTime.from(Instant.now()));
+				return contentHash;
+			}
+			// Erst auf die Platte bringen, die DB verweist nach dem Commit auf die Datei
+			try (FileChannel channel = FileChannel.open(tmpFile, StandardOpenOption.WRITE)) {
+				channel.force(true);
+			}
+			Files.createDirectories(target.getParent());
+			Files.move(tmpFile, target, StandardCopyOption.ATOMIC_MOVE);
+			LOG.debug("VACME-BLOBSTORE: Inhalt {} abgelegt", contentHash);
+			return contentHash;
+		} catch (IOException e) {
+			throw new AppFailureException("VACME-BLOBSTORE: Inhalt konnte nicht abgelegt werden", e);
+		} finally {
+			deleteTmpFile(tmpFile);
+		}
+	}
+
+	@NonNull
+	@Override
+	public InputStream open(@NonNull String contentHash) {
+		try {
+			return Files.newInputStream(resolve(contentHash));
+		} catch (NoSuchFileException e) {
+			throw new AppFailureException("VACME-BLOBSTORE: Inhalt " + contentHash + " existiert nicht", e);
+		} catch (IOException e) {
+			throw new AppFailureException("VACME-BLOBSTORE: Inhalt " + contentHash + " konnte nicht gelesen werden", e);
+		}
+	}
+
+	@Override
+	public long size(@NonNull String contentHash) {
+		try {
+			return Files.size(resolve(contentHash));
+		} catch (IOException e) {
+			throw new AppFailureException("VACME-BLOBSTORE: Inhalt " + contentHash + " konnte nicht gelesen werden", e);
+		}
+	}
+
+	@Override
+	public boolean exists(@NonNull String contentHash) {
+		return Files.isRegularFile(resolve(contentHash));
+	}
+
+	@NonNull
+	@Override
+	public Optional<Path> getLocalPath(@NonNull String contentHash) {
+		return Optional.of(resolve(contentHash));
+	}
+
+	@NonNull
+	@Override
+	public Stream<String> streamContentHashes(@NonNull Instant abgelegtVor) {
+		final Path root = getRoot();
+		if (!Files.isDirectory(root)) {
+			return Stream.empty();
+		}
+		try {
+			// Nur root/ab/cd/<hash>, das Verzeichnis tmp enthaelt keine Inhalte
+			return Files.find(root, 3, (path, attributes) -> attributes.isRegularFile()
+				&& root.relativize(path).getNameCount() == 3
+				&& CONTENT_HASH.matcher(path.getFileName().toString()).matches()
+				&& attributes.lastModifiedTime().toInstant().isBefore(abgelegtVor))
+				.map(path -> path.getFileName().toString());
+		} catch (IOException e) {
+			throw new AppFailureException("VACME-BLOBSTORE: Inhalte konnten nicht aufgelistet werden", e);
+		}
+	}
+
+	@Override
+	public boolean deleteIfAbgelegtVor(@NonNull String contentHash, @NonNull Instant abgelegtVor) {
+		final Path file = resolve(contentHash);
+		try {
+			if (!Files.getLastModifiedTime(file).toInstant().isBefore(abgelegtVor)) {
+				return false;
+			}
+			return Files.deleteIfExists(file);
+		} catch (NoSuchFileException e) {
+			return false;
+		} catch (IOException e) {
+			throw new AppFailureException("VACME-BLOBSTORE: Inhalt " + contentHash + " konnte nicht entfernt werden", e);
+		}
+	}
+
+	@NonNull
+	Path resolve(@NonNull String contentHash) {
+		// Der Hash wird Teil des Pfads und darf deshalb nur aus Hex-Zeichen bestehen
+		if (!CONTENT_HASH.matcher(contentHash).matches()) {
+			throw new AppFailureException("VACME-BLOBSTORE: Ungueltiger Hash " + contentHash);
+		}
+		return getRoot()
+			.resolve(contentHash.substring(0, 2))
+			.resolve(contentHash.substring(2, 4))
+			.resolve(contentHash);
+	}
+
+	@NonNull
+	private Path getRoot() {
+		return Paths.get(vacmeSettingsService.getBlobStoreFilesystemRoot());
+	}
+
+	private void deleteTmpFile(@Nullable Path tmpFile) {
+		if (tmpFile == null) {
+			return;
+		}
+		try {
+			Files.deleteIfExists(tmpFile);
+		} catch (IOException e) {
+			LOG.warn("VACME-BLOBSTORE: Temporaere Datei {} konnte nicht geloescht werden", tmpFile, e);
+		}
+	}
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2022 DV Bern AG, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.dvbern.oss.vacme.service.booster;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+import lombok.RequiredArgsConstructor;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.eclipse.microprofile.metrics.Gauge;
+import org.eclipse.microprofile.metrics.Metadata;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.eclipse.microprofile.metrics.MetricType;
+import org.eclipse.microprofile.metrics.MetricUnits;
+import org.eclipse.microprofile.metrics.Tag;
+
+/**
+ * Metriken der Impfschutzneuberechnung (Rule Engine): Durchsatz des letzten Laufs in Regs/Sekunde sowie der
+ * Fortschritt pro Partition (bearbeitete und total zugeteilte Eintraege). Die Partitions-Gauges werden beim
+ * ersten Verwenden einer Partition registriert.
+ */
+@ApplicationScoped
+@RequiredArgsConstructor(onConstructor_ = @Inject)
+public class BoosterRecalculationMetrics {
+
+	private static final String TAG_PARTITION = "partition";
+
+	private final MetricRegistry metricRegistry; // application registry
+
+	private final Map<Long, PartitionProgress> partitions = new ConcurrentHashMap<>();
+	private final AtomicLong processedTotal = new AtomicLong();
+	private final AtomicLong failedTotal = new AtomicLong();
+	private final AtomicLong lastRunThroughputMilli = new AtomicLong();
+	private volatile boolean globalGaugesRegistered = false;
+
+	public void partitionStarted(long partition, long totalItems) {
+		PartitionProgress progress = getProgress(partition);
+		progress.total.addAndGet(totalItems);
+	}
+
+	public void itemProcessed(long partition, boolean success) {
+		getProgress(partition).processed.incrementAndGet();
+		processedTotal.incrementAndGet();
+		if (!success) {
+			failedTotal.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Setzt den Fortschritt aller Partitionen zurueck. Wird zu Beginn jedes Laufs aufgerufen.
+	 */
+	public void runStarted() {
+		registerGlobalGaugesIfNeeded();
+		partitions.values().forEach(PartitionProgress::reset);
+	}
+
+	public void runFinished(long processedItems, long durationMillis) {
+		// in tausendstel Regs/Sekunde, damit der Gauge ein long bleiben kann
+		lastRunThroughputMilli.set(durationMillis > 0 ? processedItems * 1000L * 1000L / durationMillis : 0);
+	}
+
+	public double getLastRunThroughput() {
+		return lastRunThroughputMilli.get() / 1000d;
+	}
+
+	@NonNull
+	private PartitionProgress getProgress(long partition) {
+		return partitions.computeIfAbsent(partition, this::registerPartition);
+	}
+
+	@NonNull
+	private PartitionProgress registerPartition(long partition) {
+		final PartitionProgress progress = new PartitionProgress();
+		final Tag tag = new Tag(TAG_PARTITION, String.valueOf(partition));
+		registerGauge("vacme.booster.recalc.partition.processed", "Bearbeitete Eintraege der Partition im aktuellen Lauf",
+			MetricUnits.NONE, progress.processed::get, tag);
+		registerGauge("vacme.booster.recalc.partition.total", "Zugeteilte Eintraege der Partition im aktuellen Lauf",
+			MetricUnits.NONE, progress.total::get, tag);
+		return progress;
+	}
+
+	private synchronized void registerGlobalGaugesIfNeeded() {
+		if (globalGaugesRegistered) {
+			return;
+		}
+		registerGauge("vacme.booster.recalc.processed", "Total berechnete Registrierungen seit dem Start",
+			MetricUnits.NONE, processedTotal::get);
+		registerGauge("vacme.booster.recalc.failed", "Total fehlgeschlagene Berechnungen seit dem Start",
+			MetricUnits.NONE, failedTotal::get);
+		registerGauge("vacme.booster.recalc.throughput", "Durchsatz des letzten Laufs in Registrierungen pro Sekunde",
+			MetricUnits.PER_SECOND, this::getLastRunThroughput);
+		globalGaugesRegistered = true;
+	}
+
+	private <T extends Number> void registerGauge(
+		@NonNull String metricName,
+		@NonNull String description,
+		@NonNull String unit,
+		@NonNull Supplier<T> valueSupplier,
+		@NonNull Tag... tags
+	) {
+		final Metadata metadata = Metadata.builder()
+			.withName(metricName)
+			.withDescription(description)
+			.withType(MetricType.GAUGE)
+			.withUnit(unit)
+			.build();
+		final Gauge<T> gauge = valueSupplier::get;
+		metricRegistry.register(metadata, gauge, tags);
+	}
+
+	private static class PartitionProgress {
+		private final AtomicLong processed = new AtomicLong();
+		private final AtomicLong total = new AtomicLong();
+
+		private void reset() {
+			processed.set(0);
+			total.set(0);
+		}
+	}
+}
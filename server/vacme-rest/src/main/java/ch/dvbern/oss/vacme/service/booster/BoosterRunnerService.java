@@ -25,6 +25,7 @@ import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 import javax.enterprise.context.ApplicationScoped;
@@ -43,6 +44,7 @@ import ch.dvbern.oss.vacme.service.VacmeSettingsService;
 import ch.dvbern.oss.vacme.service.ImpfdossierService;
 import ch.dvbern.oss.vacme.service.boosterprioritaet.BoosterPrioUtil;
 import ch.dvbern.oss.vacme.shared.util.Constants;
+import com.google.common.collect.Lists;
 import io.smallrye.mutiny.Uni;
 import io.smallrye.mutiny.infrastructure.Infrastructure;
 import lombok.RequiredArgsConstructor;
@@ -64,6 +66,7 @@ public class BoosterRunnerService {
 	private final BoosterService boosterService;
 	private final BoosterQueueRepo boosterQueueRepo;
 	private final ImpfdossierService impfdossierService;
+	private final BoosterRecalculationMetrics recalculationMetrics;
 
 
 	@Transactional(TxType.NOT_SUPPORTED)
@@ -124,6 +127,7 @@ public class BoosterRunnerService {
 		try {
 			dossierIdsToMove = boosterService.findDossiersToMoveToFreigegebenBooster(vacmeSettingsService.getMoveImmunisierteToFreigegebeneBoosterBatchSize());
 			long smsSleepTime =  vacmeSettingsService.getFreigabeSMSSleepTime();
+			final boolean smsOutboxEnabled = vacmeSettingsService.isSmsOutboxEnabled();
 			LOG.debug("VACME-BOOSTER-FREIGABEMOVE: Starting to move Status of a batch of up to {} Dossiers. Found {}",
 				vacmeSettingsService.getMoveVollstGeimpfteToImmunisiertBatchSize(), dossierIdsToMove.size());
 
@@ -142,8 +146,9 @@ public class BoosterRunnerService {
 					LOG.debug("VACME-BOOSTER-FREIGABEMOVE: Verschiebe Status fuer {} auf {} von {}",  dossierId, FREIGEGEBEN_BOOSTER, impfdossier.getDossierStatus());
 					boolean success = boosterService.moveStatusToFreigegebenAndSendBenachrichtigung(impfdossier);
 
-					// SMS-Bremse bei den Online-Regs
-					if (impfdossier.getRegistrierung().getRegistrierungsEingang() == RegistrierungsEingang.ONLINE_REGISTRATION) {
+					// SMS-Bremse bei den Online-Regs. Mit der SmsOutbox bremst der Dispatcher selber
+					if (!smsOutboxEnabled
+						&& impfdossier.getRegistrierung().getRegistrierungsEingang() == RegistrierungsEingang.ONLINE_REGISTRATION) {
 						sleepForAWhile(smsSleepTime);
 					}
 
@@ -177,49 +182,109 @@ public class BoosterRunnerService {
 	}
 
 	public int performImpfschutzCalculation(@NonNull List<RegistrierungQueue> currentQueueItems) {
+		return performImpfschutzCalculation(0, currentQueueItems);
+	}
+
+	private int performImpfschutzCalculation(long partition, @NonNull List<RegistrierungQueue> currentQueueItems) {
 		StopWatch stopWatch = StopWatch.createStarted();
 		int successCounter = 0;
 		int totalCounter = 0;
+		recalculationMetrics.partitionStarted(partition, currentQueueItems.size());
 		try {
-			LOG.info("VACME-BOOSTER-RULE_ENGINE: Starting to calculate Impfschutz for {} Regs",
-				currentQueueItems.size());
-
-			for (RegistrierungQueue queueItem : currentQueueItems) {
-				try {
-					// ich glaube wir koennen hier nichts checken weil wir fast immer neu berechnen koennen / wollen
-					LOG.debug("VACME-BOOSTER-RULE_ENGINE: Berechne Impfschutz fuer Registrierung {}", queueItem.getRegistrierungNummer());
-					boolean success = boosterService.calculateImpfschutz(queueItem, queueItem.getKrankheitIdentifier());
-					if (success) {
-						successCounter++;
+			LOG.info("VACME-BOOSTER-RULE_ENGINE: Starting to calculate Impfschutz for {} Regs (Partition {})",
+				currentQueueItems.size(), partition);
+
+			final int bulkLoadSize = vacmeSettingsService.getRuleEngineBulkLoadSize();
+			if (bulkLoadSize <= 1) {
+				for (RegistrierungQueue queueItem : currentQueueItems) {
+					try {
+						if (performImpfschutzCalculationSingle(partition, queueItem)) {
+							successCounter++;
+						}
+					} finally {
+						totalCounter++;
+					}
+				}
+			} else {
+				Map<KrankheitIdentifier, List<RegistrierungQueue>> itemsByKrankheit = currentQueueItems.stream()
+					.collect(Collectors.groupingBy(RegistrierungQueue::getKrankheitIdentifier));
+				for (Map.Entry<KrankheitIdentifier, List<RegistrierungQueue>> entry : itemsByKrankheit.entrySet()) {
+					for (List<RegistrierungQueue> batch : Lists.partition(entry.getValue(), bulkLoadSize)) {
+						try {
+							successCounter += performImpfschutzCalculationBatch(partition, batch, entry.getKey());
+						} finally {
+							totalCounter += batch.size();
+						}
 					}
-				} finally {
-					totalCounter++;
 				}
 			}
 		} finally {
 			stopWatch.stop();
 			LOG.info(
 				"VACME-BOOSTER-RULE_ENGINE: Impfschutzberechnung beendet. Es wurden {} Regs von total {} Registrierungen"
-					+ " in {}ms berechnet. {} ms/stk",
+					+ " in {}ms berechnet. {} ms/stk (Partition {})",
 				successCounter, currentQueueItems.size(), stopWatch.getTime(TimeUnit.MILLISECONDS),
 				calculateGenerationSpeed(totalCounter,
-					stopWatch.getTime(TimeUnit.MILLISECONDS)));
+					stopWatch.getTime(TimeUnit.MILLISECONDS)),
+				partition);
 		}
 		return successCounter;
 	}
 
+	private int performImpfschutzCalculationBatch(
+		long partition,
+		@NonNull List<RegistrierungQueue> batch,
+		@NonNull KrankheitIdentifier krankheitIdentifier
+	) {
+		try {
+			int successCount = boosterService.calculateImpfschutzBatch(batch, krankheitIdentifier);
+			batch.forEach(queueItem -> recalculationMetrics.itemProcessed(partition, true));
+			return successCount;
+		} catch (Exception e) {
+			// Die Batch-Transaktion wurde zurueckgerollt: einzeln berechnen, damit nur die fehlerhaften Regs
+			// als FAILED markiert werden
+			LOG.warn("VACME-BOOSTER-RULE_ENGINE: Batchberechnung fuer {} Regs fehlgeschlagen, berechne einzeln ({})",
+				batch.size(), e.getMessage());
+			int successCount = 0;
+			for (RegistrierungQueue queueItem : batch) {
+				if (performImpfschutzCalculationSingle(partition, queueItem)) {
+					successCount++;
+				}
+			}
+			return successCount;
+		}
+	}
+
+	private boolean performImpfschutzCalculationSingle(long partition, @NonNull RegistrierungQueue queueItem) {
+		boolean success = false;
+		try {
+			// ich glaube wir koennen hier nichts checken weil wir fast immer neu berechnen koennen / wollen
+			LOG.debug("VACME-BOOSTER-RULE_ENGINE: Berechne Impfschutz fuer Registrierung {}", queueItem.getRegistrierungNummer());
+			success = boosterService.calculateImpfschutz(queueItem, queueItem.getKrankheitIdentifier());
+			return success;
+		} finally {
+			recalculationMetrics.itemProcessed(partition, success);
+		}
+	}
+
 	public void performImpfschutzCalculationByQueue() {
+		if (vacmeSettingsService.isRuleEngineLeaseEnabled()) {
+			performImpfschutzCalculationByLease();
+			return;
+		}
 		List<RegistrierungQueue> queueEntries = boosterQueueRepo.findRegsToRecalculateImpfschutzFromQueue(vacmeSettingsService.getRuleEngineJobBatchSize());
+		recalculationMetrics.runStarted();
+		StopWatch stopWatch = StopWatch.createStarted();
 		// if we are not using multiple workpartitions do not bother starting extra worker-threads
 		long numberOfPartitions = vacmeSettingsService.getNumberOfPartionsForRuleRecalculation();
 		if (numberOfPartitions == 1 || numberOfPartitions == 0) {
 			// calculation is synchronous on one thread
 			performImpfschutzCalculation(queueEntries);
+			recalculationMetrics.runFinished(queueEntries.size(), stopWatch.getTime(TimeUnit.MILLISECONDS));
 			return;
 		}
 
 		// async, calculation will be partitioned into multiple workloads and performed by multiple threads
-		StopWatch stopWatch = StopWatch.createStarted();
 		LOG.info(
 			"VACME-BOOSTER-RULE_ENGINE: Starting to recalculate Booster Rules for queued Registrierungen. Task will be split into {} partitions",
 			numberOfPartitions);
@@ -227,37 +292,111 @@ public class BoosterRunnerService {
 			.collect(Collectors.groupingBy(entry -> entry.getId() % numberOfPartitions));
 
 		List<CompletableFuture<Integer>> recalculationTaks = new ArrayList<>();
-		for (List<RegistrierungQueue> currentQueueItems : partitionMap.values()) {
+		for (Map.Entry<Long, List<RegistrierungQueue>> partitionEntry : partitionMap.entrySet()) {
 
 			// potentielles Improvement: hier die verschiedenen Partitionen
 			// per expliziten webservicecall ueber ip auf quarkus auf mehrere nodes verteilen
+			// (siehe vacme.booster.rule.engine.lease.enabled)
 
-			CompletableFuture<Integer> recalculatePartitionTask = Uni.createFrom().item(currentQueueItems)
+			final long partition = partitionEntry.getKey();
+			CompletableFuture<Integer> recalculatePartitionTask = Uni.createFrom().item(partitionEntry.getValue())
 				.emitOn(Infrastructure.getDefaultWorkerPool())
-				.onItem().transform(this::performImpfschutzCalculation) // actual calculation
+				.onItem().transform(items -> performImpfschutzCalculation(partition, items)) // actual calculation
 				.subscribe().asCompletionStage();
 
 			recalculationTaks.add(recalculatePartitionTask);
 		}
 
-		Integer totalProcessedSuccess = 0;
+		int totalProcessedSuccess = awaitPartitions(recalculationTaks, queueEntries.size(), 3);
+		recalculationMetrics.runFinished(queueEntries.size(), stopWatch.getTime(TimeUnit.MILLISECONDS));
+		LOG.info("VACME-BOOSTER-RULE_ENGINE: Processed {} of {} queueItems successfully in {} partitions. Total time {}ms",
+			totalProcessedSuccess, queueEntries.size(), numberOfPartitions, stopWatch.getTime(TimeUnit.MILLISECONDS));
+	}
+
+	/**
+	 * Verteilt die Berechnung ueber Leases auf der RegistrierungQueue: Jede Partition reserviert sich selber
+	 * fortlaufend Chunks von offenen Eintraegen, bis das Budget des Laufs (Batchsize) aufgebraucht oder die Queue leer
+	 * ist. Da die Reservation ueber die DB laeuft, koennen auch mehrere Nodes gleichzeitig an derselben Queue arbeiten.
+	 */
+	private void performImpfschutzCalculationByLease() {
+		recalculationMetrics.runStarted();
+		StopWatch stopWatch = StopWatch.createStarted();
+		final long numberOfPartitions = Math.max(1, vacmeSettingsService.getNumberOfPartionsForRuleRecalculation());
+		final long chunkSize = Math.max(1, vacmeSettingsService.getRuleEngineJobChunkSize());
+		final long leaseSeconds = vacmeSettingsService.getRuleEngineLeaseSeconds();
+		final long batchSize = vacmeSettingsService.getRuleEngineJobBatchSize();
+		final AtomicLong budget = new AtomicLong(batchSize);
+		final AtomicLong claimedTotal = new AtomicLong();
+		LOG.info("VACME-BOOSTER-RULE_ENGINE: Starting to recalculate Booster Rules by lease in {} partitions, "
+			+ "chunksize {}, budget {}", numberOfPartitions, chunkSize, batchSize);
 
+		List<CompletableFuture<Integer>> recalculationTaks = new ArrayList<>();
+		for (long partition = 0; partition < numberOfPartitions; partition++) {
+			final long currentPartition = partition;
+			CompletableFuture<Integer> recalculatePartitionTask = Uni.createFrom().item(currentPartition)
+				.emitOn(Infrastructure.getDefaultWorkerPool())
+				.onItem().transform(p -> performImpfschutzCalculationForLeasedChunks(
+					p, chunkSize, leaseSeconds, budget, claimedTotal))
+				.subscribe().asCompletionStage();
+			recalculationTaks.add(recalculatePartitionTask);
+		}
+
+		// Jeder Chunk muss innerhalb seines Leases fertig werden, sonst wird er evtl. von einem anderen Node nochmals
+		// berechnet (was fachlich kein Problem ist, da die Berechnung idempotent ist)
+		long maxWaitMinutes = Math.max(3, TimeUnit.SECONDS.toMinutes(leaseSeconds));
+		int totalProcessedSuccess = awaitPartitions(recalculationTaks, batchSize, maxWaitMinutes);
+		recalculationMetrics.runFinished(claimedTotal.get(), stopWatch.getTime(TimeUnit.MILLISECONDS));
+		LOG.info("VACME-BOOSTER-RULE_ENGINE: Processed {} of {} leased queueItems successfully in {} partitions. "
+				+ "Total time {}ms, {} Regs/s",
+			totalProcessedSuccess, claimedTotal.get(), numberOfPartitions, stopWatch.getTime(TimeUnit.MILLISECONDS),
+			recalculationMetrics.getLastRunThroughput());
+	}
+
+	private int performImpfschutzCalculationForLeasedChunks(
+		long partition,
+		long chunkSize,
+		long leaseSeconds,
+		@NonNull AtomicLong budget,
+		@NonNull AtomicLong claimedTotal
+	) {
+		int successCounter = 0;
+		while (true) {
+			final long remainingBefore = budget.getAndAdd(-chunkSize);
+			if (remainingBefore <= 0) {
+				return successCounter;
+			}
+			final String leaseOwner = UUID.randomUUID().toString();
+			final List<RegistrierungQueue> chunk = boosterQueueRepo.claimRegsToRecalculateImpfschutzFromQueue(
+				leaseOwner, Math.min(chunkSize, remainingBefore), leaseSeconds);
+			if (chunk.isEmpty()) {
+				return successCounter;
+			}
+			claimedTotal.addAndGet(chunk.size());
+			successCounter += performImpfschutzCalculation(partition, chunk);
+		}
+	}
+
+	private int awaitPartitions(
+		@NonNull List<CompletableFuture<Integer>> recalculationTaks,
+		long queueEntriesCount,
+		long maxWaitMinutes
+	) {
+		int totalProcessedSuccess = 0;
 		for (CompletableFuture<Integer> integerUni : recalculationTaks) {
 			try {
-				Integer successfullCalculationsInTask = integerUni.get(3, TimeUnit.MINUTES); // wait max 3 Minutes
+				Integer successfullCalculationsInTask = integerUni.get(maxWaitMinutes, TimeUnit.MINUTES);
 				totalProcessedSuccess += successfullCalculationsInTask;
 			} catch (InterruptedException e) {
 				LOG.error("VACME-BOOSTER-RULE_ENGINE: Thread was interrupted while processing {} queueEntries ",
-					queueEntries.size(), e);
+					queueEntriesCount, e);
 			} catch (ExecutionException e) {
 				LOG.error("VACME-BOOSTER-RULE_ENGINE: An Exception escaped while processing {} queueEntries for "
-					+ "recalculation", queueEntries.size(), e);
+					+ "recalculation", queueEntriesCount, e);
 			} catch (TimeoutException e) {
 				LOG.error("VACME-BOOSTER-RULE_ENGINE: Waiting for the calculation result of the {} qued entries took "
-					+ "to long", queueEntries.size());
+					+ "to long", queueEntriesCount);
 			}
 		}
-		LOG.info("VACME-BOOSTER-RULE_ENGINE: Processed {} of {} queueItems successfully in {} partitions. Total time {}ms",
-			totalProcessedSuccess, queueEntries.size(), numberOfPartitions, stopWatch.getTime(TimeUnit.MILLISECONDS));
+		return totalProcessedSuccess;
 	}
 }
@@ -17,13 +17,18 @@
 
 package ch.dvbern.oss.vacme.service.booster;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.stream.Collectors;
 
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
+import javax.transaction.TransactionSynchronizationRegistry;
 import javax.transaction.Transactional;
 import javax.transaction.Transactional.TxType;
 
@@ -40,17 +45,22 @@ import ch.dvbern.oss.vacme.repo.ImpfdossierRepo;
 import ch.dvbern.oss.vacme.repo.RegistrierungRepo;
 import ch.dvbern.oss.vacme.service.ConfirmationService;
 import ch.dvbern.oss.vacme.service.FragebogenService;
+import ch.dvbern.oss.vacme.service.VacmeSettingsService;
 import ch.dvbern.oss.vacme.service.boosterprioritaet.BoosterPrioUtil;
 import ch.dvbern.oss.vacme.service.impfinformationen.ImpfinformationenService;
 import ch.dvbern.oss.vacme.service.impfschutz.ImpfschutzCalculationQueueService;
 import ch.dvbern.oss.vacme.service.impfschutz.ImpfschutzCalculationQueueServiceFactory;
 import ch.dvbern.oss.vacme.service.impfschutz.ImpfschutzCalculationService;
 import ch.dvbern.oss.vacme.service.impfschutz.ImpfschutzCalculationServiceFactory;
+import ch.dvbern.oss.vacme.service.impfschutz.ImpfschutzInputFingerprint;
 import ch.dvbern.oss.vacme.service.wellapi.WellApiService;
+import ch.dvbern.oss.vacme.shared.errors.AppValidationMessage;
 import ch.dvbern.oss.vacme.util.ImpfinformationDto;
+import ch.dvbern.oss.vacme.util.TransactionUtil;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
 
 @ApplicationScoped
 @Slf4j
@@ -66,6 +76,8 @@ public class BoosterService {
 	private final ImpfinformationenService impfinformationenService;
 	private final ImpfdossierRepo impfdossierRepo;
 	private final WellApiService wellApiService;
+	private final VacmeSettingsService vacmeSettingsService;
+	private final TransactionSynchronizationRegistry transactionSynchronizationRegistry;
 
 
 	@NonNull
@@ -111,7 +123,8 @@ public class BoosterService {
 			}
 
 			ImpfinformationDto infos = impfinformationenService.getImpfinformationen(regNum,krankheitIdentifier);
-			Optional<Impfschutz> impfschutzOpt = calculateAndStoreImpfschutz(infos);
+			Optional<Impfschutz> impfschutzOpt =
+				calculateAndStoreImpfschutz(infos, vacmeSettingsService.isRuleEngineSkipUnchangedEnabled());
 			impfschutzOpt.ifPresent(impfschutz -> wellApiService.sendApprovalPeriod(infos, impfschutz));
 
 			queueItem.markSuccessful();
@@ -128,19 +141,110 @@ public class BoosterService {
 		}
 	}
 
+	/**
+	 * Batch-Variante von {@link #calculateImpfschutz(RegistrierungQueue, KrankheitIdentifier)}: Alle benoetigten Daten
+	 * (Queue-Eintraege, Impfinformationen, Frageboegen) werden mit je einer IN-Query geladen, die Rules laufen danach
+	 * im Speicher und die Resultate werden in einer einzigen Transaktion (mit JDBC-Batching) geschrieben.
+	 * Schlaegt die Berechnung fuer irgendeinen Eintrag fehl, wird die ganze Transaktion zurueckgerollt und die Exception
+	 * weitergeworfen. Der Aufrufer muss die Eintraege dann einzeln berechnen, damit nur die fehlerhaften als FAILED
+	 * markiert werden. Die Meldungen an Well gehen erst nach dem Commit raus.
+	 *
+	 * @return Anzahl erfolgreich bearbeiteter Eintraege (alle)
+	 */
+	@Transactional(TxType.REQUIRES_NEW)
+	public int calculateImpfschutzBatch(
+		@NonNull List<RegistrierungQueue> queueItems,
+		@NonNull KrankheitIdentifier krankheitIdentifier
+	) {
+		boosterQueueRepo.enableJdbcBatching(vacmeSettingsService.getRuleEngineBulkLoadSize());
+		final List<Long> ids = queueItems.stream().map(RegistrierungQueue::getId).collect(Collectors.toList());
+		// Mit den gemanagten Eintraegen arbeiten: die uebergebenen bleiben fuer den Fallback unveraendert
+		final List<RegistrierungQueue> managedItems = boosterQueueRepo.findByIds(ids).stream()
+			.filter(RegistrierungQueue::needsToRecalculate)
+			.collect(Collectors.toList());
+		final Set<String> regNums = managedItems.stream()
+			.map(RegistrierungQueue::getRegistrierungNummer)
+			.collect(Collectors.toSet());
+		final Map<String, ImpfinformationDto> infosByRegNum =
+			impfinformationenService.getImpfinformationenBatch(regNums, krankheitIdentifier);
+		final Map<String, Fragebogen> frageboegenByRegNum =
+			fragebogenService.findFrageboegenByRegistrierungsnummern(regNums);
+
+		final boolean skipUnchanged = vacmeSettingsService.isRuleEngineSkipUnchangedEnabled();
+		final List<Runnable> wellNotifications = new ArrayList<>();
+		for (RegistrierungQueue queueItem : managedItems) {
+			final String regNum = queueItem.getRegistrierungNummer();
+			final ImpfinformationDto infos = infosByRegNum.get(regNum);
+			if (infos == null) {
+				throw AppValidationMessage.UNKNOWN_REGISTRIERUNGSNUMMER_KRANKHEIT.create(regNum, krankheitIdentifier);
+			}
+			final Fragebogen fragebogen = frageboegenByRegNum.get(regNum);
+			if (fragebogen == null) {
+				throw AppValidationMessage.UNKNOWN_REGISTRIERUNGSNUMMER.create(regNum);
+			}
+			Optional<Impfschutz> impfschutzOpt =
+				calculateAndStoreImpfschutz(infos, fragebogen, infos.getImpfdossier(), skipUnchanged);
+			impfschutzOpt.ifPresent(impfschutz -> wellNotifications.add(() -> wellApiService.sendApprovalPeriod(infos, impfschutz)));
+			queueItem.markSuccessful();
+		}
+		// Erst nach dem Commit, damit bei einem Rollback (und dem anschliessenden Fallback) nichts doppelt an Well geht
+		TransactionUtil.runAfterCommit(transactionSynchronizationRegistry, () -> wellNotifications.forEach(Runnable::run));
+		return queueItems.size();
+	}
+
 	@NonNull
 	private Optional<Impfschutz> calculateAndStoreImpfschutz(
-		@NonNull ImpfinformationDto impfinformationDto
+		@NonNull ImpfinformationDto impfinformationDto,
+		boolean skipUnchanged
 	) {
 		Fragebogen fragebogen = fragebogenService.findFragebogenByRegistrierungsnummer(impfinformationDto.getRegistrierung().getRegistrierungsnummer());
+		Impfdossier impfdossierToUpdt = impfdossierRepo.getOrCreateImpfdossier(
+			impfinformationDto.getRegistrierung(),
+			impfinformationDto.getKrankheitIdentifier());
+		return calculateAndStoreImpfschutz(impfinformationDto, fragebogen, impfdossierToUpdt, skipUnchanged);
+	}
+
+	/**
+	 * Berechnet den Impfschutz und speichert ihn auf dem Dossier.
+	 *
+	 * @param skipUnchanged wenn true, wird die Berechnung uebersprungen, falls sich der Fingerprint der Inputs
+	 * seit der letzten Berechnung nicht geaendert hat, und es wird nichts geschrieben, falls das Resultat gleich
+	 * dem bestehenden Impfschutz ist. Wird nur von der Queue-Verarbeitung verwendet.
+	 * @return der gespeicherte Impfschutz. Leer, wenn keiner besteht oder (bei skipUnchanged) wenn er sich nicht
+	 * geaendert hat und somit auch nicht erneut kommuniziert werden muss.
+	 */
+	@NonNull
+	private Optional<Impfschutz> calculateAndStoreImpfschutz(
+		@NonNull ImpfinformationDto impfinformationDto,
+		@NonNull Fragebogen fragebogen,
+		@NonNull Impfdossier impfdossierToUpdt,
+		boolean skipUnchanged
+	) {
 		ImpfschutzCalculationService impfschutzCalcService = getServiceForImpfschutzCalculation(impfinformationDto.getKrankheitIdentifier());
+		final Impfschutz existingImpfschutz = impfdossierToUpdt.getImpfschutz();
+		@Nullable final String inputFingerprint = skipUnchanged
+			? ImpfschutzInputFingerprint.calculate(
+				vacmeSettingsService.getApplicationVersion(),
+				impfschutzCalcService.getRuleConfigFingerprint(),
+				fragebogen,
+				impfinformationDto)
+			: null;
+		if (inputFingerprint != null) {
+			if (existingImpfschutz != null && inputFingerprint.equals(existingImpfschutz.getInputFingerprint())) {
+				LOG.trace("VACME-BOOSTER-RULE_ENGINE: Inputs der Registrierung {} unveraendert, Berechnung uebersprungen", impfinformationDto.getRegistrierung().getRegistrierungsnummer());
+				return Optional.empty();
+			}
+		}
 		Optional<Impfschutz> impfschutzOpt = impfschutzCalcService.calculateImpfschutz(fragebogen, impfinformationDto);
 		if (impfschutzOpt.isEmpty()) {
 			LOG.trace("VACME-BOOSTER-RULE_ENGINE: Die Registrierung {} erfuellt nicht die Kriterien um einen Impfschutz zu erhalten gemeass den aktuellen Regeln ", impfinformationDto.getRegistrierung().getRegistrierungsnummer());
 		}
-		Impfdossier impfdossierToUpdt = impfdossierRepo.getOrCreateImpfdossier(
-			impfinformationDto.getRegistrierung(),
-			impfinformationDto.getKrankheitIdentifier());
+		if (skipUnchanged && existingImpfschutz != null && existingImpfschutz.hasSameResultAs(impfschutzOpt.orElse(null))) {
+			// Nur den Fingerprint nachfuehren, damit die naechste Berechnung uebersprungen werden kann
+			existingImpfschutz.setInputFingerprint(inputFingerprint);
+			return Optional.empty();
+		}
+		impfschutzOpt.ifPresent(impfschutz -> impfschutz.setInputFingerprint(inputFingerprint));
 		impfdossierRepo.updateImpfschutz(impfdossierToUpdt, impfschutzOpt.orElse(null));
 
 		// to ensure we return the impfschutz that may alrady have existed in the db we return it from the impfdossier
@@ -183,7 +287,7 @@ public class BoosterService {
 				+ " {}", infos.getRegistrierung().getRegistrierungsnummer(), infos.getImpfdossier().getDossierStatus());
 		}
 		// Impschutz immer neu berechnen, sogar wenn wir keinen vollst. Impfschutz haben weil wir ihn dann evtl loeschen mussen
-		Optional<Impfschutz> impfschutzOpt = calculateAndStoreImpfschutz(infos);
+		Optional<Impfschutz> impfschutzOpt = calculateAndStoreImpfschutz(infos, false);
 		if (!suppressBenachrichtigung) {
 			impfschutzOpt.ifPresent(impfschutz -> wellApiService.sendApprovalPeriod(infos, impfschutz));
 		}
@@ -8,9 +8,11 @@ import java.time.temporal.ChronoUnit;
 
 import lombok.AllArgsConstructor;
 import lombok.Getter;
+import lombok.ToString;
 
 @Getter
 @AllArgsConstructor
+@ToString
 public class AffenpockenImpfschutzcalculationConfigDTO {
 
 	private int minAge = 18;
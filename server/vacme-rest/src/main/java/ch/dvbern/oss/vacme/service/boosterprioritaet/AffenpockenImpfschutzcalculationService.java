@@ -57,6 +57,8 @@ public class AffenpockenImpfschutzcalculationService implements ImpfschutzCalcul
 
 	private final VacmeSettingsService vacmeSettingsService;
 
+	@NonNull
+	private String ruleConfigFingerprint = "";
 
 	/**
 	 * Initialisiere die Regeln mit ihren Parametern
@@ -68,6 +70,9 @@ public class AffenpockenImpfschutzcalculationService implements ImpfschutzCalcul
 		} else {
 			throw AppValidationMessage.ILLEGAL_STATE.create("Mandant " + MandantUtil.getMandant() + " does not support Affenpocken");
 		}
+		ruleConfigFingerprint = MandantUtil.getMandant()
+			+ ";" + vacmeSettingsService.getAffenpockenImpfschutzcalculationConfigDTO()
+			+ ";" + specifiedImpfstoffe.getFingerprint();
 		// do init in postConstruct so all injected configs are ready to be used
 		orderListByAnzahlMonateBisFreigabe();
 	}
@@ -125,4 +130,10 @@ public class AffenpockenImpfschutzcalculationService implements ImpfschutzCalcul
 			.reduce(BoosterPrioUtil::mergeImpfschutzOptionals)
 			.orElse(Optional.empty());
 	}
+
+	@Override
+	@NonNull
+	public String getRuleConfigFingerprint() {
+		return ruleConfigFingerprint;
+	}
 }
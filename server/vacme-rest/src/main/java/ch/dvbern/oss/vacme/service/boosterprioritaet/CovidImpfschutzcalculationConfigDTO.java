@@ -8,10 +8,12 @@ import java.time.LocalDate;
 
 import lombok.AllArgsConstructor;
 import lombok.Getter;
+import lombok.ToString;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
 @Getter
 @AllArgsConstructor
+@ToString
 public class CovidImpfschutzcalculationConfigDTO {
 
 	private boolean enablePfizerOnlyForU30 = false;
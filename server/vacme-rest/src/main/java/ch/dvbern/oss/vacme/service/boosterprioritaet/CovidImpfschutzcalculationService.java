@@ -55,6 +55,9 @@ public class CovidImpfschutzcalculationService implements ImpfschutzCalculationS
 	private final VacmeSettingsService vacmeSettingsService;
 	private final ImpfdossierService impfdossierService;
 
+	@NonNull
+	private String ruleConfigFingerprint = "";
+
 	/**
 	 * Initialisiere die Regeln mit ihren Parametern
 	 */
@@ -67,6 +70,7 @@ public class CovidImpfschutzcalculationService implements ImpfschutzCalculationS
 		} else if (MandantUtil.getMandant().equals(Mandant.BE)) {
 			addBeRules(config);
 		}
+		ruleConfigFingerprint = MandantUtil.getMandant() + ";" + config + ";" + specifiedImpfstoffe.getFingerprint();
 		// do init in postConstruct so all injected configs are ready to be used
 		orderListByAnzahlMonateBisFreigabe();
 	}
@@ -168,4 +172,10 @@ public class CovidImpfschutzcalculationService implements ImpfschutzCalculationS
 	boolean isGrundimmunisiertGemaessVacMeOrSelbstdeklaration(@NonNull Impfdossier impfdossier) {
 		return impfdossier.getVollstaendigerImpfschutzTyp() != null;
 	}
+
+	@Override
+	@NonNull
+	public String getRuleConfigFingerprint() {
+		return ruleConfigFingerprint;
+	}
 }
@@ -58,6 +58,8 @@ public class FSMEImpfschutzcalculationService implements ImpfschutzCalculationSe
 	private ImpfstoffInfosForRules specifiedImpfstoffe;
 	@NonNull
 	private VacmeSettingsService vacmeSettingsService;
+	@NonNull
+	private String ruleConfigFingerprint = "";
 
 	@Inject
 	public FSMEImpfschutzcalculationService(
@@ -83,6 +85,7 @@ public class FSMEImpfschutzcalculationService implements ImpfschutzCalculationSe
 				+ MandantUtil.getMandant()
 				+ " does not support FSME");
 		}
+		ruleConfigFingerprint = MandantUtil.getMandant() + ";" + configDTO + ";" + specifiedImpfstoffe.getFingerprint();
 		// do init in postConstruct so all injected configs are ready to be used
 		orderListByAnzahlMonateBisFreigabe();
 	}
@@ -264,4 +267,10 @@ public class FSMEImpfschutzcalculationService implements ImpfschutzCalculationSe
 			.reduce(BoosterPrioUtil::mergeImpfschutzOptionals)
 			.orElse(Optional.empty());
 	}
+
+	@Override
+	@NonNull
+	public String getRuleConfigFingerprint() {
+		return ruleConfigFingerprint;
+	}
 }
@@ -21,6 +21,9 @@ public class ImpfstoffInfosForRules {
 	@NonNull
 	private final Set<Impfstoff> specifiedEmpfohleneBoosterImpfstoffe;
 
+	@NonNull
+	private final String fingerprint;
+
 
 	public ImpfstoffInfosForRules(
 		@NonNull List<Impfstoff> allSpecifiedImpfst
@@ -30,6 +33,18 @@ public class ImpfstoffInfosForRules {
 			.filter(impfstoff -> !impfstoff.isEingestellt())
 			.collect(Collectors.toList());
 		this.specifiedEmpfohleneBoosterImpfstoffe = findImpfstoffeEmpfohlenForBooster(allSpecifiedImpstoffeNichtEingestellt);
+		this.fingerprint = specifiedEmpfohleneBoosterImpfstoffe.stream()
+			.map(impfstoff -> impfstoff.getId() + ":" + impfstoff.getVersion())
+			.sorted()
+			.collect(Collectors.joining(","));
+	}
+
+	/**
+	 * Identifiziert den Stand der fuer die Regeln relevanten Impfstoffe (ID und Version)
+	 */
+	@NonNull
+	public String getFingerprint() {
+		return fingerprint;
 	}
 
 	@NonNull
@@ -0,0 +1,34 @@
+/*
+ * Copyright (C) 2022 DV Bern AG, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.dvbern.oss.vacme.service.cache;
+
+import lombok.Value;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Aufforderung an alle Nodes, einen Eintrag (oder bei cacheKey null den ganzen Cache) zu invalidieren.
+ * Der Key wird als String uebertragen und mit String.valueOf(key) der Eintraege verglichen.
+ */
+@Value
+public class CacheInvalidationMessage {
+
+	@NonNull String node;
+	@NonNull VacmeCacheName cacheName;
+	@Nullable String cacheKey;
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2022 DV Bern AG, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.dvbern.oss.vacme.service.cache;
+
+import java.util.UUID;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+import javax.transaction.TransactionSynchronizationRegistry;
+
+import ch.dvbern.oss.vacme.util.TransactionUtil;
+import io.quarkus.runtime.ShutdownEvent;
+import io.quarkus.runtime.StartupEvent;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Invalidiert Cache-Eintraege auf diesem und ueber den {@link CacheInvalidationTransport} auf allen anderen Nodes.
+ * Lokal wird erst nach dem Commit der laufenden Transaktion invalidiert, damit ein paralleler Leser nicht noch den
+ * alten Wert aus der DB in den Cache laedt.
+ */
+@ApplicationScoped
+@Slf4j
+@RequiredArgsConstructor(onConstructor_ = @Inject)
+public class CacheInvalidationService {
+
+	private final CacheRegistry cacheRegistry;
+	private final CacheInvalidationTransport cacheInvalidationTransport;
+	private final TransactionSynchronizationRegistry transactionSynchronizationRegistry;
+
+	@Getter
+	private final String nodeId = UUID.randomUUID().toString();
+
+	void onStart(@Observes StartupEvent ev) {
+		cacheInvalidationTransport.start(this::onMessage);
+	}
+
+	void onStop(@Observes ShutdownEvent ev) {
+		cacheInvalidationTransport.stop();
+	}
+
+	/**
+	 * Invalidiert den Eintrag mit dem gegebenen Key (verglichen ueber String.valueOf) auf allen Nodes
+	 */
+	public void invalidate(@NonNull VacmeCacheName cacheName, @NonNull Object key) {
+		invalidateInternal(cacheName, String.valueOf(key));
+	}
+
+	/**
+	 * Invalidiert den ganzen Cache auf allen Nodes
+	 */
+	public void invalidateAll(@NonNull VacmeCacheName cacheName) {
+		invalidateInternal(cacheName, null);
+	}
+
+	private void invalidateInternal(@NonNull VacmeCacheName cacheName, @Nullable String cacheKey) {
+		cacheInvalidationTransport.publish(new CacheInvalidationMessage(nodeId, cacheName, cacheKey));
+		TransactionUtil.runAfterCommit(
+			transactionSynchronizationRegistry,
+			() -> cacheRegistry.invalidate(cacheName, cacheKey));
+	}
+
+	void onMessage(@NonNull CacheInvalidationMessage message) {
+		if (nodeId.equals(message.getNode())) {
+			// wurde bereits beim Publizieren lokal invalidiert
+			return;
+		}
+		LOG.debug("VACME-CACHE: Invalidiere {} / {} (von Node {})",
+			message.getCacheName(), message.getCacheKey(), message.getNode());
+		cacheRegistry.invalidate(message.getCacheName(), message.getCacheKey());
+	}
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2022 DV Bern AG, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.dvbern.oss.vacme.service.cache;
+
+import java.util.function.Consumer;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+/**
+ * Transport fuer Cache-Invalidierungen zwischen den Nodes. Eine Implementation muss jede publizierte Nachricht
+ * (mindestens einmal) an die Listener aller Nodes ausliefern, auch an den Absender selber; dieser ignoriert seine
+ * eigenen Nachrichten.
+ */
+public interface CacheInvalidationTransport {
+
+	/**
+	 * Publiziert die Nachricht. Laeuft eine Transaktion, darf die Nachricht erst mit deren Commit sichtbar werden.
+	 */
+	void publish(@NonNull CacheInvalidationMessage message);
+
+	void start(@NonNull Consumer<CacheInvalidationMessage> listener);
+
+	void stop();
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2022 DV Bern AG, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.dvbern.oss.vacme.service.cache;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.inject.Produces;
+import javax.inject.Inject;
+
+import ch.dvbern.oss.vacme.service.VacmeSettingsService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Waehlt den Transport fuer die Cache-Invalidierung gemaess vacme.cache.invalidation.transport
+ */
+@ApplicationScoped
+@Slf4j
+@RequiredArgsConstructor(onConstructor_ = @Inject)
+public class CacheInvalidationTransportProducer {
+
+	private final VacmeSettingsService vacmeSettingsService;
+	private final LocalCacheInvalidationTransport localTransport;
+	private final DbCacheInvalidationTransport dbTransport;
+
+	@Produces
+	@ApplicationScoped
+	public CacheInvalidationTransport produceCacheInvalidationTransport() {
+		final CacheInvalidationTransportTyp typ = vacmeSettingsService.getCacheInvalidationTransport();
+		LOG.info("VACME-CACHE: Cache-Invalidierungen werden verteilt ueber {}", typ);
+		switch (typ) {
+		case DB:
+			return dbTransport;
+		case LOCAL:
+		default:
+			return localTransport;
+		}
+	}
+}
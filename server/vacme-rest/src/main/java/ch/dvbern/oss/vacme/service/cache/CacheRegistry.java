@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2022 DV Bern AG, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.dvbern.oss.vacme.service.cache;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheStats;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.eclipse.microprofile.metrics.Gauge;
+import org.eclipse.microprofile.metrics.Metadata;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.eclipse.microprofile.metrics.MetricType;
+import org.eclipse.microprofile.metrics.MetricUnits;
+import org.eclipse.microprofile.metrics.Tag;
+
+/**
+ * Zentrale Registry aller In-Memory Caches dieses Nodes. Die Caches werden von ihren Services beim Aufbau
+ * registriert und koennen danach ueber ihren Namen invalidiert werden (siehe {@link CacheInvalidationService}).
+ * Fuer jeden Cache werden Hit/Miss/Load Metriken als Gauges mit dem Tag "cache" publiziert; dafuer muss der Cache
+ * mit recordStats() gebaut worden sein.
+ */
+@ApplicationScoped
+@Slf4j
+@RequiredArgsConstructor(onConstructor_ = @Inject)
+public class CacheRegistry {
+
+	private static final String TAG_CACHE = "cache";
+
+	private final MetricRegistry metricRegistry; // application registry
+
+	private final Map<VacmeCacheName, Cache<?, ?>> caches = new ConcurrentHashMap<>();
+
+	public void register(@NonNull VacmeCacheName name, @NonNull Cache<?, ?> cache) {
+		final Cache<?, ?> previous = caches.put(name, cache);
+		if (previous != null) {
+			// z.B. wenn der Service neu initialisiert wurde. Die Gauges lesen immer den aktuell registrierten Cache.
+			LOG.debug("VACME-CACHE: Cache {} wurde ersetzt", name);
+			return;
+		}
+		registerGauge(name, "vacme.cache.hits", "Anzahl Cache-Hits", MetricUnits.NONE, CacheStats::hitCount);
+		registerGauge(name, "vacme.cache.misses", "Anzahl Cache-Misses", MetricUnits.NONE, CacheStats::missCount);
+		registerGauge(name, "vacme.cache.loads", "Anzahl Loads (erfolgreich und fehlgeschlagen)", MetricUnits.NONE,
+			CacheStats::loadCount);
+		registerGauge(name, "vacme.cache.load.failures", "Anzahl fehlgeschlagener Loads", MetricUnits.NONE,
+			CacheStats::loadExceptionCount);
+		registerGauge(name, "vacme.cache.load.time.avg", "Durchschnittliche Dauer eines Loads",
+			MetricUnits.MILLISECONDS, stats -> TimeUnit.NANOSECONDS.toMillis((long) stats.averageLoadPenalty()));
+		registerGauge(name, "vacme.cache.evictions", "Anzahl aus dem Cache entfernter Eintraege", MetricUnits.NONE,
+			CacheStats::evictionCount);
+		registerGauge(name, "vacme.cache.size", "Anzahl Eintraege im Cache", MetricUnits.NONE,
+			stats -> getCache(name).size());
+	}
+
+	private void registerGauge(
+		@NonNull VacmeCacheName name,
+		@NonNull String metricName,
+		@NonNull String description,
+		@NonNull String unit,
+		@NonNull Function<CacheStats, Long> valueFunction
+	) {
+		final Metadata metadata = Metadata.builder()
+			.withName(metricName)
+			.withDescription(description)
+			.withType(MetricType.GAUGE)
+			.withUnit(unit)
+			.build();
+		final Gauge<Long> gauge = () -> valueFunction.apply(getCache(name).stats());
+		metricRegistry.register(metadata, gauge, new Tag(TAG_CACHE, name.name()));
+	}
+
+	@NonNull
+	private Cache<?, ?> getCache(@NonNull VacmeCacheName name) {
+		return Objects.requireNonNull(caches.get(name), "Cache nicht registriert: " + name);
+	}
+
+	@Nullable
+	public CacheStats getStats(@NonNull VacmeCacheName name) {
+		final Cache<?, ?> cache = caches.get(name);
+		return cache != null ? cache.stats() : null;
+	}
+
+	/**
+	 * Invalidiert auf diesem Node den Eintrag mit dem gegebenen Key, bzw. bei cacheKey null den ganzen Cache.
+	 * Die Keys werden ueber String.valueOf(key) verglichen, da sie als String zwischen den Nodes uebertragen werden.
+	 */
+	public void invalidate(@NonNull VacmeCacheName name, @Nullable String cacheKey) {
+		final Cache<?, ?> cache = caches.get(name);
+		if (cache == null) {
+			// Der Cache wurde auf diesem Node noch nie verwendet
+			return;
+		}
+		if (cacheKey == null) {
+			cache.invalidateAll();
+			return;
+		}
+		cache.asMap().keySet().removeIf(key -> cacheKey.equals(String.valueOf(key)));
+	}
+}
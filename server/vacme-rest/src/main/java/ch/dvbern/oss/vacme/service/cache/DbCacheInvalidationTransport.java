@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2022 DV Bern AG, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.dvbern.oss.vacme.service.cache;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.inject.Typed;
+import javax.inject.Inject;
+import javax.transaction.TransactionSynchronizationRegistry;
+
+import ch.dvbern.oss.vacme.repo.CacheInvalidationRepo;
+import ch.dvbern.oss.vacme.service.VacmeSettingsService;
+import ch.dvbern.oss.vacme.util.TransactionUtil;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Verteilt Cache-Invalidierungen ueber die Tabelle CacheInvalidation. Jeder Node pollt die Tabelle in einem
+ * eigenen Thread (nicht ueber Quartz, da dort jeder Job nur auf einem Node des Clusters laeuft).
+ * <p>
+ * Publizieren schreibt die Zeile erst nach dem Commit der laufenden Transaktion, in einer eigenen kurzen Transaktion.
+ * Wuerde sie in der laufenden Transaktion geschrieben, erhielte sie ihren Zeitstempel beim INSERT, waere aber erst
+ * beim Commit sichtbar: nach einer langen Transaktion (Reports, Batch-Jobs) laege sie dann bereits ausserhalb des
+ * Poll-Fensters und wuerde von den anderen Nodes nie gesehen. Geschrieben wird in einem eigenen Thread, da im
+ * afterCompletion die abgeschlossene Transaktion noch am Thread haengt und keine neue gestartet werden kann. Stirbt
+ * der Node zwischen Commit und Schreiben, geht die Invalidierung verloren und die Eintraege laufen ueber ihre TTL ab.
+ * <p>
+ * Auch so kann eine neuere id vor einer aelteren sichtbar werden. Darum wird nicht ab der zuletzt gesehenen id
+ * gelesen, sondern jeweils das ganze Fenster der letzten {@link #POLL_WINDOW_SECONDS} Sekunden, wobei bereits
+ * verarbeitete ids uebersprungen werden.
+ */
+@ApplicationScoped
+@Typed(DbCacheInvalidationTransport.class)
+@Slf4j
+@RequiredArgsConstructor(onConstructor_ = @Inject)
+public class DbCacheInvalidationTransport implements CacheInvalidationTransport {
+
+	static final long POLL_WINDOW_SECONDS = 300;
+	private static final long RETENTION_SECONDS = 3600;
+	private static final long CLEANUP_INTERVAL_MINUTES = 10;
+	private static final long PUBLISH_SHUTDOWN_TIMEOUT_SECONDS = 5;
+
+	private final CacheInvalidationRepo cacheInvalidationRepo;
+	private final VacmeSettingsService vacmeSettingsService;
+	private final TransactionSynchronizationRegistry transactionSynchronizationRegistry;
+
+	// wird nur vom Poller-Thread verwendet
+	private final Map<Long, LocalDateTime> verarbeiteteIds = new HashMap<>();
+	private LocalDateTime lastCleanup = LocalDateTime.now();
+
+	@Nullable
+	private ScheduledExecutorService poller;
+
+	@Nullable
+	private ExecutorService publisher;
+
+	@Override
+	public void publish(@NonNull CacheInvalidationMessage message) {
+		TransactionUtil.runAfterCommit(
+			transactionSynchronizationRegistry,
+			() -> getPublisher().execute(() -> write(message)));
+	}
+
+	@NonNull
+	private synchronized ExecutorService getPublisher() {
+		if (publisher == null) {
+			publisher = Executors.newSingleThreadExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "vacme-cache-invalidation-publish");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		return publisher;
+	}
+
+	private void write(@NonNull CacheInvalidationMessage message) {
+		try {
+			cacheInvalidationRepo.create(message);
+		} catch (RuntimeException e) {
+			// Der Commit des Aufrufers ist bereits erfolgt, die anderen Nodes invalidieren dann erst ueber die TTL
+			LOG.error("VACME-CACHE: Invalidierung {} / {} konnte nicht publiziert werden",
+				message.getCacheName(), message.getCacheKey(), e);
+		}
+	}
+
+	@Override
+	public synchronized void start(@NonNull Consumer<CacheInvalidationMessage> listener) {
+		if (poller != null) {
+			return;
+		}
+		final long interval = vacmeSettingsService.getCacheInvalidationPollIntervalSeconds();
+		poller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "vacme-cache-invalidation");
+			thread.setDaemon(true);
+			return thread;
+		});
+		poller.scheduleWithFixedDelay(() -> poll(listener), interval, interval, TimeUnit.SECONDS);
+		LOG.info("VACME-CACHE: Polling der CacheInvalidation alle {}s gestartet", interval);
+	}
+
+	@Override
+	public synchronized void stop() {
+		if (poller != null) {
+			poller.shutdownNow();
+			poller = null;
+		}
+		if (publisher != null) {
+			// Noch anstehende Invalidierungen schreiben
+			publisher.shutdown();
+			try {
+				if (!publisher.awaitTermination(PUBLISH_SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+					LOG.warn("VACME-CACHE: Nicht alle Invalidierungen konnten vor dem Shutdown publiziert werden");
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			publisher = null;
+		}
+	}
+
+	void poll(@NonNull Consumer<CacheInvalidationMessage> listener) {
+		try {
+			final LocalDateTime now = LocalDateTime.now();
+			cacheInvalidationRepo.findNewerThan(POLL_WINDOW_SECONDS).forEach((id, message) -> {
+				if (verarbeiteteIds.putIfAbsent(id, now) == null) {
+					listener.accept(message);
+				}
+			});
+			// Ids, welche aus dem Fenster gefallen sind, muessen wir uns nicht mehr merken
+			final LocalDateTime vergessenVor = now.minusSeconds(POLL_WINDOW_SECONDS * 2);
+			verarbeiteteIds.values().removeIf(verarbeitet -> verarbeitet.isBefore(vergessenVor));
+
+			if (lastCleanup.plusMinutes(CLEANUP_INTERVAL_MINUTES).isBefore(now)) {
+				lastCleanup = now;
+				final int deleted = cacheInvalidationRepo.deleteOlderThan(RETENTION_SECONDS);
+				LOG.debug("VACME-CACHE: {} alte CacheInvalidation Eintraege geloescht", deleted);
+			}
+		} catch (RuntimeException e) {
+			// Exception darf nicht raus, sonst stoppt der Executor das Polling
+			LOG.warn("VACME-CACHE: Fehler beim Lesen der CacheInvalidation", e);
+		}
+	}
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2022 DV Bern AG, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.dvbern.oss.vacme.service.cache;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.inject.Typed;
+import javax.inject.Inject;
+import javax.transaction.TransactionSynchronizationRegistry;
+
+import ch.dvbern.oss.vacme.util.TransactionUtil;
+import lombok.RequiredArgsConstructor;
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+/**
+ * Stellt Nachrichten nur innerhalb dieses Prozesses zu. Genuegt fuer den Betrieb mit einem einzigen Node und
+ * erlaubt es in Tests, mehrere "Nodes" an denselben Transport zu haengen.
+ */
+@ApplicationScoped
+@Typed(LocalCacheInvalidationTransport.class)
+@RequiredArgsConstructor(onConstructor_ = @Inject)
+public class LocalCacheInvalidationTransport implements CacheInvalidationTransport {
+
+	private final TransactionSynchronizationRegistry transactionSynchronizationRegistry;
+
+	private final List<Consumer<CacheInvalidationMessage>> listeners = new CopyOnWriteArrayList<>();
+
+	@Override
+	public void publish(@NonNull CacheInvalidationMessage message) {
+		TransactionUtil.runAfterCommit(transactionSynchronizationRegistry, () -> deliver(message));
+	}
+
+	private void deliver(@NonNull CacheInvalidationMessage message) {
+		listeners.forEach(listener -> listener.accept(message));
+	}
+
+	@Override
+	public void start(@NonNull Consumer<CacheInvalidationMessage> listener) {
+		listeners.add(listener);
+	}
+
+	@Override
+	public void stop() {
+		listeners.clear();
+	}
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2022 DV Bern AG, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.dvbern.oss.vacme.service.cache;
+
+/**
+ * Alle In-Memory Caches, welche in der {@link CacheRegistry} registriert sind. Der Name wird auch fuer die
+ * Invalidierung ueber die Nodes hinweg verwendet und darf darum nicht umbenannt werden.
+ */
+public enum VacmeCacheName {
+
+	NEXT_FREIER_TERMIN_ERSTIMPFUNG,
+	NEXT_FREIER_TERMIN_ZWEITIMPFUNG,
+	NEXT_FREIER_TERMIN_N,
+	APPLICATION_PROPERTY,
+	KRANKHEIT_NO_FREIE_TERMINE,
+	PLZ_KANTON,
+	PLZ_MEDSTAT,
+	SETTINGS,
+	KEYCLOAK_GROUPS,
+	KEYCLOAK_GROUP_MEMBERS,
+	KEYCLOAK_ROLE_MEMBERS,
+	KEYCLOAK_USERS
+}
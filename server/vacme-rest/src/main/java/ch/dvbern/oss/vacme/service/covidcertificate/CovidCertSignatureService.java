@@ -37,13 +37,15 @@ import ch.dvbern.oss.vacme.service.VacmeSettingsService;
 import ch.dvbern.oss.vacme.shared.errors.AppFailureException;
 import org.checkerframework.checker.nullness.qual.NonNull;
 
-import static ch.dvbern.oss.vacme.service.covidcertificate.CovidCertUtils.normalizeJson;
-
 @Dependent
 public class CovidCertSignatureService {
 
+	private static final String SIGNATURE_ALGORITHM = "SHA256withRSA";
+
 	private PrivateKey privateKey;
 
+	private final ThreadLocal<Signature> signatures = new ThreadLocal<>();
+
 	@Inject
 	private VacmeSettingsService vacmeSettingsService;
 
@@ -77,13 +79,50 @@ public class CovidCertSignatureService {
 		SignatureException {
 
 		// canonicalize
-		String normalizedJson = normalizeJson(payload);
-		byte[] bytes = normalizedJson.getBytes(StandardCharsets.UTF_8);
+		byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+		int length = normalizeJsonInPlace(bytes);
 		// sign
-		Signature signature = Signature.getInstance("SHA256withRSA");
-		signature.initSign(this.privateKey);
-		signature.update(bytes);
-		String signatureString = Base64.getEncoder().encodeToString(signature.sign());
-		return signatureString;
+		Signature signature = getSignature();
+		try {
+			signature.update(bytes, 0, length);
+			String signatureString = Base64.getEncoder().encodeToString(signature.sign());
+			return signatureString;
+		} catch (SignatureException e) {
+			// Zustand der Instanz ist unklar, beim naechsten Mal eine neue erstellen
+			signatures.remove();
+			throw e;
+		}
+	}
+
+	/**
+	 * Signature ist nicht threadsafe, darum hat jeder Thread eine eigene, bereits initialisierte Instanz. Nach
+	 * sign() ist sie wieder im Zustand nach initSign() und kann fuer den naechsten Payload verwendet werden.
+	 */
+	@NonNull
+	private Signature getSignature() throws NoSuchAlgorithmException, InvalidKeyException {
+		Signature signature = signatures.get();
+		if (signature == null) {
+			signature = Signature.getInstance(SIGNATURE_ALGORITHM);
+			signature.initSign(this.privateKey);
+			signatures.set(signature);
+		}
+		return signature;
+	}
+
+	/**
+	 * Kanonisiert den Payload wie {@link CovidCertUtils#normalizeJson(String)}, aber direkt auf den UTF-8 Bytes
+	 * und ohne Zwischen-String. Die entfernten Whitespace-Zeichen sind ASCII und kommen in UTF-8 nie als Teil eines
+	 * Multibyte-Zeichens vor, darum koennen die Bytes einfach uebersprungen werden.
+	 *
+	 * @return die Laenge des kanonisierten Payloads am Anfang des Arrays
+	 */
+	static int normalizeJsonInPlace(@NonNull byte[] bytes) {
+		int length = 0;
+		for (byte b : bytes) {
+			if (b != '\n' && b != '\r' && b != '\t' && b != ' ') {
+				bytes[length++] = b;
+			}
+		}
+		return length;
 	}
 }
@@ -17,6 +17,8 @@
 
 package ch.dvbern.oss.vacme.service.covidcertificate;
 
+import java.util.regex.Pattern;
+
 import ch.dvbern.oss.vacme.entities.base.ZertifikatInfo;
 import ch.dvbern.oss.vacme.entities.externeimpfinfos.ExternesZertifikat;
 import ch.dvbern.oss.vacme.entities.impfen.Impffolge;
@@ -34,13 +36,15 @@ import org.jetbrains.annotations.NotNull;
 
 public final class CovidCertUtils {
 
+	private static final Pattern JSON_WHITESPACE = Pattern.compile("[\\n\\r\\t ]");
+
 	private CovidCertUtils() {
 		// util
 	}
 
 	@NotNull
 	public static String normalizeJson(@NotNull String payload) {
-		return payload.replaceAll("[\\n\\r\\t ]", "");
+		return JSON_WHITESPACE.matcher(payload).replaceAll("");
 	}
 
 	@NonNull
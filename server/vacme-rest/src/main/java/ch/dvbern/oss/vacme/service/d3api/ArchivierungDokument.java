@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2023 DV Bern AG, Switzerland This program is free software: you can redistribute it and/or modify it
+ *  under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version. This program is distributed in the hope that it
+ * will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Affero General Public License for more details. You should have received a copy of
+ *  the GNU Affero General Public License along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.dvbern.oss.vacme.service.d3api;
+
+import java.util.UUID;
+
+import lombok.Value;
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+/**
+ * Gerendertes Archiv-PDF einer Impfung, welches auf den Upload nach D3 wartet. Enthaelt bewusst keine Entitaeten,
+ * da es ausserhalb der Transaktion weitergereicht wird, in der es erstellt wurde.
+ */
+@Value
+public class ArchivierungDokument {
+
+	@NonNull
+	UUID impfungId;
+
+	@NonNull
+	String registrierungsnummer;
+
+	@NonNull
+	String titel;
+
+	@NonNull
+	byte[] pdf;
+}
@@ -13,9 +13,18 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.context.control.ActivateRequestContext;
 import javax.inject.Inject;
 
 import ch.dvbern.oss.vacme.entities.base.ApplicationProperty;
@@ -23,44 +32,63 @@ import ch.dvbern.oss.vacme.entities.base.ApplicationPropertyKey;
 import ch.dvbern.oss.vacme.entities.impfen.Impfung;
 import ch.dvbern.oss.vacme.repo.ImpfungRepo;
 import ch.dvbern.oss.vacme.service.ApplicationPropertyService;
+import ch.dvbern.oss.vacme.service.VacmeSettingsService;
+import ch.dvbern.oss.vacme.service.joblease.JobLease;
+import ch.dvbern.oss.vacme.service.joblease.JobLeaseService;
 import ch.dvbern.oss.vacme.shared.util.Constants;
+import io.quarkus.security.identity.CurrentIdentityAssociation;
+import io.quarkus.security.identity.SecurityIdentity;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.time.StopWatch;
+import org.checkerframework.checker.nullness.qual.NonNull;
 
 import static ch.dvbern.oss.vacme.util.TimingUtil.calculateGenerationSpeed;
 
+/**
+ * Archiviert Impfungen in D3. Die Verarbeitung laeuft in drei Stufen: die IDs werden in einem Zug geladen, die PDFs
+ * werden parallel gerendert und ueber eine begrenzte Queue an die Upload-Worker uebergeben. Ist die Queue voll,
+ * warten die Renderer, so dass nie mehr als {@link VacmeSettingsService#getArchivierungUploadQueueSize()} fertige
+ * PDFs im Speicher liegen. Eine Impfung wird erst nach erfolgreichem Upload als archiviert markiert.
+ */
 @ApplicationScoped
 @Slf4j
 @RequiredArgsConstructor(onConstructor_ = @Inject)
 public class ArchivierungService {
 
+	private static final String JOB_NAME = "archivierungD3";
+
+	// Signalisiert einem Upload-Worker, dass keine weiteren Dokumente mehr kommen
+	private static final ArchivierungDokument ENDE_DER_QUEUE =
+		new ArchivierungDokument(new UUID(0, 0), "", "", new byte[0]);
+
 	private final ApplicationPropertyService applicationPropertyService;
 	private final ImpfungRepo impfungRepo;
 	private final D3ApiService d3ApiService;
+	private final VacmeSettingsService vacmeSettingsService;
+	private final JobLeaseService jobLeaseService;
+	private final CurrentIdentityAssociation association;
 
 	public void archive() {
+		// Nur ein Knoten archiviert, sonst wuerden dieselben Impfungen mehrfach gerendert und hochgeladen
+		jobLeaseService.runWithLease(JOB_NAME, 1, this::archiveBatch);
+	}
+
+	private void archiveBatch(@NonNull JobLease lease) {
 		StopWatch stopWatch = StopWatch.createStarted();
-		int successCounter = 0;
-		int totalCounter = 0;
+		ArchivierungStatistik statistik = new ArchivierungStatistik();
 		List<UUID> impfungIdsToArchive = new ArrayList<>();
 
 		try {
+			StopWatch stopWatchLaden = StopWatch.createStarted();
 			impfungIdsToArchive = impfungRepo.getImpfungenZuArchivieren(getArchivierungBatchSize());
+			statistik.ladenMillis.set(stopWatchLaden.getTime(TimeUnit.MILLISECONDS));
 			LOG.info("VACME-ARCHIVIERUNG: Starting to archive a batch of up to {} Impfungen. Found {}",
 				getArchivierungBatchSize(), impfungIdsToArchive.size());
 
-			for (UUID impfungId : impfungIdsToArchive) {
-				try {
-					LOG.debug("VACME-ARCHIVIERUNG: Archiviere Impfung {}",  impfungId);
-					boolean success = d3ApiService.saveInD3(Impfung.toId(impfungId));
-					if (success) {
-						successCounter++;
-					}
-				} finally {
-					totalCounter++;
-				}
+			if (!impfungIdsToArchive.isEmpty()) {
+				runPipeline(impfungIdsToArchive, lease, statistik);
 			}
 
 		} finally {
@@ -69,13 +97,156 @@ public class ArchivierungService {
 				LOG.info(
 					"VACME-ARCHIVIERUNG: Archivierung beendet. Es wurden {} Impfungen von total {} "
 						+ "in {}ms archiviert. {} ms/stk",
-					successCounter, impfungIdsToArchive.size(), stopWatch.getTime(TimeUnit.MILLISECONDS),
-					calculateGenerationSpeed(totalCounter,
+					statistik.archiviert.get(), impfungIdsToArchive.size(), stopWatch.getTime(TimeUnit.MILLISECONDS),
+					calculateGenerationSpeed(statistik.verarbeitet.get(),
 						stopWatch.getTime(TimeUnit.MILLISECONDS)));
+				LOG.info(
+					"VACME-ARCHIVIERUNG: Laden {}ms, Rendern {}ms fuer {} PDFs, Upload {}ms fuer {} PDFs, {} Fehler",
+					statistik.ladenMillis.get(),
+					statistik.renderMillis.get(), statistik.gerendert.get(),
+					statistik.uploadMillis.get(), statistik.archiviert.get(),
+					statistik.fehler.get());
+			}
+		}
+	}
+
+	private void runPipeline(
+		@NonNull List<UUID> impfungIds,
+		@NonNull JobLease lease,
+		@NonNull ArchivierungStatistik statistik
+	) {
+		// Die Worker laufen ohne Request, die Identitaet des Jobs muss deshalb mitgegeben werden
+		final SecurityIdentity identity = association.getIdentity();
+		final int uploadParallelism = vacmeSettingsService.getArchivierungUploadParallelism();
+		final BlockingQueue<ArchivierungDokument> uploadQueue =
+			new ArrayBlockingQueue<>(vacmeSettingsService.getArchivierungUploadQueueSize());
+		final ExecutorService renderExecutor =
+			createExecutor("vacme-archivierung-render-", vacmeSettingsService.getArchivierungRenderParallelism());
+		final ExecutorService uploadExecutor = createExecutor("vacme-archivierung-upload-", uploadParallelism);
+
+		try {
+			List<Future<?>> uploader = new ArrayList<>(uploadParallelism);
+			for (int i = 0; i < uploadParallelism; i++) {
+				uploader.add(uploadExecutor.submit(() -> uploadDokumente(uploadQueue, identity, statistik)));
+			}
+
+			List<Future<?>> renderer = new ArrayList<>(impfungIds.size());
+			for (UUID impfungId : impfungIds) {
+				renderer.add(renderExecutor.submit(() -> {
+					// Wurde der Lease verloren, arbeitet bereits ein anderer Knoten an diesen Impfungen
+					if (lease.isValid()) {
+						renderDokument(impfungId, uploadQueue, identity, statistik);
+					}
+				}));
 			}
+
+			// Auch nach einem Fehler die bereits gerenderten Dokumente noch hochladen und als archiviert markieren
+			renderer.forEach(this::awaitWorker);
+			for (int i = 0; i < uploadParallelism; i++) {
+				putInQueue(uploadQueue, ENDE_DER_QUEUE);
+			}
+			uploader.forEach(this::awaitWorker);
+		} finally {
+			renderExecutor.shutdownNow();
+			uploadExecutor.shutdownNow();
 		}
 	}
 
+	@ActivateRequestContext
+	void renderDokument(
+		@NonNull UUID impfungId,
+		@NonNull BlockingQueue<ArchivierungDokument> uploadQueue,
+		@NonNull SecurityIdentity identity,
+		@NonNull ArchivierungStatistik statistik
+	) {
+		association.setIdentity(identity);
+		StopWatch stopWatch = StopWatch.createStarted();
+		try {
+			LOG.debug("VACME-ARCHIVIERUNG: Rendere Archiv-PDF fuer Impfung {}", impfungId);
+			Optional<ArchivierungDokument> dokument = d3ApiService.createArchivierungDokument(Impfung.toId(impfungId));
+			statistik.renderMillis.addAndGet(stopWatch.getTime(TimeUnit.MILLISECONDS));
+			if (dokument.isPresent()) {
+				statistik.gerendert.incrementAndGet();
+				// Blockiert, solange die Upload-Worker nicht nachkommen
+				putInQueue(uploadQueue, dokument.get());
+			} else {
+				statistik.verarbeitet.incrementAndGet();
+			}
+		} catch (Exception e) {
+			statistik.fehler.incrementAndGet();
+			statistik.verarbeitet.incrementAndGet();
+			LOG.error("VACME-ARCHIVIERUNG: Archivierung Fehlgeschlagen fuer Impfung {}", impfungId, e);
+		}
+	}
+
+	@ActivateRequestContext
+	void uploadDokumente(
+		@NonNull BlockingQueue<ArchivierungDokument> uploadQueue,
+		@NonNull SecurityIdentity identity,
+		@NonNull ArchivierungStatistik statistik
+	) {
+		association.setIdentity(identity);
+		while (true) {
+			ArchivierungDokument dokument;
+			try {
+				dokument = uploadQueue.take();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				LOG.warn("VACME-ARCHIVIERUNG: Upload-Worker wurde unterbrochen");
+				return;
+			}
+			if (dokument == ENDE_DER_QUEUE) {
+				return;
+			}
+			StopWatch stopWatch = StopWatch.createStarted();
+			try {
+				d3ApiService.upload(dokument);
+				d3ApiService.markAsArchiviert(Impfung.toId(dokument.getImpfungId()));
+				statistik.archiviert.incrementAndGet();
+			} catch (Exception e) {
+				statistik.fehler.incrementAndGet();
+				LOG.error("VACME-ARCHIVIERUNG: Archivierung Fehlgeschlagen fuer Impfung {}, Registrierung {}",
+					dokument.getImpfungId(), dokument.getRegistrierungsnummer(), e);
+			} finally {
+				statistik.uploadMillis.addAndGet(stopWatch.getTime(TimeUnit.MILLISECONDS));
+				statistik.verarbeitet.incrementAndGet();
+			}
+		}
+	}
+
+	private void putInQueue(
+		@NonNull BlockingQueue<ArchivierungDokument> uploadQueue,
+		@NonNull ArchivierungDokument dokument
+	) {
+		try {
+			uploadQueue.put(dokument);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("VACME-ARCHIVIERUNG: Warten auf die Upload-Queue wurde unterbrochen", e);
+		}
+	}
+
+	private void awaitWorker(@NonNull Future<?> future) {
+		try {
+			future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("VACME-ARCHIVIERUNG: Archivierung wurde unterbrochen", e);
+		} catch (ExecutionException e) {
+			LOG.error("VACME-ARCHIVIERUNG: Unerwarteter Fehler in einem Archivierungs-Worker", e.getCause());
+		}
+	}
+
+	@NonNull
+	private static ExecutorService createExecutor(@NonNull String threadPrefix, int threads) {
+		AtomicInteger threadCounter = new AtomicInteger();
+		return Executors.newFixedThreadPool(threads, runnable -> {
+			Thread thread = new Thread(runnable, threadPrefix + threadCounter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
 	private long getArchivierungBatchSize() {
 		Optional<ApplicationProperty> byKeyOptional =
 			this.applicationPropertyService.getByKeyOptional(ApplicationPropertyKey.ARCHIVIERUNG_JOB_BATCH_SIZE);
@@ -84,4 +255,17 @@ public class ArchivierungService {
 			.map(applicationProperty -> Long.parseLong(applicationProperty.getValue()))
 			.orElseGet(() -> 0L);
 	}
+
+	/**
+	 * Zaehler pro Stufe. Die Zeiten von Rendern und Upload sind ueber alle Worker summiert.
+	 */
+	static class ArchivierungStatistik {
+		private final AtomicLong ladenMillis = new AtomicLong();
+		private final AtomicLong renderMillis = new AtomicLong();
+		private final AtomicLong uploadMillis = new AtomicLong();
+		private final AtomicInteger gerendert = new AtomicInteger();
+		private final AtomicInteger archiviert = new AtomicInteger();
+		private final AtomicInteger verarbeitet = new AtomicInteger();
+		private final AtomicInteger fehler = new AtomicInteger();
+	}
 }
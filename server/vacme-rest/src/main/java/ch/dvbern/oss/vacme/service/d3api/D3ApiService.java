@@ -58,48 +58,57 @@ public class D3ApiService {
 	private final ImpfinformationenService impfinformationenService;
 	private final MandantPropertyService mandantPropertyService;
 
+	/**
+	 * Laedt die Impfung mit allen Daten fuer das Archiv und rendert das Archiv-PDF. Das Rendern muss in der
+	 * Transaktion passieren, da der Generator durch die (lazy geladenen) Entitaeten navigiert.
+	 *
+	 * @return leer, wenn die Impfung nicht (mehr) existiert oder die Archivierung fuer ihren Mandanten deaktiviert ist
+	 */
+	@NonNull
 	@Transactional(TxType.REQUIRES_NEW)
-	public boolean saveInD3(@NonNull ID<Impfung> impfungId) {
+	public Optional<ArchivierungDokument> createArchivierungDokument(@NonNull ID<Impfung> impfungId) {
 		final Optional<Impfung> impfungOptional = impfungRepo.getById(impfungId);
-		if (impfungOptional.isPresent()) {
-			Impfung impfung = impfungOptional.get();
-			Mandant mandant = impfung.getMandant();
-			if (mandantPropertyService.getByKey(ARCHIVIERUNG_D3_DISABLED, mandant).getValueAsBoolean()) {
-				LOG.warn(
-					"VACME-ARCHIVIERUNG: Archivierung aufgerufen fuer Impfung {} aber ARCHIVIERUNG_D3_DISABLED "
-						+ "ist true fuer Mandant {}",
-					impfungId,
-					mandant);
-				return false;
-			}
-			final KrankheitIdentifier krankheitIdentifier =
-				impfung.getTermin().getImpfslot().getKrankheitIdentifier();
-			if (krankheitIdentifier != KrankheitIdentifier.COVID) {
-				throw new IllegalStateException("Aktuell koennen nur COVID Impfungen archiviert werden");
-			}
-			final Registrierung registrierung = impfungRepo.getRegistrierungForImpfung(impfungId).orElseThrow();
-			try {
-				final ImpfinformationDto infos = impfinformationenService.getImpfinformationen(
-					registrierung.getRegistrierungsnummer(),
-					krankheitIdentifier);
-				byte[] pdfContent = generatePdf(infos);
-
-				// TODO VACME-2648: schicken, evtl mit bremse damit wir nicht ueberlasten
+		if (impfungOptional.isEmpty()) {
+			return Optional.empty();
+		}
+		Impfung impfung = impfungOptional.get();
+		Mandant mandant = impfung.getMandant();
+		if (mandantPropertyService.getByKey(ARCHIVIERUNG_D3_DISABLED, mandant).getValueAsBoolean()) {
+			LOG.warn(
+				"VACME-ARCHIVIERUNG: Archivierung aufgerufen fuer Impfung {} aber ARCHIVIERUNG_D3_DISABLED "
+					+ "ist true fuer Mandant {}",
+				impfungId,
+				mandant);
+			return Optional.empty();
+		}
+		final KrankheitIdentifier krankheitIdentifier =
+			impfung.getTermin().getImpfslot().getKrankheitIdentifier();
+		if (krankheitIdentifier != KrankheitIdentifier.COVID) {
+			throw new IllegalStateException("Aktuell koennen nur COVID Impfungen archiviert werden");
+		}
+		final Registrierung registrierung = impfungRepo.getRegistrierungForImpfung(impfungId).orElseThrow();
+		final ImpfinformationDto infos = impfinformationenService.getImpfinformationen(
+			registrierung.getRegistrierungsnummer(),
+			krankheitIdentifier);
+		return Optional.of(generatePdf(impfungId, infos));
+	}
 
-				impfung.setArchiviertAm(LocalDateTime.now());
-				impfungRepo.update(impfung);
+	/**
+	 * Schickt das Dokument an D3. Darf mehrfach fuer dieselbe Impfung aufgerufen werden: Wird der Job nach dem Upload
+	 * aber vor {@link #markAsArchiviert(ID)} abgebrochen, wird die Impfung im naechsten Lauf nochmals hochgeladen.
+	 */
+	public void upload(@NonNull ArchivierungDokument dokument) {
+		// TODO VACME-2648: schicken, evtl mit bremse damit wir nicht ueberlasten
+		LOG.debug("VACME-ARCHIVIERUNG: Dokument '{}' fuer Impfung {} ({} bytes) bereit fuer D3",
+			dokument.getTitel(), dokument.getImpfungId(), dokument.getPdf().length);
+	}
 
-				return true;
-			} catch (Exception e) {
-				LOG.error(
-					"VACME-ARCHIVIERUNG: Archivierung Fehlgeschlagen fuer Impfung {}, Registrierung {}",
-					impfungId,
-					registrierung.getRegistrierungsnummer(),
-					e);
-				return false;
-			}
-		}
-		return false;
+	@Transactional(TxType.REQUIRES_NEW)
+	public void markAsArchiviert(@NonNull ID<Impfung> impfungId) {
+		impfungRepo.getById(impfungId).ifPresent(impfung -> {
+			impfung.setArchiviertAm(LocalDateTime.now());
+			impfungRepo.update(impfung);
+		});
 	}
 
 	@Transactional(TxType.REQUIRES_NEW)
@@ -107,7 +116,8 @@ public class D3ApiService {
 		// TODO VACME-2692: Loeschung melden wenn impfung im archiv sein koennte (e.g. kein FSME)
 	}
 
-	private byte[] generatePdf(@NonNull ImpfinformationDto infos) {
+	@NonNull
+	private ArchivierungDokument generatePdf(@NonNull ID<Impfung> impfungId, @NonNull ImpfinformationDto infos) {
 		try {
 			final Fragebogen fragebogen = fragebogenRepo.getByRegistrierung(infos.getRegistrierung()).orElseThrow();
 			ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
@@ -124,7 +134,11 @@ public class D3ApiService {
 
 			generator.createArchivierung(outputStream, uploadedFiles);
 			outputStream.close();
-			return outputStream.toByteArray();
+			return new ArchivierungDokument(
+				impfungId.getId(),
+				infos.getRegistrierung().getRegistrierungsnummer(),
+				generator.getArchiveTitle(),
+				outputStream.toByteArray());
 		} catch (Exception e) {
 			throw new AppFailureException(
 				"VACME-ARCHIVIERUNG: Bei der Generierung des Dokuments ist ein Fehler aufgetreten",
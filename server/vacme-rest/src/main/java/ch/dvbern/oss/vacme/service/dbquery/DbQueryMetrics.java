@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2022 DV Bern AG, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.dvbern.oss.vacme.service.dbquery;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.transaction.Status;
+import javax.transaction.TransactionSynchronizationRegistry;
+
+import ch.dvbern.oss.vacme.service.VacmeSettingsService;
+import ch.dvbern.oss.vacme.smartdb.QueryExecution;
+import ch.dvbern.oss.vacme.smartdb.QueryObserver;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.eclipse.microprofile.metrics.Counter;
+import org.eclipse.microprofile.metrics.Histogram;
+import org.eclipse.microprofile.metrics.Metadata;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.eclipse.microprofile.metrics.MetricType;
+import org.eclipse.microprofile.metrics.MetricUnits;
+import org.eclipse.microprofile.metrics.Tag;
+import org.eclipse.microprofile.metrics.Timer;
+
+/**
+ * Metriken aller Abfragen ueber smartdb pro Aufrufstelle: Laufzeit (Timer), Anzahl Zeilen (Histogramm), Anzahl
+ * langsamer Abfragen und erkannter N+1-Muster. Pro Request werden die Anzahl Abfragen und geladener Entitaeten als
+ * Histogramm gefuehrt. Langsame Abfragen werden stichprobenweise mit JPQL geloggt, die Werte der Parameter nur mit
+ * vacme.db.slowquery.log.parameters.
+ * <p>
+ * Als N+1 gilt, wenn dieselbe Aufrufstelle innerhalb einer Transaktion mindestens vacme.db.nplusone.threshold mal
+ * ausgefuehrt wird, typischerweise eine Abfrage in einer Schleife ueber das Resultat einer anderen.
+ */
+@ApplicationScoped
+@Slf4j
+@RequiredArgsConstructor(onConstructor_ = @Inject)
+public class DbQueryMetrics implements QueryObserver {
+
+	private static final String TAG_CALLSITE = "callsite";
+	private static final String TAG_OPERATION = "operation";
+	// Schluessel der Zaehler pro Transaktion im TransactionSynchronizationRegistry
+	private static final Object TX_RESOURCE_KEY = DbQueryMetrics.class.getName() + ".executionsPerCallSite";
+
+	private final MetricRegistry metricRegistry; // application registry
+	private final VacmeSettingsService vacmeSettingsService;
+	private final TransactionSynchronizationRegistry transactionSynchronizationRegistry;
+
+	private final Map<String, CallSiteMetrics> callSites = new ConcurrentHashMap<>();
+
+	@Override
+	public boolean isEnabled() {
+		return vacmeSettingsService.isDbInstrumentationEnabled();
+	}
+
+	@Override
+	public void queryExecuted(@NonNull QueryExecution execution) {
+		final CallSiteMetrics metrics = callSites.computeIfAbsent(
+			execution.getCallSite() + '#' + execution.getOperation(),
+			key -> registerCallSite(execution.getCallSite(), execution.getOperation()));
+		metrics.duration.update(Duration.ofNanos(execution.getDurationNanos()));
+		metrics.rows.update(execution.getRowCount());
+
+		if (execution.getDurationMillis() > vacmeSettingsService.getDbSlowQueryThresholdMs()) {
+			metrics.slow.inc();
+			if (ThreadLocalRandom.current().nextDouble() < vacmeSettingsService.getDbSlowQueryLogSampleRate()) {
+				LOG.warn("VACME-SLOW-QUERY: {} ({}) dauerte {}ms, {} Zeilen: {}", execution.getCallSite(),
+					execution.getOperation(), execution.getDurationMillis(), execution.getRowCount(),
+					execution.describe(vacmeSettingsService.isDbSlowQueryLogParameters()));
+			}
+		}
+
+		final int executionsInTx = countExecutionInTransaction(execution.getCallSite());
+		// nur einmal pro Transaktion und Aufrufstelle melden
+		if (executionsInTx == vacmeSettingsService.getDbNPlusOneThreshold()) {
+			metrics.nPlusOne.inc();
+			LOG.warn("VACME-N-PLUS-1: {} wurde in derselben Transaktion {} mal ausgefuehrt, "
+				+ "Abfrage in einer Schleife? Letzte Ausfuehrung: {}",
+				execution.getCallSite(), executionsInTx,
+				execution.describe(vacmeSettingsService.isDbSlowQueryLogParameters()));
+		}
+	}
+
+	@Override
+	public void requestFinished(long queryCount, long entityLoadCount) {
+		getHistogram("vacme.db.request.queries", "Anzahl Abfragen pro Request").update(queryCount);
+		getHistogram("vacme.db.request.entities", "Anzahl aus der DB geladener Entitaeten pro Request")
+			.update(entityLoadCount);
+	}
+
+	/**
+	 * @return wie oft die Aufrufstelle in der laufenden Transaktion ausgefuehrt wurde, 0 ausserhalb einer Transaktion
+	 */
+	int countExecutionInTransaction(@NonNull String callSite) {
+		if (transactionSynchronizationRegistry.getTransactionStatus() != Status.STATUS_ACTIVE) {
+			return 0;
+		}
+		@SuppressWarnings("unchecked")
+		Map<String, Integer> executions = (Map<String, Integer>) transactionSynchronizationRegistry
+			.getResource(TX_RESOURCE_KEY);
+		if (executions == null) {
+			executions = new HashMap<>();
+			transactionSynchronizationRegistry.putResource(TX_RESOURCE_KEY, executions);
+		}
+		return executions.merge(callSite, 1, Integer::sum);
+	}
+
+	@NonNull
+	private CallSiteMetrics registerCallSite(@NonNull String callSite, @NonNull String operation) {
+		final Tag[] tags = { new Tag(TAG_CALLSITE, callSite), new Tag(TAG_OPERATION, operation) };
+		final Timer duration = metricRegistry.timer(Metadata.builder()
+			.withName("vacme.db.query.duration")
+			.withDescription("Laufzeit der Abfragen pro Aufrufstelle")
+			.withType(MetricType.TIMER)
+			.withUnit(MetricUnits.MILLISECONDS)
+			.build(), tags);
+		final Histogram rows = metricRegistry.histogram(Metadata.builder()
+			.withName("vacme.db.query.rows")
+			.withDescription("Anzahl gelesener Zeilen pro Abfrage")
+			.withType(MetricType.HISTOGRAM)
+			.withUnit(MetricUnits.NONE)
+			.build(), tags);
+		final Counter slow = metricRegistry.counter(Metadata.builder()
+			.withName("vacme.db.query.slow")
+			.withDescription("Anzahl Abfragen ueber vacme.db.slowquery.threshold.ms")
+			.withType(MetricType.COUNTER)
+			.withUnit(MetricUnits.NONE)
+			.build(), tags);
+		final Counter nPlusOne = metricRegistry.counter(Metadata.builder()
+			.withName("vacme.db.query.nplusone")
+			.withDescription("Anzahl Transaktionen, in denen die Aufrufstelle als N+1 erkannt wurde")
+			.withType(MetricType.COUNTER)
+			.withUnit(MetricUnits.NONE)
+			.build(), tags);
+		return new CallSiteMetrics(duration, rows, slow, nPlusOne);
+	}
+
+	@NonNull
+	private Histogram getHistogram(@NonNull String name, @NonNull String description) {
+		final Metadata metadata = Metadata.builder()
+			.withName(name)
+			.withDescription(description)
+			.withType(MetricType.HISTOGRAM)
+			.withUnit(MetricUnits.NONE)
+			.build();
+		return metricRegistry.histogram(metadata);
+	}
+
+	@RequiredArgsConstructor
+	private static class CallSiteMetrics {
+		private final Timer duration;
+		private final Histogram rows;
+		private final Counter slow;
+		private final Counter nPlusOne;
+	}
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2022 DV Bern AG, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.dvbern.oss.vacme.service.documentqueue;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+import ch.dvbern.oss.vacme.entities.documentqueue.DocumentQueueType;
+import lombok.RequiredArgsConstructor;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.eclipse.microprofile.metrics.Metadata;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.eclipse.microprofile.metrics.MetricType;
+import org.eclipse.microprofile.metrics.MetricUnits;
+import org.eclipse.microprofile.metrics.Tag;
+import org.eclipse.microprofile.metrics.Timer;
+
+/**
+ * Metriken der DocumentQueue pro DocumentQueueType: Wartezeit in der Queue (Erstellung bis Start der Generierung)
+ * und Laufzeit der Generierung. Zusaetzlich wird pro Typ ein gleitender Mittelwert der Laufzeit gefuehrt, mit dem
+ * die Worker kurze Jobs vorziehen.
+ */
+@ApplicationScoped
+@RequiredArgsConstructor(onConstructor_ = @Inject)
+public class DocumentQueueMetrics {
+
+	private static final String TAG_TYP = "typ";
+	// Gewicht der neuesten Messung im gleitenden Mittelwert
+	private static final double EWMA_ALPHA = 0.3;
+
+	private final MetricRegistry metricRegistry; // application registry
+
+	private final Map<DocumentQueueType, Double> averageRunTimeMs = new ConcurrentHashMap<>();
+
+	public void jobStarted(@NonNull DocumentQueueType typ, @NonNull Duration waitTime) {
+		getTimer("vacme.docqueue.wait", "Wartezeit eines Jobs in der DocumentQueue bis zum Start", typ)
+			.update(waitTime);
+	}
+
+	public void jobFinished(@NonNull DocumentQueueType typ, @NonNull Duration runTime) {
+		getTimer("vacme.docqueue.run", "Laufzeit der Dokumentgenerierung", typ)
+			.update(runTime);
+		averageRunTimeMs.merge(typ, (double) runTime.toMillis(),
+			(average, current) -> EWMA_ALPHA * current + (1 - EWMA_ALPHA) * average);
+	}
+
+	/**
+	 * @return geschaetzte Laufzeit eines Jobs dieses Typs. 0 fuer Typen ohne Messung, damit diese zuerst laufen und
+	 * eine erste Messung liefern.
+	 */
+	public double getEstimatedRunTimeMs(@NonNull DocumentQueueType typ) {
+		return averageRunTimeMs.getOrDefault(typ, 0d);
+	}
+
+	@NonNull
+	private Timer getTimer(@NonNull String name, @NonNull String description, @NonNull DocumentQueueType typ) {
+		final Metadata metadata = Metadata.builder()
+			.withName(name)
+			.withDescription(description)
+			.withType(MetricType.TIMER)
+			.withUnit(MetricUnits.MILLISECONDS)
+			.build();
+		return metricRegistry.timer(metadata, new Tag(TAG_TYP, typ.name()));
+	}
+}
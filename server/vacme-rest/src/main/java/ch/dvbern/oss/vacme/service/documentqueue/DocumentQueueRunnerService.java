@@ -17,7 +17,18 @@
 
 package ch.dvbern.oss.vacme.service.documentqueue;
 
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 
 import javax.enterprise.context.ApplicationScoped;
@@ -25,48 +36,73 @@ import javax.inject.Inject;
 import javax.transaction.Transactional;
 import javax.transaction.Transactional.TxType;
 
+import ch.dvbern.oss.vacme.entities.documentqueue.DocumentQueueType;
 import ch.dvbern.oss.vacme.entities.documentqueue.entities.DocumentQueue;
 import ch.dvbern.oss.vacme.scheduler.SystemAdminRunnerService;
+import ch.dvbern.oss.vacme.service.VacmeSettingsService;
+import io.smallrye.mutiny.Uni;
+import io.smallrye.mutiny.infrastructure.Infrastructure;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.time.StopWatch;
 import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
 
 import static ch.dvbern.oss.vacme.util.TimingUtil.calculateGenerationSpeed;
 
+/**
+ * Verarbeitet die DocumentQueue mit einem Pool von Workern. Pro DocumentQueueType ist die Anzahl gleichzeitig
+ * laufender Jobs auf diesem Node begrenzt (vacme.doccreation.worker.concurrency.*), damit eine grosse Abrechnung
+ * nicht alle Worker blockiert. Die Jobs werden nach der geschaetzten Laufzeit ihres Typs sortiert (kurze zuerst,
+ * innerhalb gleicher Schaetzung die aeltesten zuerst). Die Uebernahme eines Jobs erfolgt atomar in der DB, daher
+ * koennen mehrere Laeufe bzw. Nodes parallel arbeiten.
+ */
 @ApplicationScoped
 @Slf4j
 @Transactional(TxType.NOT_SUPPORTED)
 @RequiredArgsConstructor(onConstructor_ = @Inject)
 public class DocumentQueueRunnerService {
 
-
-
 	private final SystemAdminRunnerService systemAdminRunnerService;
+	private final VacmeSettingsService vacmeSettingsService;
+	private final DocumentQueueMetrics documentQueueMetrics;
+
+	// Ueber alle Laeufe dieses Nodes geteilt, damit sich ueberlappende Laeufe die Limiten nicht verdoppeln
+	private final Map<DocumentQueueType, Semaphore> runningPerType = new ConcurrentHashMap<>();
+	@Nullable
+	private volatile Semaphore workerSlots;
 
 	@Transactional(TxType.NOT_SUPPORTED)
 	public int performDocumentGenerationRun(@NonNull List<DocumentQueue> currentQueueItems) {
 		StopWatch stopWatch = StopWatch.createStarted();
 		int successCounter = 0;
-		int totalCounter = 0;
 		try {
-			if (!currentQueueItems.isEmpty()) {
-				LOG.info("VACME-DOC-CREATION: Starting to calculate {} documents",
-					currentQueueItems.size());
+			if (currentQueueItems.isEmpty()) {
+				return 0;
 			}
+			LOG.info("VACME-DOC-CREATION: Starting to calculate {} documents",
+				currentQueueItems.size());
 
-			for (DocumentQueue queueItem : currentQueueItems) {
-				try {
-					// ich glaube wir koennen hier nichts checken weil wir fast immer neu berechnen koennen / wollen
-					LOG.debug("VACME-DOC-CREATION: Erstelle document fuer  Benutzer {}", queueItem.getBenutzer().getBenutzername());
-					boolean success = this.systemAdminRunnerService.processDocumentQueueItem(queueItem.getId());
-
-					if (success) {
-						successCounter++;
-					}
-				} finally {
-					totalCounter++;
-				}
+			final LinkedList<DocumentQueue> pending = new LinkedList<>(currentQueueItems);
+			pending.sort(Comparator
+				.comparingDouble((DocumentQueue item) -> documentQueueMetrics.getEstimatedRunTimeMs(item.getTyp()))
+				.thenComparing(DocumentQueue::getTimestampErstellt));
+
+			final Semaphore slots = getWorkerSlots();
+			final List<CompletableFuture<Integer>> workers = new ArrayList<>();
+			while (workers.size() < currentQueueItems.size() && slots.tryAcquire()) {
+				CompletableFuture<Integer> worker = Uni.createFrom().item(pending)
+					.emitOn(Infrastructure.getDefaultWorkerPool())
+					.onItem().transform(this::processPendingItems)
+					.onTermination().invoke(slots::release)
+					.subscribe().asCompletionStage();
+				workers.add(worker);
+			}
+			if (workers.isEmpty()) {
+				LOG.info("VACME-DOC-CREATION: Alle Worker sind besetzt, die Dokumente werden spaeter erstellt");
+			}
+			for (CompletableFuture<Integer> worker : workers) {
+				successCounter += awaitWorker(worker);
 			}
 		} finally {
 			stopWatch.stop();
@@ -75,11 +111,92 @@ public class DocumentQueueRunnerService {
 					"VACME-DOC-CREATION: Document Erstellung beendet. Es wurden {} Docs von total {} QueueItems"
 						+ " in {}ms berechnet. {} ms/stk",
 					successCounter, currentQueueItems.size(), stopWatch.getTime(TimeUnit.MILLISECONDS),
-					calculateGenerationSpeed(totalCounter,
+					calculateGenerationSpeed(currentQueueItems.size(),
 						stopWatch.getTime(TimeUnit.MILLISECONDS)));
 			}
 		}
 		return successCounter;
 	}
 
+	/**
+	 * Ein Worker nimmt solange Jobs, deren Typ noch nicht ausgelastet ist. Ist fuer alle uebrigen Jobs das Limit
+	 * erreicht, endet er: diese Jobs werden vom Worker, der den Typ gerade belegt, anschliessend uebernommen.
+	 */
+	int processPendingItems(@NonNull LinkedList<DocumentQueue> pending) {
+		int successCounter = 0;
+		DocumentQueue queueItem;
+		while ((queueItem = takeNextItem(pending)) != null) {
+			try {
+				if (processItem(queueItem)) {
+					successCounter++;
+				}
+			} finally {
+				getTypeSemaphore(queueItem.getTyp()).release();
+			}
+		}
+		return successCounter;
+	}
+
+	/**
+	 * @return den ersten Job, fuer dessen Typ noch ein Platz frei ist (der Platz ist dann reserviert), oder null
+	 */
+	@Nullable
+	DocumentQueue takeNextItem(@NonNull LinkedList<DocumentQueue> pending) {
+		synchronized (pending) {
+			Iterator<DocumentQueue> iterator = pending.iterator();
+			while (iterator.hasNext()) {
+				DocumentQueue candidate = iterator.next();
+				if (getTypeSemaphore(candidate.getTyp()).tryAcquire()) {
+					iterator.remove();
+					return candidate;
+				}
+			}
+			return null;
+		}
+	}
+
+	private boolean processItem(@NonNull DocumentQueue queueItem) {
+		LOG.debug("VACME-DOC-CREATION: Erstelle document fuer  Benutzer {}", queueItem.getBenutzer().getBenutzername());
+		documentQueueMetrics.jobStarted(queueItem.getTyp(),
+			Duration.between(queueItem.getTimestampErstellt(), LocalDateTime.now()));
+		StopWatch runTime = StopWatch.createStarted();
+		try {
+			return this.systemAdminRunnerService.processDocumentQueueItem(queueItem.getId());
+		} finally {
+			documentQueueMetrics.jobFinished(queueItem.getTyp(), Duration.ofMillis(runTime.getTime(TimeUnit.MILLISECONDS)));
+		}
+	}
+
+	private int awaitWorker(@NonNull CompletableFuture<Integer> worker) {
+		try {
+			return worker.get();
+		} catch (InterruptedException e) {
+			LOG.error("VACME-DOC-CREATION: Thread was interrupted while waiting for document worker", e);
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			LOG.error("VACME-DOC-CREATION: An Exception escaped while processing the DocumentQueue", e);
+		}
+		return 0;
+	}
+
+	@NonNull
+	private Semaphore getTypeSemaphore(@NonNull DocumentQueueType typ) {
+		return runningPerType.computeIfAbsent(typ,
+			t -> new Semaphore(Math.max(1, vacmeSettingsService.getDocCreationConcurrency(t))));
+	}
+
+	@NonNull
+	private Semaphore getWorkerSlots() {
+		Semaphore slots = workerSlots;
+		if (slots == null) {
+			synchronized (this) {
+				slots = workerSlots;
+				if (slots == null) {
+					slots = new Semaphore(Math.max(1, vacmeSettingsService.getDocCreationWorkerPoolSize()));
+					workerSlots = slots;
+				}
+			}
+		}
+		return slots;
+	}
 }
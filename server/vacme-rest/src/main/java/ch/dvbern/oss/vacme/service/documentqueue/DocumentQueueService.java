@@ -115,7 +115,7 @@ public class DocumentQueueService implements IDocumentQueueService {
 	}
 
 	@Override
-	public void markDocumentQueueItemAsInProgress(@NonNull DocumentQueue documentQueueItem) {
-		documentQueueRepo.markDocumentQueueItemAsInProgressNewTransaction(documentQueueItem);
+	public boolean claimDocumentQueueItem(@NonNull Long docId) {
+		return documentQueueRepo.claimDocumentQueueItemNewTransaction(docId);
 	}
 }
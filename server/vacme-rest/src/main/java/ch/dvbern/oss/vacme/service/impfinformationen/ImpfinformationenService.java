@@ -19,8 +19,10 @@ package ch.dvbern.oss.vacme.service.impfinformationen;
 
 import java.time.LocalDateTime;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.UUID;
@@ -86,6 +88,18 @@ public class ImpfinformationenService {
 		return impfungRepo.getImpfinformationenOptional(registrierungsnummer, krankheitIdentifier);
 	}
 
+	/**
+	 * Laedt die Impfinformationen fuer mehrere Registrierungen auf einmal, siehe
+	 * {@link ImpfungRepo#getImpfinformationenBatch(Collection, KrankheitIdentifier)}
+	 */
+	@NonNull
+	public Map<String, ImpfinformationDto> getImpfinformationenBatch(
+		@NonNull Collection<String> registrierungsnummern,
+		@NonNull KrankheitIdentifier krankheitIdentifier
+	) {
+		return impfungRepo.getImpfinformationenBatch(registrierungsnummern, krankheitIdentifier);
+	}
+
 	@NonNull
 	public List<ImpfinformationDto> getImpfinformationenForAllDossiers(@NonNull String registrierungsnummer) {
 		return Arrays.stream(KrankheitIdentifier.values())
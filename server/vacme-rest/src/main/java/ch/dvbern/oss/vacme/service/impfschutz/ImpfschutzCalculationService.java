@@ -32,4 +32,11 @@ public interface ImpfschutzCalculationService {
 		@NonNull Fragebogen fragebogen,
 		@NonNull ImpfinformationDto impfinformationDto
 	);
+
+	/**
+	 * @return Identifikation der Konfiguration, mit welcher die Regeln initialisiert wurden. Aendert sich diese,
+	 * muessen alle Impfschutz neu berechnet werden.
+	 */
+	@NonNull
+	String getRuleConfigFingerprint();
 }
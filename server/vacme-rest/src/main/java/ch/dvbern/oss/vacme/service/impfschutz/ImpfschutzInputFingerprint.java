@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2022 DV Bern AG, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.dvbern.oss.vacme.service.impfschutz;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import ch.dvbern.oss.vacme.entities.base.AbstractUUIDEntity;
+import ch.dvbern.oss.vacme.entities.impfen.Erkrankung;
+import ch.dvbern.oss.vacme.entities.impfen.Impfdossier;
+import ch.dvbern.oss.vacme.entities.impfen.Impfung;
+import ch.dvbern.oss.vacme.entities.registration.Fragebogen;
+import ch.dvbern.oss.vacme.entities.registration.Registrierung;
+import ch.dvbern.oss.vacme.entities.types.daterange.DateUtil;
+import ch.dvbern.oss.vacme.util.ImpfinformationDto;
+import com.google.common.hash.Hashing;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Berechnet einen Fingerprint ueber alle Inputs der Impfschutzberechnung einer Registrierung. Ist der Fingerprint
+ * gleich wie der am Impfschutz gespeicherte, kann die Neuberechnung uebersprungen werden.
+ * Die Entitaeten fliessen ueber ihre ID und JPA-Version ein, d.h. jede Mutation (z.B. Korrektur einer Impfung)
+ * fuehrt zu einem neuen Fingerprint. Das Alter fliesst in Jahren ein, da die Regeln altersabhaengig sind.
+ */
+public final class ImpfschutzInputFingerprint {
+
+	private static final String SEPARATOR = "|";
+
+	private ImpfschutzInputFingerprint() {
+		// util
+	}
+
+	@NonNull
+	public static String calculate(
+		@NonNull String applicationVersion,
+		@NonNull String ruleConfigFingerprint,
+		@NonNull Fragebogen fragebogen,
+		@NonNull ImpfinformationDto infos
+	) {
+		final Registrierung registrierung = infos.getRegistrierung();
+		final Impfdossier impfdossier = infos.getImpfdossier();
+		final List<Object> parts = new ArrayList<>();
+		// Neues Release kann geaenderte Regeln enthalten, die nicht in der Konfiguration sichtbar sind
+		parts.add(applicationVersion);
+		parts.add(ruleConfigFingerprint);
+		parts.add(infos.getKrankheitIdentifier());
+		// Registrierung: nur die fuer die Regeln relevanten Felder, die Version aendert auch bei irrelevanten Mutationen
+		parts.add(DateUtil.getAge(registrierung.getGeburtsdatum()));
+		parts.add(registrierung.getGeburtsdatum());
+		parts.add(registrierung.getPrioritaet());
+		parts.add(registrierung.getVerstorben());
+		parts.add(registrierung.isAnonymisiert());
+		parts.add(registrierung.getRegistrierungsEingang());
+		parts.add(registrierung.getExternalId());
+		// Fragebogen: fuer die Prioritaetspunkte
+		parts.add(entityVersion(fragebogen));
+		// Dossier
+		parts.add(impfdossier.getVollstaendigerImpfschutzTyp());
+		parts.add(impfdossier.isSchnellschema());
+		parts.add(impfdossier.getZweiteGrundimmunisierungVerzichtet().isGenesen());
+		parts.add(impfdossier.getZweiteGrundimmunisierungVerzichtet().getPositivGetestetDatum());
+		parts.add(impfdossier.getZweiteGrundimmunisierungVerzichtet().getZweiteImpfungVerzichtetZeit());
+		for (Erkrankung erkrankung : impfdossier.getErkrankungenSorted()) {
+			parts.add(entityVersion(erkrankung));
+		}
+		// Impfungen und externes Zertifikat
+		parts.add(entityVersion(infos.getImpfung1()));
+		parts.add(entityVersion(infos.getImpfung2()));
+		if (infos.getBoosterImpfungen() != null) {
+			for (Impfung boosterImpfung : infos.getBoosterImpfungen()) {
+				parts.add(entityVersion(boosterImpfung));
+			}
+		}
+		parts.add(entityVersion(infos.getExternesZertifikat()));
+
+		final StringBuilder sb = new StringBuilder();
+		for (Object part : parts) {
+			sb.append(Objects.toString(part, "")).append(SEPARATOR);
+		}
+		return Hashing.sha256().hashString(sb.toString(), StandardCharsets.UTF_8).toString();
+	}
+
+	@NonNull
+	private static String entityVersion(@Nullable AbstractUUIDEntity<?> entity) {
+		if (entity == null) {
+			return "";
+		}
+		return entity.getId() + ":" + entity.getVersion();
+	}
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2022 DV Bern AG, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.dvbern.oss.vacme.service.joblease;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import lombok.Getter;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Ein gehaltener Lease auf einen Shard eines Jobs. Solange er gueltig ist, wird er im Hintergrund erneuert.
+ * Ein Job muss {@link #isValid()} regelmaessig pruefen und abbrechen, sobald der Lease verloren ist (z.B. weil der
+ * Node zu lange blockiert war und ein anderer Node den Shard uebernommen hat). Der Fencing-Token steigt mit jeder
+ * Uebernahme und schuetzt nur das Erneuern und Freigeben des Leases selbst: die Schreiboperationen des Jobs werden
+ * nicht dagegen geprueft. Zwischen der letzten Pruefung von {@link #isValid()} und dem Commit eines Eintrags kann der
+ * Shard also schon uebernommen sein; die Eintraege muessen deshalb wie bisher ueber ihren eigenen Zustand (z.B. das
+ * Flag generateZertifikat) gegen doppelte Verarbeitung abgesichert sein.
+ */
+@Getter
+public class JobLease implements AutoCloseable {
+
+	@NonNull
+	private final String jobName;
+	private final int shard;
+	private final int shardCount;
+	@NonNull
+	private final String owner;
+	private final long fencingToken;
+
+	private final AtomicBoolean valid = new AtomicBoolean(true);
+	@NonNull
+	private final JobLeaseService jobLeaseService;
+	@Nullable
+	private volatile ScheduledFuture<?> heartbeat;
+
+	JobLease(
+		@NonNull JobLeaseService jobLeaseService,
+		@NonNull String jobName,
+		int shard,
+		int shardCount,
+		@NonNull String owner,
+		long fencingToken
+	) {
+		this.jobLeaseService = jobLeaseService;
+		this.jobName = jobName;
+		this.shard = shard;
+		this.shardCount = shardCount;
+		this.owner = owner;
+		this.fencingToken = fencingToken;
+	}
+
+	public boolean isValid() {
+		return valid.get();
+	}
+
+	/**
+	 * @return true wenn der Schluessel (z.B. eine Registrierungsnummer) in den Shard dieses Leases faellt
+	 */
+	public boolean isResponsibleFor(@NonNull String key) {
+		return shardOf(key, shardCount) == shard;
+	}
+
+	public static int shardOf(@NonNull String key, int shardCount) {
+		return Math.floorMod(key.hashCode(), shardCount);
+	}
+
+	void markLost() {
+		valid.set(false);
+	}
+
+	void setHeartbeat(@Nullable ScheduledFuture<?> heartbeat) {
+		this.heartbeat = heartbeat;
+	}
+
+	@Override
+	public void close() {
+		final ScheduledFuture<?> currentHeartbeat = heartbeat;
+		if (currentHeartbeat != null) {
+			currentHeartbeat.cancel(false);
+		}
+		if (valid.getAndSet(false)) {
+			jobLeaseService.release(this);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return jobName + '[' + shard + '/' + shardCount + ", token " + fencingToken + ']';
+	}
+}
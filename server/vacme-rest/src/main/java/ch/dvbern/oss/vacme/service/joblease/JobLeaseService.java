@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2022 DV Bern AG, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.dvbern.oss.vacme.service.joblease;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+import ch.dvbern.oss.vacme.repo.JobLeaseRepo;
+import ch.dvbern.oss.vacme.service.VacmeSettingsService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Koordination von Batchjobs ueber kurze, erneuerbare Leases in der Tabelle JobLease. Im Gegensatz zum Lock ueber
+ * ein ApplicationProperty wird ein Lease eines abgestuerzten Nodes nach wenigen Sekunden
+ * (vacme.joblease.seconds) frei und kann von einem anderen Node uebernommen werden.
+ * <p>
+ * Ein Job kann in Shards aufgeteilt werden: jeder Aufruf nimmt einen freien Shard und bearbeitet nur die Eintraege,
+ * die in diesen Shard fallen ({@link JobLease#isResponsibleFor(String)}). So arbeiten mehrere Nodes (bzw. sich
+ * ueberlappende Laeufe) an disjunkten Teilen derselben Queue.
+ */
+@ApplicationScoped
+@Slf4j
+@RequiredArgsConstructor(onConstructor_ = @Inject)
+public class JobLeaseService {
+
+	private final JobLeaseRepo jobLeaseRepo;
+	private final VacmeSettingsService vacmeSettingsService;
+
+	@Nullable
+	private ScheduledExecutorService heartbeatExecutor;
+
+	/**
+	 * Versucht den (einzigen) Shard des Jobs zu uebernehmen
+	 */
+	@NonNull
+	public Optional<JobLease> tryAcquire(@NonNull String jobName) {
+		return tryAcquireAnyShard(jobName, 1);
+	}
+
+	/**
+	 * Versucht einen beliebigen freien Shard des Jobs zu uebernehmen. Die Shards werden in zufaelliger Reihenfolge
+	 * probiert, damit sich gleichzeitig startende Nodes nicht gegenseitig blockieren.
+	 */
+	@NonNull
+	public Optional<JobLease> tryAcquireAnyShard(@NonNull String jobName, int shardCount) {
+		final int shards = Math.max(1, shardCount);
+		final long leaseSeconds = vacmeSettingsService.getJobLeaseSeconds();
+		jobLeaseRepo.ensureShards(jobName, shards);
+		final List<Integer> order = new ArrayList<>();
+		for (int shard = 0; shard < shards; shard++) {
+			order.add(shard);
+		}
+		Collections.shuffle(order);
+		for (int shard : order) {
+			final String owner = UUID.randomUUID().toString();
+			final Optional<Long> token = jobLeaseRepo.tryAcquire(jobName, shard, owner, leaseSeconds);
+			if (token.isPresent()) {
+				final JobLease lease = new JobLease(this, jobName, shard, shards, owner, token.get());
+				startHeartbeat(lease, leaseSeconds);
+				LOG.info("VACME-JOBLEASE: Lease {} uebernommen", lease);
+				return Optional.of(lease);
+			}
+		}
+		return Optional.empty();
+	}
+
+	/**
+	 * Fuehrt den Job aus, wenn ein Shard frei ist, und gibt den Lease danach wieder frei.
+	 *
+	 * @return false wenn alle Shards bereits belegt waren
+	 */
+	public boolean runWithLease(@NonNull String jobName, int shardCount, @NonNull Consumer<JobLease> job) {
+		final Optional<JobLease> leaseOptional = tryAcquireAnyShard(jobName, shardCount);
+		if (leaseOptional.isEmpty()) {
+			LOG.info("VACME-JOBLEASE: Alle {} Shards von {} sind belegt", shardCount, jobName);
+			return false;
+		}
+		try (JobLease lease = leaseOptional.get()) {
+			job.accept(lease);
+		}
+		return true;
+	}
+
+	void release(@NonNull JobLease lease) {
+		try {
+			jobLeaseRepo.release(lease.getJobName(), lease.getShard(), lease.getOwner(), lease.getFencingToken());
+			LOG.info("VACME-JOBLEASE: Lease {} freigegeben", lease);
+		} catch (RuntimeException e) {
+			// nicht schlimm, der Lease laeuft von selber ab
+			LOG.warn("VACME-JOBLEASE: Lease {} konnte nicht freigegeben werden", lease, e);
+		}
+	}
+
+	void renew(@NonNull JobLease lease, long leaseSeconds) {
+		if (!lease.isValid()) {
+			return;
+		}
+		try {
+			final boolean renewed = jobLeaseRepo.renew(
+				lease.getJobName(), lease.getShard(), lease.getOwner(), lease.getFencingToken(), leaseSeconds);
+			if (!renewed) {
+				LOG.warn("VACME-JOBLEASE: Lease {} ist verloren gegangen", lease);
+				lease.markLost();
+			}
+		} catch (RuntimeException e) {
+			// Beim naechsten Heartbeat nochmals versuchen, solange der Lease noch nicht abgelaufen ist
+			LOG.warn("VACME-JOBLEASE: Lease {} konnte nicht erneuert werden", lease, e);
+		}
+	}
+
+	private void startHeartbeat(@NonNull JobLease lease, long leaseSeconds) {
+		// dreimal pro Lease-Dauer erneuern, damit ein einzelner verpasster Heartbeat nicht zum Verlust fuehrt
+		final long intervalMillis = Math.max(1000, leaseSeconds * 1000 / 3);
+		lease.setHeartbeat(getHeartbeatExecutor().scheduleWithFixedDelay(
+			() -> renew(lease, leaseSeconds), intervalMillis, intervalMillis, TimeUnit.MILLISECONDS));
+	}
+
+	@NonNull
+	private synchronized ScheduledExecutorService getHeartbeatExecutor() {
+		if (heartbeatExecutor == null) {
+			heartbeatExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "vacme-joblease-heartbeat");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		return heartbeatExecutor;
+	}
+
+	@PreDestroy
+	synchronized void shutdown() {
+		if (heartbeatExecutor != null) {
+			heartbeatExecutor.shutdownNow();
+			heartbeatExecutor = null;
+		}
+	}
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2022 DV Bern AG, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.dvbern.oss.vacme.service.migration;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import ch.dvbern.oss.vacme.entities.benutzer.Benutzer;
+import ch.dvbern.oss.vacme.entities.impfen.Impfstoff;
+import ch.dvbern.oss.vacme.entities.registration.Registrierung;
+import ch.dvbern.oss.vacme.entities.terminbuchung.OrtDerImpfung;
+import ch.dvbern.oss.vacme.entities.types.BenutzerRolle;
+import ch.dvbern.oss.vacme.enums.ImpfstoffNamesJax;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Nachschlagewerte fuer die Migration mehrerer Registrierungen in derselben Transaktion: die bereits bestehenden
+ * Registrierungen nach externalId, die im Block reservierten Registrierungsnummern sowie die schon gelesenen
+ * Impfstoffe, ODIs und Benutzer. Die Entitaeten sind nur in der Transaktion gueltig, in der der Kontext erstellt wurde.
+ */
+public class DataMigrationKontext {
+
+	private final Map<String, Registrierung> registrierungenByExternalId = new HashMap<>();
+	private final Deque<String> freieRegistrierungsnummern;
+	private final Map<ImpfstoffNamesJax, Impfstoff> impfstoffe = new EnumMap<>(ImpfstoffNamesJax.class);
+	private final Map<String, OrtDerImpfung> odisByIdentifier = new HashMap<>();
+	private final Map<String, Benutzer> benutzerByRolleAndGln = new HashMap<>();
+
+	public DataMigrationKontext(
+		@NonNull Collection<Registrierung> bestehendeRegistrierungen,
+		@NonNull Collection<String> freieRegistrierungsnummern
+	) {
+		bestehendeRegistrierungen.forEach(this::putRegistrierung);
+		this.freieRegistrierungsnummern = new ArrayDeque<>(freieRegistrierungsnummern);
+	}
+
+	@NonNull
+	public Optional<Registrierung> findRegistrierung(@NonNull String externalId) {
+		return Optional.ofNullable(registrierungenByExternalId.get(externalId));
+	}
+
+	/**
+	 * Damit eine im selben Request mehrfach vorkommende externalId nicht doppelt erstellt wird
+	 */
+	public void putRegistrierung(@NonNull Registrierung registrierung) {
+		if (registrierung.getExternalId() != null) {
+			registrierungenByExternalId.put(registrierung.getExternalId(), registrierung);
+		}
+	}
+
+	/**
+	 * @return die naechste reservierte Registrierungsnummer oder, falls der Block aufgebraucht ist, eine neue
+	 */
+	@NonNull
+	public String nextRegistrierungsnummer(@NonNull Supplier<String> fallback) {
+		final String reserviert = freieRegistrierungsnummern.poll();
+		return reserviert != null ? reserviert : fallback.get();
+	}
+
+	@NonNull
+	public Impfstoff getImpfstoff(
+		@NonNull ImpfstoffNamesJax impfstoff,
+		@NonNull Function<ImpfstoffNamesJax, Impfstoff> loader
+	) {
+		return impfstoffe.computeIfAbsent(impfstoff, loader);
+	}
+
+	@NonNull
+	public OrtDerImpfung getOdi(@NonNull String odiIdentifier, @NonNull Function<String, OrtDerImpfung> loader) {
+		return odisByIdentifier.computeIfAbsent(odiIdentifier, loader);
+	}
+
+	@NonNull
+	public Benutzer getBenutzer(
+		@Nullable String glnNummer,
+		@NonNull BenutzerRolle rolle,
+		@NonNull Supplier<Benutzer> loader
+	) {
+		return benutzerByRolleAndGln.computeIfAbsent(rolle.name() + '/' + glnNummer, key -> loader.get());
+	}
+}
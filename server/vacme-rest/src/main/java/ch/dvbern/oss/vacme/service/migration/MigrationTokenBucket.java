@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2022 DV Bern AG, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.dvbern.oss.vacme.service.migration;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+/**
+ * Token-Bucket fuer das Rate-Limiting der Migrations-API. Jeder Aufrufer hat einen eigenen Bucket mit der gegebenen
+ * Kapazitaet, welcher kontinuierlich mit refillPerSecond Tokens aufgefuellt wird. Ein Request bezieht ein Token pro
+ * Registrierung. Requests, die mehr kosten als die Kapazitaet, duerfen den Bucket ueberziehen (negative Tokens), die
+ * Schuld muss vor dem naechsten Request abgetragen werden. So bleibt die Rate auch fuer grosse Requests eingehalten.
+ */
+@Getter
+@AllArgsConstructor
+public class MigrationTokenBucket {
+
+	private double tokens;
+
+	@NonNull
+	private LocalDateTime timestampRefill;
+
+	@NonNull
+	public static MigrationTokenBucket full(int capacity, @NonNull LocalDateTime now) {
+		return new MigrationTokenBucket(capacity, now);
+	}
+
+	/**
+	 * Fuellt den Bucket seit dem letzten Aufruf auf und bezieht die Tokens, falls genuegend vorhanden sind. Requests,
+	 * die mehr kosten als die Kapazitaet, brauchen einen vollen Bucket und werden voll belastet.
+	 *
+	 * @return 0 wenn die Tokens bezogen wurden, sonst die Anzahl Sekunden, bis genuegend Tokens vorhanden sind
+	 */
+	public long tryConsume(double cost, int capacity, double refillPerSecond, @NonNull LocalDateTime now) {
+		if (now.isAfter(timestampRefill)) {
+			// Bei Uhrabweichungen zwischen den Nodes wird nicht zurueckgerechnet
+			final double elapsedSeconds = Duration.between(timestampRefill, now).toMillis() / 1000.0;
+			tokens = Math.min(capacity, tokens + elapsedSeconds * refillPerSecond);
+			timestampRefill = now;
+		}
+		final double requiredTokens = Math.min(cost, capacity);
+		if (tokens >= requiredTokens) {
+			tokens -= cost;
+			return 0;
+		}
+		// Bei ueberzogenem Bucket ist die Schuld in der Wartezeit enthalten
+		return Math.max(1, (long) Math.ceil((requiredTokens - tokens) / refillPerSecond));
+	}
+}
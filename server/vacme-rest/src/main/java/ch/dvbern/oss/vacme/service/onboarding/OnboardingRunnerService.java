@@ -29,11 +29,13 @@ import javax.transaction.Transactional;
 import javax.transaction.Transactional.TxType;
 
 import ch.dvbern.oss.vacme.entities.base.ApplicationPropertyKey;
+import ch.dvbern.oss.vacme.entities.base.ID;
 import ch.dvbern.oss.vacme.entities.registration.Registrierung;
 import ch.dvbern.oss.vacme.service.ApplicationPropertyService;
 import ch.dvbern.oss.vacme.service.RegistrierungService;
 import ch.dvbern.oss.vacme.service.VacmeSettingsService;
 import ch.dvbern.oss.vacme.util.TimingUtil;
+import com.google.common.collect.Lists;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.Validate;
@@ -73,23 +75,31 @@ public class OnboardingRunnerService {
 			LOG.info("VACME-ONBOARDING: ({}) Starting to generate a batch of up to {} Onboarding-Letters. Found {}",
 				batchType, vacmeSettingsService.getOnboardingLettersBatchSize(), regsToCreateOnboardingFor.size());
 
-			for (String regNum : regsToCreateOnboardingFor) {
-				try {
-
-					Registrierung registrierung = this.registrierungService.findRegistrierung(regNum);
-					if (!registrierung.isGenerateOnboardingLetter()) {
-						LOG.warn("VACME-ONBOARDING: ({}) Registration {} does not meet criteria for onboarding. Maybe it was already processed?",
-							batchType, registrierung.getRegistrierungsnummer());
-						continue;
-					}
-
-					LOG.info("VACME-ONBOARDING: ({}) Erstelle Onboarding Notification fuer {}", batchType, regNum);
-					boolean success = createOnboardingNotification(regNum, batchType);
-					if (success) {
-						successCounter++;
+			final int chunkSize = vacmeSettingsService.getOnboardingPdfChunkSize();
+			if (chunkSize > 1) {
+				for (List<String> chunk : Lists.partition(regsToCreateOnboardingFor, chunkSize)) {
+					successCounter += createOnboardingNotificationsForChunk(chunk, batchType);
+					totalCounter += chunk.size();
+				}
+			} else {
+				for (String regNum : regsToCreateOnboardingFor) {
+					try {
+
+						Registrierung registrierung = this.registrierungService.findRegistrierung(regNum);
+						if (!registrierung.isGenerateOnboardingLetter()) {
+							LOG.warn("VACME-ONBOARDING: ({}) Registration {} does not meet criteria for onboarding. Maybe it was already processed?",
+								batchType, registrierung.getRegistrierungsnummer());
+							continue;
+						}
+
+						LOG.info("VACME-ONBOARDING: ({}) Erstelle Onboarding Notification fuer {}", batchType, regNum);
+						boolean success = createOnboardingNotification(regNum, batchType);
+						if (success) {
+							successCounter++;
+						}
+					} finally {
+						totalCounter++;
 					}
-				} finally {
-					totalCounter++;
 				}
 			}
 		} finally {
@@ -106,6 +116,45 @@ public class OnboardingRunnerService {
 		}
 	}
 
+	/**
+	 * Erstellt die Briefe eines Chunks in einer Transaktion (die PDFs werden dabei parallel gerendert). Schlaegt der
+	 * Chunk fehl, werden die Briefe einzeln erstellt, damit eine fehlerhafte Registrierung nicht alle anderen blockiert.
+	 *
+	 * @return Anzahl erfolgreich erstellter Briefe
+	 */
+	private int createOnboardingNotificationsForChunk(@NonNull List<String> regNums, @NonNull OnboardingBatchType batchType) {
+		List<ID<Registrierung>> registrierungIds = new ArrayList<>(regNums.size());
+		List<String> regNumsToProcess = new ArrayList<>(regNums.size());
+		for (String regNum : regNums) {
+			Registrierung registrierung = this.registrierungService.findRegistrierung(regNum);
+			if (!registrierung.isGenerateOnboardingLetter()) {
+				LOG.warn("VACME-ONBOARDING: ({}) Registration {} does not meet criteria for onboarding. Maybe it was already processed?",
+					batchType, registrierung.getRegistrierungsnummer());
+				continue;
+			}
+			registrierungIds.add(registrierung.toId());
+			regNumsToProcess.add(regNum);
+		}
+		if (registrierungIds.isEmpty()) {
+			return 0;
+		}
+		try {
+			LOG.info("VACME-ONBOARDING: ({}) Erstelle {} Onboarding Notifications", batchType, registrierungIds.size());
+			onboardingService.triggerLetterGenerationBatch(registrierungIds, batchType);
+			return registrierungIds.size();
+		} catch (Exception exception) {
+			LOG.warn("VACME-ONBOARDING: ({}) Fehler beim Erstellen von {} Briefen, versuche es einzeln",
+				batchType, registrierungIds.size(), exception);
+		}
+		int successCounter = 0;
+		for (String regNum : regNumsToProcess) {
+			if (createOnboardingNotification(regNum, batchType)) {
+				successCounter++;
+			}
+		}
+		return successCounter;
+	}
+
 	@Transactional(TxType.NOT_SUPPORTED)
 	public boolean createOnboardingNotification(@NonNull String regNum, @NonNull OnboardingBatchType batchType) {
 		return createOnboardingNotificationForRegistrierung(regNum, batchType);
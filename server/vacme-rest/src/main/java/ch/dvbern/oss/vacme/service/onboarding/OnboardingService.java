@@ -41,6 +41,7 @@ import javax.transaction.Transactional;
 import javax.transaction.Transactional.TxType;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 
@@ -68,6 +69,41 @@ public class OnboardingService {
 		onboarding.getRegistrierung().setGenerateOnboardingLetter(false);
 	}
 
+	/**
+	 * Wie {@link #triggerLetterGeneration(ID, OnboardingBatchType)}, aber fuer mehrere Registrierungen in einer
+	 * Transaktion. Die Briefe werden dabei parallel gerendert. Schlaegt ein Brief fehl, wird der ganze Batch
+	 * zurueckgerollt.
+	 */
+	@Transactional(TxType.REQUIRES_NEW)
+	public void triggerLetterGenerationBatch(
+		@NonNull List<ID<Registrierung>> registrierungsIds,
+		@NonNull OnboardingBatchType batchType
+	) {
+		if (batchType != OnboardingBatchType.POST) {
+			throw new AppFailureException("unkown onboarding batch type: " + batchType);
+		}
+		List<Onboarding> onboardings = new ArrayList<>(registrierungsIds.size());
+		for (ID<Registrierung> registrierungsId : registrierungsIds) {
+			Registrierung reg = registrierungService.findRegistrierungById(registrierungsId.getId()).orElseThrow();
+			Onboarding onboarding = new Onboarding(reg);
+			onboarding.setCode(onboardingRepo.getNextOnboardingCode());
+			LOG.info("VACME-ONBOARDING: creating onboarding {} for reg {}", onboarding.getCode(), registrierungsId);
+			onboardings.add(onboarding);
+		}
+
+		final List<byte[]> letters = pdfService.createOnboardingLetters(onboardings);
+
+		for (int i = 0; i < onboardings.size(); i++) {
+			Onboarding onboarding = onboardings.get(i);
+			Registrierung registrierung = onboarding.getRegistrierung();
+			RegistrierungFile pdf = confirmationService.saveAndSendLetter(registrierung, RegistrierungFileTyp.ONBOARDING_LETTER, letters.get(i));
+			onboarding.setOnboardingPdf(pdf);
+			onboardingRepo.create(onboarding);
+			registrierung.setGenerateOnboardingLetter(false);
+			LOG.info("VACME-ONBOARDING: created letter for {} {}", onboarding.getCode(), registrierung.getId());
+		}
+	}
+
 	public Onboarding createAndStoreNewOnboardingCode(Registrierung registrierung, OnboardingBatchType batchType) {
 		// setup the onboarding
 		Onboarding onboarding = new Onboarding(registrierung);
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2022 DV Bern AG, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.dvbern.oss.vacme.service.personaliensuche;
+
+import java.text.Normalizer;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+/**
+ * Normalisierung von Namen fuer die Personaliensuche. Ein gesuchter Name passt, wenn er (ohne Leerzeichen und
+ * Bindestriche) einem einzelnen Namensteil oder den zusammengehaengten ersten Namensteilen entspricht. Dieselben
+ * Regeln gelten fuer die Suche in Java und fuer die Schluessel im RegistrierungSuchindex.
+ */
+public final class PersonalienSuchschluessel {
+
+	private static final String TRENNZEICHEN = "[ \\-]";
+
+	private PersonalienSuchschluessel() {
+		// util
+	}
+
+	/**
+	 * Normalisiert einen Suchbegriff, so wie er mit den Schluesseln verglichen wird
+	 */
+	@NonNull
+	public static String normalizeSearch(@NonNull String toNormalizeSplit) {
+		return normalize(toNormalizeSplit).replaceAll(TRENNZEICHEN, "");
+	}
+
+	public static boolean matches(@NonNull String normalizedSearch, @NonNull String comparedString) {
+		String[] splitData = normalize(comparedString).split(TRENNZEICHEN);
+		String concatenated = "";
+		for (String singleDataString : splitData) {
+			concatenated = concatenated.concat(singleDataString);
+			if (singleDataString.equals(normalizedSearch) || concatenated.equals(normalizedSearch)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Alle normalisierten Suchbegriffe, mit denen der Name gefunden wird: jeder Namensteil einzeln und die
+	 * zusammengehaengten ersten Namensteile
+	 */
+	@NonNull
+	public static Set<String> createSchluessel(@NonNull String name) {
+		Set<String> schluessel = new LinkedHashSet<>();
+		String concatenated = "";
+		for (String singleDataString : normalize(name).split(TRENNZEICHEN)) {
+			concatenated = concatenated.concat(singleDataString);
+			if (!singleDataString.isEmpty()) {
+				schluessel.add(singleDataString);
+			}
+			if (!concatenated.isEmpty()) {
+				schluessel.add(concatenated);
+			}
+		}
+		return schluessel;
+	}
+
+	/**
+	 * remove special characters
+	 */
+	@NonNull
+	private static String normalize(@NonNull String toNormalize) {
+		return Normalizer.normalize(toNormalize, Normalizer.Form.NFD)
+			.replaceAll("[^\\p{ASCII}]", "") // remove non ascii symbols
+			.toLowerCase();
+	}
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2022 DV Bern AG, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.dvbern.oss.vacme.service.personaliensuche;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+import ch.dvbern.oss.vacme.repo.RegistrierungSuchindexRepo;
+import ch.dvbern.oss.vacme.service.VacmeSettingsService;
+import ch.dvbern.oss.vacme.service.joblease.JobLeaseService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.time.StopWatch;
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+/**
+ * Fuehrt den RegistrierungSuchindex nach, mit dem die Personaliensuche nur noch die Registrierungen laedt, deren
+ * Name und Vorname zum Suchbegriff passen, anstatt aller Registrierungen mit dem Geburtsdatum.
+ * <p>
+ * Namen werden an vielen Orten geaendert (Registrierung, Impfkontrolle, Korrekturen, Migration). Anstatt an all
+ * diesen Stellen einen Hook einzubauen, liest der Job {@link #update()} periodisch alle seit dem letzten Stand
+ * veraenderten Registrierungen (timestampMutiert) und indexiert sie neu. Damit auch die noch nicht indexierten
+ * Aenderungen gefunden werden, liefert die Suche zusaetzlich alle seit dem Stand veraenderten Registrierungen mit
+ * dem Geburtsdatum als Kandidaten. Ist der Stand zu alt (Job laeuft nicht, erster Aufbau), wird ohne Index gesucht.
+ */
+@ApplicationScoped
+@Slf4j
+@RequiredArgsConstructor(onConstructor_ = @Inject)
+public class RegistrierungSuchindexService {
+
+	private static final String JOB_NAME = "registrierungSuchindex";
+	// Beim ersten Aufbau werden alle Registrierungen indexiert
+	private static final LocalDateTime ERSTER_STAND = LocalDateTime.of(1970, 1, 1, 0, 0);
+
+	private final RegistrierungSuchindexRepo registrierungSuchindexRepo;
+	private final VacmeSettingsService vacmeSettingsService;
+	private final JobLeaseService jobLeaseService;
+
+	public boolean isEnabled() {
+		return vacmeSettingsService.isPersonaliensucheIndexEnabled();
+	}
+
+	/**
+	 * @return die IDs der Registrierungen, die zur Suche passen koennen, oder empty, wenn der Index nicht verwendet
+	 * werden kann und alle Registrierungen mit dem Geburtsdatum geprueft werden muessen. Die Kandidaten muessen
+	 * nochmals gegen die aktuellen Namen geprueft werden.
+	 */
+	@NonNull
+	public Optional<List<UUID>> findKandidaten(
+		@NonNull String vorname,
+		@NonNull String name,
+		@NonNull LocalDate geburtsdatum
+	) {
+		if (!isEnabled()) {
+			return Optional.empty();
+		}
+		final String normalizedVorname = PersonalienSuchschluessel.normalizeSearch(vorname);
+		final String normalizedName = PersonalienSuchschluessel.normalizeSearch(name);
+		if (normalizedVorname.isEmpty() || normalizedName.isEmpty()) {
+			// Leere Suchbegriffe passen auf leere Namensteile, die nicht im Index stehen
+			return Optional.empty();
+		}
+		final Optional<LocalDateTime> stand = registrierungSuchindexRepo.findStand();
+		final LocalDateTime minStand = LocalDateTime.now()
+			.minusSeconds(vacmeSettingsService.getPersonaliensucheIndexMaxLagSeconds());
+		if (stand.isEmpty() || stand.get().isBefore(minStand)) {
+			LOG.debug("VACME-PERSONALIENSUCHE: Suchindex nicht aktuell (Stand {}), suche ohne Index",
+				stand.orElse(null));
+			return Optional.empty();
+		}
+		return Optional.of(registrierungSuchindexRepo.findKandidaten(
+			geburtsdatum,
+			normalizedName,
+			normalizedVorname,
+			minusOverlap(stand.get())));
+	}
+
+	/**
+	 * Indexiert alle seit dem letzten Stand veraenderten Registrierungen neu. Beim ersten Lauf wird der ganze Index
+	 * aufgebaut. Der Stand wird nach jedem Batch gespeichert, damit ein abgebrochener Lauf dort weitermacht.
+	 * Laeuft nur auf einem Node gleichzeitig.
+	 */
+	public void update() {
+		if (!isEnabled()) {
+			return;
+		}
+		jobLeaseService.runWithLease(JOB_NAME, 1, lease -> {
+			final LocalDateTime laufStart = LocalDateTime.now();
+			// Ueberlappung, da Transaktionen, die vor dem Stand begonnen haben, erst spaeter committed werden
+			final LocalDateTime seit = registrierungSuchindexRepo.findStand()
+				.map(this::minusOverlap)
+				.orElse(ERSTER_STAND);
+			final int batchSize = vacmeSettingsService.getPersonaliensucheIndexBatchSize();
+			final StopWatch stopWatch = StopWatch.createStarted();
+			int anzahl = 0;
+			RegistrierungSuchdaten letzte = null;
+			while (true) {
+				if (!lease.isValid()) {
+					LOG.warn("VACME-PERSONALIENSUCHE: Lease {} verloren, Suchindex wird nicht fertig nachgefuehrt", lease);
+					return;
+				}
+				final List<RegistrierungSuchdaten> batch =
+					registrierungSuchindexRepo.findGeaendertSeit(seit, letzte, batchSize);
+				if (batch.isEmpty()) {
+					break;
+				}
+				registrierungSuchindexRepo.reindex(batch);
+				anzahl += batch.size();
+				letzte = batch.get(batch.size() - 1);
+				if (batch.size() < batchSize) {
+					break;
+				}
+				// Zwischenstand, die Ueberlappung sorgt dafuer, dass kein Eintrag verloren geht
+				saveZwischenstand(letzte, laufStart);
+			}
+			registrierungSuchindexRepo.saveStand(laufStart);
+			stopWatch.stop();
+			LOG.info("VACME-PERSONALIENSUCHE: {} Registrierungen in {}ms im Suchindex nachgefuehrt",
+				anzahl, stopWatch.getTime(TimeUnit.MILLISECONDS));
+		});
+	}
+
+	private void saveZwischenstand(@NonNull RegistrierungSuchdaten letzte, @NonNull LocalDateTime laufStart) {
+		// Ein Zwischenstand in der Zukunft (Uhrzeit der DB) wuerde Aenderungen ueberspringen
+		final LocalDateTime zwischenstand = letzte.getTimestampMutiert().isBefore(laufStart)
+			? letzte.getTimestampMutiert()
+			: laufStart;
+		registrierungSuchindexRepo.saveStand(zwischenstand);
+	}
+
+	@NonNull
+	private LocalDateTime minusOverlap(@NonNull LocalDateTime stand) {
+		return stand.minusSeconds(vacmeSettingsService.getPersonaliensucheIndexOverlapSeconds());
+	}
+}
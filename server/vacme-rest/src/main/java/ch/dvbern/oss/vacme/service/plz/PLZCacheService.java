@@ -26,6 +26,8 @@ import javax.annotation.PostConstruct;
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
 
+import ch.dvbern.oss.vacme.service.cache.CacheRegistry;
+import ch.dvbern.oss.vacme.service.cache.VacmeCacheName;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
@@ -38,13 +40,15 @@ import org.checkerframework.checker.nullness.qual.NonNull;
 public class PLZCacheService {
 
 	private final PLZService plzService;
+	private final CacheRegistry cacheRegistry;
 
 	private LoadingCache<String, Optional<String>> plzToKantonskuerzelCache;
 	private LoadingCache<String, Optional<String>> plzToMedstatCache;
 
 	@Inject
-	public PLZCacheService(PLZService plzService) {
+	public PLZCacheService(PLZService plzService, CacheRegistry cacheRegistry) {
 		this.plzService = plzService;
+		this.cacheRegistry = cacheRegistry;
 	}
 
 	@PostConstruct
@@ -68,7 +72,9 @@ public class PLZCacheService {
 		plzToKantonskuerzelCache = CacheBuilder.newBuilder()
 			.expireAfterWrite(Duration.of(26, ChronoUnit.HOURS))
 			.maximumSize(500)
+			.recordStats()
 			.build(loaderForPlzToKantonskuerzel);
+		cacheRegistry.register(VacmeCacheName.PLZ_KANTON, plzToKantonskuerzelCache);
 
 
 		// Loader function
@@ -88,7 +94,9 @@ public class PLZCacheService {
 		plzToMedstatCache = CacheBuilder.newBuilder()
 			.expireAfterWrite(Duration.of(26, ChronoUnit.HOURS))
 			.maximumSize(500)
+			.recordStats()
 			.build(loaderForPlzToMedstat);
+		cacheRegistry.register(VacmeCacheName.PLZ_MEDSTAT, plzToMedstatCache);
 
 	}
 
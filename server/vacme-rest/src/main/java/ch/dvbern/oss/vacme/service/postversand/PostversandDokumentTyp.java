@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2022 DV Bern AG, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.dvbern.oss.vacme.service.postversand;
+
+import ch.dvbern.oss.vacme.entities.dossier.ImpfdossierFileTyp;
+import ch.dvbern.oss.vacme.entities.registration.RegistrierungFileTyp;
+import lombok.Getter;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Die Dokumenttypen, welche per Post verschickt werden (entspricht den postverdandqueries). Ein Typ liegt entweder
+ * als RegistrierungFile oder als ImpfdossierFile vor.
+ */
+@Getter
+public enum PostversandDokumentTyp {
+
+	REGISTRIERUNG_BESTAETIGUNG(RegistrierungFileTyp.REGISTRIERUNG_BESTAETIGUNG, null),
+	ONBOARDING_LETTER(RegistrierungFileTyp.ONBOARDING_LETTER, null),
+	TERMIN_BESTAETIGUNG(null, ImpfdossierFileTyp.TERMIN_BESTAETIGUNG),
+	TERMIN_ABSAGE(null, ImpfdossierFileTyp.TERMIN_ABSAGE),
+	TERMIN_ZERTIFIKAT_STORNIERUNG(null, ImpfdossierFileTyp.TERMIN_ZERTIFIKAT_STORNIERUNG),
+	FREIGABE_BOOSTER_INFO(null, ImpfdossierFileTyp.FREIGABE_BOOSTER_INFO);
+
+	@Nullable
+	private final RegistrierungFileTyp registrierungFileTyp;
+
+	@Nullable
+	private final ImpfdossierFileTyp impfdossierFileTyp;
+
+	PostversandDokumentTyp(
+		@Nullable RegistrierungFileTyp registrierungFileTyp,
+		@Nullable ImpfdossierFileTyp impfdossierFileTyp
+	) {
+		this.registrierungFileTyp = registrierungFileTyp;
+		this.impfdossierFileTyp = impfdossierFileTyp;
+	}
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2022 DV Bern AG, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.dvbern.oss.vacme.service.postversand;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.context.control.ActivateRequestContext;
+import javax.inject.Inject;
+import javax.transaction.Transactional;
+import javax.transaction.Transactional.TxType;
+
+import ch.dvbern.oss.vacme.print.postversand.PostversandPdfWriter;
+import ch.dvbern.oss.vacme.repo.PostversandRepo;
+import ch.dvbern.oss.vacme.service.FTPRetryClientService;
+import ch.dvbern.oss.vacme.service.VacmeSettingsService;
+import ch.dvbern.oss.vacme.service.joblease.JobLease;
+import ch.dvbern.oss.vacme.service.joblease.JobLeaseService;
+import ch.dvbern.oss.vacme.shared.errors.AppFailureException;
+import com.google.common.collect.Lists;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.time.StopWatch;
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+/**
+ * Fasst die noch nicht abgeholten Briefe pro Dokumenttyp zu Sammel-PDFs zusammen und laedt diese auf den FTP-Server.
+ * Erst nach erfolgreichem Upload werden die Briefe als abgeholt markiert, bei Fehlern werden sie beim naechsten Lauf
+ * nochmals exportiert. Briefe, die nicht angehaengt werden koennen (z.B. kein gueltiges PDF), werden nach
+ * vacme.postversand.max.fehlversuche Versuchen nicht mehr exportiert und muessen manuell angeschaut werden. Das
+ * Sammel-PDF wird in eine temporaere Datei geschrieben, damit der Speicherbedarf nicht von
+ * der Anzahl Briefe abhaengt.
+ */
+@ApplicationScoped
+@Slf4j
+@Transactional(TxType.NOT_SUPPORTED)
+@RequiredArgsConstructor(onConstructor_ = @Inject)
+public class PostversandRunnerService {
+
+	static final String JOB_NAME = "postversand-export";
+
+	private static final DateTimeFormatter FILENAME_TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss");
+
+	private final PostversandRepo postversandRepo;
+	private final FTPRetryClientService ftpRetryClientService;
+	private final VacmeSettingsService vacmeSettingsService;
+	private final JobLeaseService jobLeaseService;
+
+	@ActivateRequestContext
+	public void exportPendingLetters() {
+		if (vacmeSettingsService.getFtpClientConfigDTO().isFtpDisabled()) {
+			// Ohne FTP wuerden die Briefe als abgeholt markiert, ohne je verschickt zu werden
+			LOG.warn("VACME-POSTVERSAND: FTP ist deaktiviert, es werden keine Briefe exportiert");
+			return;
+		}
+		// Nur ein Node soll exportieren, sonst wuerden Briefe doppelt verschickt
+		jobLeaseService.runWithLease(JOB_NAME, 1, lease -> {
+			for (PostversandDokumentTyp typ : PostversandDokumentTyp.values()) {
+				if (!lease.isValid()) {
+					LOG.warn("VACME-POSTVERSAND: Lease {} verloren, Export wird abgebrochen", lease);
+					return;
+				}
+				exportPendingLetters(typ, lease);
+			}
+		});
+	}
+
+	private void exportPendingLetters(@NonNull PostversandDokumentTyp typ, @NonNull JobLease lease) {
+		final List<UUID> pendingIds = postversandRepo.findPendingFileIds(
+			typ,
+			vacmeSettingsService.getPostversandMaxFehlversuche(),
+			vacmeSettingsService.getPostversandMaxLettersPerRun());
+		if (pendingIds.isEmpty()) {
+			return;
+		}
+		LOG.info("VACME-POSTVERSAND: ({}) {} Briefe zu exportieren", typ, pendingIds.size());
+		int fileNumber = 1;
+		for (List<UUID> chunk : Lists.partition(pendingIds, vacmeSettingsService.getPostversandLettersPerFile())) {
+			if (!lease.isValid()) {
+				LOG.warn("VACME-POSTVERSAND: ({}) Lease verloren, restliche Briefe werden beim naechsten Lauf exportiert", typ);
+				return;
+			}
+			if (!exportChunk(typ, chunk, fileNumber++)) {
+				// Wenn der FTP-Server nicht erreichbar ist, bringen weitere Versuche in diesem Lauf nichts
+				return;
+			}
+		}
+	}
+
+	/**
+	 * @return false wenn der Upload fehlgeschlagen ist
+	 */
+	boolean exportChunk(@NonNull PostversandDokumentTyp typ, @NonNull List<UUID> fileIds, int fileNumber) {
+		StopWatch stopWatch = StopWatch.createStarted();
+		Path tempFile = null;
+		try {
+			tempFile = Files.createTempFile("vacme-postversand-", ".pdf");
+			final List<UUID> exportedIds = writeSammelPdf(typ, fileIds, tempFile);
+			if (exportedIds.isEmpty()) {
+				return true;
+			}
+			final String fileName = buildFileName(typ, fileNumber);
+			if (!ftpRetryClientService.tryToPutFileToFtp(tempFile, fileName)) {
+				LOG.error("VACME-POSTVERSAND: ({}) Upload von {} fehlgeschlagen, die Briefe werden beim naechsten Lauf nochmals exportiert",
+					typ, fileName);
+				return false;
+			}
+			final long marked = postversandRepo.markAbgeholt(typ, exportedIds);
+			LOG.info("VACME-POSTVERSAND: ({}) {} mit {} Briefen ({} KB) in {}ms hochgeladen, {} als abgeholt markiert",
+				typ, fileName, exportedIds.size(), Files.size(tempFile) / 1024,
+				stopWatch.getTime(TimeUnit.MILLISECONDS), marked);
+			return true;
+		} catch (IOException | AppFailureException e) {
+			// Die temporaere Datei wird verworfen, die Briefe werden beim naechsten Lauf nochmals exportiert
+			LOG.error("VACME-POSTVERSAND: ({}) Sammel-PDF konnte nicht erstellt werden", typ, e);
+			return false;
+		} finally {
+			if (tempFile != null) {
+				deleteQuietly(tempFile);
+			}
+		}
+	}
+
+	@NonNull
+	private List<UUID> writeSammelPdf(
+		@NonNull PostversandDokumentTyp typ,
+		@NonNull List<UUID> fileIds,
+		@NonNull Path targetFile
+	) throws IOException {
+		final List<UUID> exportedIds = new ArrayList<>(fileIds.size());
+		try (
+			OutputStream outputStream = new BufferedOutputStream(Files.newOutputStream(targetFile));
+			PostversandPdfWriter writer = new PostversandPdfWriter(outputStream, vacmeSettingsService.isPostversandDuplex())
+		) {
+			for (UUID fileId : fileIds) {
+				final byte[] letter;
+				try {
+					letter = postversandRepo.readFileContent(typ, fileId);
+				} catch (RuntimeException e) {
+					LOG.error("VACME-POSTVERSAND: ({}) Brief {} konnte nicht gelesen werden", typ, fileId, e);
+					markFehlversuch(typ, fileId);
+					continue;
+				}
+				try {
+					// Eine AppFailureException (Sammel-PDF unvollstaendig) bricht den ganzen Chunk ab
+					writer.addLetter(letter);
+					exportedIds.add(fileId);
+				} catch (IOException e) {
+					LOG.error("VACME-POSTVERSAND: ({}) Brief {} konnte nicht angehaengt werden", typ, fileId, e);
+					markFehlversuch(typ, fileId);
+				}
+			}
+		}
+		return exportedIds;
+	}
+
+	private void markFehlversuch(@NonNull PostversandDokumentTyp typ, @NonNull UUID fileId) {
+		try {
+			final int fehlversuche = postversandRepo.markFehlversuch(typ, fileId);
+			if (fehlversuche >= vacmeSettingsService.getPostversandMaxFehlversuche()) {
+				// Der Brief bleibt unabgeholt und muss manuell angeschaut werden
+				LOG.error("VACME-POSTVERSAND: ({}) Brief {} konnte {} mal nicht angehaengt werden und wird nicht mehr "
+					+ "exportiert", typ, fileId, fehlversuche);
+			}
+		} catch (RuntimeException e) {
+			LOG.error("VACME-POSTVERSAND: ({}) Fehlversuch fuer Brief {} konnte nicht gespeichert werden", typ, fileId, e);
+		}
+	}
+
+	@NonNull
+	private String buildFileName(@NonNull PostversandDokumentTyp typ, int fileNumber) {
+		final String fileName = "Postversand_" + typ.name() + '_' + FILENAME_TIMESTAMP.format(LocalDateTime.now())
+			+ '_' + fileNumber + ".pdf";
+		return vacmeSettingsService.getPostversandFtpDirectory()
+			.map(directory -> directory.endsWith("/") ? directory + fileName : directory + '/' + fileName)
+			.orElse(fileName);
+	}
+
+	private void deleteQuietly(@NonNull Path file) {
+		try {
+			Files.deleteIfExists(file);
+		} catch (IOException e) {
+			LOG.warn("VACME-POSTVERSAND: Temporaere Datei {} konnte nicht geloescht werden", file, e);
+		}
+	}
+}
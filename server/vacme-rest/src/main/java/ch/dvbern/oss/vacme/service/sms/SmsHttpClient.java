@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2022 DV Bern AG, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.dvbern.oss.vacme.service.sms;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+/**
+ * Haelt pro SMS-Provider einen gepoolten HTTP-Client mit Keep-Alive, damit nicht jedes SMS einen eigenen
+ * TCP- und TLS-Handshake braucht.
+ */
+@ApplicationScoped
+@Slf4j
+public class SmsHttpClient {
+
+	private static final int MAX_CONNECTIONS_PER_PROVIDER = 20;
+	private static final long IDLE_CONNECTION_TIMEOUT_SECONDS = 30;
+
+	private final Map<Class<? extends AbstractSmsProvider>, CloseableHttpClient> clients = new ConcurrentHashMap<>();
+
+	/**
+	 * Schickt ein SMS ueber den Provider
+	 *
+	 * @throws IOException bei Verbindungsfehlern oder wenn der Provider nicht mit Status 200 antwortet
+	 */
+	public void send(
+		@NonNull AbstractSmsProvider smsProvider,
+		@NonNull String empfaenger,
+		@NonNull String message,
+		int timeoutSeconds
+	) throws IOException, URISyntaxException {
+		final URI uri = smsProvider.getUriWithParams(empfaenger, message);
+		final HttpGet get = new HttpGet(uri);
+		get.setConfig(RequestConfig.custom()
+			.setConnectTimeout(timeoutSeconds * 1000)
+			.setConnectionRequestTimeout(timeoutSeconds * 1000)
+			.setSocketTimeout(timeoutSeconds * 1000).build());
+		try (CloseableHttpResponse response = getClient(smsProvider).execute(get)) {
+			// Body vollstaendig lesen, damit die Verbindung in den Pool zurueck kann
+			EntityUtils.consumeQuietly(response.getEntity());
+			final int statusCode = response.getStatusLine().getStatusCode();
+			if (statusCode != 200) {
+				throw new HttpResponseException(statusCode, response.getStatusLine().getReasonPhrase());
+			}
+		}
+	}
+
+	@NonNull
+	private CloseableHttpClient getClient(@NonNull AbstractSmsProvider smsProvider) {
+		return clients.computeIfAbsent(smsProvider.getClass(), providerClass -> {
+			PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+			connectionManager.setMaxTotal(MAX_CONNECTIONS_PER_PROVIDER);
+			connectionManager.setDefaultMaxPerRoute(MAX_CONNECTIONS_PER_PROVIDER);
+			LOG.info("VACME-SMS: Erstelle HTTP-Client fuer {}", providerClass.getSimpleName());
+			return HttpClients.custom()
+				.setConnectionManager(connectionManager)
+				.evictExpiredConnections()
+				.evictIdleConnections(IDLE_CONNECTION_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+				.build();
+		});
+	}
+
+	@PreDestroy
+	void close() {
+		clients.values().forEach(client -> {
+			try {
+				client.close();
+			} catch (IOException e) {
+				LOG.warn("VACME-SMS: HTTP-Client konnte nicht geschlossen werden", e);
+			}
+		});
+		clients.clear();
+	}
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2022 DV Bern AG, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.dvbern.oss.vacme.service.sms;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+
+import ch.dvbern.oss.vacme.dto.SmsSettingsDTO;
+import ch.dvbern.oss.vacme.repo.SmsOutboxRepo;
+import ch.dvbern.oss.vacme.service.VacmeSettingsService;
+import com.google.common.util.concurrent.RateLimiter;
+import io.quarkus.runtime.ShutdownEvent;
+import io.quarkus.runtime.StartupEvent;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Arbeitet die Tabelle SmsOutbox ab. Jeder Node hat einen eigenen Dispatcher-Thread (nicht ueber Quartz, da dort
+ * jeder Job nur auf einem Node des Clusters laeuft), die Eintraege werden ueber einen Lease reserviert.
+ * <p>
+ * Der Versand wird ueber einen Token-Bucket pro Node gebremst (vacme.sms.outbox.rate.per.second) anstatt ueber
+ * Sleeps im aufrufenden Job. Fehlgeschlagene SMS werden mit exponentiell wachsender Wartezeit erneut versucht, bis
+ * vacme.sms.outbox.max.attempts erreicht ist.
+ */
+@ApplicationScoped
+@Slf4j
+@RequiredArgsConstructor(onConstructor_ = @Inject)
+public class SmsOutboxDispatcher {
+
+	private static final long MAX_RETRY_DELAY_SECONDS = 3600;
+	private static final long CLEANUP_INTERVAL_MINUTES = 10;
+
+	private final SmsOutboxRepo smsOutboxRepo;
+	private final SmsHttpClient smsHttpClient;
+	private final VacmeSettingsService vacmeSettingsService;
+
+	// wird nur vom Dispatcher-Thread verwendet
+	private LocalDateTime lastCleanup = LocalDateTime.now();
+
+	@Nullable
+	private ScheduledExecutorService dispatcher;
+	@Nullable
+	private RateLimiter rateLimiter;
+
+	void onStart(@Observes StartupEvent ev) {
+		if (vacmeSettingsService.isSmsOutboxEnabled()) {
+			start();
+		}
+	}
+
+	void onStop(@Observes ShutdownEvent ev) {
+		stop();
+	}
+
+	synchronized void start() {
+		if (dispatcher != null) {
+			return;
+		}
+		final long interval = vacmeSettingsService.getSmsOutboxPollIntervalMs();
+		dispatcher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "vacme-sms-outbox");
+			thread.setDaemon(true);
+			return thread;
+		});
+		dispatcher.scheduleWithFixedDelay(this::dispatch, interval, interval, TimeUnit.MILLISECONDS);
+		LOG.info("VACME-SMS: Versand der SmsOutbox alle {}ms gestartet", interval);
+	}
+
+	synchronized void stop() {
+		if (dispatcher != null) {
+			dispatcher.shutdownNow();
+			dispatcher = null;
+		}
+	}
+
+	void dispatch() {
+		try {
+			// Solange volle Batches kommen, direkt weitermachen
+			while (dispatchBatch() && !Thread.currentThread().isInterrupted()) {
+				LOG.debug("VACME-SMS: SmsOutbox hat weitere Eintraege");
+			}
+			final LocalDateTime now = LocalDateTime.now();
+			if (lastCleanup.plusMinutes(CLEANUP_INTERVAL_MINUTES).isBefore(now)) {
+				lastCleanup = now;
+				final int deleted = smsOutboxRepo.deleteDoneOlderThan(vacmeSettingsService.getSmsOutboxRetentionHours());
+				LOG.debug("VACME-SMS: {} alte SmsOutbox Eintraege geloescht", deleted);
+			}
+		} catch (RuntimeException e) {
+			// Exception darf nicht raus, sonst stoppt der Executor den Versand
+			LOG.warn("VACME-SMS: Fehler beim Abarbeiten der SmsOutbox", e);
+		}
+	}
+
+	/**
+	 * @return true wenn der Batch voll war, es also vermutlich noch weitere faellige SMS gibt
+	 */
+	boolean dispatchBatch() {
+		final int batchSize = vacmeSettingsService.getSmsOutboxBatchSize();
+		final long leaseSeconds = vacmeSettingsService.getSmsOutboxLeaseSeconds();
+		final String leaseOwner = UUID.randomUUID().toString();
+		final List<SmsOutboxItem> items = smsOutboxRepo.claimDueItems(leaseOwner, leaseSeconds, batchSize);
+		if (items.isEmpty()) {
+			return false;
+		}
+		// Nicht mehr senden, wenn der Lease bald ablaeuft, sonst koennte ein anderer Node dasselbe SMS nochmals
+		// verschicken. Die restlichen Eintraege werden nach Ablauf des Leases wieder aufgenommen.
+		final SmsSettingsDTO smsSettingsDTO = vacmeSettingsService.getSmsSettingsDTO();
+		final LocalDateTime sendDeadline = LocalDateTime.now()
+			.plusSeconds(leaseSeconds)
+			.minusSeconds(smsSettingsDTO.getSmsConnectionTimeout() * 2L);
+		int sent = 0;
+		for (SmsOutboxItem item : items) {
+			if (LocalDateTime.now().isAfter(sendDeadline) || Thread.currentThread().isInterrupted()) {
+				LOG.info("VACME-SMS: Lease der SmsOutbox laeuft ab, {} SMS werden spaeter verschickt", items.size() - sent);
+				return false;
+			}
+			getRateLimiter().acquire();
+			if (send(item, leaseOwner, smsSettingsDTO)) {
+				sent++;
+			}
+		}
+		LOG.debug("VACME-SMS: {} von {} SMS aus der SmsOutbox verschickt", sent, items.size());
+		return items.size() >= batchSize;
+	}
+
+	private boolean send(@NonNull SmsOutboxItem item, @NonNull String leaseOwner, @NonNull SmsSettingsDTO smsSettingsDTO) {
+		try {
+			smsHttpClient.send(
+				smsSettingsDTO.getSmsProvider(),
+				item.getEmpfaenger(),
+				item.getMessage(),
+				smsSettingsDTO.getSmsConnectionTimeout());
+			smsOutboxRepo.markSent(item.getId(), leaseOwner);
+			return true;
+		} catch (Exception e) {
+			final int attempts = item.getAttempts() + 1;
+			if (attempts >= vacmeSettingsService.getSmsOutboxMaxAttempts()) {
+				LOG.error("VACME-SMS: SMS {} konnte nach {} Versuchen nicht verschickt werden", item.getId(), attempts, e);
+				smsOutboxRepo.markFailed(item.getId(), leaseOwner, e.getMessage());
+			} else {
+				final long delay = calculateRetryDelaySeconds(vacmeSettingsService.getSmsOutboxRetryBaseSeconds(), attempts);
+				LOG.warn("VACME-SMS: SMS {} konnte nicht verschickt werden, neuer Versuch in {}s: {}",
+					item.getId(), delay, e.getMessage());
+				smsOutboxRepo.markForRetry(item.getId(), leaseOwner, delay, e.getMessage());
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * Exponentielles Backoff: base, 2*base, 4*base, ... bis maximal eine Stunde
+	 */
+	static long calculateRetryDelaySeconds(long baseSeconds, int attempts) {
+		final int exponent = Math.min(Math.max(attempts - 1, 0), 20);
+		return Math.min(baseSeconds << exponent, MAX_RETRY_DELAY_SECONDS);
+	}
+
+	@NonNull
+	private synchronized RateLimiter getRateLimiter() {
+		if (rateLimiter == null) {
+			rateLimiter = RateLimiter.create(vacmeSettingsService.getSmsOutboxRatePerSecond());
+		}
+		return rateLimiter;
+	}
+}
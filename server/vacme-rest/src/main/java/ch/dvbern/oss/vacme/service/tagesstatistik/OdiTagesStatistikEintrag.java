@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2022 DV Bern AG, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.dvbern.oss.vacme.service.tagesstatistik;
+
+import java.time.LocalDate;
+import java.util.UUID;
+
+import ch.dvbern.oss.vacme.entities.impfen.Impffolge;
+import ch.dvbern.oss.vacme.entities.types.KrankheitIdentifier;
+import lombok.Value;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Eine Zeile der Tabelle OdiTagesStatistik.
+ * <p>
+ * anzahlGebuchteTermine zaehlt die gebuchten Termine in Slots dieses Tages (impfstoffId ist null, solange am Termin
+ * noch keine Impfung erfasst ist), anzahlImpfungen die an diesem Tag durchgefuehrten Impfungen.
+ */
+@Value
+public class OdiTagesStatistikEintrag {
+
+	@NonNull LocalDate datum;
+	@NonNull KrankheitIdentifier krankheitIdentifier;
+	@NonNull Impffolge impffolge;
+	@Nullable UUID impfstoffId;
+	long anzahlGebuchteTermine;
+	long anzahlImpfungen;
+
+	public boolean hasImpfung() {
+		return impfstoffId != null;
+	}
+}
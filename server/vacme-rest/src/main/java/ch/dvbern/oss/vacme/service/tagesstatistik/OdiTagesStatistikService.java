@@ -0,0 +1,247 @@
+/*
+ * Copyright (C) 2022 DV Bern AG, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.dvbern.oss.vacme.service.tagesstatistik;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+import javax.transaction.TransactionSynchronizationRegistry;
+
+import ch.dvbern.oss.vacme.entities.impfen.Impfung;
+import ch.dvbern.oss.vacme.entities.terminbuchung.Impfslot;
+import ch.dvbern.oss.vacme.entities.terminbuchung.Impftermin;
+import ch.dvbern.oss.vacme.repo.OdiTagesStatistikRepo;
+import ch.dvbern.oss.vacme.service.VacmeSettingsService;
+import ch.dvbern.oss.vacme.service.joblease.JobLeaseService;
+import ch.dvbern.oss.vacme.util.TransactionUtil;
+import io.quarkus.runtime.ShutdownEvent;
+import io.quarkus.runtime.StartupEvent;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.time.StopWatch;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Fuehrt die Tabelle OdiTagesStatistik nach, aus der die ODI-Statistiken gelesen werden, anstatt jedes Mal alle
+ * Termine des ODI zu laden.
+ * <p>
+ * Beim Buchen oder Freigeben eines Termins und beim Speichern einer Impfung wird der betroffene ODI-Tag nach dem
+ * Commit als veraendert markiert. Jeder Node berechnet die bei ihm markierten Tage in einem eigenen Thread
+ * (vacme.stats.tagesstatistik.flush.interval.ms) neu; mehrere Aenderungen am selben Tag werden dabei zu einer
+ * Neuberechnung zusammengefasst. Aenderungen, die nicht ueber diese Hooks laufen (Update-Queries, abgestuerzte Nodes)
+ * werden vom periodischen Abgleich {@link #reconcile()} korrigiert, der auch den ersten Aufbau der Tabelle macht.
+ * Gelesen wird aus der Tabelle erst, wenn dieser Aufbau bis zum ersten Impfslot abgeschlossen ist.
+ */
+@ApplicationScoped
+@Slf4j
+@RequiredArgsConstructor(onConstructor_ = @Inject)
+public class OdiTagesStatistikService {
+
+	private static final String RECONCILE_JOB_NAME = "odiTagesStatistikReconcile";
+
+	private final OdiTagesStatistikRepo odiTagesStatistikRepo;
+	private final VacmeSettingsService vacmeSettingsService;
+	private final JobLeaseService jobLeaseService;
+	private final TransactionSynchronizationRegistry transactionSynchronizationRegistry;
+
+	private final Set<OdiTagesStatistikKey> veraenderteTage = ConcurrentHashMap.newKeySet();
+
+	// Sobald der erste Aufbau abgeschlossen ist, wird aus der Tabelle gelesen
+	private volatile boolean aufgebaut = false;
+
+	@Nullable
+	private ScheduledExecutorService flusher;
+
+	void onStart(@Observes StartupEvent ev) {
+		if (isEnabled()) {
+			start();
+		}
+	}
+
+	void onStop(@Observes ShutdownEvent ev) {
+		stop();
+	}
+
+	synchronized void start() {
+		if (flusher != null) {
+			return;
+		}
+		final long interval = vacmeSettingsService.getTagesstatistikFlushIntervalMs();
+		flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "vacme-tagesstatistik");
+			thread.setDaemon(true);
+			return thread;
+		});
+		flusher.scheduleWithFixedDelay(this::flush, interval, interval, TimeUnit.MILLISECONDS);
+		LOG.info("VACME-TAGESSTATISTIK: Nachfuehren der OdiTagesStatistik alle {}ms gestartet", interval);
+	}
+
+	synchronized void stop() {
+		if (flusher != null) {
+			flusher.shutdownNow();
+			flusher = null;
+		}
+	}
+
+	public boolean isEnabled() {
+		return vacmeSettingsService.isTagesstatistikEnabled();
+	}
+
+	/**
+	 * @return true wenn die Statistiken aus der Tabelle OdiTagesStatistik gelesen werden koennen. Solange der erste
+	 * Aufbau nicht vollstaendig gelaufen ist, muss direkt auf den Terminen gerechnet werden, auch wenn die Tage um
+	 * heute bereits berechnet sind.
+	 */
+	public boolean isReady() {
+		if (!isEnabled()) {
+			return false;
+		}
+		if (!aufgebaut) {
+			aufgebaut = odiTagesStatistikRepo.isAufbauAbgeschlossen();
+		}
+		return aufgebaut;
+	}
+
+	public void onTerminGebucht(@NonNull Impftermin termin) {
+		markTerminTag(termin);
+	}
+
+	public void onTerminFreigegeben(@NonNull Impftermin termin) {
+		markTerminTag(termin);
+	}
+
+	/**
+	 * Die Impfung zaehlt am Tag der Impfung, der Termin am Tag seines Slots. Wird die Impfung korrigiert, muss dies
+	 * vor der Aenderung aufgerufen werden, damit auch die bisherigen Tage neu berechnet werden.
+	 */
+	public void onImpfungGeaendert(@NonNull Impfung impfung) {
+		if (!isEnabled()) {
+			return;
+		}
+		final Impfslot impfslot = impfung.getTermin().getImpfslot();
+		markAfterCommit(new OdiTagesStatistikKey(
+			impfslot.getOrtDerImpfung().getId(),
+			impfslot.getZeitfenster().getBis().toLocalDate()));
+		markAfterCommit(new OdiTagesStatistikKey(
+			impfslot.getOrtDerImpfung().getId(),
+			impfung.getTimestampImpfung().toLocalDate()));
+	}
+
+	private void markTerminTag(@NonNull Impftermin termin) {
+		if (!isEnabled()) {
+			return;
+		}
+		final Impfslot impfslot = termin.getImpfslot();
+		markAfterCommit(new OdiTagesStatistikKey(
+			impfslot.getOrtDerImpfung().getId(),
+			impfslot.getZeitfenster().getBis().toLocalDate()));
+	}
+
+	private void markAfterCommit(@NonNull OdiTagesStatistikKey key) {
+		TransactionUtil.runAfterCommit(transactionSynchronizationRegistry, () -> veraenderteTage.add(key));
+	}
+
+	/**
+	 * Berechnet alle seit dem letzten Aufruf markierten ODI-Tage neu
+	 */
+	void flush() {
+		try {
+			final List<OdiTagesStatistikKey> keys = new ArrayList<>(veraenderteTage);
+			for (OdiTagesStatistikKey key : keys) {
+				if (Thread.currentThread().isInterrupted()) {
+					return;
+				}
+				// vor der Berechnung entfernen: wird der Tag waehrenddessen wieder markiert, wird er nochmals berechnet
+				veraenderteTage.remove(key);
+				try {
+					odiTagesStatistikRepo.recalculate(key.getOrtDerImpfungId(), key.getDatum());
+				} catch (RuntimeException e) {
+					veraenderteTage.add(key);
+					LOG.warn("VACME-TAGESSTATISTIK: Tag {} konnte nicht berechnet werden, neuer Versuch folgt", key, e);
+				}
+			}
+			if (!keys.isEmpty()) {
+				LOG.debug("VACME-TAGESSTATISTIK: {} ODI-Tage neu berechnet", keys.size());
+			}
+		} catch (RuntimeException e) {
+			// Exception darf nicht raus, sonst stoppt der Executor das Nachfuehren
+			LOG.warn("VACME-TAGESSTATISTIK: Fehler beim Nachfuehren der OdiTagesStatistik", e);
+		}
+	}
+
+	/**
+	 * Berechnet alle Tage im Fenster vacme.stats.tagesstatistik.reconcile.days.back/.forward fuer alle ODI neu.
+	 * Solange der erste Aufbau nicht abgeschlossen ist, werden anschliessend die aelteren Tage bis zum ersten Impfslot
+	 * rueckwaerts berechnet. Der Fortschritt wird nach jedem Tag gespeichert; wird der Aufbau abgebrochen, macht der
+	 * naechste Lauf beim aeltesten lueckenlos berechneten Tag weiter. Laeuft nur auf einem Node gleichzeitig.
+	 */
+	public void reconcile() {
+		if (!isEnabled()) {
+			return;
+		}
+		jobLeaseService.runWithLease(RECONCILE_JOB_NAME, 1, lease -> {
+			final LocalDate heute = LocalDate.now();
+			final LocalDate fensterVon = heute.minusDays(vacmeSettingsService.getTagesstatistikReconcileDaysBack());
+			final LocalDate fensterBis = heute.plusDays(vacmeSettingsService.getTagesstatistikReconcileDaysForward());
+			final StopWatch stopWatch = StopWatch.createStarted();
+			int tage = 0;
+			// Neueste Tage zuerst, damit die Statistik fuer die laufenden Tage moeglichst schnell stimmt
+			for (LocalDate datum = fensterBis; !datum.isBefore(fensterVon); datum = datum.minusDays(1)) {
+				if (!lease.isValid()) {
+					LOG.warn("VACME-TAGESSTATISTIK: Lease {} verloren, Abgleich wird abgebrochen", lease);
+					return;
+				}
+				odiTagesStatistikRepo.recalculate(datum);
+				tage++;
+			}
+			if (!odiTagesStatistikRepo.isAufbauAbgeschlossen()) {
+				// Das Fenster ist jetzt lueckenlos berechnet, ein frueherer Aufbau kann aber schon weiter sein
+				final LocalDate aufgebautAb = odiTagesStatistikRepo.findAufgebautAb()
+					.filter(datum -> datum.isBefore(fensterVon))
+					.orElse(fensterVon);
+				final LocalDate aufbauBis = odiTagesStatistikRepo.findErstesSlotDatum().orElse(aufgebautAb);
+				odiTagesStatistikRepo.saveAufbauStand(aufgebautAb, false);
+				for (LocalDate datum = aufgebautAb.minusDays(1); !datum.isBefore(aufbauBis); datum = datum.minusDays(1)) {
+					if (!lease.isValid()) {
+						LOG.warn("VACME-TAGESSTATISTIK: Lease {} verloren, Aufbau wird abgebrochen", lease);
+						return;
+					}
+					odiTagesStatistikRepo.recalculate(datum);
+					odiTagesStatistikRepo.saveAufbauStand(datum, false);
+					tage++;
+				}
+				odiTagesStatistikRepo.saveAufbauStand(aufgebautAb.isBefore(aufbauBis) ? aufgebautAb : aufbauBis, true);
+				aufgebaut = true;
+				LOG.info("VACME-TAGESSTATISTIK: Aufbau der OdiTagesStatistik abgeschlossen");
+			}
+			stopWatch.stop();
+			LOG.info("VACME-TAGESSTATISTIK: {} Tage der OdiTagesStatistik in {}ms abgeglichen",
+				tage, stopWatch.getTime(TimeUnit.MILLISECONDS));
+		});
+	}
+}
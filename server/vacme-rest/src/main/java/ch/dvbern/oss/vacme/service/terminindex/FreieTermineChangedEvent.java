@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2022 DV Bern AG, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.dvbern.oss.vacme.service.terminindex;
+
+import ch.dvbern.oss.vacme.entities.terminbuchung.Impftermin;
+import lombok.Value;
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+/**
+ * CDI-Event, welches gefeuert wird, wenn sich die freien Termine eines ODI fuer eine Krankheit und Impffolge
+ * (moeglicherweise) geaendert haben. Beobachter, welche nur am committeten Stand interessiert sind, sollen das
+ * Event mit {@code TransactionPhase.AFTER_SUCCESS} beobachten.
+ */
+@Value
+public class FreieTermineChangedEvent {
+
+	@NonNull FreieTermineIndexKey key;
+
+	@NonNull
+	public static FreieTermineChangedEvent of(@NonNull Impftermin termin) {
+		return new FreieTermineChangedEvent(FreieTermineIndexKey.of(termin));
+	}
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright (C) 2022 DV Bern AG, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.dvbern.oss.vacme.service.terminindex;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import ch.dvbern.oss.vacme.entities.impfen.Impffolge;
+import lombok.Getter;
+import lombok.Value;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * In-Memory Index der freien Termine. Pro {@link FreieTermineIndexKey} (ODI, Krankheit, Impffolge) wird fuer jeden
+ * Slot (identifiziert ueber das Ende des Zeitfensters) die Anzahl der freien Termine gefuehrt. Slots ohne freie
+ * Termine sind nicht im Index enthalten, damit der naechste freie Termin direkt ueber die sortierte Map gefunden wird.
+ * <p>
+ * Reservierte Termine gelten als nicht frei. Damit abgelaufene Reservationen wieder als frei zaehlen, merkt sich der
+ * Index alle Reservationen, die er nicht als frei zaehlt: die beim Aufbau aus der DB gelesenen und die seither auf
+ * diesem Node gemachten. Ob ein Termin bei einer Aenderung abgezogen werden muss, ergibt sich aus seinem Zustand vor
+ * der Aenderung: gezaehlt ist er genau dann, wenn er nicht gebucht war und der Index keine Reservation fuer ihn kennt.
+ * Auf einem anderen Node nach dem Aufbau gemachte Reservationen kennt der Index nicht, diese Termine hat er aber auch
+ * nie abgezogen.
+ * <p>
+ * Die Klasse ist threadsafe.
+ */
+public class FreieTermineIndex {
+
+	private final Map<FreieTermineIndexKey, ConcurrentNavigableMap<LocalDateTime, Integer>> freieTermineProSlot =
+		new ConcurrentHashMap<>();
+
+	private final Map<UUID, Reservation> reservationen = new ConcurrentHashMap<>();
+
+	@Getter
+	private final LocalDateTime timestampErstellt;
+
+	public FreieTermineIndex(@NonNull LocalDateTime timestampErstellt) {
+		this.timestampErstellt = timestampErstellt;
+	}
+
+	@NonNull
+	public static FreieTermineIndex of(
+		@NonNull Collection<FreieTermineProSlotDTO> slots,
+		@NonNull Collection<ReservierterTerminDTO> reservierteTermine,
+		@NonNull LocalDateTime timestampErstellt
+	) {
+		FreieTermineIndex index = new FreieTermineIndex(timestampErstellt);
+		for (FreieTermineProSlotDTO slot : slots) {
+			index.addFreieTermine(slot.getKey(), slot.getSlotBis(), Math.toIntExact(slot.getAnzahlFreieTermine()));
+		}
+		// Die reservierten Termine sind in den Slots bereits nicht gezaehlt, sie werden nur fuer den Ablauf gemerkt
+		for (ReservierterTerminDTO termin : reservierteTermine) {
+			index.reservationen.put(termin.getTerminId(), new Reservation(
+				termin.getRegistrierungsnummer(), termin.getKey(), termin.getSlotBis(), termin.getReserviertBis()));
+		}
+		return index;
+	}
+
+	public void addFreieTermine(@NonNull FreieTermineIndexKey key, @NonNull LocalDateTime slotBis, int delta) {
+		if (delta == 0) {
+			return;
+		}
+		freieTermineProSlot
+			.computeIfAbsent(key, k -> new ConcurrentSkipListMap<>())
+			.compute(slotBis, (bis, anzahl) -> {
+				int neueAnzahl = (anzahl != null ? anzahl : 0) + delta;
+				// Slots ohne freie Termine werden entfernt
+				return neueAnzahl > 0 ? neueAnzahl : null;
+			});
+	}
+
+	public void terminErstellt(@NonNull FreieTermineIndexKey key, @NonNull LocalDateTime slotBis) {
+		addFreieTermine(key, slotBis, 1);
+	}
+
+	public void terminGeloescht(
+		@NonNull UUID terminId,
+		@NonNull FreieTermineIndexKey key,
+		@NonNull LocalDateTime slotBis,
+		boolean gebuchtVorher
+	) {
+		if (warFrei(terminId, gebuchtVorher)) {
+			addFreieTermine(key, slotBis, -1);
+		}
+	}
+
+	public void terminGebucht(
+		@NonNull UUID terminId,
+		@NonNull FreieTermineIndexKey key,
+		@NonNull LocalDateTime slotBis,
+		boolean gebuchtVorher
+	) {
+		if (warFrei(terminId, gebuchtVorher)) {
+			addFreieTermine(key, slotBis, -1);
+		}
+	}
+
+	public void terminFreigegeben(
+		@NonNull UUID terminId,
+		@NonNull FreieTermineIndexKey key,
+		@NonNull LocalDateTime slotBis,
+		boolean gebuchtVorher
+	) {
+		if (!warFrei(terminId, gebuchtVorher)) {
+			addFreieTermine(key, slotBis, 1);
+		}
+	}
+
+	public void terminReserviert(
+		@NonNull UUID terminId,
+		@NonNull String registrierungsnummer,
+		@NonNull FreieTermineIndexKey key,
+		@NonNull LocalDateTime slotBis,
+		@NonNull LocalDateTime reserviertBis,
+		boolean gebucht
+	) {
+		final boolean warFrei = warFrei(terminId, gebucht);
+		if (gebucht) {
+			// Ein gebuchter Termin wird beim Ablauf der Reservation nicht frei
+			return;
+		}
+		reservationen.put(terminId, new Reservation(registrierungsnummer, key, slotBis, reserviertBis));
+		if (warFrei) {
+			addFreieTermine(key, slotBis, -1);
+		}
+	}
+
+	/**
+	 * Gibt zurueck, ob der Termin vor der Aenderung im Index als frei gezaehlt war, und vergisst eine allfaellige
+	 * Reservation, da die Aenderung sie ersetzt.
+	 */
+	private boolean warFrei(@NonNull UUID terminId, boolean gebuchtVorher) {
+		final boolean reserviert = reservationen.remove(terminId) != null;
+		return !gebuchtVorher && !reserviert;
+	}
+
+	public void reservationenAufheben(@NonNull String registrierungsnummer, @NonNull Impffolge impffolge) {
+		reservationen.forEach((terminId, reservation) -> {
+			if (reservation.getRegistrierungsnummer().equals(registrierungsnummer)
+				&& reservation.getKey().getImpffolge() == impffolge) {
+				reservationFreigeben(terminId, reservation);
+			}
+		});
+	}
+
+	public void abgelaufeneReservationenAufheben(@NonNull LocalDateTime now) {
+		reservationen.forEach((terminId, reservation) -> {
+			if (reservation.getReserviertBis().isBefore(now)) {
+				reservationFreigeben(terminId, reservation);
+			}
+		});
+	}
+
+	private void reservationFreigeben(@NonNull UUID terminId, @NonNull Reservation reservation) {
+		// nur wer die Reservation tatsaechlich entfernt, darf den Termin wieder als frei zaehlen
+		if (reservationen.remove(terminId, reservation)) {
+			addFreieTermine(reservation.getKey(), reservation.getSlotBis(), 1);
+		}
+	}
+
+	/**
+	 * Gibt das Ende des ersten Slots mit freien Terminen im Bereich [minDateTime, maxDateTime] zurueck
+	 */
+	@Nullable
+	public LocalDateTime findNextFreierTermin(
+		@NonNull FreieTermineIndexKey key,
+		@NonNull LocalDateTime minDateTime,
+		@NonNull LocalDateTime maxDateTime
+	) {
+		final NavigableMap<LocalDateTime, Integer> slots = getSlotsInRange(key, minDateTime, maxDateTime);
+		return slots.isEmpty() ? null : slots.firstKey();
+	}
+
+	public long getAnzahlFreieTermine(
+		@NonNull FreieTermineIndexKey key,
+		@NonNull LocalDateTime minDateTime,
+		@NonNull LocalDateTime maxDateTime
+	) {
+		return getSlotsInRange(key, minDateTime, maxDateTime).values().stream()
+			.mapToLong(Integer::longValue)
+			.sum();
+	}
+
+	@NonNull
+	private NavigableMap<LocalDateTime, Integer> getSlotsInRange(
+		@NonNull FreieTermineIndexKey key,
+		@NonNull LocalDateTime minDateTime,
+		@NonNull LocalDateTime maxDateTime
+	) {
+		final ConcurrentNavigableMap<LocalDateTime, Integer> slots = freieTermineProSlot.get(key);
+		if (slots == null || maxDateTime.isBefore(minDateTime)) {
+			return new ConcurrentSkipListMap<>();
+		}
+		return slots.subMap(minDateTime, true, maxDateTime, true);
+	}
+
+	@Value
+	private static class Reservation {
+		@NonNull String registrierungsnummer;
+		@NonNull FreieTermineIndexKey key;
+		@NonNull LocalDateTime slotBis;
+		@NonNull LocalDateTime reserviertBis;
+	}
+}
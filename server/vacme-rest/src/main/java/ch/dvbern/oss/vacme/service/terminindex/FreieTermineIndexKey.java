@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2022 DV Bern AG, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.dvbern.oss.vacme.service.terminindex;
+
+import java.util.UUID;
+
+import ch.dvbern.oss.vacme.entities.impfen.Impffolge;
+import ch.dvbern.oss.vacme.entities.terminbuchung.Impfslot;
+import ch.dvbern.oss.vacme.entities.terminbuchung.Impftermin;
+import ch.dvbern.oss.vacme.entities.types.KrankheitIdentifier;
+import lombok.Value;
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+/**
+ * Schluessel des {@link FreieTermineIndex}: Pro ODI, Krankheit und Impffolge werden die freien Termine separat gefuehrt
+ */
+@Value
+public class FreieTermineIndexKey {
+
+	@NonNull UUID odiId;
+	@NonNull KrankheitIdentifier krankheit;
+	@NonNull Impffolge impffolge;
+
+	@NonNull
+	public static FreieTermineIndexKey of(@NonNull Impftermin termin) {
+		final Impfslot impfslot = termin.getImpfslot();
+		return new FreieTermineIndexKey(
+			impfslot.getOrtDerImpfung().getId(),
+			impfslot.getKrankheitIdentifier(),
+			termin.getImpffolge());
+	}
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2022 DV Bern AG, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.dvbern.oss.vacme.service.terminindex;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.transaction.TransactionSynchronizationRegistry;
+
+import ch.dvbern.oss.vacme.entities.impfen.Impffolge;
+import ch.dvbern.oss.vacme.entities.terminbuchung.Impftermin;
+import ch.dvbern.oss.vacme.service.VacmeSettingsService;
+import ch.dvbern.oss.vacme.shared.util.Constants;
+import ch.dvbern.oss.vacme.util.TransactionUtil;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.time.StopWatch;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Haelt den {@link FreieTermineIndex} dieses Nodes. Der Index wird beim ersten Zugriff aus der DB aufgebaut und
+ * danach bei jeder Buchung, Freigabe, Reservation, Erstellung und Loeschung eines Termins inkrementell nachgefuehrt.
+ * Da Termine auch auf anderen Nodes (oder direkt per Update-Query) veraendert werden, wird der Index periodisch
+ * (vacme.terminindex.rebuild.interval.seconds) neu aus der DB aufgebaut.
+ * <p>
+ * Aenderungen werden erst nach erfolgreichem Commit der Transaktion in den Index uebernommen, damit ein Rollback
+ * den Index nicht verfaelscht. Massgebend ist der Index, der beim Commit aktuell ist: wurde er waehrend der
+ * Transaktion neu aufgebaut, geht die Aenderung nicht mit dem alten Index verloren.
+ */
+@ApplicationScoped
+@Slf4j
+@RequiredArgsConstructor(onConstructor_ = @Inject)
+public class FreieTermineIndexService {
+
+	private final VacmeSettingsService vacmeSettingsService;
+	private final TransactionSynchronizationRegistry transactionSynchronizationRegistry;
+
+	private final AtomicBoolean rebuildInProgress = new AtomicBoolean(false);
+
+	@Nullable
+	private volatile FreieTermineIndex index = null;
+
+	public boolean isEnabled() {
+		return vacmeSettingsService.isTerminIndexEnabled();
+	}
+
+	/**
+	 * Gibt den aktuellen Index zurueck. Ist noch kein Index vorhanden oder ist er veraltet, wird er mit dem
+	 * uebergebenen Loader (neu) aufgebaut. Dies macht jeweils nur ein Thread, alle anderen arbeiten in der
+	 * Zwischenzeit mit dem bisherigen Index. Gibt null zurueck, wenn der Index ausgeschaltet oder noch nicht
+	 * bereit ist; der Aufrufer muss dann direkt auf der DB suchen.
+	 */
+	@Nullable
+	public FreieTermineIndex getIndex(
+		@NonNull Supplier<List<FreieTermineProSlotDTO>> slotLoader,
+		@NonNull Supplier<List<ReservierterTerminDTO>> reservationLoader
+	) {
+		if (!isEnabled()) {
+			index = null;
+			return null;
+		}
+		FreieTermineIndex currentIndex = index;
+		if (isRebuildNeeded(currentIndex) && rebuildInProgress.compareAndSet(false, true)) {
+			try {
+				currentIndex = rebuild(slotLoader, reservationLoader);
+			} finally {
+				rebuildInProgress.set(false);
+			}
+		}
+		if (currentIndex != null && vacmeSettingsService.isTerminReservationEnabled()) {
+			currentIndex.abgelaufeneReservationenAufheben(LocalDateTime.now());
+		}
+		return currentIndex;
+	}
+
+	/**
+	 * Verwirft den Index. Er wird beim naechsten Zugriff neu aufgebaut.
+	 */
+	public void invalidate() {
+		index = null;
+	}
+
+	private boolean isRebuildNeeded(@Nullable FreieTermineIndex currentIndex) {
+		if (currentIndex == null) {
+			return true;
+		}
+		final LocalDateTime ablauf = currentIndex.getTimestampErstellt()
+			.plusSeconds(vacmeSettingsService.getTerminIndexRebuildIntervalSeconds());
+		return ablauf.isBefore(LocalDateTime.now());
+	}
+
+	@NonNull
+	private FreieTermineIndex rebuild(
+		@NonNull Supplier<List<FreieTermineProSlotDTO>> slotLoader,
+		@NonNull Supplier<List<ReservierterTerminDTO>> reservationLoader
+	) {
+		StopWatch stopWatch = StopWatch.createStarted();
+		final LocalDateTime timestampErstellt = LocalDateTime.now();
+		final List<FreieTermineProSlotDTO> slots = slotLoader.get();
+		final List<ReservierterTerminDTO> reservierteTermine = vacmeSettingsService.isTerminReservationEnabled()
+			? reservationLoader.get()
+			: List.of();
+		FreieTermineIndex newIndex = FreieTermineIndex.of(slots, reservierteTermine, timestampErstellt);
+		index = newIndex;
+		stopWatch.stop();
+		if (stopWatch.getTime(TimeUnit.MILLISECONDS) > Constants.DB_QUERY_SLOW_THRESHOLD_LONG) {
+			LOG.warn("VACME-TERMININDEX: Aufbau des Index mit {} Slots dauerte {}ms",
+				slots.size(), stopWatch.getTime(TimeUnit.MILLISECONDS));
+		} else {
+			LOG.debug("VACME-TERMININDEX: Aufbau des Index mit {} Slots dauerte {}ms",
+				slots.size(), stopWatch.getTime(TimeUnit.MILLISECONDS));
+		}
+		return newIndex;
+	}
+
+	public void onTerminErstellt(@NonNull Impftermin termin) {
+		final FreieTermineIndexKey key = FreieTermineIndexKey.of(termin);
+		final LocalDateTime slotBis = termin.getImpfslot().getZeitfenster().getBis();
+		afterCommit(currentIndex -> currentIndex.terminErstellt(key, slotBis));
+	}
+
+	/**
+	 * Muss vor dem Loeschen aufgerufen werden, solange der Termin noch seinen bisherigen Zustand hat.
+	 */
+	public void onTerminGeloescht(@NonNull Impftermin termin) {
+		final FreieTermineIndexKey key = FreieTermineIndexKey.of(termin);
+		final LocalDateTime slotBis = termin.getImpfslot().getZeitfenster().getBis();
+		final UUID terminId = termin.getId();
+		final boolean gebuchtVorher = termin.isGebucht();
+		afterCommit(currentIndex -> currentIndex.terminGeloescht(terminId, key, slotBis, gebuchtVorher));
+	}
+
+	public void onTerminGebucht(@NonNull Impftermin termin, boolean gebuchtVorher) {
+		final FreieTermineIndexKey key = FreieTermineIndexKey.of(termin);
+		final LocalDateTime slotBis = termin.getImpfslot().getZeitfenster().getBis();
+		final UUID terminId = termin.getId();
+		afterCommit(currentIndex -> currentIndex.terminGebucht(terminId, key, slotBis, gebuchtVorher));
+	}
+
+	public void onTerminFreigegeben(@NonNull Impftermin termin, boolean gebuchtVorher) {
+		final FreieTermineIndexKey key = FreieTermineIndexKey.of(termin);
+		final LocalDateTime slotBis = termin.getImpfslot().getZeitfenster().getBis();
+		final UUID terminId = termin.getId();
+		afterCommit(currentIndex -> currentIndex.terminFreigegeben(terminId, key, slotBis, gebuchtVorher));
+	}
+
+	public void onTerminReserviert(
+		@NonNull Impftermin termin,
+		@NonNull String registrierungsnummer,
+		@NonNull LocalDateTime reserviertBis
+	) {
+		final FreieTermineIndexKey key = FreieTermineIndexKey.of(termin);
+		final LocalDateTime slotBis = termin.getImpfslot().getZeitfenster().getBis();
+		final UUID terminId = termin.getId();
+		final boolean gebucht = termin.isGebucht();
+		afterCommit(currentIndex -> currentIndex.terminReserviert(
+			terminId, registrierungsnummer, key, slotBis, reserviertBis, gebucht));
+	}
+
+	public void onReservationenAufgehoben(@NonNull String registrierungsnummer, @NonNull Impffolge impffolge) {
+		afterCommit(currentIndex -> currentIndex.reservationenAufheben(registrierungsnummer, impffolge));
+	}
+
+	private void afterCommit(@NonNull Consumer<FreieTermineIndex> update) {
+		if (!isEnabled()) {
+			return;
+		}
+		TransactionUtil.runAfterCommit(transactionSynchronizationRegistry, () -> {
+			// Der Index kann seit Beginn der Transaktion neu aufgebaut worden sein, massgebend ist der jetzige
+			final FreieTermineIndex currentIndex = index;
+			if (currentIndex != null) {
+				update.accept(currentIndex);
+			}
+			// Gibt es noch keinen Index, wird er beim naechsten Zugriff mit dem aktuellen Stand aufgebaut
+		});
+	}
+}
@@ -15,33 +15,27 @@
  * along with this program.  If not, see <https://www.gnu.org/licenses/>.
  */
 
-package ch.dvbern.oss.vacme.entities.migration;
+package ch.dvbern.oss.vacme.service.terminindex;
 
-import ch.dvbern.oss.vacme.entities.base.AbstractUUIDEntity;
-import ch.dvbern.oss.vacme.entities.util.DBConst;
+import java.time.LocalDateTime;
+
+import lombok.AllArgsConstructor;
 import lombok.Getter;
-import lombok.NoArgsConstructor;
-import lombok.Setter;
 import org.checkerframework.checker.nullness.qual.NonNull;
 
-import javax.persistence.*;
-import javax.validation.constraints.NotNull;
-import java.time.LocalDateTime;
-
 /**
- * Entity that stores the time of the last request that was made to our Migration Endpoint
+ * Anzahl freie (nicht gebuchte und nicht reservierte) Termine eines Impfslots, wie sie fuer den Aufbau
+ * des {@link FreieTermineIndex} aus der DB gelesen werden
  */
-@Entity
 @Getter
-@Setter
-@NoArgsConstructor
-@Table
-public class MigrationRateLimit extends AbstractUUIDEntity<MigrationRateLimit> {
+@AllArgsConstructor
+public class FreieTermineProSlotDTO {
 
-	private static final long serialVersionUID = -6954683399637893875L;
+	@NonNull
+	private final FreieTermineIndexKey key;
 
-	@NotNull
 	@NonNull
-	@Column(nullable = false, updatable = true, length = DBConst.DB_DEFAULT_MAX_LENGTH)
-	private LocalDateTime timestampLastRequest = LocalDateTime.now();
+	private final LocalDateTime slotBis;
+
+	private final long anzahlFreieTermine;
 }
@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2022 DV Bern AG, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.dvbern.oss.vacme.service.terminindex;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+/**
+ * Ein beim Aufbau des {@link FreieTermineIndex} noch gueltig reservierter Termin. Der Index zaehlt ihn nicht als frei
+ * und muss ihn wieder freigeben, sobald die Reservation ablaeuft.
+ */
+@Getter
+@AllArgsConstructor
+public class ReservierterTerminDTO {
+
+	@NonNull
+	private final UUID terminId;
+
+	@NonNull
+	private final String registrierungsnummer;
+
+	@NonNull
+	private final FreieTermineIndexKey key;
+
+	@NonNull
+	private final LocalDateTime slotBis;
+
+	@NonNull
+	private final LocalDateTime reserviertBis;
+}
@@ -19,19 +19,35 @@
 package ch.dvbern.oss.vacme.service.vmdl;
 
 import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
+import javax.enterprise.context.control.ActivateRequestContext;
 import javax.inject.Inject;
 import javax.transaction.Transactional;
 import javax.transaction.Transactional.TxType;
 
 import ch.dvbern.oss.vacme.entities.impfen.Impfung;
+import ch.dvbern.oss.vacme.entities.types.KrankheitIdentifier;
 import ch.dvbern.oss.vacme.jax.vmdl.VMDLUploadBaseJax;
-import ch.dvbern.oss.vacme.repo.ImpfungRepo;
 import ch.dvbern.oss.vacme.repo.vmdl.VMDLRepo;
 import ch.dvbern.oss.vacme.service.VacmeSettingsService;
+import ch.dvbern.oss.vacme.service.joblease.JobLease;
+import ch.dvbern.oss.vacme.service.joblease.JobLeaseService;
 import ch.dvbern.oss.vacme.service.plz.PLZCacheService;
+import ch.dvbern.oss.vacme.shared.errors.AppFailureException;
+import io.quarkus.security.identity.CurrentIdentityAssociation;
+import io.quarkus.security.identity.SecurityIdentity;
+import io.smallrye.mutiny.Uni;
+import io.smallrye.mutiny.infrastructure.Infrastructure;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.time.StopWatch;
 import org.checkerframework.checker.nullness.qual.NonNull;
@@ -46,9 +62,6 @@ public abstract class VMDLServiceAbstract<T extends VMDLUploadBaseJax> {
 	private static final String VMDL_KRZL_D = "D";
 	private static final String VMDL_KRZL_I = "I";
 
-	@Inject
-	ImpfungRepo impfungRepo;
-
 	@Inject
 	VMDLRepo vmdlRepo;
 
@@ -58,44 +71,157 @@ public abstract class VMDLServiceAbstract<T extends VMDLUploadBaseJax> {
 	@Inject
 	VacmeSettingsService vacmeSettingsService;
 
+	@Inject
+	JobLeaseService jobLeaseService;
 
-	@Transactional(TxType.REQUIRES_NEW)
+	@Inject
+	CurrentIdentityAssociation association;
+
+	/**
+	 * Laedt die pendenten Impfungen chunkweise an VMDL hoch. Waehrend ein Chunk hochgeladen wird, wird bereits der
+	 * naechste gelesen; es sind hoechstens {@link #getMaxChunksInFlight()} Chunks gleichzeitig unterwegs. Nach dem
+	 * Upload eines Chunks wird der timestampVMDL aller seiner Impfungen mit einem einzigen Update gesetzt.
+	 * <p>
+	 * Ohne Aufholmodus (vmdl.upload.catchup.enabled) werden pro Lauf so viele Chunks hochgeladen, wie gleichzeitig
+	 * unterwegs sein duerfen, im Aufholmodus so lange, bis keine pendenten Impfungen mehr vorhanden sind oder
+	 * vmdl.upload.catchup.max.seconds erreicht ist. Laeuft pro Krankheit nur auf einem Node gleichzeitig.
+	 */
+	@Transactional(TxType.NOT_SUPPORTED)
 	public void doUploadVMDLDataForGenericBatch() {
+		jobLeaseService.runWithLease(getJobName(), 1, this::uploadChunks);
+	}
+
+	private void uploadChunks(@NonNull JobLease lease) {
+		final int maxChunksInFlight = getMaxChunksInFlight();
+		final boolean catchup = vacmeSettingsService.isVmdlUploadCatchupEnabled();
+		final long maxChunks = catchup ? Long.MAX_VALUE : maxChunksInFlight;
+		final long deadline = System.currentTimeMillis()
+			+ TimeUnit.SECONDS.toMillis(vacmeSettingsService.getVmdlUploadCatchupMaxSeconds());
+		// Die Uploads laufen auf Worker-Threads und brauchen dieselbe Identitaet wie der Batchjob
+		final SecurityIdentity identity = association.getIdentity();
+		// Impfungen, deren timestampVMDL noch nicht gesetzt ist, die aber schon hochgeladen werden
+		final Set<UUID> inFlight = ConcurrentHashMap.newKeySet();
+		final Deque<CompletableFuture<Integer>> uploads = new ArrayDeque<>();
+		final StopWatch stopWatch = StopWatch.createStarted();
+		int chunks = 0;
+		int uploaded = 0;
+		try {
+			while (chunks < maxChunks) {
+				if (!lease.isValid()) {
+					LOG.warn("VACME-VMDL: Lease {} verloren, es werden keine weiteren Chunks hochgeladen", lease);
+					break;
+				}
+				if (catchup && System.currentTimeMillis() > deadline) {
+					LOG.info("VACME-VMDL: Maximale Laufzeit erreicht, der Rest wird im naechsten Lauf hochgeladen");
+					break;
+				}
+				// Der naechste Chunk wird gelesen, waehrend die vorherigen noch hochgeladen werden
+				final List<T> chunk = findAndMapChunk(Set.copyOf(inFlight));
+				if (chunk.isEmpty()) {
+					break;
+				}
+				if (uploads.size() >= maxChunksInFlight) {
+					uploaded += awaitUpload(uploads.removeFirst());
+				}
+				chunk.forEach(vmdlUploadJax -> inFlight.add(vmdlUploadJax.getImpfung().getId()));
+				uploads.add(Uni.createFrom().item(chunk)
+					.emitOn(Infrastructure.getDefaultWorkerPool())
+					.onItem().transform(items -> uploadChunk(items, identity, inFlight))
+					.subscribe().asCompletionStage());
+				chunks++;
+			}
+			while (!uploads.isEmpty()) {
+				uploaded += awaitUpload(uploads.removeFirst());
+			}
+		} catch (RuntimeException e) {
+			// Die bereits gestarteten Uploads fertig werden lassen, damit ihr timestampVMDL gesetzt ist, bevor der
+			// Lease freigegeben wird
+			uploads.forEach(upload -> upload.handle((result, throwable) -> null).join());
+			throw e;
+		}
+		stopWatch.stop();
+		LOG.info("VACME-VMDL: {} Impfungen in {} Chunks hochgeladen (took {}ms)",
+			uploaded, chunks, stopWatch.getTime(TimeUnit.MILLISECONDS));
+	}
+
+	@NonNull
+	private List<T> findAndMapChunk(@NonNull Set<UUID> excludedImpfungIds) {
 		StopWatch stopWatchQuery = StopWatch.createStarted();
 
-		List<T> vmdlUploadJax = findVMDLPendenteImpfungen();
+		List<T> vmdlUploadJax = findVMDLPendenteImpfungen(excludedImpfungIds);
 
 		LOG.info("VACME-VMDL: Total Query Time: {}ms for {} elements", stopWatchQuery.getTime(TimeUnit.MILLISECONDS), vmdlUploadJax.size());
 		if (vmdlUploadJax.isEmpty()) {
-			return;
+			return vmdlUploadJax;
 		}
 
 		StopWatch stopwWatchMapping = StopWatch.createStarted();
 		this.setKantonBasedOnPlzForAllEntries(vmdlUploadJax);
 		LOG.info("VACME-VMDL: Mapping Time PLZ Time: {}ms for {}", stopwWatchMapping.getTime(TimeUnit.MILLISECONDS), vmdlUploadJax.size());
 		performAdditionalMappings(vmdlUploadJax);
+		return vmdlUploadJax;
+	}
 
+	/**
+	 * Laeuft auf einem Worker-Thread: laedt den Chunk hoch und setzt danach den timestampVMDL
+	 */
+	@ActivateRequestContext
+	int uploadChunk(@NonNull List<T> vmdlUploadJax, @NonNull SecurityIdentity identity, @NonNull Set<UUID> inFlight) {
+		final List<UUID> impfungIds = vmdlUploadJax.stream()
+			.map(impfungVmdl -> impfungVmdl.getImpfung().getId())
+			.collect(Collectors.toList());
+		try {
+			association.setIdentity(identity);
+
+			StopWatch stopWatch = StopWatch.createStarted();
+			LOG.info("VACME-VMDL: START Send next chunk to VMDL upload. Size: {}", vmdlUploadJax.size());
+			this.uploadData(vmdlUploadJax);
+			stopWatch.stop();
+			LOG.info("VACME-VMDL: END Sending chunk to VMDL (took {}ms)", stopWatch.getTime(TimeUnit.MILLISECONDS));
+
+			vmdlRepo.markAsSentToVMDL(impfungIds, LocalDateTime.now());
+			return impfungIds.size();
+		} finally {
+			impfungIds.forEach(inFlight::remove);
+		}
+	}
 
-		StopWatch stopWatch = StopWatch.createStarted();
-		LOG.info("VACME-VMDL: START Send next chunk to VMDL upload. Size: {}", vmdlUploadJax.size());
-		this.uploadData(vmdlUploadJax);
-		stopWatch.stop();
-		LOG.info("VACME-VMDL: END Sending chunk to VMDL (took {}ms)", stopWatch.getTime(TimeUnit.MILLISECONDS));
-
-		final LocalDateTime now = LocalDateTime.now();
-		for (VMDLUploadBaseJax impfungVmdl : vmdlUploadJax) {
-			Impfung impfung = impfungVmdl.getImpfung();
-			impfung.setTimestampVMDL(now);
-			impfungRepo.update(impfung);
+	private int awaitUpload(@NonNull CompletableFuture<Integer> upload) {
+		try {
+			return upload.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new AppFailureException("VACME-VMDL: Der Upload wurde unterbrochen", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new AppFailureException("VACME-VMDL: Beim Upload ist ein Fehler aufgetreten", e.getCause());
 		}
 	}
 
+	@NonNull
+	private String getJobName() {
+		return "vmdlUpload" + getKrankheitIdentifier().name();
+	}
+
+	@NonNull
+	protected abstract KrankheitIdentifier getKrankheitIdentifier();
+
+	/**
+	 * @return wie viele Chunks gleichzeitig hochgeladen werden duerfen
+	 */
+	protected abstract int getMaxChunksInFlight();
+
 	protected abstract void performAdditionalMappings(@NonNull List<T> vmdlUploadJax);
 
 	public abstract void  uploadData(List<T> vmdlUploadJax);
 
+	/**
+	 * @param excludedImpfungIds Impfungen, die gerade hochgeladen werden
+	 */
 	@NonNull
-	protected abstract List<T> findVMDLPendenteImpfungen();
+	protected abstract List<T> findVMDLPendenteImpfungen(@NonNull Set<UUID> excludedImpfungIds);
 
 	private void  setKantonBasedOnPlzForAllEntries(@NonNull List< ? extends VMDLUploadBaseJax> vmdlUploadBaseJaxes) {
 		vmdlUploadBaseJaxes.forEach(vmdlUploadJax -> {
@@ -20,6 +20,8 @@ package ch.dvbern.oss.vacme.service.vmdl;
 
 import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.UUID;
 
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
@@ -27,6 +29,7 @@ import javax.transaction.Transactional;
 import javax.transaction.Transactional.TxType;
 
 import ch.dvbern.oss.vacme.entities.impfen.Impfung;
+import ch.dvbern.oss.vacme.entities.types.KrankheitIdentifier;
 import ch.dvbern.oss.vacme.jax.vmdl.VMDLDeleteJax;
 import ch.dvbern.oss.vacme.jax.vmdl.VMDLUploadAffenpockenJax;
 import ch.dvbern.oss.vacme.rest_client.vmdl.VMDLRestClientServiceAffenpocken;
@@ -54,8 +57,19 @@ public class VMDLServiceAffenpocken extends VMDLServiceAbstract<VMDLUploadAffenp
 
 	@Override
 	@NonNull
-	protected List<VMDLUploadAffenpockenJax> findVMDLPendenteImpfungen() {
-		return vmdlRepo.getVMDLPendenteAffenpockenImpfungen(getUploadChunkLimit(), getReportingUnitID());
+	protected List<VMDLUploadAffenpockenJax> findVMDLPendenteImpfungen(@NonNull Set<UUID> excludedImpfungIds) {
+		return vmdlRepo.getVMDLPendenteAffenpockenImpfungen(getUploadChunkLimit(), getReportingUnitID(), excludedImpfungIds);
+	}
+
+	@Override
+	protected int getMaxChunksInFlight() {
+		return vacmeSettingsService.getVmdlUploadInflightAffenpocken();
+	}
+
+	@Override
+	@NonNull
+	protected KrankheitIdentifier getKrankheitIdentifier() {
+		return KrankheitIdentifier.AFFENPOCKEN;
 	}
 
 	@Transactional(TxType.REQUIRED)
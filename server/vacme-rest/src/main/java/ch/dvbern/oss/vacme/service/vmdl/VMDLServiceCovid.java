@@ -21,6 +21,8 @@ package ch.dvbern.oss.vacme.service.vmdl;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 
 import javax.enterprise.context.ApplicationScoped;
@@ -29,6 +31,7 @@ import javax.transaction.Transactional;
 import javax.transaction.Transactional.TxType;
 
 import ch.dvbern.oss.vacme.entities.impfen.Impfung;
+import ch.dvbern.oss.vacme.entities.types.KrankheitIdentifier;
 import ch.dvbern.oss.vacme.jax.vmdl.VMDLDeleteJax;
 import ch.dvbern.oss.vacme.jax.vmdl.VMDLUploadCovidJax;
 import ch.dvbern.oss.vacme.rest_client.vmdl.VMDLRestClientServiceCovid;
@@ -88,16 +91,27 @@ public class VMDLServiceCovid extends VMDLServiceAbstract<VMDLUploadCovidJax> {
 
 	@Override
 	@NonNull
-	protected List<VMDLUploadCovidJax> findVMDLPendenteImpfungen() {
-		return findVMDLPendenteCovidImpfungen();
+	protected List<VMDLUploadCovidJax> findVMDLPendenteImpfungen(@NonNull Set<UUID> excludedImpfungIds) {
+		return findVMDLPendenteCovidImpfungen(excludedImpfungIds);
 	}
 
 	@NonNull
-	private List<VMDLUploadCovidJax> findVMDLPendenteCovidImpfungen() {
+	private List<VMDLUploadCovidJax> findVMDLPendenteCovidImpfungen(@NonNull Set<UUID> excludedImpfungIds) {
 		if (vacmeSettingsService.getVmdlCovidRun3QueriesSettingEnabled()) {
-			return vmdlRepo.getVMDLPendenteImpfungen3QueriesCovid(getUploadChunkLimit(), getReportingUnitID());
+			return vmdlRepo.getVMDLPendenteImpfungen3QueriesCovid(getUploadChunkLimit(), getReportingUnitID(), excludedImpfungIds);
 		}
-		return vmdlRepo.getVMDLPendenteImpfungen2QueriesCovid(getUploadChunkLimit(), getReportingUnitID());
+		return vmdlRepo.getVMDLPendenteImpfungen2QueriesCovid(getUploadChunkLimit(), getReportingUnitID(), excludedImpfungIds);
+	}
+
+	@Override
+	protected int getMaxChunksInFlight() {
+		return vacmeSettingsService.getVmdlUploadInflightCovid();
+	}
+
+	@Override
+	@NonNull
+	protected KrankheitIdentifier getKrankheitIdentifier() {
+		return KrankheitIdentifier.COVID;
 	}
 
 	@Transactional(TxType.REQUIRED)
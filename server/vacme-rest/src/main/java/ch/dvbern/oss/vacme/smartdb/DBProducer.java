@@ -17,6 +17,7 @@
 
 package ch.dvbern.oss.vacme.smartdb;
 
+import javax.annotation.PreDestroy;
 import javax.enterprise.context.RequestScoped;
 import javax.enterprise.inject.Produces;
 import javax.inject.Inject;
@@ -31,8 +32,8 @@ public class DBProducer {
 	private final Db db;
 
 	@Inject
-	public DBProducer(EntityManager em) {
-		db = new Db(em);
+	public DBProducer(EntityManager em, QueryObserver queryObserver) {
+		db = new Db(em, queryObserver);
 	}
 
 	/**
@@ -47,4 +48,9 @@ public class DBProducer {
 		return db;
 	}
 
+	@PreDestroy
+	void destroy() {
+		db.requestFinished();
+	}
+
 }
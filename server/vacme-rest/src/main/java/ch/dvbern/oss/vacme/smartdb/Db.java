@@ -35,6 +35,7 @@ import com.querydsl.core.types.EntityPath;
 import com.querydsl.core.types.Expression;
 import com.querydsl.core.types.dsl.EntityPathBase;
 import com.querydsl.jpa.impl.JPADeleteClause;
+import com.querydsl.jpa.impl.JPAQuery;
 import com.querydsl.jpa.impl.JPAQueryFactory;
 import com.querydsl.jpa.impl.JPAUpdateClause;
 
@@ -44,10 +45,16 @@ import static java.util.Objects.requireNonNull;
 public class Db {
 	private final SmartEntityManager em;
 	private final JPAQueryFactory queryFactory;
+	private final QueryTracker tracker;
 
 	public Db(EntityManager em) {
+		this(em, QueryObserver.NONE);
+	}
+
+	public Db(EntityManager em, QueryObserver observer) {
 		this.em = SmartEntityManager.wrap(em);
 		queryFactory = new JPAQueryFactory(em);
+		tracker = new QueryTracker(observer);
 	}
 
 	/**
@@ -55,19 +62,24 @@ public class Db {
 	 */
 	@Deprecated
 	public <Id, Entity extends AbstractEntity<Id>> Optional<Entity> find(Class<Entity> clazz, Id id) {
-		return em.find(clazz, id);
+		return findTracked(clazz, id);
 	}
 
 	public <Entity extends AbstractEntity<UUID>> Optional<Entity> get(ID<Entity> id) {
-		return em.find(id.getEntityClazz(), id.getId());
+		return findTracked(id.getEntityClazz(), id.getId());
 	}
 
 	public <Entity extends AbstractEntity<String>> Optional<Entity> get(IDS<Entity> id) {
-		return em.find(id.getEntityClazz(), id.getId());
+		return findTracked(id.getEntityClazz(), id.getId());
 	}
 
 	public <Entity extends AbstractEntity<Long>> Optional<Entity> get(IDL<Entity> id) {
-		return em.find(id.getEntityClazz(), id.getId());
+		return findTracked(id.getEntityClazz(), id.getId());
+	}
+
+	private <Entity> Optional<Entity> findTracked(Class<Entity> clazz, Object id) {
+		return tracker.track(null, "find", true, () -> em.find(clazz, id), result -> result.isPresent() ? 1 : 0,
+			mitParametern -> "find " + clazz.getSimpleName() + (mitParametern ? " [" + id + ']' : " [1 Parameter]"));
 	}
 
 	public <Entity extends AbstractEntity<?>> Entity merge(Entity entity) {
@@ -130,39 +142,39 @@ public class Db {
 	}
 
 	public <T> ch.dvbern.oss.vacme.smartdb.SmartJPAQuery<T> select(Expression<T> expr) {
-		return new ch.dvbern.oss.vacme.smartdb.SmartJPAQuery<>(queryFactory.select(expr));
+		return query(queryFactory.select(expr));
 	}
 
 	public ch.dvbern.oss.vacme.smartdb.SmartJPAQuery<Tuple> select(Expression<?>... exprs) {
-		return new ch.dvbern.oss.vacme.smartdb.SmartJPAQuery<>(queryFactory.select(exprs));
+		return query(queryFactory.select(exprs));
 	}
 
 	public <T> ch.dvbern.oss.vacme.smartdb.SmartJPAQuery<T> selectDistinct(Expression<T> expr) {
-		return new ch.dvbern.oss.vacme.smartdb.SmartJPAQuery<>(queryFactory.selectDistinct(expr));
+		return query(queryFactory.selectDistinct(expr));
 	}
 
 	public ch.dvbern.oss.vacme.smartdb.SmartJPAQuery<Tuple> selectDistinct(Expression<?>... exprs) {
-		return new ch.dvbern.oss.vacme.smartdb.SmartJPAQuery<>(queryFactory.selectDistinct(exprs));
+		return query(queryFactory.selectDistinct(exprs));
 	}
 
 	public ch.dvbern.oss.vacme.smartdb.SmartJPAQuery<Integer> selectOne() {
-		return new ch.dvbern.oss.vacme.smartdb.SmartJPAQuery<>(queryFactory.selectOne());
+		return query(queryFactory.selectOne());
 	}
 
 	public ch.dvbern.oss.vacme.smartdb.SmartJPAQuery<Integer> selectZero() {
-		return new ch.dvbern.oss.vacme.smartdb.SmartJPAQuery<>(queryFactory.selectZero());
+		return query(queryFactory.selectZero());
 	}
 
 	public <T> ch.dvbern.oss.vacme.smartdb.SmartJPAQuery<T> selectFrom(EntityPath<T> from) {
-		return new ch.dvbern.oss.vacme.smartdb.SmartJPAQuery<>(queryFactory.selectFrom(from));
+		return query(queryFactory.selectFrom(from));
 	}
 
 	public ch.dvbern.oss.vacme.smartdb.SmartJPAQuery<?> from(EntityPath<?> from) {
-		return new ch.dvbern.oss.vacme.smartdb.SmartJPAQuery<>(queryFactory.from(from));
+		return query(queryFactory.from(from));
 	}
 
 	public ch.dvbern.oss.vacme.smartdb.SmartJPAQuery<?> from(EntityPath<?>... from) {
-		return new ch.dvbern.oss.vacme.smartdb.SmartJPAQuery<>(queryFactory.from(from));
+		return query(queryFactory.from(from));
 	}
 
 	public JPAUpdateClause update(EntityPath<?> path) {
@@ -172,4 +184,15 @@ public class Db {
 	public SmartEntityManager getEntityManager() {
 		return em;
 	}
+
+	private <T> SmartJPAQuery<T> query(JPAQuery<T> query) {
+		return new SmartJPAQuery<>(query, tracker, null);
+	}
+
+	/**
+	 * Meldet die Summen des Requests an den {@link QueryObserver}, aufgerufen beim Zerstoeren des Request-Contexts.
+	 */
+	void requestFinished() {
+		tracker.requestFinished();
+	}
 }
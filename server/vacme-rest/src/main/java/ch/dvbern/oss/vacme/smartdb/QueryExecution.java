@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2022 DV Bern AG, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.dvbern.oss.vacme.smartdb;
+
+import lombok.Value;
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+/**
+ * Eine gemessene Abfrage. Die Beschreibung (JPQL, optional mit gebundenen Parametern) wird erst auf Anfrage erzeugt, da
+ * das Serialisieren nur fuer das Slow-Query-Log benoetigt wird.
+ */
+@Value
+public class QueryExecution {
+
+	/**
+	 * Name der Abfrage ({@link SmartJPAQuery#named(String)}) oder sonst die aufrufende Methode, z.B.
+	 * {@code ImpfungRepo.getByImpftermin}
+	 */
+	@NonNull
+	String callSite;
+
+	/**
+	 * Terminal-Methode, z.B. {@code fetch} oder {@code fetchOne}
+	 */
+	@NonNull
+	String operation;
+
+	long durationNanos;
+
+	int rowCount;
+
+	/**
+	 * true, wenn die Zeilen Entitaeten sind und somit in den Persistence Context geladen wurden
+	 */
+	boolean entityResult;
+
+	@NonNull
+	Describer describer;
+
+	public long getDurationMillis() {
+		return durationNanos / 1_000_000;
+	}
+
+	/**
+	 * @param mitParametern false: nur die JPQL mit Platzhaltern. Die Werte der Parameter enthalten Personendaten
+	 * (Namen, Geburtsdaten, Registrierungsnummern) und duerfen nur bewusst geloggt werden.
+	 */
+	@NonNull
+	public String describe(boolean mitParametern) {
+		return describer.describe(mitParametern);
+	}
+
+	@FunctionalInterface
+	public interface Describer {
+
+		@NonNull
+		String describe(boolean mitParametern);
+	}
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2022 DV Bern AG, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.dvbern.oss.vacme.smartdb;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+/**
+ * Wird von den smartdb-Wrappern nach jeder ausgefuehrten Abfrage benachrichtigt (Laufzeit, Anzahl Zeilen,
+ * Aufrufstelle). Ist die Beobachtung deaktiviert, wird die Aufrufstelle gar nicht erst ermittelt.
+ */
+public interface QueryObserver {
+
+	QueryObserver NONE = new QueryObserver() {
+		@Override
+		public boolean isEnabled() {
+			return false;
+		}
+
+		@Override
+		public void queryExecuted(@NonNull QueryExecution execution) {
+			// nothing to do
+		}
+
+		@Override
+		public void requestFinished(long queryCount, long entityLoadCount) {
+			// nothing to do
+		}
+	};
+
+	boolean isEnabled();
+
+	void queryExecuted(@NonNull QueryExecution execution);
+
+	/**
+	 * Wird am Ende des Requests (bzw. des Request-Contexts) mit den Summen aller darin gemessenen Abfragen aufgerufen.
+	 */
+	void requestFinished(long queryCount, long entityLoadCount);
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2022 DV Bern AG, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.dvbern.oss.vacme.smartdb;
+
+import java.util.Optional;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Misst die Abfragen eines {@link Db} und meldet sie dem {@link QueryObserver}. Da ein Db pro Request erzeugt wird,
+ * werden hier auch die Summen pro Request gefuehrt.
+ */
+final class QueryTracker {
+
+	private static final String SMARTDB_PACKAGE = QueryTracker.class.getPackageName() + '.';
+	private static final StackWalker STACK_WALKER = StackWalker.getInstance();
+
+	private final QueryObserver observer;
+	private long queryCount = 0;
+	private long entityLoadCount = 0;
+
+	QueryTracker(@NonNull QueryObserver observer) {
+		this.observer = observer;
+	}
+
+	boolean isEnabled() {
+		return observer.isEnabled();
+	}
+
+	<R> R track(
+		@Nullable String queryName,
+		@NonNull String operation,
+		boolean entityResult,
+		@NonNull Supplier<R> execution,
+		@NonNull ToIntFunction<R> rowCounter,
+		@NonNull QueryExecution.Describer describer
+	) {
+		if (!observer.isEnabled()) {
+			return execution.get();
+		}
+		final String callSite = queryName != null ? queryName : findCallSite();
+		final long start = System.nanoTime();
+		R result = null;
+		try {
+			result = execution.get();
+			return result;
+		} finally {
+			// auch fehlgeschlagene Abfragen (z.B. Timeouts) sollen in der Laufzeit auftauchen
+			final long durationNanos = System.nanoTime() - start;
+			final int rowCount = result != null ? rowCounter.applyAsInt(result) : 0;
+			queryCount++;
+			if (entityResult) {
+				entityLoadCount += rowCount;
+			}
+			observer.queryExecuted(new QueryExecution(callSite, operation, durationNanos, rowCount, entityResult, describer));
+		}
+	}
+
+	void requestFinished() {
+		if (queryCount > 0) {
+			observer.requestFinished(queryCount, entityLoadCount);
+		}
+	}
+
+	/**
+	 * @return erste Methode ausserhalb von smartdb auf dem Stack, als {@code Klasse.methode}
+	 */
+	@NonNull
+	static String findCallSite() {
+		final Optional<StackWalker.StackFrame> frame = STACK_WALKER.walk(frames -> frames
+			.filter(f -> !f.getClassName().startsWith(SMARTDB_PACKAGE))
+			.findFirst());
+		return frame
+			.map(f -> f.getClassName().substring(f.getClassName().lastIndexOf('.') + 1) + '.' + f.getMethodName())
+			.orElse("unknown");
+	}
+}
@@ -20,10 +20,13 @@ package ch.dvbern.oss.vacme.smartdb;
 import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
 
 import javax.persistence.FlushModeType;
 import javax.persistence.LockModeType;
 
+import ch.dvbern.oss.vacme.entities.base.AbstractEntity;
 import com.mysema.commons.lang.CloseableIterator;
 import com.querydsl.core.NonUniqueResultException;
 import com.querydsl.core.QueryMetadata;
@@ -42,16 +45,41 @@ import com.querydsl.core.types.Predicate;
 import com.querydsl.core.types.SubQueryExpression;
 import com.querydsl.core.types.dsl.BooleanExpression;
 import com.querydsl.core.types.dsl.BooleanOperation;
+import com.querydsl.jpa.JPQLSerializer;
+import com.querydsl.jpa.JPQLTemplates;
 import com.querydsl.jpa.impl.JPAQuery;
+import org.checkerframework.checker.nullness.qual.Nullable;
 
 import static java.util.Optional.ofNullable;
 
 @SuppressWarnings({ "NonBooleanMethodNameMayNotStartWithQuestion", "unused", "OverloadedVarargsMethod" })
 public class SmartJPAQuery<T> {
 	private final JPAQuery<T> delegate;
+	@Nullable
+	private final QueryTracker tracker;
+	@Nullable
+	private final String queryName;
 
 	public SmartJPAQuery(JPAQuery<T> delegate) {
+		this(delegate, null, null);
+	}
+
+	SmartJPAQuery(JPAQuery<T> delegate, @Nullable QueryTracker tracker, @Nullable String queryName) {
 		this.delegate = delegate;
+		this.tracker = tracker;
+		this.queryName = queryName;
+	}
+
+	private <U> SmartJPAQuery<U> wrap(JPAQuery<U> query) {
+		return new SmartJPAQuery<>(query, tracker, queryName);
+	}
+
+	/**
+	 * Name, unter dem die Abfrage in den Metriken und im Slow-Query-Log erscheint. Ohne Namen wird die aufrufende
+	 * Methode verwendet, was fuer Hilfsmethoden, die Abfragen fuer mehrere Aufrufer bauen, zu ungenau ist.
+	 */
+	public SmartJPAQuery<T> named(String name) {
+		return new SmartJPAQuery<>(delegate, tracker, name);
 	}
 
 	public SubQueryExpression<T> asSubQuery() {
@@ -59,167 +87,171 @@ public class SmartJPAQuery<T> {
 	}
 
 	public <U> SmartJPAQuery<U> select(Expression<U> expr) {
-		return new SmartJPAQuery<>(delegate.select(expr));
+		return wrap(delegate.select(expr));
 	}
 
 	public SmartJPAQuery<Tuple> select(Expression<?>... exprs) {
-		return new SmartJPAQuery<>(delegate.select(exprs));
+		return wrap(delegate.select(exprs));
 	}
 
 	public long fetchCount() {
-		return delegate.fetchCount();
+		return track("fetchCount", false, delegate::fetchCount, count -> 1);
 	}
 
+	/**
+	 * Gemessen wird nur das Oeffnen des Cursors, die Zeilen werden erst beim Iterieren gelesen.
+	 */
 	public CloseableIterator<T> iterate() {
-		return delegate.iterate();
+		return track("iterate", false, delegate::iterate, iterator -> 0);
 	}
 
 	public List<T> fetch() {
-		return delegate.fetch();
+		return track("fetch", isEntityResult(), delegate::fetch, List::size);
 	}
 
 	public QueryResults<T> fetchResults() {
-		return delegate.fetchResults();
+		return track("fetchResults", isEntityResult(), delegate::fetchResults, results -> results.getResults().size());
 	}
 
 	public Optional<T> fetchOne() throws NonUniqueResultException {
-		return ofNullable(delegate.fetchOne());
+		return track("fetchOne", isEntityResult(), () -> ofNullable(delegate.fetchOne()),
+			result -> result.isPresent() ? 1 : 0);
 	}
 
 	public SmartJPAQuery<T> setLockMode(LockModeType lockMode) {
-		return new SmartJPAQuery<>(delegate.setLockMode(lockMode));
+		return wrap(delegate.setLockMode(lockMode));
 	}
 
 	public SmartJPAQuery<T> setFlushMode(FlushModeType flushMode) {
-		return new SmartJPAQuery<>(delegate.setFlushMode(flushMode));
+		return wrap(delegate.setFlushMode(flushMode));
 	}
 
 	public SmartJPAQuery<T> setHint(String name, Object value) {
-		return new SmartJPAQuery<>(delegate.setHint(name, value));
+		return wrap(delegate.setHint(name, value));
 	}
 
 	public SmartJPAQuery<T> fetchJoin() {
-		return new SmartJPAQuery<>(delegate.fetchJoin());
+		return wrap(delegate.fetchJoin());
 	}
 
 	public SmartJPAQuery<T> fetchAll() {
-		return new SmartJPAQuery<>(delegate.fetchAll());
+		return wrap(delegate.fetchAll());
 	}
 
 	public SmartJPAQuery<T> from(EntityPath<?> arg) {
-		return new SmartJPAQuery<>(delegate.from(arg));
+		return wrap(delegate.from(arg));
 	}
 
 	public SmartJPAQuery<T> from(EntityPath<?>... args) {
-		return new SmartJPAQuery<>(delegate.from(args));
+		return wrap(delegate.from(args));
 	}
 
 	public <P> SmartJPAQuery<T> from(CollectionExpression<?, P> target, Path<P> alias) {
-		return new SmartJPAQuery<>(delegate.from(target, alias));
+		return wrap(delegate.from(target, alias));
 	}
 
 	public <P> SmartJPAQuery<T> innerJoin(CollectionExpression<?, P> target) {
-		return new SmartJPAQuery<>(delegate.innerJoin(target));
+		return wrap(delegate.innerJoin(target));
 	}
 
 	public <P> SmartJPAQuery<T> innerJoin(CollectionExpression<?, P> target, Path<P> alias) {
-		return new SmartJPAQuery<>(delegate.innerJoin(target, alias));
+		return wrap(delegate.innerJoin(target, alias));
 	}
 
 	public <P> SmartJPAQuery<T> innerJoin(EntityPath<P> target) {
-		return new SmartJPAQuery<>(delegate.innerJoin(target));
+		return wrap(delegate.innerJoin(target));
 	}
 
 	public <P> SmartJPAQuery<T> innerJoin(EntityPath<P> target, Path<P> alias) {
-		return new SmartJPAQuery<>(delegate.innerJoin(target, alias));
+		return wrap(delegate.innerJoin(target, alias));
 	}
 
 	public <P> SmartJPAQuery<T> innerJoin(MapExpression<?, P> target) {
-		return new SmartJPAQuery<>(delegate.innerJoin(target));
+		return wrap(delegate.innerJoin(target));
 	}
 
 	public <P> SmartJPAQuery<T> innerJoin(MapExpression<?, P> target, Path<P> alias) {
-		return new SmartJPAQuery<>(delegate.innerJoin(target, alias));
+		return wrap(delegate.innerJoin(target, alias));
 	}
 
 	public <P> SmartJPAQuery<T> join(CollectionExpression<?, P> target) {
-		return new SmartJPAQuery<>(delegate.join(target));
+		return wrap(delegate.join(target));
 	}
 
 	public <P> SmartJPAQuery<T> join(CollectionExpression<?, P> target, Path<P> alias) {
-		return new SmartJPAQuery<>(delegate.join(target, alias));
+		return wrap(delegate.join(target, alias));
 	}
 
 	public <P> SmartJPAQuery<T> join(EntityPath<P> target) {
-		return new SmartJPAQuery<>(delegate.join(target));
+		return wrap(delegate.join(target));
 	}
 
 	public <P> SmartJPAQuery<T> join(EntityPath<P> target, Path<P> alias) {
-		return new SmartJPAQuery<>(delegate.join(target, alias));
+		return wrap(delegate.join(target, alias));
 	}
 
 	public <P> SmartJPAQuery<T> join(MapExpression<?, P> target) {
-		return new SmartJPAQuery<>(delegate.join(target));
+		return wrap(delegate.join(target));
 	}
 
 	public <P> SmartJPAQuery<T> join(MapExpression<?, P> target, Path<P> alias) {
-		return new SmartJPAQuery<>(delegate.join(target, alias));
+		return wrap(delegate.join(target, alias));
 	}
 
 	public <P> SmartJPAQuery<T> leftJoin(CollectionExpression<?, P> target) {
-		return new SmartJPAQuery<>(delegate.leftJoin(target));
+		return wrap(delegate.leftJoin(target));
 	}
 
 	public <P> SmartJPAQuery<T> leftJoin(CollectionExpression<?, P> target, Path<P> alias) {
-		return new SmartJPAQuery<>(delegate.leftJoin(target, alias));
+		return wrap(delegate.leftJoin(target, alias));
 	}
 
 	public <P> SmartJPAQuery<T> leftJoin(EntityPath<P> target) {
-		return new SmartJPAQuery<>(delegate.leftJoin(target));
+		return wrap(delegate.leftJoin(target));
 	}
 
 	public <P> SmartJPAQuery<T> leftJoin(EntityPath<P> target, Path<P> alias) {
-		return new SmartJPAQuery<>(delegate.leftJoin(target, alias));
+		return wrap(delegate.leftJoin(target, alias));
 	}
 
 	public <P> SmartJPAQuery<T> leftJoin(MapExpression<?, P> target) {
-		return new SmartJPAQuery<>(delegate.leftJoin(target));
+		return wrap(delegate.leftJoin(target));
 	}
 
 	public <P> SmartJPAQuery<T> leftJoin(MapExpression<?, P> target, Path<P> alias) {
-		return new SmartJPAQuery<>(delegate.leftJoin(target, alias));
+		return wrap(delegate.leftJoin(target, alias));
 	}
 
 	public <P> SmartJPAQuery<T> rightJoin(CollectionExpression<?, P> target) {
-		return new SmartJPAQuery<>(delegate.rightJoin(target));
+		return wrap(delegate.rightJoin(target));
 	}
 
 	public <P> SmartJPAQuery<T> rightJoin(CollectionExpression<?, P> target, Path<P> alias) {
-		return new SmartJPAQuery<>(delegate.rightJoin(target, alias));
+		return wrap(delegate.rightJoin(target, alias));
 	}
 
 	public <P> SmartJPAQuery<T> rightJoin(EntityPath<P> target) {
-		return new SmartJPAQuery<>(delegate.rightJoin(target));
+		return wrap(delegate.rightJoin(target));
 	}
 
 	public <P> SmartJPAQuery<T> rightJoin(EntityPath<P> target, Path<P> alias) {
-		return new SmartJPAQuery<>(delegate.rightJoin(target, alias));
+		return wrap(delegate.rightJoin(target, alias));
 	}
 
 	public <P> SmartJPAQuery<T> rightJoin(MapExpression<?, P> target) {
-		return new SmartJPAQuery<>(delegate.rightJoin(target));
+		return wrap(delegate.rightJoin(target));
 	}
 
 	public <P> SmartJPAQuery<T> rightJoin(MapExpression<?, P> target, Path<P> alias) {
-		return new SmartJPAQuery<>(delegate.rightJoin(target, alias));
+		return wrap(delegate.rightJoin(target, alias));
 	}
 
 	public SmartJPAQuery<T> on(Predicate condition) {
-		return new SmartJPAQuery<>(delegate.on(condition));
+		return wrap(delegate.on(condition));
 	}
 
 	public SmartJPAQuery<T> on(Predicate... conditions) {
-		return new SmartJPAQuery<>(delegate.on(conditions));
+		return wrap(delegate.on(conditions));
 	}
 
 	@Override
@@ -314,67 +346,92 @@ public class SmartJPAQuery<T> {
 	}
 
 	public <T1> T1 transform(ResultTransformer<T1> transformer) {
-		return delegate.transform(transformer);
+		// die Anzahl Zeilen ist nach dem Transformieren nicht mehr bekannt
+		return track("transform", false, () -> delegate.transform(transformer), result -> 0);
 	}
 
 	public SmartJPAQuery<T> distinct() {
-		return new SmartJPAQuery<>(delegate.distinct());
+		return wrap(delegate.distinct());
 	}
 
 	public SmartJPAQuery<T> groupBy(Expression<?> e) {
-		return new SmartJPAQuery<>(delegate.groupBy(e));
+		return wrap(delegate.groupBy(e));
 	}
 
 	public SmartJPAQuery<T> groupBy(Expression<?>... o) {
-		return new SmartJPAQuery<>(delegate.groupBy(o));
+		return wrap(delegate.groupBy(o));
 	}
 
 	public SmartJPAQuery<T> having(Predicate e) {
-		return new SmartJPAQuery<>(delegate.having(e));
+		return wrap(delegate.having(e));
 	}
 
 	public SmartJPAQuery<T> having(Predicate... o) {
-		return new SmartJPAQuery<>(delegate.having(o));
+		return wrap(delegate.having(o));
 	}
 
 	public SmartJPAQuery<T> orderBy(OrderSpecifier<?> o) {
-		return new SmartJPAQuery<>(delegate.orderBy(o));
+		return wrap(delegate.orderBy(o));
 	}
 
 	public SmartJPAQuery<T> orderBy(OrderSpecifier<?>... o) {
-		return new SmartJPAQuery<>(delegate.orderBy(o));
+		return wrap(delegate.orderBy(o));
 	}
 
 	public SmartJPAQuery<T> where(Predicate o) {
-		return new SmartJPAQuery<>(delegate.where(o));
+		return wrap(delegate.where(o));
 	}
 
 	public SmartJPAQuery<T> where(Predicate... o) {
-		return new SmartJPAQuery<>(delegate.where(o));
+		return wrap(delegate.where(o));
 	}
 
 	public SmartJPAQuery<T> limit(long limit) {
-		return new SmartJPAQuery<>(delegate.limit(limit));
+		return wrap(delegate.limit(limit));
 	}
 
 	public SmartJPAQuery<T> offset(long offset) {
-		return new SmartJPAQuery<>(delegate.offset(offset));
+		return wrap(delegate.offset(offset));
 	}
 
 	public SmartJPAQuery<T> restrict(QueryModifiers modifiers) {
-		return new SmartJPAQuery<>(delegate.restrict(modifiers));
+		return wrap(delegate.restrict(modifiers));
 	}
 
 	public <P> SmartJPAQuery<T> set(ParamExpression<P> param, P value) {
-		return new SmartJPAQuery<>(delegate.set(param, value));
+		return wrap(delegate.set(param, value));
 	}
 
 	public T fetchFirst() {
-		return delegate.fetchFirst();
+		return track("fetchFirst", isEntityResult(), delegate::fetchFirst, result -> 1);
 	}
 
 	public QueryMetadata getMetadata() {
 		return delegate.getMetadata();
 	}
 
+	private <R> R track(String operation, boolean entityResult, Supplier<R> execution, ToIntFunction<R> rowCounter) {
+		if (tracker == null) {
+			return execution.get();
+		}
+		return tracker.track(queryName, operation, entityResult, execution, rowCounter, this::describe);
+	}
+
+	private boolean isEntityResult() {
+		final Class<T> type = delegate.getType();
+		return type != null && AbstractEntity.class.isAssignableFrom(type);
+	}
+
+	/**
+	 * JPQL fuer das Slow-Query-Log, die gebundenen Parameter nur auf Verlangen, sonst nur deren Anzahl
+	 */
+	private String describe(boolean mitParametern) {
+		final JPQLSerializer serializer = new JPQLSerializer(JPQLTemplates.DEFAULT);
+		serializer.serialize(delegate.getMetadata(), false, null);
+		if (mitParametern) {
+			return serializer + " " + serializer.getConstants();
+		}
+		return serializer + " [" + serializer.getConstants().size() + " Parameter]";
+	}
+
 }
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2022 DV Bern AG, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.dvbern.oss.vacme.util;
+
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import lombok.Value;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Ein einzelner Byte-Bereich aus einem HTTP Range-Header (RFC 7233). Mehrere Bereiche in einem Request werden nicht
+ * unterstuetzt, der Inhalt wird dann ganz ausgeliefert.
+ */
+@Value
+public class ByteRange {
+
+	private static final Pattern SINGLE_RANGE = Pattern.compile("^bytes=(\\d*)-(\\d*)$");
+
+	/**
+	 * Erstes Byte, inklusive
+	 */
+	long start;
+
+	/**
+	 * Letztes Byte, inklusive. Kleiner als start, wenn der Bereich ausserhalb des Inhalts liegt.
+	 */
+	long end;
+
+	public boolean isSatisfiable() {
+		return start <= end;
+	}
+
+	public long getLength() {
+		return end - start + 1;
+	}
+
+	@NonNull
+	public String toContentRange(long size) {
+		return "bytes " + start + '-' + end + '/' + size;
+	}
+
+	@NonNull
+	public static String toUnsatisfiedContentRange(long size) {
+		return "bytes */" + size;
+	}
+
+	/**
+	 * @return leer, wenn kein oder ein nicht unterstuetzter Range verlangt wurde. Ungueltige Header werden gemaess
+	 * RFC ignoriert.
+	 */
+	@NonNull
+	public static Optional<ByteRange> parse(@Nullable String rangeHeader, long size) {
+		if (rangeHeader == null) {
+			return Optional.empty();
+		}
+		Matcher matcher = SINGLE_RANGE.matcher(rangeHeader.trim());
+		if (!matcher.matches()) {
+			return Optional.empty();
+		}
+		String first = matcher.group(1);
+		String last = matcher.group(2);
+		try {
+			if (first.isEmpty()) {
+				if (last.isEmpty()) {
+					return Optional.empty();
+				}
+				// Suffix: die letzten n Bytes
+				long suffixLength = Long.parseLong(last);
+				return Optional.of(new ByteRange(Math.max(0, size - suffixLength), size - 1));
+			}
+			long start = Long.parseLong(first);
+			if (last.isEmpty()) {
+				return Optional.of(new ByteRange(start, size - 1));
+			}
+			long end = Long.parseLong(last);
+			if (end < start) {
+				return Optional.empty();
+			}
+			return Optional.of(new ByteRange(start, Math.min(end, size - 1)));
+		} catch (NumberFormatException e) {
+			// Zahl zu gross
+			return Optional.empty();
+		}
+	}
+}
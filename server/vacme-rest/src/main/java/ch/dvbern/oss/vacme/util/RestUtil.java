@@ -18,13 +18,26 @@
 package ch.dvbern.oss.vacme.util;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDateTime;
 import java.util.Date;
+import java.util.Optional;
+import java.util.function.Function;
 
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.StreamingOutput;
 
+import ch.dvbern.oss.vacme.entities.embeddables.FileBlob;
 import ch.dvbern.oss.vacme.entities.embeddables.FileBytes;
 import ch.dvbern.oss.vacme.entities.types.daterange.DateUtil;
+import ch.dvbern.oss.vacme.shared.blobstore.BlobStore;
 import ch.dvbern.oss.vacme.shared.errors.AppFailureException;
 import ch.dvbern.oss.vacme.shared.util.CleanFileName;
 import ch.dvbern.oss.vacme.shared.util.MimeType;
@@ -32,11 +45,16 @@ import ch.dvbern.oss.vacme.shared.util.Util;
 import com.github.HonoluluHenk.httpcontentdisposition.Disposition;
 import com.github.HonoluluHenk.httpcontentdisposition.HttpContentDisposition;
 import org.checkerframework.checker.nullness.qual.NonNull;
+import org.apache.commons.io.IOUtils;
 import org.checkerframework.checker.nullness.qual.Nullable;
 import org.jboss.resteasy.plugins.providers.multipart.MultipartFormDataInput;
 
 public final class RestUtil {
 
+	public static final String HEADER_RANGE = "Range";
+	private static final String HEADER_ACCEPT_RANGES = "Accept-Ranges";
+	private static final String HEADER_CONTENT_RANGE = "Content-Range";
+
 	private RestUtil() {
 	}
 
@@ -83,6 +101,94 @@ public final class RestUtil {
 		return result;
 	}
 
+	/**
+	 * Liefert eine gespeicherte Datei aus und unterstuetzt dabei einen einzelnen Range (z.B. fuer fortgesetzte
+	 * Downloads). Liegt der Inhalt im BlobStore auf dem lokalen Dateisystem, wird er mit FileChannel.transferTo
+	 * direkt aus der Datei geschrieben, ohne ihn auf den Heap zu laden. Inhalte, die noch in der DB liegen, werden
+	 * wie bisher ganz gelesen, da der LOB nach dem Ende der Transaktion nicht mehr gelesen werden kann.
+	 */
+	@NonNull
+	public static Response buildBlobResponse(
+			@NonNull Disposition disposition,
+			@NonNull FileBlob fileBlob,
+			@NonNull BlobStore blobStore,
+			@Nullable String rangeHeader,
+			@Nullable LocalDateTime lastModified
+	) {
+		final String contentHash = fileBlob.getContentHash();
+		if (contentHash == null) {
+			final byte[] content = fileBlob.readContent();
+			return buildRangeResponse(disposition, fileBlob, content.length, rangeHeader, lastModified,
+					range -> output -> output.write(content, Math.toIntExact(range.getStart()),
+							Math.toIntExact(range.getLength())));
+		}
+		final long size = blobStore.size(contentHash);
+		final Optional<Path> localPath = blobStore.getLocalPath(contentHash);
+		if (localPath.isPresent()) {
+			return buildRangeResponse(disposition, fileBlob, size, rangeHeader, lastModified,
+					range -> output -> transferFile(localPath.get(), range, output));
+		}
+		return buildRangeResponse(disposition, fileBlob, size, rangeHeader, lastModified,
+				range -> output -> {
+					try (InputStream content = blobStore.open(contentHash)) {
+						IOUtils.copyLarge(content, output, range.getStart(), range.getLength());
+					}
+				});
+	}
+
+	@NonNull
+	private static Response buildRangeResponse(
+			@NonNull Disposition disposition,
+			@NonNull FileBlob fileBlob,
+			long size,
+			@Nullable String rangeHeader,
+			@Nullable LocalDateTime lastModified,
+			@NonNull Function<ByteRange, StreamingOutput> contentWriter
+	) {
+		final Optional<ByteRange> range = ByteRange.parse(rangeHeader, size);
+		if (range.isPresent() && !range.get().isSatisfiable()) {
+			return Response
+					.status(Status.REQUESTED_RANGE_NOT_SATISFIABLE)
+					.header(HEADER_CONTENT_RANGE, ByteRange.toUnsatisfiedContentRange(size))
+					.build();
+		}
+		final ByteRange effectiveRange = range.orElseGet(() -> new ByteRange(0, size - 1));
+		final Response.ResponseBuilder builder = range.isPresent()
+				? Response.status(Status.PARTIAL_CONTENT)
+						.header(HEADER_CONTENT_RANGE, effectiveRange.toContentRange(size))
+				: Response.ok();
+		HttpContentDisposition contentDisposition = buildContentDisposition(fileBlob.getFileName(), disposition);
+		@Nullable Date actualLastModified = Util.ifValue(lastModified, DateUtil::getDate);
+
+		return builder
+				.entity(contentWriter.apply(effectiveRange))
+				.type(fileBlob.getMimeType().getMimeType())
+				.lastModified(actualLastModified)
+				.header(HEADER_ACCEPT_RANGES, "bytes")
+				.header(contentDisposition.headerName(), contentDisposition.headerValue())
+				.build();
+	}
+
+	private static void transferFile(
+			@NonNull Path file,
+			@NonNull ByteRange range,
+			@NonNull OutputStream output
+	) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			final WritableByteChannel target = Channels.newChannel(output);
+			long position = range.getStart();
+			long remaining = range.getLength();
+			while (remaining > 0) {
+				long transferred = channel.transferTo(position, remaining, target);
+				if (transferred <= 0) {
+					throw new IOException("Datei " + file + " ist kuerzer als erwartet");
+				}
+				position += transferred;
+				remaining -= transferred;
+			}
+		}
+	}
+
 	@NonNull
 	public static Response createDownloadResponse(
 		@NonNull String proposedFileName,
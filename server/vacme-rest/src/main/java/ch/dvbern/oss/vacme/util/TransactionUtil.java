@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2022 DV Bern AG, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.dvbern.oss.vacme.util;
+
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+public final class TransactionUtil {
+
+	private TransactionUtil() {
+		// util
+	}
+
+	/**
+	 * Fuehrt die Aktion nach dem erfolgreichen Commit der laufenden Transaktion aus, bei einem Rollback gar nicht.
+	 * Laeuft keine Transaktion, wird die Aktion sofort ausgefuehrt.
+	 */
+	public static void runAfterCommit(
+		@NonNull TransactionSynchronizationRegistry transactionSynchronizationRegistry,
+		@NonNull Runnable action
+	) {
+		if (transactionSynchronizationRegistry.getTransactionStatus() != Status.STATUS_ACTIVE) {
+			action.run();
+			return;
+		}
+		transactionSynchronizationRegistry.registerInterposedSynchronization(new Synchronization() {
+			@Override
+			public void beforeCompletion() {
+				// nothing to do
+			}
+
+			@Override
+			public void afterCompletion(int status) {
+				if (status == Status.STATUS_COMMITTED) {
+					action.run();
+				}
+			}
+		});
+	}
+}
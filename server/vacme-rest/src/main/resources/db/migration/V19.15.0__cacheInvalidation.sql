@@ -0,0 +1,15 @@
+CREATE TABLE IF NOT EXISTS CacheInvalidation (
+	id                BIGINT       NOT NULL AUTO_INCREMENT PRIMARY KEY,
+	timestampErstellt DATETIME(6)  NOT NULL,
+	node              VARCHAR(36)  NOT NULL,
+	cacheName         VARCHAR(50)  NOT NULL,
+	cacheKey          VARCHAR(255) NULL
+);
+
+CREATE INDEX IF NOT EXISTS IX_CacheInvalidation_timestampErstellt ON CacheInvalidation(timestampErstellt, id);
+
+/*
+-- UNDO:
+DROP TABLE IF EXISTS CacheInvalidation;
+DELETE FROM flyway_schema_history WHERE script = 'db/migration/V19.15.0__cacheInvalidation.sql';
+*/
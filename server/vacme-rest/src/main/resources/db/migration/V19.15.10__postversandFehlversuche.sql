@@ -0,0 +1,11 @@
+-- Briefe, die wiederholt nicht ins Sammel-PDF angehaengt werden koennen, werden nach
+-- vacme.postversand.max.fehlversuche nicht mehr exportiert und muessen manuell angeschaut werden
+ALTER TABLE ImpfdossierFile ADD COLUMN IF NOT EXISTS postversandFehlversuche INT NOT NULL DEFAULT 0;
+ALTER TABLE RegistrierungFile ADD COLUMN IF NOT EXISTS postversandFehlversuche INT NOT NULL DEFAULT 0;
+
+/*
+-- UNDO:
+ALTER TABLE ImpfdossierFile DROP COLUMN IF EXISTS postversandFehlversuche;
+ALTER TABLE RegistrierungFile DROP COLUMN IF EXISTS postversandFehlversuche;
+DELETE FROM flyway_schema_history WHERE script = 'db/migration/V19.15.10__postversandFehlversuche.sql';
+*/
@@ -0,0 +1,14 @@
+-- Stand des ersten Aufbaus der OdiTagesStatistik (hoechstens eine Zeile mit id = 1). Erst wenn der Aufbau
+-- abgeschlossen ist, werden die Statistiken aus der Tabelle gelesen.
+CREATE TABLE IF NOT EXISTS OdiTagesStatistikAufbau (
+	id                    INT         NOT NULL PRIMARY KEY,
+	aufgebautAb           DATE        NOT NULL, -- ab diesem Tag sind alle Tage lueckenlos berechnet
+	abgeschlossen         BOOLEAN     NOT NULL DEFAULT FALSE,
+	timestampAktualisiert DATETIME(6) NOT NULL
+);
+
+/*
+-- UNDO:
+DROP TABLE IF EXISTS OdiTagesStatistikAufbau;
+DELETE FROM flyway_schema_history WHERE script = 'db/migration/V19.15.11__odiTagesStatistikAufbau.sql';
+*/
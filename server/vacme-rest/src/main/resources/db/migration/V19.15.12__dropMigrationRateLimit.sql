@@ -0,0 +1,16 @@
+-- Ersetzt durch MigrationRateLimitBucket (V19.15.8)
+DROP TABLE IF EXISTS MigrationRateLimit;
+
+/*
+-- UNDO:
+CREATE TABLE MigrationRateLimit (
+	id                   VARCHAR(36)  NOT NULL PRIMARY KEY,
+	timestampErstellt    DATETIME(6)  NOT NULL,
+	timestampMutiert     DATETIME(6)  NOT NULL,
+	userErstellt         VARCHAR(255) NOT NULL,
+	userMutiert          VARCHAR(255) NOT NULL,
+	version              BIGINT       NOT NULL,
+	timestampLastRequest DATETIME(6)  NOT NULL
+);
+DELETE FROM flyway_schema_history WHERE script = 'db/migration/V19.15.12__dropMigrationRateLimit.sql';
+*/
@@ -0,0 +1,14 @@
+-- Fuer die Garbage Collection des BlobStores (Suche nach noch referenzierten Inhalten)
+CREATE INDEX IF NOT EXISTS IX_ImpfdossierFile_contentHash ON ImpfdossierFile(contentHash, id);
+CREATE INDEX IF NOT EXISTS IX_RegistrierungFile_contentHash ON RegistrierungFile(contentHash, id);
+CREATE INDEX IF NOT EXISTS IX_ZertifikatFile_contentHash ON ZertifikatFile(contentHash, id);
+CREATE INDEX IF NOT EXISTS IX_DocumentQueueResult_contentHash ON DocumentQueueResult(contentHash, id);
+
+/*
+-- UNDO:
+DROP INDEX IF EXISTS IX_ImpfdossierFile_contentHash ON ImpfdossierFile;
+DROP INDEX IF EXISTS IX_RegistrierungFile_contentHash ON RegistrierungFile;
+DROP INDEX IF EXISTS IX_ZertifikatFile_contentHash ON ZertifikatFile;
+DROP INDEX IF EXISTS IX_DocumentQueueResult_contentHash ON DocumentQueueResult;
+DELETE FROM flyway_schema_history WHERE script = 'db/migration/V19.15.13__fileBlobContentHashIndex.sql';
+*/
@@ -0,0 +1,12 @@
+ALTER TABLE RegistrierungQueue ADD IF NOT EXISTS leaseOwner VARCHAR(36) NULL;
+ALTER TABLE RegistrierungQueue ADD IF NOT EXISTS leaseUntil DATETIME(6) NULL;
+
+CREATE INDEX IF NOT EXISTS IX_RegistrierungQueue_leaseOwner ON RegistrierungQueue (leaseOwner, id);
+
+/**
+UNDO:
+ALTER TABLE RegistrierungQueue DROP COLUMN IF EXISTS leaseOwner;
+ALTER TABLE RegistrierungQueue DROP COLUMN IF EXISTS leaseUntil;
+DROP INDEX IF EXISTS IX_RegistrierungQueue_leaseOwner ON RegistrierungQueue;
+DELETE FROM flyway_schema_history where version = '19.15.1';
+ */
@@ -0,0 +1,9 @@
+ALTER TABLE Impfschutz ADD IF NOT EXISTS inputFingerprint VARCHAR(64) NULL;
+ALTER TABLE Impfschutz_AUD ADD IF NOT EXISTS inputFingerprint VARCHAR(64) NULL;
+
+/**
+UNDO:
+ALTER TABLE Impfschutz DROP COLUMN IF EXISTS inputFingerprint;
+ALTER TABLE Impfschutz_AUD DROP COLUMN IF EXISTS inputFingerprint;
+DELETE FROM flyway_schema_history where version = '19.15.2';
+ */
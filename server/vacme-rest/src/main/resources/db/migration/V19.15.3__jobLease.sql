@@ -0,0 +1,14 @@
+CREATE TABLE IF NOT EXISTS JobLease (
+	jobName      VARCHAR(100) NOT NULL,
+	shard        INT          NOT NULL,
+	owner        VARCHAR(36)  NULL,
+	fencingToken BIGINT       NOT NULL DEFAULT 0,
+	leaseUntil   DATETIME(6)  NULL,
+	PRIMARY KEY (jobName, shard)
+);
+
+/*
+-- UNDO:
+DROP TABLE IF EXISTS JobLease;
+DELETE FROM flyway_schema_history WHERE script = 'db/migration/V19.15.3__jobLease.sql';
+*/
@@ -0,0 +1,22 @@
+CREATE TABLE IF NOT EXISTS SmsOutbox (
+	id                BIGINT        NOT NULL AUTO_INCREMENT PRIMARY KEY,
+	timestampErstellt DATETIME(6)   NOT NULL,
+	empfaenger        VARCHAR(50)   NOT NULL,
+	message           VARCHAR(2000) NOT NULL,
+	status            VARCHAR(20)   NOT NULL,
+	attempts          INT           NOT NULL DEFAULT 0,
+	nextAttempt       DATETIME(6)   NOT NULL,
+	leaseOwner        VARCHAR(36)   NULL,
+	leaseUntil        DATETIME(6)   NULL,
+	timestampGesendet DATETIME(6)   NULL,
+	lastError         VARCHAR(2000) NULL
+);
+
+CREATE INDEX IF NOT EXISTS IX_SmsOutbox_status_nextAttempt ON SmsOutbox(status, nextAttempt, id);
+CREATE INDEX IF NOT EXISTS IX_SmsOutbox_leaseOwner ON SmsOutbox(leaseOwner);
+
+/*
+-- UNDO:
+DROP TABLE IF EXISTS SmsOutbox;
+DELETE FROM flyway_schema_history WHERE script = 'db/migration/V19.15.4__smsOutbox.sql';
+*/
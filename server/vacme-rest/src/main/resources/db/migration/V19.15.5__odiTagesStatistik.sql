@@ -0,0 +1,17 @@
+CREATE TABLE IF NOT EXISTS OdiTagesStatistik (
+	ortDerImpfung_id      VARCHAR(36) NOT NULL,
+	datum                 DATE        NOT NULL,
+	krankheitIdentifier   VARCHAR(50) NOT NULL,
+	impffolge             VARCHAR(50) NOT NULL,
+	impfstoff_id          VARCHAR(36) NOT NULL, -- '' fuer gebuchte Termine ohne Impfung
+	anzahlGebuchteTermine INT         NOT NULL DEFAULT 0,
+	anzahlImpfungen       INT         NOT NULL DEFAULT 0,
+	timestampBerechnet    DATETIME(6) NOT NULL,
+	PRIMARY KEY (ortDerImpfung_id, datum, krankheitIdentifier, impffolge, impfstoff_id)
+);
+
+/*
+-- UNDO:
+DROP TABLE IF EXISTS OdiTagesStatistik;
+DELETE FROM flyway_schema_history WHERE script = 'db/migration/V19.15.5__odiTagesStatistik.sql';
+*/
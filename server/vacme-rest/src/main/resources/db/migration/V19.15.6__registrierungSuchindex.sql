@@ -0,0 +1,27 @@
+CREATE TABLE IF NOT EXISTS RegistrierungSuchindex (
+	geburtsdatum     DATE         NOT NULL,
+	feld             VARCHAR(10)  NOT NULL,
+	schluessel       VARCHAR(255) NOT NULL,
+	registrierung_id VARCHAR(36)  NOT NULL,
+	PRIMARY KEY (geburtsdatum, feld, schluessel, registrierung_id),
+	CONSTRAINT FK_RegistrierungSuchindex_registrierung_id
+		FOREIGN KEY (registrierung_id) REFERENCES Registrierung(id) ON DELETE CASCADE
+);
+
+CREATE INDEX IF NOT EXISTS IX_RegistrierungSuchindex_registrierung ON RegistrierungSuchindex(registrierung_id);
+
+-- Bis zu welchem timestampMutiert der Registrierungen der Index nachgefuehrt ist
+CREATE TABLE IF NOT EXISTS RegistrierungSuchindexStand (
+	id               INT         NOT NULL PRIMARY KEY,
+	timestampMutiert DATETIME(6) NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS IX_Registrierung_timestampMutiert ON Registrierung(timestampMutiert, id);
+
+/*
+-- UNDO:
+DROP TABLE IF EXISTS RegistrierungSuchindex;
+DROP TABLE IF EXISTS RegistrierungSuchindexStand;
+DROP INDEX IF EXISTS IX_Registrierung_timestampMutiert ON Registrierung;
+DELETE FROM flyway_schema_history WHERE script = 'db/migration/V19.15.6__registrierungSuchindex.sql';
+*/
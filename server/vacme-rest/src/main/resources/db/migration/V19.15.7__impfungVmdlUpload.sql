@@ -0,0 +1,13 @@
+-- Impfungen, die mindestens einmal an VMDL geschickt wurden. timestampVMDL wird pro Chunk mit einem Bulk-Update
+-- gesetzt, welches nicht im Impfung_AUD landet. Ohne Foreign Key, damit der Eintrag beim Loeschen der Impfung noch
+-- fuer den Delete-Request an VMDL gefunden wird.
+CREATE TABLE IF NOT EXISTS ImpfungVMDLUpload (
+	impfung_id            VARCHAR(36) NOT NULL PRIMARY KEY,
+	timestampErsterUpload DATETIME(6) NOT NULL
+);
+
+/*
+-- UNDO:
+DROP TABLE IF EXISTS ImpfungVMDLUpload;
+DELETE FROM flyway_schema_history WHERE script = 'db/migration/V19.15.7__impfungVmdlUpload.sql';
+*/
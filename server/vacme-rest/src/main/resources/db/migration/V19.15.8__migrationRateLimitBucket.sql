@@ -0,0 +1,13 @@
+-- Token-Bucket pro Aufrufer der Migrations-API. Ersetzt die einzelne Zeile in MigrationRateLimit, welche nur den
+-- Zeitpunkt des letzten Requests ueber alle Aufrufer hinweg kannte.
+CREATE TABLE IF NOT EXISTS MigrationRateLimitBucket (
+	caller          VARCHAR(255) NOT NULL PRIMARY KEY,
+	tokens          DOUBLE       NOT NULL,
+	timestampRefill DATETIME(6)  NOT NULL
+);
+
+/*
+-- UNDO:
+DROP TABLE IF EXISTS MigrationRateLimitBucket;
+DELETE FROM flyway_schema_history WHERE script = 'db/migration/V19.15.8__migrationRateLimitBucket.sql';
+*/
@@ -0,0 +1,15 @@
+-- SHA-256 des Inhalts, wenn dieser im BlobStore statt in der Spalte data liegt
+ALTER TABLE ImpfdossierFile ADD COLUMN IF NOT EXISTS contentHash VARCHAR(64) NULL;
+ALTER TABLE RegistrierungFile ADD COLUMN IF NOT EXISTS contentHash VARCHAR(64) NULL;
+ALTER TABLE ZertifikatFile ADD COLUMN IF NOT EXISTS contentHash VARCHAR(64) NULL;
+ALTER TABLE DocumentQueueResult ADD COLUMN IF NOT EXISTS contentHash VARCHAR(64) NULL;
+
+/*
+-- UNDO:
+-- Achtung: zuerst alle ausgelagerten Inhalte aus dem BlobStore zurueck in die Spalte data schreiben
+ALTER TABLE ImpfdossierFile DROP COLUMN IF EXISTS contentHash;
+ALTER TABLE RegistrierungFile DROP COLUMN IF EXISTS contentHash;
+ALTER TABLE ZertifikatFile DROP COLUMN IF EXISTS contentHash;
+ALTER TABLE DocumentQueueResult DROP COLUMN IF EXISTS contentHash;
+DELETE FROM flyway_schema_history WHERE script = 'db/migration/V19.15.9__fileBlobContentHash.sql';
+*/
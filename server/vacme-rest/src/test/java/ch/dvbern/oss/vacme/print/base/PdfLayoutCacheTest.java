@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2022 DV Bern AG, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.dvbern.oss.vacme.print.base;
+
+import ch.dvbern.oss.vacme.shared.errors.AppFailureException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class PdfLayoutCacheTest {
+
+	private static final String LOGO_PATH = "/logo/logo_kanton_bern.png";
+
+	@Test
+	void prepareLogo_respectsMaxSize() {
+		PdfLayoutCache.PreparedLogo preparedLogo = PdfLayoutCache.prepareLogo(LOGO_PATH, 42, 20);
+		Assertions.assertTrue(preparedLogo.getContent().length > 0);
+		Assertions.assertTrue(preparedLogo.getWidthInMm() > 0);
+		Assertions.assertTrue(preparedLogo.getWidthInMm() <= 42);
+
+		PdfLayoutCache.PreparedLogo smallerLogo = PdfLayoutCache.prepareLogo(LOGO_PATH, 42, 5);
+		Assertions.assertTrue(smallerLogo.getWidthInMm() < preparedLogo.getWidthInMm());
+	}
+
+	@Test
+	void getLogo_returnsNewLogoPerCall() {
+		Assertions.assertNotNull(PdfLayoutCache.getLogo(LOGO_PATH, 9, 5, 42, 20));
+		Assertions.assertNotSame(
+			PdfLayoutCache.getLogo(LOGO_PATH, 9, 5, 42, 20),
+			PdfLayoutCache.getLogo(LOGO_PATH, 9, 5, 42, 20));
+	}
+
+	@Test
+	void getLogo_unknownPath() {
+		Assertions.assertThrows(
+			AppFailureException.class,
+			() -> PdfLayoutCache.getLogo("/logo/gibtsnicht.png", 9, 5, 42, 20));
+	}
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2022 DV Bern AG, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.dvbern.oss.vacme.print.postversand;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfName;
+import com.itextpdf.kernel.pdf.PdfReader;
+import com.itextpdf.kernel.pdf.PdfWriter;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class PostversandPdfWriterTest {
+
+	@Test
+	void addLetter_concatenatesAllPages() throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		try (PostversandPdfWriter writer = new PostversandPdfWriter(baos, false)) {
+			writer.addLetter(createPdf(1));
+			writer.addLetter(createPdf(3));
+			Assertions.assertEquals(2, writer.getLetterCount());
+		}
+		Assertions.assertEquals(4, countPages(baos.toByteArray()));
+	}
+
+	@Test
+	void addLetter_duplexStartsEveryLetterOnNewSheet() throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		try (PostversandPdfWriter writer = new PostversandPdfWriter(baos, true)) {
+			writer.addLetter(createPdf(1));
+			writer.addLetter(createPdf(2));
+			writer.addLetter(createPdf(3));
+		}
+		Assertions.assertEquals(8, countPages(baos.toByteArray()));
+	}
+
+	@Test
+	void addLetter_invalidPdfIsSkipped() throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		try (PostversandPdfWriter writer = new PostversandPdfWriter(baos, false)) {
+			writer.addLetter(createPdf(2));
+			Assertions.assertThrows(
+				IOException.class,
+				() -> writer.addLetter("kein pdf".getBytes(StandardCharsets.UTF_8)));
+			Assertions.assertEquals(1, writer.getLetterCount());
+		}
+		Assertions.assertEquals(2, countPages(baos.toByteArray()));
+	}
+
+	@Test
+	void addLetter_letterFailingDuringCopyIsSkippedCompletely() throws IOException {
+		byte[] letterWithoutMediaBox = createPdfWithoutMediaBox();
+		// Der Brief ist lesbar, erst die leere Rueckseite (Groesse der letzten Seite) schlaegt fehl
+		Assertions.assertEquals(1, countPages(letterWithoutMediaBox));
+
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		try (PostversandPdfWriter writer = new PostversandPdfWriter(baos, true)) {
+			writer.addLetter(createPdf(2));
+			Assertions.assertThrows(IOException.class, () -> writer.addLetter(letterWithoutMediaBox));
+			writer.addLetter(createPdf(2));
+			Assertions.assertEquals(2, writer.getLetterCount());
+		}
+		// Keine Seite des fehlerhaften Briefs landet im Sammel-PDF
+		Assertions.assertEquals(4, countPages(baos.toByteArray()));
+	}
+
+	private static byte[] createPdfWithoutMediaBox() {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		PdfDocument document = new PdfDocument(new PdfWriter(baos));
+		document.addNewPage().getPdfObject().remove(PdfName.MediaBox);
+		document.close();
+		return baos.toByteArray();
+	}
+
+	private static byte[] createPdf(int numberOfPages) {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		PdfDocument document = new PdfDocument(new PdfWriter(baos));
+		for (int i = 0; i < numberOfPages; i++) {
+			document.addNewPage();
+		}
+		document.close();
+		return baos.toByteArray();
+	}
+
+	private static int countPages(byte[] pdf) throws IOException {
+		PdfDocument document = new PdfDocument(new PdfReader(new ByteArrayInputStream(pdf)));
+		try {
+			return document.getNumberOfPages();
+		} finally {
+			document.close();
+		}
+	}
+}
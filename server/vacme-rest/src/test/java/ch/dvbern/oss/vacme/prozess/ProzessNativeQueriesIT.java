@@ -1,6 +1,10 @@
 package ch.dvbern.oss.vacme.prozess;
 
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
@@ -10,24 +14,32 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import javax.inject.Inject;
 import javax.ws.rs.core.StreamingOutput;
 
 import ch.dvbern.oss.vacme.entities.benutzer.Benutzer;
+import ch.dvbern.oss.vacme.entities.impfen.Impffolge;
 import ch.dvbern.oss.vacme.entities.impfen.Impfung;
 import ch.dvbern.oss.vacme.entities.massenverarbeitung.MassenverarbeitungQueue;
 import ch.dvbern.oss.vacme.entities.massenverarbeitung.MassenverarbeitungQueueTyp;
+import ch.dvbern.oss.vacme.entities.terminbuchung.Impfslot;
+import ch.dvbern.oss.vacme.entities.terminbuchung.Impftermin;
+import ch.dvbern.oss.vacme.entities.terminbuchung.OrtDerImpfung;
 import ch.dvbern.oss.vacme.entities.types.KrankheitIdentifier;
 import ch.dvbern.oss.vacme.entities.types.ZertifikatCreationDTO;
 import ch.dvbern.oss.vacme.jax.impfslot.ImpfslotValidationJax;
 import ch.dvbern.oss.vacme.repo.AudHelperRepo;
+import ch.dvbern.oss.vacme.repo.BlobStoreMigrationRepo;
 import ch.dvbern.oss.vacme.repo.BoosterQueueRepo;
 import ch.dvbern.oss.vacme.repo.DocumentQueueRepo;
 import ch.dvbern.oss.vacme.repo.ImpfslotRepo;
 import ch.dvbern.oss.vacme.repo.ImpfterminRepo;
 import ch.dvbern.oss.vacme.repo.ImpfungRepo;
 import ch.dvbern.oss.vacme.repo.MassenverarbeitungQueueRepo;
+import ch.dvbern.oss.vacme.repo.OdiTagesStatistikRepo;
 import ch.dvbern.oss.vacme.repo.OnboardingRepo;
 import ch.dvbern.oss.vacme.repo.PLZDataRepo;
 import ch.dvbern.oss.vacme.repo.RegistrierungRepo;
@@ -38,6 +50,9 @@ import ch.dvbern.oss.vacme.reports.reportingKantonKantonsarzt.ReportingKantonRep
 import ch.dvbern.oss.vacme.reports.reportingKantonKantonsarzt.ReportingKantonsarztReportServiceBean;
 import ch.dvbern.oss.vacme.reports.reportingOdis.ReportingOdisReportServiceBean;
 import ch.dvbern.oss.vacme.reports.reportingTerminslots.ReportingTerminslotsReportServiceBean;
+import ch.dvbern.oss.vacme.service.blobstore.BlobTabelle;
+import ch.dvbern.oss.vacme.service.tagesstatistik.OdiTagesKapazitaet;
+import ch.dvbern.oss.vacme.service.tagesstatistik.OdiTagesStatistikEintrag;
 import ch.dvbern.oss.vacme.shared.errors.AppFailureException;
 import ch.dvbern.oss.vacme.testing.MariaDBProfile;
 import ch.dvbern.oss.vacme.testing.MariaDBTestResource;
@@ -47,6 +62,7 @@ import io.agroal.api.AgroalDataSource;
 import io.quarkus.test.common.QuarkusTestResource;
 import io.quarkus.test.junit.QuarkusTest;
 import io.quarkus.test.junit.TestProfile;
+import org.checkerframework.checker.nullness.qual.NonNull;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
@@ -108,6 +124,12 @@ public class ProzessNativeQueriesIT extends AbstractProzessIT {
 	@Inject
 	MassenverarbeitungQueueRepo massenverarbeitungQueueRepo;
 
+	@Inject
+	OdiTagesStatistikRepo odiTagesStatistikRepo;
+
+	@Inject
+	BlobStoreMigrationRepo blobStoreMigrationRepo;
+
 	@Test
 	void deleteFromAuditTable_queryIsWorking() {
 		Benutzer benutzer = TestdataCreationUtil.createBenutzer("Test", "Tester", "444");
@@ -126,6 +148,16 @@ public class ProzessNativeQueriesIT extends AbstractProzessIT {
 		Assertions.assertEquals(1, resultCOV);
 	}
 
+	@Test
+	void createRegistrierungQueueItems_queryIsWorking() {
+		createSequenceIfNotExists("req_queue_sequence");
+		List<String> regNums = IntStream.range(0, 501)
+			.mapToObj(i -> "Q" + i)
+			.collect(Collectors.toList());
+		int result = boosterQueueRepo.createRegistrierungQueueItems(regNums, KrankheitIdentifier.COVID);
+		Assertions.assertEquals(501, result);
+	}
+
 	@Test
 	void getNextQueueId_queryIsWorking() {
 		createSequenceIfNotExists("req_queue_sequence");
@@ -160,6 +192,29 @@ public class ProzessNativeQueriesIT extends AbstractProzessIT {
 		Assertions.assertFalse(hasAtLeastFreieImpfslots);
 	}
 
+	@Test
+	void claimFreienImpftermin_queryIsWorking() {
+		final Impftermin termin = createTermin(Impffolge.ERSTE_IMPFUNG, false);
+		final Impfslot slot = termin.getImpfslot();
+
+		final Impftermin claimed = impfterminRepo.claimFreienImpftermin(slot, Impffolge.ERSTE_IMPFUNG);
+		Assertions.assertNotNull(claimed);
+		Assertions.assertEquals(termin.getId(), claimed.getId());
+		Assertions.assertFalse(claimed.isGebucht());
+	}
+
+	@Test
+	void claimFreienImpftermin_keinFreierTermin() {
+		final Impftermin termin = createTermin(Impffolge.ERSTE_IMPFUNG, false);
+		final Impfslot slot = termin.getImpfslot();
+
+		// Im Slot gibt es nur einen Termin fuer die erste Impfung
+		Assertions.assertNull(impfterminRepo.claimFreienImpftermin(slot, Impffolge.ZWEITE_IMPFUNG));
+
+		final Impftermin gebuchterTermin = createTermin(Impffolge.ERSTE_IMPFUNG, true);
+		Assertions.assertNull(impfterminRepo.claimFreienImpftermin(gebuchterTermin.getImpfslot(), Impffolge.ERSTE_IMPFUNG));
+	}
+
 	@Test
 	void wasSentToVMDL_queryIsWorking() {
 		ImpfinformationDto infos = createImpfdossierCovidWithBoosterAm(LocalDate.now().minusDays(2));
@@ -198,6 +253,16 @@ public class ProzessNativeQueriesIT extends AbstractProzessIT {
 		Assertions.assertNotNull(nextRegistrierungnummer);
 	}
 
+	@Test
+	void getNextRegistrierungnummern_queryIsWorking() {
+		createSequenceIfNotExists("register_sequence");
+		List<String> nummern = registrierungRepo.getNextRegistrierungnummern(25);
+		Assertions.assertEquals(25, nummern.size());
+		Assertions.assertEquals(25, nummern.stream().distinct().count());
+		Assertions.assertFalse(nummern.contains(registrierungRepo.getNextRegistrierungnummer()));
+		Assertions.assertTrue(registrierungRepo.getNextRegistrierungnummern(0).isEmpty());
+	}
+
 	@Test
 	void findAllMigrationImpfungenForZertifikatsGenerationPostRegexbased_queryIsWorking() {
 		List<ZertifikatCreationDTO> result =
@@ -255,6 +320,69 @@ public class ProzessNativeQueriesIT extends AbstractProzessIT {
 
 	}
 
+	@Test
+	void odiTagesStatistik_queriesAreWorking() {
+		createTableFromMigration("V19.15.5__odiTagesStatistik.sql");
+		final Impftermin termin = createTermin(Impffolge.ERSTE_IMPFUNG, true);
+		final UUID odiId = termin.getImpfslot().getOrtDerImpfung().getId();
+		final LocalDate datum = termin.getImpfslot().getZeitfenster().getBis().toLocalDate();
+
+		odiTagesStatistikRepo.recalculate(odiId, datum);
+		// Die Neuberechnung aller ODI ersetzt die Zeilen des Tages, statt sie zu verdoppeln
+		odiTagesStatistikRepo.recalculate(datum);
+
+		final List<OdiTagesStatistikEintrag> eintraege = odiTagesStatistikRepo.find(odiId, datum, datum, null);
+		Assertions.assertEquals(1, eintraege.size());
+		final OdiTagesStatistikEintrag eintrag = eintraege.get(0);
+		Assertions.assertEquals(datum, eintrag.getDatum());
+		Assertions.assertEquals(KrankheitIdentifier.COVID, eintrag.getKrankheitIdentifier());
+		Assertions.assertEquals(Impffolge.ERSTE_IMPFUNG, eintrag.getImpffolge());
+		Assertions.assertNull(eintrag.getImpfstoffId());
+		Assertions.assertEquals(1, eintrag.getAnzahlGebuchteTermine());
+		Assertions.assertEquals(0, eintrag.getAnzahlImpfungen());
+		Assertions.assertTrue(odiTagesStatistikRepo.find(odiId, datum, datum, KrankheitIdentifier.AFFENPOCKEN).isEmpty());
+
+		final List<OdiTagesKapazitaet> kapazitaeten = odiTagesStatistikRepo.findKapazitaeten(odiId, datum, datum);
+		Assertions.assertEquals(1, kapazitaeten.size());
+		Assertions.assertEquals(datum, kapazitaeten.get(0).getDatum());
+
+		Assertions.assertTrue(odiTagesStatistikRepo.findErstesSlotDatum().isPresent());
+	}
+
+	@Test
+	void blobStoreMigration_queriesAreWorking() {
+		for (BlobTabelle tabelle : BlobTabelle.values()) {
+			Assertions.assertNotNull(blobStoreMigrationRepo.findNichtAusgelagert(tabelle, "", 10));
+		}
+		Assertions.assertTrue(blobStoreMigrationRepo.findReferenzierteContentHashes(List.of("0".repeat(64))).isEmpty());
+		Assertions.assertTrue(blobStoreMigrationRepo.findReferenzierteContentHashes(List.of()).isEmpty());
+	}
+
+	@Test
+	void odiTagesStatistikAufbau_queriesAreWorking() {
+		createTableFromMigration("V19.15.11__odiTagesStatistikAufbau.sql");
+		final LocalDate aufgebautAb = LocalDate.now().minusDays(5);
+		odiTagesStatistikRepo.saveAufbauStand(aufgebautAb, false);
+		Assertions.assertEquals(aufgebautAb, odiTagesStatistikRepo.findAufgebautAb().orElseThrow());
+		Assertions.assertFalse(odiTagesStatistikRepo.isAufbauAbgeschlossen());
+
+		odiTagesStatistikRepo.saveAufbauStand(aufgebautAb.minusDays(1), true);
+		Assertions.assertEquals(aufgebautAb.minusDays(1), odiTagesStatistikRepo.findAufgebautAb().orElseThrow());
+		Assertions.assertTrue(odiTagesStatistikRepo.isAufbauAbgeschlossen());
+	}
+
+	@NonNull
+	private Impftermin createTermin(@NonNull Impffolge impffolge, boolean gebucht) {
+		final OrtDerImpfung odi = TestdataCreationUtil.createOrtDerImpfung();
+		ortDerImpfungRepo.create(odi);
+		final Impftermin termin = TestdataCreationUtil.createImpftermin(odi, LocalDate.now().plusDays(1));
+		termin.setImpffolge(impffolge);
+		termin.setGebuchtFromImpfterminRepo(gebucht);
+		impfslotRepo.create(termin.getImpfslot());
+		impfterminRepo.create(termin);
+		return termin;
+	}
+
 	// It is important to actually read the stream, else it never gets executed and errors slip through
 	private static String readStreamingOutput(StreamingOutput streamingOutput) {
 		try (ByteArrayOutputStream out = new ByteArrayOutputStream()) {
@@ -265,6 +393,24 @@ public class ProzessNativeQueriesIT extends AbstractProzessIT {
 		}
 	}
 
+	// Tabellen ohne Entitaet werden nicht von Hibernate erstellt. Die Migration enthaelt ein CREATE TABLE IF NOT EXISTS
+	// gefolgt vom auskommentierten UNDO-Block
+	private void createTableFromMigration(String script) {
+		final String sql;
+		try (InputStream in = Objects.requireNonNull(
+			getClass().getClassLoader().getResourceAsStream("db/migration/" + script), script)) {
+			final String content = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+			sql = content.substring(0, content.indexOf("/*"));
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		try (Connection con = this.defaultDataSource.getConnection(); PreparedStatement ps = con.prepareStatement(sql)) {
+			ps.execute();
+		} catch (SQLException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
 	private void createSequenceIfNotExists(String sequenceName) {
 		try (Connection con = this.defaultDataSource.getConnection(); PreparedStatement ps = con.prepareStatement(
 			"CREATE SEQUENCE IF NOT EXISTS " + sequenceName + " START WITH 1 INCREMENT BY 1;")) {
@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2022 DV Bern AG, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.dvbern.oss.vacme.reports;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.stream.Stream;
+
+import javax.persistence.Query;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+class CsvReportExporterTest {
+
+	@Test
+	void exportQuery_writesAllRowsOfAllQueriesWithFetchSize() throws Exception {
+		Query query1 = mockQuery(new String[] { "a", "1" }, new String[] { "b", "2" });
+		Query query2 = mockQuery(new String[] { "c", "3" });
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		try (CsvReportExporter exporter = CsvReportExporter.start("Test", out, new String[] { "Name", "Wert" }, 50, 2)) {
+			exporter.<String[]>exportQuery(query1, row -> row);
+			exporter.<String[]>exportQuery(query2, row -> row);
+			Assertions.assertEquals(3, exporter.getRowCount());
+		}
+
+		Assertions.assertEquals(
+			"Name,Wert\r\na,1\r\nb,2\r\nc,3\r\n",
+			out.toString(StandardCharsets.UTF_8));
+		Mockito.verify(query1).setHint("org.hibernate.fetchSize", 50);
+		Mockito.verify(query2).setHint("org.hibernate.fetchSize", 50);
+	}
+
+	@Test
+	void exportQuery_flushesEveryNRows() throws Exception {
+		Query query = mockQuery(new String[] { "a" }, new String[] { "b" }, new String[] { "c" });
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		try (CsvReportExporter exporter = CsvReportExporter.start("Test", out, new String[] { "Name" }, 10, 2)) {
+			exporter.<String[]>exportQuery(query, row -> row);
+			// nach 2 Zeilen wurde geflusht, die dritte liegt noch im Puffer
+			Assertions.assertEquals("Name\r\na\r\nb\r\n", out.toString(StandardCharsets.UTF_8));
+		}
+		Assertions.assertEquals("Name\r\na\r\nb\r\nc\r\n", out.toString(StandardCharsets.UTF_8));
+	}
+
+	private static Query mockQuery(String[]... rows) {
+		Query query = Mockito.mock(Query.class);
+		Mockito.when(query.getResultStream()).thenReturn(Stream.of(rows));
+		return query;
+	}
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2022 DV Bern AG, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.dvbern.oss.vacme.resource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import javax.ws.rs.core.Response;
+
+import ch.dvbern.oss.vacme.entities.UserPrincipal;
+import ch.dvbern.oss.vacme.jax.migration.DataMigrationBulkRequestJax;
+import ch.dvbern.oss.vacme.jax.migration.DataMigrationResponseJax;
+import ch.dvbern.oss.vacme.jax.migration.RegistrierungMigrationJax;
+import ch.dvbern.oss.vacme.jax.migration.RegistrierungResultatJax;
+import ch.dvbern.oss.vacme.jax.migration.StatusMigrationJax;
+import ch.dvbern.oss.vacme.service.DataMigrationService;
+import ch.dvbern.oss.vacme.service.VacmeSettingsService;
+import ch.dvbern.oss.vacme.shared.errors.mappers.AppValidationExceptionMapper;
+import io.quarkus.security.identity.CurrentIdentityAssociation;
+import io.quarkus.security.identity.SecurityIdentity;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+
+class DataMigrationResourceTest {
+
+	private static final int CHUNK_SIZE = 2;
+
+	private DataMigrationService dataMigrationService;
+	private DataMigrationResource serviceUnderTest;
+
+	@BeforeEach
+	void setUp() {
+		dataMigrationService = Mockito.mock(DataMigrationService.class);
+		SecurityIdentity securityIdentity = Mockito.mock(SecurityIdentity.class);
+		Mockito.when(securityIdentity.getPrincipal()).thenReturn(() -> "migration-client");
+		VacmeSettingsService vacmeSettingsService = Mockito.mock(VacmeSettingsService.class);
+		Mockito.when(vacmeSettingsService.isMigrationBulkEnabled()).thenReturn(true);
+		// ohne Rate Limit
+		Mockito.when(vacmeSettingsService.isMigrationEnabled()).thenReturn(false);
+		Mockito.when(vacmeSettingsService.getMigrationBulkChunkSize()).thenReturn(CHUNK_SIZE);
+
+		serviceUnderTest = new DataMigrationResource(
+			dataMigrationService,
+			securityIdentity,
+			Mockito.mock(CurrentIdentityAssociation.class),
+			Mockito.mock(AppValidationExceptionMapper.class),
+			Mockito.mock(UserPrincipal.class),
+			vacmeSettingsService);
+	}
+
+	@Test
+	void migrateDataBulk_migratesChunksInOneTransaction() {
+		Mockito.when(dataMigrationService.migrateDataChunk(ArgumentMatchers.any()))
+			.thenAnswer(invocation -> registrierungsnummern(invocation.getArgument(0)));
+
+		List<RegistrierungResultatJax> resultate = migrateBulk("E1", "E2", "E3");
+
+		assertSuccess(resultate, "E1", "E2", "E3");
+		Mockito.verify(dataMigrationService, Mockito.times(2)).migrateDataChunk(ArgumentMatchers.any());
+		Mockito.verify(dataMigrationService, Mockito.never()).migrateData(ArgumentMatchers.any());
+	}
+
+	@Test
+	void migrateDataBulk_fallsBackToSingleMigrationWhenChunkFails() {
+		Mockito.when(dataMigrationService.migrateDataChunk(ArgumentMatchers.any())).thenAnswer(invocation -> {
+			List<RegistrierungMigrationJax> chunk = invocation.getArgument(0);
+			if (chunk.stream().anyMatch(request -> "FEHLER".equals(request.getExternalId()))) {
+				throw new IllegalStateException("Chunk fehlgeschlagen");
+			}
+			return registrierungsnummern(chunk);
+		});
+		Mockito.when(dataMigrationService.migrateData(ArgumentMatchers.any())).thenAnswer(invocation -> {
+			RegistrierungMigrationJax request = invocation.getArgument(0);
+			if ("FEHLER".equals(request.getExternalId())) {
+				throw new IllegalStateException("Registrierung fehlerhaft");
+			}
+			return "REG-" + request.getExternalId();
+		});
+
+		List<RegistrierungResultatJax> resultate = migrateBulk("E1", "FEHLER", "E3", "E4");
+
+		Assertions.assertEquals(StatusMigrationJax.SUCCESS, resultate.get(0).getStatus());
+		Assertions.assertEquals("REG-E1", resultate.get(0).getRegistrierungsnummer());
+		Assertions.assertEquals(StatusMigrationJax.ERROR, resultate.get(1).getStatus());
+		Assertions.assertEquals("FEHLER", resultate.get(1).getExternalId());
+		Assertions.assertNull(resultate.get(1).getRegistrierungsnummer());
+		assertSuccess(resultate.subList(2, 4), "E3", "E4");
+		// Nur der fehlgeschlagene Chunk wird einzeln migriert
+		Mockito.verify(dataMigrationService, Mockito.times(2)).migrateData(ArgumentMatchers.any());
+	}
+
+	@Test
+	void migrateDataBulk_reportsInvalidRequestsWithoutMigratingThem() {
+		Mockito.when(dataMigrationService.migrateDataChunk(ArgumentMatchers.any()))
+			.thenAnswer(invocation -> registrierungsnummern(invocation.getArgument(0)));
+		Mockito.doThrow(new IllegalArgumentException("Impffolge doppelt"))
+			.when(dataMigrationService).validateRequest(ArgumentMatchers.argThat(
+				request -> request != null && "UNGUELTIG".equals(request.getExternalId())));
+
+		List<RegistrierungResultatJax> resultate = migrateBulk("E1", "UNGUELTIG", "E3");
+
+		Assertions.assertEquals(StatusMigrationJax.ERROR, resultate.get(1).getStatus());
+		assertSuccess(List.of(resultate.get(0), resultate.get(2)), "E1", "E3");
+		// E1 und E3 landen im selben Chunk
+		Mockito.verify(dataMigrationService, Mockito.times(1)).migrateDataChunk(ArgumentMatchers.any());
+	}
+
+	@Test
+	void migrateDataBulk_duplicateExternalIdsGetSameRegistrierungsnummer() {
+		Mockito.when(dataMigrationService.migrateDataChunk(ArgumentMatchers.any()))
+			.thenAnswer(invocation -> registrierungsnummern(invocation.getArgument(0)));
+
+		List<RegistrierungResultatJax> resultate = migrateBulk("E1", "E1");
+
+		assertSuccess(resultate, "E1", "E1");
+		Assertions.assertEquals(resultate.get(0).getRegistrierungsnummer(), resultate.get(1).getRegistrierungsnummer());
+	}
+
+	private List<RegistrierungResultatJax> migrateBulk(String... externalIds) {
+		List<RegistrierungMigrationJax> requests = new ArrayList<>();
+		for (String externalId : externalIds) {
+			RegistrierungMigrationJax request = Mockito.mock(RegistrierungMigrationJax.class);
+			Mockito.when(request.getExternalId()).thenReturn(externalId);
+			requests.add(request);
+		}
+		DataMigrationBulkRequestJax bulkRequest = Mockito.mock(DataMigrationBulkRequestJax.class);
+		Mockito.when(bulkRequest.getRegistrierungen()).thenReturn(requests);
+
+		Response response = serviceUnderTest.migrateDataBulk(bulkRequest);
+
+		Assertions.assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+		List<RegistrierungResultatJax> resultate =
+			((DataMigrationResponseJax) response.getEntity()).getRegistrierungStatusList();
+		Assertions.assertEquals(externalIds.length, resultate.size());
+		return resultate;
+	}
+
+	private static Map<String, String> registrierungsnummern(List<RegistrierungMigrationJax> chunk) {
+		return chunk.stream()
+			.map(RegistrierungMigrationJax::getExternalId)
+			.distinct()
+			.collect(Collectors.toMap(externalId -> externalId, externalId -> "REG-" + externalId));
+	}
+
+	private static void assertSuccess(List<RegistrierungResultatJax> resultate, String... externalIds) {
+		for (int i = 0; i < externalIds.length; i++) {
+			RegistrierungResultatJax resultat = resultate.get(i);
+			Assertions.assertEquals(externalIds[i], resultat.getExternalId());
+			Assertions.assertEquals(StatusMigrationJax.SUCCESS, resultat.getStatus());
+			Assertions.assertEquals("REG-" + externalIds[i], resultat.getRegistrierungsnummer());
+		}
+	}
+}
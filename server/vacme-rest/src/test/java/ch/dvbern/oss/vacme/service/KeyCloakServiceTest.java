@@ -4,27 +4,163 @@
 
 package ch.dvbern.oss.vacme.service;
 
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
 import ch.dvbern.oss.vacme.entities.UserPrincipal;
+import ch.dvbern.oss.vacme.entities.types.FachRolle;
+import ch.dvbern.oss.vacme.jax.registration.OdiUserDisplayNameJax;
+import ch.dvbern.oss.vacme.jax.registration.OdiUserJax;
 import ch.dvbern.oss.vacme.keyclaok.KeycloakAdapter;
+import ch.dvbern.oss.vacme.service.cache.CacheInvalidationService;
+import ch.dvbern.oss.vacme.service.cache.CacheRegistry;
+import ch.dvbern.oss.vacme.service.cache.VacmeCacheName;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.keycloak.admin.client.resource.GroupResource;
+import org.keycloak.admin.client.resource.GroupsResource;
 import org.keycloak.admin.client.resource.RealmResource;
+import org.keycloak.admin.client.resource.RoleResource;
+import org.keycloak.admin.client.resource.RolesResource;
+import org.keycloak.admin.client.resource.UserResource;
+import org.keycloak.admin.client.resource.UsersResource;
+import org.keycloak.representations.idm.GroupRepresentation;
 import org.keycloak.representations.idm.RoleRepresentation;
+import org.keycloak.representations.idm.UserRepresentation;
 import org.mockito.Mockito;
 
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
 class KeyCloakServiceTest {
+	private static final int PAGE_SIZE = 2;
+
 	private KeyCloakService keyCloakService;
+	private RealmResource realmResource;
+	private GroupsResource groupsResource;
+	private GroupResource groupResource;
+	private RolesResource rolesResource;
+	private UsersResource usersResource;
+	private CacheInvalidationService cacheInvalidationService;
 
 	@BeforeEach
 	void setUp() {
+		realmResource = Mockito.mock(RealmResource.class);
+		groupsResource = Mockito.mock(GroupsResource.class);
+		groupResource = Mockito.mock(GroupResource.class);
+		rolesResource = Mockito.mock(RolesResource.class);
+		usersResource = Mockito.mock(UsersResource.class);
+		when(realmResource.groups()).thenReturn(groupsResource);
+		when(realmResource.roles()).thenReturn(rolesResource);
+		when(realmResource.users()).thenReturn(usersResource);
+
+		VacmeSettingsService vacmeSettingsService = Mockito.mock(VacmeSettingsService.class);
+		when(vacmeSettingsService.getKeycloakDirectoryPageSize()).thenReturn(PAGE_SIZE);
+		when(vacmeSettingsService.getKeycloakDirectoryCacheTtlSeconds()).thenReturn(60L);
+		cacheInvalidationService = Mockito.mock(CacheInvalidationService.class);
+
 		keyCloakService = new KeyCloakService(
-			new KeycloakAdapter(Mockito.mock(RealmResource.class), "testclient", "testrealm"),
+			new KeycloakAdapter(realmResource, "testclient", "testrealm"),
 			Mockito.mock(UserPrincipal.class),
-			Mockito.mock(SmsService.class)
+			Mockito.mock(SmsService.class),
+			vacmeSettingsService,
+			Mockito.mock(CacheRegistry.class),
+			cacheInvalidationService
 		);
 	}
 
+	private void initOdiGruppe() {
+		// die gesuchte Gruppe liegt auf der zweiten Seite
+		when(groupsResource.groups(0, PAGE_SIZE)).thenReturn(List.of(group("g1", "ODI-A"), group("g2", "ODI-B")));
+		when(groupsResource.groups(2, PAGE_SIZE)).thenReturn(List.of(group("g3", "ODI-C")));
+		when(groupsResource.group("g3")).thenReturn(groupResource);
+		when(groupResource.members(0, PAGE_SIZE, true)).thenReturn(List.of(user("u1", true), user("u2", true)));
+		when(groupResource.members(2, PAGE_SIZE, true)).thenReturn(List.of(user("u3", false)));
+
+		RoleResource emptyRole = Mockito.mock(RoleResource.class);
+		when(emptyRole.getRoleUserMembers(Mockito.anyInt(), Mockito.anyInt())).thenReturn(Collections.emptyList());
+		when(rolesResource.get(anyString())).thenReturn(emptyRole);
+		RoleResource fachpersonal = Mockito.mock(RoleResource.class);
+		when(fachpersonal.getRoleUserMembers(0, PAGE_SIZE)).thenReturn(List.of(user("u1", true), user("u3", false)));
+		when(fachpersonal.getRoleUserMembers(2, PAGE_SIZE)).thenReturn(Collections.emptyList());
+		when(rolesResource.get(FachRolle.FACHPERSONAL.getKeyCloakRoleName())).thenReturn(fachpersonal);
+		RoleResource personal = Mockito.mock(RoleResource.class);
+		when(personal.getRoleUserMembers(0, PAGE_SIZE)).thenReturn(List.of(user("u2", true)));
+		when(rolesResource.get(FachRolle.PERSONAL.getKeyCloakRoleName())).thenReturn(personal);
+	}
+
+	@Test
+	void getUsersInGroupUsesBulkRoleMembers() {
+		initOdiGruppe();
+
+		List<OdiUserJax> users = keyCloakService.getUsersInGroup("ODI-C", true, 0, 100);
+
+		Assertions.assertEquals(List.of("u1", "u2", "u3"),
+			users.stream().map(OdiUserJax::getId).collect(Collectors.toList()));
+		Assertions.assertEquals(FachRolle.FACHPERSONAL, users.get(0).getFachRolle());
+		Assertions.assertEquals(FachRolle.PERSONAL, users.get(1).getFachRolle());
+		Assertions.assertEquals(FachRolle.FACHPERSONAL, users.get(2).getFachRolle());
+		// keine Abfragen pro Benutzer
+		verify(realmResource, never()).users();
+	}
+
+	@Test
+	void getUsersInGroupIsServedFromCache() {
+		initOdiGruppe();
+
+		keyCloakService.getUsersInGroup("ODI-C", false, 0, 100);
+		List<OdiUserJax> users = keyCloakService.getUsersInGroup("ODI-C", false, 0, 100);
+
+		Assertions.assertEquals(2, users.size());
+		verify(groupsResource, times(1)).groups(0, PAGE_SIZE);
+		verify(groupResource, times(1)).members(0, PAGE_SIZE, true);
+		verify(rolesResource, times(1)).get(FachRolle.FACHPERSONAL.getKeyCloakRoleName());
+	}
+
+	@Test
+	void getUsersInRoleAndGroupOnlyReturnsEnabledMembersOfGroup() {
+		initOdiGruppe();
+
+		List<OdiUserDisplayNameJax> users = keyCloakService.getUsersInRoleAndGroup(FachRolle.FACHPERSONAL, "ODI-C");
+
+		Assertions.assertEquals(1, users.size());
+		Assertions.assertEquals("u1", users.get(0).getId());
+	}
+
+	@Test
+	void joinGroupInvalidatesGroupMembers() {
+		initOdiGruppe();
+		UserResource userResource = Mockito.mock(UserResource.class);
+		when(usersResource.get("u9")).thenReturn(userResource);
+
+		keyCloakService.joinGroup("u9", "ODI-C");
+
+		verify(userResource).joinGroup("g3");
+		verify(cacheInvalidationService).invalidate(VacmeCacheName.KEYCLOAK_GROUP_MEMBERS, "ODI-C");
+	}
+
+	private static GroupRepresentation group(String id, String name) {
+		GroupRepresentation group = new GroupRepresentation();
+		group.setId(id);
+		group.setName(name);
+		return group;
+	}
+
+	private static UserRepresentation user(String id, boolean enabled) {
+		UserRepresentation user = new UserRepresentation();
+		user.setId(id);
+		user.setUsername(id + "@example.ch");
+		user.setFirstName("Vorname " + id);
+		user.setLastName("Name " + id);
+		user.setEnabled(enabled);
+		return user;
+	}
+
 	@Test
 	void isVacmeRoleFilterTest() {
 		// FachRolle (in Keycloak erfasst)
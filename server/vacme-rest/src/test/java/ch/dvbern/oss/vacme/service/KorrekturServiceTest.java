@@ -55,6 +55,7 @@ import ch.dvbern.oss.vacme.service.booster.BoosterService;
 import ch.dvbern.oss.vacme.service.d3api.D3ApiService;
 import ch.dvbern.oss.vacme.service.impfinformationen.ImpfinformationBuilder;
 import ch.dvbern.oss.vacme.service.impfinformationen.ImpfinformationenService;
+import ch.dvbern.oss.vacme.service.tagesstatistik.OdiTagesStatistikService;
 import ch.dvbern.oss.vacme.service.vmdl.VMDLServiceFactory;
 import ch.dvbern.oss.vacme.shared.errors.AppValidationMessage;
 import ch.dvbern.oss.vacme.shared.mappers.TestUtil;
@@ -120,7 +121,8 @@ class KorrekturServiceTest {
 			fragebogenServiceMock,
 			impfdossierServiceMock,
 			impfinformationenServiceMock,
-			Mockito.mock(D3ApiService.class)
+			Mockito.mock(D3ApiService.class),
+			Mockito.mock(OdiTagesStatistikService.class)
 		);
 
 		Mockito.when(fragebogenServiceMock.findFragebogenByRegistrierungsnummer(Mockito.any()))
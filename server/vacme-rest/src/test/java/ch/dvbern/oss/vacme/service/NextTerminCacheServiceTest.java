@@ -27,6 +27,9 @@ import ch.dvbern.oss.vacme.entities.base.ID;
 import ch.dvbern.oss.vacme.entities.impfen.Impffolge;
 import ch.dvbern.oss.vacme.entities.terminbuchung.OrtDerImpfung;
 import ch.dvbern.oss.vacme.entities.types.KrankheitIdentifier;
+import ch.dvbern.oss.vacme.service.cache.CacheRegistry;
+import ch.dvbern.oss.vacme.service.terminindex.FreieTermineChangedEvent;
+import ch.dvbern.oss.vacme.service.terminindex.FreieTermineIndexKey;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
@@ -34,6 +37,7 @@ import org.mockito.Mockito;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
@@ -46,16 +50,14 @@ class NextTerminCacheServiceTest {
 		LocalDateTime timeToReturn = LocalDateTime.now().plusDays(1).plusHours(12);
 		OrtDerImpfungService ortDerImpfungServiceMock = mock(OrtDerImpfungService.class);
 		VacmeSettingsService vacmeSettingsServiceMock = mock(VacmeSettingsService.class);
-		Mockito.when(ortDerImpfungServiceMock.getNextFreierImpftermin(
+		Mockito.when(ortDerImpfungServiceMock.getNextFreierImpfterminFuerPortal(
 				any(),
 				eq(Impffolge.ERSTE_IMPFUNG),
-				eq(null),
-				eq(false),
 				eq(KrankheitIdentifier.COVID)))
 			.thenReturn(timeToReturn);
 
 		NextTerminCacheService serviceUnderTest =
-			new NextTerminCacheService(ortDerImpfungServiceMock, vacmeSettingsServiceMock);
+			new NextTerminCacheService(ortDerImpfungServiceMock, vacmeSettingsServiceMock, mock(CacheRegistry.class));
 		serviceUnderTest.init();
 
 		ID<OrtDerImpfung> ortDerImpfungId = OrtDerImpfung.toId(UUID.randomUUID());
@@ -71,17 +73,13 @@ class NextTerminCacheServiceTest {
 			differentOdiId);
 		moreResults.forEach(returnedDate -> Assertions.assertEquals(timeToReturn, returnedDate));
 
-		verify(ortDerImpfungServiceMock, times(1)).getNextFreierImpftermin(
+		verify(ortDerImpfungServiceMock, times(1)).getNextFreierImpfterminFuerPortal(
 			ortDerImpfungId,
 			Impffolge.ERSTE_IMPFUNG,
-			null,
-			false,
 			KrankheitIdentifier.COVID);
-		verify(ortDerImpfungServiceMock, times(1)).getNextFreierImpftermin(
+		verify(ortDerImpfungServiceMock, times(1)).getNextFreierImpfterminFuerPortal(
 			differentOdiId,
 			Impffolge.ERSTE_IMPFUNG,
-			null,
-			false,
 			KrankheitIdentifier.COVID);
 	}
 
@@ -92,16 +90,14 @@ class NextTerminCacheServiceTest {
 		LocalDateTime timeToReturn = LocalDateTime.now().plusDays(1).plusHours(12);
 		OrtDerImpfungService ortDerImpfungServiceMock = mock(OrtDerImpfungService.class);
 		VacmeSettingsService vacmeSettingsServiceMock = mock(VacmeSettingsService.class);
-		Mockito.when(ortDerImpfungServiceMock.getNextFreierImpftermin(
+		Mockito.when(ortDerImpfungServiceMock.getNextFreierImpfterminFuerPortal(
 				any(),
 				eq(Impffolge.ERSTE_IMPFUNG),
-				eq(null),
-				eq(false),
 				eq(KrankheitIdentifier.COVID)))
 			.thenReturn(null);
 
 		NextTerminCacheService serviceUnderTest =
-			new NextTerminCacheService(ortDerImpfungServiceMock, vacmeSettingsServiceMock);
+			new NextTerminCacheService(ortDerImpfungServiceMock, vacmeSettingsServiceMock, mock(CacheRegistry.class));
 		serviceUnderTest.init();
 
 		ID<OrtDerImpfung> ortDerImpfungId = OrtDerImpfung.toId(UUID.randomUUID());
@@ -117,17 +113,13 @@ class NextTerminCacheServiceTest {
 			differentOdiId);
 		moreResults.forEach(Assertions::assertNull);
 
-		verify(ortDerImpfungServiceMock, times(1)).getNextFreierImpftermin(
+		verify(ortDerImpfungServiceMock, times(1)).getNextFreierImpfterminFuerPortal(
 			ortDerImpfungId,
 			Impffolge.ERSTE_IMPFUNG,
-			null,
-			false,
 			KrankheitIdentifier.COVID);
-		verify(ortDerImpfungServiceMock, times(1)).getNextFreierImpftermin(
+		verify(ortDerImpfungServiceMock, times(1)).getNextFreierImpfterminFuerPortal(
 			differentOdiId,
 			Impffolge.ERSTE_IMPFUNG,
-			null,
-			false,
 			KrankheitIdentifier.COVID);
 	}
 
@@ -136,11 +128,11 @@ class NextTerminCacheServiceTest {
 		System.setProperty("vacme.cache.nextfrei.ttl.sconds", "120"); // set to zero to disable cache
 		OrtDerImpfungService ortDerImpfungServiceMock = mock(OrtDerImpfungService.class);
 		VacmeSettingsService vacmeSettingsServiceMock = mock(VacmeSettingsService.class);
-		Mockito.when(ortDerImpfungServiceMock.getNextFreierImpftermin(any(), any(), eq(null), eq(false), any()))
+		Mockito.when(ortDerImpfungServiceMock.getNextFreierImpfterminFuerPortal(any(), any(), any()))
 			.thenReturn(null);
 
 		NextTerminCacheService serviceUnderTest =
-			new NextTerminCacheService(ortDerImpfungServiceMock, vacmeSettingsServiceMock);
+			new NextTerminCacheService(ortDerImpfungServiceMock, vacmeSettingsServiceMock, mock(CacheRegistry.class));
 		serviceUnderTest.init();
 
 		ID<OrtDerImpfung> ortDerImpfungId = OrtDerImpfung.toId(UUID.randomUUID());
@@ -154,17 +146,13 @@ class NextTerminCacheServiceTest {
 			ortDerImpfungId, Impffolge.BOOSTER_IMPFUNG, KrankheitIdentifier.AFFENPOCKEN);
 		moreResults.forEach(Assertions::assertNull);
 
-		verify(ortDerImpfungServiceMock, times(1)).getNextFreierImpftermin(
+		verify(ortDerImpfungServiceMock, times(1)).getNextFreierImpfterminFuerPortal(
 			ortDerImpfungId,
 			Impffolge.BOOSTER_IMPFUNG,
-			null,
-			false,
 			KrankheitIdentifier.COVID);
-		verify(ortDerImpfungServiceMock, times(1)).getNextFreierImpftermin(
+		verify(ortDerImpfungServiceMock, times(1)).getNextFreierImpfterminFuerPortal(
 			ortDerImpfungId,
 			Impffolge.BOOSTER_IMPFUNG,
-			null,
-			false,
 			KrankheitIdentifier.AFFENPOCKEN);
 
 	}
@@ -202,16 +190,14 @@ class NextTerminCacheServiceTest {
 		LocalDateTime timeToReturn = LocalDateTime.now().plusDays(1).plusHours(12);
 		OrtDerImpfungService ortDerImpfungServiceMock = mock(OrtDerImpfungService.class);
 		VacmeSettingsService vacmeSettingsServiceMock = mock(VacmeSettingsService.class);
-		Mockito.when(ortDerImpfungServiceMock.getNextFreierImpftermin(
+		Mockito.when(ortDerImpfungServiceMock.getNextFreierImpfterminFuerPortal(
 				any(),
 				eq(Impffolge.ERSTE_IMPFUNG),
-				eq(null),
-				eq(false),
 				eq(KrankheitIdentifier.COVID)))
 			.thenReturn(timeToReturn);
 
 		NextTerminCacheService serviceUnderTest =
-			new NextTerminCacheService(ortDerImpfungServiceMock, vacmeSettingsServiceMock);
+			new NextTerminCacheService(ortDerImpfungServiceMock, vacmeSettingsServiceMock, mock(CacheRegistry.class));
 		serviceUnderTest.init();
 
 		ID<OrtDerImpfung> ortDerImpfungId = OrtDerImpfung.toId(UUID.randomUUID());
@@ -228,21 +214,81 @@ class NextTerminCacheServiceTest {
 		moreResults.forEach(returnedDate -> Assertions.assertEquals(timeToReturn, returnedDate));
 
 		// since cache is disabled this hould be called 5 times each
-		verify(ortDerImpfungServiceMock, times(5)).getNextFreierImpftermin(
+		verify(ortDerImpfungServiceMock, times(5)).getNextFreierImpfterminFuerPortal(
 			ortDerImpfungId,
 			Impffolge.ERSTE_IMPFUNG,
-			null,
-			false,
 			KrankheitIdentifier.COVID);
-		verify(ortDerImpfungServiceMock, times(5)).getNextFreierImpftermin(
+		verify(ortDerImpfungServiceMock, times(5)).getNextFreierImpfterminFuerPortal(
 			differentOdiId,
 			Impffolge.ERSTE_IMPFUNG,
-			null,
-			false,
 			KrankheitIdentifier.COVID);
 
 		if (originalaProp != null) {
 			System.setProperty("vacme.cache.nextfrei.ttl.sconds", originalaProp);
 		}
 	}
+
+	@Test
+	public void testRefreshOnFreieTermineChanged() throws InterruptedException {
+		System.setProperty("vacme.cache.nextfrei.ttl.sconds", "120");
+		LocalDateTime firstTime = LocalDateTime.now().plusDays(1).plusHours(12);
+		LocalDateTime secondTime = LocalDateTime.now().plusDays(2).plusHours(12);
+		OrtDerImpfungService ortDerImpfungServiceMock = mock(OrtDerImpfungService.class);
+		VacmeSettingsService vacmeSettingsServiceMock = mock(VacmeSettingsService.class);
+		Mockito.when(ortDerImpfungServiceMock.getNextFreierImpfterminFuerPortal(
+				any(),
+				eq(Impffolge.ERSTE_IMPFUNG),
+				eq(KrankheitIdentifier.COVID)))
+			.thenReturn(firstTime, secondTime);
+
+		NextTerminCacheService serviceUnderTest =
+			new NextTerminCacheService(ortDerImpfungServiceMock, vacmeSettingsServiceMock, mock(CacheRegistry.class));
+		serviceUnderTest.init();
+
+		UUID odiUuid = UUID.randomUUID();
+		ID<OrtDerImpfung> ortDerImpfungId = OrtDerImpfung.toId(odiUuid);
+		Assertions.assertEquals(firstTime, getErsteImpfungThroughCache(serviceUnderTest, ortDerImpfungId));
+
+		// Aenderungen an anderen ODIs, anderen Impffolgen oder anderen Krankheiten loesen kein Neuladen aus
+		serviceUnderTest.onFreieTermineChanged(createEvent(UUID.randomUUID(), KrankheitIdentifier.COVID, Impffolge.ERSTE_IMPFUNG));
+		serviceUnderTest.onFreieTermineChanged(createEvent(odiUuid, KrankheitIdentifier.COVID, Impffolge.ZWEITE_IMPFUNG));
+		serviceUnderTest.onFreieTermineChanged(createEvent(odiUuid, KrankheitIdentifier.AFFENPOCKEN, Impffolge.ERSTE_IMPFUNG));
+		verify(ortDerImpfungServiceMock, times(1)).getNextFreierImpfterminFuerPortal(
+			ortDerImpfungId,
+			Impffolge.ERSTE_IMPFUNG,
+			KrankheitIdentifier.COVID);
+
+		// Eine Aenderung am gecachten ODI laedt den Eintrag asynchron neu
+		serviceUnderTest.onFreieTermineChanged(createEvent(odiUuid, KrankheitIdentifier.COVID, Impffolge.ERSTE_IMPFUNG));
+		verify(ortDerImpfungServiceMock, timeout(5000).times(2)).getNextFreierImpfterminFuerPortal(
+			ortDerImpfungId,
+			Impffolge.ERSTE_IMPFUNG,
+			KrankheitIdentifier.COVID);
+		LocalDateTime refreshed = getErsteImpfungThroughCache(serviceUnderTest, ortDerImpfungId);
+		for (int i = 0; i < 50 && !secondTime.equals(refreshed); i++) {
+			Thread.sleep(100);
+			refreshed = getErsteImpfungThroughCache(serviceUnderTest, ortDerImpfungId);
+		}
+		Assertions.assertEquals(secondTime, refreshed);
+		verify(ortDerImpfungServiceMock, times(2)).getNextFreierImpfterminFuerPortal(
+			ortDerImpfungId,
+			Impffolge.ERSTE_IMPFUNG,
+			KrankheitIdentifier.COVID);
+	}
+
+	private LocalDateTime getErsteImpfungThroughCache(
+		NextTerminCacheService serviceUnderTest,
+		ID<OrtDerImpfung> ortDerImpfungId
+	) {
+		return serviceUnderTest.getNextFreierImpfterminThroughCache(
+			ortDerImpfungId,
+			Impffolge.ERSTE_IMPFUNG,
+			null,
+			false,
+			KrankheitIdentifier.COVID);
+	}
+
+	private FreieTermineChangedEvent createEvent(UUID odiId, KrankheitIdentifier krankheit, Impffolge impffolge) {
+		return new FreieTermineChangedEvent(new FreieTermineIndexKey(odiId, krankheit, impffolge));
+	}
 }
@@ -23,8 +23,8 @@ import java.util.UUID;
 import ch.dvbern.oss.vacme.entities.UserPrincipal;
 import ch.dvbern.oss.vacme.jax.PersonalienSucheJax;
 import ch.dvbern.oss.vacme.repo.ImpfdossierRepo;
-import ch.dvbern.oss.vacme.repo.ImpfterminRepo;
 import ch.dvbern.oss.vacme.repo.RegistrierungRepo;
+import ch.dvbern.oss.vacme.service.personaliensuche.RegistrierungSuchindexService;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.params.ParameterizedTest;
@@ -41,7 +41,7 @@ public class PersonalienSucheServiceTest {
 			Mockito.mock(ImpfdossierRepo.class),
 			Mockito.mock(ZertifikatService.class),
 			Mockito.mock(UserPrincipal.class),
-			Mockito.mock(ImpfterminRepo.class)
+			Mockito.mock(RegistrierungSuchindexService.class)
 		);
 	}
 
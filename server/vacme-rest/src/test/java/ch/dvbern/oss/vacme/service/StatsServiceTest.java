@@ -21,20 +21,27 @@ import java.time.LocalDate;
 import java.util.HashMap;
 import java.util.List;
 
+import ch.dvbern.oss.vacme.entities.impfen.Impffolge;
 import ch.dvbern.oss.vacme.entities.impfen.Impfstoff;
 import ch.dvbern.oss.vacme.entities.terminbuchung.OrtDerImpfung;
 import ch.dvbern.oss.vacme.entities.types.KrankheitIdentifier;
 import ch.dvbern.oss.vacme.entities.types.ZulassungsStatus;
 import ch.dvbern.oss.vacme.jax.stats.ImpfstoffTagesReportJax;
+import ch.dvbern.oss.vacme.jax.stats.ImpfzentrumDayStatJax;
 import ch.dvbern.oss.vacme.jax.stats.ImpfzentrumTagesReportJax;
+import ch.dvbern.oss.vacme.repo.OdiTagesStatistikRepo;
 import ch.dvbern.oss.vacme.repo.RegistrierungRepo;
 import ch.dvbern.oss.vacme.repo.StatistikKennzahlEintragRepo;
 import ch.dvbern.oss.vacme.repo.StatsRepo;
+import ch.dvbern.oss.vacme.service.tagesstatistik.OdiTagesKapazitaet;
+import ch.dvbern.oss.vacme.service.tagesstatistik.OdiTagesStatistikEintrag;
+import ch.dvbern.oss.vacme.service.tagesstatistik.OdiTagesStatistikService;
 import ch.dvbern.oss.vacme.util.TestdataCreationUtil;
 import org.checkerframework.checker.nullness.qual.NonNull;
 import org.checkerframework.checker.nullness.qual.Nullable;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.CsvSource;
 import org.mockito.Mockito;
@@ -47,6 +54,8 @@ import static org.mockito.Mockito.mock;
 public class StatsServiceTest {
 
 	private StatsService statsService;
+	private OdiTagesStatistikService odiTagesStatistikServiceMock;
+	private OdiTagesStatistikRepo odiTagesStatistikRepoMock;
 
 	private final OrtDerImpfung odi1 = mockOrtDerImpfung("10");
 	private final Impfstoff moderna = TestdataCreationUtil.createImpfstoffModerna();
@@ -132,7 +141,11 @@ public class StatsServiceTest {
 		Mockito.doAnswer(invocation -> durchgefuerteImpfungN.get(pfizer)).when(statsRepoMock).getDurchgefuerteImpfungN(pfizer, odi1, date);
 		Mockito.doAnswer(invocation -> durchgefuerteImpfungN.get(janssen)).when(statsRepoMock).getDurchgefuerteImpfungN(janssen, odi1, date);
 
-		statsService = new StatsService(statsRepoMock, statistikKennzahlEintragRepoMock, registrierungRepo, impfslotService);
+		odiTagesStatistikServiceMock = mock(OdiTagesStatistikService.class);
+		odiTagesStatistikRepoMock = mock(OdiTagesStatistikRepo.class);
+
+		statsService = new StatsService(statsRepoMock, statistikKennzahlEintragRepoMock, registrierungRepo, impfslotService,
+			odiTagesStatistikServiceMock, odiTagesStatistikRepoMock);
 	}
 
 	private Impfstoff createImpfstoff(@NonNull String name, @NonNull ZulassungsStatus status, int anzahlDosenBenoetigt) {
@@ -198,6 +211,68 @@ public class StatsServiceTest {
 
 	}
 
+	@Test
+	public void testOdiTagesReportAusTagesstatistik() {
+		setValues(4, 5, 6, 0, 0, 0, 0, 0, 0, 0, 0, 0, 1, 2, 3, 7, 8, 9);
+		Mockito.when(odiTagesStatistikServiceMock.isReady()).thenReturn(true);
+		Mockito.when(odiTagesStatistikRepoMock.find(odi1.getId(), date, date, KrankheitIdentifier.COVID)).thenReturn(List.of(
+			eintrag(Impffolge.ERSTE_IMPFUNG, moderna, 3, 9),
+			eintrag(Impffolge.ERSTE_IMPFUNG, pfizer, 0, 5),
+			eintrag(Impffolge.ZWEITE_IMPFUNG, pfizer, 2, 2),
+			eintrag(Impffolge.BOOSTER_IMPFUNG, janssen, 1, 4),
+			eintrag(Impffolge.BOOSTER_IMPFUNG, null, 12, 0)));
+
+		ImpfzentrumTagesReportJax reportJax = statsService.getOdiTagesReport(odi1, date);
+
+		// durchgefuehrt aus der Tagesstatistik, pendent weiterhin aus dem StatsRepo
+		assertValues(reportJax.getImpfstoffTagesReportJaxMap().get(0), "Spikevax", 9, 0, 0, 0, 1, 7);
+		assertValues(reportJax.getImpfstoffTagesReportJaxMap().get(1), "Comirnaty", 5, 2, 0, 0, 2, 8);
+		assertValues(reportJax.getImpfstoffTagesReportJaxMap().get(2), "COVID-19 vaccine", 0, 0, 4, 0, 3, 9);
+		assertValues(reportJax.getImpfstoffTagesReportJaxMap().get(3), null, 0, 0, 0, 4, 5, 6);
+	}
+
+	@Test
+	public void testImpfzentrumStatisticsAusTagesstatistik() {
+		final LocalDate morgen = date.plusDays(1);
+		Mockito.when(odiTagesStatistikServiceMock.isReady()).thenReturn(true);
+		Mockito.when(odiTagesStatistikRepoMock.findKapazitaeten(odi1.getId(), date, morgen)).thenReturn(List.of(
+			new OdiTagesKapazitaet(morgen, 10, 20, 30),
+			new OdiTagesKapazitaet(date, 1, 2, 3)));
+		Mockito.when(odiTagesStatistikRepoMock.find(odi1.getId(), date, morgen, null)).thenReturn(List.of(
+			eintrag(Impffolge.ERSTE_IMPFUNG, null, 4, 0),
+			eintrag(Impffolge.ERSTE_IMPFUNG, moderna, 2, 2),
+			eintrag(Impffolge.ERSTE_IMPFUNG, pfizer, 1, 1),
+			eintrag(Impffolge.BOOSTER_IMPFUNG, janssen, 0, 6)));
+
+		final List<ImpfzentrumDayStatJax> list =
+			statsService.getImpfzentrumStatistics(odi1, date, morgen).getList();
+
+		assertEquals(2, list.size());
+		final ImpfzentrumDayStatJax heute = list.get(0);
+		assertEquals(date, heute.getDatum());
+		assertEquals(1, heute.getKapazitaetTermin1());
+		assertEquals(3, heute.getKapazitaetTerminN());
+		assertEquals(7, heute.getNumberTermin1());
+		assertEquals(3, heute.getNumberImpfung1());
+		// Impfungen ohne gebuchten Termin an diesem Tag zaehlen hier nicht
+		assertEquals(0, heute.getNumberTerminN());
+		assertEquals(0, heute.getNumberImpfungN());
+		assertEquals(morgen, list.get(1).getDatum());
+		assertEquals(20, list.get(1).getKapazitaetTermin2());
+		assertEquals(0, list.get(1).getNumberTermin1());
+	}
+
+	@NonNull
+	private OdiTagesStatistikEintrag eintrag(
+		@NonNull Impffolge impffolge,
+		@Nullable Impfstoff impfstoff,
+		long anzahlGebuchteTermine,
+		long anzahlImpfungen
+	) {
+		return new OdiTagesStatistikEintrag(date, KrankheitIdentifier.COVID, impffolge,
+			impfstoff != null ? impfstoff.getId() : null, anzahlGebuchteTermine, anzahlImpfungen);
+	}
+
 	private OrtDerImpfung mockOrtDerImpfung(String gln) {
 		OrtDerImpfung ortDerImpfung = new OrtDerImpfung();
 		ortDerImpfung.setGlnNummer(gln);
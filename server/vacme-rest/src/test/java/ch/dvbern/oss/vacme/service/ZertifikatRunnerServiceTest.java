@@ -0,0 +1,317 @@
+/*
+ * Copyright (C) 2022 DV Bern AG, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.dvbern.oss.vacme.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ch.dvbern.oss.vacme.entities.base.ID;
+import ch.dvbern.oss.vacme.entities.impfen.Impfdossier;
+import ch.dvbern.oss.vacme.entities.impfen.Impfung;
+import ch.dvbern.oss.vacme.entities.registration.Registrierung;
+import ch.dvbern.oss.vacme.entities.types.KrankheitIdentifier;
+import ch.dvbern.oss.vacme.entities.types.ZertifikatCreationDTO;
+import ch.dvbern.oss.vacme.entities.zertifikat.Zertifikat;
+import ch.dvbern.oss.vacme.entities.zertifikat.ZertifikatQueue;
+import ch.dvbern.oss.vacme.service.covidcertificate.CovidCertBatchType;
+import ch.dvbern.oss.vacme.service.impfinformationen.ImpfinformationenService;
+import ch.dvbern.oss.vacme.service.joblease.JobLeaseService;
+import ch.dvbern.oss.vacme.shared.errors.NoTokenFailureException;
+import ch.dvbern.oss.vacme.util.ImpfinformationDto;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+
+/**
+ * Testet die parallele Verarbeitung (vacme.covidapi.ps.parallelism > 1) der Zertifikat-Batchjobs.
+ */
+class ZertifikatRunnerServiceTest {
+
+	private static final int PARALLELISM = 3;
+	private static final long API_DAUER_MS = 30;
+
+	private ZertifikatService zertifikatService;
+	private ConfirmationService confirmationService;
+	private RegistrierungService registrierungService;
+	private VacmeSettingsService vacmeSettingsService;
+	private ZertifikatRunnerService serviceUnderTest;
+
+	private final List<String> events = Collections.synchronizedList(new ArrayList<>());
+	private final Map<String, UUID> impfungIdByRegNum = new ConcurrentHashMap<>();
+	private final Set<UUID> bereitsErledigt = ConcurrentHashMap.newKeySet();
+	private final AtomicInteger laufendeAufrufe = new AtomicInteger();
+	private final AtomicInteger maxLaufendeAufrufe = new AtomicInteger();
+
+	@BeforeEach
+	void setUp() {
+		zertifikatService = Mockito.mock(ZertifikatService.class);
+		confirmationService = Mockito.mock(ConfirmationService.class);
+		registrierungService = Mockito.mock(RegistrierungService.class);
+		vacmeSettingsService = Mockito.mock(VacmeSettingsService.class);
+		ApplicationPropertyService applicationPropertyService = Mockito.mock(ApplicationPropertyService.class);
+
+		Mockito.when(vacmeSettingsService.isJobLeaseZertifikatEnabled()).thenReturn(false);
+		Mockito.when(vacmeSettingsService.getCovidApiParallelism()).thenReturn(PARALLELISM);
+		Mockito.when(vacmeSettingsService.getCovidApiPrefetchSize()).thenReturn(2);
+		Mockito.when(vacmeSettingsService.getCovidApiBatchSize()).thenReturn(100L);
+		Mockito.when(vacmeSettingsService.getCovidApiSleeptime()).thenReturn(0L);
+		Mockito.when(applicationPropertyService.isBatchJobAlreadyInProgress(ArgumentMatchers.any())).thenReturn(false);
+		Mockito.when(zertifikatService.hasValidToken()).thenReturn(true);
+		Mockito.when(zertifikatService.getImpfinformationenForZertifikatsGeneration(ArgumentMatchers.any()))
+			.thenAnswer(invocation -> createImpfinformationen(invocation.getArgument(0)));
+		Mockito.when(registrierungService.findRegistrierung(ArgumentMatchers.anyString()))
+			.thenAnswer(invocation -> createRegistrierung(invocation.getArgument(0)));
+		Mockito.doAnswer(invocation -> {
+			Registrierung registrierung = invocation.getArgument(0);
+			events.add("notify:" + registrierung.getRegistrierungsnummer());
+			return null;
+		}).when(confirmationService).sendZertifikatsbenachrichtigung(
+			ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any());
+
+		serviceUnderTest = new ZertifikatRunnerService(
+			zertifikatService,
+			confirmationService,
+			registrierungService,
+			vacmeSettingsService,
+			applicationPropertyService,
+			Mockito.mock(ImpfinformationenService.class),
+			Mockito.mock(JobLeaseService.class),
+			new ObjectMapper());
+	}
+
+	@Test
+	void generate_notifiesEachCreatedZertifikatOnceAfterCreation() {
+		List<ZertifikatCreationDTO> dtos = createDtos(10);
+		mockCreation(dtos, Collections.emptySet(), Collections.emptySet());
+
+		serviceUnderTest.generateBatchOfCovidCertificates(CovidCertBatchType.ONLINE);
+
+		for (ZertifikatCreationDTO dto : dtos) {
+			String regNum = dto.getRegistrierungsnummer();
+			Assertions.assertEquals(1, Collections.frequency(events, "create:" + regNum));
+			Assertions.assertEquals(1, Collections.frequency(events, "notify:" + regNum));
+			Assertions.assertTrue(events.indexOf("create:" + regNum) < events.indexOf("notify:" + regNum),
+				"Benachrichtigung vor Erstellung fuer " + regNum);
+		}
+	}
+
+	@Test
+	void generate_skipsImpfungenWithoutGenerateZertifikatFlag() {
+		List<ZertifikatCreationDTO> dtos = createDtos(6);
+		mockCreation(dtos, Collections.emptySet(), Collections.emptySet());
+		UUID erledigteImpfungId = dtos.get(3).getImpfungId();
+		bereitsErledigt.add(erledigteImpfungId);
+
+		serviceUnderTest.generateBatchOfCovidCertificates(CovidCertBatchType.ONLINE);
+
+		Mockito.verify(zertifikatService, Mockito.never()).validateAndTriggerCertificateCreation(
+			ArgumentMatchers.any(ImpfinformationDto.class),
+			ArgumentMatchers.argThat(impfung -> erledigteImpfungId.equals(impfung.getId())),
+			ArgumentMatchers.any());
+		Mockito.verify(zertifikatService, Mockito.times(5)).validateAndTriggerCertificateCreation(
+			ArgumentMatchers.any(ImpfinformationDto.class), ArgumentMatchers.any(Impfung.class), ArgumentMatchers.any());
+	}
+
+	@Test
+	void generate_loadsEntitiesOncePerChunk() {
+		List<ZertifikatCreationDTO> dtos = createDtos(5);
+		mockCreation(dtos, Collections.emptySet(), Collections.emptySet());
+
+		serviceUnderTest.generateBatchOfCovidCertificates(CovidCertBatchType.ONLINE);
+
+		// Pro Chunk von 2 Eintraegen werden die Registrierungen, Impfdossiers und Impfungen einmal gemeinsam geladen
+		Mockito.verify(zertifikatService, Mockito.times(3)).getImpfinformationenForZertifikatsGeneration(
+			ArgumentMatchers.any());
+		Mockito.verify(zertifikatService, Mockito.times(5)).validateAndTriggerCertificateCreation(
+			ArgumentMatchers.any(ImpfinformationDto.class), ArgumentMatchers.any(Impfung.class), ArgumentMatchers.any());
+		Mockito.verify(zertifikatService, Mockito.never()).validateAndTriggerCertificateCreation(
+			ArgumentMatchers.anyString(), ArgumentMatchers.any(), ArgumentMatchers.any());
+	}
+
+	@Test
+	void generate_skipsImpfungNotBelongingToRegistrierung() {
+		List<ZertifikatCreationDTO> dtos = createDtos(4);
+		mockCreation(dtos, Collections.emptySet(), Collections.emptySet());
+		String fremdeImpfung = dtos.get(1).getRegistrierungsnummer();
+		impfungIdByRegNum.put(fremdeImpfung, UUID.randomUUID());
+
+		serviceUnderTest.generateBatchOfCovidCertificates(CovidCertBatchType.ONLINE);
+
+		Mockito.verify(zertifikatService, Mockito.times(3)).validateAndTriggerCertificateCreation(
+			ArgumentMatchers.any(ImpfinformationDto.class), ArgumentMatchers.any(Impfung.class), ArgumentMatchers.any());
+		Assertions.assertFalse(events.contains("create:" + fremdeImpfung));
+	}
+
+	@Test
+	void generate_continuesAfterFailedItem() {
+		List<ZertifikatCreationDTO> dtos = createDtos(8);
+		String fehlerhaft = dtos.get(2).getRegistrierungsnummer();
+		mockCreation(dtos, Set.of(fehlerhaft), Collections.emptySet());
+
+		serviceUnderTest.generateBatchOfCovidCertificates(CovidCertBatchType.ONLINE);
+
+		Mockito.verify(zertifikatService, Mockito.times(8)).validateAndTriggerCertificateCreation(
+			ArgumentMatchers.any(ImpfinformationDto.class), ArgumentMatchers.any(Impfung.class), ArgumentMatchers.any());
+		Assertions.assertFalse(events.contains("notify:" + fehlerhaft));
+		for (ZertifikatCreationDTO dto : dtos) {
+			if (!dto.getRegistrierungsnummer().equals(fehlerhaft)) {
+				Assertions.assertTrue(events.contains("notify:" + dto.getRegistrierungsnummer()));
+			}
+		}
+	}
+
+	@Test
+	void generate_abortsWhenTokenIsMissing() {
+		List<ZertifikatCreationDTO> dtos = createDtos(20);
+		String ohneToken = dtos.get(0).getRegistrierungsnummer();
+		mockCreation(dtos, Collections.emptySet(), Set.of(ohneToken));
+
+		serviceUnderTest.generateBatchOfCovidCertificates(CovidCertBatchType.ONLINE);
+
+		// Nur die bereits laufenden Aufrufe werden noch beendet, danach wird nichts mehr erstellt
+		Mockito.verify(zertifikatService, Mockito.atMost(PARALLELISM)).validateAndTriggerCertificateCreation(
+			ArgumentMatchers.any(ImpfinformationDto.class), ArgumentMatchers.any(Impfung.class), ArgumentMatchers.any());
+		Assertions.assertFalse(events.contains("notify:" + ohneToken));
+	}
+
+	@Test
+	void generate_abortsBeforeCreationWithoutValidToken() {
+		List<ZertifikatCreationDTO> dtos = createDtos(4);
+		mockCreation(dtos, Collections.emptySet(), Collections.emptySet());
+		Mockito.when(zertifikatService.hasValidToken()).thenReturn(false);
+
+		serviceUnderTest.generateBatchOfCovidCertificates(CovidCertBatchType.ONLINE);
+
+		Mockito.verify(zertifikatService, Mockito.never()).validateAndTriggerCertificateCreation(
+			ArgumentMatchers.any(ImpfinformationDto.class), ArgumentMatchers.any(Impfung.class), ArgumentMatchers.any());
+		Mockito.verifyNoInteractions(confirmationService);
+	}
+
+	@Test
+	void generate_limitsConcurrentApiCallsToParallelism() {
+		List<ZertifikatCreationDTO> dtos = createDtos(12);
+		mockCreation(dtos, Collections.emptySet(), Collections.emptySet());
+
+		serviceUnderTest.generateBatchOfCovidCertificates(CovidCertBatchType.ONLINE);
+
+		Assertions.assertTrue(maxLaufendeAufrufe.get() <= PARALLELISM,
+			"Zu viele gleichzeitige Aufrufe: " + maxLaufendeAufrufe.get());
+		Assertions.assertTrue(maxLaufendeAufrufe.get() > 1, "Aufrufe wurden nicht parallel ausgefuehrt");
+	}
+
+	@Test
+	void revoke_limitsConcurrentApiCallsToParallelism() {
+		List<UUID> queueItemIds = new ArrayList<>();
+		for (int i = 0; i < 9; i++) {
+			queueItemIds.add(UUID.randomUUID());
+		}
+		Mockito.when(zertifikatService.findZertifikateForZertifikatsRevocation(
+			ArgumentMatchers.any(), ArgumentMatchers.anyLong())).thenReturn(queueItemIds);
+		Mockito.when(zertifikatService.getZertifikatQueueItem(ArgumentMatchers.any())).thenAnswer(invocation -> {
+			ID<ZertifikatQueue> id = invocation.getArgument(0);
+			ZertifikatQueue queueItem = Mockito.mock(ZertifikatQueue.class);
+			Mockito.when(queueItem.getId()).thenReturn(id.getId());
+			Mockito.when(queueItem.needsToRevoke()).thenReturn(true);
+			Mockito.when(queueItem.isAlreadyRevoked()).thenAnswer(ignored -> simuliereApiAufruf(
+				"revoke:" + id.getId()));
+			return queueItem;
+		});
+
+		serviceUnderTest.revokeBatchOfCovidCertificates(CovidCertBatchType.REVOCATION_ONLINE);
+
+		for (UUID queueItemId : queueItemIds) {
+			Assertions.assertEquals(1, Collections.frequency(events, "revoke:" + queueItemId));
+		}
+		Assertions.assertTrue(maxLaufendeAufrufe.get() <= PARALLELISM,
+			"Zu viele gleichzeitige Aufrufe: " + maxLaufendeAufrufe.get());
+		Assertions.assertTrue(maxLaufendeAufrufe.get() > 1, "Aufrufe wurden nicht parallel ausgefuehrt");
+	}
+
+	private void mockCreation(
+		List<ZertifikatCreationDTO> dtos,
+		Set<String> fehlerhaft,
+		Set<String> ohneToken
+	) {
+		Mockito.when(zertifikatService.findImpfungenForZertifikatsGeneration(
+			ArgumentMatchers.any(), ArgumentMatchers.anyLong())).thenReturn(dtos);
+		Mockito.when(zertifikatService.validateAndTriggerCertificateCreation(
+			ArgumentMatchers.any(ImpfinformationDto.class), ArgumentMatchers.any(Impfung.class), ArgumentMatchers.any()))
+			.thenAnswer(invocation -> {
+				String regNum = invocation.<ImpfinformationDto>getArgument(0).getRegistrierung().getRegistrierungsnummer();
+				if (ohneToken.contains(regNum)) {
+					throw new NoTokenFailureException("Kein Token");
+				}
+				simuliereApiAufruf("create:" + regNum);
+				if (fehlerhaft.contains(regNum)) {
+					throw new IllegalStateException("API Fehler");
+				}
+				return Mockito.mock(Zertifikat.class);
+			});
+	}
+
+	private boolean simuliereApiAufruf(String event) throws InterruptedException {
+		int laufend = laufendeAufrufe.incrementAndGet();
+		maxLaufendeAufrufe.accumulateAndGet(laufend, Math::max);
+		try {
+			Thread.sleep(API_DAUER_MS);
+			events.add(event);
+			return true;
+		} finally {
+			laufendeAufrufe.decrementAndGet();
+		}
+	}
+
+	private List<ZertifikatCreationDTO> createDtos(int anzahl) {
+		List<ZertifikatCreationDTO> dtos = new ArrayList<>();
+		for (int i = 0; i < anzahl; i++) {
+			ZertifikatCreationDTO dto = new ZertifikatCreationDTO("REG" + i, UUID.randomUUID(), null);
+			impfungIdByRegNum.put(dto.getRegistrierungsnummer(), dto.getImpfungId());
+			dtos.add(dto);
+		}
+		return dtos;
+	}
+
+	private Map<String, ImpfinformationDto> createImpfinformationen(Collection<String> regNums) {
+		Map<String, ImpfinformationDto> result = new HashMap<>();
+		for (String regNum : regNums) {
+			Impfung impfung = new Impfung();
+			impfung.setId(impfungIdByRegNum.get(regNum));
+			impfung.setGenerateZertifikat(!bereitsErledigt.contains(impfung.getId()));
+			result.put(regNum, new ImpfinformationDto(
+				KrankheitIdentifier.COVID, createRegistrierung(regNum), impfung, null, new Impfdossier(), null));
+		}
+		return result;
+	}
+
+	private static Registrierung createRegistrierung(String regNum) {
+		Registrierung registrierung = new Registrierung();
+		registrierung.setRegistrierungsnummer(regNum);
+		return registrierung;
+	}
+}
@@ -28,6 +28,7 @@ import ch.dvbern.oss.vacme.jax.registration.ZertifikatJax;
 import ch.dvbern.oss.vacme.repo.ApplicationPropertyRepo;
 import ch.dvbern.oss.vacme.repo.RegistrierungRepo;
 import ch.dvbern.oss.vacme.repo.ZertifikatRepo;
+import ch.dvbern.oss.vacme.service.blobstore.BlobStoreService;
 import ch.dvbern.oss.vacme.service.covidcertificate.CovidCertApiService;
 import ch.dvbern.oss.vacme.service.impfinformationen.ImpfinformationenService;
 import ch.dvbern.oss.vacme.util.ObjectMapperTestUtil;
@@ -83,7 +84,8 @@ class ZertifikatServiceTest {
 			mapper,
 			impfstoffServiceMock,
 			vacmeSettingsService,
-			impfdossierServiceMock);
+			impfdossierServiceMock,
+			Mockito.mock(BlobStoreService.class));
 	}
 
 	@Test
@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2022 DV Bern AG, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package ch.dvbern.oss.vacme.service.blobstore;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import ch.dvbern.oss.vacme.repo.BlobStoreMigrationRepo;
+import ch.dvbern.oss.vacme.service.VacmeSettingsService;
+import ch.dvbern.oss.vacme.service.joblease.JobLease;
+import ch.dvbern.oss.vacme.service.joblease.JobLeaseService;
+import ch.dvbern.oss.vacme.shared.blobstore.BlobStore;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+
+class BlobStoreServiceTest {
+
+	private static final int BATCH_SIZE = 2;
+
+	private BlobStore blobStore;
+	private BlobStoreMigrationRepo blobStoreMigrationRepo;
+	private VacmeSettingsService vacmeSettingsService;
+	private JobLease lease;
+	private BlobStoreService serviceUnderTest;
+
+	@BeforeEach
+	void setUp() {
+		blobStore = Mockito.mock(BlobStore.class);
+		blobStoreMigrationRepo = Mockito.mock(BlobStoreMigrationRepo.class);
+		vacmeSettingsService = Mockito.mock(VacmeSettingsService.class);
+		lease = Mockito.mock(JobLease.class);
+		JobLeaseService jobLeaseService = Mockito.mock(JobLeaseService.class);
+
+		Mockito.when(vacmeSettingsService.isBlobStoreEnabled()).thenReturn(true);
+		Mockito.when(vacmeSettingsService.getBlobStoreMigrationBatchSize()).thenReturn(BATCH_SIZE);
+		Mockito.when(vacmeSettingsService.getBlobStoreGcGraceMinutes()).thenReturn(60);
+		Mockito.when(lease.isValid()).thenReturn(true);
+		Mockito.when(jobLeaseService.runWithLease(ArgumentMatchers.anyString(), ArgumentMatchers.anyInt(), ArgumentMatchers.any()))
+			.thenAnswer(invocation -> {
+				Consumer<JobLease> job = invocation.getArgument(2);
+				job.accept(lease);
+				return true;
+			});
+		Mockito.when(blobStoreMigrationRepo.findNichtAusgelagert(ArgumentMatchers.any(), ArgumentMatchers.anyString(), ArgumentMatchers.anyInt()))
+			.thenReturn(Collections.emptyList());
+		Mockito.when(blobStoreMigrationRepo.auslagern(ArgumentMatchers.any(), ArgumentMatchers.anyString(), ArgumentMatchers.any()))
+			.thenAnswer(invocation -> Optional.of("hash-" + invocation.getArgument(1)));
+
+		serviceUnderTest = new BlobStoreService(blobStore, blobStoreMigrationRepo, vacmeSettingsService, jobLeaseService);
+	}
+
+	@Test
+	void migrate_pagesThroughAllRows() {
+		Mockito.when(blobStoreMigrationRepo.findNichtAusgelagert(BlobTabelle.REGISTRIERUNG_FILE, "", BATCH_SIZE))
+			.thenReturn(List.of("1", "2"));
+		Mockito.when(blobStoreMigrationRepo.findNichtAusgelagert(BlobTabelle.REGISTRIERUNG_FILE, "2", BATCH_SIZE))
+			.thenReturn(List.of("3"));
+
+		serviceUnderTest.migrate();
+
+		for (String id : List.of("1", "2", "3")) {
+			Mockito.verify(blobStoreMigrationRepo)
+				.auslagern(ArgumentMatchers.eq(BlobTabelle.REGISTRIERUNG_FILE), ArgumentMatchers.eq(id), ArgumentMatchers.any());
+		}
+		Mockito.verify(blobStoreMigrationRepo, Mockito.never())
+			.findNichtAusgelagert(BlobTabelle.REGISTRIERUNG_FILE, "3", BATCH_SIZE);
+		for (BlobTabelle tabelle : BlobTabelle.values()) {
+			Mockito.verify(blobStoreMigrationRepo).findNichtAusgelagert(tabelle, "", BATCH_SIZE);
+		}
+	}
+
+	@Test
+	void migrate_continuesAfterFailedRow() {
+		Mockito.when(blobStoreMigrationRepo.findNichtAusgelagert(BlobTabelle.ZERTIFIKAT_FILE, "", BATCH_SIZE))
+			.thenReturn(List.of("1", "2"));
+		Mockito.when(blobStoreMigrationRepo.findNichtAusgelagert(BlobTabelle.ZERTIFIKAT_FILE, "2", BATCH_SIZE))
+			.thenReturn(List.of("3"));
+		Mockito.when(blobStoreMigrationRepo.auslagern(ArgumentMatchers.eq(BlobTabelle.ZERTIFIKAT_FILE), ArgumentMatchers.eq("1"), ArgumentMatchers.any()))
+			.thenThrow(new IllegalStateException("kaputt"));
+
+		serviceUnderTest.migrate();
+
+		// Die fehlerhafte Zeile bleibt liegen, geblaettert wird trotzdem weiter
+		Mockito.verify(blobStoreMigrationRepo)
+			.auslagern(ArgumentMatchers.eq(BlobTabelle.ZERTIFIKAT_FILE), ArgumentMatchers.eq("2"), ArgumentMatchers.any());
+		Mockito.verify(blobStoreMigrationRepo)
+			.auslagern(ArgumentMatchers.eq(BlobTabelle.ZERTIFIKAT_FILE), ArgumentMatchers.eq("3"), ArgumentMatchers.any());
+	}
+
+	@Test
+	void migrate_stopsWhenLeaseIsLost() {
+		Mockito.when(blobStoreMigrationRepo.findNichtAusgelagert(ArgumentMatchers.any(), ArgumentMatchers.anyString(), ArgumentMatchers.anyInt()))
+			.thenReturn(List.of("1", "2"));
+		Mockito.when(lease.isValid()).thenReturn(true, false);
+
+		serviceUnderTest.migrate();
+
+		Mockito.verify(blobStoreMigrationRepo, Mockito.times(1))
+			.findNichtAusgelagert(ArgumentMatchers.any(), ArgumentMatchers.anyString(), ArgumentMatchers.anyInt());
+		Mockito.verify(blobStoreMigrationRepo, Mockito.times(2))
+			.auslagern(ArgumentMatchers.any(), ArgumentMatchers.anyString(), ArgumentMatchers.any());
+	}
+
+	@Test
+	void migrate_doesNothingWhenDisabled() {
+		Mockito.when(vacmeSettingsService.isBlobStoreEnabled()).thenReturn(false);
+
+		serviceUnderTest.migrate();
+
+		Mockito.verifyNoInteractions(blobStoreMigrationRepo);
+	}
+
+	@Test
+	void collectGarbage_deletesOnlyUnreferencedContent() {
+		Mockito.when(blobStore.streamContentHashes(ArgumentMatchers.any()))
+			.thenReturn(Stream.of("referenziert", "verwaist1", "verwaist2"));
+		Mockito.when(blobStoreMigrationRepo.findReferenzierteContentHashes(ArgumentMatchers.anyCollection()))
+			.thenReturn(Set.of("referenziert"));
+		Mockito.when(blobStore.deleteIfAbgelegtVor(ArgumentMatchers.anyString(), ArgumentMatchers.any())).thenReturn(true);
+
+		serviceUnderTest.collectGarbage();
+
+		// Zwei Batches
+		Mockito.verify(blobStoreMigrationRepo).findReferenzierteContentHashes(List.of("referenziert", "verwaist1"));
+		Mockito.verify(blobStoreMigrationRepo).findReferenzierteContentHashes(List.of("verwaist2"));
+		Mockito.verify(blobStore, Mockito.never()).deleteIfAbgelegtVor(ArgumentMatchers.eq("referenziert"), ArgumentMatchers.any());
+		Mockito.verify(blobStore).deleteIfAbgelegtVor(ArgumentMatchers.eq("verwaist1"), ArgumentMatchers.any());
+		Mockito.verify(blobStore).deleteIfAbgelegtVor(ArgumentMatchers.eq("verwaist2"), ArgumentMatchers.any());
+	}
+
+	@Test
+	void collectGarbage_keepsContentWithinGracePeriod() {
+		Instant vorher = Instant.now().minusSeconds(3600);
+		Mockito.when(blobStore.streamContentHashes(ArgumentMatchers.any())).thenReturn(Stream.empty());
+
+		serviceUnderTest.collectGarbage();
+
+		Mockito.verify(blobStore).streamContentHashes(ArgumentMatchers.argThat(abgelegtVor ->
+			!abgelegtVor.isBefore(vorher) && abgelegtVor.isBefore(Instant.now().minusSeconds(3500))));
+	}
+
+	@Test
+	void collectGarbage_runsEvenWhenDisabled() {
+		Mockito.when(vacmeSettingsService.isBlobStoreEnabled()).thenReturn(false);
+		Mockito.when(blobStore.streamContentHashes(ArgumentMatchers.any())).thenReturn(Stream.of("verwaist"));
+		Mockito.when(blobStoreMigrationRepo.findReferenzierteContentHashes(ArgumentMatchers.anyCollection()))
+			.thenReturn(Set.of());
+
+		serviceUnderTest.collectGarbage();
+
+		Mockito.verify(blobStore).deleteIfAbgelegtVor(ArgumentMatchers.eq("verwaist"), ArgumentMatchers.any());
+	}
+
+	@Test
+	void collectGarbage_stopsWhenLeaseIsLost() {
+		Mockito.when(blobStore.streamContentHashes(ArgumentMatchers.any()))
+			.thenReturn(Stream.of("verwaist1", "verwaist2", "verwaist3"));
+		Mockito.when(blobStoreMigrationRepo.findReferenzierteContentHashes(ArgumentMatchers.anyCollection()))
+			.thenReturn(Set.of());
+		Mockito.when(lease.isValid()).thenReturn(true, false);
+
+		serviceUnderTest.collectGarbage();
+
+		Mockito.verify(blobStore, Mockito.times(2)).deleteIfAbgelegtVor(ArgumentMatchers.anyString(), ArgumentMatchers.any());
+		Mockito.verify(blobStore, Mockito.never()).deleteIfAbgelegtVor(ArgumentMatchers.eq("verwaist3"), ArgumentMatchers.any());
+	}
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2022 DV Bern AG, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.dvbern.oss.vacme.service.blobstore;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import ch.dvbern.oss.vacme.service.VacmeSettingsService;
+import ch.dvbern.oss.vacme.shared.errors.AppFailureException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+
+class FileSystemBlobStoreTest {
+
+	private static final byte[] CONTENT = "Hallo VacMe".getBytes(StandardCharsets.UTF_8);
+
+	@TempDir
+	Path root;
+
+	private FileSystemBlobStore blobStore;
+
+	@BeforeEach
+	void setUp() {
+		VacmeSettingsService settingsService = Mockito.mock(VacmeSettingsService.class);
+		Mockito.when(settingsService.getBlobStoreFilesystemRoot()).thenReturn(root.toString());
+		blobStore = new FileSystemBlobStore(settingsService);
+	}
+
+	@Test
+	void putShouldStoreContentUnderItsHash() throws Exception {
+		String hash = blobStore.put(new ByteArrayInputStream(CONTENT));
+
+		Assertions.assertTrue(hash.matches("[0-9a-f]{64}"));
+		Assertions.assertTrue(blobStore.exists(hash));
+		Assertions.assertEquals(CONTENT.length, blobStore.size(hash));
+		Assertions.assertEquals(
+			root.resolve(hash.substring(0, 2)).resolve(hash.substring(2, 4)).resolve(hash),
+			blobStore.getLocalPath(hash).orElseThrow());
+		try (InputStream stream = blobStore.open(hash)) {
+			Assertions.assertArrayEquals(CONTENT, stream.readAllBytes());
+		}
+	}
+
+	@Test
+	void putShouldStoreIdenticalContentOnlyOnce() throws Exception {
+		String hash1 = blobStore.put(new ByteArrayInputStream(CONTENT));
+		String hash2 = blobStore.put(new ByteArrayInputStream(CONTENT));
+
+		Assertions.assertEquals(hash1, hash2);
+		// keine temporaeren Dateien bleiben liegen
+		try (var tmpFiles = Files.list(root.resolve("tmp"))) {
+			Assertions.assertEquals(0, tmpFiles.count());
+		}
+	}
+
+	@Test
+	void differentContentShouldGetDifferentHash() {
+		String hash1 = blobStore.put(new ByteArrayInputStream(CONTENT));
+		String hash2 = blobStore.put(new ByteArrayInputStream("Anderer Inhalt".getBytes(StandardCharsets.UTF_8)));
+
+		Assertions.assertNotEquals(hash1, hash2);
+	}
+
+	@Test
+	void openShouldFailForUnknownHash() {
+		String unknown = "0".repeat(64);
+
+		Assertions.assertFalse(blobStore.exists(unknown));
+		Assertions.assertThrows(AppFailureException.class, () -> blobStore.open(unknown));
+	}
+
+	@Test
+	void invalidHashShouldNotResolveOutsideOfRoot() {
+		Assertions.assertThrows(AppFailureException.class, () -> blobStore.open("../../etc/passwd"));
+		Assertions.assertThrows(AppFailureException.class, () -> blobStore.getLocalPath("AB" + "0".repeat(62)));
+	}
+
+	@Test
+	void putShouldMarkExistingContentAsNew() throws Exception {
+		String hash = blobStore.put(new ByteArrayInputStream(CONTENT));
+		Path file = blobStore.getLocalPath(hash).orElseThrow();
+		Files.setLastModifiedTime(file, FileTime.from(Instant.now().minus(1, ChronoUnit.DAYS)));
+
+		blobStore.put(new ByteArrayInputStream(CONTENT));
+
+		Assertions.assertTrue(Files.getLastModifiedTime(file).toInstant().isAfter(Instant.now().minus(1, ChronoUnit.HOURS)));
+	}
+
+	@Test
+	void streamContentHashesShouldOnlyListOldContent() throws Exception {
+		String alt = blobStore.put(new ByteArrayInputStream(CONTENT));
+		blobStore.put(new ByteArrayInputStream("Neuer Inhalt".getBytes(StandardCharsets.UTF_8)));
+		Files.setLastModifiedTime(blobStore.getLocalPath(alt).orElseThrow(),
+			FileTime.from(Instant.now().minus(1, ChronoUnit.DAYS)));
+		Path tmpFile = Files.writeString(root.resolve("tmp").resolve("0".repeat(64)), "unvollstaendig");
+		Files.setLastModifiedTime(tmpFile, FileTime.from(Instant.now().minus(1, ChronoUnit.DAYS)));
+
+		try (Stream<String> hashes = blobStore.streamContentHashes(Instant.now().minus(1, ChronoUnit.HOURS))) {
+			Assertions.assertEquals(List.of(alt), hashes.collect(Collectors.toList()));
+		}
+	}
+
+	@Test
+	void streamContentHashesShouldBeEmptyWithoutRoot() {
+		VacmeSettingsService settingsService = Mockito.mock(VacmeSettingsService.class);
+		Mockito.when(settingsService.getBlobStoreFilesystemRoot()).thenReturn(root.resolve("fehlt").toString());
+
+		try (Stream<String> hashes = new FileSystemBlobStore(settingsService).streamContentHashes(Instant.now())) {
+			Assertions.assertEquals(0, hashes.count());
+		}
+	}
+
+	@Test
+	void deleteIfAbgelegtVorShouldKeepContentStoredAgain() throws Exception {
+		String hash = blobStore.put(new ByteArrayInputStream(CONTENT));
+		Instant abgelegtVor = Instant.now().minus(1, ChronoUnit.HOURS);
+
+		Assertions.assertFalse(blobStore.deleteIfAbgelegtVor(hash, abgelegtVor));
+		Assertions.assertTrue(blobStore.exists(hash));
+
+		Files.setLastModifiedTime(blobStore.getLocalPath(hash).orElseThrow(),
+			FileTime.from(Instant.now().minus(1, ChronoUnit.DAYS)));
+		Assertions.assertTrue(blobStore.deleteIfAbgelegtVor(hash, abgelegtVor));
+		Assertions.assertFalse(blobStore.exists(hash));
+		Assertions.assertFalse(blobStore.deleteIfAbgelegtVor(hash, abgelegtVor));
+	}
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2022 DV Bern AG, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.dvbern.oss.vacme.service.booster;
+
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class BoosterRecalculationMetricsTest {
+
+	private MetricRegistry metricRegistry;
+	private BoosterRecalculationMetrics metrics;
+
+	@BeforeEach
+	void setUp() {
+		metricRegistry = mock(MetricRegistry.class);
+		metrics = new BoosterRecalculationMetrics(metricRegistry);
+	}
+
+	@Test
+	void throughputOfLastRun() {
+		metrics.runStarted();
+		metrics.runFinished(500, 2000);
+		Assertions.assertEquals(250d, metrics.getLastRunThroughput(), 0.001);
+
+		metrics.runFinished(0, 0);
+		Assertions.assertEquals(0d, metrics.getLastRunThroughput(), 0.001);
+	}
+
+	@Test
+	void gaugesAreRegisteredOnlyOnce() {
+		metrics.runStarted();
+		metrics.partitionStarted(0, 10);
+		metrics.itemProcessed(0, true);
+		metrics.partitionStarted(1, 10);
+		metrics.itemProcessed(1, false);
+
+		metrics.runStarted();
+		metrics.partitionStarted(0, 5);
+		metrics.itemProcessed(0, true);
+
+		// 3 globale Gauges + 2 Gauges pro Partition
+		verify(metricRegistry, times(3 + 2 * 2)).register(any(), any(), any());
+	}
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2022 DV Bern AG, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.dvbern.oss.vacme.service.cache;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
+
+import ch.dvbern.oss.vacme.entities.types.KrankheitIdentifier;
+import ch.dvbern.oss.vacme.repo.CacheInvalidationRepo;
+import ch.dvbern.oss.vacme.service.VacmeSettingsService;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import static org.mockito.Mockito.mock;
+
+class CacheInvalidationServiceTest {
+
+	private Cache<KrankheitIdentifier, Boolean> cacheNode1;
+	private Cache<KrankheitIdentifier, Boolean> cacheNode2;
+	private CacheInvalidationService serviceNode1;
+
+	@BeforeEach
+	void setUp() {
+		TransactionSynchronizationRegistry tsr = mock(TransactionSynchronizationRegistry.class);
+		Mockito.when(tsr.getTransactionStatus()).thenReturn(Status.STATUS_NO_TRANSACTION);
+		// Beide "Nodes" haengen am selben lokalen Transport
+		LocalCacheInvalidationTransport transport = new LocalCacheInvalidationTransport(tsr);
+
+		CacheRegistry registryNode1 = new CacheRegistry(mock(MetricRegistry.class));
+		CacheRegistry registryNode2 = new CacheRegistry(mock(MetricRegistry.class));
+		cacheNode1 = CacheBuilder.newBuilder().recordStats().build();
+		cacheNode2 = CacheBuilder.newBuilder().recordStats().build();
+		registryNode1.register(VacmeCacheName.KRANKHEIT_NO_FREIE_TERMINE, cacheNode1);
+		registryNode2.register(VacmeCacheName.KRANKHEIT_NO_FREIE_TERMINE, cacheNode2);
+
+		serviceNode1 = new CacheInvalidationService(registryNode1, transport, tsr);
+		CacheInvalidationService serviceNode2 = new CacheInvalidationService(registryNode2, transport, tsr);
+		transport.start(serviceNode1::onMessage);
+		transport.start(serviceNode2::onMessage);
+
+		for (KrankheitIdentifier krankheit : KrankheitIdentifier.values()) {
+			cacheNode1.put(krankheit, true);
+			cacheNode2.put(krankheit, true);
+		}
+	}
+
+	@Test
+	void invalidateKeyOnAllNodes() {
+		serviceNode1.invalidate(VacmeCacheName.KRANKHEIT_NO_FREIE_TERMINE, KrankheitIdentifier.COVID);
+
+		Assertions.assertNull(cacheNode1.getIfPresent(KrankheitIdentifier.COVID));
+		Assertions.assertNull(cacheNode2.getIfPresent(KrankheitIdentifier.COVID));
+		Assertions.assertEquals(KrankheitIdentifier.values().length - 1, cacheNode1.size());
+		Assertions.assertEquals(KrankheitIdentifier.values().length - 1, cacheNode2.size());
+	}
+
+	@Test
+	void invalidateAllOnAllNodes() {
+		serviceNode1.invalidateAll(VacmeCacheName.KRANKHEIT_NO_FREIE_TERMINE);
+
+		Assertions.assertEquals(0, cacheNode1.size());
+		Assertions.assertEquals(0, cacheNode2.size());
+	}
+
+	@Test
+	void otherCachesAreNotAffected() {
+		serviceNode1.invalidateAll(VacmeCacheName.APPLICATION_PROPERTY);
+
+		Assertions.assertEquals(KrankheitIdentifier.values().length, cacheNode1.size());
+		Assertions.assertEquals(KrankheitIdentifier.values().length, cacheNode2.size());
+	}
+
+	@Test
+	void dbTransportDeliversEachRowOnlyOnce() {
+		CacheInvalidationRepo repo = mock(CacheInvalidationRepo.class);
+		Map<Long, CacheInvalidationMessage> rows = new LinkedHashMap<>();
+		rows.put(1L, new CacheInvalidationMessage("node", VacmeCacheName.SETTINGS, null));
+		rows.put(2L, new CacheInvalidationMessage("node", VacmeCacheName.PLZ_KANTON, "3000"));
+		Mockito.when(repo.findNewerThan(DbCacheInvalidationTransport.POLL_WINDOW_SECONDS)).thenReturn(rows);
+		DbCacheInvalidationTransport transport = new DbCacheInvalidationTransport(
+			repo, mock(VacmeSettingsService.class), mock(TransactionSynchronizationRegistry.class));
+
+		List<CacheInvalidationMessage> received = new ArrayList<>();
+		transport.poll(received::add);
+		// die Zeilen sind beim naechsten Poll immer noch im Fenster
+		transport.poll(received::add);
+
+		Assertions.assertEquals(2, received.size());
+		Assertions.assertEquals(VacmeCacheName.SETTINGS, received.get(0).getCacheName());
+		Assertions.assertEquals("3000", received.get(1).getCacheKey());
+	}
+
+	@Test
+	void dbTransportPublishesOnlyAfterCommit() {
+		CacheInvalidationRepo repo = mock(CacheInvalidationRepo.class);
+		TransactionSynchronizationRegistry tsr = mock(TransactionSynchronizationRegistry.class);
+		Mockito.when(tsr.getTransactionStatus()).thenReturn(Status.STATUS_ACTIVE);
+		DbCacheInvalidationTransport transport = new DbCacheInvalidationTransport(
+			repo, mock(VacmeSettingsService.class), tsr);
+		CacheInvalidationMessage committed = new CacheInvalidationMessage("node", VacmeCacheName.SETTINGS, null);
+		CacheInvalidationMessage rolledBack = new CacheInvalidationMessage("node", VacmeCacheName.PLZ_KANTON, "3000");
+
+		transport.publish(committed);
+		transport.publish(rolledBack);
+		// In der laufenden Transaktion wird noch nichts geschrieben
+		Mockito.verify(repo, Mockito.never()).create(Mockito.any());
+
+		ArgumentCaptor<Synchronization> synchronizations = ArgumentCaptor.forClass(Synchronization.class);
+		Mockito.verify(tsr, Mockito.times(2)).registerInterposedSynchronization(synchronizations.capture());
+		synchronizations.getAllValues().get(0).afterCompletion(Status.STATUS_COMMITTED);
+		synchronizations.getAllValues().get(1).afterCompletion(Status.STATUS_ROLLEDBACK);
+		transport.stop();
+
+		Mockito.verify(repo).create(committed);
+		Mockito.verify(repo, Mockito.never()).create(rolledBack);
+	}
+}
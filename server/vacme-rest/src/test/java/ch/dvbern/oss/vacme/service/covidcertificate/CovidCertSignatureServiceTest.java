@@ -18,6 +18,7 @@
 package ch.dvbern.oss.vacme.service.covidcertificate;
 
 import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
 import java.security.InvalidKeyException;
 import java.security.KeyFactory;
 import java.security.NoSuchAlgorithmException;
@@ -28,7 +29,13 @@ import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
 import java.security.spec.InvalidKeySpecException;
 import java.security.spec.PKCS8EncodedKeySpec;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import io.smallrye.jwt.auth.principal.ParseException;
 import org.apache.commons.lang3.Validate;
@@ -276,6 +283,37 @@ class CovidCertSignatureServiceTest {
 		PKCS8EncodedKeySpec keySpec = new PKCS8EncodedKeySpec(encoded);
 		return keyFactory.generatePrivate(keySpec);
 	}
-}
 
+	@Test
+	void normalizeJsonInPlaceMatchesNormalizeJson() {
+		String payload = "{\n  \"name\": {\"familyName\": \"M\u00fcller \u0110in\u0111i\u0107\",\r\n\t\"givenName\": \"Ren\u00e9 \u20ac\"}\n}";
+		byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+
+		int length = CovidCertSignatureService.normalizeJsonInPlace(bytes);
+
+		Assertions.assertArrayEquals(
+			normalizeJson(payload).getBytes(StandardCharsets.UTF_8),
+			Arrays.copyOf(bytes, length));
+	}
 
+	@Test
+	void signReusesSignatureAcrossCallsAndThreads() throws Exception {
+		String payload = "{\"name\": {\"familyName\": \"Federer\", \"givenName\": \"Roger\"}}";
+		String expected = covidCertSignatureService.sign(payload);
+		Assertions.assertEquals(expected, covidCertSignatureService.sign(payload));
+		Assertions.assertNotEquals(expected, covidCertSignatureService.sign(payload.replace("Roger", "Markus")));
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<String>> results = new ArrayList<>();
+			for (int i = 0; i < 20; i++) {
+				results.add(executor.submit(() -> covidCertSignatureService.sign(payload)));
+			}
+			for (Future<String> result : results) {
+				Assertions.assertEquals(expected, result.get());
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2023 DV Bern AG, Switzerland This program is free software: you can redistribute it and/or modify it
+ *  under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version. This program is distributed in the hope that it
+ * will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Affero General Public License for more details. You should have received a copy of
+ *  the GNU Affero General Public License along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.dvbern.oss.vacme.service.d3api;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+import ch.dvbern.oss.vacme.entities.base.ApplicationProperty;
+import ch.dvbern.oss.vacme.entities.base.ApplicationPropertyKey;
+import ch.dvbern.oss.vacme.entities.base.ID;
+import ch.dvbern.oss.vacme.entities.impfen.Impfung;
+import ch.dvbern.oss.vacme.repo.ImpfungRepo;
+import ch.dvbern.oss.vacme.service.ApplicationPropertyService;
+import ch.dvbern.oss.vacme.service.VacmeSettingsService;
+import ch.dvbern.oss.vacme.service.joblease.JobLease;
+import ch.dvbern.oss.vacme.service.joblease.JobLeaseService;
+import io.quarkus.security.identity.CurrentIdentityAssociation;
+import io.quarkus.security.identity.SecurityIdentity;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+class ArchivierungServiceTest {
+
+	private ArchivierungService archivierungService;
+	private ImpfungRepo impfungRepo;
+	private D3ApiService d3ApiService;
+	private JobLease lease;
+
+	@BeforeEach
+	@SuppressWarnings("unchecked")
+	void setUp() {
+		impfungRepo = Mockito.mock(ImpfungRepo.class);
+		d3ApiService = Mockito.mock(D3ApiService.class);
+
+		ApplicationPropertyService applicationPropertyService = Mockito.mock(ApplicationPropertyService.class);
+		ApplicationProperty batchSize = Mockito.mock(ApplicationProperty.class);
+		Mockito.when(batchSize.getValue()).thenReturn("100");
+		Mockito.when(applicationPropertyService.getByKeyOptional(ApplicationPropertyKey.ARCHIVIERUNG_JOB_BATCH_SIZE))
+			.thenReturn(Optional.of(batchSize));
+
+		VacmeSettingsService settingsService = Mockito.mock(VacmeSettingsService.class);
+		Mockito.when(settingsService.getArchivierungRenderParallelism()).thenReturn(3);
+		Mockito.when(settingsService.getArchivierungUploadParallelism()).thenReturn(2);
+		Mockito.when(settingsService.getArchivierungUploadQueueSize()).thenReturn(1);
+
+		lease = Mockito.mock(JobLease.class);
+		Mockito.when(lease.isValid()).thenReturn(true);
+		JobLeaseService jobLeaseService = Mockito.mock(JobLeaseService.class);
+		Mockito.when(jobLeaseService.runWithLease(Mockito.anyString(), Mockito.anyInt(), Mockito.any()))
+			.thenAnswer(invocation -> {
+				invocation.<Consumer<JobLease>>getArgument(2).accept(lease);
+				return true;
+			});
+		CurrentIdentityAssociation association = Mockito.mock(CurrentIdentityAssociation.class);
+		Mockito.when(association.getIdentity()).thenReturn(Mockito.mock(SecurityIdentity.class));
+
+		archivierungService = new ArchivierungService(
+			applicationPropertyService,
+			impfungRepo,
+			d3ApiService,
+			settingsService,
+			jobLeaseService,
+			association);
+	}
+
+	@Test
+	void allRenderedDokumenteAreUploadedAndMarked() {
+		List<UUID> impfungIds = createImpfungIds(10);
+		Mockito.when(impfungRepo.getImpfungenZuArchivieren(100L)).thenReturn(impfungIds);
+		Mockito.when(d3ApiService.createArchivierungDokument(Mockito.any()))
+			.thenAnswer(invocation -> Optional.of(createDokument(invocation.<ID<Impfung>>getArgument(0).getId())));
+
+		archivierungService.archive();
+
+		Mockito.verify(d3ApiService, Mockito.times(10)).upload(Mockito.any());
+		for (UUID impfungId : impfungIds) {
+			Mockito.verify(d3ApiService).markAsArchiviert(Impfung.toId(impfungId));
+		}
+	}
+
+	@Test
+	void failedRenderIsNotUploadedOrMarked() {
+		List<UUID> impfungIds = createImpfungIds(3);
+		UUID fehlerhaft = impfungIds.get(1);
+		Mockito.when(impfungRepo.getImpfungenZuArchivieren(100L)).thenReturn(impfungIds);
+		Mockito.when(d3ApiService.createArchivierungDokument(Mockito.any()))
+			.thenAnswer(invocation -> {
+				UUID impfungId = invocation.<ID<Impfung>>getArgument(0).getId();
+				if (impfungId.equals(fehlerhaft)) {
+					throw new IllegalStateException("Aktuell koennen nur COVID Impfungen archiviert werden");
+				}
+				return Optional.of(createDokument(impfungId));
+			});
+
+		archivierungService.archive();
+
+		Mockito.verify(d3ApiService, Mockito.times(2)).upload(Mockito.any());
+		Mockito.verify(d3ApiService).markAsArchiviert(Impfung.toId(impfungIds.get(0)));
+		Mockito.verify(d3ApiService).markAsArchiviert(Impfung.toId(impfungIds.get(2)));
+		Mockito.verify(d3ApiService, Mockito.never()).markAsArchiviert(Impfung.toId(fehlerhaft));
+	}
+
+	@Test
+	void failedUploadIsNotMarked() {
+		List<UUID> impfungIds = createImpfungIds(2);
+		Mockito.when(impfungRepo.getImpfungenZuArchivieren(100L)).thenReturn(impfungIds);
+		Mockito.when(d3ApiService.createArchivierungDokument(Mockito.any()))
+			.thenAnswer(invocation -> Optional.of(createDokument(invocation.<ID<Impfung>>getArgument(0).getId())));
+		Mockito.doThrow(new IllegalStateException("D3 nicht erreichbar")).when(d3ApiService).upload(Mockito.any());
+
+		archivierungService.archive();
+
+		Mockito.verify(d3ApiService, Mockito.times(2)).upload(Mockito.any());
+		Mockito.verify(d3ApiService, Mockito.never()).markAsArchiviert(Mockito.any());
+	}
+
+	@Test
+	void nothingIsRenderedWithoutValidLease() {
+		Mockito.when(lease.isValid()).thenReturn(false);
+		Mockito.when(impfungRepo.getImpfungenZuArchivieren(100L)).thenReturn(createImpfungIds(3));
+
+		archivierungService.archive();
+
+		Mockito.verify(d3ApiService, Mockito.never()).createArchivierungDokument(Mockito.any());
+		Mockito.verify(d3ApiService, Mockito.never()).upload(Mockito.any());
+	}
+
+	private List<UUID> createImpfungIds(int size) {
+		List<UUID> impfungIds = new ArrayList<>();
+		for (int i = 0; i < size; i++) {
+			impfungIds.add(UUID.randomUUID());
+		}
+		return impfungIds;
+	}
+
+	private ArchivierungDokument createDokument(UUID impfungId) {
+		return new ArchivierungDokument(impfungId, "ABC123", "Impfdokumentation", new byte[] { 1, 2, 3 });
+	}
+}
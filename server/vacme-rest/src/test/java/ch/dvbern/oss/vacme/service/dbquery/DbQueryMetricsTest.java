@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2022 DV Bern AG, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.dvbern.oss.vacme.service.dbquery;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.transaction.Status;
+import javax.transaction.TransactionSynchronizationRegistry;
+
+import ch.dvbern.oss.vacme.service.VacmeSettingsService;
+import ch.dvbern.oss.vacme.smartdb.QueryExecution;
+import org.eclipse.microprofile.metrics.Counter;
+import org.eclipse.microprofile.metrics.Histogram;
+import org.eclipse.microprofile.metrics.Metadata;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.eclipse.microprofile.metrics.Timer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatcher;
+import org.mockito.Mockito;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class DbQueryMetricsTest {
+
+	private MetricRegistry metricRegistry;
+	private TransactionSynchronizationRegistry tsr;
+	private Counter slowCounter;
+	private Counter nPlusOneCounter;
+	private AtomicInteger describeCalls;
+	private List<Boolean> describedMitParametern;
+	private VacmeSettingsService settings;
+	private DbQueryMetrics metrics;
+
+	@BeforeEach
+	void setUp() {
+		metricRegistry = mock(MetricRegistry.class);
+		slowCounter = mock(Counter.class);
+		nPlusOneCounter = mock(Counter.class);
+		Mockito.when(metricRegistry.timer(any(Metadata.class), any())).thenReturn(mock(Timer.class));
+		Mockito.when(metricRegistry.histogram(any(Metadata.class), any())).thenReturn(mock(Histogram.class));
+		Mockito.when(metricRegistry.counter(argThat(isNamed("vacme.db.query.slow")), any())).thenReturn(slowCounter);
+		Mockito.when(metricRegistry.counter(argThat(isNamed("vacme.db.query.nplusone")), any()))
+			.thenReturn(nPlusOneCounter);
+
+		// Ressourcen der "laufenden Transaktion"
+		Map<Object, Object> txResources = new HashMap<>();
+		tsr = mock(TransactionSynchronizationRegistry.class);
+		Mockito.when(tsr.getTransactionStatus()).thenReturn(Status.STATUS_ACTIVE);
+		Mockito.when(tsr.getResource(any())).thenAnswer(invocation -> txResources.get(invocation.getArgument(0)));
+		Mockito.doAnswer(invocation -> txResources.put(invocation.getArgument(0), invocation.getArgument(1)))
+			.when(tsr).putResource(any(), any());
+
+		settings = mock(VacmeSettingsService.class);
+		Mockito.when(settings.isDbInstrumentationEnabled()).thenReturn(true);
+		Mockito.when(settings.getDbSlowQueryThresholdMs()).thenReturn(100L);
+		Mockito.when(settings.getDbSlowQueryLogSampleRate()).thenReturn(0d);
+		Mockito.when(settings.getDbNPlusOneThreshold()).thenReturn(3);
+
+		describeCalls = new AtomicInteger();
+		describedMitParametern = new ArrayList<>();
+		metrics = new DbQueryMetrics(metricRegistry, settings, tsr);
+	}
+
+	@Test
+	void metricsAreRegisteredOncePerCallSite() {
+		metrics.queryExecuted(execution("ImpfungRepo.getByImpftermin", 5));
+		metrics.queryExecuted(execution("ImpfungRepo.getByImpftermin", 5));
+		metrics.queryExecuted(execution("ImpfterminRepo.findFreienTermin", 5));
+
+		verify(metricRegistry, times(2)).timer(any(Metadata.class), any());
+	}
+
+	@Test
+	void nPlusOneIsReportedOncePerTransaction() {
+		for (int i = 0; i < 10; i++) {
+			metrics.queryExecuted(execution("ImpfungRepo.getByImpftermin", 5));
+		}
+		metrics.queryExecuted(execution("ImpfterminRepo.findFreienTermin", 5));
+
+		verify(nPlusOneCounter, times(1)).inc();
+		Assertions.assertEquals(1, describeCalls.get(), "nur die N+1-Meldung beschreibt die Abfrage");
+	}
+
+	@Test
+	void noNPlusOneOutsideOfTransaction() {
+		Mockito.when(tsr.getTransactionStatus()).thenReturn(Status.STATUS_NO_TRANSACTION);
+		for (int i = 0; i < 10; i++) {
+			metrics.queryExecuted(execution("ImpfungRepo.getByImpftermin", 5));
+		}
+
+		verify(nPlusOneCounter, never()).inc();
+		verify(tsr, never()).putResource(any(), any());
+	}
+
+	@Test
+	void slowQueriesAreCountedButNotLoggedWithoutSample() {
+		metrics.queryExecuted(execution("VMDLRepo.vmdl_covid", 50));
+		metrics.queryExecuted(execution("VMDLRepo.vmdl_covid", 150));
+
+		verify(slowCounter, times(1)).inc();
+		Assertions.assertEquals(0, describeCalls.get());
+	}
+
+	@Test
+	void parametersAreNotLoggedByDefault() {
+		Mockito.when(settings.getDbSlowQueryLogSampleRate()).thenReturn(1d);
+		for (int i = 0; i < 3; i++) {
+			metrics.queryExecuted(execution("RegistrierungRepo.getByRegistrierungnummer", 150));
+		}
+
+		// Slow-Query-Log dreimal, N+1-Meldung einmal, alle ohne Werte
+		Assertions.assertEquals(List.of(false, false, false, false), describedMitParametern);
+	}
+
+	@Test
+	void parametersAreLoggedWhenEnabled() {
+		Mockito.when(settings.getDbSlowQueryLogSampleRate()).thenReturn(1d);
+		Mockito.when(settings.isDbSlowQueryLogParameters()).thenReturn(true);
+		metrics.queryExecuted(execution("RegistrierungRepo.getByRegistrierungnummer", 150));
+
+		Assertions.assertEquals(List.of(true), describedMitParametern);
+	}
+
+	private QueryExecution execution(String callSite, long durationMs) {
+		return new QueryExecution(callSite, "fetch", TimeUnit.MILLISECONDS.toNanos(durationMs), 1, true,
+			mitParametern -> {
+				describeCalls.incrementAndGet();
+				describedMitParametern.add(mitParametern);
+				return "select impfung from Impfung impfung [1 Parameter]";
+			});
+	}
+
+	private static ArgumentMatcher<Metadata> isNamed(String name) {
+		return metadata -> metadata != null && name.equals(metadata.getName());
+	}
+}
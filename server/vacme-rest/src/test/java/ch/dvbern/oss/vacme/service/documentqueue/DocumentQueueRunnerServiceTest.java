@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2022 DV Bern AG, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.dvbern.oss.vacme.service.documentqueue;
+
+import java.time.LocalDateTime;
+import java.util.LinkedList;
+import java.util.List;
+
+import ch.dvbern.oss.vacme.entities.documentqueue.DocumentQueueType;
+import ch.dvbern.oss.vacme.entities.documentqueue.entities.AbrechnungDocQueue;
+import ch.dvbern.oss.vacme.entities.documentqueue.entities.DocumentQueue;
+import ch.dvbern.oss.vacme.scheduler.SystemAdminRunnerService;
+import ch.dvbern.oss.vacme.service.VacmeSettingsService;
+import ch.dvbern.oss.vacme.util.TestdataCreationUtil;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+class DocumentQueueRunnerServiceTest {
+
+	private DocumentQueueRunnerService runnerService;
+	private SystemAdminRunnerService systemAdminRunnerService;
+	private long nextId = 1;
+
+	@BeforeEach
+	void setUp() {
+		systemAdminRunnerService = Mockito.mock(SystemAdminRunnerService.class);
+		VacmeSettingsService settingsService = Mockito.mock(VacmeSettingsService.class);
+		Mockito.when(settingsService.getDocCreationConcurrency(Mockito.any())).thenReturn(1);
+		Mockito.when(settingsService.getDocCreationConcurrency(DocumentQueueType.ODI_IMPFUNGEN)).thenReturn(2);
+		runnerService = new DocumentQueueRunnerService(
+			systemAdminRunnerService,
+			settingsService,
+			Mockito.mock(DocumentQueueMetrics.class));
+	}
+
+	@Test
+	void takeNextItemRespectsLimitPerType() {
+		DocumentQueue abrechnung1 = createItem(DocumentQueueType.ABRECHNUNG);
+		DocumentQueue abrechnung2 = createItem(DocumentQueueType.ABRECHNUNG);
+		DocumentQueue odi1 = createItem(DocumentQueueType.ODI_IMPFUNGEN);
+		DocumentQueue odi2 = createItem(DocumentQueueType.ODI_IMPFUNGEN);
+		DocumentQueue odi3 = createItem(DocumentQueueType.ODI_IMPFUNGEN);
+		LinkedList<DocumentQueue> pending = new LinkedList<>(List.of(abrechnung1, abrechnung2, odi1, odi2, odi3));
+
+		Assertions.assertSame(abrechnung1, runnerService.takeNextItem(pending));
+		// Abrechnung ist ausgelastet, die kleinen Reports koennen trotzdem starten
+		Assertions.assertSame(odi1, runnerService.takeNextItem(pending));
+		Assertions.assertSame(odi2, runnerService.takeNextItem(pending));
+		Assertions.assertNull(runnerService.takeNextItem(pending));
+		Assertions.assertEquals(List.of(abrechnung2, odi3), pending);
+	}
+
+	@Test
+	void processPendingItemsProcessesAllItems() {
+		Mockito.when(systemAdminRunnerService.processDocumentQueueItem(Mockito.anyLong())).thenReturn(true);
+		DocumentQueue failing = createItem(DocumentQueueType.ABRECHNUNG);
+		Mockito.when(systemAdminRunnerService.processDocumentQueueItem(failing.getId())).thenReturn(false);
+		LinkedList<DocumentQueue> pending = new LinkedList<>(List.of(
+			failing,
+			createItem(DocumentQueueType.ABRECHNUNG),
+			createItem(DocumentQueueType.ODI_IMPFUNGEN)));
+
+		int success = runnerService.processPendingItems(pending);
+
+		Assertions.assertEquals(2, success);
+		Assertions.assertTrue(pending.isEmpty());
+		Mockito.verify(systemAdminRunnerService, Mockito.times(3)).processDocumentQueueItem(Mockito.anyLong());
+	}
+
+	private DocumentQueue createItem(DocumentQueueType typ) {
+		AbrechnungDocQueue item = new AbrechnungDocQueue();
+		item.setId(nextId++);
+		item.setTyp(typ);
+		item.setBenutzer(TestdataCreationUtil.createBenutzer("Test", "Tester", "444"));
+		item.setTimestampErstellt(LocalDateTime.now());
+		return item;
+	}
+}
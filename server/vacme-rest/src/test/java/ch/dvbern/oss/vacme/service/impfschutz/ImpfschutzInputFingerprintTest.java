@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2022 DV Bern AG, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.dvbern.oss.vacme.service.impfschutz;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Set;
+import java.util.UUID;
+
+import ch.dvbern.oss.vacme.entities.impfen.Impfschutz;
+import ch.dvbern.oss.vacme.entities.types.KrankheitIdentifier;
+import ch.dvbern.oss.vacme.service.impfinformationen.ImpfinformationBuilder;
+import ch.dvbern.oss.vacme.util.TestdataCreationUtil;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class ImpfschutzInputFingerprintTest {
+
+	private static final String VERSION = "1.0.0";
+	private static final String RULE_CONFIG = "BE;config";
+
+	@Test
+	void fingerprintIsStableForSameInputs() {
+		ImpfinformationBuilder builder = createGrundimmunisiert();
+
+		String first = calculate(builder, VERSION, RULE_CONFIG);
+		String second = calculate(builder, VERSION, RULE_CONFIG);
+
+		Assertions.assertEquals(first, second);
+		Assertions.assertEquals(64, first.length());
+	}
+
+	@Test
+	void fingerprintChangesWithNewImpfung() {
+		ImpfinformationBuilder builder = createGrundimmunisiert();
+		String before = calculate(builder, VERSION, RULE_CONFIG);
+
+		builder.withBooster(LocalDate.now().minusMonths(1), TestdataCreationUtil.createImpfstoffPfizer());
+
+		Assertions.assertNotEquals(before, calculate(builder, VERSION, RULE_CONFIG));
+	}
+
+	@Test
+	void fingerprintChangesWithCorrectedImpfung() {
+		ImpfinformationBuilder builder = createGrundimmunisiert();
+		String before = calculate(builder, VERSION, RULE_CONFIG);
+
+		// Korrektur einer Impfung erhoeht die JPA-Version
+		builder.getInfos().getImpfung2().setVersion(builder.getInfos().getImpfung2().getVersion() + 1);
+
+		Assertions.assertNotEquals(before, calculate(builder, VERSION, RULE_CONFIG));
+	}
+
+	@Test
+	void fingerprintChangesWithRuleConfigOrRelease() {
+		ImpfinformationBuilder builder = createGrundimmunisiert();
+		String before = calculate(builder, VERSION, RULE_CONFIG);
+
+		Assertions.assertNotEquals(before, calculate(builder, VERSION, "BE;otherConfig"));
+		Assertions.assertNotEquals(before, calculate(builder, "1.0.1", RULE_CONFIG));
+	}
+
+	@Test
+	void hasSameResultAs() {
+		LocalDateTime now = LocalDateTime.now();
+		UUID impfstoff1 = UUID.randomUUID();
+		UUID impfstoff2 = UUID.randomUUID();
+		Impfschutz impfschutz = new Impfschutz(now, now, null, Set.of(impfstoff1, impfstoff2), true);
+		Impfschutz same = new Impfschutz(now, now, null, Set.of(impfstoff2, impfstoff1), true);
+		same.setInputFingerprint("other");
+		Impfschutz different = new Impfschutz(now, now.plusDays(1), null, Set.of(impfstoff1, impfstoff2), true);
+
+		Assertions.assertTrue(impfschutz.hasSameResultAs(same));
+		Assertions.assertFalse(impfschutz.hasSameResultAs(different));
+		Assertions.assertFalse(impfschutz.hasSameResultAs(null));
+	}
+
+	private ImpfinformationBuilder createGrundimmunisiert() {
+		ImpfinformationBuilder builder = new ImpfinformationBuilder();
+		builder.create(KrankheitIdentifier.COVID)
+			.withAge(40)
+			.withImpfung1(LocalDate.now().minusMonths(8), TestdataCreationUtil.createImpfstoffModerna())
+			.withImpfung2(LocalDate.now().minusMonths(7), TestdataCreationUtil.createImpfstoffModerna());
+		return builder;
+	}
+
+	private String calculate(ImpfinformationBuilder builder, String version, String ruleConfig) {
+		return ImpfschutzInputFingerprint.calculate(version, ruleConfig, builder.getFragebogen(), builder.getInfos());
+	}
+}
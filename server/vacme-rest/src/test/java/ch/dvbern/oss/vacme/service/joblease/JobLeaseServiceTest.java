@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2022 DV Bern AG, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.dvbern.oss.vacme.service.joblease;
+
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import ch.dvbern.oss.vacme.repo.JobLeaseRepo;
+import ch.dvbern.oss.vacme.service.VacmeSettingsService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+class JobLeaseServiceTest {
+
+	private static final String JOB = "TEST_JOB";
+
+	private JobLeaseService jobLeaseService;
+	private JobLeaseRepo jobLeaseRepo;
+
+	@BeforeEach
+	void setUp() {
+		jobLeaseRepo = Mockito.mock(JobLeaseRepo.class);
+		VacmeSettingsService settingsService = Mockito.mock(VacmeSettingsService.class);
+		Mockito.when(settingsService.getJobLeaseSeconds()).thenReturn(30L);
+		jobLeaseService = new JobLeaseService(jobLeaseRepo, settingsService);
+	}
+
+	@AfterEach
+	void tearDown() {
+		jobLeaseService.shutdown();
+	}
+
+	@Test
+	void runWithLeaseSkipsJobIfAllShardsAreTaken() {
+		Mockito.when(jobLeaseRepo.tryAcquire(Mockito.eq(JOB), Mockito.anyInt(), Mockito.anyString(), Mockito.anyLong()))
+			.thenReturn(Optional.empty());
+		AtomicBoolean executed = new AtomicBoolean(false);
+
+		boolean result = jobLeaseService.runWithLease(JOB, 3, lease -> executed.set(true));
+
+		Assertions.assertFalse(result);
+		Assertions.assertFalse(executed.get());
+		Mockito.verify(jobLeaseRepo).ensureShards(JOB, 3);
+		Mockito.verify(jobLeaseRepo, Mockito.times(3))
+			.tryAcquire(Mockito.eq(JOB), Mockito.anyInt(), Mockito.anyString(), Mockito.anyLong());
+	}
+
+	@Test
+	void runWithLeaseTakesFreeShardAndReleasesIt() {
+		Mockito.when(jobLeaseRepo.tryAcquire(Mockito.eq(JOB), Mockito.anyInt(), Mockito.anyString(), Mockito.anyLong()))
+			.thenReturn(Optional.empty());
+		Mockito.when(jobLeaseRepo.tryAcquire(Mockito.eq(JOB), Mockito.eq(1), Mockito.anyString(), Mockito.anyLong()))
+			.thenReturn(Optional.of(7L));
+		AtomicBoolean executed = new AtomicBoolean(false);
+
+		boolean result = jobLeaseService.runWithLease(JOB, 2, lease -> {
+			Assertions.assertEquals(1, lease.getShard());
+			Assertions.assertEquals(7L, lease.getFencingToken());
+			Assertions.assertTrue(lease.isValid());
+			executed.set(true);
+		});
+
+		Assertions.assertTrue(result);
+		Assertions.assertTrue(executed.get());
+		Mockito.verify(jobLeaseRepo).release(Mockito.eq(JOB), Mockito.eq(1), Mockito.anyString(), Mockito.eq(7L));
+	}
+
+	@Test
+	void failedRenewMarksLeaseAsLost() {
+		Mockito.when(jobLeaseRepo.tryAcquire(Mockito.eq(JOB), Mockito.eq(0), Mockito.anyString(), Mockito.anyLong()))
+			.thenReturn(Optional.of(1L));
+		Mockito.when(jobLeaseRepo.renew(
+				Mockito.eq(JOB), Mockito.eq(0), Mockito.anyString(), Mockito.anyLong(), Mockito.anyLong()))
+			.thenReturn(false);
+		JobLease lease = jobLeaseService.tryAcquire(JOB).orElseThrow();
+
+		jobLeaseService.renew(lease, 30);
+
+		Assertions.assertFalse(lease.isValid());
+		lease.close();
+		// ein verlorener Lease gehoert jemand anderem und darf nicht freigegeben werden
+		Mockito.verify(jobLeaseRepo, Mockito.never())
+			.release(Mockito.anyString(), Mockito.anyInt(), Mockito.anyString(), Mockito.anyLong());
+	}
+
+	@Test
+	void shardOfDistributesKeysDeterministically() {
+		for (String key : new String[] { "ABC123", "XYZ999", "-", "" }) {
+			int shard = JobLease.shardOf(key, 4);
+			Assertions.assertTrue(shard >= 0 && shard < 4);
+			Assertions.assertEquals(shard, JobLease.shardOf(key, 4));
+		}
+	}
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2022 DV Bern AG, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.dvbern.oss.vacme.service.migration;
+
+import java.util.Collections;
+import java.util.List;
+
+import ch.dvbern.oss.vacme.entities.registration.Registrierung;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class DataMigrationKontextTest {
+
+	@Test
+	void findsBestehendeRegistrierungByExternalId() {
+		Registrierung bestehende = createRegistrierung("E1");
+		DataMigrationKontext kontext = new DataMigrationKontext(List.of(bestehende), Collections.emptyList());
+
+		Assertions.assertSame(bestehende, kontext.findRegistrierung("E1").orElseThrow());
+		Assertions.assertTrue(kontext.findRegistrierung("E2").isEmpty());
+	}
+
+	@Test
+	void duplicateExternalIdIsCreatedOnlyOnce() {
+		DataMigrationKontext kontext = new DataMigrationKontext(Collections.emptyList(), List.of("AAAAAA"));
+
+		Assertions.assertTrue(kontext.findRegistrierung("E1").isEmpty());
+		Registrierung neue = createRegistrierung("E1");
+		neue.setRegistrierungsnummer(kontext.nextRegistrierungsnummer(() -> "FALLBACK"));
+		kontext.putRegistrierung(neue);
+
+		// Das zweite Vorkommen derselben externalId im Chunk aktualisiert die eben erstellte Registrierung
+		Assertions.assertSame(neue, kontext.findRegistrierung("E1").orElseThrow());
+		Assertions.assertEquals("AAAAAA", neue.getRegistrierungsnummer());
+	}
+
+	@Test
+	void usesReservedRegistrierungsnummernBeforeFallback() {
+		DataMigrationKontext kontext = new DataMigrationKontext(Collections.emptyList(), List.of("AAAAAA", "BBBBBB"));
+
+		Assertions.assertEquals("AAAAAA", kontext.nextRegistrierungsnummer(() -> "FALLBACK"));
+		Assertions.assertEquals("BBBBBB", kontext.nextRegistrierungsnummer(() -> "FALLBACK"));
+		Assertions.assertEquals("FALLBACK", kontext.nextRegistrierungsnummer(() -> "FALLBACK"));
+	}
+
+	@Test
+	void ignoresRegistrierungWithoutExternalId() {
+		DataMigrationKontext kontext = new DataMigrationKontext(Collections.emptyList(), Collections.emptyList());
+
+		kontext.putRegistrierung(new Registrierung());
+
+		Assertions.assertTrue(kontext.findRegistrierung("").isEmpty());
+	}
+
+	private static Registrierung createRegistrierung(String externalId) {
+		Registrierung registrierung = new Registrierung();
+		registrierung.setExternalId(externalId);
+		return registrierung;
+	}
+}
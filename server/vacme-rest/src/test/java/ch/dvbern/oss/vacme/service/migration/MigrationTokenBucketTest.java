@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2022 DV Bern AG, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.dvbern.oss.vacme.service.migration;
+
+import java.time.LocalDateTime;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class MigrationTokenBucketTest {
+
+	private static final int CAPACITY = 200;
+	// voller Bucket nach 30 Sekunden
+	private static final double REFILL_PER_SECOND = CAPACITY / 30.0;
+	private static final LocalDateTime START = LocalDateTime.of(2022, 6, 1, 10, 0, 0);
+
+	@Test
+	void consumesTokensOfFullBucket() {
+		MigrationTokenBucket bucket = MigrationTokenBucket.full(CAPACITY, START);
+
+		Assertions.assertEquals(0, bucket.tryConsume(150, CAPACITY, REFILL_PER_SECOND, START));
+		Assertions.assertEquals(50, bucket.getTokens(), 0.001);
+	}
+
+	@Test
+	void rejectsAndReportsWaitingTime() {
+		MigrationTokenBucket bucket = MigrationTokenBucket.full(CAPACITY, START);
+		bucket.tryConsume(200, CAPACITY, REFILL_PER_SECOND, START);
+
+		// 100 Tokens brauchen 15 Sekunden
+		Assertions.assertEquals(15, bucket.tryConsume(100, CAPACITY, REFILL_PER_SECOND, START));
+		Assertions.assertEquals(0, bucket.getTokens(), 0.001);
+	}
+
+	@Test
+	void refillsOverTimeUpToCapacity() {
+		MigrationTokenBucket bucket = MigrationTokenBucket.full(CAPACITY, START);
+		bucket.tryConsume(200, CAPACITY, REFILL_PER_SECOND, START);
+
+		Assertions.assertEquals(0, bucket.tryConsume(100, CAPACITY, REFILL_PER_SECOND, START.plusSeconds(15)));
+		Assertions.assertEquals(0, bucket.getTokens(), 0.001);
+
+		bucket.tryConsume(0, CAPACITY, REFILL_PER_SECOND, START.plusHours(1));
+		Assertions.assertEquals(CAPACITY, bucket.getTokens(), 0.001);
+	}
+
+	@Test
+	void requestLargerThanCapacityNeedsFullBucket() {
+		MigrationTokenBucket bucket = MigrationTokenBucket.full(CAPACITY, START);
+		bucket.tryConsume(1, CAPACITY, REFILL_PER_SECOND, START);
+
+		// 1 Token fehlt bis zum vollen Bucket
+		Assertions.assertEquals(1, bucket.tryConsume(5000, CAPACITY, REFILL_PER_SECOND, START));
+		Assertions.assertEquals(CAPACITY - 1, bucket.getTokens(), 0.001);
+	}
+
+	@Test
+	void requestLargerThanCapacityIsChargedFully() {
+		MigrationTokenBucket bucket = MigrationTokenBucket.full(CAPACITY, START);
+
+		Assertions.assertEquals(0, bucket.tryConsume(5000, CAPACITY, REFILL_PER_SECOND, START));
+		Assertions.assertEquals(CAPACITY - 5000, bucket.getTokens(), 0.001);
+
+		// Die Schuld von 4800 Tokens und ein Token fuer den naechsten Request: 4801 / (200 / 30) = 720.15 Sekunden
+		Assertions.assertEquals(721, bucket.tryConsume(1, CAPACITY, REFILL_PER_SECOND, START));
+		// Die naechste grosse Migration erst wieder mit vollem Bucket, also nach 750 Sekunden
+		Assertions.assertTrue(bucket.tryConsume(5000, CAPACITY, REFILL_PER_SECOND, START.plusSeconds(749)) > 0);
+		Assertions.assertEquals(0, bucket.tryConsume(5000, CAPACITY, REFILL_PER_SECOND, START.plusSeconds(750)));
+	}
+
+	@Test
+	void ignoresClockGoingBackwards() {
+		MigrationTokenBucket bucket = MigrationTokenBucket.full(CAPACITY, START);
+		bucket.tryConsume(100, CAPACITY, REFILL_PER_SECOND, START);
+
+		Assertions.assertEquals(0, bucket.tryConsume(50, CAPACITY, REFILL_PER_SECOND, START.minusSeconds(10)));
+		Assertions.assertEquals(50, bucket.getTokens(), 0.001);
+		Assertions.assertEquals(START, bucket.getTimestampRefill());
+	}
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2022 DV Bern AG, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.dvbern.oss.vacme.service.personaliensuche;
+
+import java.util.Set;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+class PersonalienSuchschluesselTest {
+
+	@Test
+	void testCreateSchluessel() {
+		Assertions.assertEquals(
+			Set.of("josue", "markus", "josuemarkus", "hans", "josuemarkushans"),
+			PersonalienSuchschluessel.createSchluessel("Josué Markus Hans"));
+		Assertions.assertEquals(
+			Set.of("meier", "muster", "meiermuster"),
+			PersonalienSuchschluessel.createSchluessel("Meier-Muster"));
+		Assertions.assertEquals(
+			Set.of("weibel", "kohler", "weibelkohler"),
+			PersonalienSuchschluessel.createSchluessel(" Weibel -Kohler"));
+		Assertions.assertTrue(PersonalienSuchschluessel.createSchluessel(" - ").isEmpty());
+	}
+
+	/**
+	 * Der Index muss genau dann einen Treffer liefern, wenn auch die Pruefung in Java passt
+	 */
+	@ParameterizedTest
+	@CsvSource({
+		"Josué Markus    , Josué Markus          , true"  ,
+		"Josue Markus    , Josué Markus Hans     , true"  ,
+		"Markus Josué    , Josué Markus Hans     , false" ,
+		"Markus          , Josué Markus          , true"  ,
+		"Mark            , Josué Markus          , false" ,
+		"Meier-Muster    , Meier-Muster          , true"  ,
+		"Muster          , Meier-Muster          , true"  ,
+		"Weibel-Kohle    , Weibel-Kohler         , false" ,
+		"Müller          , MÜLLER                , true"  ,
+		"Dindic          , Đinđić                , false" ,
+	})
+	void testSchluesselEntsprichtMatches(String search, String stored, boolean shouldMatch) {
+		String normalizedSearch = PersonalienSuchschluessel.normalizeSearch(search);
+		Assertions.assertEquals(shouldMatch, PersonalienSuchschluessel.matches(normalizedSearch, stored));
+		Assertions.assertEquals(shouldMatch,
+			PersonalienSuchschluessel.createSchluessel(stored).contains(normalizedSearch));
+	}
+}
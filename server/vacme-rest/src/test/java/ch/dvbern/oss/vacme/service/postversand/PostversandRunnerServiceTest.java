@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2022 DV Bern AG, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.dvbern.oss.vacme.service.postversand;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import ch.dvbern.oss.vacme.repo.PostversandRepo;
+import ch.dvbern.oss.vacme.service.FTPRetryClientService;
+import ch.dvbern.oss.vacme.service.VacmeSettingsService;
+import ch.dvbern.oss.vacme.service.joblease.JobLeaseService;
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfWriter;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+
+class PostversandRunnerServiceTest {
+
+	private static final PostversandDokumentTyp TYP = PostversandDokumentTyp.values()[0];
+
+	private PostversandRepo postversandRepo;
+	private FTPRetryClientService ftpRetryClientService;
+	private PostversandRunnerService serviceUnderTest;
+
+	@BeforeEach
+	void setUp() {
+		postversandRepo = Mockito.mock(PostversandRepo.class);
+		ftpRetryClientService = Mockito.mock(FTPRetryClientService.class);
+		VacmeSettingsService vacmeSettingsService = Mockito.mock(VacmeSettingsService.class);
+		Mockito.when(vacmeSettingsService.isPostversandDuplex()).thenReturn(false);
+		Mockito.when(vacmeSettingsService.getPostversandFtpDirectory()).thenReturn(Optional.empty());
+		Mockito.when(vacmeSettingsService.getPostversandMaxFehlversuche()).thenReturn(3);
+		Mockito.when(ftpRetryClientService.tryToPutFileToFtp(ArgumentMatchers.any(Path.class), ArgumentMatchers.anyString()))
+			.thenReturn(true);
+
+		serviceUnderTest = new PostversandRunnerService(
+			postversandRepo,
+			ftpRetryClientService,
+			vacmeSettingsService,
+			Mockito.mock(JobLeaseService.class));
+	}
+
+	@Test
+	void exportChunk_countsFehlversuchForBrokenLetter() {
+		UUID gueltig = UUID.randomUUID();
+		UUID ungueltig = UUID.randomUUID();
+		Mockito.when(postversandRepo.readFileContent(TYP, gueltig)).thenReturn(createPdf());
+		Mockito.when(postversandRepo.readFileContent(TYP, ungueltig)).thenReturn(new byte[] { 1, 2, 3 });
+
+		Assertions.assertTrue(serviceUnderTest.exportChunk(TYP, List.of(gueltig, ungueltig), 1));
+
+		Mockito.verify(postversandRepo).markAbgeholt(TYP, List.of(gueltig));
+		Mockito.verify(postversandRepo).markFehlversuch(TYP, ungueltig);
+		Mockito.verify(postversandRepo, Mockito.never()).markFehlversuch(TYP, gueltig);
+	}
+
+	@Test
+	void exportChunk_doesNotCountFehlversuchWhenUploadFails() {
+		UUID gueltig = UUID.randomUUID();
+		Mockito.when(postversandRepo.readFileContent(TYP, gueltig)).thenReturn(createPdf());
+		Mockito.when(ftpRetryClientService.tryToPutFileToFtp(ArgumentMatchers.any(Path.class), ArgumentMatchers.anyString()))
+			.thenReturn(false);
+
+		Assertions.assertFalse(serviceUnderTest.exportChunk(TYP, List.of(gueltig), 1));
+
+		Mockito.verify(postversandRepo, Mockito.never()).markAbgeholt(ArgumentMatchers.any(), ArgumentMatchers.any());
+		Mockito.verify(postversandRepo, Mockito.never()).markFehlversuch(ArgumentMatchers.any(), ArgumentMatchers.any());
+	}
+
+	@Test
+	void exportChunk_skipsUploadWhenNoLetterCouldBeAdded() {
+		UUID ungueltig = UUID.randomUUID();
+		Mockito.when(postversandRepo.readFileContent(TYP, ungueltig)).thenThrow(new IllegalStateException("kaputt"));
+		Mockito.when(postversandRepo.markFehlversuch(TYP, ungueltig)).thenReturn(3);
+
+		Assertions.assertTrue(serviceUnderTest.exportChunk(TYP, List.of(ungueltig), 1));
+
+		Mockito.verify(postversandRepo).markFehlversuch(TYP, ungueltig);
+		Mockito.verifyNoInteractions(ftpRetryClientService);
+	}
+
+	private static byte[] createPdf() {
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		PdfDocument document = new PdfDocument(new PdfWriter(outputStream));
+		document.addNewPage();
+		document.close();
+		return outputStream.toByteArray();
+	}
+}
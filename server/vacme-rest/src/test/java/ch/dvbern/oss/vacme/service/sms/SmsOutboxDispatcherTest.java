@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2022 DV Bern AG, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.dvbern.oss.vacme.service.sms;
+
+import java.io.IOException;
+import java.util.List;
+
+import ch.dvbern.oss.vacme.dto.SmsSettingsDTO;
+import ch.dvbern.oss.vacme.repo.SmsOutboxRepo;
+import ch.dvbern.oss.vacme.service.VacmeSettingsService;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+class SmsOutboxDispatcherTest {
+
+	private SmsOutboxDispatcher dispatcher;
+	private SmsOutboxRepo smsOutboxRepo;
+	private SmsHttpClient smsHttpClient;
+
+	@BeforeEach
+	void setUp() {
+		smsOutboxRepo = Mockito.mock(SmsOutboxRepo.class);
+		smsHttpClient = Mockito.mock(SmsHttpClient.class);
+		VacmeSettingsService settingsService = Mockito.mock(VacmeSettingsService.class);
+		Mockito.when(settingsService.getSmsOutboxBatchSize()).thenReturn(2);
+		Mockito.when(settingsService.getSmsOutboxLeaseSeconds()).thenReturn(300L);
+		Mockito.when(settingsService.getSmsOutboxRatePerSecond()).thenReturn(1000.0);
+		Mockito.when(settingsService.getSmsOutboxMaxAttempts()).thenReturn(3);
+		Mockito.when(settingsService.getSmsOutboxRetryBaseSeconds()).thenReturn(30L);
+		Mockito.when(settingsService.getSmsSettingsDTO()).thenReturn(new SmsSettingsDTO(
+			false,
+			true,
+			true,
+			new ECallSmsProvider("https://testurl.ch/sms", "user", "secret", "job", "callback", "callbackExt"),
+			"https://be.vacme.ch",
+			"https://zh.vacme.ch/booster",
+			5,
+			false));
+		dispatcher = new SmsOutboxDispatcher(smsOutboxRepo, smsHttpClient, settingsService);
+	}
+
+	@Test
+	void dispatchBatchMarksSentAndRetriesFailures() throws Exception {
+		SmsOutboxItem ok = new SmsOutboxItem(1, "+41770000001", "ok", 0);
+		SmsOutboxItem failing = new SmsOutboxItem(2, "+41770000002", "failing", 0);
+		Mockito.when(smsOutboxRepo.claimDueItems(Mockito.anyString(), Mockito.anyLong(), Mockito.eq(2)))
+			.thenReturn(List.of(ok, failing));
+		Mockito.doThrow(new IOException("timeout")).when(smsHttpClient)
+			.send(Mockito.any(), Mockito.eq("+41770000002"), Mockito.anyString(), Mockito.anyInt());
+
+		boolean moreItems = dispatcher.dispatchBatch();
+
+		Assertions.assertTrue(moreItems);
+		Mockito.verify(smsOutboxRepo).markSent(Mockito.eq(1L), Mockito.anyString());
+		Mockito.verify(smsOutboxRepo).markForRetry(Mockito.eq(2L), Mockito.anyString(), Mockito.eq(30L), Mockito.eq("timeout"));
+		Mockito.verify(smsOutboxRepo, Mockito.never()).markFailed(Mockito.anyLong(), Mockito.anyString(), Mockito.any());
+	}
+
+	@Test
+	void dispatchBatchGivesUpAfterMaxAttempts() throws Exception {
+		SmsOutboxItem failing = new SmsOutboxItem(3, "+41770000003", "failing", 2);
+		Mockito.when(smsOutboxRepo.claimDueItems(Mockito.anyString(), Mockito.anyLong(), Mockito.anyInt()))
+			.thenReturn(List.of(failing));
+		Mockito.doThrow(new IOException("down")).when(smsHttpClient)
+			.send(Mockito.any(), Mockito.anyString(), Mockito.anyString(), Mockito.anyInt());
+
+		boolean moreItems = dispatcher.dispatchBatch();
+
+		Assertions.assertFalse(moreItems);
+		Mockito.verify(smsOutboxRepo).markFailed(Mockito.eq(3L), Mockito.anyString(), Mockito.eq("down"));
+	}
+
+	@Test
+	void retryDelayGrowsExponentiallyUpToOneHour() {
+		Assertions.assertEquals(30, SmsOutboxDispatcher.calculateRetryDelaySeconds(30, 1));
+		Assertions.assertEquals(60, SmsOutboxDispatcher.calculateRetryDelaySeconds(30, 2));
+		Assertions.assertEquals(240, SmsOutboxDispatcher.calculateRetryDelaySeconds(30, 4));
+		Assertions.assertEquals(3600, SmsOutboxDispatcher.calculateRetryDelaySeconds(30, 50));
+	}
+}
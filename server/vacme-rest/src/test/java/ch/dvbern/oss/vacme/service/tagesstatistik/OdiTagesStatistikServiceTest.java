@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2022 DV Bern AG, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.dvbern.oss.vacme.service.tagesstatistik;
+
+import java.time.LocalDate;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+import javax.transaction.TransactionSynchronizationRegistry;
+
+import ch.dvbern.oss.vacme.repo.OdiTagesStatistikRepo;
+import ch.dvbern.oss.vacme.service.VacmeSettingsService;
+import ch.dvbern.oss.vacme.service.joblease.JobLease;
+import ch.dvbern.oss.vacme.service.joblease.JobLeaseService;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+
+class OdiTagesStatistikServiceTest {
+
+	private static final LocalDate HEUTE = LocalDate.now();
+
+	private OdiTagesStatistikRepo odiTagesStatistikRepo;
+	private JobLease lease;
+	private OdiTagesStatistikService serviceUnderTest;
+
+	@BeforeEach
+	void setUp() {
+		odiTagesStatistikRepo = Mockito.mock(OdiTagesStatistikRepo.class);
+		lease = Mockito.mock(JobLease.class);
+		VacmeSettingsService vacmeSettingsService = Mockito.mock(VacmeSettingsService.class);
+		JobLeaseService jobLeaseService = Mockito.mock(JobLeaseService.class);
+
+		Mockito.when(vacmeSettingsService.isTagesstatistikEnabled()).thenReturn(true);
+		Mockito.when(vacmeSettingsService.getTagesstatistikReconcileDaysBack()).thenReturn(1);
+		Mockito.when(vacmeSettingsService.getTagesstatistikReconcileDaysForward()).thenReturn(1);
+		Mockito.when(lease.isValid()).thenReturn(true);
+		Mockito.when(jobLeaseService.runWithLease(ArgumentMatchers.anyString(), ArgumentMatchers.anyInt(), ArgumentMatchers.any()))
+			.thenAnswer(invocation -> {
+				Consumer<JobLease> job = invocation.getArgument(2);
+				job.accept(lease);
+				return true;
+			});
+
+		serviceUnderTest = new OdiTagesStatistikService(
+			odiTagesStatistikRepo,
+			vacmeSettingsService,
+			jobLeaseService,
+			Mockito.mock(TransactionSynchronizationRegistry.class));
+	}
+
+	@Test
+	void isReady_onlyWhenAufbauAbgeschlossen() {
+		Mockito.when(odiTagesStatistikRepo.isAufbauAbgeschlossen()).thenReturn(false);
+		Assertions.assertFalse(serviceUnderTest.isReady());
+
+		Mockito.when(odiTagesStatistikRepo.isAufbauAbgeschlossen()).thenReturn(true);
+		Assertions.assertTrue(serviceUnderTest.isReady());
+	}
+
+	@Test
+	void reconcile_marksAufbauAbgeschlossenAfterBackfill() {
+		Mockito.when(odiTagesStatistikRepo.findAufgebautAb()).thenReturn(Optional.empty());
+		Mockito.when(odiTagesStatistikRepo.findErstesSlotDatum()).thenReturn(Optional.of(HEUTE.minusDays(3)));
+
+		serviceUnderTest.reconcile();
+
+		for (int i = -1; i <= 3; i++) {
+			Mockito.verify(odiTagesStatistikRepo).recalculate(HEUTE.minusDays(i));
+		}
+		Mockito.verify(odiTagesStatistikRepo).saveAufbauStand(HEUTE.minusDays(3), true);
+		Assertions.assertTrue(serviceUnderTest.isReady());
+	}
+
+	@Test
+	void reconcile_notReadyWhenAufbauIsInterrupted() {
+		Mockito.when(odiTagesStatistikRepo.findAufgebautAb()).thenReturn(Optional.empty());
+		Mockito.when(odiTagesStatistikRepo.findErstesSlotDatum()).thenReturn(Optional.of(HEUTE.minusDays(10)));
+		// Fenster (3 Tage) und ein Tag des Aufbaus, danach ist der Lease verloren
+		Mockito.when(lease.isValid()).thenReturn(true, true, true, true, false);
+
+		serviceUnderTest.reconcile();
+
+		Mockito.verify(odiTagesStatistikRepo).saveAufbauStand(HEUTE.minusDays(2), false);
+		Mockito.verify(odiTagesStatistikRepo, Mockito.never())
+			.saveAufbauStand(ArgumentMatchers.any(), ArgumentMatchers.eq(true));
+		Assertions.assertFalse(serviceUnderTest.isReady());
+	}
+
+	@Test
+	void reconcile_resumesAufbauAtSavedStand() {
+		Mockito.when(odiTagesStatistikRepo.findAufgebautAb()).thenReturn(Optional.of(HEUTE.minusDays(10)));
+		Mockito.when(odiTagesStatistikRepo.findErstesSlotDatum()).thenReturn(Optional.of(HEUTE.minusDays(12)));
+
+		serviceUnderTest.reconcile();
+
+		Mockito.verify(odiTagesStatistikRepo, Mockito.never()).recalculate(HEUTE.minusDays(5));
+		Mockito.verify(odiTagesStatistikRepo).recalculate(HEUTE.minusDays(11));
+		Mockito.verify(odiTagesStatistikRepo).recalculate(HEUTE.minusDays(12));
+		Mockito.verify(odiTagesStatistikRepo, Mockito.never()).recalculate(HEUTE.minusDays(13));
+		Mockito.verify(odiTagesStatistikRepo).saveAufbauStand(HEUTE.minusDays(12), true);
+	}
+
+	@Test
+	void reconcile_skipsAufbauWhenAbgeschlossen() {
+		Mockito.when(odiTagesStatistikRepo.isAufbauAbgeschlossen()).thenReturn(true);
+		Mockito.when(odiTagesStatistikRepo.findErstesSlotDatum()).thenReturn(Optional.of(HEUTE.minusDays(12)));
+
+		serviceUnderTest.reconcile();
+
+		Mockito.verify(odiTagesStatistikRepo, Mockito.times(3)).recalculate(ArgumentMatchers.any(LocalDate.class));
+		Mockito.verify(odiTagesStatistikRepo, Mockito.never())
+			.saveAufbauStand(ArgumentMatchers.any(), ArgumentMatchers.anyBoolean());
+	}
+}
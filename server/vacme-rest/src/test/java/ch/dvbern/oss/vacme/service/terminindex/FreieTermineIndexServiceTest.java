@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2022 DV Bern AG, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ch.dvbern.oss.vacme.service.terminindex;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
+
+import ch.dvbern.oss.vacme.entities.impfen.Impffolge;
+import ch.dvbern.oss.vacme.entities.terminbuchung.Impftermin;
+import ch.dvbern.oss.vacme.entities.terminbuchung.OrtDerImpfung;
+import ch.dvbern.oss.vacme.service.VacmeSettingsService;
+import ch.dvbern.oss.vacme.util.TestdataCreationUtil;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+class FreieTermineIndexServiceTest {
+
+	private final TransactionSynchronizationRegistry registry = mock(TransactionSynchronizationRegistry.class);
+
+	private FreieTermineIndexService service;
+	private Impftermin termin;
+	private FreieTermineIndexKey key;
+	private LocalDateTime slotBis;
+
+	@BeforeEach
+	void setUp() {
+		VacmeSettingsService vacmeSettingsService = mock(VacmeSettingsService.class);
+		Mockito.when(vacmeSettingsService.isTerminIndexEnabled()).thenReturn(true);
+		Mockito.when(vacmeSettingsService.getTerminIndexRebuildIntervalSeconds()).thenReturn(3600L);
+		Mockito.when(registry.getTransactionStatus()).thenReturn(Status.STATUS_ACTIVE);
+		service = new FreieTermineIndexService(vacmeSettingsService, registry);
+
+		final OrtDerImpfung odi = TestdataCreationUtil.createOrtDerImpfung();
+		termin = TestdataCreationUtil.createImpftermin(odi, LocalDate.now().plusDays(1));
+		termin.setImpffolge(Impffolge.ERSTE_IMPFUNG);
+		key = FreieTermineIndexKey.of(termin);
+		slotBis = termin.getImpfslot().getZeitfenster().getBis();
+	}
+
+	@Test
+	void aenderungWirdErstNachCommitUebernommen() {
+		FreieTermineIndex index = service.getIndex(this::zweiFreieTermine, List::of);
+		Assertions.assertNotNull(index);
+
+		service.onTerminGebucht(termin, false);
+		Assertions.assertEquals(2, index.getAnzahlFreieTermine(key, slotBis, slotBis));
+
+		final Synchronization synchronization = captureSynchronization();
+		synchronization.afterCompletion(Status.STATUS_ROLLEDBACK);
+		Assertions.assertEquals(2, index.getAnzahlFreieTermine(key, slotBis, slotBis));
+	}
+
+	@Test
+	void aenderungWaehrendNeuaufbauGehtNichtVerloren() {
+		final FreieTermineIndex alterIndex = service.getIndex(this::zweiFreieTermine, List::of);
+		Assertions.assertNotNull(alterIndex);
+
+		// Die Buchung laeuft, waehrenddessen wird der Index aus dem noch nicht committeten Stand neu aufgebaut
+		service.onTerminGebucht(termin, false);
+		service.invalidate();
+		final FreieTermineIndex neuerIndex = service.getIndex(this::zweiFreieTermine, List::of);
+		Assertions.assertNotNull(neuerIndex);
+		Assertions.assertNotSame(alterIndex, neuerIndex);
+
+		captureSynchronization().afterCompletion(Status.STATUS_COMMITTED);
+		Assertions.assertEquals(1, neuerIndex.getAnzahlFreieTermine(key, slotBis, slotBis));
+	}
+
+	@Test
+	void ohneIndexWirdNichtsGemerkt() {
+		service.onTerminGebucht(termin, false);
+		captureSynchronization().afterCompletion(Status.STATUS_COMMITTED);
+
+		final FreieTermineIndex index = service.getIndex(this::zweiFreieTermine, List::of);
+		Assertions.assertNotNull(index);
+		Assertions.assertEquals(2, index.getAnzahlFreieTermine(key, slotBis, slotBis));
+	}
+
+	private List<FreieTermineProSlotDTO> zweiFreieTermine() {
+		return List.of(new FreieTermineProSlotDTO(key, slotBis, 2));
+	}
+
+	private Synchronization captureSynchronization() {
+		final ArgumentCaptor<Synchronization> captor = ArgumentCaptor.forClass(Synchronization.class);
+		verify(registry).registerInterposedSynchronization(captor.capture());
+		return captor.getValue();
+	}
+}
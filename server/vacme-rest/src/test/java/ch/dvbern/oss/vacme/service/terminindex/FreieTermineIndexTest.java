@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2022 DV Bern AG, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.dvbern.oss.vacme.service.terminindex;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import ch.dvbern.oss.vacme.entities.impfen.Impffolge;
+import ch.dvbern.oss.vacme.entities.types.KrankheitIdentifier;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class FreieTermineIndexTest {
+
+	private static final LocalDateTime HEUTE = LocalDate.now().atStartOfDay();
+	private static final LocalDateTime SLOT_1 = HEUTE.plusDays(1).plusHours(8);
+	private static final LocalDateTime SLOT_2 = HEUTE.plusDays(3).plusHours(10);
+
+	private final FreieTermineIndexKey key =
+		new FreieTermineIndexKey(UUID.randomUUID(), KrankheitIdentifier.COVID, Impffolge.ERSTE_IMPFUNG);
+
+	private FreieTermineIndex index;
+
+	@BeforeEach
+	void setUp() {
+		index = FreieTermineIndex.of(
+			List.of(new FreieTermineProSlotDTO(key, SLOT_1, 1), new FreieTermineProSlotDTO(key, SLOT_2, 2)),
+			List.of(),
+			LocalDateTime.now());
+	}
+
+	@Test
+	void findNextFreierTermin() {
+		Assertions.assertEquals(SLOT_1, index.findNextFreierTermin(key, HEUTE, HEUTE.plusMonths(1)));
+		Assertions.assertEquals(SLOT_2, index.findNextFreierTermin(key, HEUTE.plusDays(2), HEUTE.plusMonths(1)));
+		Assertions.assertNull(index.findNextFreierTermin(key, HEUTE.plusDays(4), HEUTE.plusMonths(1)));
+		Assertions.assertEquals(3, index.getAnzahlFreieTermine(key, HEUTE, HEUTE.plusMonths(1)));
+
+		final FreieTermineIndexKey andereImpffolge =
+			new FreieTermineIndexKey(key.getOdiId(), KrankheitIdentifier.COVID, Impffolge.ZWEITE_IMPFUNG);
+		Assertions.assertNull(index.findNextFreierTermin(andereImpffolge, HEUTE, HEUTE.plusMonths(1)));
+	}
+
+	@Test
+	void buchenUndFreigeben() {
+		final UUID terminId = UUID.randomUUID();
+		index.terminGebucht(terminId, key, SLOT_1, false);
+		Assertions.assertEquals(SLOT_2, index.findNextFreierTermin(key, HEUTE, HEUTE.plusMonths(1)));
+
+		index.terminFreigegeben(terminId, key, SLOT_1, true);
+		Assertions.assertEquals(SLOT_1, index.findNextFreierTermin(key, HEUTE, HEUTE.plusMonths(1)));
+
+		index.terminErstellt(key, HEUTE.plusHours(20));
+		Assertions.assertEquals(HEUTE.plusHours(20), index.findNextFreierTermin(key, HEUTE, HEUTE.plusMonths(1)));
+		Assertions.assertEquals(4, index.getAnzahlFreieTermine(key, HEUTE, HEUTE.plusMonths(1)));
+	}
+
+	@Test
+	void reservationWirdNurEinmalAbgezogen() {
+		final UUID terminId = UUID.randomUUID();
+		final LocalDateTime reserviertBis = LocalDateTime.now().plusMinutes(10);
+		index.terminReserviert(terminId, "ABC123", key, SLOT_1, reserviertBis, false);
+		Assertions.assertEquals(SLOT_2, index.findNextFreierTermin(key, HEUTE, HEUTE.plusMonths(1)));
+
+		// Die Buchung des reservierten Termins darf nicht nochmals abgezogen werden
+		index.terminGebucht(terminId, key, SLOT_1, false);
+		Assertions.assertEquals(2, index.getAnzahlFreieTermine(key, HEUTE, HEUTE.plusMonths(1)));
+	}
+
+	@Test
+	void vorDemAufbauReservierterTerminWirdNichtDoppeltAbgezogen() {
+		// Beim Aufbau war ein dritter Termin in SLOT_1 reserviert und ist deshalb nicht in den freien Terminen
+		final UUID reservierterTermin = UUID.randomUUID();
+		final LocalDateTime now = LocalDateTime.now();
+		index = FreieTermineIndex.of(
+			List.of(new FreieTermineProSlotDTO(key, SLOT_1, 1), new FreieTermineProSlotDTO(key, SLOT_2, 2)),
+			List.of(new ReservierterTerminDTO(reservierterTermin, "ABC123", key, SLOT_1, now.plusMinutes(10))),
+			now);
+
+		index.terminGebucht(reservierterTermin, key, SLOT_1, false);
+		Assertions.assertEquals(3, index.getAnzahlFreieTermine(key, HEUTE, HEUTE.plusMonths(1)));
+
+		// Auch ein Ablauf der (inzwischen gebuchten) Reservation darf den Termin nicht wieder frei machen
+		index.abgelaufeneReservationenAufheben(now.plusMinutes(11));
+		Assertions.assertEquals(3, index.getAnzahlFreieTermine(key, HEUTE, HEUTE.plusMonths(1)));
+	}
+
+	@Test
+	void vorDemAufbauReservierterTerminWirdBeimAblaufFrei() {
+		final UUID reservierterTermin = UUID.randomUUID();
+		final LocalDateTime now = LocalDateTime.now();
+		index = FreieTermineIndex.of(
+			List.of(new FreieTermineProSlotDTO(key, SLOT_2, 2)),
+			List.of(new ReservierterTerminDTO(reservierterTermin, "ABC123", key, SLOT_1, now.plusMinutes(10))),
+			now);
+
+		index.abgelaufeneReservationenAufheben(now.plusMinutes(11));
+		Assertions.assertEquals(SLOT_1, index.findNextFreierTermin(key, HEUTE, HEUTE.plusMonths(1)));
+
+		// Nach dem Ablauf zaehlt der Termin als frei und wird bei der Loeschung genau einmal abgezogen
+		index.terminGeloescht(reservierterTermin, key, SLOT_1, false);
+		Assertions.assertEquals(SLOT_2, index.findNextFreierTermin(key, HEUTE, HEUTE.plusMonths(1)));
+		Assertions.assertEquals(2, index.getAnzahlFreieTermine(key, HEUTE, HEUTE.plusMonths(1)));
+	}
+
+	@Test
+	void aufAnderemNodeReservierterTerminWirdEinmalAbgezogen() {
+		// Die Reservation auf dem anderen Node kennt dieser Index nicht, er zaehlt den Termin weiterhin als frei
+		final UUID terminId = UUID.randomUUID();
+		index.terminGebucht(terminId, key, SLOT_1, false);
+		Assertions.assertEquals(2, index.getAnzahlFreieTermine(key, HEUTE, HEUTE.plusMonths(1)));
+		Assertions.assertEquals(SLOT_2, index.findNextFreierTermin(key, HEUTE, HEUTE.plusMonths(1)));
+	}
+
+	@Test
+	void geloeschterGebuchterTerminWirdNichtAbgezogen() {
+		index.terminGeloescht(UUID.randomUUID(), key, SLOT_1, true);
+		Assertions.assertEquals(3, index.getAnzahlFreieTermine(key, HEUTE, HEUTE.plusMonths(1)));
+
+		// Freigabe eines gar nicht gebuchten Termins aendert nichts
+		index.terminFreigegeben(UUID.randomUUID(), key, SLOT_1, false);
+		Assertions.assertEquals(3, index.getAnzahlFreieTermine(key, HEUTE, HEUTE.plusMonths(1)));
+	}
+
+	@Test
+	void abgelaufeneUndAufgehobeneReservationen() {
+		final UUID terminId1 = UUID.randomUUID();
+		final UUID terminId2 = UUID.randomUUID();
+		final LocalDateTime now = LocalDateTime.now();
+		index.terminReserviert(terminId1, "ABC123", key, SLOT_1, now.plusMinutes(10), false);
+		index.terminReserviert(terminId2, "XYZ789", key, SLOT_2, now.plusMinutes(10), false);
+		Assertions.assertEquals(1, index.getAnzahlFreieTermine(key, HEUTE, HEUTE.plusMonths(1)));
+
+		index.reservationenAufheben("ABC123", Impffolge.ERSTE_IMPFUNG);
+		Assertions.assertEquals(SLOT_1, index.findNextFreierTermin(key, HEUTE, HEUTE.plusMonths(1)));
+		Assertions.assertEquals(2, index.getAnzahlFreieTermine(key, HEUTE, HEUTE.plusMonths(1)));
+
+		index.abgelaufeneReservationenAufheben(now.plusMinutes(5));
+		Assertions.assertEquals(2, index.getAnzahlFreieTermine(key, HEUTE, HEUTE.plusMonths(1)));
+		index.abgelaufeneReservationenAufheben(now.plusMinutes(11));
+		Assertions.assertEquals(3, index.getAnzahlFreieTermine(key, HEUTE, HEUTE.plusMonths(1)));
+	}
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2022 DV Bern AG, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.dvbern.oss.vacme.service.vmdl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import ch.dvbern.oss.vacme.entities.impfen.Impfung;
+import ch.dvbern.oss.vacme.jax.vmdl.VMDLUploadAffenpockenJax;
+import ch.dvbern.oss.vacme.repo.vmdl.VMDLRepo;
+import ch.dvbern.oss.vacme.rest_client.vmdl.VMDLRestClientServiceAffenpocken;
+import ch.dvbern.oss.vacme.service.VacmeSettingsService;
+import ch.dvbern.oss.vacme.service.joblease.JobLease;
+import ch.dvbern.oss.vacme.service.joblease.JobLeaseService;
+import ch.dvbern.oss.vacme.service.plz.PLZCacheService;
+import io.quarkus.security.identity.CurrentIdentityAssociation;
+import io.quarkus.security.identity.SecurityIdentity;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+class VMDLServiceAbstractTest {
+
+	private VMDLServiceAffenpocken vmdlService;
+	private VMDLRepo vmdlRepo;
+	private VMDLRestClientServiceAffenpocken restClient;
+	private VacmeSettingsService settingsService;
+
+	@BeforeEach
+	@SuppressWarnings("unchecked")
+	void setUp() {
+		vmdlRepo = Mockito.mock(VMDLRepo.class);
+		restClient = Mockito.mock(VMDLRestClientServiceAffenpocken.class);
+		settingsService = Mockito.mock(VacmeSettingsService.class);
+		Mockito.when(settingsService.getVmdlUploadChunkLimit()).thenReturn(2);
+		Mockito.when(settingsService.getVmdlReportingUnitID()).thenReturn("Test");
+		Mockito.when(settingsService.getVmdlUploadCatchupMaxSeconds()).thenReturn(60L);
+		Mockito.when(settingsService.getVmdlUploadInflightAffenpocken()).thenReturn(2);
+
+		JobLease lease = Mockito.mock(JobLease.class);
+		Mockito.when(lease.isValid()).thenReturn(true);
+		JobLeaseService jobLeaseService = Mockito.mock(JobLeaseService.class);
+		Mockito.when(jobLeaseService.runWithLease(Mockito.anyString(), Mockito.anyInt(), Mockito.any()))
+			.thenAnswer(invocation -> {
+				invocation.<Consumer<JobLease>>getArgument(2).accept(lease);
+				return true;
+			});
+		CurrentIdentityAssociation association = Mockito.mock(CurrentIdentityAssociation.class);
+		Mockito.when(association.getIdentity()).thenReturn(Mockito.mock(SecurityIdentity.class));
+
+		vmdlService = new VMDLServiceAffenpocken();
+		vmdlService.vmdlRepo = vmdlRepo;
+		vmdlService.vmdlRestClientServiceAffenpocken = restClient;
+		vmdlService.vacmeSettingsService = settingsService;
+		vmdlService.plzCacheService = Mockito.mock(PLZCacheService.class);
+		vmdlService.jobLeaseService = jobLeaseService;
+		vmdlService.association = association;
+	}
+
+	@Test
+	void catchupUploadsUntilBacklogIsEmpty() {
+		Mockito.when(settingsService.isVmdlUploadCatchupEnabled()).thenReturn(true);
+		List<VMDLUploadAffenpockenJax> chunk1 = createChunk(2);
+		List<VMDLUploadAffenpockenJax> chunk2 = createChunk(2);
+		List<VMDLUploadAffenpockenJax> chunk3 = createChunk(1);
+		Mockito.when(vmdlRepo.getVMDLPendenteAffenpockenImpfungen(Mockito.anyInt(), Mockito.anyString(), Mockito.anyCollection()))
+			.thenReturn(chunk1, chunk2, chunk3, Collections.emptyList());
+
+		vmdlService.doUploadVMDLDataForGenericBatch();
+
+		Mockito.verify(restClient, Mockito.times(3)).uploadData(Mockito.anyList());
+		Mockito.verify(vmdlRepo).markAsSentToVMDL(Mockito.eq(idsOf(chunk1)), Mockito.any());
+		Mockito.verify(vmdlRepo).markAsSentToVMDL(Mockito.eq(idsOf(chunk2)), Mockito.any());
+		Mockito.verify(vmdlRepo).markAsSentToVMDL(Mockito.eq(idsOf(chunk3)), Mockito.any());
+	}
+
+	@Test
+	void withoutCatchupOnlyOneChunkPerSlotIsUploaded() {
+		Mockito.when(settingsService.isVmdlUploadCatchupEnabled()).thenReturn(false);
+		Mockito.when(settingsService.getVmdlUploadInflightAffenpocken()).thenReturn(1);
+		List<VMDLUploadAffenpockenJax> chunk1 = createChunk(2);
+		Mockito.when(vmdlRepo.getVMDLPendenteAffenpockenImpfungen(Mockito.anyInt(), Mockito.anyString(), Mockito.anyCollection()))
+			.thenReturn(chunk1, createChunk(2));
+
+		vmdlService.doUploadVMDLDataForGenericBatch();
+
+		Mockito.verify(restClient).uploadData(chunk1);
+		Mockito.verify(vmdlRepo).markAsSentToVMDL(Mockito.eq(idsOf(chunk1)), Mockito.any());
+		Mockito.verify(vmdlRepo, Mockito.times(1))
+			.getVMDLPendenteAffenpockenImpfungen(Mockito.anyInt(), Mockito.anyString(), Mockito.anyCollection());
+	}
+
+	@Test
+	void failedUploadIsNotMarkedAsSent() {
+		Mockito.when(settingsService.isVmdlUploadCatchupEnabled()).thenReturn(true);
+		Mockito.when(vmdlRepo.getVMDLPendenteAffenpockenImpfungen(Mockito.anyInt(), Mockito.anyString(), Mockito.anyCollection()))
+			.thenReturn(createChunk(2), createChunk(2), Collections.emptyList());
+		Mockito.doThrow(new IllegalStateException("VMDL nicht erreichbar")).when(restClient).uploadData(Mockito.anyList());
+
+		Assertions.assertThrows(IllegalStateException.class, () -> vmdlService.doUploadVMDLDataForGenericBatch());
+
+		Mockito.verify(vmdlRepo, Mockito.never()).markAsSentToVMDL(Mockito.anyCollection(), Mockito.any());
+	}
+
+	private List<VMDLUploadAffenpockenJax> createChunk(int size) {
+		List<VMDLUploadAffenpockenJax> chunk = new ArrayList<>();
+		for (int i = 0; i < size; i++) {
+			Impfung impfung = Mockito.mock(Impfung.class);
+			Mockito.when(impfung.getId()).thenReturn(UUID.randomUUID());
+			VMDLUploadAffenpockenJax jax = Mockito.mock(VMDLUploadAffenpockenJax.class);
+			Mockito.when(jax.getImpfung()).thenReturn(impfung);
+			chunk.add(jax);
+		}
+		return chunk;
+	}
+
+	private Collection<UUID> idsOf(List<VMDLUploadAffenpockenJax> chunk) {
+		return chunk.stream().map(jax -> jax.getImpfung().getId()).collect(Collectors.toList());
+	}
+}
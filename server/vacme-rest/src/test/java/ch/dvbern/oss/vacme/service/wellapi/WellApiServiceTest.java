@@ -13,6 +13,7 @@ import java.time.LocalDate;
 import java.util.Optional;
 import java.util.UUID;
 
+import javax.enterprise.event.Event;
 import javax.json.JsonValue;
 
 import ch.dvbern.oss.vacme.dto.ImpfslotCreationSettingsDTO;
@@ -41,6 +42,8 @@ import ch.dvbern.oss.vacme.service.RegistrierungService;
 import ch.dvbern.oss.vacme.service.VacmeSettingsService;
 import ch.dvbern.oss.vacme.service.impfinformationen.ImpfinformationBuilder;
 import ch.dvbern.oss.vacme.service.impfinformationen.ImpfinformationenService;
+import ch.dvbern.oss.vacme.service.tagesstatistik.OdiTagesStatistikService;
+import ch.dvbern.oss.vacme.service.terminindex.FreieTermineIndexService;
 import ch.dvbern.oss.vacme.shared.util.Constants;
 import ch.dvbern.oss.vacme.smartdb.Db;
 import ch.dvbern.oss.vacme.util.TestdataCreationUtil;
@@ -73,7 +76,10 @@ class WellApiServiceTest {
 			Mockito.mock(Db.class),
 			Mockito.mock(ImpfungRepo.class),
 			wellApiService,
-			vacmeSettingsServiceMock);
+			vacmeSettingsServiceMock,
+			Mockito.mock(FreieTermineIndexService.class),
+			Mockito.mock(OdiTagesStatistikService.class),
+			Mockito.mock(Event.class));
 
 	private final EnsureBenutzerService ensureBenutzerService = new EnsureBenutzerService(
 			jsonWebToken,
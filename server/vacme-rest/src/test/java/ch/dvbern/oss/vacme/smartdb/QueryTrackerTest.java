@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2022 DV Bern AG, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.dvbern.oss.vacme.smartdb;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class QueryTrackerTest {
+
+	@Test
+	void disabledObserverIsNotNotified() {
+		RecordingObserver observer = new RecordingObserver(false);
+		QueryTracker tracker = new QueryTracker(observer);
+
+		Assertions.assertEquals("x", tracker.track("test", "fetchOne", false, () -> "x", r -> 1, mitParametern -> ""));
+		tracker.requestFinished();
+
+		Assertions.assertTrue(observer.executions.isEmpty());
+		Assertions.assertEquals(-1, observer.requestQueries);
+	}
+
+	@Test
+	void rowsAndEntityLoadsAreSummedPerRequest() {
+		RecordingObserver observer = new RecordingObserver(true);
+		QueryTracker tracker = new QueryTracker(observer);
+
+		tracker.track("impfungen", "fetch", true, () -> List.of(1, 2, 3), List::size, mitParametern -> "");
+		tracker.track("anzahl", "fetchCount", false, () -> 42L, count -> 1, mitParametern -> "");
+		tracker.track(null, "find", true, Optional::empty, result -> result.isPresent() ? 1 : 0, mitParametern -> "");
+		tracker.requestFinished();
+
+		Assertions.assertEquals(3, observer.executions.size());
+		Assertions.assertEquals("impfungen", observer.executions.get(0).getCallSite());
+		Assertions.assertEquals(3, observer.executions.get(0).getRowCount());
+		// ohne Namen gilt die aufrufende Methode ausserhalb von smartdb, hier also JUnit
+		Assertions.assertFalse(observer.executions.get(2).getCallSite().startsWith("QueryTracker"));
+		Assertions.assertEquals(3, observer.requestQueries);
+		Assertions.assertEquals(3, observer.requestEntities);
+	}
+
+	@Test
+	void failedQueriesAreMeasured() {
+		RecordingObserver observer = new RecordingObserver(true);
+		QueryTracker tracker = new QueryTracker(observer);
+
+		Assertions.assertThrows(IllegalStateException.class, () -> tracker.track("kaputt", "fetch", true, () -> {
+			throw new IllegalStateException("timeout");
+		}, r -> 1, mitParametern -> ""));
+
+		Assertions.assertEquals(1, observer.executions.size());
+		Assertions.assertEquals(0, observer.executions.get(0).getRowCount());
+	}
+
+	private static class RecordingObserver implements QueryObserver {
+		private final boolean enabled;
+		private final List<QueryExecution> executions = new ArrayList<>();
+		private long requestQueries = -1;
+		private long requestEntities = -1;
+
+		private RecordingObserver(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		@Override
+		public boolean isEnabled() {
+			return enabled;
+		}
+
+		@Override
+		public void queryExecuted(@NonNull QueryExecution execution) {
+			executions.add(execution);
+		}
+
+		@Override
+		public void requestFinished(long queryCount, long entityLoadCount) {
+			requestQueries = queryCount;
+			requestEntities = entityLoadCount;
+		}
+	}
+}
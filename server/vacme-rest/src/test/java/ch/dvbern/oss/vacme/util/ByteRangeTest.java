@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2022 DV Bern AG, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.dvbern.oss.vacme.util;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class ByteRangeTest {
+
+	private static final long SIZE = 1000;
+
+	@Test
+	void noOrUnsupportedHeaderShouldReturnWholeContent() {
+		Assertions.assertTrue(ByteRange.parse(null, SIZE).isEmpty());
+		Assertions.assertTrue(ByteRange.parse("bytes=0-10,20-30", SIZE).isEmpty());
+		Assertions.assertTrue(ByteRange.parse("items=0-10", SIZE).isEmpty());
+		Assertions.assertTrue(ByteRange.parse("bytes=-", SIZE).isEmpty());
+		Assertions.assertTrue(ByteRange.parse("bytes=20-10", SIZE).isEmpty());
+	}
+
+	@Test
+	void closedRange() {
+		ByteRange range = ByteRange.parse("bytes=100-199", SIZE).orElseThrow();
+
+		Assertions.assertEquals(100, range.getStart());
+		Assertions.assertEquals(199, range.getEnd());
+		Assertions.assertEquals(100, range.getLength());
+		Assertions.assertEquals("bytes 100-199/1000", range.toContentRange(SIZE));
+	}
+
+	@Test
+	void endShouldBeLimitedToSize() {
+		ByteRange range = ByteRange.parse("bytes=900-5000", SIZE).orElseThrow();
+
+		Assertions.assertTrue(range.isSatisfiable());
+		Assertions.assertEquals(999, range.getEnd());
+	}
+
+	@Test
+	void openRangeShouldGoToEnd() {
+		ByteRange range = ByteRange.parse("bytes=500-", SIZE).orElseThrow();
+
+		Assertions.assertEquals(500, range.getStart());
+		Assertions.assertEquals(999, range.getEnd());
+	}
+
+	@Test
+	void suffixRangeShouldReturnLastBytes() {
+		ByteRange range = ByteRange.parse("bytes=-100", SIZE).orElseThrow();
+		Assertions.assertEquals(900, range.getStart());
+		Assertions.assertEquals(999, range.getEnd());
+
+		ByteRange longerThanContent = ByteRange.parse("bytes=-5000", SIZE).orElseThrow();
+		Assertions.assertEquals(0, longerThanContent.getStart());
+		Assertions.assertEquals(SIZE, longerThanContent.getLength());
+	}
+
+	@Test
+	void rangeOutsideOfContentShouldNotBeSatisfiable() {
+		Assertions.assertFalse(ByteRange.parse("bytes=1000-", SIZE).orElseThrow().isSatisfiable());
+		Assertions.assertFalse(ByteRange.parse("bytes=-0", SIZE).orElseThrow().isSatisfiable());
+		Assertions.assertFalse(ByteRange.parse("bytes=0-", 0).orElseThrow().isSatisfiable());
+		Assertions.assertEquals("bytes */1000", ByteRange.toUnsatisfiedContentRange(SIZE));
+	}
+}
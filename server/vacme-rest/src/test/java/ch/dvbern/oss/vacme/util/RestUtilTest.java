@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2022 DV Bern AG, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package ch.dvbern.oss.vacme.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+
+import ch.dvbern.oss.vacme.entities.embeddables.FileBlob;
+import ch.dvbern.oss.vacme.service.VacmeSettingsService;
+import ch.dvbern.oss.vacme.service.blobstore.FileSystemBlobStore;
+import ch.dvbern.oss.vacme.shared.util.CleanFileName;
+import ch.dvbern.oss.vacme.shared.util.MimeType;
+import com.github.HonoluluHenk.httpcontentdisposition.Disposition;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+
+class RestUtilTest {
+
+	private static final byte[] CONTENT = "0123456789".getBytes(StandardCharsets.UTF_8);
+
+	@TempDir
+	Path root;
+
+	private FileSystemBlobStore blobStore;
+
+	@BeforeEach
+	void setUp() {
+		VacmeSettingsService settingsService = Mockito.mock(VacmeSettingsService.class);
+		Mockito.when(settingsService.getBlobStoreFilesystemRoot()).thenReturn(root.toString());
+		blobStore = new FileSystemBlobStore(settingsService);
+	}
+
+	@Test
+	void buildBlobResponse_returnsWholeContentWithoutRange() throws Exception {
+		Response response = RestUtil.buildBlobResponse(Disposition.INLINE, createExternalizedBlob(), blobStore, null, null);
+
+		Assertions.assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+		Assertions.assertEquals("bytes", response.getHeaderString("Accept-Ranges"));
+		Assertions.assertNull(response.getHeaderString("Content-Range"));
+		Assertions.assertEquals("application/pdf", response.getMediaType().toString());
+		Assertions.assertArrayEquals(CONTENT, readEntity(response));
+	}
+
+	@Test
+	void buildBlobResponse_returnsPartialContentForRange() throws Exception {
+		Response response = RestUtil.buildBlobResponse(Disposition.INLINE, createExternalizedBlob(), blobStore,
+			"bytes=2-5", null);
+
+		Assertions.assertEquals(Response.Status.PARTIAL_CONTENT.getStatusCode(), response.getStatus());
+		Assertions.assertEquals("bytes 2-5/10", response.getHeaderString("Content-Range"));
+		Assertions.assertArrayEquals("2345".getBytes(StandardCharsets.UTF_8), readEntity(response));
+	}
+
+	@Test
+	void buildBlobResponse_returnsPartialContentForSuffixRange() throws Exception {
+		Response response = RestUtil.buildBlobResponse(Disposition.INLINE, createExternalizedBlob(), blobStore,
+			"bytes=-3", null);
+
+		Assertions.assertEquals(Response.Status.PARTIAL_CONTENT.getStatusCode(), response.getStatus());
+		Assertions.assertEquals("bytes 7-9/10", response.getHeaderString("Content-Range"));
+		Assertions.assertArrayEquals("789".getBytes(StandardCharsets.UTF_8), readEntity(response));
+	}
+
+	@Test
+	void buildBlobResponse_returnsRangeNotSatisfiable() {
+		Response response = RestUtil.buildBlobResponse(Disposition.INLINE, createExternalizedBlob(), blobStore,
+			"bytes=10-20", null);
+
+		Assertions.assertEquals(Response.Status.REQUESTED_RANGE_NOT_SATISFIABLE.getStatusCode(), response.getStatus());
+		Assertions.assertEquals("bytes */10", response.getHeaderString("Content-Range"));
+		Assertions.assertNull(response.getEntity());
+	}
+
+	@Test
+	void buildBlobResponse_readsRangeFromDbContent() throws Exception {
+		FileBlob fileBlob = FileBlob.of(new CleanFileName("dokument.pdf"), MimeType.APPLICATION_PDF, CONTENT);
+
+		Response response = RestUtil.buildBlobResponse(Disposition.ATTACHMENT, fileBlob, blobStore, "bytes=0-1", null);
+
+		Assertions.assertEquals(Response.Status.PARTIAL_CONTENT.getStatusCode(), response.getStatus());
+		Assertions.assertEquals("bytes 0-1/10", response.getHeaderString("Content-Range"));
+		Assertions.assertArrayEquals("01".getBytes(StandardCharsets.UTF_8), readEntity(response));
+	}
+
+	private FileBlob createExternalizedBlob() {
+		FileBlob fileBlob = FileBlob.of(new CleanFileName("dokument.pdf"), MimeType.APPLICATION_PDF, CONTENT);
+		fileBlob.externalize(blobStore.put(new ByteArrayInputStream(CONTENT)));
+		return fileBlob;
+	}
+
+	private static byte[] readEntity(Response response) throws Exception {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		((StreamingOutput) response.getEntity()).write(output);
+		return output.toByteArray();
+	}
+}
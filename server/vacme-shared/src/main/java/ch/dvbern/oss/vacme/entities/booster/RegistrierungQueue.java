@@ -17,6 +17,8 @@
 
 package ch.dvbern.oss.vacme.entities.booster;
 
+import java.time.LocalDateTime;
+
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.EnumType;
@@ -49,6 +51,7 @@ import ch.dvbern.oss.vacme.entities.util.DBConst;
 	indexes = {
 		@Index(name = "IX_RegistrierungQueue_krankheit_status", columnList = "krankheitIdentifier, status, id"),
 		@Index(name = "IX_RegistrierungQueue_status_timestampErstellt", columnList = "status, timestampErstellt, id"),
+		@Index(name = "IX_RegistrierungQueue_leaseOwner", columnList = "leaseOwner, id"),
 	}
 )
 public class RegistrierungQueue extends AbstractLongEntity<RegistrierungQueue> {
@@ -92,9 +95,24 @@ public class RegistrierungQueue extends AbstractLongEntity<RegistrierungQueue> {
 	@Enumerated(EnumType.STRING)
 	private KrankheitIdentifier krankheitIdentifier;
 
-	public static RegistrierungQueue forRecalculation(@NonNull String regNum) {
+	/**
+	 * Token des Workers, der diesen Eintrag aktuell bearbeitet (nur wenn die Verteilung ueber Leases aktiv ist)
+	 */
+	@Nullable
+	@Column(nullable = true, length = DBConst.DB_UUID_LENGTH)
+	private String leaseOwner;
+
+	@Nullable
+	@Column(nullable = true)
+	private LocalDateTime leaseUntil;
+
+	public static RegistrierungQueue forRecalculation(
+		@NonNull String regNum,
+		@NonNull KrankheitIdentifier krankheitIdentifier
+	) {
 		RegistrierungQueue queue = new RegistrierungQueue();
 		queue.setTyp(RegistrierungQueueTyp.BOOSTER_RULE_RECALCULATION);
+		queue.setKrankheitIdentifier(krankheitIdentifier);
 		queue.setStatus(RegistrierungQueueStatus.NEW);
 		queue.setErrorCount(0);
 		queue.setRegistrierungNummer(regNum);
@@ -109,6 +127,7 @@ public class RegistrierungQueue extends AbstractLongEntity<RegistrierungQueue> {
 
 	public void markSuccessful() {
 		setStatus(RegistrierungQueueStatus.SUCCESS);
+		releaseLease();
 	}
 
 	public void markFailed(@Nullable  String error) {
@@ -119,5 +138,11 @@ public class RegistrierungQueue extends AbstractLongEntity<RegistrierungQueue> {
 			setStatus(RegistrierungQueueStatus.FAILED_RETRY);
 		}
 		setLastError(error);
+		releaseLease();
+	}
+
+	public void releaseLease() {
+		setLeaseOwner(null);
+		setLeaseUntil(null);
 	}
 }
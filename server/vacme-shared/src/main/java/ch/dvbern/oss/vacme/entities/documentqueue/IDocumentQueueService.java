@@ -51,7 +51,12 @@ public interface IDocumentQueueService {
 	@NonNull
 	DocumentQueueResult getDocumentQueueResultItem(@NonNull UUID docResultId);
 
-	void markDocumentQueueItemAsInProgress(@NonNull DocumentQueue documentQueueItem);
+	/**
+	 * Setzt das Item atomar auf IN_PROGRESS, sofern es noch NEW oder FAILED_RETRY ist.
+	 *
+	 * @return true wenn das Item von diesem Aufrufer uebernommen wurde
+	 */
+	boolean claimDocumentQueueItem(@NonNull Long docId);
 }
 
 
@@ -21,13 +21,14 @@ import java.util.UUID;
 
 import javax.persistence.Embedded;
 import javax.persistence.Entity;
+import javax.persistence.Index;
+import javax.persistence.Table;
 import javax.validation.Valid;
 import javax.validation.constraints.NotNull;
 
 import ch.dvbern.oss.vacme.entities.base.AbstractUUIDEntity;
 import ch.dvbern.oss.vacme.entities.base.ID;
 import ch.dvbern.oss.vacme.entities.embeddables.FileBlob;
-import ch.dvbern.oss.vacme.entities.util.BlobUtil;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
@@ -37,6 +38,11 @@ import org.checkerframework.checker.nullness.qual.NonNull;
 @Getter
 @Setter
 @NoArgsConstructor
+@Table(
+	indexes = {
+		@Index(name = "IX_DocumentQueueResult_contentHash", columnList = "contentHash, id"),
+	}
+)
 public class DocumentQueueResult extends AbstractUUIDEntity<DocumentQueueResult> {
 
 	private static final long serialVersionUID = -7438263998021908525L;
@@ -48,7 +54,7 @@ public class DocumentQueueResult extends AbstractUUIDEntity<DocumentQueueResult>
 	private FileBlob fileBlob;
 
 	public byte[] getContent() {
-		return BlobUtil.getBlobBytes(fileBlob.getData());
+		return fileBlob.readContent();
 	}
 
 	@NonNull
@@ -17,8 +17,12 @@
 
 package ch.dvbern.oss.vacme.entities.embeddables;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.sql.Blob;
+import java.sql.SQLException;
 
+import javax.enterprise.inject.spi.CDI;
 import javax.persistence.Basic;
 import javax.persistence.Column;
 import javax.persistence.Embeddable;
@@ -27,11 +31,16 @@ import javax.persistence.MappedSuperclass;
 import javax.validation.constraints.NotNull;
 
 import ch.dvbern.oss.vacme.entities.util.BlobUtil;
+import ch.dvbern.oss.vacme.entities.util.DBConst;
+import ch.dvbern.oss.vacme.shared.blobstore.BlobStore;
+import ch.dvbern.oss.vacme.shared.errors.AppFailureException;
 import ch.dvbern.oss.vacme.shared.util.CleanFileName;
 import ch.dvbern.oss.vacme.shared.util.MimeType;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Getter;
 import lombok.Setter;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
 
 import static ch.dvbern.oss.vacme.entities.util.BlobUtil.emptyBlob;
 import static javax.persistence.FetchType.LAZY;
@@ -64,6 +73,14 @@ public class FileBlob extends FileInfo {
 	@JsonIgnore
 	private Blob data = emptyBlob();
 
+	/**
+	 * Gesetzt, wenn der Inhalt im {@link BlobStore} liegt. {@link #data} ist dann leer.
+	 */
+	@Nullable
+	@Column(nullable = true, length = DBConst.DB_SHA256_HEX_LENGTH)
+	@JsonIgnore
+	private String contentHash;
+
 	public static FileBlob of(CleanFileName fileName, MimeType mimeType, byte[] data) {
 		return new FileBlob(
 			fileName,
@@ -73,4 +90,62 @@ public class FileBlob extends FileInfo {
 		);
 	}
 
+	public static FileBlob of(CleanFileName fileName, MimeType mimeType, InputStream data, long fileSize) {
+		return new FileBlob(
+			fileName,
+			fileSize,
+			mimeType,
+			BlobUtil.createStreamingBlob(data, fileSize)
+		);
+	}
+
+	@JsonIgnore
+	public boolean isExternalized() {
+		return contentHash != null;
+	}
+
+	/**
+	 * Verweist auf den bereits im {@link BlobStore} abgelegten Inhalt und leert die Spalte in der DB
+	 */
+	public void externalize(@NonNull String hash) {
+		this.contentHash = hash;
+		this.data = emptyBlob();
+	}
+
+	/**
+	 * Liest den ganzen Inhalt, egal ob er noch in der DB oder bereits im {@link BlobStore} liegt
+	 */
+	@NonNull
+	public byte[] readContent() {
+		if (contentHash == null) {
+			return BlobUtil.getBlobBytes(data);
+		}
+		try (InputStream stream = blobStore().open(contentHash)) {
+			return stream.readAllBytes();
+		} catch (IOException e) {
+			throw new AppFailureException("Could not read blob " + contentHash, e);
+		}
+	}
+
+	/**
+	 * Wie {@link #readContent()}, ohne den Inhalt ganz in den Speicher zu laden. Der Aufrufer muss den Stream
+	 * schliessen.
+	 */
+	@NonNull
+	public InputStream openContent() {
+		if (contentHash != null) {
+			return blobStore().open(contentHash);
+		}
+		try {
+			return data.getBinaryStream();
+		} catch (SQLException e) {
+			throw new IllegalStateException("Illegal blob operation", e);
+		}
+	}
+
+	@NonNull
+	private static BlobStore blobStore() {
+		// Limitation of Quarkus: Injection into Entities does not work, siehe DefaultEntityListener
+		return CDI.current().select(BlobStore.class).get();
+	}
 }
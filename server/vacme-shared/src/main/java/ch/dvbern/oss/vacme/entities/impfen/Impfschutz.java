@@ -21,6 +21,7 @@ import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.Objects;
 import java.util.Set;
 import java.util.UUID;
 import java.util.stream.Collectors;
@@ -77,6 +78,12 @@ public class Impfschutz extends AbstractUUIDEntity<Impfschutz> {
 	@Column(nullable = false)
 	private boolean benachrichtigungBeiFreigabe = false;
 
+	/**
+	 * SHA-256 ueber die Inputs der Berechnung. Ist er unveraendert, kann die Neuberechnung uebersprungen werden.
+	 */
+	@Nullable
+	@Column(nullable = true, length = 64)
+	private String inputFingerprint;
 
 
 	public Impfschutz(
@@ -100,6 +107,21 @@ public class Impfschutz extends AbstractUUIDEntity<Impfschutz> {
 		this.setImmunisiertBis(impfschutz.getImmunisiertBis());
 		this.setErlaubteImpfstoffe(impfschutz.getErlaubteImpfstoffe());
 		this.setBenachrichtigungBeiFreigabe(impfschutz.isBenachrichtigungBeiFreigabe());
+		this.setInputFingerprint(impfschutz.getInputFingerprint());
+	}
+
+	/**
+	 * Vergleicht das Resultat der Berechnung (ohne ID, Version und Fingerprint)
+	 */
+	public boolean hasSameResultAs(@Nullable Impfschutz other) {
+		if (other == null) {
+			return false;
+		}
+		return Objects.equals(immunisiertBis, other.getImmunisiertBis())
+			&& Objects.equals(freigegebenNaechsteImpfungAb, other.getFreigegebenNaechsteImpfungAb())
+			&& Objects.equals(freigegebenAbSelbstzahler, other.getFreigegebenAbSelbstzahler())
+			&& getErlaubteImpfstoffeCollection().equals(other.getErlaubteImpfstoffeCollection())
+			&& benachrichtigungBeiFreigabe == other.isBenachrichtigungBeiFreigabe();
 	}
 
 	@NonNull
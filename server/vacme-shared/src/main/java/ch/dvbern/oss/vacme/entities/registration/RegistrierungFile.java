@@ -36,7 +36,6 @@ import ch.dvbern.oss.vacme.entities.base.AbstractUUIDEntity;
 import ch.dvbern.oss.vacme.entities.base.ID;
 import ch.dvbern.oss.vacme.entities.dossier.VacmeFile;
 import ch.dvbern.oss.vacme.entities.embeddables.FileBlob;
-import ch.dvbern.oss.vacme.entities.util.BlobUtil;
 import ch.dvbern.oss.vacme.entities.util.DBConst;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
@@ -51,6 +50,7 @@ import org.checkerframework.checker.nullness.qual.NonNull;
 	indexes = {
 		@Index(name = "IX_RegistrierungFile_registrierungId", columnList = "registrierung_id, id"),
 		@Index(name = "IX_RegistrierungFile_registrierungId_filetyp", columnList = "registrierung_id, filetyp, id"),
+		@Index(name = "IX_RegistrierungFile_contentHash", columnList = "contentHash, id"),
 	}
 )
 public class RegistrierungFile extends AbstractUUIDEntity<RegistrierungFile> implements VacmeFile {
@@ -79,9 +79,16 @@ public class RegistrierungFile extends AbstractUUIDEntity<RegistrierungFile> imp
 	@Column(nullable = false)
 	private boolean abgeholt = false;
 
+	/**
+	 * Anzahl Versuche, bei denen der Brief nicht ins Sammel-PDF fuer den Postversand angehaengt werden konnte
+	 */
+	@NotNull
+	@Column(nullable = false)
+	private int postversandFehlversuche = 0;
+
 	@Override
 	public byte[] getContent() {
-		return BlobUtil.getBlobBytes(fileBlob.getData());
+		return fileBlob.readContent();
 	}
 
 	@NonNull
@@ -17,11 +17,14 @@
 
 package ch.dvbern.oss.vacme.entities.util;
 
+import java.io.InputStream;
 import java.sql.Blob;
 import java.sql.SQLException;
 
 import javax.sql.rowset.serial.SerialBlob;
 
+import org.hibernate.engine.jdbc.BlobProxy;
+
 import static ch.dvbern.oss.vacme.entities.util.DBConst.EMPTY_BYTES;
 import static java.util.Objects.requireNonNull;
 
@@ -39,6 +42,14 @@ public final class BlobUtil {
 		}
 	}
 
+	/**
+	 * Blob, dessen Inhalt erst beim Schreiben in die DB aus dem Stream gelesen wird. Der Stream wird nur einmal
+	 * gelesen und muss offen bleiben, bis die Entitaet gespeichert wurde.
+	 */
+	public static Blob createStreamingBlob(InputStream stream, long length) {
+		return BlobProxy.generateProxy(requireNonNull(stream), length);
+	}
+
 	public static SerialBlob emptyBlob() {
 		return createBlob(EMPTY_BYTES);
 	}
@@ -26,6 +26,7 @@ public final class DBConst {
 	public static final int DB_DEFAULT_MAX_LENGTH = 255;
 	public static final int DB_VMDL_SCHNITTSTELLE_LENGTH = 32;
 	public static final int DB_UUID_LENGTH = 36;
+	public static final int DB_SHA256_HEX_LENGTH = 64;
 	public static final int DB_ENUM_LENGTH = 50;
 	public static final int DB_BEMERKUNGEN_MAX_LENGTH = 2000;
 	public static final int DB_TEXT_HTML_MAX_LENGTH = 2000;
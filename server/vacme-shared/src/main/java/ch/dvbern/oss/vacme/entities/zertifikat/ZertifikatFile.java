@@ -21,13 +21,14 @@ import java.util.UUID;
 
 import javax.persistence.Embedded;
 import javax.persistence.Entity;
+import javax.persistence.Index;
+import javax.persistence.Table;
 import javax.validation.Valid;
 import javax.validation.constraints.NotNull;
 
 import ch.dvbern.oss.vacme.entities.base.AbstractUUIDEntity;
 import ch.dvbern.oss.vacme.entities.base.ID;
 import ch.dvbern.oss.vacme.entities.embeddables.FileBlob;
-import ch.dvbern.oss.vacme.entities.util.BlobUtil;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
@@ -37,6 +38,11 @@ import org.checkerframework.checker.nullness.qual.NonNull;
 @Getter
 @Setter
 @NoArgsConstructor
+@Table(
+	indexes = {
+		@Index(name = "IX_ZertifikatFile_contentHash", columnList = "contentHash, id"),
+	}
+)
 public class ZertifikatFile extends AbstractUUIDEntity<ZertifikatFile> {
 
 	private static final long serialVersionUID = 2084889512677044121L;
@@ -48,7 +54,7 @@ public class ZertifikatFile extends AbstractUUIDEntity<ZertifikatFile> {
 	private FileBlob fileBlob;
 
 	public byte[] getContent() {
-		return BlobUtil.getBlobBytes(fileBlob.getData());
+		return fileBlob.readContent();
 	}
 
 	@NonNull
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2022 DV Bern AG, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.dvbern.oss.vacme.shared.blobstore;
+
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+/**
+ * Ablage fuer Dateiinhalte ausserhalb der Datenbank. Die Inhalte werden ueber ihren SHA-256-Hash (hex, klein
+ * geschrieben) adressiert, identische Dateien werden deshalb nur einmal abgelegt. Ein abgelegter Inhalt wird nie
+ * veraendert.
+ * <p>
+ * Da mehrere Zeilen auf denselben Inhalt verweisen koennen, wird ein Inhalt nicht beim Loeschen einer Zeile entfernt,
+ * sondern von der Garbage Collection, sobald keine Zeile mehr darauf verweist. Dasselbe gilt fuer Inhalte, deren
+ * Transaktion nach dem {@link #put(InputStream)} zurueckgerollt wurde.
+ */
+public interface BlobStore {
+
+	/**
+	 * Legt den Inhalt ab, falls er noch nicht vorhanden ist. Der Stream wird vollstaendig gelesen, aber nicht
+	 * geschlossen. Auch ein bereits vorhandener Inhalt gilt danach als neu abgelegt, damit die Garbage Collection ihn
+	 * nicht entfernt, bevor die Transaktion mit dem Verweis darauf committet ist.
+	 *
+	 * @return der Hash, unter dem der Inhalt gelesen werden kann
+	 */
+	@NonNull
+	String put(@NonNull InputStream content);
+
+	/**
+	 * @return den Inhalt zum Hash. Der Aufrufer muss den Stream schliessen.
+	 */
+	@NonNull
+	InputStream open(@NonNull String contentHash);
+
+	long size(@NonNull String contentHash);
+
+	boolean exists(@NonNull String contentHash);
+
+	/**
+	 * @return die Datei mit dem Inhalt, falls der Store auf dem lokalen Dateisystem liegt. Downloads koennen die Datei
+	 * dann direkt aus dem Dateisystem streamen.
+	 */
+	@NonNull
+	Optional<Path> getLocalPath(@NonNull String contentHash);
+
+	/**
+	 * @return die Hashes aller Inhalte, die vor abgelegtVor abgelegt wurden. Der Aufrufer muss den Stream schliessen.
+	 */
+	@NonNull
+	Stream<String> streamContentHashes(@NonNull Instant abgelegtVor);
+
+	/**
+	 * Entfernt den Inhalt, sofern er seither nicht erneut abgelegt wurde
+	 *
+	 * @return true wenn der Inhalt entfernt wurde
+	 */
+	boolean deleteIfAbgelegtVor(@NonNull String contentHash, @NonNull Instant abgelegtVor);
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2022 DV Bern AG, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.dvbern.oss.vacme.entities.embeddables;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import ch.dvbern.oss.vacme.shared.util.CleanFileName;
+import ch.dvbern.oss.vacme.shared.util.MimeType;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FileBlobTest {
+
+	@Test
+	void of_stream_should_keep_size_and_read_content_lazily() throws Exception {
+		byte[] content = "Report;Inhalt\n1;2\n".getBytes(StandardCharsets.UTF_8);
+		ByteArrayInputStream stream = new ByteArrayInputStream(content);
+
+		FileBlob fileBlob = FileBlob.of(
+			new CleanFileName("report.csv"),
+			MimeType.APPLICATION_OCTET_STREAM,
+			stream,
+			content.length);
+
+		assertThat(fileBlob.getFileSize()).isEqualTo(content.length);
+		assertThat(fileBlob.getData().length()).isEqualTo(content.length);
+		// der Stream wird erst beim Lesen des Blobs konsumiert
+		assertThat(stream.available()).isEqualTo(content.length);
+
+		try (InputStream data = fileBlob.getData().getBinaryStream()) {
+			assertThat(data.readAllBytes()).isEqualTo(content);
+		}
+	}
+}